@@ -124,14 +124,13 @@
   (format-long [this v]))
 
 (defn- process-statistics
-  [views statistics formatter]
+  [views statistics formatter time-unit]
   (vec
     (for [^ExpressionView v views]
-      (let [e (.getExpression v)]
-        (if (.isDouble e)
-          (format-double formatter (.getDoubleValue e statistics))
-          (format-long formatter (.getLongValue e statistics))
-          )))))
+      (if (.isDisplayedAsDouble v time-unit)
+        (format-double formatter (.getDisplayValue v statistics time-unit))
+        (format-long formatter (.getLongValue (.getExpression v) statistics))
+        ))))
 
 (extend-type Format StatisticsFormatter
   (format-double [this v]
@@ -191,7 +190,9 @@
            (.getTotalCumulativeStatistics sample-model)
            #(.getCumulativeStatistics %1 %2)])
 
-        views (.getExpressionViews view)]
+        views (.getExpressionViews view)
+
+        time-unit (.getTimeUnit sample-model)]
 
     {:status (status sample-model)
      :columns (map view-to-column views)
@@ -203,9 +204,10 @@
                    :description (.getDescription test)
                    :statistics (process-statistics views
                                  (statistics-for-test test-index i)
-                                 formatter)
+                                 formatter
+                                 time-unit)
                    })))
-     :totals (process-statistics views totals formatter)}))
+     :totals (process-statistics views totals formatter time-unit)}))
 
 
 (defn add-listener
@@ -43,7 +43,9 @@
            [net.grinder.util
             SignificantFigureFormat]
            [java.util
-            Timer]))
+            Timer]
+           [java.util.concurrent
+            TimeUnit]))
 
 (declare history)
 
@@ -115,6 +117,7 @@
         sm (reify SampleModel
              (getState [this] (MockState. "Recording" "blah" 99))
              (getTotalCumulativeStatistics [this] s1)
+             (getTimeUnit [this] TimeUnit/MILLISECONDS)
              (addModelListener [this l]))
         sv (make-smv 3)]
 
@@ -93,6 +93,7 @@ abstract class AbstractFanOutSender extends AbstractSender {
         new InterruptibleRunnableAdapter(
           new WriteMessageToStream(message,
                                    resourceToOutputStream(resource),
+                                   resourceToCodec(resource),
                                    reservation)));
     }
   }
@@ -110,6 +111,17 @@ abstract class AbstractFanOutSender extends AbstractSender {
     resourceToOutputStream(ResourcePool.Resource resource)
     throws CommunicationException;
 
+  /**
+   * Return the codec to use to write messages to a resource. Subclasses can
+   * override this; the default uses Java serialisation.
+   *
+   * @param resource The resource.
+   * @return The codec.
+   */
+  protected MessageCodec resourceToCodec(ResourcePool.Resource resource) {
+    return WireFormat.SERIALISATION.getCodec();
+  }
+
   /**
    * Subclasses must implement this to return the address associated with
    * a resource.
@@ -162,19 +174,22 @@ abstract class AbstractFanOutSender extends AbstractSender {
 
     private final Message m_message;
     private final OutputStream m_outputStream;
+    private final MessageCodec m_codec;
     private final ResourcePool.Reservation m_reservation;
 
     public WriteMessageToStream(Message message,
                                 OutputStream outputStream,
+                                MessageCodec codec,
                                 ResourcePool.Reservation reservation) {
       m_message = message;
       m_outputStream = outputStream;
+      m_codec = codec;
       m_reservation = reservation;
     }
 
     public void interruptibleRun() {
       try {
-        writeMessageToStream(m_message, m_outputStream);
+        m_codec.writeMessage(m_message, m_outputStream);
       }
       catch (IOException e) {
         // InterruptedIOExceptions take this path.
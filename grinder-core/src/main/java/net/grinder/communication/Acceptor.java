@@ -25,8 +25,10 @@ import static net.grinder.communication.CommunicationDefaults.ALL_INTERFACES;
 
 import java.io.IOException;
 import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.nio.channels.ServerSocketChannel;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.ArrayBlockingQueue;
@@ -44,6 +46,12 @@ import net.grinder.util.thread.InterruptibleRunnableAdapter;
 /**
  * Active object that accepts connections on a ServerSocket.
  *
+ * <p>
+ * The server socket is created from a {@link ServerSocketChannel}. Once the
+ * connection preamble has been read, each accepted socket is switched to
+ * non-blocking mode so that a {@link ServerReceiver} can select on it.
+ * </p>
+ *
  * @author Philip Aston
  */
 public final class Acceptor {
@@ -92,8 +100,8 @@ public final class Acceptor {
 
     if (addressString.length() > 0 && !ALL_INTERFACES.equals(addressString)) {
       try {
-        m_serverSocket =
-          new ServerSocket(port, 50, InetAddress.getByName(addressString));
+        m_serverSocket = bind(
+          new InetSocketAddress(InetAddress.getByName(addressString), port));
       }
       catch (final IOException e) {
         UncheckedInterruptedException.ioException(e);
@@ -103,7 +111,7 @@ public final class Acceptor {
     }
     else {
       try {
-        m_serverSocket = new ServerSocket(port, 50);
+        m_serverSocket = bind(new InetSocketAddress(port));
       }
       catch (final IOException e) {
         UncheckedInterruptedException.ioException(e);
@@ -120,6 +128,22 @@ public final class Acceptor {
     }
   }
 
+  private static ServerSocket bind(InetSocketAddress address)
+    throws IOException {
+
+    final ServerSocketChannel channel = ServerSocketChannel.open();
+
+    try {
+      channel.socket().bind(address, 50);
+    }
+    catch (final IOException e) {
+      channel.close();
+      throw e;
+    }
+
+    return channel.socket();
+  }
+
   /**
    * Shut down this acceptor.
    *
@@ -355,8 +379,14 @@ public final class Acceptor {
       final Connector.ConnectDetails connectDetails =
         Connector.read(localSocket.getInputStream());
 
+      Connector.accept(localSocket.getOutputStream(), connectDetails);
+
+      localSocket.getChannel().configureBlocking(false);
+
       final SocketWrapper socketWrapper =
-          new IdleAwareSocketWrapper(localSocket, m_timeAuthority);
+          new IdleAwareSocketWrapper(localSocket,
+                                     connectDetails.getWireFormat(),
+                                     m_timeAuthority);
       socketWrapper.setAddress(connectDetails.getAddress());
 
       // Possible minor race if the socket is closed between here...
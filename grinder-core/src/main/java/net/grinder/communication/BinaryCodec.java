@@ -0,0 +1,237 @@
+// Copyright (C) 2013 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.grinder.communication;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+
+/**
+ * {@link MessageCodec} that writes {@link BinaryMessage}s and keep alive
+ * messages in a compact binary format, and falls back to Java serialisation
+ * for other messages.
+ *
+ * <p>
+ * Each message is written as a frame: a four byte length, a one byte kind, and
+ * the body. Reading a frame takes two reads from the stream, however the
+ * message is encoded. Frames longer than {@link #MAXIMUM_FRAME_LENGTH} are
+ * rejected, so a corrupt header cannot cause a huge allocation.
+ * </p>
+ *
+ * <p>Package scope.</p>
+ *
+ * @author Philip Aston
+ */
+final class BinaryCodec implements MessageCodec {
+
+  private static final int HEADER_LENGTH = 4;
+
+  /**
+   * The largest frame body that can be written or read. Generous enough for
+   * distributed files, which are sent as single messages.
+   */
+  static final int MAXIMUM_FRAME_LENGTH = 256 * 1024 * 1024;
+
+  private static final byte SERIALISED = 0;
+  private static final byte KEEP_ALIVE = 1;
+  private static final byte CLOSE = 2;
+  private static final byte BINARY_MESSAGE = 3;
+
+  private final ConcurrentMap<String, Constructor<? extends Message>>
+    m_constructors =
+      new ConcurrentHashMap<String, Constructor<? extends Message>>();
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override public void writeMessage(Message message, OutputStream stream)
+    throws IOException {
+
+    final FrameOutputStream frame = new FrameOutputStream();
+    final DataOutputStream out = new DataOutputStream(frame);
+
+    if (message instanceof KeepAliveMessage) {
+      out.writeByte(KEEP_ALIVE);
+    }
+    else if (message instanceof CloseCommunicationMessage) {
+      out.writeByte(CLOSE);
+    }
+    else if (message instanceof BinaryMessage) {
+      out.writeByte(BINARY_MESSAGE);
+      out.writeUTF(message.getClass().getName());
+      ((BinaryMessage)message).writeBinary(out);
+    }
+    else {
+      out.writeByte(SERIALISED);
+      final ObjectOutputStream objectStream = new ObjectOutputStream(out);
+      objectStream.writeObject(message);
+      objectStream.flush();
+    }
+
+    out.flush();
+
+    if (frame.size() - HEADER_LENGTH > MAXIMUM_FRAME_LENGTH) {
+      throw new IOException("Message " + message.getClass().getName() +
+                            " is too large to send");
+    }
+
+    frame.writeTo(stream);
+    stream.flush();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override public Message readMessage(InputStream stream)
+    throws IOException, ClassNotFoundException {
+
+    final DataInputStream frameStream = new DataInputStream(stream);
+
+    final byte[] header = new byte[HEADER_LENGTH];
+    frameStream.readFully(header);
+
+    final int length = (header[0] & 0xFF) << 24 |
+                       (header[1] & 0xFF) << 16 |
+                       (header[2] & 0xFF) << 8 |
+                       (header[3] & 0xFF);
+
+    if (length < 1 || length > MAXIMUM_FRAME_LENGTH) {
+      throw new IOException("Invalid frame length " + length);
+    }
+
+    final byte[] body = new byte[length];
+    frameStream.readFully(body);
+
+    final DataInputStream in =
+      new DataInputStream(new ByteArrayInputStream(body));
+
+    final byte kind = in.readByte();
+
+    switch (kind) {
+      case KEEP_ALIVE:
+        return new KeepAliveMessage();
+
+      case CLOSE:
+        return new CloseCommunicationMessage();
+
+      case BINARY_MESSAGE:
+        return newInstance(getConstructor(in.readUTF()), in);
+
+      case SERIALISED:
+        return (Message)new ObjectInputStream(in).readObject();
+
+      default:
+        throw new IOException("Unknown message kind " + kind);
+    }
+  }
+
+  private Constructor<? extends Message> getConstructor(String className)
+    throws IOException, ClassNotFoundException {
+
+    Constructor<? extends Message> constructor =
+      m_constructors.get(className);
+
+    if (constructor == null) {
+      // Don't initialise the class until we know it is a BinaryMessage.
+      final Class<?> c =
+        Class.forName(className, false, BinaryCodec.class.getClassLoader());
+
+      if (!BinaryMessage.class.isAssignableFrom(c)) {
+        throw new IOException(className + " is not a BinaryMessage");
+      }
+
+      try {
+        constructor =
+          c.asSubclass(Message.class).getConstructor(DataInput.class);
+      }
+      catch (NoSuchMethodException e) {
+        throw new IOException(
+          className + " has no public constructor taking a DataInput");
+      }
+
+      m_constructors.putIfAbsent(className, constructor);
+    }
+
+    return constructor;
+  }
+
+  private static Message newInstance(
+    Constructor<? extends Message> constructor, DataInput in)
+    throws IOException {
+
+    try {
+      return constructor.newInstance(in);
+    }
+    catch (InvocationTargetException e) {
+      final Throwable cause = e.getCause();
+
+      if (cause instanceof IOException) {
+        throw (IOException)cause;
+      }
+
+      throw new IOException("Failed to read message", cause);
+    }
+    catch (InstantiationException e) {
+      throw new IOException("Failed to read message", e);
+    }
+    catch (IllegalAccessException e) {
+      throw new IOException("Failed to read message", e);
+    }
+  }
+
+  /**
+   * Buffers a frame, reserving space for the length so the frame can be
+   * written with a single call.
+   */
+  private static final class FrameOutputStream extends ByteArrayOutputStream {
+
+    public FrameOutputStream() {
+      super(256);
+      count = HEADER_LENGTH;
+    }
+
+    @Override public synchronized void writeTo(OutputStream out)
+      throws IOException {
+
+      final int length = count - HEADER_LENGTH;
+
+      buf[0] = (byte)(length >>> 24);
+      buf[1] = (byte)(length >>> 16);
+      buf[2] = (byte)(length >>> 8);
+      buf[3] = (byte)length;
+
+      out.write(buf, 0, count);
+    }
+  }
+}
@@ -0,0 +1,58 @@
+// Copyright (C) 2013 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.grinder.communication;
+
+import java.io.DataOutput;
+import java.io.IOException;
+
+
+/**
+ * A message that has a compact binary encoding, used by
+ * {@link WireFormat#BINARY} connections.
+ *
+ * <p>
+ * Implementations must also have a public constructor that takes a single
+ * {@link java.io.DataInput} argument, and reads what
+ * {@link #writeBinary(DataOutput)} wrote. Messages sent over connections
+ * that use Java serialisation are serialised as normal, so implementations
+ * must remain {@link java.io.Serializable}.
+ * </p>
+ *
+ * <p>
+ * If you change the encoding of a message, update the identifier of
+ * {@link WireFormat#BINARY}.
+ * </p>
+ *
+ * @author Philip Aston
+ */
+public interface BinaryMessage extends Message {
+
+  /**
+   * Write the message.
+   *
+   * @param out
+   *          The output.
+   * @throws IOException
+   *           If an error occurs.
+   */
+  void writeBinary(DataOutput out) throws IOException;
+}
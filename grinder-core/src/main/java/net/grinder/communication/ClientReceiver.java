@@ -1,4 +1,4 @@
-// Copyright (C) 2000 - 2012 Philip Aston
+// Copyright (C) 2000 - 2013 Philip Aston
 // All rights reserved.
 //
 // This file is part of The Grinder software distribution. Refer to
@@ -45,13 +45,13 @@ public final class ClientReceiver extends StreamReceiver {
   public static ClientReceiver connect(Connector connector, Address address)
     throws CommunicationException {
 
-    return new ClientReceiver(new SocketWrapper(connector.connect(address)));
+    return new ClientReceiver(connector.connectSocketWrapper(address));
   }
 
   private final SocketWrapper m_socketWrapper;
 
   private ClientReceiver(SocketWrapper socketWrapper) {
-    super(socketWrapper.getInputStream());
+    super(socketWrapper.getInputStream(), socketWrapper.getCodec());
     m_socketWrapper = socketWrapper;
   }
 
@@ -1,4 +1,4 @@
-// Copyright (C) 2000 - 2012 Philip Aston
+// Copyright (C) 2000 - 2013 Philip Aston
 // All rights reserved.
 //
 // This file is part of The Grinder software distribution. Refer to
@@ -50,7 +50,7 @@ public final class ClientSender extends StreamSender implements BlockingSender {
   public static ClientSender connect(Connector connector, Address address)
     throws CommunicationException {
 
-    return new ClientSender(new SocketWrapper(connector.connect(address)));
+    return new ClientSender(connector.connectSocketWrapper(address));
   }
 
   /**
@@ -73,7 +73,7 @@ public final class ClientSender extends StreamSender implements BlockingSender {
   private ClientSender(SocketWrapper socketWrapper)
     throws CommunicationException {
 
-    super(socketWrapper.getOutputStream());
+    super(socketWrapper.getOutputStream(), socketWrapper.getCodec());
     m_socketWrapper = socketWrapper;
   }
 
@@ -113,7 +113,8 @@ public final class ClientSender extends StreamSender implements BlockingSender {
       send(messageRequiringResponse);
 
       final Receiver receiver =
-        new StreamReceiver(m_socketWrapper.getInputStream());
+        new StreamReceiver(m_socketWrapper.getInputStream(),
+                           m_socketWrapper.getCodec());
 
       result = receiver.waitForMessage();
     }
@@ -1,4 +1,4 @@
-// Copyright (C) 2000 - 2012 Philip Aston
+// Copyright (C) 2000 - 2013 Philip Aston
 // All rights reserved.
 //
 // This file is part of The Grinder software distribution. Refer to
@@ -43,9 +43,10 @@ public final class Connector {
   private final String m_hostString;
   private final int m_port;
   private final ConnectionType m_connectionType;
+  private final WireFormat m_wireFormat;
 
   /**
-   * Constructor.
+   * Constructor for connections that use Java serialisation.
    *
    * @param hostString TCP address to connect to.
    * @param port TCP port to connect to.
@@ -54,9 +55,25 @@ public final class Connector {
   public Connector(String hostString,
                    int port,
                    ConnectionType connectionType) {
+    this(hostString, port, connectionType, WireFormat.SERIALISATION);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param hostString TCP address to connect to.
+   * @param port TCP port to connect to.
+   * @param connectionType Connection type.
+   * @param wireFormat The format of messages sent over the connection.
+   */
+  public Connector(String hostString,
+                   int port,
+                   ConnectionType connectionType,
+                   WireFormat wireFormat) {
     m_hostString = hostString;
     m_port = port;
     m_connectionType = connectionType;
+    m_wireFormat = wireFormat;
   }
 
   /**
@@ -72,6 +89,58 @@ public final class Connector {
   }
 
   Socket connect(Address address) throws CommunicationException {
+    final Socket socket = openSocket(address);
+    boolean success = false;
+
+    try {
+      final WireFormat acceptedFormat = readAcceptedWireFormat(socket);
+
+      if (acceptedFormat != m_wireFormat) {
+        throw new CommunicationException(
+          "Connection accepted with wire format " + acceptedFormat +
+          ", but " + m_wireFormat + " was requested");
+      }
+
+      success = true;
+      return socket;
+    }
+    finally {
+      if (!success) {
+        closeSocket(socket);
+      }
+    }
+  }
+
+  /**
+   * Factory method that makes a TCP connection and returns a
+   * {@link SocketWrapper} that uses the wire format agreed with the
+   * {@link Acceptor}.
+   *
+   * @param address The address to announce, or {@code null}.
+   * @return The socket wrapper.
+   * @throws CommunicationException If connection could not be
+   * establish.
+   */
+  SocketWrapper connectSocketWrapper(Address address)
+    throws CommunicationException {
+
+    final Socket socket = openSocket(address);
+    boolean success = false;
+
+    try {
+      final SocketWrapper result =
+        new SocketWrapper(socket, readAcceptedWireFormat(socket));
+      success = true;
+      return result;
+    }
+    finally {
+      if (!success) {
+        closeSocket(socket);
+      }
+    }
+  }
+
+  private Socket openSocket(Address address) throws CommunicationException {
     final InetAddress inetAddress;
 
     try {
@@ -92,6 +161,7 @@ public final class Connector {
         new ObjectOutputStream(outputStream);
       objectStream.writeObject(m_connectionType);
       objectStream.writeObject(address);
+      objectStream.writeByte(m_wireFormat.getIdentifier());
       objectStream.flush();
       return socket;
     }
@@ -102,11 +172,51 @@ public final class Connector {
     }
   }
 
+  private static WireFormat readAcceptedWireFormat(Socket socket)
+    throws CommunicationException {
+
+    final int identifier;
+
+    try {
+      identifier = socket.getInputStream().read();
+    }
+    catch (IOException e) {
+      UncheckedInterruptedException.ioException(e);
+      throw new CommunicationException("Failed to read accepted format", e);
+    }
+
+    if (identifier == -1) {
+      throw new CommunicationException(
+        "Connection closed before the wire format was accepted");
+    }
+
+    return WireFormat.fromIdentifier(identifier);
+  }
+
+  private static void closeSocket(Socket socket) {
+    try {
+      socket.close();
+    }
+    catch (IOException e) {
+      UncheckedInterruptedException.ioException(e);
+    }
+  }
+
+  /**
+   * The format requested for connections made by this connector.
+   *
+   * @return The wire format.
+   */
+  WireFormat getWireFormat() {
+    return m_wireFormat;
+  }
+
   /**
    * {@inheritDoc}
    */
   @Override public int hashCode() {
-    return m_hostString.hashCode() ^ m_port ^ m_connectionType.hashCode();
+    return m_hostString.hashCode() ^ m_port ^ m_connectionType.hashCode() ^
+           m_wireFormat.hashCode();
   }
 
   /**
@@ -126,6 +236,7 @@ public final class Connector {
     return
       m_port == other.m_port &&
       m_connectionType.equals(other.m_connectionType) &&
+      m_wireFormat.equals(other.m_wireFormat) &&
       m_hostString.equals(other.m_hostString);
   }
 
@@ -154,10 +265,14 @@ public final class Connector {
   static final class ConnectDetails {
     private final ConnectionType m_connectionType;
     private final Address m_address;
+    private final WireFormat m_wireFormat;
 
-    private ConnectDetails(ConnectionType connectionType, Address address) {
+    private ConnectDetails(ConnectionType connectionType,
+                           Address address,
+                           WireFormat wireFormat) {
       m_connectionType = connectionType;
       m_address = address;
+      m_wireFormat = wireFormat;
     }
 
     public ConnectionType getConnectionType() {
@@ -167,11 +282,22 @@ public final class Connector {
     public Address getAddress() {
       return m_address;
     }
+
+    public WireFormat getWireFormat() {
+      return m_wireFormat;
+    }
   }
 
   /**
    * Read connection details from a stream.
    *
+   * <p>
+   * If the requested wire format is not supported, the details specify
+   * {@link WireFormat#SERIALISATION}, which all connectors understand. The
+   * caller should send the chosen format back to the connector with
+   * {@link #accept}.
+   * </p>
+   *
    * @param in The stream.
    * @return The details.
    * @throws CommunicationException If the details could not be read.
@@ -183,7 +309,9 @@ public final class Connector {
       final ConnectionType type =
         (ConnectionType) objectInputStream.readObject();
       final Address address = (Address) objectInputStream.readObject();
-      return new ConnectDetails(type, address);
+      final WireFormat wireFormat =
+        WireFormat.negotiate(objectInputStream.readUnsignedByte());
+      return new ConnectDetails(type, address, wireFormat);
     }
     catch (IOException e) {
       throw new CommunicationException("Could not read address details", e);
@@ -192,4 +320,25 @@ public final class Connector {
       throw new CommunicationException("Could not read address details", e);
     }
   }
+
+  /**
+   * Complete the connection handshake by telling the connector which wire
+   * format will be used.
+   *
+   * @param out The stream.
+   * @param details The details read from the connector.
+   * @throws CommunicationException If the reply could not be written.
+   */
+  static void accept(OutputStream out, ConnectDetails details)
+    throws CommunicationException {
+
+    try {
+      out.write(details.getWireFormat().getIdentifier());
+      out.flush();
+    }
+    catch (IOException e) {
+      UncheckedInterruptedException.ioException(e);
+      throw new CommunicationException("Could not accept connection", e);
+    }
+  }
 }
@@ -101,6 +101,17 @@ public final class FanOutServerSender extends AbstractFanOutSender {
     return ((SocketWrapper)resource).getOutputStream();
   }
 
+  /**
+   * Return the codec for a socket.
+   *
+   * @param resource The resource.
+   * @return The codec.
+   */
+  @Override protected MessageCodec resourceToCodec(
+    ResourcePool.Resource resource) {
+    return ((SocketWrapper)resource).getCodec();
+  }
+
   /**
    * Return the address of a socket.
    *
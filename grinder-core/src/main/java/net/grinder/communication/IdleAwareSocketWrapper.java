@@ -61,7 +61,29 @@ final class IdleAwareSocketWrapper extends SocketWrapper {
                                 final TimeAuthority timeAuthority)
     throws CommunicationException {
 
-    super(socket);
+    this(socket, WireFormat.SERIALISATION, timeAuthority);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param socket
+   *          Socket to wrap. If the caller maintains any references to the
+   *          socket, if should synchronise access to the socket streams as
+   *          described in {@link SocketWrapper}.
+   * @param wireFormat
+   *          The format of messages sent over the socket.
+   * @param timeAuthority
+   *          Something that knows the time.
+   * @throws CommunicationException
+   *           If an error occurred.
+   */
+  public IdleAwareSocketWrapper(final Socket socket,
+                                final WireFormat wireFormat,
+                                final TimeAuthority timeAuthority)
+    throws CommunicationException {
+
+    super(socket, wireFormat);
 
     m_timeAuthority = timeAuthority;
     m_idleStart = -1;
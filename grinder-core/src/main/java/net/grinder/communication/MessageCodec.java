@@ -0,0 +1,72 @@
+// Copyright (C) 2013 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.grinder.communication;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+
+/**
+ * Strategy for writing messages to, and reading messages from, a stream.
+ *
+ * <p>
+ * Implementations are stateless, and do not synchronise access to the
+ * streams. Callers are responsible for ensuring exclusive access.
+ * </p>
+ *
+ * <p>Package scope.</p>
+ *
+ * @author Philip Aston
+ */
+interface MessageCodec {
+
+  /**
+   * Write a message to a stream.
+   *
+   * @param message
+   *          The message.
+   * @param stream
+   *          The stream. Flushed after the message has been written.
+   * @throws IOException
+   *           If an error occurs.
+   */
+  void writeMessage(Message message, OutputStream stream) throws IOException;
+
+  /**
+   * Read a message from a stream.
+   *
+   * <p>
+   * Implementations should not read beyond the end of the message.
+   * </p>
+   *
+   * @param stream
+   *          The stream.
+   * @return The message.
+   * @throws IOException
+   *           If an error occurs.
+   * @throws ClassNotFoundException
+   *           If the message class could not be loaded.
+   */
+  Message readMessage(InputStream stream)
+    throws IOException, ClassNotFoundException;
+}
@@ -56,6 +56,17 @@ interface ResourcePool {
    */
   Reservation reserveNext();
 
+  /**
+   * Returns a particular resource, reserved for exclusive use by the caller.
+   * Does not block.
+   *
+   * @param resource The resource.
+   * @return The reservation, or {@code null} if the resource is currently
+   * reserved, has been closed, or does not belong to the pool. It is up to
+   * the caller to free or close the resource.
+   */
+  Reservation reserve(Resource resource);
+
   /**
    * Returns a list of reservations for all the current resources. Blocks until
    * all Reservations can be reserved. The Sentinel is not included in the list.
@@ -22,6 +22,7 @@
 package net.grinder.communication;
 
 import java.util.ArrayList;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.ListIterator;
 
@@ -51,6 +52,10 @@ final class ResourcePoolImplementation implements ResourcePool {
   private int m_lastReservable = 0;
   private int m_nextPurge = 0;
 
+  // Guarded by m_reservablesMutex.
+  private final IdentityHashMap<Resource, ResourceWrapper> m_wrappers =
+    new IdentityHashMap<Resource, ResourceWrapper>();
+
   private final ListenerSupport<Listener> m_listeners =
     new ListenerSupport<Listener>();
 
@@ -73,6 +78,7 @@ final class ResourcePoolImplementation implements ResourcePool {
 
     synchronized (m_reservablesMutex) {
       m_reservables.add(resourceWrapper);
+      m_wrappers.put(resource, resourceWrapper);
     }
 
     m_listeners.apply(
@@ -111,6 +117,28 @@ final class ResourcePoolImplementation implements ResourcePool {
     }
   }
 
+  /**
+   * Returns a particular resource, reserved for exclusive use by the caller.
+   * Does not block.
+   *
+   * @param resource The resource.
+   * @return The reservation, or {@code null} if the resource is currently
+   * reserved, has been closed, or does not belong to the pool.
+   */
+  @Override public Reservation reserve(final Resource resource) {
+    final ResourceWrapper resourceWrapper;
+
+    synchronized (m_reservablesMutex) {
+      resourceWrapper = m_wrappers.get(resource);
+    }
+
+    if (resourceWrapper != null && resourceWrapper.reserve()) {
+      return resourceWrapper;
+    }
+
+    return null;
+  }
+
   /**
    * Returns a list of all the current resources. Blocks until all
    * Reservations can be reserved. The Sentinel is not included in the
@@ -348,6 +376,12 @@ final class ResourcePoolImplementation implements ResourcePool {
       }
 
       if (stateChanged) {
+        synchronized (m_reservablesMutex) {
+          if (m_wrappers.get(m_resource) == this) {
+            m_wrappers.remove(m_resource);
+          }
+        }
+
         synchronized (m_reservableFreedMutex) {
           m_reservableFreedMutex.notifyAll();
         }
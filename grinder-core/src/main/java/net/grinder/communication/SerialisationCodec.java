@@ -0,0 +1,77 @@
+// Copyright (C) 2013 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.grinder.communication;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+
+
+/**
+ * {@link MessageCodec} that uses Java serialisation.
+ *
+ * <p>Package scope.</p>
+ *
+ * @author Philip Aston
+ */
+final class SerialisationCodec implements MessageCodec {
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override public void writeMessage(Message message, OutputStream stream)
+    throws IOException {
+
+    // I tried the model of using a single ObjectOutputStream for the
+    // lifetime of the Sender and a single ObjectInputStream for each
+    // Reader. However, the corresponding ObjectInputStream would get
+    // occasional EOF's during readObject. Seems like voodoo to me,
+    // but creating a new ObjectOutputStream for every message fixes
+    // this.
+
+    // Dr Heinz M. Kabutz's Java Specialists 2004-05-19 newsletter
+    // (http://www.javaspecialists.co.za) may hold the answer.
+    // ObjectOutputStream's cache based on object identity. The EOF
+    // might be due to this, or at least ObjectOutputStream.reset()
+    // may help. I can't get excited enough about the cost of creating
+    // a new ObjectOutputStream() to try this as the bulk of what we
+    // send are long[]'s so aren't cacheable, and it would break sends
+    // that reuse Messages.
+
+    final ObjectOutputStream objectStream = new ObjectOutputStream(stream);
+    objectStream.writeObject(message);
+    objectStream.flush();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override public Message readMessage(InputStream stream)
+    throws IOException, ClassNotFoundException {
+
+    final ObjectInputStream objectStream = new ObjectInputStream(stream);
+
+    return (Message)objectStream.readObject();
+  }
+}
@@ -1,4 +1,4 @@
-// Copyright (C) 2000 - 2012 Philip Aston
+// Copyright (C) 2000 - 2013 Philip Aston
 // All rights reserved.
 //
 // This file is part of The Grinder software distribution. Refer to
@@ -22,11 +22,21 @@
 package net.grinder.communication;
 
 import java.io.IOException;
-import java.io.ObjectInputStream;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
 
 import net.grinder.common.UncheckedInterruptedException;
 import net.grinder.communication.ResourcePool.Reservation;
+import net.grinder.util.ChannelInputStream;
 import net.grinder.util.thread.ExecutorFactory;
 import net.grinder.util.thread.InterruptibleRunnable;
 import net.grinder.util.thread.InterruptibleRunnableAdapter;
@@ -35,6 +45,14 @@ import net.grinder.util.thread.InterruptibleRunnableAdapter;
 /**
  * Manages the receipt of messages from many clients.
  *
+ * <p>
+ * Each call to {@link #receiveFrom} starts a thread that waits on a
+ * {@link Selector} for connections with input, and a number of threads that
+ * read messages from the connections that the selector finds. Idle
+ * connections cost nothing until they present data, or until they are checked
+ * for inactivity.
+ * </p>
+ *
  * @author Philip Aston
  */
 public final class ServerReceiver implements Receiver {
@@ -45,8 +63,8 @@ public final class ServerReceiver implements Receiver {
 
   /**
    * Registers a new {@link Acceptor} from which the <code>ServerReceiver</code>
-   * should process messages. Actively polls connections of the given types for
-   * messages, de-serialises them, and queues them for retrieval using
+   * should process messages. Waits for connections of the given types to
+   * present data, de-serialises messages, and queues them for retrieval using
    * {@link #waitForMessage()}.
    *
    * <p>
@@ -62,19 +80,21 @@ public final class ServerReceiver implements Receiver {
    * @param connectionTypes
    *          Type of connections to listen for.
    * @param numberOfThreads
-   *          How many threads to dedicate to processing the Acceptor. The
-   *          threads this method spawns just read, deserialise, and queue. Set
-   *          {@code numberOfThreads} to the number of concurrent streams
-   *          you expect to be able to read.
+   *          How many threads to dedicate to reading messages from the
+   *          Acceptor's connections. The threads this method spawns just read,
+   *          deserialise, and queue. Set {@code numberOfThreads} to the number
+   *          of concurrent streams you expect to be able to read.
    * @param idleThreadPollDelay
-   *          Time in milliseconds that an idle thread should sleep if there are
-   *          no sockets to process.
+   *          Time in milliseconds to wait before retrying a connection that
+   *          presented data whilst it was reserved by another thread, for
+   *          example whilst a response to an earlier message was outstanding.
    * @param inactiveClientTimeOut
    *          How long before we consider a client connection that presents no
    *          data to be inactive.
    *
    * @exception CommunicationException
-   *              If this {@code ServerReceiver} has been shutdown.
+   *              If this {@code ServerReceiver} has been shutdown, or a
+   *              selector could not be opened.
    */
   public void receiveFrom(Acceptor acceptor,
                           ConnectionType[] connectionTypes,
@@ -98,13 +118,31 @@ public final class ServerReceiver implements Receiver {
     synchronized (this) {
       m_messageQueue.checkIfShutdown();
 
+      final Selector selector;
+
+      try {
+        selector = Selector.open();
+      }
+      catch (IOException e) {
+        UncheckedInterruptedException.ioException(e);
+        throw new CommunicationException("Could not open selector", e);
+      }
+
+      final ConnectionSelector connectionSelector =
+        new ConnectionSelector(selector,
+                               idleThreadPollDelay,
+                               inactiveClientTimeOut);
+
+      for (ResourcePool socketSet : acceptedSocketSets) {
+        connectionSelector.watch(socketSet);
+      }
+
+      m_executor.submit(new InterruptibleRunnableAdapter(connectionSelector));
+
       for (int i = 0; i < numberOfThreads; ++i) {
         m_executor.submit(
           new InterruptibleRunnableAdapter(
-            new ServerReceiverRunnable(
-              new CombinedResourcePool(acceptedSocketSets),
-              idleThreadPollDelay,
-              inactiveClientTimeOut)));
+            new ReaderRunnable(connectionSelector)));
       }
     }
   }
@@ -140,150 +178,377 @@ public final class ServerReceiver implements Receiver {
   }
 
   /**
-   * Obtain reservations from multiple ResourcePools. Delegates reserveNext()
-   * to the next resource pool.
+   * Waits for connections to present data, and hands them to the
+   * {@link ReaderRunnable}s.
    *
-   * @author Philip Aston
+   * <p>
+   * A connection is in exactly one of three states. It is <em>armed</em> if
+   * it is registered with the selector for {@code OP_READ}. It is
+   * <em>ready</em> if it has been selected, and is queued for, or being
+   * processed by, a reader. It is <em>deferred</em> if it had data but could
+   * not be reserved, or its reservation was handed off to a responder; it
+   * will be made ready again after the retry delay. The selector's key set is
+   * only accessed from the selector thread, so other threads queue
+   * connections to be armed and wake the selector.
+   * </p>
    */
-  private static final class CombinedResourcePool {
-    private final ResourcePool[] m_resourcePools;
+  private final class ConnectionSelector implements InterruptibleRunnable {
 
-    // Guarded by m_resourcePools.
-    private int m_next;
-
-    CombinedResourcePool(ResourcePool[] resourcePools) {
-      assert resourcePools.length > 0;
-      m_resourcePools = resourcePools;
+    private final Selector m_selector;
+    private final long m_retryDelay;
+    private final long m_inactiveClientTimeOut;
+    private final long m_inactivityCheckInterval;
+
+    private final Queue<Connection> m_toArm =
+      new ConcurrentLinkedQueue<Connection>();
+    private final Queue<Connection> m_deferred =
+      new ConcurrentLinkedQueue<Connection>();
+    private final BlockingQueue<Connection> m_ready =
+      new LinkedBlockingQueue<Connection>();
+
+    private ConnectionSelector(Selector selector,
+                               long retryDelay,
+                               long inactiveClientTimeOut) {
+      m_selector = selector;
+      m_retryDelay = retryDelay;
+      m_inactiveClientTimeOut = inactiveClientTimeOut;
+      m_inactivityCheckInterval = Math.max(inactiveClientTimeOut / 2, 1);
     }
 
-    public Reservation reserveNext() {
-      int i = 0;
-      int start;
+    /**
+     * Watch the current and future connections in a socket set.
+     */
+    public void watch(final ResourcePool socketSet) {
+      socketSet.addListener(new ResourcePool.Listener() {
+          public void resourceAdded(ResourcePool.Resource resource) {
+            add(socketSet, resource);
+          }
 
-      synchronized (m_resourcePools) {
-        start = ++m_next;
-      }
+          public void resourceClosed(ResourcePool.Resource resource) {
+            // Closing the channel cancels its key.
+          }
+        });
 
-      while (true) {
-        final Reservation reservation =
-          m_resourcePools[(start + i) % m_resourcePools.length].reserveNext();
+      for (Reservation reservation : socketSet.reserveAll()) {
+        add(socketSet, reservation.getResource());
+        reservation.free();
+      }
+    }
 
-        if (!reservation.isSentinel() ||
-            i == m_resourcePools.length - 1) {
-          return reservation;
-        }
+    private void add(ResourcePool socketSet, ResourcePool.Resource resource) {
+      final IdleAwareSocketWrapper socketWrapper =
+        (IdleAwareSocketWrapper)resource;
 
-        ++i;
+      // Only sockets accepted by an Acceptor are selectable.
+      if (socketWrapper.getSelectableChannel() != null) {
+        arm(new Connection(socketSet, socketWrapper));
       }
     }
-  }
 
-  private final class ServerReceiverRunnable
-    implements InterruptibleRunnable {
+    private void arm(Connection connection) {
+      m_toArm.add(connection);
+      m_selector.wakeup();
+    }
 
-    private final CombinedResourcePool m_sockets;
-    private final long m_delay;
-    private final long m_inactiveClientTimeOut;
+    private void defer(Connection connection) {
+      m_deferred.add(connection);
+      m_selector.wakeup();
+    }
 
-    private ServerReceiverRunnable(CombinedResourcePool sockets,
-                                   long delay,
-                                   long inactiveClientTimeOut) {
-      m_sockets = sockets;
-      m_delay = delay;
-      m_inactiveClientTimeOut = inactiveClientTimeOut;
+    public Connection takeReady() {
+      try {
+        return m_ready.take();
+      }
+      catch (InterruptedException e) {
+        throw new UncheckedInterruptedException(e);
+      }
     }
 
     public void interruptibleRun() {
       try {
-        // Did we do some work on the last pass?
-        boolean idle = false;
+        long nextInactivityCheck =
+          System.currentTimeMillis() + m_inactivityCheckInterval;
+        long retryTime = -1;
 
-        while (true) {
-          final Reservation reservation = m_sockets.reserveNext();
-          boolean holdReservation = false;
+        while (!Thread.currentThread().isInterrupted()) {
+          final long now = System.currentTimeMillis();
+
+          if (retryTime == -1) {
+            if (!m_deferred.isEmpty()) {
+              retryTime = now + m_retryDelay;
+            }
+          }
+          else if (now >= retryTime) {
+            retryTime = -1;
 
-          try {
-            if (reservation.isSentinel()) {
-              if (idle) {
-                Thread.sleep(m_delay);
-              }
+            Connection connection;
 
-              idle = true;
+            while ((connection = m_deferred.poll()) != null) {
+              m_ready.add(connection);
             }
-            else {
-              final IdleAwareSocketWrapper socketWrapper =
-                (IdleAwareSocketWrapper)reservation.getResource();
+          }
 
-              // We don't need to synchronise access to the SocketWrapper
-              // stream; access is protected through the socket set and only we
-              // hold the reservation.
+          if (now >= nextInactivityCheck) {
+            checkInactiveConnections();
+            nextInactivityCheck = now + m_inactivityCheckInterval;
+          }
 
-              if (socketWrapper.hasData(m_inactiveClientTimeOut)) {
-                idle = false;
+          Connection connection;
 
-                final ObjectInputStream objectStream =
-                  new ObjectInputStream(socketWrapper.getInputStream());
+          while ((connection = m_toArm.poll()) != null) {
+            connection.register();
+          }
 
-                final Message message = (Message)objectStream.readObject();
+          long timeOut = nextInactivityCheck - now;
 
-                if (message instanceof CloseCommunicationMessage) {
-                  reservation.close();
-                  continue;
-                }
+          if (retryTime != -1) {
+            timeOut = Math.min(timeOut, retryTime - now);
+          }
 
-                if (message instanceof AddressAwareMessage) {
-                  final AddressAwareMessage addressAware =
-                    (AddressAwareMessage)message;
+          m_selector.select(Math.max(timeOut, 1));
 
-                  addressAware.setAddress(socketWrapper.getAddress());
-                }
+          final Iterator<SelectionKey> selected =
+            m_selector.selectedKeys().iterator();
 
-                if (message instanceof MessageRequiringResponse) {
+          while (selected.hasNext()) {
+            final SelectionKey key = selected.next();
+            selected.remove();
 
-                  final MessageRequiringResponse messageRequiringResponse =
-                    (MessageRequiringResponse)message;
+            try {
+              key.interestOps(0);
+              m_ready.add((Connection)key.attachment());
+            }
+            catch (CancelledKeyException e) {
+              // Connection has been closed.
+            }
+          }
+        }
+      }
+      catch (IOException e) {
+        UncheckedInterruptedException.ioException(e);
 
-                  messageRequiringResponse.setResponder(
-                    new SenderWithReservation(
-                      new StreamSender(socketWrapper.getOutputStream()),
-                      reservation));
+        try {
+          m_messageQueue.queue(e);
+        }
+        catch (MessageQueue.ShutdownException shutdownException) {
+          // Exit.
+        }
+      }
+      finally {
+        try {
+          m_selector.close();
+        }
+        catch (IOException e) {
+          // Ignore.
+        }
 
-                  m_messageQueue.queue(message);
+        // Ensure we're shutdown.
+        shutdown();
+      }
+    }
 
-                  // Whatever handles the MessageExpectingResponse takes
-                  // responsibility for the reservation.
-                  holdReservation = true;
-                }
-                else {
-                  m_messageQueue.queue(message);
-                }
-              }
+    /**
+     * Java only detects that a peer has gone away if we read or write, so we
+     * periodically ask the armed connections whether they have been idle for
+     * too long. See {@link IdleAwareSocketWrapper#hasData(long)}.
+     */
+    private void checkInactiveConnections() {
+      for (SelectionKey key : m_selector.keys()) {
+        try {
+          if (key.interestOps() != 0) {
+            final Connection connection = (Connection)key.attachment();
+
+            if (connection.checkInactive()) {
+              // The check may have buffered data that the selector won't
+              // see.
+              key.interestOps(0);
+              m_ready.add(connection);
             }
           }
-          catch (CommunicationException e) {
-            reservation.close();
-            m_messageQueue.queue(e);
+        }
+        catch (CancelledKeyException e) {
+          // Connection has been closed.
+        }
+      }
+    }
+
+    /**
+     * A selectable connection.
+     */
+    private final class Connection {
+      private final ResourcePool m_socketSet;
+      private final IdleAwareSocketWrapper m_socketWrapper;
+      private final SocketChannel m_channel;
+      private final ChannelInputStream m_inputStream;
+
+      // Only accessed by the selector thread.
+      private SelectionKey m_key;
+
+      private Connection(ResourcePool socketSet,
+                         IdleAwareSocketWrapper socketWrapper) {
+        m_socketSet = socketSet;
+        m_socketWrapper = socketWrapper;
+        m_channel = socketWrapper.getSelectableChannel();
+        m_inputStream = (ChannelInputStream)socketWrapper.getInputStream();
+      }
+
+      /**
+       * Called by the selector thread to arm the connection.
+       */
+      private void register() {
+        try {
+          if (m_key == null) {
+            if (m_channel.keyFor(m_selector) != null) {
+              // Another Connection already represents this channel.
+              return;
+            }
+
+            m_key = m_channel.register(m_selector, SelectionKey.OP_READ, this);
           }
-          catch (IOException e) {
-            reservation.close();
-            UncheckedInterruptedException.ioException(e);
-            m_messageQueue.queue(e);
+          else {
+            m_key.interestOps(SelectionKey.OP_READ);
           }
-          catch (ClassNotFoundException e) {
-            reservation.close();
-            m_messageQueue.queue(e);
+        }
+        catch (ClosedChannelException e) {
+          // Connection has been closed.
+        }
+        catch (CancelledKeyException e) {
+          // Connection has been closed.
+        }
+      }
+
+      /**
+       * Called by the selector thread to check an armed connection.
+       *
+       * @return {@code true} if the connection has data.
+       */
+      private boolean checkInactive() {
+        final Reservation reservation = m_socketSet.reserve(m_socketWrapper);
+
+        if (reservation == null) {
+          return false;
+        }
+
+        try {
+          return m_socketWrapper.hasData(m_inactiveClientTimeOut);
+        }
+        catch (IOException e) {
+          reservation.close();
+          return false;
+        }
+        finally {
+          reservation.free();
+        }
+      }
+
+      /**
+       * Called by a reader thread to process a ready connection.
+       */
+      public void read() throws MessageQueue.ShutdownException {
+        final Reservation reservation = m_socketSet.reserve(m_socketWrapper);
+
+        if (reservation == null) {
+          if (!m_socketWrapper.isClosed()) {
+            defer(this);
           }
-          catch (InterruptedException e) {
+
+          return;
+        }
+
+        boolean holdReservation = false;
+
+        try {
+          // We don't need to synchronise access to the SocketWrapper
+          // stream; access is protected through the socket set and only we
+          // hold the reservation.
+
+          // Drain everything we have buffered before re-arming, since the
+          // selector only knows about data that has yet to be read from the
+          // channel.
+          while (m_socketWrapper.hasData(m_inactiveClientTimeOut)) {
+            final Message message =
+              m_socketWrapper.getCodec().readMessage(m_inputStream);
+
+            if (message instanceof CloseCommunicationMessage) {
+              reservation.close();
+              return;
+            }
+
+            if (message instanceof AddressAwareMessage) {
+              final AddressAwareMessage addressAware =
+                (AddressAwareMessage)message;
+
+              addressAware.setAddress(m_socketWrapper.getAddress());
+            }
+
+            if (message instanceof MessageRequiringResponse) {
+
+              final MessageRequiringResponse messageRequiringResponse =
+                (MessageRequiringResponse)message;
+
+              messageRequiringResponse.setResponder(
+                new SenderWithReservation(
+                  new StreamSender(m_socketWrapper.getOutputStream(),
+                                   m_socketWrapper.getCodec()),
+                  reservation));
+
+              m_messageQueue.queue(message);
+
+              // Whatever handles the MessageExpectingResponse takes
+              // responsibility for the reservation. We come back for any
+              // further messages later.
+              holdReservation = true;
+              defer(this);
+              return;
+            }
+
+            m_messageQueue.queue(message);
+          }
+
+          if (m_inputStream.isEndOfStream()) {
+            // The peer went away without saying goodbye.
             reservation.close();
-            throw new UncheckedInterruptedException(e);
           }
-          finally {
-            if (!holdReservation) {
-              reservation.free();
-            }
+          else {
+            arm(this);
+          }
+        }
+        catch (CommunicationException e) {
+          reservation.close();
+          m_messageQueue.queue(e);
+        }
+        catch (IOException e) {
+          reservation.close();
+          UncheckedInterruptedException.ioException(e);
+          m_messageQueue.queue(e);
+        }
+        catch (ClassNotFoundException e) {
+          reservation.close();
+          m_messageQueue.queue(e);
+        }
+        finally {
+          if (!holdReservation) {
+            reservation.free();
           }
         }
       }
+    }
+  }
+
+  private final class ReaderRunnable implements InterruptibleRunnable {
+
+    private final ConnectionSelector m_connectionSelector;
+
+    private ReaderRunnable(ConnectionSelector connectionSelector) {
+      m_connectionSelector = connectionSelector;
+    }
+
+    public void interruptibleRun() {
+      try {
+        while (true) {
+          m_connectionSelector.takeReady().read();
+        }
+      }
       catch (MessageQueue.ShutdownException e) {
         // We've been shutdown, exit this thread.
       }
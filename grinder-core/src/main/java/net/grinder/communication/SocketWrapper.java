@@ -25,8 +25,11 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.Socket;
+import java.nio.channels.SocketChannel;
 
 import net.grinder.common.Closer;
+import net.grinder.util.ChannelInputStream;
+import net.grinder.util.ChannelOutputStream;
 import net.grinder.util.ListenerSupport;
 
 
@@ -41,6 +44,12 @@ import net.grinder.util.ListenerSupport;
  * particular stream object while they use it.
  * </p>
  *
+ * <p>
+ * If the socket has a {@link SocketChannel} that is in non-blocking mode, the
+ * streams are {@link ChannelInputStream} and {@link ChannelOutputStream}, and
+ * the channel can be registered with a selector.
+ * </p>
+ *
  * @author Philip Aston
  */
 class SocketWrapper implements ResourcePool.Resource {
@@ -49,6 +58,7 @@ class SocketWrapper implements ResourcePool.Resource {
   private final ConnectionIdentity m_connectionIdentity;
   private final InputStream m_inputStream;
   private final OutputStream m_outputStream;
+  private final MessageCodec m_codec;
 
   private final ListenerSupport<ClosedListener> m_closedListeners =
     new ListenerSupport<ClosedListener>();
@@ -71,11 +81,37 @@ class SocketWrapper implements ResourcePool.Resource {
    *           If an error occurred.
    */
   public SocketWrapper(Socket socket) throws CommunicationException {
+    this(socket, WireFormat.SERIALISATION);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param socket
+   *          Socket to wrap. If the caller maintains any references to the
+   *          socket, if should synchronise access to the socket streams as
+   *          described in {@link SocketWrapper}.
+   * @param wireFormat
+   *          The format of messages sent over the socket.
+   * @throws CommunicationException
+   *           If an error occurred.
+   */
+  public SocketWrapper(Socket socket, WireFormat wireFormat)
+    throws CommunicationException {
     m_socket = socket;
+    m_codec = wireFormat.getCodec();
 
     try {
-      m_inputStream = m_socket.getInputStream();
-      m_outputStream = m_socket.getOutputStream();
+      final SocketChannel channel = m_socket.getChannel();
+
+      if (channel != null && !channel.isBlocking()) {
+        m_inputStream = new ChannelInputStream(channel);
+        m_outputStream = new ChannelOutputStream(channel);
+      }
+      else {
+        m_inputStream = m_socket.getInputStream();
+        m_outputStream = m_socket.getOutputStream();
+      }
 
       m_connectionIdentity =
         new ConnectionIdentity(m_socket.getInetAddress(),
@@ -102,7 +138,7 @@ class SocketWrapper implements ResourcePool.Resource {
       // peer has closed the connection. We make an effort to tell the
       // peer.
       synchronized (m_outputStream) {
-        new StreamSender(m_outputStream).shutdown();
+        new StreamSender(m_outputStream, m_codec).shutdown();
       }
 
       Closer.close(m_socket);
@@ -121,6 +157,22 @@ class SocketWrapper implements ResourcePool.Resource {
     return m_socket.isClosed();
   }
 
+  /**
+   * The socket's channel, if it can be registered with a selector.
+   *
+   * @return The channel, or {@code null} if the socket has no channel or the
+   *         channel is in blocking mode.
+   */
+  public SocketChannel getSelectableChannel() {
+    final SocketChannel channel = m_socket.getChannel();
+
+    if (channel != null && !channel.isBlocking()) {
+      return channel;
+    }
+
+    return null;
+  }
+
   public ConnectionIdentity getConnectionIdentity() {
     return m_connectionIdentity;
   }
@@ -145,6 +197,15 @@ class SocketWrapper implements ResourcePool.Resource {
     return m_outputStream;
   }
 
+  /**
+   * The codec to use for messages sent and received over the socket.
+   *
+   * @return The codec.
+   */
+  public MessageCodec getCodec() {
+    return m_codec;
+  }
+
   /**
    * Socket event notification interface.
    */
@@ -0,0 +1,139 @@
+// Copyright (C) 2013 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.grinder.communication;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+/**
+ * The format of the messages sent over a connection.
+ *
+ * <p>
+ * The {@link Connector} requests a format when it connects. The
+ * {@link Acceptor} replies with the format it will use, falling back to
+ * {@link #SERIALISATION} if it does not support the requested format. Both
+ * ends of the connection use the agreed format for the lifetime of the
+ * connection.
+ * </p>
+ *
+ * @author Philip Aston
+ */
+public enum WireFormat {
+
+  /** Each message is written using Java serialisation. */
+  SERIALISATION(0, new SerialisationCodec()),
+
+  /**
+   * Keep alive messages and {@link BinaryMessage}s are written in a compact
+   * binary format. Other messages are written using Java serialisation.
+   */
+  BINARY(2, new BinaryCodec());
+
+  private final int m_identifier;
+  private final MessageCodec m_codec;
+
+  private WireFormat(int identifier, MessageCodec codec) {
+    m_identifier = identifier;
+    m_codec = codec;
+  }
+
+  /**
+   * The identifier sent on the wire. Identifiers are versioned, so that a
+   * change to the encoding can be detected at connection time.
+   *
+   * @return The identifier.
+   */
+  int getIdentifier() {
+    return m_identifier;
+  }
+
+  MessageCodec getCodec() {
+    return m_codec;
+  }
+
+  /**
+   * Encode a message, so that it can be nested within another message.
+   *
+   * @param message The message.
+   * @return The encoded message.
+   * @throws IOException If the message could not be encoded.
+   * @see #decode(byte[])
+   */
+  public byte[] encode(Message message) throws IOException {
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    m_codec.writeMessage(message, bytes);
+    return bytes.toByteArray();
+  }
+
+  /**
+   * Decode a message written by {@link #encode(Message)}.
+   *
+   * @param bytes The encoded message.
+   * @return The message.
+   * @throws IOException If the message could not be decoded.
+   */
+  public Message decode(byte[] bytes) throws IOException {
+    try {
+      return m_codec.readMessage(new ByteArrayInputStream(bytes));
+    }
+    catch (ClassNotFoundException e) {
+      throw new IOException("Failed to decode message", e);
+    }
+  }
+
+  /**
+   * Look up a format by its identifier.
+   *
+   * @param identifier The identifier.
+   * @return The format.
+   * @throws CommunicationException If the identifier is not recognised.
+   */
+  static WireFormat fromIdentifier(int identifier)
+    throws CommunicationException {
+
+    for (WireFormat format : values()) {
+      if (format.m_identifier == identifier) {
+        return format;
+      }
+    }
+
+    throw new CommunicationException("Unsupported wire format " + identifier);
+  }
+
+  /**
+   * Choose the format to use for a connection.
+   *
+   * @param identifier The identifier of the requested format.
+   * @return The requested format, or {@link #SERIALISATION} if the
+   *  identifier is not recognised.
+   */
+  static WireFormat negotiate(int identifier) {
+    for (WireFormat format : values()) {
+      if (format.m_identifier == identifier) {
+        return format;
+      }
+    }
+
+    return SERIALISATION;
+  }
+}
@@ -50,6 +50,7 @@ import net.grinder.console.synchronisation.WireDistributedBarriers;
 import net.grinder.console.textui.TextUI;
 import net.grinder.messages.console.RegisterExpressionViewMessage;
 import net.grinder.messages.console.RegisterTestsMessage;
+import net.grinder.messages.console.ReportStatisticsCounter;
 import net.grinder.messages.console.ReportStatisticsMessage;
 import net.grinder.statistics.StatisticsServicesImplementation;
 import net.grinder.translation.Translations;
@@ -167,6 +168,7 @@ public final class ConsoleFoundation {
     m_container.addComponent(timer);
     m_container.addComponent(StatisticsServicesImplementation.getInstance());
     m_container.addComponent(new StandardTimeAuthority());
+    m_container.addComponent(ReportStatisticsCounter.class);
 
     m_container.addComponent(SampleModelImplementation.class);
     m_container.addComponent(SampleModelViewsImplementation.class);
@@ -259,6 +261,13 @@ public final class ConsoleFoundation {
    */
   public void shutdown() {
 
+    final ReportStatisticsCounter reportStatisticsCounter =
+      m_container.getComponent(ReportStatisticsCounter.class);
+
+    if (reportStatisticsCounter.getNumberOfReports() > 0) {
+      m_logger.info("Received {}", reportStatisticsCounter);
+    }
+
     m_timer.cancel();
 
     m_container.dispose();
@@ -294,12 +303,14 @@ public final class ConsoleFoundation {
      * @param model Console sample model.
      * @param sampleModelViews Console sample model views
      * @param dispatchClientCommands Client command dispatcher.
+     * @param reportStatisticsCounter Counts the statistics reports received.
      */
     public WireMessageDispatch(
       final ConsoleCommunication communication,
       final SampleModel model,
       final SampleModelViews sampleModelViews,
-      final DispatchClientCommands dispatchClientCommands) {
+      final DispatchClientCommands dispatchClientCommands,
+      final ReportStatisticsCounter reportStatisticsCounter) {
 
       final MessageDispatchRegistry messageDispatchRegistry =
         communication.getMessageDispatchRegistry();
@@ -318,7 +329,10 @@ public final class ConsoleFoundation {
         new AbstractHandler<ReportStatisticsMessage>() {
           @Override
           public void handle(final ReportStatisticsMessage message) {
-            model.addTestReport(message.getStatisticsDelta());
+            reportStatisticsCounter.add(message);
+
+            model.addTestReport(message.getStatisticsDelta(),
+                                message.getTimeUnit());
           }
         });
 
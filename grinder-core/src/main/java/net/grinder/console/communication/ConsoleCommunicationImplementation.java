@@ -34,11 +34,13 @@ import net.grinder.communication.ConnectionType;
 import net.grinder.communication.FanOutServerSender;
 import net.grinder.communication.Message;
 import net.grinder.communication.MessageDispatchRegistry;
+import net.grinder.communication.MessageDispatchRegistry.AbstractHandler;
 import net.grinder.communication.MessageDispatchSender;
 import net.grinder.communication.ServerReceiver;
 import net.grinder.console.common.DisplayMessageConsoleException;
 import net.grinder.console.common.ErrorHandler;
 import net.grinder.console.model.ConsoleProperties;
+import net.grinder.messages.console.AggregatedReportMessage;
 import net.grinder.translation.Translations;
 import net.grinder.util.thread.BooleanCondition;
 
@@ -109,8 +111,8 @@ public final class ConsoleCommunicationImplementation
    * @param timeAuthority
    *          Knows the time
    * @param idlePollDelay
-   *          Time in milliseconds that our ServerReceiver threads should sleep
-   *          for if there's no incoming messages.
+   *          Time in milliseconds that our ServerReceiver should wait before
+   *          retrying a connection that presented data whilst it was busy.
    * @param inactiveClientTimeOut
    *          How long before we consider a client connection that presents no
    *          data to be inactive.
@@ -132,6 +134,20 @@ public final class ConsoleCommunicationImplementation
     m_idlePollDelay = idlePollDelay;
     m_inactiveClientTimeOut = inactiveClientTimeOut;
 
+    // Unpack the worker messages passed on by aggregating agents, so that
+    // other handlers needn't know about them.
+    m_messageDispatcher.set(
+      AggregatedReportMessage.class,
+      new AbstractHandler<AggregatedReportMessage>() {
+        @Override
+        public void handle(final AggregatedReportMessage message)
+            throws CommunicationException {
+          for (final Message workerMessage : message.getMessages()) {
+            m_messageDispatcher.send(workerMessage);
+          }
+        }
+      });
+
     properties.addPropertyChangeListener(
         new PropertyChangeListener() {
           @Override
@@ -24,6 +24,7 @@ package net.grinder.console.communication;
 
 import net.grinder.communication.Address;
 import net.grinder.messages.agent.CacheHighWaterMark;
+import net.grinder.util.FileChunk;
 import net.grinder.util.FileContents;
 
 
@@ -51,6 +52,17 @@ public interface DistributionControl {
    */
   void sendFile(Address address, FileContents fileContents);
 
+  /**
+   * Send part of a file to the agents matching the given address. The
+   * chunks of a file must be sent in order, but may be interleaved with the
+   * chunks of other files.
+   *
+   * @param address
+   *            The address of the agents.
+   * @param fileChunk The file chunk.
+   */
+  void sendFileChunk(Address address, FileChunk fileChunk);
+
   /**
    * Inform agent processes of a checkpoint of the cache state. Each agent
    * should maintain this (perhaps persistently), and report it in status
@@ -24,8 +24,10 @@ package net.grinder.console.communication;
 import net.grinder.communication.Address;
 import net.grinder.messages.agent.CacheHighWaterMark;
 import net.grinder.messages.agent.ClearCacheMessage;
+import net.grinder.messages.agent.DistributeFileChunkMessage;
 import net.grinder.messages.agent.DistributeFileMessage;
 import net.grinder.messages.agent.DistributionCacheCheckpointMessage;
+import net.grinder.util.FileChunk;
 import net.grinder.util.FileContents;
 
 
@@ -73,6 +75,18 @@ public class DistributionControlImplementation
       address, new DistributeFileMessage(fileContents));
   }
 
+  /**
+   * Send part of a file to the agents matching the given address.
+   *
+   * @param address
+   *            The address of the agents.
+   * @param fileChunk The file chunk.
+   */
+  public void sendFileChunk(Address address, FileChunk fileChunk) {
+    m_consoleCommunication.sendToAddressedAgents(
+      address, new DistributeFileChunkMessage(fileChunk));
+  }
+
   /**
    * Inform agent processes of a checkpoint of the cache state. Each agent
    * should maintain this (perhaps persistently), and report it in status
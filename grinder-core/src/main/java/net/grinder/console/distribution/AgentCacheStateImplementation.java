@@ -1,4 +1,4 @@
-// Copyright (C) 2005 - 2011 Philip Aston
+// Copyright (C) 2005 - 2013 Philip Aston
 // All rights reserved.
 //
 // This file is part of The Grinder software distribution. Refer to
@@ -24,7 +24,9 @@ package net.grinder.console.distribution;
 import java.beans.PropertyChangeListener;
 import java.beans.PropertyChangeSupport;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
 import java.util.regex.Pattern;
 
@@ -173,6 +175,31 @@ final class AgentCacheStateImplementation implements UpdateableAgentCacheState {
     public long getEarliestAgentTime() {
       return m_earliestAgentTime;
     }
+
+    public Map<String, Set<AgentAddress>> getAgentsByManifest()
+      throws OutOfDateException {
+      checkValidity();
+
+      final Map<String, Set<AgentAddress>> result =
+        new HashMap<String, Set<AgentAddress>>();
+
+      for (AgentAndCacheReport agentReport : m_agentReports) {
+        final String manifest =
+          m_validCacheParameters.getManifest(
+            agentReport.getCacheHighWaterMark());
+
+        Set<AgentAddress> agents = result.get(manifest);
+
+        if (agents == null) {
+          agents = new HashSet<AgentAddress>();
+          result.put(manifest, agents);
+        }
+
+        agents.add(new AgentAddress(agentReport.getAgentIdentity()));
+      }
+
+      return result;
+    }
   }
 
   private final class ProcessReportListener implements ProcessControl.Listener {
@@ -227,19 +254,4 @@ final class AgentCacheStateImplementation implements UpdateableAgentCacheState {
                                                  newOutOfDate);
     }
   }
-
-  private static final class AddressSet implements Address {
-    private static final long serialVersionUID = 1L;
-
-    private final Set<? extends Address> m_addresses;
-
-    public AddressSet(Set<? extends Address> addresses) {
-      m_addresses = addresses;
-    }
-
-    public boolean includes(Address address) {
-      return m_addresses.contains(address);
-    }
-  }
 }
-
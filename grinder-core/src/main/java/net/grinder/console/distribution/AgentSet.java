@@ -21,7 +21,11 @@
 
 package net.grinder.console.distribution;
 
+import java.util.Map;
+import java.util.Set;
+
 import net.grinder.communication.Address;
+import net.grinder.messages.console.AgentAddress;
 
 
 /**
@@ -38,6 +42,16 @@ interface AgentSet {
 
   long getEarliestAgentTime();
 
+  /**
+   * Group the agents by the manifest of the files that their caches hold.
+   *
+   * @return The agents, keyed by manifest. Agents with invalid caches, or
+   *         that have not recorded a manifest, are keyed by {@code null}.
+   * @throws OutOfDateException If the agent set has been invalidated.
+   */
+  Map<String, Set<AgentAddress>> getAgentsByManifest()
+    throws OutOfDateException;
+
   /**
    * Exception indicating that the agent set has been invalidated.
    */
@@ -40,4 +40,23 @@ interface CacheParameters {
   Pattern getFileFilterPattern();
 
   CacheHighWaterMark createHighWaterMark(long time);
+
+  /**
+   * Create a high water mark that also records the manifest of the files
+   * held by the cache.
+   *
+   * @param time The time.
+   * @param manifest Identifies the manifest. See {@link ContentIndex}.
+   * @return The high water mark.
+   */
+  CacheHighWaterMark createHighWaterMark(long time, String manifest);
+
+  /**
+   * Return the manifest recorded by a high water mark.
+   *
+   * @param highWaterMark The high water mark.
+   * @return The manifest, or {@code null} if {@code highWaterMark} is not
+   *         for this cache, or has no manifest.
+   */
+  String getManifest(CacheHighWaterMark highWaterMark);
 }
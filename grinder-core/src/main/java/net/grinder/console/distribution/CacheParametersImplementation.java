@@ -21,6 +21,10 @@
 
 package net.grinder.console.distribution;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.File;
+import java.io.IOException;
 import java.io.Serializable;
 import java.util.regex.Pattern;
 
@@ -59,7 +63,27 @@ final class CacheParametersImplementation
 
   @Override
   public CacheHighWaterMark createHighWaterMark(final long time) {
-    return new CacheHighWaterMarkImplementation(this, time);
+    return new CacheHighWaterMarkImplementation(this, time, null);
+  }
+
+  @Override
+  public CacheHighWaterMark createHighWaterMark(final long time,
+                                               final String manifest) {
+    return new CacheHighWaterMarkImplementation(this, time, manifest);
+  }
+
+  @Override
+  public String getManifest(final CacheHighWaterMark highWaterMark) {
+    if (highWaterMark instanceof CacheHighWaterMarkImplementation) {
+      final CacheHighWaterMarkImplementation h =
+        (CacheHighWaterMarkImplementation)highWaterMark;
+
+      if (equals(h.m_cacheParameters)) {
+        return h.m_manifest;
+      }
+    }
+
+    return null;
   }
 
   @Override public int hashCode() {
@@ -88,14 +112,58 @@ final class CacheParametersImplementation
 
     private static final long serialVersionUID = 1L;
 
-    private final CacheParameters m_cacheParameters;
+    private final CacheParametersImplementation m_cacheParameters;
     private final long m_time;
+    private final String m_manifest;
 
     public CacheHighWaterMarkImplementation(
-             final CacheParameters cacheParameters,
-             final long time) {
+             final CacheParametersImplementation cacheParameters,
+             final long time,
+             final String manifest) {
       m_cacheParameters = cacheParameters;
       m_time = time;
+      m_manifest = manifest;
+    }
+
+    /**
+     * Constructor used by the binary wire format.
+     *
+     * @param in The input.
+     * @throws IOException If the checkpoint could not be read.
+     * @see #writeBinary(DataOutput)
+     */
+    @SuppressWarnings("unused")
+    private CacheHighWaterMarkImplementation(final DataInput in)
+      throws IOException {
+
+      final Directory directory = new Directory(new File(in.readUTF()));
+      final String pattern = in.readUTF();
+      final int flags = in.readInt();
+
+      try {
+        m_cacheParameters =
+          new CacheParametersImplementation(directory,
+                                            Pattern.compile(pattern, flags));
+      }
+      catch (final IllegalArgumentException e) {
+        // Includes PatternSyntaxException.
+        throw new IOException("Invalid file filter pattern", e);
+      }
+      m_time = in.readLong();
+      m_manifest = in.readBoolean() ? in.readUTF() : null;
+    }
+
+    @Override
+    public void writeBinary(final DataOutput out) throws IOException {
+      out.writeUTF(m_cacheParameters.m_directory.getFile().getPath());
+      out.writeUTF(m_cacheParameters.m_fileFilterPattern.pattern());
+      out.writeInt(m_cacheParameters.m_fileFilterPattern.flags());
+      out.writeLong(m_time);
+      out.writeBoolean(m_manifest != null);
+
+      if (m_manifest != null) {
+        out.writeUTF(m_manifest);
+      }
     }
 
     @Override
@@ -120,6 +188,8 @@ final class CacheParametersImplementation
       final int prime = 31;
       int result = (int) (m_time ^ (m_time >>> 32));
       result = prime * result + m_cacheParameters.hashCode();
+      result = prime * result +
+               (m_manifest == null ? 0 : m_manifest.hashCode());
       return result;
     }
 
@@ -138,7 +208,9 @@ final class CacheParametersImplementation
 
       return
           m_time == other.m_time &&
-          m_cacheParameters.equals(other.m_cacheParameters);
+          m_cacheParameters.equals(other.m_cacheParameters) &&
+          (m_manifest == null ?
+              other.m_manifest == null : m_manifest.equals(other.m_manifest));
     }
 
     /**
@@ -147,7 +219,8 @@ final class CacheParametersImplementation
     @Override
     public String toString() {
       return "CacheHighWaterMark(" +
-          m_time + ", " + m_cacheParameters + ")";
+          m_time + ", " + m_cacheParameters +
+          (m_manifest != null ? ", " + m_manifest : "") + ")";
     }
   }
 }
@@ -0,0 +1,376 @@
+// Copyright (C) 2013 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+
+package net.grinder.console.distribution;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+
+import net.grinder.common.Closer;
+import net.grinder.common.UncheckedInterruptedException;
+import net.grinder.util.FileChunk;
+import net.grinder.util.FileContents.FileContentsException;
+
+
+/**
+ * Index of the contents of a distribution directory.
+ *
+ * <p>
+ * Records the digest of each file, and the <em>manifests</em> of the file
+ * sets that have been distributed. A manifest maps each relative file name
+ * to its digest, and is identified by the digest of its own contents.
+ * Agents record the manifest they hold in their cache high water mark.
+ * </p>
+ *
+ * <p>
+ * The index is saved in the console's private directory, so it survives
+ * console restarts. Files whose length and modification time are unchanged
+ * are not read again, and agents that report a known manifest are only
+ * sent the files that differ from it.
+ * </p>
+ *
+ * <p>Package scope.</p>
+ *
+ * @author Philip Aston
+ */
+final class ContentIndex {
+
+  private static final Charset UTF8 = Charset.forName("UTF-8");
+
+  private static final String DIGESTS_FILE_NAME = "digests";
+  private static final String MANIFESTS_DIRECTORY_NAME = "manifests";
+  private static final Pattern MANIFEST_NAME = Pattern.compile("[0-9a-f]+");
+  private static final int MAXIMUM_MANIFESTS = 16;
+
+  private final File m_directory;
+  private final File m_digestsFile;
+  private final File m_manifestsDirectory;
+
+  // Guarded by this. Loaded on demand.
+  private Map<String, Entry> m_entries;
+
+  // Guarded by this.
+  private final Map<String, Map<String, String>> m_manifests =
+    new HashMap<String, Map<String, String>>();
+
+  /**
+   * Constructor.
+   *
+   * @param directory
+   *          The distribution directory.
+   * @param privateDirectory
+   *          Where the index is saved.
+   */
+  ContentIndex(File directory, File privateDirectory) {
+    m_directory = directory;
+    m_digestsFile = new File(privateDirectory, DIGESTS_FILE_NAME);
+    m_manifestsDirectory =
+      new File(privateDirectory, MANIFESTS_DIRECTORY_NAME);
+  }
+
+  /**
+   * The distribution directory.
+   *
+   * @return The directory.
+   */
+  File getDirectory() {
+    return m_directory;
+  }
+
+  /**
+   * Return the digest of a file, reading the file if it has changed since
+   * the digest was last calculated.
+   *
+   * @param file
+   *          The file, relative to the distribution directory.
+   * @return The digest.
+   * @throws FileContentsException
+   *           If the file could not be read.
+   */
+  synchronized String getDigest(File file) throws FileContentsException {
+    if (m_entries == null) {
+      m_entries = loadEntries();
+    }
+
+    final String path = file.getPath();
+    final File localFile = new File(m_directory, path);
+    final long length = localFile.length();
+    final long lastModified = localFile.lastModified();
+
+    final Entry existing = m_entries.get(path);
+
+    if (existing != null &&
+        existing.m_length == length &&
+        existing.m_lastModified == lastModified) {
+      return existing.m_digest;
+    }
+
+    final String digest = FileChunk.calculateDigest(localFile);
+
+    // Don't remember the digest if the file changed while we read it.
+    if (localFile.lastModified() == lastModified &&
+        localFile.length() == length) {
+      m_entries.put(path, new Entry(digest, length, lastModified));
+    }
+    else {
+      m_entries.remove(path);
+    }
+
+    return digest;
+  }
+
+  /**
+   * Record a manifest, and save the index.
+   *
+   * @param manifest
+   *          The relative file names and their digests.
+   * @return Identifies the manifest.
+   */
+  synchronized String putManifest(SortedMap<String, String> manifest) {
+    final StringBuilder text = new StringBuilder();
+
+    for (Map.Entry<String, String> e : manifest.entrySet()) {
+      text.append(e.getValue()).append(' ').append(e.getKey()).append('\n');
+    }
+
+    final byte[] bytes = text.toString().getBytes(UTF8);
+
+    final MessageDigest messageDigest = FileChunk.createDigest();
+    messageDigest.update(bytes);
+    final String id = FileChunk.digestToString(messageDigest);
+
+    m_manifests.put(id,
+                    Collections.unmodifiableMap(
+                      new TreeMap<String, String>(manifest)));
+
+    // Saving is best effort. If it fails, the console will send all the
+    // files to agents that report this manifest after a restart.
+    m_manifestsDirectory.mkdirs();
+
+    final File manifestFile = new File(m_manifestsDirectory, id);
+
+    if (!manifestFile.exists()) {
+      save(manifestFile, bytes);
+    }
+
+    manifestFile.setLastModified(System.currentTimeMillis());
+    pruneManifests(manifestFile);
+
+    if (m_entries != null) {
+      final StringBuilder entries = new StringBuilder();
+
+      for (String path : manifest.keySet()) {
+        final Entry entry = m_entries.get(path);
+
+        if (entry != null) {
+          entries.append(entry.m_digest).append(' ')
+                 .append(entry.m_length).append(' ')
+                 .append(entry.m_lastModified).append(' ')
+                 .append(path).append('\n');
+        }
+      }
+
+      save(m_digestsFile, entries.toString().getBytes(UTF8));
+    }
+
+    return id;
+  }
+
+  /**
+   * Return a manifest.
+   *
+   * @param id
+   *          Identifies the manifest.
+   * @return The manifest, or {@code null} if it is unknown.
+   */
+  synchronized Map<String, String> getManifest(String id) {
+    final Map<String, String> existing = m_manifests.get(id);
+
+    if (existing != null) {
+      return existing;
+    }
+
+    // The id comes from an agent, so check it before using it as a file
+    // name.
+    if (!MANIFEST_NAME.matcher(id).matches()) {
+      return null;
+    }
+
+    final File manifestFile = new File(m_manifestsDirectory, id);
+
+    if (!manifestFile.isFile()) {
+      return null;
+    }
+
+    final Map<String, String> manifest = new TreeMap<String, String>();
+
+    for (String line : load(manifestFile)) {
+      final int space = line.indexOf(' ');
+
+      if (space > 0) {
+        manifest.put(line.substring(space + 1), line.substring(0, space));
+      }
+    }
+
+    final Map<String, String> result = Collections.unmodifiableMap(manifest);
+    m_manifests.put(id, result);
+    return result;
+  }
+
+  private Map<String, Entry> loadEntries() {
+    final Map<String, Entry> result = new HashMap<String, Entry>();
+
+    for (String line : load(m_digestsFile)) {
+      final String[] fields = line.split(" ", 4);
+
+      if (fields.length == 4) {
+        try {
+          result.put(fields[3],
+                     new Entry(fields[0],
+                               Long.parseLong(fields[1]),
+                               Long.parseLong(fields[2])));
+        }
+        catch (NumberFormatException e) {
+          // Ignore corrupt entries.
+        }
+      }
+    }
+
+    return result;
+  }
+
+  private void pruneManifests(final File latest) {
+    final File[] manifests = m_manifestsDirectory.listFiles();
+
+    if (manifests == null || manifests.length <= MAXIMUM_MANIFESTS) {
+      return;
+    }
+
+    // Keep the most recently used manifests. File times are coarse, so
+    // make sure we keep the latest.
+    Arrays.sort(manifests, new Comparator<File>() {
+      public int compare(File f1, File f2) {
+        if (f1.equals(latest)) {
+          return f2.equals(latest) ? 0 : -1;
+        }
+        else if (f2.equals(latest)) {
+          return 1;
+        }
+
+        final long t1 = f1.lastModified();
+        final long t2 = f2.lastModified();
+        return t1 > t2 ? -1 : t1 < t2 ? 1 : 0;
+      }
+    });
+
+    for (int i = MAXIMUM_MANIFESTS; i < manifests.length; ++i) {
+      m_manifests.remove(manifests[i].getName());
+      manifests[i].delete();
+    }
+  }
+
+  private static List<String> load(File file) {
+    final List<String> result = new ArrayList<String>();
+
+    if (!file.isFile()) {
+      return result;
+    }
+
+    BufferedReader reader = null;
+
+    try {
+      reader = new BufferedReader(
+        new InputStreamReader(new FileInputStream(file), UTF8));
+
+      String line;
+
+      while ((line = reader.readLine()) != null) {
+        result.add(line);
+      }
+    }
+    catch (IOException e) {
+      UncheckedInterruptedException.ioException(e);
+      result.clear();
+    }
+    finally {
+      Closer.close(reader);
+    }
+
+    return result;
+  }
+
+  private static void save(File file, byte[] bytes) {
+    final File temporaryFile = new File(file.getPath() + ".new");
+
+    OutputStream out = null;
+
+    try {
+      file.getParentFile().mkdirs();
+      out = new FileOutputStream(temporaryFile);
+      out.write(bytes);
+      out.close();
+      out = null;
+
+      file.delete();
+
+      if (!temporaryFile.renameTo(file)) {
+        temporaryFile.delete();
+      }
+    }
+    catch (IOException e) {
+      UncheckedInterruptedException.ioException(e);
+      temporaryFile.delete();
+    }
+    finally {
+      Closer.close(out);
+    }
+  }
+
+  private static final class Entry {
+    private final String m_digest;
+    private final long m_length;
+    private final long m_lastModified;
+
+    Entry(String digest, long length, long lastModified) {
+      m_digest = digest;
+      m_length = length;
+      m_lastModified = lastModified;
+    }
+  }
+}
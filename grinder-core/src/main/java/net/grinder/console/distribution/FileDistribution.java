@@ -1,4 +1,4 @@
-// Copyright (C) 2005 - 2008 Philip Aston
+// Copyright (C) 2005 - 2013 Philip Aston
 // All rights reserved.
 //
 // This file is part of The Grinder software distribution. Refer to
@@ -64,6 +64,15 @@ public interface FileDistribution extends FileChangeWatcher {
    */
   void scanDistributionFiles();
 
+  /**
+   * Check for files that have been modified, using notifications from the
+   * file system where possible. Cheaper than {@link #scanDistributionFiles()},
+   * but might not see changes made immediately before the call. Update the
+   * agent cache state appropriately. Notify our listeners if changed files
+   * are discovered.
+   */
+  void checkDistributionFiles();
+
   /**
    * Return a FileFilter that can be used to test  whether the given file is
    * one that will be distributed.
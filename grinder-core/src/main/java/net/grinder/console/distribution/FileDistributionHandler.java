@@ -1,4 +1,4 @@
-// Copyright (C) 2005 - 2010 Philip Aston
+// Copyright (C) 2005 - 2013 Philip Aston
 // All rights reserved.
 //
 // This file is part of The Grinder software distribution. Refer to
@@ -44,7 +44,8 @@ public interface FileDistributionHandler {
     int getProgressInCents();
 
     /**
-     * The file name of file just distributed.
+     * The file name of file just distributed, or just skipped because
+     * the agents already hold it.
      *
      * @return The file name.
      */
@@ -52,9 +53,9 @@ public interface FileDistributionHandler {
   }
 
   /**
-   * Send the next file.
+   * Send the next part of the distribution.
    *
-   * @return A {@link Result} or <code>null</code> if there are more
+   * @return A {@link Result} or <code>null</code> if there are no more
    * files to process.
    * @throws FileContentsException If an error occurs
    * sending the file.
@@ -1,4 +1,4 @@
-// Copyright (C) 2005 - 2008 Philip Aston
+// Copyright (C) 2005 - 2013 Philip Aston
 // All rights reserved.
 //
 // This file is part of The Grinder software distribution. Refer to
@@ -19,19 +19,50 @@
 // ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
 // OF THE POSSIBILITY OF SUCH DAMAGE.
 
+
 package net.grinder.console.distribution;
 
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.Deflater;
 
+import net.grinder.common.Closer;
+import net.grinder.common.UncheckedInterruptedException;
 import net.grinder.communication.Address;
 import net.grinder.console.communication.DistributionControl;
 import net.grinder.console.distribution.AgentSet.OutOfDateException;
-import net.grinder.util.FileContents;
+import net.grinder.messages.console.AgentAddress;
+import net.grinder.util.FileChunk;
+import net.grinder.util.FileContents.FileContentsException;
+import net.grinder.util.thread.ExecutorFactory;
 
 
 /**
  * File Distribution Handler implementation.
  *
+ * <p>
+ * Files are sent as a sequence of compressed {@link FileChunk}s. Each file
+ * is only sent to the agents whose caches do not already hold a file with
+ * the same content, as recorded by the manifest in their cache high water
+ * mark. Up to {@link #PIPELINE_DEPTH} files are in progress at once; the
+ * next chunk of each is read and compressed by a worker thread while the
+ * previous chunk is being sent.
+ * </p>
+ *
  * <p>Not thread safe.</p>
  *
  * @author Philip Aston
@@ -39,87 +70,364 @@ import net.grinder.util.FileContents;
 final class FileDistributionHandlerImplementation
   implements FileDistributionHandler {
 
+  /** Uncompressed size of each chunk. Package scope for unit tests. */
+  static final int CHUNK_SIZE = 64 * 1024;
+
+  /** Maximum number of files in progress. Package scope for unit tests. */
+  static final int PIPELINE_DEPTH = 4;
+
   private final CacheParameters m_cacheParameters;
   private final File m_directory;
   private final File[] m_files;
   private final long m_latestFileTime;
+  private final long m_totalBytes;
   private final DistributionControl m_distributionControl;
   private final AgentSet m_agents;
+  private final ContentIndex m_contentIndex;
 
+  private final SortedMap<String, String> m_manifest =
+    new TreeMap<String, String>();
+  private final LinkedList<FileSender> m_senders = new LinkedList<FileSender>();
+
+  private List<AgentGroup> m_agentGroups;
+  private ExecutorService m_executor;
   private int m_fileIndex = 0;
+  private long m_bytesDone = 0;
 
   FileDistributionHandlerImplementation(
     CacheParameters cacheParameters,
     File directory,
     File[] files,
     DistributionControl distributionControl,
-    AgentSet agents) {
+    AgentSet agents,
+    ContentIndex contentIndex) {
 
     m_cacheParameters = cacheParameters;
     m_directory = directory;
     m_files = files;
     m_distributionControl = distributionControl;
     m_agents = agents;
+    m_contentIndex = contentIndex;
 
     long latestFileTime = -1;
+    long totalBytes = 0;
 
     for (int i = 0; i < m_files.length; ++i) {
-      final long fileTime =
-        new File(m_directory, m_files[i].getPath()).lastModified();
+      final File file = new File(m_directory, m_files[i].getPath());
 
-      latestFileTime = Math.max(latestFileTime, fileTime);
+      latestFileTime = Math.max(latestFileTime, file.lastModified());
+      totalBytes += file.length();
     }
 
     m_latestFileTime = latestFileTime;
+    m_totalBytes = totalBytes;
   }
 
-  public Result sendNextFile() throws FileContents.FileContentsException {
+  /**
+   * Send the next part of the distribution. This is either the next chunk
+   * of a file, or notice that a file was skipped because all agents already
+   * hold it.
+   *
+   * @return A {@link Result} or <code>null</code> if there are no more
+   *         files to process.
+   * @throws FileContentsException
+   *           If a file could not be read. The file is abandoned, but the
+   *           distribution can be continued.
+   */
+  public Result sendNextFile() throws FileContentsException {
     try {
-      if (m_fileIndex < m_files.length) {
-        if (m_fileIndex == 0) {
-          // Clear any cache that has out of date cache parameters.
-          // We currently we do nothing about cached copies of deleted files.
-          final Address addressAgentsWithInvalidCaches =
-            m_agents.getAddressOfOutOfDateAgents(0);
-
-          m_distributionControl.clearFileCaches(addressAgentsWithInvalidCaches);
-        }
+      if (m_agentGroups == null) {
+        // Clear any cache that has out of date cache parameters.
+        // We currently we do nothing about cached copies of deleted files.
+        final Address addressAgentsWithInvalidCaches =
+          m_agents.getAddressOfOutOfDateAgents(0);
+
+        m_distributionControl.clearFileCaches(addressAgentsWithInvalidCaches);
 
-        try {
-          final int index = m_fileIndex;
-          final File file = m_files[index];
+        m_agentGroups = groupAgents();
+        m_executor =
+          ExecutorFactory.createTransientThreadPool("file-distribution",
+                                                    PIPELINE_DEPTH);
+      }
 
-          final Address addressAgentsWithoutFile =
-            m_agents.getAddressOfOutOfDateAgents(
-              new File(m_directory, file.getPath()).lastModified());
+      while (m_senders.size() < PIPELINE_DEPTH &&
+             m_fileIndex < m_files.length) {
 
-          m_distributionControl.sendFile(addressAgentsWithoutFile,
-                                         new FileContents(m_directory, file));
+        final File file = m_files[m_fileIndex++];
+        final String path = file.getPath();
+        final String digest = m_contentIndex.getDigest(file);
+        m_manifest.put(path, digest);
 
-          return new Result() {
-              public int getProgressInCents() {
-                return ((index + 1) * 100) / m_files.length;
-              }
+        final Address addressAgentsWithoutFile =
+          getAddressOfAgentsWithout(path, digest);
 
-              public String getFileName() {
-                return file.getPath();
-              }
-            };
-        }
-        finally {
-          ++m_fileIndex;
+        if (addressAgentsWithoutFile == null) {
+          m_bytesDone += new File(m_directory, path).length();
+          return result(path);
         }
+
+        final FileSender sender =
+          new FileSender(file, digest, addressAgentsWithoutFile);
+        sender.readNextChunk();
+        m_senders.add(sender);
       }
-      else {
+
+      if (m_senders.isEmpty()) {
+        final String manifest = m_contentIndex.putManifest(m_manifest);
+
         m_distributionControl.setHighWaterMark(
           m_agents.getAddressOfAllAgents(),
-          m_cacheParameters.createHighWaterMark(m_latestFileTime));
+          m_cacheParameters.createHighWaterMark(m_latestFileTime, manifest));
+
+        m_executor.shutdown();
 
         return null;
       }
+
+      // Serve the files in progress in turn, so that a large file does not
+      // hold up the others.
+      final FileSender sender = m_senders.removeFirst();
+      final FileChunk chunk;
+
+      try {
+        chunk = sender.getChunk();
+      }
+      catch (FileContentsException e) {
+        m_manifest.remove(sender.getPath());
+        throw e;
+      }
+
+      m_distributionControl.sendFileChunk(sender.getAddress(), chunk);
+      m_bytesDone += chunk.getLength();
+
+      if (!chunk.isLast()) {
+        sender.readNextChunk();
+        m_senders.addLast(sender);
+      }
+
+      return result(sender.getPath());
     }
     catch (OutOfDateException e) {
+      for (FileSender sender : m_senders) {
+        sender.close();
+      }
+
+      m_senders.clear();
+
+      if (m_executor != null) {
+        m_executor.shutdown();
+      }
+
       return null;
     }
   }
+
+  private Result result(final String path) {
+    final int progress = m_totalBytes > 0 ?
+        (int) Math.min(100, (m_bytesDone * 100) / m_totalBytes) :
+        (m_fileIndex * 100) / m_files.length;
+
+    return new Result() {
+        public int getProgressInCents() {
+          return progress;
+        }
+
+        public String getFileName() {
+          return path;
+        }
+      };
+  }
+
+  private List<AgentGroup> groupAgents() throws OutOfDateException {
+    final List<AgentGroup> result = new ArrayList<AgentGroup>();
+    final Set<AgentAddress> agentsWithoutManifest = new HashSet<AgentAddress>();
+
+    for (Map.Entry<String, Set<AgentAddress>> e :
+         m_agents.getAgentsByManifest().entrySet()) {
+
+      final Map<String, String> manifest =
+        e.getKey() != null ? m_contentIndex.getManifest(e.getKey()) : null;
+
+      if (manifest != null) {
+        result.add(new AgentGroup(manifest, e.getValue()));
+      }
+      else {
+        agentsWithoutManifest.addAll(e.getValue());
+      }
+    }
+
+    if (!agentsWithoutManifest.isEmpty()) {
+      result.add(new AgentGroup(null, agentsWithoutManifest));
+    }
+
+    return result;
+  }
+
+  /**
+   * Return the address of the agents that do not hold a file, or
+   * {@code null} if every agent holds it.
+   */
+  private Address getAddressOfAgentsWithout(String path, String digest) {
+    final List<AgentGroup> groups = new ArrayList<AgentGroup>();
+
+    for (AgentGroup group : m_agentGroups) {
+      if (!group.holds(path, digest)) {
+        groups.add(group);
+      }
+    }
+
+    if (groups.isEmpty()) {
+      return null;
+    }
+    else if (groups.size() == 1) {
+      return groups.get(0).getAddress();
+    }
+
+    final Set<AgentAddress> agents = new HashSet<AgentAddress>();
+
+    for (AgentGroup group : groups) {
+      agents.addAll(group.getAgents());
+    }
+
+    return new AddressSet(agents);
+  }
+
+  /**
+   * Agents whose caches hold the same manifest.
+   */
+  private static final class AgentGroup {
+    private final Map<String, String> m_manifest;
+    private final Set<AgentAddress> m_agents;
+    private final Address m_address;
+
+    AgentGroup(Map<String, String> manifest, Set<AgentAddress> agents) {
+      m_manifest = manifest;
+      m_agents = agents;
+      m_address = new AddressSet(agents);
+    }
+
+    public boolean holds(String path, String digest) {
+      return m_manifest != null && digest.equals(m_manifest.get(path));
+    }
+
+    public Set<AgentAddress> getAgents() {
+      return m_agents;
+    }
+
+    public Address getAddress() {
+      return m_address;
+    }
+  }
+
+  /**
+   * Reads and compresses the chunks of a file. At most one chunk is
+   * outstanding at a time, so the buffer and deflater can be reused.
+   */
+  private final class FileSender implements Callable<FileChunk> {
+    private final File m_file;
+    private final String m_digest;
+    private final Address m_address;
+    private final byte[] m_buffer = new byte[CHUNK_SIZE];
+    private final Deflater m_deflater = new Deflater(Deflater.BEST_SPEED);
+
+    // Accessed by the worker thread, and handed over by m_future.
+    private InputStream m_in;
+    private long m_offset;
+
+    private Future<FileChunk> m_future;
+
+    FileSender(File file, String digest, Address address) {
+      m_file = file;
+      m_digest = digest;
+      m_address = address;
+    }
+
+    public String getPath() {
+      return m_file.getPath();
+    }
+
+    public Address getAddress() {
+      return m_address;
+    }
+
+    public void readNextChunk() {
+      m_future = m_executor.submit(this);
+    }
+
+    public FileChunk getChunk() throws FileContentsException {
+      try {
+        return m_future.get();
+      }
+      catch (InterruptedException e) {
+        close();
+        throw new UncheckedInterruptedException(e);
+      }
+      catch (ExecutionException e) {
+        close();
+
+        final Throwable cause = e.getCause();
+
+        if (cause instanceof FileContentsException) {
+          throw (FileContentsException) cause;
+        }
+        else if (cause instanceof RuntimeException) {
+          throw (RuntimeException) cause;
+        }
+
+        throw new AssertionError(cause);
+      }
+    }
+
+    public FileChunk call() throws FileContentsException {
+      boolean last = false;
+
+      try {
+        final File localFile = new File(m_directory, m_file.getPath());
+
+        if (m_in == null) {
+          m_in = new FileInputStream(localFile);
+        }
+
+        int n = 0;
+
+        while (n < m_buffer.length) {
+          final int bytesRead = m_in.read(m_buffer, n, m_buffer.length - n);
+
+          if (bytesRead == -1) {
+            last = true;
+            break;
+          }
+
+          n += bytesRead;
+        }
+
+        last |= m_offset + n >= localFile.length();
+
+        final FileChunk result =
+          new FileChunk(m_file, m_digest, m_offset, m_buffer, n, last,
+                        m_deflater);
+
+        m_offset += n;
+
+        return result;
+      }
+      catch (IOException e) {
+        UncheckedInterruptedException.ioException(e);
+        last = true;
+        throw new FileContentsException(
+          "Failed to read file: " + e.getMessage(), e);
+      }
+      finally {
+        if (last) {
+          close();
+        }
+      }
+    }
+
+    public void close() {
+      Closer.close(m_in);
+      m_in = null;
+      m_deflater.end();
+    }
+  }
 }
@@ -1,4 +1,4 @@
-// Copyright (C) 2005 - 2012 Philip Aston
+// Copyright (C) 2005 - 2013 Philip Aston
 // All rights reserved.
 //
 // This file is part of The Grinder software distribution. Refer to
@@ -24,13 +24,18 @@ package net.grinder.console.distribution;
 import java.io.File;
 import java.io.FileFilter;
 import java.io.IOException;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
 import java.util.Set;
 import java.util.regex.Pattern;
 
+import net.grinder.common.UncheckedInterruptedException;
 import net.grinder.console.communication.DistributionControl;
 import net.grinder.console.communication.ProcessControl;
 import net.grinder.util.Directory;
+import net.grinder.util.DirectoryWatcher;
 import net.grinder.util.ListenerSupport;
 import net.grinder.util.ListenerSupport.Informer;
 
@@ -46,13 +51,38 @@ public final class FileDistributionImplementation implements FileDistribution {
 
   private static final String PRIVATE_DIRECTORY_NAME = ".grinder";
 
+  /**
+   * How often {@link #checkDistributionFiles()} scans the whole distribution
+   * directory, in milliseconds.
+   */
+  private static final long FULL_SCAN_PERIOD = 60000;
+
   private final ListenerSupport<FileChangedListener> m_filesChangedListeners =
     new ListenerSupport<FileChangedListener>();
 
   private final DistributionControl m_distributionControl;
   private final UpdateableAgentCacheState m_cacheState;
 
-  private volatile long m_lastScanTime;
+  /**
+   * Modification times of the files and directories in the distribution
+   * set, as of the last check.
+   */
+  private final Map<File, Long> m_index = new HashMap<File, Long>();
+
+  // Guarded by m_index.
+  private DirectoryWatcher m_watcher;
+
+  // Guarded by m_index. Set if we fail to watch the directory, so we don't
+  // keep trying.
+  private boolean m_watchingFailed;
+
+  // Guarded by m_index.
+  private long m_lastFullScanTime;
+
+  private volatile boolean m_resetIndex = true;
+
+  // Guarded by this.
+  private ContentIndex m_contentIndex;
 
   /**
    * Constructor.
@@ -91,7 +121,7 @@ public final class FileDistributionImplementation implements FileDistribution {
    * @param directory The base distribution directory.
    */
   public void setDirectory(Directory directory) {
-    m_lastScanTime = -1;
+    m_resetIndex = true;
     m_cacheState.setDirectory(directory);
   }
 
@@ -103,7 +133,7 @@ public final class FileDistributionImplementation implements FileDistribution {
    *            filtered out.
    */
   public void setFileFilterPattern(Pattern distributionFileFilterPattern) {
-    m_lastScanTime = -1;
+    m_resetIndex = true;
     m_cacheState.setFileFilterPattern(distributionFileFilterPattern);
   }
 
@@ -142,20 +172,46 @@ public final class FileDistributionImplementation implements FileDistribution {
 
     final CacheParameters cacheParameters = m_cacheState.getCacheParameters();
 
+    final File directory = cacheParameters.getDirectory().getFile();
+
+    // We list every file, rather than those changed since the earliest agent
+    // time, so the handler can record a complete manifest. The handler only
+    // sends the files that the agents don't already hold.
     return new FileDistributionHandlerImplementation(
       cacheParameters,
-      cacheParameters.getDirectory().getFile(),
+      directory,
       cacheParameters.getDirectory().listContents(
-        new FixedPatternFileFilter(agents.getEarliestAgentTime(),
+        new FixedPatternFileFilter(-1,
                                    cacheParameters.getFileFilterPattern())),
       m_distributionControl,
-      agents);
+      agents,
+      getContentIndex(directory));
+  }
+
+  private synchronized ContentIndex getContentIndex(File directory) {
+    if (m_contentIndex == null ||
+        !m_contentIndex.getDirectory().equals(directory)) {
+      m_contentIndex =
+        new ContentIndex(directory,
+                         new File(directory, PRIVATE_DIRECTORY_NAME));
+    }
+
+    return m_contentIndex;
   }
 
   /**
-   * Scan the given directory for files that have been recently modified. Update
-   * the agent cache state appropriately. Notify our listeners if changed files
-   * are discovered.
+   * Scan the distribution directory for files that have changed since the
+   * last scan. Update the agent cache state appropriately. Notify our
+   * listeners if changed files are discovered.
+   *
+   * <p>
+   * We keep an index of the modification time of each file and directory in
+   * the distribution set. A file or directory has changed if it is new, or
+   * its modification time differs from the index. We only compare times
+   * obtained from the file system, so we're not affected by differences
+   * between the system clock and whatever the (potentially remote) file
+   * system uses to generate timestamps.
+   * </p>
    *
    * <p>
    * This method is too coupled to the agent cache. Perhaps this and the file
@@ -168,73 +224,117 @@ public final class FileDistributionImplementation implements FileDistribution {
    * </p>
    */
   public void scanDistributionFiles() {
+    updateDistributionFiles(true);
+  }
 
-    final long scanTime = m_lastScanTime;
-    final CacheParameters cacheParameters = m_cacheState.getCacheParameters();
+  /**
+   * Check for changes to the distribution files, using notifications from
+   * the file system where possible.
+   *
+   * <p>
+   * Only the files reported by the file system are examined. We fall back to
+   * {@link #scanDistributionFiles()} if file system notifications are not
+   * available or some were lost. We also scan periodically, in case the
+   * file system fails to notify us of a change; this happens with some
+   * network file systems.
+   * </p>
+   */
+  public void checkDistributionFiles() {
+    updateDistributionFiles(false);
+  }
+
+  private void updateDistributionFiles(boolean fullScan) {
 
-    // We only work with times obtained from the file system. This avoids
-    // problems due to differences between the system clock and whatever the
-    // (potentially remote) file system uses to generate timestamps. It also
-    // avoids problems due to accuracy of file timestamps.
-    try {
-      // We create our temporary file below the given directory so we can be
-      // fairly sure it's on the same file system. However, we don't want the
-      // root directory timestamp to be constantly changing, so we create
-      // files in a more long-lived working directory.
-      final File privateDirectory =
-        new File(cacheParameters.getDirectory().getFile(),
-                 PRIVATE_DIRECTORY_NAME);
-      privateDirectory.mkdir();
-      privateDirectory.deleteOnExit();
-
-      final File temporaryFile =
-        File.createTempFile(".scantime", "", privateDirectory);
-      temporaryFile.deleteOnExit();
-      synchronized (this) {
-        m_lastScanTime = temporaryFile.lastModified();
+    final File[] changedFilesArray;
+
+    synchronized (m_index) {
+      final CacheParameters cacheParameters =
+        m_cacheState.getCacheParameters();
+
+      final Directory directory = cacheParameters.getDirectory();
+
+      final FileFilter filter =
+        new FixedPatternFileFilter(-1, cacheParameters.getFileFilterPattern());
+
+      if (m_resetIndex) {
+        m_resetIndex = false;
+        m_index.clear();
+        stopWatching();
+        m_watchingFailed = false;
+        fullScan = true;
       }
-      temporaryFile.delete();
-    }
-    catch (IOException e) {
-      synchronized (this) {
-        m_lastScanTime = System.currentTimeMillis() - 1000;
+
+      final Set<File> changedFiles = new HashSet<File>();
+
+      Set<File> events = null;
+
+      if (m_watcher != null) {
+        try {
+          events = m_watcher.poll();
+        }
+        catch (IOException e) {
+          UncheckedInterruptedException.ioException(e);
+          watchingFailed();
+        }
       }
-    }
 
-    // Include directories because our listeners want to know about changes
-    // to them too.
-    final File[] laterFiles =
-      cacheParameters.getDirectory().listContents(
-        new FixedPatternFileFilter(scanTime,
-                                   cacheParameters.getFileFilterPattern()),
-        true,
-        true);
-
-    if (laterFiles.length > 0) {
-      final Set<File> changedFiles = new HashSet<File>(laterFiles.length / 2);
-
-      for (int i = 0; i < laterFiles.length; ++i) {
-        final File laterFile = laterFiles[i];
-
-        // We didn't filter directories by time when building up laterFiles,
-        // do so now.
-        if (laterFile.isDirectory() &&
-            laterFile.lastModified() < scanTime) {
-          continue;
+      final long now = System.currentTimeMillis();
+
+      if (fullScan ||
+          events == null ||
+          now - m_lastFullScanTime >= FULL_SCAN_PERIOD) {
+
+        m_lastFullScanTime = now;
+
+        boolean watchAll = false;
+
+        if (m_watcher == null &&
+            !m_watchingFailed &&
+            DirectoryWatcher.isSupported()) {
+          try {
+            m_watcher = new DirectoryWatcher();
+            watchAll = true;
+          }
+          catch (IOException e) {
+            UncheckedInterruptedException.ioException(e);
+            watchingFailed();
+          }
         }
 
-        if (laterFile.isFile()) {
+        // Include directories because our listeners want to know about
+        // changes to them too.
+        final File[] files = directory.listContents(filter, true, true);
+
+        final Set<File> present = new HashSet<File>(files.length);
+
+        for (File file : files) {
+          present.add(file);
+
+          if (updateIndex(file, changedFiles) || watchAll) {
+            watch(file);
+          }
+        }
+
+        m_index.keySet().retainAll(present);
+      }
+      else {
+        for (File file : events) {
+          processChange(directory.getFile(), filter, file, changedFiles);
+        }
+      }
+
+      for (File changedFile : changedFiles) {
+        if (changedFile.isFile()) {
           // Only mark the cache invalid for changes to files,
           // since we don't distribute directories.
-          m_cacheState.setNewFileTime(laterFile.lastModified());
+          m_cacheState.setNewFileTime(changedFile.lastModified());
         }
-
-        changedFiles.add(laterFile);
       }
 
-      final File[] changedFilesArray =
-        changedFiles.toArray(new File[changedFiles.size()]);
+      changedFilesArray = changedFiles.toArray(new File[changedFiles.size()]);
+    }
 
+    if (changedFilesArray.length > 0) {
       m_filesChangedListeners.apply(
         new Informer<FileChangedListener>() {
           public void inform(FileChangedListener l) {
@@ -244,9 +344,129 @@ public final class FileDistributionImplementation implements FileDistribution {
     }
   }
 
+  /**
+   * Update the index for a file reported by the file system.
+   *
+   * <p>Must be called with the m_index lock held.</p>
+   */
+  private void processChange(File rootDirectory,
+                             FileFilter filter,
+                             File file,
+                             Set<File> changedFiles) {
+
+    // Ignore files outside the distribution set.
+    File f = file;
+
+    while (!rootDirectory.equals(f)) {
+      if (f == null || !filter.accept(f)) {
+        return;
+      }
+
+      f = f.getParentFile();
+    }
+
+    if (file.exists()) {
+      if (updateIndex(file, changedFiles) && file.isDirectory()) {
+        watch(file);
+
+        // The contents of a new directory might have been created before we
+        // started to watch it.
+        try {
+          for (File child :
+               new Directory(file).listContents(filter, true, true)) {
+            if (updateIndex(child, changedFiles)) {
+              watch(child);
+            }
+          }
+        }
+        catch (Directory.DirectoryException e) {
+          // The directory has been replaced by a file.
+          updateIndex(file, changedFiles);
+        }
+      }
+    }
+    else if (m_index.remove(file) != null) {
+      // Forget the contents of deleted directories.
+      final String prefix = file.getPath() + File.separator;
+      final Iterator<File> iterator = m_index.keySet().iterator();
+
+      while (iterator.hasNext()) {
+        if (iterator.next().getPath().startsWith(prefix)) {
+          iterator.remove();
+        }
+      }
+    }
+
+    // Adding or removing an entry changes the parent directory.
+    final File parent = file.getParentFile();
+
+    if (parent != null && m_index.containsKey(parent)) {
+      updateIndex(parent, changedFiles);
+    }
+  }
+
+  /**
+   * Record the modification time of a file, and note whether it has
+   * changed.
+   *
+   * <p>Must be called with the m_index lock held.</p>
+   *
+   * @return {@code true} if the file was not previously in the index.
+   */
+  private boolean updateIndex(File file, Set<File> changedFiles) {
+    final long lastModified = file.lastModified();
+    final Long previous = m_index.put(file, lastModified);
+
+    if (previous == null || previous.longValue() != lastModified) {
+      changedFiles.add(file);
+    }
+
+    return previous == null;
+  }
+
+  /**
+   * Ask the file system to notify us of changes to a directory.
+   *
+   * <p>Must be called with the m_index lock held.</p>
+   */
+  private void watch(File file) {
+    if (m_watcher != null && file.isDirectory()) {
+      try {
+        m_watcher.register(file);
+      }
+      catch (IOException e) {
+        // Perhaps we've hit a limit on the number of directories that can
+        // be watched.
+        UncheckedInterruptedException.ioException(e);
+        watchingFailed();
+      }
+    }
+  }
+
+  /**
+   * Fall back to scanning the whole directory every time.
+   *
+   * <p>Must be called with the m_index lock held.</p>
+   */
+  private void watchingFailed() {
+    stopWatching();
+    m_watchingFailed = true;
+  }
+
+  /**
+   * <p>Must be called with the m_index lock held.</p>
+   */
+  private void stopWatching() {
+    if (m_watcher != null) {
+      m_watcher.close();
+      m_watcher = null;
+    }
+  }
+
   /**
    * Add a listener that will be sent events about files that have changed when
-   * {@link #scanDistributionFiles} is called.
+   * {@link #scanDistributionFiles} or {@link #checkDistributionFiles} is
+   * called.
    *
    * @param listener
    *          The listener.
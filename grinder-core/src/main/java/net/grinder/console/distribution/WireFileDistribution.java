@@ -36,7 +36,7 @@ public class WireFileDistribution {
 
     timer.schedule(new TimerTask() {
         public void run() {
-          fileDistribution.scanDistributionFiles();
+          fileDistribution.checkDistributionFiles();
         }
       },
       properties.getScanDistributionFilesPeriod(),
@@ -25,6 +25,7 @@ package net.grinder.console.model;
 import java.util.Collection;
 import java.util.EventListener;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 import net.grinder.common.Test;
 import net.grinder.statistics.StatisticExpression;
@@ -168,12 +169,33 @@ public interface SampleModel {
   void registerTests(Collection<Test> tests);
 
   /**
-   * Add a new test report.
+   * Add a new test report with test times in milliseconds.
    *
    * @param statisticsDelta The new test statistics.
    */
   void addTestReport(TestStatisticsMap statisticsDelta);
 
+  /**
+   * Add a new test report.
+   *
+   * @param statisticsDelta The new test statistics.
+   * @param timeUnit The unit of the test times in {@code statisticsDelta}.
+   */
+  void addTestReport(TestStatisticsMap statisticsDelta, TimeUnit timeUnit);
+
+  /**
+   * Get the unit of the test times in the model's statistics.
+   *
+   * <p>
+   * Test times are kept in the unit that the worker processes recorded them
+   * with, and converted for display. See
+   * {@link net.grinder.statistics.ExpressionView#getDisplayValue}.
+   * </p>
+   *
+   * @return The unit.
+   */
+  TimeUnit getTimeUnit();
+
 
   /**
    * Interface for listeners to {@link SampleModelImplementation}.
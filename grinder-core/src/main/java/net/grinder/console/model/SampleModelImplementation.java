@@ -31,6 +31,7 @@ import java.util.Set;
 import java.util.Timer;
 import java.util.TimerTask;
 import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
 
 import net.grinder.common.GrinderException;
 import net.grinder.common.Test;
@@ -39,6 +40,7 @@ import net.grinder.statistics.PeakStatisticExpression;
 import net.grinder.statistics.StatisticExpression;
 import net.grinder.statistics.StatisticExpressionFactory;
 import net.grinder.statistics.StatisticsIndexMap;
+import net.grinder.statistics.StatisticsIndexMap.LongSampleIndex;
 import net.grinder.statistics.StatisticsServices;
 import net.grinder.statistics.StatisticsSet;
 import net.grinder.statistics.TestStatisticsMap;
@@ -81,6 +83,9 @@ public final class SampleModelImplementation implements SampleModel {
     new ListenerSupport<Listener>();
 
   private final StatisticsIndexMap.LongIndex m_periodIndex;
+
+  /** Sample statistics that hold test times. */
+  private final LongSampleIndex[] m_timeIndicies;
   private final StatisticExpression m_tpsExpression;
   private final PeakStatisticExpression m_peakTPSExpression;
 
@@ -95,6 +100,14 @@ public final class SampleModelImplementation implements SampleModel {
   // Guarded by this.
   private InternalState m_state;
 
+  // The unit of the test times in the accumulated statistics. Guarded by
+  // this.
+  private TimeUnit m_timeUnit = TimeUnit.MILLISECONDS;
+
+  // Whether m_timeUnit has been set by a report since the model was last
+  // reset, or its statistics zeroed. Guarded by this.
+  private boolean m_timeUnitFixed;
+
   /**
    * Creates a new <code>SampleModelImplementation</code> instance.
    *
@@ -134,6 +147,12 @@ public final class SampleModelImplementation implements SampleModel {
 
     m_periodIndex = indexMap.getLongIndex("period");
 
+    m_timeIndicies = new LongSampleIndex[] {
+      indexMap.getLongSampleIndex("timedTests"),
+      indexMap.getLongSampleIndex("correctedTime"),
+      indexMap.getLongSampleIndex("scheduleDelay"),
+    };
+
     final StatisticExpressionFactory statisticExpressionFactory =
       m_statisticsServices.getStatisticExpressionFactory();
 
@@ -275,6 +294,7 @@ public final class SampleModelImplementation implements SampleModel {
 
     m_accumulators.clear();
     m_totalSampleAccumulator.zero();
+    unfixTimeUnit();
 
     m_listeners.apply(
       new ListenerSupport.Informer<Listener>() {
@@ -289,6 +309,7 @@ public final class SampleModelImplementation implements SampleModel {
   @Override
   public void zeroStatistics() {
     zero();
+    unfixTimeUnit();
 
     m_listeners.apply(
       new ListenerSupport.Informer<Listener>() {
@@ -318,9 +339,50 @@ public final class SampleModelImplementation implements SampleModel {
    */
   @Override
   public void addTestReport(final TestStatisticsMap testStatisticsMap) {
+    addTestReport(testStatisticsMap, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * <p>
+   * The first report after the model is reset, or its statistics are zeroed,
+   * sets the unit of the model. Test times in reports with a different unit are converted. Worker
+   * processes started with the same properties agree on the unit, so this
+   * shouldn't happen.
+   * </p>
+   */
+  @Override
+  public void addTestReport(final TestStatisticsMap testStatisticsMap,
+                            final TimeUnit timeUnit) {
+    final TimeUnit modelTimeUnit;
+
+    synchronized (this) {
+      if (!m_timeUnitFixed) {
+        m_timeUnit = timeUnit;
+        m_timeUnitFixed = true;
+      }
+
+      modelTimeUnit = m_timeUnit;
+    }
+
+    if (timeUnit != modelTimeUnit) {
+      for (final LongSampleIndex index : m_timeIndicies) {
+        testStatisticsMap.convertTimeUnit(index, timeUnit, modelTimeUnit);
+      }
+    }
+
     getInternalState().newTestReport(testStatisticsMap);
   }
 
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public synchronized TimeUnit getTimeUnit() {
+    return m_timeUnit;
+  }
+
   /**
    * {@inheritDoc}
    */
@@ -329,6 +391,10 @@ public final class SampleModelImplementation implements SampleModel {
     return getInternalState().toExternalState();
   }
 
+  private synchronized void unfixTimeUnit() {
+    m_timeUnitFixed = false;
+  }
+
   private void zero() {
     synchronized (m_accumulators) {
       for (final SampleAccumulator sampleAccumulator :
@@ -246,6 +246,11 @@ public final class AgentImplementation implements Agent {
           final String jvmArguments =
             properties.getProperty("grinder.jvm.arguments");
 
+          final GrinderProperties workerProperties =
+            consoleCommunication != null &&
+            properties.getBoolean("grinder.agentAggregation", false) ?
+                consoleCommunication.redirectWorkers(properties) : properties;
+
           final WorkerFactory workerFactory;
 
           if (!properties.getBoolean("grinder.debug.singleprocess", false)) {
@@ -261,7 +266,7 @@ public final class AgentImplementation implements Agent {
             workerFactory =
               new ProcessWorkerFactory(
                 workerCommandLine, m_agentIdentity, m_fanOutStreamSender,
-                consoleCommunication != null, script, properties);
+                consoleCommunication != null, script, workerProperties);
           }
           else {
             m_logger.info(
@@ -276,7 +281,7 @@ public final class AgentImplementation implements Agent {
             workerFactory =
               new DebugThreadWorkerFactory(
                 m_agentIdentity, m_fanOutStreamSender,
-                consoleCommunication != null, script, properties);
+                consoleCommunication != null, script, workerProperties);
           }
 
           final WorkerLauncher workerLauncher =
@@ -464,6 +469,9 @@ public final class AgentImplementation implements Agent {
     private final TimerTask m_reportRunningTask;
     private final MessagePump m_messagePump;
 
+    /** Created on demand, then kept until we disconnect. */
+    private WorkerReportHub m_workerReportHub;
+
     public ConsoleCommunication(final Connector connector)
         throws CommunicationException, FileStore.FileStoreException {
 
@@ -527,9 +535,44 @@ public final class AgentImplementation implements Agent {
       return m_connector;
     }
 
+    /**
+     * Direct worker processes to report to us rather than the console, so
+     * that we can aggregate their reports.
+     *
+     * @param properties The properties.
+     * @return The worker process properties.
+     */
+    public GrinderProperties redirectWorkers(
+      final GrinderProperties properties) {
+
+      if (m_workerReportHub == null) {
+        try {
+          m_workerReportHub =
+            new WorkerReportHub(
+              m_sender,
+              m_timer,
+              properties.getInt("grinder.reportToConsole.interval", 500),
+              m_logger);
+        }
+        catch (final CommunicationException e) {
+          m_logger.warn(
+            "{}, workers will report directly to the console",
+            e.getMessage());
+
+          return properties;
+        }
+      }
+
+      return m_workerReportHub.redirectWorkers(properties);
+    }
+
     public void shutdown() {
       m_reportRunningTask.cancel();
 
+      if (m_workerReportHub != null) {
+        m_workerReportHub.shutdown();
+      }
+
       try {
         m_sender.send(
           new AgentProcessReportMessage(
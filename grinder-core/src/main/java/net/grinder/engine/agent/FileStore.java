@@ -21,9 +21,17 @@
 
 package net.grinder.engine.agent;
 
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.util.HashMap;
+import java.util.Map;
+
+import net.grinder.common.Closer;
 
 import net.grinder.common.UncheckedInterruptedException;
 import net.grinder.communication.CommunicationException;
@@ -32,18 +40,21 @@ import net.grinder.communication.MessageDispatchRegistry.AbstractHandler;
 import net.grinder.engine.common.EngineException;
 import net.grinder.messages.agent.CacheHighWaterMark;
 import net.grinder.messages.agent.ClearCacheMessage;
+import net.grinder.messages.agent.DistributeFileChunkMessage;
 import net.grinder.messages.agent.DistributeFileMessage;
 import net.grinder.messages.agent.DistributionCacheCheckpointMessage;
 import net.grinder.util.Directory;
+import net.grinder.util.FileChunk;
 import net.grinder.util.FileContents;
+import net.grinder.util.FileContents.FileContentsException;
 import net.grinder.util.StreamCopier;
 
 import org.slf4j.Logger;
 
 
 /**
- * Process {@link ClearCacheMessage}s and {@link DistributeFileMessage}s
- * received from the console.
+ * Process {@link ClearCacheMessage}s, {@link DistributeFileMessage}s, and
+ * {@link DistributeFileChunkMessage}s received from the console.
  *
  * @author Philip Aston
  */
@@ -57,9 +68,18 @@ final class FileStore {
 
   private final Directory m_currentDirectory;
 
+  private final File m_partialDirectory;
+
   // Guarded by m_incomingDirectory
   private boolean m_incremental;
 
+  // Guarded by m_incomingDirectory.
+  private final Map<File, PartialFile> m_partialFiles =
+    new HashMap<File, PartialFile>();
+
+  // Guarded by m_incomingDirectory.
+  private byte[] m_chunkBuffer = new byte[0];
+
   private volatile CacheHighWaterMark m_cacheHighWaterMark =
     new OutOfDateCacheHighWaterMark();
 
@@ -83,6 +103,7 @@ final class FileStore {
     }
 
     m_readmeFile = new File(rootDirectory, "README.txt");
+    m_partialDirectory = new File(rootDirectory, "partial");
 
     try {
       m_incomingDirectory = new Directory(new File(rootDirectory, "incoming"));
@@ -139,6 +160,7 @@ final class FileStore {
             synchronized (m_incomingDirectory) {
               m_incomingDirectory.deleteContents();
               m_incremental = false;
+              discardPartialFiles();
             }
           }
           catch (final Directory.DirectoryException e) {
@@ -177,6 +199,44 @@ final class FileStore {
         }
       });
 
+    messageDispatcher.set(
+      DistributeFileChunkMessage.class,
+      new AbstractHandler<DistributeFileChunkMessage>() {
+        @Override
+        public void handle(final DistributeFileChunkMessage message)
+          throws CommunicationException {
+
+          final FileChunk chunk = message.getFileChunk();
+
+          try {
+            synchronized (m_incomingDirectory) {
+              m_incomingDirectory.create();
+
+              createReadmeFile();
+
+              receiveChunk(chunk);
+            }
+          }
+          catch (final FileContents.FileContentsException e) {
+            synchronized (m_incomingDirectory) {
+              final PartialFile partialFile =
+                m_partialFiles.remove(chunk.getFilename());
+
+              if (partialFile != null) {
+                partialFile.discard();
+              }
+            }
+
+            m_logger.error(e.getMessage());
+            throw new CommunicationException(e.getMessage(), e);
+          }
+          catch (final Directory.DirectoryException e) {
+            m_logger.error(e.getMessage());
+            throw new CommunicationException(e.getMessage(), e);
+          }
+        }
+      });
+
     messageDispatcher.set(
       DistributionCacheCheckpointMessage.class,
       new AbstractHandler<DistributionCacheCheckpointMessage>() {
@@ -187,6 +247,145 @@ final class FileStore {
       });
   }
 
+  /**
+   * Must be called with the m_incomingDirectory lock held.
+   */
+  private void receiveChunk(final FileChunk chunk)
+    throws FileContentsException {
+
+    final File filename = chunk.getFilename();
+    PartialFile partialFile = m_partialFiles.get(filename);
+
+    if (chunk.getOffset() == 0) {
+      // The console has started the file again.
+      if (partialFile != null) {
+        partialFile.discard();
+      }
+
+      m_logger.info("Updating file store: {}", chunk);
+
+      partialFile = new PartialFile(filename, chunk.getDigest());
+      m_partialFiles.put(filename, partialFile);
+    }
+    else if (partialFile == null ||
+             partialFile.getPosition() != chunk.getOffset() ||
+             !partialFile.getDigest().equals(chunk.getDigest())) {
+      throw new FileContentsException(
+        "Unexpected chunk of file: " + chunk);
+    }
+
+    if (m_chunkBuffer.length < chunk.getLength()) {
+      m_chunkBuffer = new byte[chunk.getLength()];
+    }
+
+    chunk.inflate(m_chunkBuffer);
+    partialFile.write(m_chunkBuffer, chunk.getLength());
+
+    if (chunk.isLast()) {
+      m_partialFiles.remove(filename);
+      partialFile.complete(m_incomingDirectory.getFile(filename));
+    }
+  }
+
+  /**
+   * Must be called with the m_incomingDirectory lock held.
+   */
+  private void discardPartialFiles() {
+    for (final PartialFile partialFile : m_partialFiles.values()) {
+      partialFile.discard();
+    }
+
+    m_partialFiles.clear();
+  }
+
+  /**
+   * A file that is being received in chunks. The content is written to a
+   * temporary file, which is moved into the incoming directory once it is
+   * complete and its digest has been checked.
+   */
+  private final class PartialFile {
+    private final File m_filename;
+    private final String m_digest;
+    private final MessageDigest m_messageDigest = FileChunk.createDigest();
+    private final File m_temporaryFile;
+    private final OutputStream m_out;
+    private long m_position = 0;
+
+    public PartialFile(final File filename, final String digest)
+      throws FileContentsException {
+
+      m_filename = filename;
+      m_digest = digest;
+
+      try {
+        m_partialDirectory.mkdirs();
+        m_temporaryFile = File.createTempFile("chunk", "", m_partialDirectory);
+        m_out = new FileOutputStream(m_temporaryFile);
+      }
+      catch (final IOException e) {
+        UncheckedInterruptedException.ioException(e);
+        throw new FileContentsException(
+          "Failed to create file: " + e.getMessage(), e);
+      }
+    }
+
+    public String getDigest() {
+      return m_digest;
+    }
+
+    public long getPosition() {
+      return m_position;
+    }
+
+    public void write(final byte[] buffer, final int length)
+      throws FileContentsException {
+
+      try {
+        m_out.write(buffer, 0, length);
+      }
+      catch (final IOException e) {
+        UncheckedInterruptedException.ioException(e);
+        throw new FileContentsException(
+          "Failed to write file: " + e.getMessage(), e);
+      }
+
+      m_messageDigest.update(buffer, 0, length);
+      m_position += length;
+    }
+
+    public void complete(final File localFile) throws FileContentsException {
+      try {
+        m_out.close();
+      }
+      catch (final IOException e) {
+        UncheckedInterruptedException.ioException(e);
+        m_temporaryFile.delete();
+        throw new FileContentsException(
+          "Failed to write file: " + e.getMessage(), e);
+      }
+
+      if (!m_digest.equals(FileChunk.digestToString(m_messageDigest))) {
+        m_temporaryFile.delete();
+        throw new FileContentsException(
+          "Digest of '" + m_filename + "' does not match");
+      }
+
+      localFile.getParentFile().mkdirs();
+      localFile.delete();
+
+      if (!m_temporaryFile.renameTo(localFile)) {
+        m_temporaryFile.delete();
+        throw new FileContentsException(
+          "Failed to create file '" + localFile + "'");
+      }
+    }
+
+    public void discard() {
+      Closer.close(m_out);
+      m_temporaryFile.delete();
+    }
+  }
+
   private void createReadmeFile() throws CommunicationException {
     if (!m_readmeFile.exists()) {
       try {
@@ -223,6 +422,23 @@ final class FileStore {
 
     private static final long serialVersionUID = 1L;
 
+    public OutOfDateCacheHighWaterMark() {
+    }
+
+    /**
+     * Constructor used by the binary wire format.
+     *
+     * @param in The input.
+     */
+    @SuppressWarnings("unused")
+    private OutOfDateCacheHighWaterMark(final DataInput in) {
+    }
+
+    @Override
+    public void writeBinary(final DataOutput out) {
+      // Nothing to write.
+    }
+
     @Override
     public long getTime() {
       return -1;
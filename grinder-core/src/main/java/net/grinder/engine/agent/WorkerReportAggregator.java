@@ -0,0 +1,229 @@
+// Copyright (C) 2013 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+
+package net.grinder.engine.agent;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.TimeUnit;
+
+import net.grinder.communication.Address;
+import net.grinder.communication.AddressAwareMessage;
+import net.grinder.communication.CommunicationException;
+import net.grinder.communication.Message;
+import net.grinder.communication.Sender;
+import net.grinder.messages.console.AggregatedReportMessage;
+import net.grinder.messages.console.ReportStatisticsMessage;
+import net.grinder.messages.console.WorkerAddress;
+import net.grinder.messages.console.WorkerProcessReportMessage;
+import net.grinder.statistics.TestStatisticsMap;
+import net.grinder.synchronisation.messages.AbstractBarrierGroupMessage;
+
+import org.slf4j.Logger;
+
+
+/**
+ * Merges the reports that worker processes send to the console, and passes
+ * them on as {@link AggregatedReportMessage}s.
+ *
+ * <p>
+ * The statistics reports received between calls to {@link #flush} are added
+ * together, and only the latest status report from each worker is kept.
+ * Barrier messages can't wait for the next flush, so they are passed on
+ * immediately, together with anything else that is pending. Other messages
+ * are passed on in the order they were received.
+ * </p>
+ *
+ * <p>Package scope.</p>
+ *
+ * @author Philip Aston
+ */
+final class WorkerReportAggregator implements Sender {
+
+  private final Sender m_consoleSender;
+  private final Logger m_logger;
+
+  // Guarded by this.
+  private final List<Message> m_messages = new ArrayList<Message>();
+  private final List<Address> m_addresses = new ArrayList<Address>();
+  private final Map<WorkerAddress, WorkerProcessReportMessage>
+    m_processReports =
+      new LinkedHashMap<WorkerAddress, WorkerProcessReportMessage>();
+  private TestStatisticsMap m_statistics;
+  private TimeUnit m_timeUnit;
+  private long m_numberReceived;
+  private long m_numberSent;
+  private boolean m_shutdown;
+
+  /**
+   * Constructor.
+   *
+   * @param consoleSender
+   *          Used to send the aggregated reports. This sender is not shut
+   *          down when the aggregator is shut down.
+   * @param logger
+   *          Logger.
+   */
+  public WorkerReportAggregator(Sender consoleSender, Logger logger) {
+    m_consoleSender = consoleSender;
+    m_logger = logger;
+  }
+
+  /**
+   * Accept a message from a worker process.
+   *
+   * <p>
+   * Problems are logged rather than reported to the caller, since a
+   * {@link net.grinder.communication.MessagePump} stops at the first
+   * exception.
+   * </p>
+   *
+   * @param message The message.
+   */
+  @Override public void send(Message message) {
+    final boolean flush;
+
+    synchronized (this) {
+      ++m_numberReceived;
+
+      if (message instanceof ReportStatisticsMessage) {
+        addStatistics((ReportStatisticsMessage) message);
+        flush = false;
+      }
+      else if (message instanceof WorkerProcessReportMessage) {
+        final WorkerProcessReportMessage report =
+          (WorkerProcessReportMessage) message;
+
+        // Keep the worker's place, so that the console sees the workers in
+        // the order they reported.
+        m_processReports.put(report.getProcessAddress(), report);
+        flush = false;
+      }
+      else if (message instanceof AbstractBarrierGroupMessage) {
+        final AbstractBarrierGroupMessage barrierMessage =
+          (AbstractBarrierGroupMessage) message;
+
+        m_messages.add(message);
+        m_addresses.add(
+          new WorkerAddress(barrierMessage.getProcessIdentity()));
+        flush = true;
+      }
+      else if (message instanceof AddressAwareMessage) {
+        m_logger.warn("Unable to aggregate {}, discarding", message);
+        flush = false;
+      }
+      else {
+        m_messages.add(message);
+        m_addresses.add(null);
+        flush = false;
+      }
+    }
+
+    if (flush) {
+      flush();
+    }
+  }
+
+  private void addStatistics(ReportStatisticsMessage message) {
+    if (m_statistics != null && m_timeUnit != message.getTimeUnit()) {
+      // Only statistics with the same unit can be merged. Workers started
+      // with the same properties agree, so this shouldn't happen.
+      queueStatistics();
+    }
+
+    if (m_statistics == null) {
+      m_statistics = new TestStatisticsMap();
+      m_timeUnit = message.getTimeUnit();
+    }
+
+    m_statistics.add(message.getStatisticsDelta());
+  }
+
+  private void queueStatistics() {
+    m_messages.add(new ReportStatisticsMessage(m_statistics, m_timeUnit));
+    m_addresses.add(null);
+    m_statistics = null;
+  }
+
+  /**
+   * Send the pending reports to the console, if there are any.
+   *
+   * <p>
+   * Statistics are sent after the other messages, so that the console has
+   * seen the registration of any new tests before it sees their statistics.
+   * </p>
+   */
+  public synchronized void flush() {
+    for (Entry<WorkerAddress, WorkerProcessReportMessage> entry :
+         m_processReports.entrySet()) {
+      m_messages.add(entry.getValue());
+      m_addresses.add(entry.getKey());
+    }
+
+    m_processReports.clear();
+
+    if (m_statistics != null) {
+      queueStatistics();
+    }
+
+    if (m_messages.isEmpty() || m_shutdown) {
+      return;
+    }
+
+    try {
+      m_consoleSender.send(
+        new AggregatedReportMessage(m_messages, m_addresses));
+      ++m_numberSent;
+    }
+    catch (CommunicationException e) {
+      m_logger.error("Failed to send aggregated report to the console", e);
+    }
+    finally {
+      m_messages.clear();
+      m_addresses.clear();
+    }
+  }
+
+  /**
+   * Flush pending reports, and stop sending to the console.
+   */
+  @Override public void shutdown() {
+    flush();
+
+    synchronized (this) {
+      m_shutdown = true;
+    }
+  }
+
+  /**
+   * Describe the reduction in the number of messages sent to the console.
+   *
+   * @return A description.
+   */
+  @Override public synchronized String toString() {
+    return m_numberReceived + " worker messages, " +
+           m_numberSent + " aggregated reports";
+  }
+}
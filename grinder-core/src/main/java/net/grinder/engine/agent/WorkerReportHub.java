@@ -0,0 +1,172 @@
+// Copyright (C) 2013 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+
+package net.grinder.engine.agent;
+
+import java.util.Timer;
+import java.util.TimerTask;
+
+import net.grinder.common.GrinderProperties;
+import net.grinder.communication.Acceptor;
+import net.grinder.communication.CommunicationException;
+import net.grinder.communication.ConnectionType;
+import net.grinder.communication.MessagePump;
+import net.grinder.communication.Sender;
+import net.grinder.communication.ServerReceiver;
+import net.grinder.util.StandardTimeAuthority;
+
+import org.slf4j.Logger;
+
+
+/**
+ * Local endpoint for the console connections of worker processes, used when
+ * the agent aggregates their reports.
+ *
+ * <p>
+ * The hub listens on the loopback interface. Workers are pointed at it by
+ * {@link #redirectWorkers}, and their messages are passed to a
+ * {@link WorkerReportAggregator} which is flushed to the console at the
+ * worker report interval.
+ * </p>
+ *
+ * <p>Package scope.</p>
+ *
+ * @author Philip Aston
+ */
+final class WorkerReportHub {
+
+  private static final String LOOPBACK = "127.0.0.1";
+
+  private final Acceptor m_acceptor;
+  private final MessagePump m_messagePump;
+  private final WorkerReportAggregator m_aggregator;
+  private final TimerTask m_flushTask;
+  private final Logger m_logger;
+
+  /**
+   * Constructor.
+   *
+   * @param consoleSender
+   *          Used to send the aggregated reports to the console.
+   * @param timer
+   *          Timer used to flush the reports.
+   * @param reportInterval
+   *          How often to flush the reports, in milliseconds.
+   * @param logger
+   *          Logger.
+   * @throws CommunicationException
+   *           If the hub could not listen for connections.
+   */
+  public WorkerReportHub(Sender consoleSender,
+                         Timer timer,
+                         long reportInterval,
+                         Logger logger)
+    throws CommunicationException {
+
+    m_logger = logger;
+    m_acceptor = new Acceptor(LOOPBACK, 0, 1, new StandardTimeAuthority());
+
+    final ServerReceiver receiver = new ServerReceiver();
+
+    try {
+      receiver.receiveFrom(m_acceptor,
+                           new ConnectionType[] { ConnectionType.WORKER },
+                           2,
+                           500,
+                           30000);
+    }
+    catch (CommunicationException e) {
+      m_acceptor.shutdown();
+      throw e;
+    }
+
+    final Thread acceptorProblemListener =
+      new Thread("Worker report hub problem listener") {
+        @Override
+        public void run() {
+          while (true) {
+            final Exception exception = m_acceptor.getPendingException();
+
+            if (exception == null) {
+              // Acceptor is shutting down.
+              break;
+            }
+
+            m_logger.error(exception.getMessage(), exception);
+          }
+        }
+      };
+
+    acceptorProblemListener.setDaemon(true);
+    acceptorProblemListener.start();
+
+    m_aggregator = new WorkerReportAggregator(consoleSender, logger);
+
+    // One thread, so that each worker's messages are handled in order.
+    m_messagePump = new MessagePump(receiver, m_aggregator, 1);
+    m_messagePump.start();
+
+    m_flushTask = new TimerTask() {
+      @Override
+      public void run() {
+        m_aggregator.flush();
+      }
+    };
+
+    timer.schedule(m_flushTask, reportInterval, reportInterval);
+  }
+
+  /**
+   * Copy worker process properties, directing the worker processes to
+   * report to the hub rather than the console.
+   *
+   * @param properties The properties.
+   * @return The worker process properties.
+   */
+  public GrinderProperties redirectWorkers(GrinderProperties properties) {
+    final GrinderProperties result = new GrinderProperties();
+    result.putAll(properties);
+    result.setAssociatedFile(properties.getAssociatedFile());
+    result.setProperty(GrinderProperties.CONSOLE_HOST, LOOPBACK);
+    result.setInt(GrinderProperties.CONSOLE_PORT, m_acceptor.getPort());
+    return result;
+  }
+
+  /**
+   * Flush any pending reports and shut down.
+   */
+  public void shutdown() {
+    m_flushTask.cancel();
+
+    // Shuts down the aggregator, which flushes.
+    m_messagePump.shutdown();
+
+    try {
+      m_acceptor.shutdown();
+    }
+    catch (CommunicationException e) {
+      m_logger.error(e.getMessage(), e);
+    }
+
+    m_logger.info("aggregated {}", m_aggregator);
+  }
+}
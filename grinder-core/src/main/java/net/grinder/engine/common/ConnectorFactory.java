@@ -25,6 +25,7 @@ import net.grinder.common.GrinderProperties;
 import net.grinder.communication.CommunicationDefaults;
 import net.grinder.communication.ConnectionType;
 import net.grinder.communication.Connector;
+import net.grinder.communication.WireFormat;
 
 
 /**
@@ -49,7 +50,9 @@ public class ConnectorFactory {
    * Factory method.
    *
    * @param properties Properties.
-   * @return A connector which can be used to contact the console.
+   * @return A connector which can be used to contact the console. The
+   * connector uses the binary wire format, as agent and worker processes
+   * send frequent reports.
    */
   public Connector create(GrinderProperties properties) {
     return new Connector(
@@ -57,6 +60,7 @@ public class ConnectorFactory {
                              CommunicationDefaults.CONSOLE_HOST),
       properties.getInt(GrinderProperties.CONSOLE_PORT,
                         CommunicationDefaults.CONSOLE_PORT),
-      m_connectionType);
+      m_connectionType,
+      WireFormat.BINARY);
   }
 }
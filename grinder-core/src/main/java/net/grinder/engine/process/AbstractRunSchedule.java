@@ -0,0 +1,93 @@
+// Copyright (C) 2013 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+package net.grinder.engine.process;
+
+import java.util.concurrent.TimeUnit;
+
+import net.grinder.util.Sleeper;
+
+
+/**
+ * Common {@link RunSchedule} implementation.
+ *
+ * <p>Package scope.</p>
+ *
+ * @author Philip Aston
+ */
+abstract class AbstractRunSchedule implements RunSchedule {
+
+  private final TestClock m_testClock;
+
+  /**
+   * Constructor.
+   *
+   * @param testClock
+   *          The clock used to time runs.
+   */
+  protected AbstractRunSchedule(final TestClock testClock) {
+    m_testClock = testClock;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override public final long awaitNextRun(final Sleeper sleeper)
+    throws Sleeper.ShutdownException {
+
+    final long now = m_testClock.getTime();
+    final long runTime = nextRunTime(now);
+
+    if (runTime < 0) {
+      return -1;
+    }
+
+    // The sleeper works in milliseconds. Round up, so the run never starts
+    // before it is due.
+    final TimeUnit unit = m_testClock.getTimeUnit();
+    final long wait =
+      unit.toMillis(runTime - now + unit.convert(1, TimeUnit.MILLISECONDS) - 1);
+
+    if (wait > 0) {
+      sleeper.sleepExactly(wait);
+    }
+
+    return Math.max(m_testClock.getTime() - runTime, 0);
+  }
+
+  /**
+   * Claim the next run.
+   *
+   * @param now
+   *          The current time.
+   * @return The time the run is due, in the units of the {@link TestClock},
+   *         or <code>-1</code> if the schedule is complete.
+   */
+  protected abstract long nextRunTime(long now);
+
+  /**
+   * Return the clock used to time runs.
+   *
+   * @return The clock.
+   */
+  protected final TestClock getTestClock() {
+    return m_testClock;
+  }
+}
@@ -0,0 +1,218 @@
+// Copyright (C) 2013 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.grinder.engine.process;
+
+import java.util.concurrent.TimeUnit;
+
+import net.grinder.engine.common.EngineException;
+
+
+/**
+ * Open model run schedule, shared by the worker threads of a process.
+ *
+ * <p>
+ * The schedule is a sequence of steps, each with a target arrival rate in runs
+ * per second and a duration. If ramping is enabled, the rate changes linearly
+ * from the rate of each step to the rate of the next; otherwise it is constant
+ * for each step. The final step may have no duration, in which case it
+ * continues until the process is stopped.
+ * </p>
+ *
+ * <p>
+ * Each call to {@link #awaitNextRun} claims the next run slot. Slots are
+ * taken in order, so if all of the worker threads are busy the slots queue up,
+ * and the lateness of a run reflects the time it spent waiting for a free
+ * thread.
+ * </p>
+ *
+ * <p>Package scope.</p>
+ *
+ * @author Philip Aston
+ */
+final class ArrivalSchedule extends AbstractRunSchedule {
+
+  /**
+   * Allowance for rounding errors, so that a slot due at the end of a step
+   * isn't lost.
+   */
+  private static final double EPSILON = 1e-9;
+
+  private final double[] m_rates;
+  private final double[] m_slopes;
+  private final double[] m_durations;
+  private final double m_unitsPerSecond;
+
+  // Guarded by this.
+  private long m_startTime = -1;
+  private int m_step = 0;
+  private double m_stepStart = 0;
+  private double m_position = 0;
+
+  /**
+   * Constructor.
+   *
+   * @param rates
+   *          Arrival rate at the start of each step, in runs per second.
+   * @param durations
+   *          Duration of each step, in milliseconds. The last value may be
+   *          <code>-1</code> to indicate a step that continues indefinitely.
+   * @param ramp
+   *          Whether to change the rate linearly between steps.
+   * @param testClock
+   *          The clock used to time runs.
+   */
+  public ArrivalSchedule(final double[] rates,
+                         final long[] durations,
+                         final boolean ramp,
+                         final TestClock testClock) {
+    super(testClock);
+
+    m_rates = rates.clone();
+    m_slopes = new double[rates.length];
+    m_durations = new double[rates.length];
+    m_unitsPerSecond = testClock.getTimeUnit().convert(1, TimeUnit.SECONDS);
+
+    for (int i = 0; i < rates.length; ++i) {
+      m_durations[i] =
+        durations[i] < 0 ? Double.POSITIVE_INFINITY : durations[i] / 1000d;
+
+      if (ramp && i < rates.length - 1) {
+        m_slopes[i] = (rates[i + 1] - rates[i]) / m_durations[i];
+      }
+    }
+  }
+
+  /**
+   * Parse a schedule specification.
+   *
+   * <p>
+   * The specification is a comma separated list of steps. Each step is a rate
+   * in runs per second, optionally followed by a colon and a duration in
+   * milliseconds. Only the last step may omit the duration.
+   * </p>
+   *
+   * @param specification
+   *          The specification, e.g. <code>"10:60000, 20:60000, 30"</code>.
+   * @param ramp
+   *          Whether to change the rate linearly between steps.
+   * @param testClock
+   *          The clock used to time runs.
+   * @return The schedule.
+   * @throws EngineException
+   *           If the specification is invalid.
+   */
+  public static ArrivalSchedule parse(final String specification,
+                                      final boolean ramp,
+                                      final TestClock testClock)
+    throws EngineException {
+
+    final String[] steps = specification.split(",", -1);
+    final double[] rates = new double[steps.length];
+    final long[] durations = new long[steps.length];
+
+    for (int i = 0; i < steps.length; ++i) {
+      final String[] parts = steps[i].split(":", -1);
+
+      try {
+        if (parts.length > 2) {
+          throw new NumberFormatException();
+        }
+
+        rates[i] = Double.parseDouble(parts[0].trim());
+
+        if (parts.length == 2) {
+          durations[i] = Long.parseLong(parts[1].trim());
+        }
+        else if (i == steps.length - 1) {
+          durations[i] = -1;
+        }
+        else {
+          throw new EngineException(
+            "Only the last grinder.arrivalRate step can omit the duration");
+        }
+      }
+      catch (final NumberFormatException e) {
+        throw new EngineException(
+          "Invalid grinder.arrivalRate step '" + steps[i].trim() + "'");
+      }
+
+      if (!(rates[i] >= 0) || Double.isInfinite(rates[i]) ||
+          parts.length == 2 && durations[i] <= 0) {
+        throw new EngineException(
+          "Invalid grinder.arrivalRate step '" + steps[i].trim() + "'");
+      }
+    }
+
+    return new ArrivalSchedule(rates, durations, ramp, testClock);
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * <p>
+   * The first call starts the schedule.
+   * </p>
+   */
+  @Override protected synchronized long nextRunTime(final long now) {
+    if (m_startTime == -1) {
+      m_startTime = now;
+    }
+
+    // Find the time at which the integral of the rate since the last arrival
+    // reaches one.
+    double need = 1;
+
+    while (m_step < m_rates.length) {
+      final double a = m_rates[m_step] + m_slopes[m_step] * m_position;
+      final double b = m_slopes[m_step];
+      final double remaining = m_durations[m_step] - m_position;
+
+      final double available;
+
+      if (Double.isInfinite(remaining)) {
+        available = a > 0 ? Double.POSITIVE_INFINITY : 0;
+      }
+      else {
+        available = a * remaining + b * remaining * remaining / 2;
+      }
+
+      if (available >= need - EPSILON) {
+        // Solve b/2 t^2 + a t = need for t, in a form that is stable as b
+        // approaches zero.
+        final double t =
+          2 * need / (a + Math.sqrt(Math.max(a * a + 2 * b * need, 0)));
+
+        m_position = Math.min(m_position + t, m_durations[m_step]);
+
+        return m_startTime +
+               Math.round((m_stepStart + m_position) * m_unitsPerSecond);
+      }
+
+      need -= available;
+      m_stepStart += m_durations[m_step];
+      m_position = 0;
+      ++m_step;
+    }
+
+    return -1;
+  }
+}
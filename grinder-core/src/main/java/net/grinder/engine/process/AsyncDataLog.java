@@ -0,0 +1,423 @@
+// Copyright (C) 2013 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.grinder.engine.process;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import net.grinder.common.Test;
+import net.grinder.statistics.StatisticsSet;
+import net.grinder.statistics.StatisticsSetFactory;
+
+
+/**
+ * Writes data log records on a dedicated thread, so that worker threads do
+ * not contend for the data log appender or wait for disk I/O.
+ *
+ * <p>
+ * Each worker thread has its own fixed size {@link ThreadQueue}, which it
+ * alone writes to. A queued record holds only the run number, the test, the
+ * time, and a copy of the statistic values, in a slot that is reused once
+ * the record has been written. The writer thread drains the queues in
+ * batches, passing the records to each queue's {@link RecordWriter} in the
+ * order the thread produced them. It parks when there is nothing to write,
+ * and is unparked by the next record. When a queue is full, the
+ * {@link OverflowPolicy} decides whether the worker thread waits for the
+ * writer, or the record is dropped and counted.
+ * </p>
+ *
+ * <p>Package scope.</p>
+ *
+ * @author Philip Aston
+ */
+final class AsyncDataLog {
+
+  /**
+   * What to do with a record when a thread's queue is full.
+   */
+  enum OverflowPolicy {
+    /** Wait for the writer thread to make space. */
+    BLOCK,
+
+    /** Discard the record. */
+    DROP;
+
+    /**
+     * Parse a policy name.
+     *
+     * @param name
+     *          {@code block} or {@code drop}, ignoring case.
+     * @return The policy, or {@code null} if {@code name} is not recognised.
+     */
+    static OverflowPolicy parse(String name) {
+      for (OverflowPolicy policy : values()) {
+        if (policy.name().equalsIgnoreCase(name.trim())) {
+          return policy;
+        }
+      }
+
+      return null;
+    }
+  }
+
+  /**
+   * Writes queued records. Called on the writer thread.
+   */
+  interface RecordWriter {
+
+    /**
+     * Write a record.
+     *
+     * @param runNumber
+     *          The run number.
+     * @param test
+     *          The test.
+     * @param timeSinceExecutionStart
+     *          Time since the worker process started.
+     * @param statistics
+     *          The statistics. Only valid for the duration of the call.
+     */
+    void write(int runNumber,
+               Test test,
+               long timeSinceExecutionStart,
+               StatisticsSet statistics);
+  }
+
+  private static final int BATCH_SIZE = 256;
+
+  private final int m_capacity;
+  private final OverflowPolicy m_overflowPolicy;
+
+  private final List<ThreadQueue> m_queues =
+    new CopyOnWriteArrayList<ThreadQueue>();
+
+  private final Thread m_writerThread;
+
+  private volatile boolean m_shutdown;
+  private volatile boolean m_writerParked;
+  private volatile int m_maximumDepth;
+
+  /**
+   * Constructor. Starts the writer thread.
+   *
+   * @param queueSize
+   *          Capacity of each thread's queue. Rounded up to a power of two.
+   * @param overflowPolicy
+   *          What to do when a thread's queue is full.
+   */
+  public AsyncDataLog(int queueSize, OverflowPolicy overflowPolicy) {
+
+    if (queueSize < 1) {
+      throw new IllegalArgumentException("Queue size must be positive");
+    }
+
+    final int capacity = Integer.highestOneBit(queueSize);
+    m_capacity = capacity < queueSize ? capacity << 1 : capacity;
+    m_overflowPolicy = overflowPolicy;
+
+    m_writerThread = new Thread("Data log writer") {
+        @Override public void run() {
+          write();
+        }
+      };
+
+    m_writerThread.setDaemon(true);
+    m_writerThread.start();
+  }
+
+  /**
+   * Create a queue for a worker thread.
+   *
+   * @param statisticsSetFactory
+   *          Creates the statistics sets that hold queued values.
+   * @param recordWriter
+   *          Writes the records from the queue.
+   * @return The queue.
+   */
+  public ThreadQueue createThreadQueue(
+    StatisticsSetFactory statisticsSetFactory,
+    RecordWriter recordWriter) {
+
+    final ThreadQueue result =
+      new ThreadQueue(m_capacity, statisticsSetFactory, recordWriter);
+    m_queues.add(result);
+    return result;
+  }
+
+  /**
+   * Write the records that have been queued, and stop the writer thread.
+   * Records queued after this has been called may not be written.
+   */
+  public void shutdown() {
+    m_shutdown = true;
+    LockSupport.unpark(m_writerThread);
+
+    try {
+      m_writerThread.join();
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+
+    // Release any producers waiting for space. They will drop their records.
+    for (ThreadQueue queue : m_queues) {
+      queue.unparkProducer();
+    }
+  }
+
+  /**
+   * The number of records currently queued.
+   *
+   * @return The queue depth, summed over all threads.
+   */
+  public int getQueueDepth() {
+    int result = 0;
+
+    for (ThreadQueue queue : m_queues) {
+      result += queue.size();
+    }
+
+    return result;
+  }
+
+  /**
+   * The largest queue depth the writer thread has seen.
+   *
+   * @return The maximum queue depth, summed over all threads.
+   */
+  public int getMaximumQueueDepth() {
+    return m_maximumDepth;
+  }
+
+  /**
+   * The number of records that have been dropped because a queue was full.
+   *
+   * @return The number of dropped records.
+   */
+  public long getDroppedRecords() {
+    long result = 0;
+
+    for (ThreadQueue queue : m_queues) {
+      result += queue.m_dropped;
+    }
+
+    return result;
+  }
+
+  private void write() {
+    while (true) {
+      // Read the flag before draining, so we can't miss records queued
+      // before shutdown() was called.
+      final boolean shutdown = m_shutdown;
+
+      final int depth = getQueueDepth();
+
+      if (depth > m_maximumDepth) {
+        m_maximumDepth = depth;
+      }
+
+      int written = 0;
+
+      for (ThreadQueue queue : m_queues) {
+        written += queue.drain();
+      }
+
+      if (written == 0) {
+        if (shutdown) {
+          return;
+        }
+
+        // Announce that we're about to park, then check again. A producer
+        // publishes its record before it reads the flag, so either we see
+        // the record, or the producer sees the flag and unparks us.
+        m_writerParked = true;
+
+        if (getQueueDepth() == 0 && !m_shutdown) {
+          LockSupport.park(this);
+        }
+
+        m_writerParked = false;
+      }
+    }
+  }
+
+  /**
+   * A queued record. Slots are reused, so the statistics set is only
+   * allocated the first time the slot is used.
+   */
+  private static final class Record {
+    private int m_runNumber;
+    private Test m_test;
+    private long m_timeSinceExecutionStart;
+    private StatisticsSet m_statistics;
+  }
+
+  /**
+   * A single producer, single consumer ring buffer of data log records.
+   */
+  final class ThreadQueue {
+    private final int m_mask;
+    private final StatisticsSetFactory m_statisticsSetFactory;
+    private final RecordWriter m_recordWriter;
+    private final Record[] m_records;
+
+    // Only written by the producer. The consumer reads it to find how many
+    // records are available.
+    private final AtomicLong m_tail = new AtomicLong();
+
+    // Only written by the consumer. The producer reads it to find how much
+    // space is available.
+    private final AtomicLong m_head = new AtomicLong();
+
+    // Only written by the producer.
+    private volatile long m_dropped;
+
+    // Set by the producer while it waits for space.
+    private volatile Thread m_waitingProducer;
+
+    private ThreadQueue(int capacity,
+                        StatisticsSetFactory statisticsSetFactory,
+                        RecordWriter recordWriter) {
+      m_mask = capacity - 1;
+      m_statisticsSetFactory = statisticsSetFactory;
+      m_recordWriter = recordWriter;
+      m_records = new Record[capacity];
+
+      for (int i = 0; i < capacity; ++i) {
+        m_records[i] = new Record();
+      }
+    }
+
+    /**
+     * Queue a record. Must only be called by the owning thread.
+     *
+     * @param runNumber
+     *          The run number.
+     * @param test
+     *          The test.
+     * @param timeSinceExecutionStart
+     *          Time since the worker process started.
+     * @param statistics
+     *          The statistics. The values are copied, so the caller may
+     *          reuse the set.
+     */
+    public void offer(int runNumber,
+                      Test test,
+                      long timeSinceExecutionStart,
+                      StatisticsSet statistics) {
+      final long tail = m_tail.get();
+
+      if (tail - m_head.get() > m_mask && !awaitSpace(tail)) {
+        m_dropped = m_dropped + 1;
+        return;
+      }
+
+      final Record record = m_records[(int) tail & m_mask];
+      record.m_runNumber = runNumber;
+      record.m_test = test;
+      record.m_timeSinceExecutionStart = timeSinceExecutionStart;
+
+      if (record.m_statistics == null) {
+        record.m_statistics = m_statisticsSetFactory.create();
+      }
+
+      m_statisticsSetFactory.copyValues(statistics, record.m_statistics);
+
+      // Publish the record. This is a full barrier, so the read of
+      // m_writerParked can't be reordered before it.
+      m_tail.set(tail + 1);
+
+      if (m_writerParked) {
+        LockSupport.unpark(m_writerThread);
+      }
+    }
+
+    /**
+     * Wait until there is space for the record at {@code tail}.
+     *
+     * @return {@code false} if the record should be dropped.
+     */
+    private boolean awaitSpace(long tail) {
+      if (m_overflowPolicy == OverflowPolicy.DROP) {
+        return false;
+      }
+
+      m_waitingProducer = Thread.currentThread();
+
+      try {
+        while (tail - m_head.get() > m_mask) {
+          if (m_shutdown) {
+            return false;
+          }
+
+          LockSupport.unpark(m_writerThread);
+          LockSupport.park(this);
+        }
+      }
+      finally {
+        m_waitingProducer = null;
+      }
+
+      return true;
+    }
+
+    private void unparkProducer() {
+      final Thread producer = m_waitingProducer;
+
+      if (producer != null) {
+        LockSupport.unpark(producer);
+      }
+    }
+
+    private int size() {
+      return (int) (m_tail.get() - m_head.get());
+    }
+
+    private int drain() {
+      final long head = m_head.get();
+      final long tail = Math.min(m_tail.get(), head + BATCH_SIZE);
+
+      for (long n = head; n < tail; ++n) {
+        final Record record = m_records[(int) n & m_mask];
+
+        m_recordWriter.write(record.m_runNumber,
+                             record.m_test,
+                             record.m_timeSinceExecutionStart,
+                             record.m_statistics);
+
+        record.m_test = null;
+      }
+
+      if (tail != head) {
+        // Release the slots. This is a full barrier, so the read of
+        // m_waitingProducer can't be reordered before it.
+        m_head.set(tail);
+
+        unparkProducer();
+      }
+
+      return (int) (tail - head);
+    }
+  }
+}
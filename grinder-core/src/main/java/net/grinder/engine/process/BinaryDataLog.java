@@ -0,0 +1,331 @@
+// Copyright (C) 2013 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.grinder.engine.process;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.grinder.common.Test;
+import net.grinder.statistics.ExpressionView;
+import net.grinder.statistics.StatisticExpression;
+import net.grinder.statistics.StatisticsSet;
+
+import org.slf4j.Logger;
+
+
+/**
+ * A data log that writes fixed width binary records to a memory mapped file.
+ *
+ * <p>
+ * This is a cheaper alternative to the text data log. Use
+ * {@link BinaryDataLogConverter} to convert the file to the text format.
+ * </p>
+ *
+ * <p>
+ * The file starts with a header:
+ * </p>
+ *
+ * <pre>
+ *   int      {@link #MAGIC}
+ *   long     number of records, or -1 if the log was not closed
+ *   int      size of the header, which is the offset of the first record
+ *   UTF      text data log header line
+ *   int      number of columns
+ *   boolean  for each column, whether the column is a double
+ *   UTF      for each column, the column name
+ * </pre>
+ *
+ * <p>
+ * Each record contains the thread number (int), run number (int), test
+ * number (int), start time (long), then a long or double for each column.
+ * Each thread claims the next record with an atomic increment, then writes
+ * it directly to the mapped file. The file is mapped in regions that are
+ * extended as required.
+ * </p>
+ *
+ * <p>Package scope.</p>
+ *
+ * @author Philip Aston
+ */
+final class BinaryDataLog {
+
+  /** Identifies a binary data log file. */
+  static final int MAGIC = 0x47444c42;
+
+  /** Offset of the number of records in the header. */
+  static final int NUMBER_OF_RECORDS_OFFSET = 4;
+
+  /** Offset of the header size in the header. */
+  static final int HEADER_SIZE_OFFSET = 12;
+
+  /** Size of the part of each record that comes before the columns. */
+  static final int FIXED_RECORD_SIZE = 20;
+
+  private static final int DEFAULT_REGION_SIZE = 8 * 1024 * 1024;
+
+  private final FileChannel m_channel;
+  private final Logger m_logger;
+  private final StatisticExpression[] m_expressions;
+  private final long m_dataStart;
+  private final int m_recordSize;
+  private final int m_recordsPerRegion;
+  private final AtomicLong m_nextRecord = new AtomicLong();
+
+  // Guarded by this.
+  private Region m_lastRegion;
+  private boolean m_closed;
+
+  /**
+   * Constructor.
+   *
+   * @param file
+   *          The file. Existing content is discarded.
+   * @param header
+   *          The text data log header line.
+   * @param expressionViews
+   *          The columns to record.
+   * @param logger
+   *          Logger for errors.
+   * @throws IOException
+   *           If the file could not be created.
+   */
+  public BinaryDataLog(File file,
+                       String header,
+                       ExpressionView[] expressionViews,
+                       Logger logger)
+    throws IOException {
+    this(file, header, expressionViews, logger, DEFAULT_REGION_SIZE);
+  }
+
+  /**
+   * Constructor for unit tests.
+   */
+  BinaryDataLog(File file,
+                String header,
+                ExpressionView[] expressionViews,
+                Logger logger,
+                int regionSize)
+    throws IOException {
+
+    m_logger = logger;
+    m_expressions = new StatisticExpression[expressionViews.length];
+
+    final ByteArrayOutputStream byteStream = new ByteArrayOutputStream();
+    final DataOutputStream headerStream = new DataOutputStream(byteStream);
+
+    headerStream.writeInt(MAGIC);
+    headerStream.writeLong(-1);
+    headerStream.writeInt(0);
+    headerStream.writeUTF(header);
+    headerStream.writeInt(expressionViews.length);
+
+    for (int i = 0; i < expressionViews.length; ++i) {
+      m_expressions[i] = expressionViews[i].getExpression();
+      headerStream.writeBoolean(m_expressions[i].isDouble());
+    }
+
+    for (ExpressionView expressionView : expressionViews) {
+      headerStream.writeUTF(expressionView.getDisplayName());
+    }
+
+    headerStream.close();
+
+    final byte[] headerBytes = byteStream.toByteArray();
+    ByteBuffer.wrap(headerBytes).putInt(HEADER_SIZE_OFFSET, headerBytes.length);
+
+    final RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+
+    try {
+      randomAccessFile.setLength(0);
+      randomAccessFile.write(headerBytes);
+    }
+    catch (IOException e) {
+      randomAccessFile.close();
+      throw e;
+    }
+
+    m_channel = randomAccessFile.getChannel();
+    m_dataStart = headerBytes.length;
+    m_recordSize = FIXED_RECORD_SIZE + 8 * expressionViews.length;
+    m_recordsPerRegion = Math.max(1, regionSize / m_recordSize);
+  }
+
+  /**
+   * Create a writer for a worker thread.
+   *
+   * @param threadNumber
+   *          The thread number.
+   * @return The writer.
+   */
+  public ThreadWriter createThreadWriter(int threadNumber) {
+    return new ThreadWriter(threadNumber);
+  }
+
+  /**
+   * Record the number of records and close the file. Subsequent reports are
+   * discarded.
+   *
+   * @throws IOException
+   *           If the file could not be closed.
+   */
+  public synchronized void close() throws IOException {
+    if (m_closed) {
+      return;
+    }
+
+    m_closed = true;
+    m_lastRegion = null;
+
+    try {
+      final ByteBuffer numberOfRecords = ByteBuffer.allocate(8);
+      numberOfRecords.putLong(0, m_nextRecord.get());
+      m_channel.write(numberOfRecords, NUMBER_OF_RECORDS_OFFSET);
+    }
+    finally {
+      m_channel.close();
+    }
+  }
+
+  private synchronized Region getRegion(long index) {
+    if (m_closed) {
+      return null;
+    }
+
+    if (m_lastRegion != null && m_lastRegion.getIndex() == index) {
+      return m_lastRegion;
+    }
+
+    final long regionSize = (long) m_recordsPerRegion * m_recordSize;
+
+    final MappedByteBuffer buffer;
+
+    try {
+      buffer = m_channel.map(FileChannel.MapMode.READ_WRITE,
+                             m_dataStart + index * regionSize,
+                             regionSize);
+    }
+    catch (IOException e) {
+      m_logger.error("Failed to extend binary data log, discarding results",
+                     e);
+
+      // Nothing can be written. Still try to record what we have.
+      try {
+        close();
+      }
+      catch (IOException e2) {
+        m_logger.error(e2.getMessage(), e2);
+      }
+
+      return null;
+    }
+
+    final Region result = new Region(index, buffer);
+
+    // Threads normally move forward through the regions together. Hold on
+    // to the newest region so that only one thread maps it.
+    if (m_lastRegion == null || index > m_lastRegion.getIndex()) {
+      m_lastRegion = result;
+    }
+
+    return result;
+  }
+
+  /**
+   * Writes records on behalf of a worker thread.
+   *
+   * <p>
+   * Not thread safe; each thread should have its own writer.
+   * </p>
+   */
+  final class ThreadWriter {
+    private final int m_threadNumber;
+    private Region m_region;
+
+    private ThreadWriter(int threadNumber) {
+      m_threadNumber = threadNumber;
+    }
+
+    public void report(int runNumber,
+                       Test test,
+                       long timeSinceExecutionStart,
+                       StatisticsSet statistics) {
+
+      final long record = m_nextRecord.getAndIncrement();
+      final long regionIndex = record / m_recordsPerRegion;
+
+      if (m_region == null || m_region.getIndex() != regionIndex) {
+        m_region = getRegion(regionIndex);
+
+        if (m_region == null) {
+          return;
+        }
+      }
+
+      // Absolute puts don't change the buffer's state, so threads can
+      // safely write their own records into a shared buffer.
+      final ByteBuffer buffer = m_region.getBuffer();
+      int position = (int) (record % m_recordsPerRegion) * m_recordSize;
+
+      buffer.putInt(position, m_threadNumber);
+      buffer.putInt(position + 4, runNumber);
+      buffer.putInt(position + 8, test.getNumber());
+      buffer.putLong(position + 12, timeSinceExecutionStart);
+      position += FIXED_RECORD_SIZE;
+
+      for (StatisticExpression expression : m_expressions) {
+        if (expression.isDouble()) {
+          buffer.putDouble(position, expression.getDoubleValue(statistics));
+        }
+        else {
+          buffer.putLong(position, expression.getLongValue(statistics));
+        }
+
+        position += 8;
+      }
+    }
+  }
+
+  private static final class Region {
+    private final long m_index;
+    private final ByteBuffer m_buffer;
+
+    public Region(long index, ByteBuffer buffer) {
+      m_index = index;
+      m_buffer = buffer;
+    }
+
+    public long getIndex() {
+      return m_index;
+    }
+
+    public ByteBuffer getBuffer() {
+      return m_buffer;
+    }
+  }
+}
@@ -0,0 +1,229 @@
+// Copyright (C) 2013 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.grinder.engine.process;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Map;
+import java.util.TreeMap;
+
+import net.grinder.common.GrinderException;
+import net.grinder.util.AbstractMainClass;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * Convert a binary data log to the text data log format, and log a summary
+ * of the results for each test.
+ *
+ * @author Philip Aston
+ */
+public final class BinaryDataLogConverter extends AbstractMainClass {
+
+  private static final String USAGE =
+    "  java " + BinaryDataLogConverter.class.getName() +
+    " binary-data-log [output-file]" +
+    "\n\n" +
+    "The output file defaults to the name of the binary data log with the " +
+    "extension replaced by .csv.";
+
+  private static final String SEPARATOR = ", ";
+
+  /**
+   * Entry point.
+   *
+   * @param args Command line arguments.
+   */
+  public static void main(String[] args) {
+    final Logger logger = LoggerFactory.getLogger("BinaryDataLogConverter");
+
+    try {
+      final BinaryDataLogConverter converter =
+        new BinaryDataLogConverter(args, logger);
+      converter.run();
+    }
+    catch (LoggedInitialisationException e) {
+      System.exit(1);
+    }
+    catch (Throwable e) {
+      logger.error("Could not convert", e);
+      System.exit(2);
+    }
+
+    System.exit(0);
+  }
+
+  private final File m_input;
+  private final File m_output;
+
+  private BinaryDataLogConverter(String[] arguments, Logger logger)
+    throws GrinderException {
+
+    super(logger, USAGE);
+
+    if (arguments.length == 1) {
+      m_input = new File(arguments[0]);
+
+      final String name = m_input.getName();
+      final int dot = name.lastIndexOf('.');
+
+      m_output =
+        new File(m_input.getParentFile(),
+                 (dot > 0 ? name.substring(0, dot) : name) + ".csv");
+    }
+    else if (arguments.length == 2) {
+      m_input = new File(arguments[0]);
+      m_output = new File(arguments[1]);
+    }
+    else {
+      throw barfUsage();
+    }
+
+    if (!m_input.canRead()) {
+      throw barfError("Cannot read " + m_input);
+    }
+  }
+
+  private void run() throws IOException {
+    final BinaryDataLogReader reader = new BinaryDataLogReader(m_input);
+
+    try {
+      final Writer out = new BufferedWriter(new FileWriter(m_output));
+
+      try {
+        getLogger().info(convert(reader, out));
+      }
+      finally {
+        out.close();
+      }
+    }
+    finally {
+      reader.close();
+    }
+  }
+
+  /**
+   * Write the records in the text data log format.
+   *
+   * <p>Package scope for unit tests.</p>
+   *
+   * @param reader
+   *          Source of records.
+   * @param out
+   *          Where to write the text data log.
+   * @return A summary of the records, with the mean of each column for
+   *         each test.
+   * @throws IOException
+   *           If a record could not be read or written.
+   */
+  static String convert(BinaryDataLogReader reader, Writer out)
+    throws IOException {
+
+    final String[] columnNames = reader.getColumnNames();
+    final Map<Integer, TestSummary> summaries =
+      new TreeMap<Integer, TestSummary>();
+
+    out.write(reader.getHeader());
+    out.write("\n");
+
+    final StringBuilder line = new StringBuilder();
+
+    while (reader.next()) {
+      line.setLength(0);
+
+      line.append(reader.getThreadNumber());
+      line.append(SEPARATOR);
+      line.append(reader.getRunNumber());
+      line.append(SEPARATOR);
+      line.append(reader.getTestNumber());
+      line.append(SEPARATOR);
+      line.append(reader.getStartTime());
+
+      TestSummary summary = summaries.get(reader.getTestNumber());
+
+      if (summary == null) {
+        summary = new TestSummary(columnNames.length);
+        summaries.put(reader.getTestNumber(), summary);
+      }
+
+      summary.add(reader);
+
+      for (int i = 0; i < columnNames.length; ++i) {
+        line.append(SEPARATOR);
+
+        if (reader.isDouble(i)) {
+          line.append(reader.getDoubleValue(i));
+        }
+        else {
+          line.append(reader.getLongValue(i));
+        }
+      }
+
+      line.append('\n');
+      out.append(line);
+    }
+
+    final StringBuilder result = new StringBuilder("\nTest, Records");
+
+    for (String name : columnNames) {
+      result.append(SEPARATOR).append("Mean ").append(name);
+    }
+
+    for (Map.Entry<Integer, TestSummary> entry : summaries.entrySet()) {
+      result.append('\n').append(entry.getKey());
+      entry.getValue().appendTo(result);
+    }
+
+    return result.toString();
+  }
+
+  private static final class TestSummary {
+    private final double[] m_sums;
+    private long m_count;
+
+    public TestSummary(int numberOfColumns) {
+      m_sums = new double[numberOfColumns];
+    }
+
+    public void add(BinaryDataLogReader reader) {
+      for (int i = 0; i < m_sums.length; ++i) {
+        m_sums[i] += reader.isDouble(i) ?
+            reader.getDoubleValue(i) : reader.getLongValue(i);
+      }
+
+      ++m_count;
+    }
+
+    public void appendTo(StringBuilder result) {
+      result.append(SEPARATOR).append(m_count);
+
+      for (double sum : m_sums) {
+        result.append(SEPARATOR).append(sum / m_count);
+      }
+    }
+  }
+}
@@ -0,0 +1,254 @@
+// Copyright (C) 2013 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.grinder.engine.process;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+
+
+/**
+ * Reads a file written by {@link BinaryDataLog}.
+ *
+ * <p>
+ * If the log was not closed, the number of records is estimated from the
+ * file length. Records that are entirely zero were claimed but not written,
+ * and are skipped.
+ * </p>
+ *
+ * <p>Package scope.</p>
+ *
+ * @author Philip Aston
+ */
+final class BinaryDataLogReader implements Closeable {
+
+  private final DataInputStream m_in;
+  private final String m_header;
+  private final boolean[] m_isDouble;
+  private final String[] m_columnNames;
+  private final long[] m_values;
+  private final byte[] m_record;
+  private final long m_numberOfRecords;
+
+  private long m_recordsRead = 0;
+  private int m_threadNumber;
+  private int m_runNumber;
+  private int m_testNumber;
+  private long m_startTime;
+
+  /**
+   * Constructor.
+   *
+   * @param file
+   *          The file.
+   * @throws IOException
+   *           If the file could not be read, or is not a binary data log.
+   */
+  public BinaryDataLogReader(File file) throws IOException {
+    m_in =
+      new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+
+    try {
+      if (m_in.readInt() != BinaryDataLog.MAGIC) {
+        throw new IOException(file + " is not a binary data log");
+      }
+
+      final long numberOfRecords = m_in.readLong();
+      final int headerSize = m_in.readInt();
+
+      m_header = m_in.readUTF();
+
+      final int numberOfColumns = m_in.readInt();
+
+      m_isDouble = new boolean[numberOfColumns];
+      m_columnNames = new String[numberOfColumns];
+      m_values = new long[numberOfColumns];
+
+      for (int i = 0; i < numberOfColumns; ++i) {
+        m_isDouble[i] = m_in.readBoolean();
+      }
+
+      for (int i = 0; i < numberOfColumns; ++i) {
+        m_columnNames[i] = m_in.readUTF();
+      }
+
+      m_record =
+        new byte[BinaryDataLog.FIXED_RECORD_SIZE + 8 * numberOfColumns];
+
+      final long available = (file.length() - headerSize) / m_record.length;
+
+      m_numberOfRecords =
+        numberOfRecords >= 0 ? Math.min(numberOfRecords, available) :
+                               available;
+    }
+    catch (IOException e) {
+      m_in.close();
+      throw e;
+    }
+  }
+
+  /**
+   * The text data log header line.
+   *
+   * @return The header.
+   */
+  public String getHeader() {
+    return m_header;
+  }
+
+  /**
+   * The names of the statistic columns.
+   *
+   * @return The names.
+   */
+  public String[] getColumnNames() {
+    return m_columnNames.clone();
+  }
+
+  /**
+   * Whether a column holds double values.
+   *
+   * @param column
+   *          The column index.
+   * @return {@code true} for double values, {@code false} for long values.
+   */
+  public boolean isDouble(int column) {
+    return m_isDouble[column];
+  }
+
+  /**
+   * Read the next record.
+   *
+   * @return {@code false} if there are no more records.
+   * @throws IOException
+   *           If the file could not be read.
+   */
+  public boolean next() throws IOException {
+    while (m_recordsRead < m_numberOfRecords) {
+      m_in.readFully(m_record);
+      ++m_recordsRead;
+
+      boolean written = false;
+
+      for (byte b : m_record) {
+        if (b != 0) {
+          written = true;
+          break;
+        }
+      }
+
+      if (written) {
+        m_threadNumber = getInt(0);
+        m_runNumber = getInt(4);
+        m_testNumber = getInt(8);
+        m_startTime = getLong(12);
+
+        for (int i = 0; i < m_values.length; ++i) {
+          m_values[i] = getLong(BinaryDataLog.FIXED_RECORD_SIZE + 8 * i);
+        }
+
+        return true;
+      }
+    }
+
+    return false;
+  }
+
+  private int getInt(int offset) {
+    return (m_record[offset] & 0xff) << 24 |
+           (m_record[offset + 1] & 0xff) << 16 |
+           (m_record[offset + 2] & 0xff) << 8 |
+           (m_record[offset + 3] & 0xff);
+  }
+
+  private long getLong(int offset) {
+    return (long) getInt(offset) << 32 | getInt(offset + 4) & 0xffffffffL;
+  }
+
+  /**
+   * The thread number of the current record.
+   *
+   * @return The value.
+   */
+  public int getThreadNumber() {
+    return m_threadNumber;
+  }
+
+  /**
+   * The run number of the current record.
+   *
+   * @return The value.
+   */
+  public int getRunNumber() {
+    return m_runNumber;
+  }
+
+  /**
+   * The test number of the current record.
+   *
+   * @return The value.
+   */
+  public int getTestNumber() {
+    return m_testNumber;
+  }
+
+  /**
+   * The start time of the current record.
+   *
+   * @return The value.
+   */
+  public long getStartTime() {
+    return m_startTime;
+  }
+
+  /**
+   * The value of a long column in the current record.
+   *
+   * @param column
+   *          The column index.
+   * @return The value.
+   */
+  public long getLongValue(int column) {
+    return m_values[column];
+  }
+
+  /**
+   * The value of a double column in the current record.
+   *
+   * @param column
+   *          The column index.
+   * @return The value.
+   */
+  public double getDoubleValue(int column) {
+    return Double.longBitsToDouble(m_values[column]);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override public void close() throws IOException {
+    m_in.close();
+  }
+}
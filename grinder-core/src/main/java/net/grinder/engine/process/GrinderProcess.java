@@ -24,6 +24,9 @@
 
 package net.grinder.engine.process;
 
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.net.UnknownHostException;
@@ -34,7 +37,9 @@ import java.util.HashMap;
 import java.util.Map;
 import java.util.Timer;
 import java.util.TimerTask;
+import java.util.concurrent.TimeUnit;
 
+import net.grinder.common.Closer;
 import net.grinder.common.GrinderBuild;
 import net.grinder.common.GrinderException;
 import net.grinder.common.GrinderProperties;
@@ -58,7 +63,9 @@ import net.grinder.engine.common.EngineException;
 import net.grinder.engine.communication.ConsoleListener;
 import net.grinder.engine.messages.InitialiseGrinderMessage;
 import net.grinder.engine.process.dcr.DCRContextImplementation;
+import net.grinder.messages.console.RegisterExpressionViewMessage;
 import net.grinder.messages.console.RegisterTestsMessage;
+import net.grinder.messages.console.ReportStatisticsCounter;
 import net.grinder.messages.console.ReportStatisticsMessage;
 import net.grinder.messages.console.WorkerAddress;
 import net.grinder.messages.console.WorkerProcessReportMessage;
@@ -71,6 +78,7 @@ import net.grinder.scriptengine.ScriptEngineService.ScriptEngine;
 import net.grinder.scriptengine.ScriptEngineService.WorkerRunnable;
 import net.grinder.scriptengine.ScriptExecutionException;
 import net.grinder.statistics.ExpressionView;
+import net.grinder.statistics.StatisticExpressionFactory;
 import net.grinder.statistics.StatisticsServices;
 import net.grinder.statistics.StatisticsServicesImplementation;
 import net.grinder.statistics.StatisticsTable;
@@ -82,11 +90,14 @@ import net.grinder.synchronisation.LocalBarrierGroups;
 import net.grinder.util.JVM;
 import net.grinder.util.ListenerSupport;
 import net.grinder.util.ListenerSupport.Informer;
+import net.grinder.util.SleepDistribution;
+import net.grinder.util.SleepDistributions;
 import net.grinder.util.Sleeper;
 import net.grinder.util.SleeperImplementation;
 import net.grinder.util.StandardTimeAuthority;
 import net.grinder.util.thread.BooleanCondition;
 import net.grinder.util.thread.Condition;
+import net.grinder.util.thread.VirtualThreads;
 
 import org.slf4j.ILoggerFactory;
 import org.slf4j.Logger;
@@ -113,14 +124,22 @@ final class GrinderProcess {
   private final Logger m_logger;
   private final Logger m_dataLogger;
   private final LoggerConfiguration m_logging;
+  private final File m_binaryDataLogFile;
+  private final AsyncDataLog m_asyncDataLog;
   private final QueuedSender m_consoleSender;
   private final Sleeper m_sleeper;
   private final InitialiseGrinderMessage m_initialisationMessage;
   private final ConsoleListener m_consoleListener;
   private final StatisticsServices m_statisticsServices;
   private final TestStatisticsMap m_accumulatedStatistics;
+  private final ReportStatisticsCounter m_reportStatisticsCounter =
+    new ReportStatisticsCounter();
   private final TestStatisticsHelperImplementation m_testStatisticsHelper;
   private final TestRegistryImplementation m_testRegistryImplementation;
+  private final TestClock m_testClock;
+  private final ArrivalSchedule m_arrivalSchedule;
+  private final long m_pacing;
+  private final boolean m_virtualThreads;
   private final Condition m_eventSynchronisation = new Condition();
   private final MessagePump m_messagePump;
 
@@ -141,6 +160,8 @@ final class GrinderProcess {
   // Guarded by m_eventSynchronisation.
   private String m_shutdownReason;
 
+  private volatile BinaryDataLog m_binaryDataLog;
+
   /**
    * Creates a new {@code GrinderProcess} instance.
    *
@@ -175,6 +196,41 @@ final class GrinderProcess {
     m_logger = m_logging.getLogger();
     m_dataLogger = m_logging.getDataLogger();
 
+    if (properties.getBoolean("grinder.logData", true) &&
+        properties.getBoolean("grinder.binaryDataLog", false)) {
+      m_binaryDataLogFile =
+        new File(logDirectory, workerName + "-data.bin");
+    }
+    else {
+      m_binaryDataLogFile = null;
+    }
+
+    if (m_binaryDataLogFile == null &&
+        properties.getBoolean("grinder.asyncDataLog", false)) {
+      final String overflow =
+        properties.getProperty("grinder.dataLogOverflow", "block");
+
+      final AsyncDataLog.OverflowPolicy overflowPolicy =
+        AsyncDataLog.OverflowPolicy.parse(overflow);
+
+      if (overflowPolicy == null) {
+        throw new EngineException(
+          "Unknown grinder.dataLogOverflow policy '" + overflow + "'");
+      }
+
+      final int queueSize = properties.getInt("grinder.dataLogQueueSize", 4096);
+
+      if (queueSize < 1) {
+        throw new EngineException("grinder.dataLogQueueSize must be positive");
+      }
+
+      m_asyncDataLog =
+        new AsyncDataLog(queueSize, overflowPolicy);
+    }
+    else {
+      m_asyncDataLog = null;
+    }
+
     m_logger.info("The Grinder version {}", GrinderBuild.getVersionString());
     m_logger.info(JVM.getInstance().toString());
     m_logger.info("time zone is {}",
@@ -227,21 +283,96 @@ final class GrinderProcess {
       new TestStatisticsHelperImplementation(
         m_statisticsServices.getStatisticsIndexMap());
 
+    m_testClock =
+      createTestClock(properties.getProperty("grinder.testTimeUnit",
+                                             "milliseconds"),
+                      m_times);
+
+    final String arrivalRate = properties.getProperty("grinder.arrivalRate");
+
+    if (arrivalRate != null) {
+      m_arrivalSchedule =
+        ArrivalSchedule.parse(
+          arrivalRate,
+          properties.getBoolean("grinder.arrivalRate.ramp", false),
+          m_testClock);
+
+      m_logger.info("runs will be scheduled at arrival rate {}", arrivalRate);
+    }
+    else {
+      m_arrivalSchedule = null;
+    }
+
+    m_pacing = properties.getLong("grinder.pacing", 0);
+
+    if (m_pacing < 0) {
+      throw new EngineException("grinder.pacing must not be negative");
+    }
+
+    if (m_pacing > 0) {
+      if (m_arrivalSchedule != null) {
+        throw new EngineException(
+          "grinder.pacing cannot be used with grinder.arrivalRate");
+      }
+
+      m_logger.info("each thread will start a run every {} ms", m_pacing);
+    }
+
+    if (properties.getBoolean("grinder.virtualThreads", false)) {
+      if (VirtualThreads.isSupported()) {
+        m_virtualThreads = true;
+        m_logger.info("worker threads will be virtual threads");
+      }
+      else {
+        m_virtualThreads = false;
+        m_logger.warn("this JVM does not support virtual threads, " +
+                      "ignoring grinder.virtualThreads");
+      }
+    }
+    else {
+      m_virtualThreads = false;
+    }
+
     m_testRegistryImplementation =
       new TestRegistryImplementation(
                        m_threadContexts,
                        m_statisticsServices.getStatisticsSetFactory(),
                        m_testStatisticsHelper,
-                       m_times.getTimeAuthority());
+                       m_testClock);
 
     final Logger externalLogger =
       new ExternalLogger(m_logger, m_threadContexts);
 
+    final SleepDistribution sleepDistribution =
+      createSleepDistribution(properties);
+
+    if (sleepDistribution != SleepDistributions.NORMAL) {
+      m_logger.info("sleep times will have a {} distribution",
+                    sleepDistribution);
+    }
+
+    final long sleepSeed;
+
+    if (properties.containsKey("grinder.sleepRandomSeed")) {
+      // Give each process of each agent its own sequence.
+      sleepSeed =
+        SleeperImplementation.splitSeed(
+          SleeperImplementation.splitSeed(
+            properties.getLong("grinder.sleepRandomSeed", 0),
+            workerIdentity.getAgentIdentity().getNumber()),
+          workerIdentity.getNumber());
+    }
+    else {
+      sleepSeed = System.nanoTime();
+    }
+
     m_sleeper = new SleeperImplementation(
       m_times.getTimeAuthority(),
       externalLogger,
       properties.getDouble("grinder.sleepTimeFactor", 1.0d),
-      properties.getDouble("grinder.sleepTimeVariation", 0.2d));
+      properties.getDouble("grinder.sleepTimeVariation", 0.2d),
+      sleepDistribution,
+      sleepSeed);
 
     final Statistics scriptStatistics =
       new ScriptStatisticsImplementation(m_threadContexts,
@@ -344,14 +475,17 @@ final class GrinderProcess {
 
       m_logger.info(numbers.toString());
 
-      final short numberOfThreads =
-        properties.getShort("grinder.threads", (short)1);
+      final int numberOfThreads = properties.getInt("grinder.threads", 1);
       final int reportToConsoleInterval =
         properties.getInt("grinder.reportToConsole.interval", 500);
       final int duration = properties.getInt("grinder.duration", 0);
       final boolean reportTimesToConsole =
           properties.getBoolean("grinder.reportTimesToConsole", true);
 
+      if (m_arrivalSchedule != null || m_pacing > 0) {
+        registerCorrectedTimeViews();
+      }
+
       final Instrumenter instrumenter =
         scriptEngineContainer.createInstrumenter();
 
@@ -386,15 +520,41 @@ final class GrinderProcess {
       final ExpressionView[] detailExpressionViews =
         m_statisticsServices.getDetailStatisticsView().getExpressionViews();
 
+      final TimeUnit testTimeUnit = m_testClock.getTimeUnit();
+
       for (final ExpressionView detailExpressionView : detailExpressionViews) {
         dataLogHeader.append(", ");
         dataLogHeader.append(detailExpressionView.getDisplayName());
+
+        // The data log records test times as measured. Label their unit,
+        // unless it is the traditional milliseconds.
+        if (testTimeUnit != TimeUnit.MILLISECONDS &&
+            detailExpressionView.isTestTime()) {
+          dataLogHeader.append(" (");
+          dataLogHeader.append(getUnitSymbol(testTimeUnit));
+          dataLogHeader.append(")");
+        }
       }
 
-      m_dataLogger.info(dataLogHeader.toString());
+      if (m_binaryDataLogFile != null) {
+        try {
+          m_binaryDataLog =
+            new BinaryDataLog(m_binaryDataLogFile,
+                              dataLogHeader.toString(),
+                              detailExpressionViews,
+                              m_logger);
+        }
+        catch (final IOException e) {
+          throw new EngineException(
+            "Failed to create binary data log " + m_binaryDataLogFile, e);
+        }
+      }
+      else {
+        m_dataLogger.info(dataLogHeader.toString());
+      }
 
       sendStatusMessage(ProcessReport.State.STARTED,
-                        (short)0,
+                        0,
                         numberOfThreads);
 
       final ThreadSynchronisation threadSynchronisation =
@@ -502,20 +662,33 @@ final class GrinderProcess {
       reportTimerTask.run();
 
       sendStatusMessage(ProcessReport.State.FINISHED,
-                        (short)0,
-                        (short)0);
+                        0,
+                        0);
 
       m_consoleSender.shutdown();
 
+      if (m_reportStatisticsCounter.getNumberOfReports() > 0) {
+        m_logger.info("sent {} to the console", m_reportStatisticsCounter);
+      }
+
       final long elapsedTime = m_times.getElapsedTime();
       m_logger.info("elapsed time is {} ms", elapsedTime);
 
+      if (m_asyncDataLog != null) {
+        m_asyncDataLog.shutdown();
+
+        m_logger.info("data log queue maximum depth was {}, dropped {} records",
+                      m_asyncDataLog.getMaximumQueueDepth(),
+                      m_asyncDataLog.getDroppedRecords());
+      }
+
       m_logger.info("Final statistics for this process:");
 
       final StatisticsTable statisticsTable =
         new StatisticsTable(m_statisticsServices.getSummaryStatisticsView(),
                             m_statisticsServices.getStatisticsIndexMap(),
-                            m_accumulatedStatistics);
+                            m_accumulatedStatistics,
+                            m_testClock.getTimeUnit());
 
       final StringWriter statistics = new StringWriter();
       statistics.write("\n");
@@ -532,6 +705,146 @@ final class GrinderProcess {
     }
   }
 
+  /**
+   * Create the {@link TestClock} specified by the
+   * {@code grinder.testTimeUnit} property.
+   *
+   * <p>Package scope for unit tests.</p>
+   *
+   * @param unitName
+   *          {@code milliseconds}, {@code microseconds}, or
+   *          {@code nanoseconds}.
+   * @param times
+   *          Used to measure test times in milliseconds.
+   * @return The clock.
+   * @throws EngineException
+   *           If the unit is not supported.
+   */
+  static TestClock createTestClock(final String unitName, final Times times)
+    throws EngineException {
+
+    final TimeUnit unit;
+
+    try {
+      unit = TimeUnit.valueOf(unitName.trim().toUpperCase());
+    }
+    catch (final IllegalArgumentException e) {
+      throw new EngineException(
+        "Unknown grinder.testTimeUnit '" + unitName + "'");
+    }
+
+    switch (unit) {
+      case MILLISECONDS:
+        return new MillisecondTestClock(times.getTimeAuthority());
+
+      case MICROSECONDS:
+      case NANOSECONDS:
+        return new HighResolutionTestClock(unit);
+
+      default:
+        throw new EngineException(
+          "Unsupported grinder.testTimeUnit '" + unitName +
+          "', use milliseconds, microseconds, or nanoseconds");
+    }
+  }
+
+  /**
+   * Create the sleep distribution specified by the
+   * {@code grinder.sleepDistribution} property.
+   *
+   * <p>Package scope for unit tests.</p>
+   *
+   * @param properties
+   *          The properties.
+   * @return The distribution.
+   * @throws EngineException
+   *           If the distribution is not supported, or its histogram could
+   *           not be read.
+   */
+  static SleepDistribution createSleepDistribution(
+    final GrinderProperties properties) throws EngineException {
+
+    final String name =
+      properties.getProperty("grinder.sleepDistribution", "normal");
+
+    if (!"empirical".equalsIgnoreCase(name.trim())) {
+      try {
+        return SleepDistributions.forName(name);
+      }
+      catch (final IllegalArgumentException e) {
+        throw new EngineException(
+          "Unknown grinder.sleepDistribution '" + name +
+          "', use normal, exponential, lognormal, or empirical");
+      }
+    }
+
+    final File histogram =
+      properties.resolveRelativeFile(
+        properties.getFile("grinder.sleepHistogram", null));
+
+    if (histogram == null) {
+      throw new EngineException(
+        "grinder.sleepHistogram must be set for an empirical " +
+        "grinder.sleepDistribution");
+    }
+
+    FileReader reader = null;
+
+    try {
+      reader = new FileReader(histogram);
+      return SleepDistributions.empirical(reader);
+    }
+    catch (final IOException e) {
+      throw new EngineException("Failed to read " + histogram, e);
+    }
+    catch (final IllegalArgumentException e) {
+      throw new EngineException(
+        histogram + " is not a valid histogram: " + e.getMessage());
+    }
+    finally {
+      Closer.close(reader);
+    }
+  }
+
+  /**
+   * Runs are scheduled, so correctedTime is recorded. Add it to the data log,
+   * the final summary, and the console.
+   */
+  private void registerCorrectedTimeViews() throws GrinderException {
+    final StatisticExpressionFactory expressionFactory =
+      m_statisticsServices.getStatisticExpressionFactory();
+
+    m_statisticsServices.getDetailStatisticsView().add(
+      expressionFactory.createExpressionView(
+        "Corrected time",
+        "(sum correctedTime)",
+        false).asTestTime());
+
+    final ExpressionView meanCorrectedTimeView =
+      expressionFactory.createExpressionView(
+        "Mean Corrected Test Time (ms)",
+        "(/ (sum correctedTime) (count correctedTime))",
+        false).asTestTime();
+
+    m_statisticsServices.getSummaryStatisticsView().add(meanCorrectedTimeView);
+
+    m_consoleSender.send(
+      new RegisterExpressionViewMessage(meanCorrectedTimeView));
+  }
+
+  private static String getUnitSymbol(final TimeUnit unit) {
+    switch (unit) {
+      case MICROSECONDS:
+        return "us";
+
+      case NANOSECONDS:
+        return "ns";
+
+      default:
+        return "ms";
+    }
+  }
+
   public void shutdown(final boolean inputStreamIsStdin) {
     if (!inputStreamIsStdin) {
       // Sadly it appears its impossible to interrupt a read() on a process
@@ -541,11 +854,24 @@ final class GrinderProcess {
       m_messagePump.shutdown();
     }
 
+    if (m_asyncDataLog != null) {
+      m_asyncDataLog.shutdown();
+    }
+
     // Logback doesn't stop its loggers on exit (see LBCORE-202). We do
     // so explicitly to flush our BufferedEchoMessageEncoder.
     if (m_logging != null) {
       m_logging.stop();
     }
+
+    if (m_binaryDataLog != null) {
+      try {
+        m_binaryDataLog.close();
+      }
+      catch (final IOException e) {
+        m_logger.error("Failed to close binary data log", e);
+      }
+    }
   }
 
   private class ReportToConsoleTimerTask extends TimerTask {
@@ -574,17 +900,26 @@ final class GrinderProcess {
           m_consoleSender.send(new RegisterTestsMessage(newTests));
         }
 
+        ReportStatisticsMessage report = null;
+
         if (sample.size() > 0) {
           if (!m_reportTimesToConsole) {
             m_testStatisticsHelper.removeTestTimeFromSample(sample);
           }
 
-          m_consoleSender.send(new ReportStatisticsMessage(sample));
+          report =
+            new ReportStatisticsMessage(sample, m_testClock.getTimeUnit());
+          m_consoleSender.send(report);
         }
 
         sendStatusMessage(ProcessReport.State.RUNNING,
                           m_threads.getNumberOfRunningThreads(),
                           m_threads.getTotalNumberOfThreads());
+
+        // The report has been encoded by the flush.
+        if (report != null) {
+          m_reportStatisticsCounter.add(report);
+        }
       }
       catch (final CommunicationException e) {
         m_terminalLogger.error("Report to console failed", e);
@@ -595,8 +930,8 @@ final class GrinderProcess {
   }
 
   private void sendStatusMessage(final State finished,
-                                 final short numberOfThreads,
-                                 final short totalNumberOfThreads)
+                                 final int numberOfThreads,
+                                 final int totalNumberOfThreads)
     throws CommunicationException {
 
     m_consoleSender.send(new WorkerProcessReportMessage(
@@ -634,9 +969,9 @@ final class GrinderProcess {
     private final BooleanCondition m_started = new BooleanCondition();
     private final Condition m_threadEventCondition;
 
-    private short m_numberCreated = 0;
-    private short m_numberAwaitingStart = 0;
-    private short m_numberFinished = 0;
+    private int m_numberCreated = 0;
+    private int m_numberAwaitingStart = 0;
+    private int m_numberFinished = 0;
 
     ThreadSynchronisation(final Condition condition) {
       m_threadEventCondition = condition;
@@ -646,9 +981,9 @@ final class GrinderProcess {
      * The number of worker threads that have been created but not run to
      * completion.
      */
-    public short getNumberOfRunningThreads() {
+    public int getNumberOfRunningThreads() {
       synchronized (m_threadEventCondition) {
-        return (short)(m_numberCreated - m_numberFinished);
+        return m_numberCreated - m_numberFinished;
       }
     }
 
@@ -665,7 +1000,7 @@ final class GrinderProcess {
     /**
      * The number of worker threads that have been created.
      */
-    public short getTotalNumberOfThreads() {
+    public int getTotalNumberOfThreads() {
       synchronized (m_threadEventCondition) {
         return m_numberCreated;
       }
@@ -748,7 +1083,9 @@ final class GrinderProcess {
           m_initialisationMessage.getProperties(),
           m_statisticsServices,
           threadNumber,
-          m_dataLogger);
+          m_dataLogger,
+          m_asyncDataLog,
+          m_binaryDataLog);
 
 
       final WorkerRunnableFactory workerRunnableFactory;
@@ -766,12 +1103,25 @@ final class GrinderProcess {
         workerRunnableFactory = m_defaultWorkerRunnableFactory;
       }
 
+      final RunSchedule runSchedule;
+
+      if (m_arrivalSchedule != null) {
+        runSchedule = m_arrivalSchedule;
+      }
+      else if (m_pacing > 0) {
+        runSchedule = new PacingSchedule(m_pacing, m_testClock);
+      }
+      else {
+        runSchedule = null;
+      }
+
       final GrinderThread runnable =
           new GrinderThread(m_logger,
                             threadContext,
                             m_threadSynchronisation,
                             m_initialisationMessage.getProperties(),
                             m_sleeper,
+                            runSchedule,
                             workerRunnableFactory);
 
 
@@ -784,8 +1134,17 @@ final class GrinderProcess {
         });
 
 
-      final Thread t = new Thread(runnable, "thread " + threadNumber);
-      t.setDaemon(true);
+      final String threadName = "thread " + threadNumber;
+      final Thread t;
+
+      if (m_virtualThreads) {
+        t = VirtualThreads.newThread(threadName, runnable);
+      }
+      else {
+        t = new Thread(runnable, threadName);
+        t.setDaemon(true);
+      }
+
       t.start();
 
       return threadNumber;
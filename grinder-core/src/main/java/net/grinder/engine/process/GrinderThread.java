@@ -43,17 +43,23 @@ class GrinderThread implements Runnable {
   private final WorkerThreadSynchronisation m_threadSynchronisation;
   private final GrinderProperties m_properties;
   private final Sleeper m_sleeper;
+  private final RunSchedule m_runSchedule;
   private final ThreadContext m_context;
   private final WorkerRunnableFactory m_workerRunnableFactory;
 
   /**
    * The constructor.
+   *
+   * @param runSchedule
+   *          Determines when each run starts. If <code>null</code>, runs are
+   *          performed back to back.
    */
   public GrinderThread(final Logger logger,
                        final ThreadContext context,
                        final WorkerThreadSynchronisation threadSynchronisation,
                        final GrinderProperties properties,
                        final Sleeper sleeper,
+                       final RunSchedule runSchedule,
                        final WorkerRunnableFactory workerRunnableFactory)
     throws EngineException {
 
@@ -62,6 +68,7 @@ class GrinderThread implements Runnable {
     m_threadSynchronisation = threadSynchronisation;
     m_properties = properties;
     m_sleeper = sleeper;
+    m_runSchedule = runSchedule;
     m_workerRunnableFactory = workerRunnableFactory;
 
     m_threadSynchronisation.threadCreated();
@@ -79,7 +86,11 @@ class GrinderThread implements Runnable {
     try {
       final WorkerRunnable workerRunnable = m_workerRunnableFactory.create();
 
-      final int numberOfRuns = m_properties.getInt("grinder.runs", 1);
+      // An arrival schedule determines when the threads finish, so by
+      // default they run until it is complete.
+      final int numberOfRuns =
+        m_properties.getInt("grinder.runs",
+                            m_runSchedule instanceof ArrivalSchedule ? 0 : 1);
 
       if (numberOfRuns == 0) {
         m_logger.info(m_context.getLogMarker(), "starting, will run forever");
@@ -93,6 +104,8 @@ class GrinderThread implements Runnable {
 
       m_threadSynchronisation.awaitStart();
 
+      m_sleeper.seedThread(m_context.getThreadNumber());
+
       m_sleeper.sleepFlat(m_properties.getLong("grinder.initialSleepTime", 0));
 
       int currentRun;
@@ -101,6 +114,26 @@ class GrinderThread implements Runnable {
            numberOfRuns == 0 || currentRun < numberOfRuns;
            currentRun++) {
 
+        if (m_runSchedule != null) {
+          final long delay;
+
+          try {
+            delay = m_runSchedule.awaitNextRun(m_sleeper);
+          }
+          catch (final Sleeper.ShutdownException e) {
+            m_logger.info(m_context.getLogMarker(), "shut down");
+            break;
+          }
+
+          if (delay < 0) {
+            m_logger.info(m_context.getLogMarker(),
+                          "run schedule complete");
+            break;
+          }
+
+          m_context.setRunScheduleDelay(delay);
+        }
+
         m_context.setCurrentRunNumber(currentRun);
 
         m_context.fireBeginRunEvent();
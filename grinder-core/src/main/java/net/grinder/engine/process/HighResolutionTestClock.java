@@ -0,0 +1,75 @@
+// Copyright (C) 2013 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.grinder.engine.process;
+
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * {@link TestClock} based on {@link System#nanoTime()} that measures test
+ * times in microseconds or nanoseconds.
+ *
+ * <p>
+ * Times are measured from the creation of the clock, so are never negative.
+ * This allows callers to use <code>-1</code> as a marker value.
+ * </p>
+ *
+ * @author Philip Aston
+ */
+final class HighResolutionTestClock implements TestClock {
+
+  private final TimeUnit m_timeUnit;
+  private final long m_originNanos = System.nanoTime();
+  private final long m_originMillis = System.currentTimeMillis();
+
+  /**
+   * Constructor.
+   *
+   * @param timeUnit
+   *          The unit of times returned by {@link #getTime()}. Must be finer
+   *          than {@link TimeUnit#MILLISECONDS}.
+   */
+  public HighResolutionTestClock(final TimeUnit timeUnit) {
+    if (timeUnit.toNanos(1) >= TimeUnit.MILLISECONDS.toNanos(1)) {
+      throw new IllegalArgumentException(
+        "Unit " + timeUnit + " is not finer than milliseconds");
+    }
+
+    m_timeUnit = timeUnit;
+  }
+
+  @Override
+  public long getTime() {
+    return m_timeUnit.convert(System.nanoTime() - m_originNanos,
+                             TimeUnit.NANOSECONDS);
+  }
+
+  @Override
+  public long toTimeInMilliseconds(final long time) {
+    return m_originMillis + m_timeUnit.toMillis(time);
+  }
+
+  @Override
+  public TimeUnit getTimeUnit() {
+    return m_timeUnit;
+  }
+}
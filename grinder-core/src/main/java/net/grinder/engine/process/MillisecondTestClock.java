@@ -0,0 +1,57 @@
+// Copyright (C) 2013 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.grinder.engine.process;
+
+import java.util.concurrent.TimeUnit;
+
+import net.grinder.common.TimeAuthority;
+
+
+/**
+ * {@link TestClock} that measures test times in milliseconds using a
+ * {@link TimeAuthority}.
+ *
+ * @author Philip Aston
+ */
+final class MillisecondTestClock implements TestClock {
+
+  private final TimeAuthority m_timeAuthority;
+
+  public MillisecondTestClock(final TimeAuthority timeAuthority) {
+    m_timeAuthority = timeAuthority;
+  }
+
+  @Override
+  public long getTime() {
+    return m_timeAuthority.getTimeInMilliseconds();
+  }
+
+  @Override
+  public long toTimeInMilliseconds(final long time) {
+    return time;
+  }
+
+  @Override
+  public TimeUnit getTimeUnit() {
+    return TimeUnit.MILLISECONDS;
+  }
+}
@@ -0,0 +1,83 @@
+// Copyright (C) 2013 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+package net.grinder.engine.process;
+
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Closed model run schedule for a single worker thread. Runs are due at a
+ * fixed interval from the start of the first run.
+ *
+ * <p>
+ * If a run takes longer than the interval, the next run starts as soon as the
+ * previous run finishes, and is late. The schedule does not skip runs to
+ * catch up.
+ * </p>
+ *
+ * <p>Package scope.</p>
+ *
+ * @author Philip Aston
+ */
+final class PacingSchedule extends AbstractRunSchedule {
+
+  private final long m_interval;
+
+  private long m_nextRunTime = -1;
+
+  /**
+   * Constructor.
+   *
+   * @param interval
+   *          The interval between runs, in milliseconds.
+   * @param testClock
+   *          The clock used to time runs.
+   */
+  public PacingSchedule(final long interval, final TestClock testClock) {
+    super(testClock);
+
+    if (interval <= 0) {
+      throw new IllegalArgumentException("Interval must be positive");
+    }
+
+    m_interval =
+      testClock.getTimeUnit().convert(interval, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * <p>
+   * The first call starts the schedule.
+   * </p>
+   */
+  @Override protected long nextRunTime(final long now) {
+    if (m_nextRunTime == -1) {
+      m_nextRunTime = now;
+    }
+
+    final long result = m_nextRunTime;
+
+    m_nextRunTime += m_interval;
+
+    return result;
+  }
+}
@@ -29,6 +29,7 @@ import net.grinder.plugininterface.GrinderPlugin;
 import net.grinder.plugininterface.PluginException;
 import net.grinder.plugininterface.PluginProcessContext;
 import net.grinder.plugininterface.PluginThreadListener;
+import net.grinder.script.Statistics.StatisticsForTest;
 
 import org.slf4j.Logger;
 
@@ -75,6 +76,17 @@ final class PluginProcessContextImplementation
     return createPluginThreadListener(threadContext, plugin);
   }
 
+  @Override
+  public StatisticsForTest getStatisticsForCurrentTest() {
+    final ThreadContext threadContext = m_threadContextLocator.get();
+
+    if (threadContext == null) {
+      return null;
+    }
+
+    return threadContext.getStatisticsForCurrentTest();
+  }
+
   PluginThreadListener createPluginThreadListener(
     final ThreadContext threadContext, final GrinderPlugin plugin)
     throws EngineException {
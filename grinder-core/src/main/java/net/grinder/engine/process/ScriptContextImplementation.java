@@ -142,13 +142,24 @@ final class ScriptContextImplementation implements InternalScriptContext {
 
   @Override
   public void sleep(final long meanTime) throws GrinderException {
-    m_sleeper.sleepNormal(meanTime);
+    m_sleeper.sleep(meanTime);
   }
 
   @Override
   public void sleep(final long meanTime, final long sigma)
       throws GrinderException {
-    m_sleeper.sleepNormal(meanTime, sigma);
+    m_sleeper.sleep(meanTime, sigma);
+  }
+
+  @Override
+  public void sleepExponential(final long meanTime) throws GrinderException {
+    m_sleeper.sleepExponential(meanTime);
+  }
+
+  @Override
+  public void sleepLogNormal(final long meanTime, final long sigma)
+      throws GrinderException {
+    m_sleeper.sleepLogNormal(meanTime, sigma);
   }
 
   @Override
@@ -1,4 +1,4 @@
-// Copyright (C) 2003 - 2011 Philip Aston
+// Copyright (C) 2003 - 2013 Philip Aston
 // All rights reserved.
 //
 // This file is part of The Grinder software distribution. Refer to
@@ -119,7 +119,7 @@ final class ScriptStatisticsImplementation implements Statistics {
       throw new InvalidContextException("There is no test in progress.");
     }
 
-    return statisticsForCurrentTest;
+    return expose(statisticsForCurrentTest);
   }
 
   public StatisticsForTest getForLastTest() throws InvalidContextException {
@@ -131,6 +131,18 @@ final class ScriptStatisticsImplementation implements Statistics {
         "No tests have been performed by this thread.");
     }
 
-    return statisticsForLastTest;
+    return expose(statisticsForLastTest);
+  }
+
+  /**
+   * The script might keep the result, so prevent the worker thread reusing
+   * it for a later test.
+   */
+  private static StatisticsForTest expose(StatisticsForTest statisticsForTest) {
+    if (statisticsForTest instanceof StatisticsForTestImplementation) {
+      ((StatisticsForTestImplementation)statisticsForTest).setExposed();
+    }
+
+    return statisticsForTest;
   }
 }
@@ -38,6 +38,12 @@ import net.grinder.statistics.StatisticsSet;
  * statistics set, until freeze is called after which it is a wrapper around
  * a read-only statistics set.
  *
+ * <p>A frozen instance can be re-associated with its dispatch context by
+ * calling {@link #reset}, allowing the instance and its statistics set to be
+ * reused for a later dispatch. Scripts can keep references to the instances
+ * they are given, so an instance that has been given to a script is marked
+ * with {@link #setExposed} and must never be reset.
+ *
  * @author Philip Aston
  */
 final class StatisticsForTestImplementation implements StatisticsForTest {
@@ -54,8 +60,14 @@ final class StatisticsForTestImplementation implements StatisticsForTest {
    *        m_immutableStatistics != null
    */
   private final ImmutableStatisticsSet m_immutableStatistics;
+  private final DispatchContext m_owningDispatchContext;
+  private final StatisticsSet m_ownedStatistics;
   private DispatchContext m_dispatchContext;
-  private StatisticsSet m_statistics;
+
+  // Volatile, because plug-ins can update the statistics from other threads
+  // while the test is in progress.
+  private volatile StatisticsSet m_statistics;
+  private boolean m_exposed;
 
   public StatisticsForTestImplementation(
     final DispatchContext dispatchContext,
@@ -64,6 +76,8 @@ final class StatisticsForTestImplementation implements StatisticsForTest {
 
     m_testStatisticsHelper = testStatisticsHelper;
     m_test = dispatchContext.getTest();
+    m_owningDispatchContext = dispatchContext;
+    m_ownedStatistics = statistics;
     m_dispatchContext = dispatchContext;
     m_statistics = statistics;
     m_immutableStatistics = m_statistics;
@@ -75,14 +89,49 @@ final class StatisticsForTestImplementation implements StatisticsForTest {
     m_statistics = null;
   }
 
+  /**
+   * Record that a script might hold a reference to this object.
+   */
+  public void setExposed() {
+    m_exposed = true;
+  }
+
+  /**
+   * Whether a script might hold a reference to this object.
+   *
+   * @return {@code true} if and only if {@link #reset} may not be called.
+   */
+  public boolean isExposed() {
+    return m_exposed;
+  }
+
+  /**
+   * Zero the statistics and re-associate this object with the dispatch
+   * context that created it.
+   *
+   * @throws IllegalStateException If the object has been given to a script.
+   */
+  public void reset() {
+    if (m_exposed) {
+      throw new IllegalStateException(
+        "Statistics given to a script cannot be reused");
+    }
+
+    m_ownedStatistics.reset();
+    m_dispatchContext = m_owningDispatchContext;
+    m_statistics = m_ownedStatistics;
+  }
+
   private StatisticsSet getStatisticsChecked() throws InvalidContextException {
-    if (m_statistics == null) {
+    final StatisticsSet statistics = m_statistics;
+
+    if (statistics == null) {
       throw new InvalidContextException(
         "Statistics for test invocation have been reported and cannot be " +
         "updated. Perhaps you should have called setDelayReports(true)?");
     }
 
-    return m_statistics;
+    return statistics;
   }
 
   public StatisticsSet getStatistics() {
@@ -21,23 +21,26 @@
 
 package net.grinder.engine.process;
 
-import net.grinder.common.TimeAuthority;
-
 
 /**
  * Implementation of {@link StopWatch}.
  *
+ * <p>
+ * Times are measured in the {@link TestClock#getTimeUnit() unit} of the
+ * {@link TestClock}.
+ * </p>
+ *
  * @author Philip Aston
  */
 final class StopWatchImplementation implements StopWatch {
 
-  private final TimeAuthority m_timeAuthority;
+  private final TestClock m_clock;
 
   private long m_time;
   private long m_startTime = -1;
 
-  public StopWatchImplementation(final TimeAuthority timeAuthority) {
-    m_timeAuthority = timeAuthority;
+  public StopWatchImplementation(final TestClock clock) {
+    m_clock = clock;
   }
 
   @Override
@@ -46,7 +49,7 @@ final class StopWatchImplementation implements StopWatch {
       throw new StopWatchRunningException("Already running");
     }
 
-    m_startTime = m_timeAuthority.getTimeInMilliseconds();
+    m_startTime = m_clock.getTime();
   }
 
   @Override
@@ -55,7 +58,7 @@ final class StopWatchImplementation implements StopWatch {
       throw new StopWatchNotRunningException("Not running");
     }
 
-    m_time = m_time + m_timeAuthority.getTimeInMilliseconds() - m_startTime;
+    m_time = m_time + m_clock.getTime() - m_startTime;
     m_startTime = -1;
   }
 
@@ -0,0 +1,63 @@
+// Copyright (C) 2013 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.grinder.engine.process;
+
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Source of the times used to measure tests.
+ *
+ * <p>
+ * Times returned by {@link #getTime()} are expressed in the clock's
+ * {@link #getTimeUnit() unit} and have an arbitrary origin, so only the
+ * difference between two times is meaningful. Use
+ * {@link #toTimeInMilliseconds} to convert a time to an absolute value.
+ * </p>
+ *
+ * @author Philip Aston
+ */
+interface TestClock {
+
+  /**
+   * Return the current time.
+   *
+   * @return The time, in {@link #getTimeUnit()} units.
+   */
+  long getTime();
+
+  /**
+   * Convert a time returned by {@link #getTime()} to milliseconds since the
+   * Epoch.
+   *
+   * @param time The time.
+   * @return The time in milliseconds since the Epoch.
+   */
+  long toTimeInMilliseconds(long time);
+
+  /**
+   * The unit of times returned by {@link #getTime()}.
+   *
+   * @return The unit.
+   */
+  TimeUnit getTimeUnit();
+}
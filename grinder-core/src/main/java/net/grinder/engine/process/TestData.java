@@ -23,7 +23,6 @@
 package net.grinder.engine.process;
 
 import net.grinder.common.Test;
-import net.grinder.common.TimeAuthority;
 import net.grinder.common.UncheckedGrinderException;
 import net.grinder.engine.common.EngineException;
 import net.grinder.engine.process.DispatchContext.DispatchStateException;
@@ -36,6 +35,7 @@ import net.grinder.scriptengine.Instrumenter;
 import net.grinder.scriptengine.Recorder;
 import net.grinder.statistics.StatisticsSet;
 import net.grinder.statistics.StatisticsSetFactory;
+import net.grinder.statistics.StripedStatisticsSet;
 
 import org.slf4j.Marker;
 import org.slf4j.MarkerFactory;
@@ -53,7 +53,7 @@ final class TestData implements RegisteredTest, Recorder {
 
   private final StatisticsSetFactory m_statisticsSetFactory;
   private final TestStatisticsHelper m_testStatisticsHelper;
-  private final TimeAuthority m_timeAuthority;
+  private final TestClock m_testClock;
   private final Instrumenter m_instrumenter;
   private final ThreadContextLocator m_threadContextLocator;
   private final Test m_test;
@@ -61,9 +61,10 @@ final class TestData implements RegisteredTest, Recorder {
 
   /**
    * Cumulative statistics for our test that haven't yet been set to
-   * the console.
+   * the console. Recording doesn't lock, so worker threads don't contend
+   * with each other.
    */
-  private final StatisticsSet m_testStatistics;
+  private final StripedStatisticsSet m_testStatistics;
 
   private final RecorderHolderThreadLocal m_recorderHolderTL =
     new RecorderHolderThreadLocal();
@@ -71,16 +72,16 @@ final class TestData implements RegisteredTest, Recorder {
   TestData(final ThreadContextLocator threadContextLocator,
            final StatisticsSetFactory statisticsSetFactory,
            final TestStatisticsHelper testStatisticsHelper,
-           final TimeAuthority timeAuthority,
+           final TestClock testClock,
            final Instrumenter instrumenter,
            final Test testDefinition) {
     m_statisticsSetFactory = statisticsSetFactory;
     m_testStatisticsHelper = testStatisticsHelper;
-    m_timeAuthority = timeAuthority;
+    m_testClock = testClock;
     m_instrumenter = instrumenter;
     m_threadContextLocator = threadContextLocator;
     m_test = testDefinition;
-    m_testStatistics = m_statisticsSetFactory.create();
+    m_testStatistics = m_statisticsSetFactory.createStriped();
 
     m_logMarker = MarkerFactory.getMarker("test-" + testDefinition.getNumber());
   }
@@ -149,8 +150,8 @@ final class TestData implements RegisteredTest, Recorder {
         }
 
         final TestRecorder recorder =
-          new TestRecorder(threadContext.getDispatchResultReporter(),
-                           new StopWatchImplementation(m_timeAuthority));
+          new TestRecorder(threadContext,
+                           new StopWatchImplementation(m_testClock));
 
         return new RecorderHolder(threadContext, recorder);
       }
@@ -227,22 +228,51 @@ final class TestData implements RegisteredTest, Recorder {
    * {@link ThreadContextImplementation#getDispatchContext()} takes care to only
    * return references to Dispatchers that are <em>dispatching</em> or
    * <em>complete</em>.
+   *
+   * <p>
+   * To avoid allocation on every dispatch, each recorder owns two
+   * {@link StatisticsForTestImplementation}s which it uses alternately. The
+   * script may keep the instances it obtains through the
+   * {@link net.grinder.script.Statistics} interface, so these are marked as
+   * exposed, and replaced rather than reused.
+   * </p>
+   *
+   * <p>
+   * Start and dispatch times are in the units of the {@link TestClock}.
+   * </p>
    */
   private final class TestRecorder
     implements DispatchContext, Recorder {
 
+    private final ThreadContext m_threadContext;
     private final DispatchResultReporter m_resultReporter;
     private final StopWatch m_pauseTimer;
 
+    private final StatisticsForTestImplementation[] m_statisticsForTestBuffers;
+    private int m_nextBuffer = 0;
+
     private long m_startTime = -1;
     private long m_dispatchTime = -1;
     private StatisticsForTestImplementation m_statisticsForTest;
 
-    public TestRecorder(final DispatchResultReporter resultReporter,
-                           final StopWatch pauseTimer) {
+    public TestRecorder(final ThreadContext threadContext,
+                        final StopWatch pauseTimer) {
 
-      m_resultReporter = resultReporter;
+      m_threadContext = threadContext;
+      m_resultReporter = threadContext.getDispatchResultReporter();
       m_pauseTimer = pauseTimer;
+
+      m_statisticsForTestBuffers = new StatisticsForTestImplementation[2];
+
+      for (int i = 0; i < m_statisticsForTestBuffers.length; ++i) {
+        m_statisticsForTestBuffers[i] = createStatisticsForTest();
+        m_statisticsForTestBuffers[i].freeze();
+      }
+    }
+
+    private StatisticsForTestImplementation createStatisticsForTest() {
+      return new StatisticsForTestImplementation(
+        this, m_testStatisticsHelper, m_statisticsSetFactory.create());
     }
 
     @Override
@@ -253,21 +283,30 @@ final class TestData implements RegisteredTest, Recorder {
 
       m_pauseTimer.reset();
 
-      m_statisticsForTest = new StatisticsForTestImplementation(
-        this,
-        m_testStatisticsHelper,
-        m_statisticsSetFactory.create());
+      final StatisticsForTestImplementation next =
+        m_statisticsForTestBuffers[m_nextBuffer];
+
+      if (next.isExposed()) {
+        m_statisticsForTest = createStatisticsForTest();
+        m_statisticsForTestBuffers[m_nextBuffer] = m_statisticsForTest;
+      }
+      else {
+        next.reset();
+        m_statisticsForTest = next;
+      }
+
+      m_nextBuffer = (m_nextBuffer + 1) % m_statisticsForTestBuffers.length;
 
       // Make it more likely that the timed section has a "clear run".
       Thread.yield();
 
-      m_startTime = m_timeAuthority.getTimeInMilliseconds();
+      m_startTime = m_testClock.getTime();
     }
 
     @Override
     public void end(final boolean success) {
       m_dispatchTime =
-        Math.max(m_timeAuthority.getTimeInMilliseconds() - m_startTime, 0);
+        Math.max(m_testClock.getTime() - m_startTime, 0);
 
       if (m_pauseTimer.isRunning()) {
         m_pauseTimer.stop();
@@ -295,15 +334,23 @@ final class TestData implements RegisteredTest, Recorder {
 
       m_testStatisticsHelper.recordTest(statistics, getElapsedTime());
 
-      m_resultReporter.report(getTest(), m_startTime, statistics);
+      final long scheduleDelay = m_threadContext.getRunScheduleDelay();
+
+      if (scheduleDelay >= 0) {
+        m_testStatisticsHelper.recordScheduleDelay(statistics, scheduleDelay);
+      }
+
+      m_resultReporter.report(getTest(),
+                             m_testClock.toTimeInMilliseconds(m_startTime),
+                             statistics);
 
       if (m_testStatisticsHelper.getSuccess(statistics)) {
-        getTestStatistics().add(statistics);
+        m_testStatistics.add(statistics);
       }
       else {
         // If an error, we consider other information to be unreliable,
         // so do not aggregate it.
-        m_testStatisticsHelper.incrementErrors(getTestStatistics());
+        m_testStatisticsHelper.incrementErrors(m_testStatistics);
       }
 
       // Disassociate ourselves from m_statisticsForTest;
@@ -337,7 +384,7 @@ final class TestData implements RegisteredTest, Recorder {
       final long unadjustedTime;
 
       if (m_dispatchTime == -1) {
-        unadjustedTime = m_timeAuthority.getTimeInMilliseconds() - m_startTime;
+        unadjustedTime = m_testClock.getTime() - m_startTime;
       }
       else {
         unadjustedTime = m_dispatchTime;
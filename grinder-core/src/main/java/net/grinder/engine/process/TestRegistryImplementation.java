@@ -27,7 +27,6 @@ import java.util.Map;
 import java.util.TreeMap;
 
 import net.grinder.common.Test;
-import net.grinder.common.TimeAuthority;
 import net.grinder.script.TestRegistry;
 import net.grinder.scriptengine.Instrumenter;
 import net.grinder.statistics.StatisticsSetFactory;
@@ -44,7 +43,7 @@ final class TestRegistryImplementation implements TestRegistry {
   private final ThreadContextLocator m_threadContextLocator;
   private final StatisticsSetFactory m_statisticsSetFactory;
   private final TestStatisticsHelper m_testStatisticsHelper;
-  private final TimeAuthority m_timeAuthority;
+  private final TestClock m_testClock;
 
   /**
    * A map of Tests to Statistics for passing elsewhere.
@@ -72,11 +71,11 @@ final class TestRegistryImplementation implements TestRegistry {
   TestRegistryImplementation(final ThreadContextLocator threadContextLocator,
                              final StatisticsSetFactory statisticsSetFactory,
                              final TestStatisticsHelper testStatisticsHelper,
-                             final TimeAuthority timeAuthority) {
+                             final TestClock testClock) {
     m_threadContextLocator = threadContextLocator;
     m_statisticsSetFactory = statisticsSetFactory;
     m_testStatisticsHelper = testStatisticsHelper;
-    m_timeAuthority = timeAuthority;
+    m_testClock = testClock;
     m_testStatisticsMap = new TestStatisticsMap(m_statisticsSetFactory);
   }
 
@@ -107,7 +106,7 @@ final class TestRegistryImplementation implements TestRegistry {
       newTestData = new TestData(m_threadContextLocator,
                                  m_statisticsSetFactory,
                                  m_testStatisticsHelper,
-                                 m_timeAuthority,
+                                 m_testClock,
                                  m_instrumenter,
                                  test);
 
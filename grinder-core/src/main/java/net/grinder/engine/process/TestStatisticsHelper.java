@@ -40,6 +40,8 @@ interface TestStatisticsHelper {
 
   void recordTest(StatisticsSet statistics, long elapsedTime);
 
+  void recordScheduleDelay(StatisticsSet statistics, long delay);
+
   long getTestTime(ImmutableStatisticsSet statistics);
 
   void removeTestTimeFromSample(TestStatisticsMap sample);
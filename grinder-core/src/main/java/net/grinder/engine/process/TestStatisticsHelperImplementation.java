@@ -1,4 +1,4 @@
-// Copyright (C) 2006 Philip Aston
+// Copyright (C) 2006 - 2013 Philip Aston
 // All rights reserved.
 //
 // This file is part of The Grinder software distribution. Refer to
@@ -40,6 +40,8 @@ final class TestStatisticsHelperImplementation
   private final StatisticsIndexMap.LongIndex m_errorsIndex;
   private final StatisticsIndexMap.LongIndex m_untimedTestsIndex;
   private final StatisticsIndexMap.LongSampleIndex m_timedTestsIndex;
+  private final StatisticsIndexMap.LongSampleIndex m_correctedTimeIndex;
+  private final StatisticsIndexMap.LongSampleIndex m_scheduleDelayIndex;
 
   public TestStatisticsHelperImplementation(StatisticsIndexMap indexMap) {
 
@@ -47,6 +49,8 @@ final class TestStatisticsHelperImplementation
     m_errorsIndex = indexMap.getLongIndex("errors");
     m_untimedTestsIndex = indexMap.getLongIndex("untimedTests");
     m_timedTestsIndex = indexMap.getLongSampleIndex("timedTests");
+    m_correctedTimeIndex = indexMap.getLongSampleIndex("correctedTime");
+    m_scheduleDelayIndex = indexMap.getLongSampleIndex("scheduleDelay");
   }
 
   public boolean getSuccess(ImmutableStatisticsSet statistics) {
@@ -64,12 +68,29 @@ final class TestStatisticsHelperImplementation
     statistics.reset(m_timedTestsIndex);
     statistics.addSample(m_timedTestsIndex, elapsedTime);
 
+    // Only recorded by recordScheduleDelay(), if the run was scheduled.
+    statistics.reset(m_correctedTimeIndex);
+
     setSuccess(statistics, getSuccess(statistics));
 
     // Should only be set for statistics sent to the console.
     statistics.setValue(m_untimedTestsIndex, 0);
   }
 
+  /**
+   * Set how late the run that invoked the test started, and measure the
+   * corrected time from when the test would have started had the run been
+   * on time. Must be called after {@link #recordTest}.
+   */
+  public void recordScheduleDelay(StatisticsSet statistics, long delay) {
+    statistics.reset(m_scheduleDelayIndex);
+    statistics.addSample(m_scheduleDelayIndex, delay);
+
+    final long correctedTime = getTestTime(statistics) + delay;
+    statistics.reset(m_correctedTimeIndex);
+    statistics.addSample(m_correctedTimeIndex, correctedTime);
+  }
+
   public long getTestTime(ImmutableStatisticsSet statistics) {
     return statistics.getSum(m_timedTestsIndex);
   }
@@ -80,6 +101,8 @@ final class TestStatisticsHelperImplementation
         statistics.addValue(m_untimedTestsIndex,
                             statistics.getCount(m_timedTestsIndex));
         statistics.reset(m_timedTestsIndex);
+        statistics.reset(m_correctedTimeIndex);
+        statistics.reset(m_scheduleDelayIndex);
       }
     }
     .iterate();
@@ -80,6 +80,15 @@ interface ThreadContext /* extends PluginThreadContext */ {
    */
   void setCurrentRunNumber(int run);
 
+  /**
+   * @param delay How late the current run started relative to its scheduled
+   * start, in the units of the {@link TestClock}. Pass -1 to indicate that the
+   * run was not scheduled.
+   */
+  void setRunScheduleDelay(long delay);
+
+  long getRunScheduleDelay();
+
   Marker getLogMarker();
 }
 
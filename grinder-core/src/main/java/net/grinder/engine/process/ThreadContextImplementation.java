@@ -1,5 +1,5 @@
 // Copyright (C) 2000 Paco Gomez
-// Copyright (C) 2000 - 2012 Philip Aston
+// Copyright (C) 2000 - 2013 Philip Aston
 // All rights reserved.
 //
 // This file is part of The Grinder software distribution. Refer to
@@ -71,6 +71,7 @@ final class ThreadContextImplementation implements ThreadContext {
 
   private Marker m_runMarker;
   private int m_runNumber = -1;
+  private long m_runScheduleDelay = -1;
 
   private Marker m_testMarker;
 
@@ -82,16 +83,45 @@ final class ThreadContextImplementation implements ThreadContext {
                                      int threadNumber,
                                      Logger dataLogger)
     throws EngineException {
+    this(properties,
+         statisticsServices,
+         threadNumber,
+         dataLogger,
+         null,
+         null);
+  }
+
+  public ThreadContextImplementation(GrinderProperties properties,
+                                     StatisticsServices statisticsServices,
+                                     int threadNumber,
+                                     Logger dataLogger,
+                                     AsyncDataLog asyncDataLog,
+                                     BinaryDataLog binaryDataLog)
+    throws EngineException {
 
     m_threadNumber = threadNumber;
     m_threadMarker = MarkerFactory.getMarker("thread-" + threadNumber);
 
+    if (binaryDataLog != null) {
+      final BinaryDataLog.ThreadWriter threadWriter =
+        binaryDataLog.createThreadWriter(m_threadNumber);
+
+      m_dispatchResultReporter = new DispatchResultReporter() {
+        public void report(Test test,
+                           long startTime,
+                           StatisticsSet statistics) {
+          threadWriter.report(getRunNumber(), test, startTime, statistics);
+        }
+      };
+    }
     // Undocumented property. Added so Tom Barnes can investigate overhead
     // of data logging.
-    if (properties.getBoolean("grinder.logData", true)) {
+    else if (properties.getBoolean("grinder.logData", true)) {
       final ThreadDataLogger threadDataLogger =
         new ThreadDataLogger(
           dataLogger,
+          asyncDataLog,
+          statisticsServices.getStatisticsSetFactory(),
           statisticsServices.getDetailStatisticsView().getExpressionViews(),
           m_threadNumber);
 
@@ -145,6 +175,16 @@ final class ThreadContextImplementation implements ThreadContext {
     m_runNumber = run;
   }
 
+  @Override
+  public void setRunScheduleDelay(long delay) {
+    m_runScheduleDelay = delay;
+  }
+
+  @Override
+  public long getRunScheduleDelay() {
+    return m_runScheduleDelay;
+  }
+
   /** Package scope for unit tests. */
   void setTestLogMarker(Marker marker) {
     if (m_testMarker != null) {
@@ -1,4 +1,4 @@
-// Copyright (C) 2011 Philip Aston
+// Copyright (C) 2011 - 2013 Philip Aston
 // All rights reserved.
 //
 // This file is part of The Grinder software distribution. Refer to
@@ -25,6 +25,7 @@ import net.grinder.common.Test;
 import net.grinder.statistics.ExpressionView;
 import net.grinder.statistics.StatisticExpression;
 import net.grinder.statistics.StatisticsSet;
+import net.grinder.statistics.StatisticsSetFactory;
 
 import org.slf4j.Logger;
 
@@ -38,6 +39,7 @@ class ThreadDataLogger {
   private static final String SEPARATOR = ", ";
 
   private final Logger m_dataLog;
+  private final AsyncDataLog.ThreadQueue m_queue;
   private final ExpressionView[] m_expressionViews;
   private final int m_threadNumber;
 
@@ -50,6 +52,25 @@ class ThreadDataLogger {
   public ThreadDataLogger(Logger dataLog,
                           ExpressionView[] expressionViews,
                           int threadNumber) {
+    this(dataLog, null, null, expressionViews, threadNumber);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param dataLog The data log.
+   * @param asyncDataLog If not {@code null}, records are queued, and
+   *        formatted and written to {@code dataLog} by its writer thread.
+   * @param statisticsSetFactory Creates the statistics sets that hold queued
+   *        values. Only used if {@code asyncDataLog} is not {@code null}.
+   * @param expressionViews The detail statistics to log.
+   * @param threadNumber The thread number.
+   */
+  public ThreadDataLogger(Logger dataLog,
+                          AsyncDataLog asyncDataLog,
+                          StatisticsSetFactory statisticsSetFactory,
+                          ExpressionView[] expressionViews,
+                          int threadNumber) {
     m_dataLog = dataLog;
     m_expressionViews = expressionViews;
     m_threadNumber = threadNumber;
@@ -57,12 +78,44 @@ class ThreadDataLogger {
     m_buffer.append(threadNumber);
     m_buffer.append(SEPARATOR);
     m_bufferAfterThreadIDIndex = m_buffer.length();
+
+    if (asyncDataLog != null) {
+      m_queue = asyncDataLog.createThreadQueue(
+        statisticsSetFactory,
+        new AsyncDataLog.RecordWriter() {
+          public void write(int runNumber,
+                            Test test,
+                            long timeSinceExecutionStart,
+                            StatisticsSet statistics) {
+            log(runNumber, test, timeSinceExecutionStart, statistics);
+          }
+        });
+    }
+    else {
+      m_queue = null;
+    }
   }
 
   public void report(int runNumber,
                      Test test,
                      long timeSinceExecutionStart,
                      StatisticsSet statistics) {
+    if (m_queue != null) {
+      m_queue.offer(runNumber, test, timeSinceExecutionStart, statistics);
+    }
+    else {
+      log(runNumber, test, timeSinceExecutionStart, statistics);
+    }
+  }
+
+  /**
+   * Format and write a record. Called by the worker thread, or by the
+   * writer thread if records are queued; never by both.
+   */
+  private void log(int runNumber,
+                   Test test,
+                   long timeSinceExecutionStart,
+                   StatisticsSet statistics) {
 
     if (runNumber == m_lastRunNumber && m_lastRunNumber != -1) {
       m_buffer.setLength(m_bufferAfterRunNumberIndex);
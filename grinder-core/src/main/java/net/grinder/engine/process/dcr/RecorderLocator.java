@@ -1,4 +1,4 @@
-// Copyright (C) 2009 - 2012 Philip Aston
+// Copyright (C) 2009 - 2013 Philip Aston
 // All rights reserved.
 //
 // This file is part of The Grinder software distribution. Refer to
@@ -25,6 +25,7 @@ import static extra166y.CustomConcurrentHashMap.IDENTITY;
 import static extra166y.CustomConcurrentHashMap.STRONG;
 import static extra166y.CustomConcurrentHashMap.WEAK;
 
+import java.lang.ref.WeakReference;
 import java.util.Collections;
 import java.util.List;
 import java.util.ListIterator;
@@ -41,84 +42,210 @@ import extra166y.CustomConcurrentHashMap;
  * Static methods that weaved code uses to dispatch enter and exit calls to the
  * appropriate {@link Recorder}.
  *
+ * <p>
+ * Each location is assigned a numeric slot the first time it is seen. The
+ * weaved code passes the slot rather than the location string, so finding
+ * the recorders for a call costs an array index and, at most, an identity
+ * lookup of the target reference. The methods that take a location string
+ * remain for code woven by other advice.
+ * </p>
+ *
  * @author Philip Aston
  */
 public final class RecorderLocator implements RecorderRegistry {
 
   private static final RecorderLocator s_instance = new RecorderLocator();
 
+  private static final List<Recorder> NO_RECORDERS =
+    Collections.<Recorder>emptyList();
+
   /**
    * Accessor for the unit tests.
    */
   static void clearRecorders() {
-    s_instance.m_recorders.clear();
+    s_instance.clear();
   }
 
   /**
-   * Target reference -> location -> recorder list. Location strings are
-   * interned, so we use an identity hash map for both maps. We use concurrent
-   * structures throughout to avoid synchronisation. The target reference is the
-   * first key to minimise the cost of traversing woven code for
-   * non-instrumented references, which is important if {@code Object}, {@code
-   * PyObject}, etc. are instrumented.
+   * Location -> slot number. Location strings are interned, so we use an
+   * identity hash map.
+   */
+  private final ConcurrentMap<String, Integer> m_locationToSlot =
+    new CustomConcurrentHashMap<String, Integer>(
+      STRONG, IDENTITY, STRONG, IDENTITY, 101);
+
+  /**
+   * Slot number -> slot. Copied on write, guarded by this. The new slot is
+   * stored in the copy before the copy is published, so any thread that
+   * has been given a slot number will find the slot. Weaved code holds
+   * slot numbers, so slots are never removed.
    */
-  private final ConcurrentMap<Object,
-                              ConcurrentMap<String, List<Recorder>>>
-    m_recorders =
-        new CustomConcurrentHashMap<Object,
-                                    ConcurrentMap<String, List<Recorder>>>(
-              WEAK, IDENTITY, STRONG, IDENTITY, 101);
-
-  private final ConcurrentMap<Object,
-                    ConcurrentMap<Object,
-                                  ConcurrentMap<String, List<Recorder>>>>
-    m_recorders2 =
-      new CustomConcurrentHashMap<Object,
-           ConcurrentMap<Object,
-                         ConcurrentMap<String, List<Recorder>>>>(
-        WEAK, IDENTITY, STRONG, IDENTITY, 101);
-
-  private List<Recorder> getRecorderList(final Object target,
-                                         final String locationID) {
-
-    final ConcurrentMap<String, List<Recorder>> locationMap =
-      m_recorders.get(target);
-
-    if (locationMap != null) {
-      final List<Recorder> list = locationMap.get(locationID);
-
-      if (list != null) {
-        return list;
+  private volatile Slot[] m_slots = new Slot[0];
+
+  private int getSlotNumber(final String location) {
+    final String internedLocation = location.intern();
+
+    final Integer existing = m_locationToSlot.get(internedLocation);
+
+    if (existing != null) {
+      return existing;
+    }
+
+    synchronized (this) {
+      final Integer existing2 = m_locationToSlot.get(internedLocation);
+
+      if (existing2 != null) {
+        return existing2;
       }
+
+      final Slot[] oldSlots = m_slots;
+      final int slotNumber = oldSlots.length;
+
+      final Slot[] newSlots = new Slot[slotNumber + 1];
+      System.arraycopy(oldSlots, 0, newSlots, 0, slotNumber);
+      newSlots[slotNumber] = new Slot();
+      m_slots = newSlots;
+
+      m_locationToSlot.put(internedLocation, slotNumber);
+
+      return slotNumber;
+    }
+  }
+
+  private Slot getSlot(final String locationID) {
+    final Integer slotNumber = m_locationToSlot.get(locationID);
+
+    if (slotNumber == null) {
+      return null;
     }
 
-    return Collections.<Recorder>emptyList();
+    return m_slots[slotNumber];
+  }
+
+  private synchronized void clear() {
+    for (final Slot slot : m_slots) {
+      slot.clear();
+    }
   }
 
-  private List<Recorder> getRecorderList(final Object target,
-                                         final Object target2,
-                                         final String locationID) {
+  /**
+   * Return the slot number for a location. Called by the weaving code so
+   * that it can use the {@code enter} and {@code exit} methods that take a
+   * slot.
+   *
+   * @param location
+   *          Unique identity generated when the method was instrumented.
+   *          Will be interned.
+   * @return The slot number.
+   */
+  public static int slot(final String location) {
+    return s_instance.getSlotNumber(location);
+  }
 
-    final ConcurrentMap<Object, ConcurrentMap<String, List<Recorder>>>
-      target2Map =
-      m_recorders2.get(target);
+  /**
+   * Called when a weaved method is entered.
+   *
+   * @param target
+   *          The reference used to identify the instrumented context. An
+   *          appropriate object will be passed depending on how the method
+   *          was instrumented. The class is used for static methods or
+   *          constructors.
+   * @param slot
+   *          The slot number for the location, from {@link #slot}.
+   */
+  public static void enter(final Object target, final int slot) {
 
-    if (target2Map != null) {
-      final ConcurrentMap<String, List<Recorder>>
-        locationMap = target2Map.get(target2);
+    if (target == null) {
+      // We don't allow recorders to register for a null target,
+      // but weaved code can be called with null.
+      return;
+    }
 
-      if (locationMap != null) {
-        final List<Recorder> list = locationMap.get(locationID);
+    start(s_instance.m_slots[slot].getRecorderList(target));
+  }
 
-        if (list != null) {
-          return list;
-        }
-      }
+  /**
+   * Called when a weaved method is entered.
+   *
+   * @param target
+   *          The reference used to identify the instrumented context. An
+   *          appropriate object will be passed depending on how the method
+   *          was instrumented. The class is used for static methods or
+   *          constructors.
+   * @param target2
+   *          The second reference used to identify the instrumented context.
+   * @param slot
+   *          The slot number for the location, from {@link #slot}.
+   */
+  public static void enter(final Object target,
+                           final Object target2,
+                           final int slot) {
+
+    if (target == null || target2 == null) {
+      // We don't allow recorders to register for a null target,
+      // but weaved code can be called with null.
+      return;
     }
 
-    return Collections.<Recorder>emptyList();
+    start(s_instance.m_slots[slot].getRecorderList(target, target2));
   }
 
+  /**
+   * Called when a weaved method is exited.
+   *
+   * @param target
+   *          The reference used to identify the instrumented context. An
+   *          appropriate object will be passed depending on how the method
+   *          was instrumented. The class is used for static methods or
+   *          constructors.
+   * @param slot
+   *          The slot number for the location, from {@link #slot}.
+   * @param success
+   *          {@code true} if the exit was a normal return, {code false} if an
+   *          exception was thrown.
+   */
+  public static void exit(final Object target,
+                          final int slot,
+                          final boolean success) {
+
+    if (target == null) {
+      // We don't allow recorders to register for a null target,
+      // but weaved code can be called with null.
+      return;
+    }
+
+    end(s_instance.m_slots[slot].getRecorderList(target), success);
+  }
+
+  /**
+   * Called when a weaved method is exited.
+   *
+   * @param target
+   *          The reference used to identify the instrumented context. An
+   *          appropriate object will be passed depending on how the method
+   *          was instrumented. The class is used for static methods or
+   *          constructors.
+   * @param target2
+   *          The second reference used to identify the instrumented context.
+   * @param slot
+   *          The slot number for the location, from {@link #slot}.
+   * @param success
+   *          {@code true} if the exit was a normal return, {code false} if an
+   *          exception was thrown.
+   */
+  public static void exit(final Object target,
+                          final Object target2,
+                          final int slot,
+                          final boolean success) {
+
+    if (target == null || target2 == null) {
+      // We don't allow recorders to register for a null target,
+      // but weaved code can be called with null.
+      return;
+    }
+
+    end(s_instance.m_slots[slot].getRecorderList(target, target2), success);
+  }
 
   /**
    * Called when a weaved method is entered.
@@ -148,17 +275,10 @@ public final class RecorderLocator implements RecorderRegistry {
 //                     target.getClass(),
 //                     location);
 
-    try {
-      for (final Recorder recorder :
-        s_instance.getRecorderList(target, location)) {
+    final Slot slot = s_instance.getSlot(location);
 
-//        System.out.printf(" -> %s%n", System.identityHashCode(recorder));
-
-        recorder.start();
-      }
-    }
-    catch (final EngineException e) {
-      throw new RecordingFailureException(e);
+    if (slot != null) {
+      start(slot.getRecorderList(target));
     }
   }
 
@@ -186,15 +306,10 @@ public final class RecorderLocator implements RecorderRegistry {
       return;
     }
 
-    try {
-      for (final Recorder recorder :
-        s_instance.getRecorderList(target, target2, location)) {
+    final Slot slot = s_instance.getSlot(location);
 
-        recorder.start();
-      }
-    }
-    catch (final EngineException e) {
-      throw new RecordingFailureException(e);
+    if (slot != null) {
+      start(slot.getRecorderList(target, target2));
     }
   }
 
@@ -231,23 +346,10 @@ public final class RecorderLocator implements RecorderRegistry {
 //                      location,
 //                      success);
 
-    final List<Recorder> recorders =
-      s_instance.getRecorderList(target, location);
+    final Slot slot = s_instance.getSlot(location);
 
-    // Iterate over recorders in reverse.
-    final ListIterator<Recorder> i = recorders.listIterator(recorders.size());
-
-    try {
-      while (i.hasPrevious()) {
-        final Recorder recorder = i.previous();
-
-//        System.out.printf(" -> %s%n", System.identityHashCode(recorder));
-
-        recorder.end(success);
-      }
-    }
-    catch (final EngineException e) {
-      throw new RecordingFailureException(e);
+    if (slot != null) {
+      end(slot.getRecorderList(target), success);
     }
   }
 
@@ -278,8 +380,29 @@ public final class RecorderLocator implements RecorderRegistry {
       return;
     }
 
-    final List<Recorder> recorders =
-      s_instance.getRecorderList(target, target2, location);
+    final Slot slot = s_instance.getSlot(location);
+
+    if (slot != null) {
+      end(slot.getRecorderList(target, target2), success);
+    }
+  }
+
+  private static void start(final List<Recorder> recorders) {
+    try {
+      for (final Recorder recorder : recorders) {
+
+//        System.out.printf(" -> %s%n", System.identityHashCode(recorder));
+
+        recorder.start();
+      }
+    }
+    catch (final EngineException e) {
+      throw new RecordingFailureException(e);
+    }
+  }
+
+  private static void end(final List<Recorder> recorders,
+                          final boolean success) {
 
     // Iterate over recorders in reverse.
     final ListIterator<Recorder> i = recorders.listIterator(recorders.size());
@@ -288,6 +411,8 @@ public final class RecorderLocator implements RecorderRegistry {
       while (i.hasPrevious()) {
         final Recorder recorder = i.previous();
 
+//        System.out.printf(" -> %s%n", System.identityHashCode(recorder));
+
         recorder.end(success);
       }
     }
@@ -312,27 +437,26 @@ public final class RecorderLocator implements RecorderRegistry {
                                  final String location,
                                  final Recorder recorder) {
 
-    // We will create and quickly discard many maps and lists here to avoid
-    // needing to lock the ConcurrentMaps. It is important that the
-    // enter/exit methods are lock free, the instrumentation registration
-    // process can be relatively slow.
+    final int slotNumber = getSlotNumber(location);
 
-    final ConcurrentMap<String, List<Recorder>> newMap =
-      new CustomConcurrentHashMap<String, List<Recorder>>(
-            STRONG, IDENTITY, STRONG, IDENTITY, 0);
-
-    final ConcurrentMap<String, List<Recorder>> oldMap =
-      m_recorders.putIfAbsent(target, newMap);
+    m_slots[slotNumber].register(target, recorder);
+  }
 
-    final ConcurrentMap<String, List<Recorder>> locationMap =
-      oldMap != null ? oldMap : newMap;
+  /**
+   * {@inheritDoc}.
+   */
+  @Override public void register(final Object target,
+                                 final Object target2,
+                                 final String location,
+                                 final Recorder recorder) {
 
-    final List<Recorder> newList = new CopyOnWriteArrayList<Recorder>();
+    final int slotNumber = getSlotNumber(location);
 
-    final List<Recorder> oldList =
-      locationMap.putIfAbsent(location.intern(), newList);
+    m_slots[slotNumber].register(target, target2, recorder);
+  }
 
-    final List<Recorder> recorderList = oldList != null ? oldList : newList;
+  private static void addRecorder(final List<Recorder> recorderList,
+                                  final Recorder recorder) {
 
     // Same target, location, recorder => no-op, avoiding memory leak. The
     // Recorder implementation ignores recursive invocations, so only the
@@ -348,57 +472,178 @@ public final class RecorderLocator implements RecorderRegistry {
   }
 
   /**
-   * {@inheritDoc}.
+   * The recorders registered for a location.
+   *
+   * <p>
+   * Most locations are only registered for a single target - the class for
+   * static methods and constructors, or the one instrumented instance - so
+   * we hold the first target and its recorders directly, and compare
+   * references. Other targets are kept in an identity map, which is only
+   * created if needed. We hold targets weakly, and use concurrent structures
+   * so that the enter and exit methods are lock free; registration can be
+   * relatively slow.
+   * </p>
    */
-  @Override public void register(final Object target,
-                                 final Object target2,
-                                 final String location,
-                                 final Recorder recorder) {
+  private static final class Slot {
 
+    private volatile Binding m_first;
 
+    // Created on demand, guarded by this.
+    private volatile ConcurrentMap<Object, List<Recorder>> m_others;
 
-      final ConcurrentMap<Object,
-                          ConcurrentMap<String, List<Recorder>>> newMap =
-        new CustomConcurrentHashMap<Object,
-                                   ConcurrentMap<String, List<Recorder>>>(
-              STRONG, IDENTITY, STRONG, IDENTITY, 0);
+    // Created on demand, guarded by this.
+    private volatile ConcurrentMap<Object,
+                                   ConcurrentMap<Object, List<Recorder>>>
+      m_recorders2;
 
-      final ConcurrentMap<Object,
-                          ConcurrentMap<String, List<Recorder>>> oldMap =
-        m_recorders2.putIfAbsent(target, newMap);
+    public List<Recorder> getRecorderList(final Object target) {
+      final Binding first = m_first;
 
-      final ConcurrentMap<Object,
-                          ConcurrentMap<String, List<Recorder>>> target2Map =
-          oldMap != null ? oldMap : newMap;
+      if (first != null && first.get() == target) {
+        return first.m_recorders;
+      }
 
-      final ConcurrentMap<String, List<Recorder>> newTarget2Map =
-          new CustomConcurrentHashMap<String, List<Recorder>>(
-                STRONG, IDENTITY, STRONG, IDENTITY, 0);
+      final ConcurrentMap<Object, List<Recorder>> others = m_others;
 
-        final ConcurrentMap<String, List<Recorder>> oldTarget2Map =
-          target2Map.putIfAbsent(target2, newTarget2Map);
+      if (others != null) {
+        final List<Recorder> list = others.get(target);
 
-      final ConcurrentMap<String, List<Recorder>> locationMap =
-        oldTarget2Map != null ? oldTarget2Map : newTarget2Map;
+        if (list != null) {
+          return list;
+        }
+      }
 
-      final List<Recorder> newList = new CopyOnWriteArrayList<Recorder>();
+      return NO_RECORDERS;
+    }
 
-      final List<Recorder> oldList =
-        locationMap.putIfAbsent(location.intern(), newList);
+    public List<Recorder> getRecorderList(final Object target,
+                                          final Object target2) {
 
-      final List<Recorder> recorderList = oldList != null ? oldList : newList;
+      final ConcurrentMap<Object, ConcurrentMap<Object, List<Recorder>>>
+        recorders2 = m_recorders2;
 
-      // Same target, location, recorder => no-op, avoiding memory leak. The
-      // Recorder implementation ignores recursive invocations, so only the
-      // first registered instance of a (target, location, recorder) tuple
-      // matters.
-      for (final Recorder existingRecorder : recorderList) {
-        if (existingRecorder == recorder) {
-          return;
+      if (recorders2 != null) {
+        final ConcurrentMap<Object, List<Recorder>> target2Map =
+          recorders2.get(target);
+
+        if (target2Map != null) {
+          final List<Recorder> list = target2Map.get(target2);
+
+          if (list != null) {
+            return list;
+          }
         }
       }
 
-      recorderList.add(recorder);
+      return NO_RECORDERS;
+    }
+
+    public synchronized void register(final Object target,
+                                      final Recorder recorder) {
+
+      final Binding first = m_first;
+
+      if (first == null || first.get() == null) {
+        // The target might already be in m_others, having been registered
+        // while the old first target was alive. Share its recorder list,
+        // rather than shadowing it. The map entry is left in place so that
+        // concurrent readers that saw the old binding still find it.
+        final List<Recorder> existing =
+          m_others != null ? m_others.get(target) : null;
+
+        final Binding binding;
+
+        if (existing != null) {
+          addRecorder(existing, recorder);
+          binding = new Binding(target, existing);
+        }
+        else {
+          binding = new Binding(target, new CopyOnWriteArrayList<Recorder>());
+          binding.m_recorders.add(recorder);
+        }
+
+        m_first = binding;
+        return;
+      }
+
+      if (first.get() == target) {
+        addRecorder(first.m_recorders, recorder);
+        return;
+      }
+
+      if (m_others == null) {
+        m_others =
+          new CustomConcurrentHashMap<Object, List<Recorder>>(
+            WEAK, IDENTITY, STRONG, IDENTITY, 0);
+      }
+
+      final List<Recorder> existing = m_others.get(target);
+
+      if (existing != null) {
+        addRecorder(existing, recorder);
+      }
+      else {
+        final List<Recorder> list = new CopyOnWriteArrayList<Recorder>();
+        list.add(recorder);
+        m_others.put(target, list);
+      }
+    }
+
+    public synchronized void register(final Object target,
+                                      final Object target2,
+                                      final Recorder recorder) {
+
+      if (m_recorders2 == null) {
+        m_recorders2 =
+          new CustomConcurrentHashMap<Object,
+                                      ConcurrentMap<Object, List<Recorder>>>(
+            WEAK, IDENTITY, STRONG, IDENTITY, 0);
+      }
+
+      final ConcurrentMap<Object, List<Recorder>> existingMap =
+        m_recorders2.get(target);
+
+      final ConcurrentMap<Object, List<Recorder>> target2Map;
+
+      if (existingMap != null) {
+        target2Map = existingMap;
+      }
+      else {
+        target2Map =
+          new CustomConcurrentHashMap<Object, List<Recorder>>(
+            STRONG, IDENTITY, STRONG, IDENTITY, 0);
+        m_recorders2.put(target, target2Map);
+      }
+
+      final List<Recorder> existing = target2Map.get(target2);
+
+      if (existing != null) {
+        addRecorder(existing, recorder);
+      }
+      else {
+        final List<Recorder> list = new CopyOnWriteArrayList<Recorder>();
+        list.add(recorder);
+        target2Map.put(target2, list);
+      }
+    }
+
+    public synchronized void clear() {
+      m_first = null;
+      m_others = null;
+      m_recorders2 = null;
+    }
+  }
+
+  /**
+   * A weak reference to a target, and its recorders.
+   */
+  private static final class Binding extends WeakReference<Object> {
+    private final List<Recorder> m_recorders;
+
+    public Binding(final Object target, final List<Recorder> recorders) {
+      super(target);
+      m_recorders = recorders;
+    }
   }
 
   private static final class RecordingFailureException
@@ -21,12 +21,22 @@
 
 package net.grinder.messages.agent;
 
+import java.io.DataOutput;
+import java.io.IOException;
 import java.io.Serializable;
 
 
 /**
  * A timed checkpoint of the agent cache state.
  *
+ * <p>
+ * The agent reports the checkpoint back to the console using the
+ * {@link net.grinder.communication.WireFormat#BINARY} format. Implementations
+ * must have a constructor, which need not be public, that takes a single
+ * {@link java.io.DataInput} argument and reads what
+ * {@link #writeBinary(DataOutput)} wrote.
+ * </p>
+ *
  * @author Philip Aston
  */
 public interface CacheHighWaterMark extends Serializable {
@@ -49,4 +59,12 @@ public interface CacheHighWaterMark extends Serializable {
    * @return The time.
    */
   long getTime();
+
+  /**
+   * Write the checkpoint in a compact binary format.
+   *
+   * @param out The output.
+   * @throws IOException If an error occurs.
+   */
+  void writeBinary(DataOutput out) throws IOException;
 }
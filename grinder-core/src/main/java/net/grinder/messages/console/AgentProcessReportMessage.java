@@ -21,9 +21,16 @@
 
 package net.grinder.messages.console;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+
 import net.grinder.common.processidentity.AgentIdentity;
 import net.grinder.communication.Address;
 import net.grinder.communication.AddressAwareMessage;
+import net.grinder.communication.BinaryMessage;
 import net.grinder.communication.CommunicationException;
 import net.grinder.messages.agent.CacheHighWaterMark;
 
@@ -34,7 +41,7 @@ import net.grinder.messages.agent.CacheHighWaterMark;
  * @author Philip Aston
  */
 public final class AgentProcessReportMessage
-  implements AddressAwareMessage, AgentAndCacheReport {
+  implements AddressAwareMessage, BinaryMessage, AgentAndCacheReport {
 
   private static final long serialVersionUID = 5L;
 
@@ -59,6 +66,84 @@ public final class AgentProcessReportMessage
     m_cacheHighWaterMark = cacheHighWaterMark;
   }
 
+  /**
+   * Constructor used by the binary wire format.
+   *
+   * @param in The input.
+   * @throws IOException If the message could not be read.
+   * @see #writeBinary(DataOutput)
+   */
+  public AgentProcessReportMessage(final DataInput in) throws IOException {
+    final int state = in.readUnsignedByte();
+
+    if (state >= State.values().length) {
+      throw new IOException("Invalid process state " + state);
+    }
+
+    m_state = State.values()[state];
+    m_cacheHighWaterMark = readCacheHighWaterMark(in);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override public void writeBinary(final DataOutput out) throws IOException {
+    out.writeByte(m_state.ordinal());
+
+    // The cache high water mark is opaque to the agent, so it writes itself.
+    out.writeUTF(m_cacheHighWaterMark.getClass().getName());
+    m_cacheHighWaterMark.writeBinary(out);
+  }
+
+  private static CacheHighWaterMark readCacheHighWaterMark(final DataInput in)
+    throws IOException {
+
+    final String className = in.readUTF();
+    final Class<?> c;
+
+    try {
+      // Don't initialise the class until we know it is a CacheHighWaterMark.
+      c = Class.forName(className,
+                        false,
+                        AgentProcessReportMessage.class.getClassLoader());
+    }
+    catch (final ClassNotFoundException e) {
+      throw new IOException("Unknown cache high water mark " + className, e);
+    }
+
+    if (!CacheHighWaterMark.class.isAssignableFrom(c)) {
+      throw new IOException(className + " is not a CacheHighWaterMark");
+    }
+
+    try {
+      final Constructor<? extends CacheHighWaterMark> constructor =
+        c.asSubclass(CacheHighWaterMark.class)
+        .getDeclaredConstructor(DataInput.class);
+      constructor.setAccessible(true);
+
+      return constructor.newInstance(in);
+    }
+    catch (final NoSuchMethodException e) {
+      throw new IOException(
+        className + " has no constructor taking a DataInput", e);
+    }
+    catch (final InvocationTargetException e) {
+      final Throwable cause = e.getCause();
+
+      if (cause instanceof IOException) {
+        throw (IOException)cause;
+      }
+
+      throw new IOException("Failed to read cache high water mark", cause);
+    }
+    catch (final InstantiationException e) {
+      throw new IOException("Failed to read cache high water mark", e);
+    }
+    catch (final IllegalAccessException e) {
+      throw new IOException("Failed to read cache high water mark", e);
+    }
+  }
+
   /**
    * {@inheritDoc}
    */
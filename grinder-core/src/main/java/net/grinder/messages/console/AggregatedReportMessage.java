@@ -0,0 +1,196 @@
+// Copyright (C) 2013 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+
+package net.grinder.messages.console;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import net.grinder.communication.Address;
+import net.grinder.communication.AddressAwareMessage;
+import net.grinder.communication.BinaryMessage;
+import net.grinder.communication.CommunicationException;
+import net.grinder.communication.Message;
+import net.grinder.communication.WireFormat;
+
+
+/**
+ * Message used by an agent to pass on the messages of its worker processes
+ * when it aggregates their reports.
+ *
+ * <p>
+ * Each nested message is sent with the address of the worker process that
+ * sent it, or {@code null} if the message is not an
+ * {@link AddressAwareMessage}. Statistics reports are typically merged by the
+ * agent, and so do not have an address.
+ * </p>
+ *
+ * @author Philip Aston
+ */
+public final class AggregatedReportMessage implements BinaryMessage {
+
+  private static final long serialVersionUID = 1L;
+
+  private final List<Message> m_messages;
+  private final List<Address> m_addresses;
+
+  /**
+   * Constructor.
+   *
+   * @param messages The worker process messages.
+   * @param addresses The address of each message, or {@code null}.
+   */
+  public AggregatedReportMessage(List<Message> messages,
+                                 List<Address> addresses) {
+    if (messages.size() != addresses.size()) {
+      throw new IllegalArgumentException(
+        "Each message must have one address");
+    }
+
+    m_messages = new ArrayList<Message>(messages);
+    m_addresses = new ArrayList<Address>(addresses);
+  }
+
+  /**
+   * Constructor used by the binary wire format.
+   *
+   * @param in The input.
+   * @throws IOException If the message could not be read.
+   * @see #writeBinary(DataOutput)
+   */
+  public AggregatedReportMessage(DataInput in) throws IOException {
+    final int size = in.readInt();
+
+    m_messages = new ArrayList<Message>(size);
+    m_addresses = new ArrayList<Address>(size);
+
+    for (int i = 0; i < size; ++i) {
+      final byte[] address = readBytes(in);
+
+      if (address == null) {
+        m_addresses.add(null);
+      }
+      else {
+        final ObjectInputStream addressStream =
+          new ObjectInputStream(new ByteArrayInputStream(address));
+
+        try {
+          m_addresses.add((Address) addressStream.readObject());
+        }
+        catch (ClassNotFoundException e) {
+          throw new IOException("Failed to read address", e);
+        }
+      }
+
+      m_messages.add(WireFormat.BINARY.decode(readBytes(in)));
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override public void writeBinary(DataOutput out) throws IOException {
+    out.writeInt(m_messages.size());
+
+    for (int i = 0; i < m_messages.size(); ++i) {
+      final Address address = m_addresses.get(i);
+
+      if (address == null) {
+        writeBytes(out, null);
+      }
+      else {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final ObjectOutputStream addressStream =
+          new ObjectOutputStream(bytes);
+        addressStream.writeObject(address);
+        addressStream.close();
+
+        writeBytes(out, bytes.toByteArray());
+      }
+
+      writeBytes(out, WireFormat.BINARY.encode(m_messages.get(i)));
+    }
+  }
+
+  private static void writeBytes(DataOutput out, byte[] bytes)
+    throws IOException {
+
+    if (bytes == null) {
+      out.writeInt(-1);
+    }
+    else {
+      out.writeInt(bytes.length);
+      out.write(bytes);
+    }
+  }
+
+  private static byte[] readBytes(DataInput in) throws IOException {
+    final int length = in.readInt();
+
+    if (length < 0) {
+      return null;
+    }
+
+    final byte[] result = new byte[length];
+    in.readFully(result);
+    return result;
+  }
+
+  /**
+   * The worker process messages, in the order they should be processed.
+   *
+   * <p>
+   * The origin address of each {@link AddressAwareMessage} is set before it
+   * is returned.
+   * </p>
+   *
+   * @return The messages.
+   * @throws CommunicationException
+   *           If an address is not valid for its message.
+   */
+  public List<Message> getMessages() throws CommunicationException {
+    for (int i = 0; i < m_messages.size(); ++i) {
+      final Address address = m_addresses.get(i);
+
+      if (address != null) {
+        final Message message = m_messages.get(i);
+
+        if (!(message instanceof AddressAwareMessage)) {
+          throw new CommunicationException(
+            "Address supplied for " + message.getClass().getName());
+        }
+
+        ((AddressAwareMessage) message).setAddress(address);
+      }
+    }
+
+    return Collections.unmodifiableList(m_messages);
+  }
+}
@@ -1,4 +1,4 @@
-// Copyright (C) 2006 - 2008 Philip Aston
+// Copyright (C) 2006 - 2013 Philip Aston
 // All rights reserved.
 //
 // This file is part of The Grinder software distribution. Refer to
@@ -40,7 +40,7 @@ import net.grinder.statistics.StatisticsServicesImplementation;
 public final class RegisterExpressionViewMessage
   implements Message, Externalizable {
 
-  private static final long serialVersionUID = 1L;
+  private static final long serialVersionUID = 2L;
 
   private ExpressionView m_expressionView;
 
@@ -84,6 +84,7 @@ public final class RegisterExpressionViewMessage
 
     out.writeUTF(m_expressionView.getDisplayName());
     out.writeUTF(m_expressionView.getExpressionString());
+    out.writeBoolean(m_expressionView.isTestTime());
   }
 
   /**
@@ -95,10 +96,13 @@ public final class RegisterExpressionViewMessage
   public void readExternal(ObjectInput in) throws IOException {
 
     try {
-      m_expressionView =
+      final ExpressionView expressionView =
         StatisticsServicesImplementation.getInstance()
         .getStatisticExpressionFactory()
         .createExpressionView(in.readUTF(), in.readUTF(), false);
+
+      m_expressionView =
+        in.readBoolean() ? expressionView.asTestTime() : expressionView;
     }
     catch (StatisticsException e) {
       throw new IOException(
@@ -21,10 +21,15 @@
 
 package net.grinder.messages.console;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collection;
 
+import net.grinder.common.AbstractTestSemantics;
 import net.grinder.common.Test;
-import net.grinder.communication.Message;
+import net.grinder.communication.BinaryMessage;
 
 
 /**
@@ -32,7 +37,7 @@ import net.grinder.communication.Message;
  *
  * @author Philip Aston
  */
-public final class RegisterTestsMessage implements Message {
+public final class RegisterTestsMessage implements BinaryMessage {
 
   private static final long serialVersionUID = -4005260033024209616L;
 
@@ -47,6 +52,44 @@ public final class RegisterTestsMessage implements Message {
     m_tests = tests;
   }
 
+  /**
+   * Constructor used by the binary wire format.
+   *
+   * @param in The input.
+   * @throws IOException If the message could not be read.
+   * @see #writeBinary(DataOutput)
+   */
+  public RegisterTestsMessage(DataInput in) throws IOException {
+    final int n = in.readInt();
+
+    m_tests = new ArrayList<Test>(n);
+
+    for (int i = 0; i < n; ++i) {
+      final int number = in.readInt();
+      final String description = in.readBoolean() ? in.readUTF() : null;
+
+      m_tests.add(new LightweightTest(number, description));
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override public void writeBinary(DataOutput out) throws IOException {
+    out.writeInt(m_tests.size());
+
+    for (Test test : m_tests) {
+      out.writeInt(test.getNumber());
+
+      final String description = test.getDescription();
+      out.writeBoolean(description != null);
+
+      if (description != null) {
+        out.writeUTF(description);
+      }
+    }
+  }
+
   /**
    * Get the test set.
    *
@@ -55,4 +98,25 @@ public final class RegisterTestsMessage implements Message {
   public Collection<Test> getTests() {
     return m_tests;
   }
+
+  /**
+   * Test implementation that the console receives.
+   */
+  private static final class LightweightTest extends AbstractTestSemantics {
+    private final int m_number;
+    private final String m_description;
+
+    public LightweightTest(int number, String description) {
+      m_number = number;
+      m_description = description;
+    }
+
+    public int getNumber() {
+      return m_number;
+    }
+
+    public String getDescription() {
+      return m_description;
+    }
+  }
 }
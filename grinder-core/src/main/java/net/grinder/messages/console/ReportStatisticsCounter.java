@@ -0,0 +1,161 @@
+// Copyright (C) 2013 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.grinder.messages.console;
+
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * Counts the {@link ReportStatisticsMessage}s sent or received by a process,
+ * and the size of their encoded statistics.
+ *
+ * <p>
+ * For comparison, the size the messages would have had if they had been sent
+ * using Java serialisation is estimated. Serialising a message is much more
+ * expensive than counting it, and messages are counted as they are sent or
+ * received, so only a sample of the messages is serialised.
+ * </p>
+ *
+ * @author Philip Aston
+ */
+public final class ReportStatisticsCounter {
+
+  /** Serialise the first message, and every this many messages after. */
+  static final int SAMPLE_INTERVAL = 100;
+
+  private final AtomicLong m_reports = new AtomicLong();
+  private final AtomicLong m_bytes = new AtomicLong();
+  private final AtomicLong m_sampledBytes = new AtomicLong();
+  private final AtomicLong m_sampledSerialisedBytes = new AtomicLong();
+
+  /**
+   * Count a message. Messages that have not been encoded in the binary wire
+   * format are ignored.
+   *
+   * @param message The message.
+   * @see ReportStatisticsMessage#getEncodedSize()
+   */
+  public void add(ReportStatisticsMessage message) {
+    final int size = message.getEncodedSize();
+
+    if (size > 0) {
+      final long reports = m_reports.incrementAndGet();
+      m_bytes.addAndGet(size);
+
+      if (reports % SAMPLE_INTERVAL == 1) {
+        m_sampledSerialisedBytes.addAndGet(serialisedSize(message));
+        m_sampledBytes.addAndGet(size);
+      }
+    }
+  }
+
+  private static long serialisedSize(ReportStatisticsMessage message) {
+    final CountingOutputStream counter = new CountingOutputStream();
+
+    try {
+      final ObjectOutputStream out = new ObjectOutputStream(counter);
+      out.writeObject(message);
+      out.close();
+    }
+    catch (IOException e) {
+      // CountingOutputStream doesn't throw, and the message is serialisable.
+      throw new AssertionError(e);
+    }
+
+    return counter.getCount();
+  }
+
+  /**
+   * The number of messages counted.
+   *
+   * @return The number of messages.
+   */
+  public long getNumberOfReports() {
+    return m_reports.get();
+  }
+
+  /**
+   * The total size of the encoded statistics of the messages counted.
+   *
+   * @return The size in bytes.
+   */
+  public long getNumberOfBytes() {
+    return m_bytes.get();
+  }
+
+  /**
+   * An estimate of the total size the messages counted would have had if
+   * they had been sent using Java serialisation. The size of the sampled
+   * messages is scaled by the ratio of the encoded size of all the messages
+   * to that of the sample.
+   *
+   * @return The size in bytes.
+   */
+  public long getNumberOfSerialisedBytes() {
+    final long sampledBytes = m_sampledBytes.get();
+
+    if (sampledBytes == 0) {
+      return 0;
+    }
+
+    return (long)
+      ((double) m_sampledSerialisedBytes.get() * getNumberOfBytes() /
+       sampledBytes);
+  }
+
+  /**
+   * Describe the counts.
+   *
+   * @return A description.
+   */
+  @Override public String toString() {
+    final long reports = getNumberOfReports();
+    final long bytes = getNumberOfBytes();
+    final long serialisedBytes = getNumberOfSerialisedBytes();
+
+    return reports + " statistics reports, " + bytes + " bytes" +
+           (reports > 0 ?
+             ", " + bytes / reports + " bytes per report (about " +
+             serialisedBytes / reports +
+             " bytes per report with Java serialisation)" :
+             "");
+  }
+
+  private static final class CountingOutputStream extends OutputStream {
+    private long m_count;
+
+    @Override public void write(int b) {
+      ++m_count;
+    }
+
+    @Override public void write(byte[] b, int off, int len) {
+      m_count += len;
+    }
+
+    public long getCount() {
+      return m_count;
+    }
+  }
+}
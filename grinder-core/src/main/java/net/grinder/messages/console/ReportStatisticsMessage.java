@@ -1,4 +1,4 @@
-// Copyright (C) 2000 - 2008 Philip Aston
+// Copyright (C) 2000 - 2013 Philip Aston
 // All rights reserved.
 //
 // This file is part of The Grinder software distribution. Refer to
@@ -21,7 +21,16 @@
 
 package net.grinder.messages.console;
 
-import net.grinder.communication.Message;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import net.grinder.communication.BinaryMessage;
 import net.grinder.statistics.TestStatisticsMap;
 
 
@@ -30,19 +39,87 @@ import net.grinder.statistics.TestStatisticsMap;
  *
  * @author Philip Aston
  */
-public final class ReportStatisticsMessage implements Message {
+public final class ReportStatisticsMessage implements BinaryMessage {
 
-  private static final long serialVersionUID = 5659643598627115683L;
+  private static final long serialVersionUID = 5659643598627115684L;
 
   private final TestStatisticsMap m_statisticsDelta;
+  private final TimeUnit m_timeUnit;
 
   /**
-   * Constructor.
+   * The size of the encoded statistics, or 0 if the message has not been
+   * written or read in the binary wire format.
+   */
+  private transient volatile int m_encodedSize;
+
+  /**
+   * Constructor for statistics with test times in milliseconds.
    *
    * @param statisticsDelta The test statistics.
    */
   public ReportStatisticsMessage(TestStatisticsMap statisticsDelta) {
+    this(statisticsDelta, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param statisticsDelta The test statistics.
+   * @param timeUnit The unit of the test times in {@code statisticsDelta}.
+   */
+  public ReportStatisticsMessage(TestStatisticsMap statisticsDelta,
+                                 TimeUnit timeUnit) {
     m_statisticsDelta = statisticsDelta;
+    m_timeUnit = timeUnit;
+  }
+
+  /**
+   * Constructor used by the binary wire format.
+   *
+   * @param in The input.
+   * @throws IOException If the message could not be read.
+   * @see #writeBinary(DataOutput)
+   */
+  public ReportStatisticsMessage(DataInput in) throws IOException {
+    final int timeUnit = in.readUnsignedByte();
+
+    if (timeUnit >= TimeUnit.values().length) {
+      throw new IOException("Invalid time unit " + timeUnit);
+    }
+
+    m_timeUnit = TimeUnit.values()[timeUnit];
+
+    final int length = in.readInt();
+
+    if (length < 0) {
+      throw new IOException("Invalid statistics length " + length);
+    }
+
+    final byte[] bytes = new byte[length];
+    in.readFully(bytes);
+
+    m_statisticsDelta = new TestStatisticsMap();
+    m_statisticsDelta.read(
+      new DataInputStream(new ByteArrayInputStream(bytes)));
+    m_encodedSize = bytes.length;
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * <p>
+   * The statistics are length prefixed, so that their size is known to both
+   * the sender and the receiver. See {@link #getEncodedSize()}.
+   * </p>
+   */
+  @Override public void writeBinary(DataOutput out) throws IOException {
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    m_statisticsDelta.write(new DataOutputStream(bytes));
+
+    out.writeByte(m_timeUnit.ordinal());
+    out.writeInt(bytes.size());
+    out.write(bytes.toByteArray());
+    m_encodedSize = bytes.size();
   }
 
   /**
@@ -53,4 +130,23 @@ public final class ReportStatisticsMessage implements Message {
   public TestStatisticsMap getStatisticsDelta() {
     return m_statisticsDelta;
   }
+
+  /**
+   * Get the unit of the test times.
+   *
+   * @return The unit.
+   */
+  public TimeUnit getTimeUnit() {
+    return m_timeUnit;
+  }
+
+  /**
+   * The size of the encoded statistics in bytes.
+   *
+   * @return The size, or 0 if the message has not been written or read in
+   *         the binary wire format.
+   */
+  public int getEncodedSize() {
+    return m_encodedSize;
+  }
 }
@@ -22,10 +22,15 @@
 
 package net.grinder.messages.console;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
 import net.grinder.common.processidentity.WorkerIdentity;
 import net.grinder.common.processidentity.WorkerProcessReport;
 import net.grinder.communication.Address;
 import net.grinder.communication.AddressAwareMessage;
+import net.grinder.communication.BinaryMessage;
 import net.grinder.communication.CommunicationException;
 
 
@@ -36,13 +41,13 @@ import net.grinder.communication.CommunicationException;
  * @author Philip Aston
  */
 public final class WorkerProcessReportMessage
-  implements AddressAwareMessage, WorkerProcessReport {
+  implements AddressAwareMessage, BinaryMessage, WorkerProcessReport {
 
-  private static final long serialVersionUID = 3L;
+  private static final long serialVersionUID = 4L;
 
   private final State m_state;
-  private final short m_totalNumberOfThreads;
-  private final short m_numberOfRunningThreads;
+  private final int m_totalNumberOfThreads;
+  private final int m_numberOfRunningThreads;
 
   private transient WorkerAddress m_processAddress;
 
@@ -58,13 +63,41 @@ public final class WorkerProcessReportMessage
    *          The number of threads that are still running.
    */
   public WorkerProcessReportMessage(final State finished,
-                                    final short runningThreads,
-                                    final short totalThreads) {
+                                    final int runningThreads,
+                                    final int totalThreads) {
     m_state = finished;
     m_numberOfRunningThreads = runningThreads;
     m_totalNumberOfThreads = totalThreads;
   }
 
+  /**
+   * Constructor used by the binary wire format.
+   *
+   * @param in The input.
+   * @throws IOException If the message could not be read.
+   * @see #writeBinary(DataOutput)
+   */
+  public WorkerProcessReportMessage(final DataInput in) throws IOException {
+    final int state = in.readUnsignedByte();
+
+    if (state >= State.values().length) {
+      throw new IOException("Invalid process state " + state);
+    }
+
+    m_state = State.values()[state];
+    m_numberOfRunningThreads = in.readInt();
+    m_totalNumberOfThreads = in.readInt();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override public void writeBinary(final DataOutput out) throws IOException {
+    out.writeByte(m_state.ordinal());
+    out.writeInt(m_numberOfRunningThreads);
+    out.writeInt(m_totalNumberOfThreads);
+  }
+
   /**
    * {@inheritDoc}
    */
@@ -115,7 +148,7 @@ public final class WorkerProcessReportMessage
    * @return The number of running threads.
    */
   @Override
-  public short getNumberOfRunningThreads() {
+  public int getNumberOfRunningThreads() {
     return m_numberOfRunningThreads;
   }
 
@@ -125,7 +158,7 @@ public final class WorkerProcessReportMessage
    * @return The maximum number of threads for the process.
    */
   @Override
-  public short getMaximumNumberOfThreads() {
+  public int getMaximumNumberOfThreads() {
     return m_totalNumberOfThreads;
   }
 
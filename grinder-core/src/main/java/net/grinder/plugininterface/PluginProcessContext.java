@@ -23,6 +23,7 @@
 package net.grinder.plugininterface;
 
 import net.grinder.common.GrinderException;
+import net.grinder.script.Statistics.StatisticsForTest;
 
 
 /**
@@ -46,4 +47,20 @@ public interface PluginProcessContext {
    */
   PluginThreadListener getPluginThreadListener(GrinderPlugin plugin)
       throws GrinderException;
+
+  /**
+   * Returns the statistics for the test that the current thread is
+   * performing.
+   *
+   * <p>
+   * Unlike {@link net.grinder.script.Statistics#getForCurrentTest()}, this
+   * does not prevent the engine from reusing the returned object for a
+   * later test. The caller must only use it from the current thread, and
+   * must not keep it after the test is complete.
+   * </p>
+   *
+   * @return The statistics, or {@code null} if the current thread is not a
+   *         worker thread, or is not performing a test.
+   */
+  StatisticsForTest getStatisticsForCurrentTest();
 }
@@ -131,7 +131,8 @@ public class Grinder {
     /**
      * Sleep for a time based on the meanTime parameter. The actual
      * time may be greater or less than meanTime, and is distributed
-     * according to a pseudo normal distribution.
+     * according to the {@code grinder.sleepDistribution} property, by
+     * default a pseudo normal distribution.
      *
      * @param meanTime Mean time in milliseconds.
      * @throws GrinderException If the sleep failed.
@@ -141,14 +142,37 @@ public class Grinder {
     /**
      * Sleep for a time based on the meanTime parameter. The actual
      * time may be greater or less than meanTime, and is distributed
-     * according to a pseudo normal distribution.
+     * according to the {@code grinder.sleepDistribution} property, by
+     * default a pseudo normal distribution.
      *
      * @param meanTime Mean time in milliseconds.
-     * @param sigma The standard deviation, in milliseconds.
+     * @param sigma The standard deviation, in milliseconds. Ignored by
+     * the exponential and empirical distributions.
      * @exception GrinderException If the sleep failed.
      */
     void sleep(long meanTime, long sigma) throws GrinderException;
 
+    /**
+     * Sleep for a time based on the meanTime parameter. The actual
+     * time is distributed according to an exponential distribution,
+     * which models the time between independent events.
+     *
+     * @param meanTime Mean time in milliseconds.
+     * @exception GrinderException If the sleep failed.
+     */
+    void sleepExponential(long meanTime) throws GrinderException;
+
+    /**
+     * Sleep for a time based on the meanTime parameter. The actual
+     * time is distributed according to a log-normal distribution,
+     * which is never negative and has a long tail of longer times.
+     *
+     * @param meanTime Mean time in milliseconds.
+     * @param sigma The standard deviation, in milliseconds.
+     * @exception GrinderException If the sleep failed.
+     */
+    void sleepLogNormal(long meanTime, long sigma) throws GrinderException;
+
     /**
      * Start a new worker thread. The script's {@code TestRunner} class
      * will be used to create new test runner instance for the worker thread.
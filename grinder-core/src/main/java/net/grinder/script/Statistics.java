@@ -42,7 +42,8 @@ import net.grinder.common.GrinderException;
  * are a special type of statistic that hold aggregate information about a
  * series of long or double sample values; specifically <em>count</em> (number
  * of samples), <em>sum</em> (total of all sample values), and sample
- * <em>variance</em>.
+ * <em>variance</em>. Long sample statistics also record a histogram of the
+ * sample values, from which percentiles can be obtained.
  * </p>
  *
  * <blockquote> <table class="table">
@@ -66,6 +67,24 @@ import net.grinder.common.GrinderException;
  * </tr>
  *
  * <tr>
+ * <td><em>correctedTime</em></td>
+ * <td>sample&nbsp;long</td>
+ * <td>Sample statistic that records successful tests, timed from when each
+ * test would have started had its run started on schedule. Only recorded if
+ * <code>grinder.arrivalRate</code> or <code>grinder.pacing</code> is
+ * set.</td>
+ * </tr>
+ *
+ * <tr>
+ * <td><em>scheduleDelay</em></td>
+ * <td>sample&nbsp;long</td>
+ * <td>Sample statistic that records, for each test, how late the run that
+ * performed the test started relative to its scheduled start. Only recorded
+ * if <code>grinder.arrivalRate</code> or <code>grinder.pacing</code> is
+ * set.</td>
+ * </tr>
+ *
+ * <tr>
  * <td><em>userLong0</em>, <em>userLong1</em>, <em>userLong2</em>,
  * <em>userLong3</em>, <em>userLong4</em></td>
  * <td>basic&nbsp;long</td>
@@ -141,6 +160,24 @@ import net.grinder.common.GrinderException;
  * </tr>
  *
  * <tr>
+ * <td><em>correctedTime</em></td>
+ * <td>sample&nbsp;long</td>
+ * <td>If the run was scheduled, as for <em>timedTests</em>, but the sum also
+ * includes how late the run started. Otherwise the sum and the count are
+ * zero.
+ * </td>
+ * </tr>
+ *
+ * <tr>
+ * <td><em>scheduleDelay</em></td>
+ * <td>sample&nbsp;long</td>
+ * <td>If the run was scheduled, the count is <code>1</code> and the sum is
+ * how late the run started, in the same unit as the test time. Otherwise the
+ * sum and the count are zero.
+ * </td>
+ * </tr>
+ *
+ * <tr>
  * <td><em>userLong0</em>, <em>userLong1</em>, <em>userLong2</em>,
  * <em>userLong3</em>, <em>userLong4</em></td>
  * <td>basic&nbsp;long</td>
@@ -492,7 +529,9 @@ public interface Statistics  {
    * <p>
    * Sample statistics, such as <em>timedTests</em>, must be introduced with
    * one of <code>sum</code>, <code>count</code>, or <code>variance</code>,
-   * depending on the attribute of interest.
+   * depending on the attribute of interest. Percentiles of long sample
+   * statistics are introduced with <code>percentile</code> and the required
+   * percentile, e.g. <code>(percentile timedTests 99)</code>.
    * </p>
    *
    * <p>
@@ -697,6 +736,11 @@ public interface Statistics  {
      * test was an error and the time will not be added to <em>timedTests</em>.
      * </p>
      *
+     * <p>
+     * The time is in milliseconds, unless the <code>grinder.testTimeUnit</code>
+     * property has been set to select microseconds or nanoseconds.
+     * </p>
+     *
      * @return The elapsed time for the test.
      */
     long getTime();
@@ -1,4 +1,4 @@
-// Copyright (C) 2000 - 2009 Philip Aston
+// Copyright (C) 2000 - 2013 Philip Aston
 // All rights reserved.
 //
 // This file is part of The Grinder software distribution. Refer to
@@ -41,7 +41,7 @@ final class CommonStatisticsViews {
         expressionFactory.createExpressionView(
           "Test time",
           "(sum timedTests)",
-          false),
+          false).asTestTime(),
         expressionFactory.createExpressionView(
           "Errors",
           "errors",
@@ -67,11 +67,11 @@ final class CommonStatisticsViews {
         expressionFactory.createExpressionView(
           "Mean Test Time (ms)",
           "(/ (sum timedTests) (count timedTests))",
-          false),
+          false).asTestTime(),
         expressionFactory.createExpressionView(
           "Test Time Standard Deviation (ms)",
           "(sqrt (variance timedTests))",
-          false),
+          false).asTestTime(),
         expressionFactory.createExpressionView("TPS", m_tpsExpression),
       };
 
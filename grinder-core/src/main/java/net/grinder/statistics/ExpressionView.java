@@ -21,6 +21,8 @@
 
 package net.grinder.statistics;
 
+import java.util.concurrent.TimeUnit;
+
 import net.grinder.translation.Translatable;
 
 
@@ -46,8 +48,18 @@ import net.grinder.translation.Translatable;
  * </p>
  *
  * <p>
+ * Percentiles of the test time statistics can be obtained with
+ * {@code percentile}. For example, {@code (percentile timedTests 99)} is the
+ * 99th percentile test time.
+ * </p>
+ *
+ * <p>
  * For example, the statistic expression {@code (/ (sum timedTests)
- * (count timedTests))} represents the mean test time in milliseconds.
+ * (count timedTests))} represents the mean test time. Test times are recorded
+ * in the unit set by {@code grinder.testTimeUnit}, milliseconds by default.
+ * The standard test time views are marked as such (see {@link #isTestTime()})
+ * and are always displayed in milliseconds.
+ * </p>
  *
  * @author Philip Aston
  */
@@ -59,6 +71,7 @@ public final class ExpressionView implements Translatable {
   private final String m_translationKey;
   private final String m_expressionString;
   private final boolean m_showForCompositeStatistics;
+  private final boolean m_testTime;
   private final int m_hashCode;
   private final int m_creationOrder;
 
@@ -68,9 +81,22 @@ public final class ExpressionView implements Translatable {
                  final String expressionString,
                  final StatisticExpression expression,
                  final boolean showForCompositeStatistics) {
+    this(displayName,
+         expressionString,
+         expression,
+         showForCompositeStatistics,
+         false);
+  }
+
+  ExpressionView(final String displayName,
+                 final String expressionString,
+                 final StatisticExpression expression,
+                 final boolean showForCompositeStatistics,
+                 final boolean testTime) {
     m_displayName = displayName;
     m_expressionString = expressionString;
     m_showForCompositeStatistics = showForCompositeStatistics;
+    m_testTime = testTime;
     m_expression = expression;
 
     m_hashCode =
@@ -93,6 +119,22 @@ public final class ExpressionView implements Translatable {
     }
   }
 
+  /**
+   * Return a copy of this view that is marked as a test time. The
+   * expression's value must be a test time, or a mean or other aggregate of
+   * test times.
+   *
+   * @return The copy.
+   * @see #isTestTime()
+   */
+  public ExpressionView asTestTime() {
+    return new ExpressionView(m_displayName,
+                              m_expressionString,
+                              m_expression,
+                              m_showForCompositeStatistics,
+                              true);
+  }
+
   /**
    * {@inheritDoc}
    */
@@ -140,6 +182,47 @@ public final class ExpressionView implements Translatable {
     return m_showForCompositeStatistics;
   }
 
+  /**
+   * Return whether the value of this view is a test time, and so is in the
+   * unit that the statistics were recorded with.
+   *
+   * @return {@code true} => the value is a test time.
+   */
+  public boolean isTestTime() {
+    return m_testTime;
+  }
+
+  /**
+   * Return whether {@link #getDisplayValue} should be used to display this
+   * view. If not, the view is displayed as a {@code long} value.
+   *
+   * @param timeUnit The unit of the test times in the statistics.
+   * @return {@code true} => display a {@code double} value.
+   */
+  public boolean isDisplayedAsDouble(final TimeUnit timeUnit) {
+    return m_expression.isDouble() ||
+           m_testTime && timeUnit != TimeUnit.MILLISECONDS;
+  }
+
+  /**
+   * Evaluate the expression for display. Test times are converted to
+   * milliseconds.
+   *
+   * @param statistics The statistics.
+   * @param timeUnit The unit of the test times in {@code statistics}.
+   * @return The value.
+   */
+  public double getDisplayValue(final StatisticsSet statistics,
+                                final TimeUnit timeUnit) {
+    final double value = m_expression.getDoubleValue(statistics);
+
+    if (m_testTime) {
+      return value * timeUnit.toNanos(1) / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    return value;
+  }
+
   /**
    * {@inheritDoc}
    */
@@ -0,0 +1,174 @@
+// Copyright (C) 2013 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.grinder.statistics;
+
+
+/**
+ * Bucket arithmetic for the fixed size, log-linear histograms that back
+ * <em>long</em> sample statistics.
+ *
+ * <p>
+ * Values below {@link #SUB_BUCKETS} have a bucket each. Above that, each
+ * power of two range is divided into {@link #SUB_BUCKETS} equal buckets, so
+ * a bucket's width is never more than 1/{@value #SUB_BUCKETS} of its lower
+ * bound. Values of 2<sup>{@value #MAXIMUM_VALUE_BITS}</sup> or more share the
+ * last bucket; negative values share the first.
+ * </p>
+ *
+ * <p>
+ * Histograms with the same layout can be merged by adding their bucket
+ * counts.
+ * </p>
+ *
+ * @author Philip Aston
+ */
+final class LogLinearHistogram {
+
+  private static final int SUB_BUCKET_BITS = 4;
+
+  /** The number of buckets that each power of two range is divided into. */
+  static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+  /** Values up to 2^40 - 1 are resolved. */
+  static final int MAXIMUM_VALUE_BITS = 40;
+
+  /** The number of buckets in a histogram. */
+  static final int NUMBER_OF_BUCKETS =
+    (MAXIMUM_VALUE_BITS - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+  private LogLinearHistogram() {
+  }
+
+  /**
+   * Find the bucket for a value.
+   *
+   * @param value The value.
+   * @return The bucket index.
+   */
+  static int bucketIndex(long value) {
+    if (value < SUB_BUCKETS) {
+      return value < 0 ? 0 : (int)value;
+    }
+
+    if (value >>> MAXIMUM_VALUE_BITS != 0) {
+      return NUMBER_OF_BUCKETS - 1;
+    }
+
+    final int shift =
+      63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+
+    return (shift << SUB_BUCKET_BITS) + (int)(value >>> shift);
+  }
+
+  /**
+   * The lowest value that belongs to a bucket.
+   *
+   * @param bucketIndex The bucket index.
+   * @return The value.
+   */
+  static long lowestValue(int bucketIndex) {
+    if (bucketIndex < SUB_BUCKETS) {
+      return bucketIndex;
+    }
+
+    final int shift = (bucketIndex >>> SUB_BUCKET_BITS) - 1;
+    final long mantissa = SUB_BUCKETS + (bucketIndex & (SUB_BUCKETS - 1));
+
+    return mantissa << shift;
+  }
+
+  /**
+   * The highest value that belongs to a bucket.
+   *
+   * @param bucketIndex The bucket index.
+   * @return The value.
+   */
+  static long highestValue(int bucketIndex) {
+    if (bucketIndex == NUMBER_OF_BUCKETS - 1) {
+      return Long.MAX_VALUE;
+    }
+
+    return lowestValue(bucketIndex + 1) - 1;
+  }
+
+  /**
+   * A value that represents the values in a bucket.
+   *
+   * @param bucketIndex The bucket index.
+   * @return The midpoint of the bucket.
+   */
+  static long representativeValue(int bucketIndex) {
+    final long lowest = lowestValue(bucketIndex);
+
+    if (bucketIndex == NUMBER_OF_BUCKETS - 1) {
+      return lowest;
+    }
+
+    return lowest + (highestValue(bucketIndex) - lowest) / 2;
+  }
+
+  /**
+   * Record a value.
+   *
+   * @param buckets The histogram.
+   * @param value The value.
+   */
+  static void record(long[] buckets, long value) {
+    ++buckets[bucketIndex(value)];
+  }
+
+  /**
+   * Calculate a percentile.
+   *
+   * <p>
+   * The result is the highest value of the bucket containing the sample at
+   * the requested rank, so it errs on the side of overstating the percentile.
+   * For the last bucket, which has no upper bound, the lowest value is
+   * returned.
+   * </p>
+   *
+   * @param buckets The histogram.
+   * @param count The total number of samples in the histogram.
+   * @param percentile The percentile, between 0 and 100.
+   * @return The percentile, or 0 if the histogram is empty.
+   */
+  static long percentile(long[] buckets, long count, double percentile) {
+    if (count == 0) {
+      return 0;
+    }
+
+    final long rank =
+      Math.min(Math.max((long)Math.ceil(count * percentile / 100), 1), count);
+
+    long seen = 0;
+
+    for (int i = 0; i < buckets.length; ++i) {
+      seen += buckets[i];
+
+      if (seen >= rank) {
+        return i == NUMBER_OF_BUCKETS - 1 ? lowestValue(i) : highestValue(i);
+      }
+    }
+
+    return 0;
+  }
+}
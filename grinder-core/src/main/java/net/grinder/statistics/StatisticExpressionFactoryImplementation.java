@@ -1,4 +1,4 @@
-// Copyright (C) 2000 - 2011 Philip Aston
+// Copyright (C) 2000 - 2013 Philip Aston
 // All rights reserved.
 //
 // This file is part of The Grinder software distribution. Refer to
@@ -147,6 +147,9 @@ final class StatisticExpressionFactoryImplementation
       else if ("variance".equals(operation)) {
         result = createSampleVariance(parseContext);
       }
+      else if ("percentile".equals(operation)) {
+        result = createSamplePercentile(parseContext);
+      }
       else if ("sqrt".equals(operation)) {
         result = createSquareRoot(readExpression(parseContext));
       }
@@ -478,6 +481,64 @@ final class StatisticExpressionFactoryImplementation
     return result;
   }
 
+  /**
+   * Create an accessor for a percentile of a long sample's values.
+   *
+   * @param parseContext The parse context.
+   * @return The resulting expression.
+   * @throws ParseException If the parse failed.
+   */
+  private StatisticExpression createSamplePercentile(ParseContext parseContext)
+    throws ParseContext.ParseException {
+
+    final String token = parseContext.readToken();
+
+    final LongSampleIndex index = m_indexMap.getLongSampleIndex(token);
+
+    if (index == null) {
+      throw parseContext.createParseException(
+        "Can't apply percentile to unknown long sample index '" + token + "'");
+    }
+
+    if (index.getHistogramIndex() == null) {
+      throw parseContext.createParseException(
+        "Can't apply percentile to long sample index '" + token +
+        "' which has no histogram");
+    }
+
+    final String percentileToken = parseContext.readToken();
+    final double percentile;
+
+    try {
+      percentile = Double.parseDouble(percentileToken);
+    }
+    catch (NumberFormatException e) {
+      throw parseContext.createParseException(
+        "Percentile '" + percentileToken + "' is not a number");
+    }
+
+    if (!(percentile >= 0 && percentile <= 100)) {
+      throw parseContext.createParseException(
+        "Percentile '" + percentileToken + "' is not between 0 and 100");
+    }
+
+    return new LongStatistic() {
+        public long getValue(StatisticsSet statisticsSet) {
+          if (statisticsSet instanceof StatisticsSetImplementation) {
+            return ((StatisticsSetImplementation)statisticsSet)
+                   .getPercentile(index, percentile);
+          }
+          else if (statisticsSet instanceof
+                   StripedStatisticsSetImplementation) {
+            return ((StripedStatisticsSetImplementation)statisticsSet)
+                   .getPercentile(index, percentile);
+          }
+
+          return 0;
+        }
+      };
+  }
+
   /**
    * Create a square root.
    *
@@ -1,4 +1,4 @@
-// Copyright (C) 2000 - 2012 Philip Aston
+// Copyright (C) 2000 - 2013 Philip Aston
 // Copyright (C) 2004 John Stanford White
 // Copyright (C) 2004 Calum Fitzgerald
 // All rights reserved.
@@ -26,7 +26,7 @@ package net.grinder.statistics;
 import static java.util.Arrays.asList;
 
 import java.io.Serializable;
-import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -58,6 +58,12 @@ import java.util.Map;
  * (e.g. <em>count()</em>), see {@link ExpressionView}.
  * </p>
  *
+ * <p>
+ * <em>long</em> sample statistics also maintain a fixed size histogram of the
+ * sample values, from which percentiles can be read using the
+ * <em>percentile()</em> expression function.
+ * </p>
+ *
  * @author Philip Aston
  */
 public final class StatisticsIndexMap implements Serializable {
@@ -79,6 +85,15 @@ public final class StatisticsIndexMap implements Serializable {
   // as the sample indicies also use slots.
   private final int m_numberOfDoubles;
   private final int m_numberOfLongs;
+  private final int m_numberOfHistograms;
+
+  // Array copies of the sample indicies, and flags marking the double slots
+  // that hold sample variances. These allow StatisticsSetImplementation to
+  // add statistics sets without allocating. Built by the constructors, so
+  // safely published; rebuilt on deserialisation by readResolve().
+  private final transient LongSampleIndex[] m_longSampleIndicies;
+  private final transient DoubleSampleIndex[] m_doubleSampleIndicies;
+  private final transient boolean[] m_isVarianceIndex;
 
   /**
    * Special slot for the HTTP plugin so it doesn't steal "user"
@@ -157,7 +172,8 @@ public final class StatisticsIndexMap implements Serializable {
                 "userDouble3",
                 "userDouble4"),
          asList("period"),
-         asList("timedTests"));
+         asList("timedTests", "correctedTime", "scheduleDelay"),
+         asList("timedTests", "correctedTime"));
   }
 
   /**
@@ -170,12 +186,40 @@ public final class StatisticsIndexMap implements Serializable {
    * @param transientLongNames
    *          Names of transient long statistics.
    * @param longSampleNames
-   *          Names of long sample statistics.
+   *          Names of long sample statistics. Each has a histogram.
    */
   StatisticsIndexMap(List<String> longNames,
                      List<String> doubleNames,
                      List<String> transientLongNames,
                      List<String> longSampleNames) {
+    this(longNames,
+         doubleNames,
+         transientLongNames,
+         longSampleNames,
+         longSampleNames);
+  }
+
+  /**
+   * Open constructor for use by unit tests.
+   *
+   * @param longNames
+   *          Names of long statistics.
+   * @param doubleNames
+   *          Names of double statistics.
+   * @param transientLongNames
+   *          Names of transient long statistics.
+   * @param longSampleNames
+   *          Names of long sample statistics.
+   * @param histogramNames
+   *          Names of the long sample statistics that have a histogram.
+   *          Histograms are large, so only statistics that need percentiles
+   *          have one.
+   */
+  StatisticsIndexMap(List<String> longNames,
+                     List<String> doubleNames,
+                     List<String> transientLongNames,
+                     List<String> longSampleNames,
+                     List<String> histogramNames) {
     int nextLongIndex = 0;
     int nextTransientLongIndex = 0;
 
@@ -189,11 +233,16 @@ public final class StatisticsIndexMap implements Serializable {
       m_doubleMap.put(doubleName, new DoubleIndex(nextDoubleIndex++));
     }
 
+    int nextHistogramIndex = 0;
+
     for (String longSampleName : longSampleNames) {
       createLongSampleIndex(longSampleName,
                             new LongIndex(nextLongIndex++),
                             new LongIndex(nextLongIndex++),
-                            new DoubleIndex(nextDoubleIndex++));
+                            new DoubleIndex(nextDoubleIndex++),
+                            histogramNames.contains(longSampleName) ?
+                              new HistogramIndex(nextHistogramIndex++) :
+                              null);
     }
 
     for (String transientLongName : transientLongNames) {
@@ -203,6 +252,49 @@ public final class StatisticsIndexMap implements Serializable {
 
     m_numberOfDoubles = nextDoubleIndex;
     m_numberOfLongs = nextLongIndex;
+    m_numberOfHistograms = nextHistogramIndex;
+
+    m_longSampleIndicies =
+      m_longSampleMap.values().toArray(new LongSampleIndex[0]);
+    m_doubleSampleIndicies =
+      m_doubleSampleMap.values().toArray(new DoubleSampleIndex[0]);
+    m_isVarianceIndex = createVarianceIndexFlags();
+  }
+
+  /**
+   * Copy constructor.
+   *
+   * @param original The map to copy.
+   * @param doubleSampleMap Additional double sample statistics.
+   */
+  private StatisticsIndexMap(StatisticsIndexMap original,
+                             Map<String, DoubleSampleIndex> doubleSampleMap) {
+    m_doubleMap.putAll(original.m_doubleMap);
+    m_longMap.putAll(original.m_longMap);
+    m_transientLongMap.putAll(original.m_transientLongMap);
+    m_doubleSampleMap.putAll(original.m_doubleSampleMap);
+    m_doubleSampleMap.putAll(doubleSampleMap);
+    m_longSampleMap.putAll(original.m_longSampleMap);
+
+    m_numberOfDoubles = original.m_numberOfDoubles;
+    m_numberOfLongs = original.m_numberOfLongs;
+    m_numberOfHistograms = original.m_numberOfHistograms;
+
+    m_longSampleIndicies =
+      m_longSampleMap.values().toArray(new LongSampleIndex[0]);
+    m_doubleSampleIndicies =
+      m_doubleSampleMap.values().toArray(new DoubleSampleIndex[0]);
+    m_isVarianceIndex = createVarianceIndexFlags();
+  }
+
+  /**
+   * Rebuild the transient fields of a deserialised instance.
+   *
+   * @return A complete copy of this instance.
+   */
+  private Object readResolve() {
+    return new StatisticsIndexMap(
+      this, Collections.<String, DoubleSampleIndex>emptyMap());
   }
 
   int getNumberOfDoubles() {
@@ -217,12 +309,39 @@ public final class StatisticsIndexMap implements Serializable {
     return m_transientLongMap.size();
   }
 
-  Collection<DoubleSampleIndex> getDoubleSampleIndicies() {
-    return m_doubleSampleMap.values();
+  int getNumberOfHistograms() {
+    return m_numberOfHistograms;
+  }
+
+  DoubleSampleIndex[] getDoubleSampleIndicies() {
+    return m_doubleSampleIndicies;
+  }
+
+  LongSampleIndex[] getLongSampleIndicies() {
+    return m_longSampleIndicies;
   }
 
-  Collection<LongSampleIndex> getLongSampleIndicies() {
-    return m_longSampleMap.values();
+  /**
+   * Identify the double slots that hold sample variances.
+   *
+   * @return Flags indexed by double slot. Callers must not modify the array.
+   */
+  boolean[] getVarianceIndexFlags() {
+    return m_isVarianceIndex;
+  }
+
+  private boolean[] createVarianceIndexFlags() {
+    final boolean[] result = new boolean[m_numberOfDoubles];
+
+    for (SampleIndex index : m_longSampleMap.values()) {
+      result[index.getVarianceIndex().getValue()] = true;
+    }
+
+    for (SampleIndex index : m_doubleSampleMap.values()) {
+      result[index.getVarianceIndex().getValue()] = true;
+    }
+
+    return result;
   }
 
   /**
@@ -286,14 +405,16 @@ public final class StatisticsIndexMap implements Serializable {
    * @param sumIndex Index to hold sum.
    * @param countIndex Index to hold count.
    * @param varianceIndex Index to hold variance.
+   * @param histogramIndex Index to hold the histogram, or {@code null}.
    * @return The new index.
    */
   private LongSampleIndex createLongSampleIndex(String statisticName,
                                                 LongIndex sumIndex,
                                                 LongIndex countIndex,
-                                                DoubleIndex varianceIndex) {
+                                                DoubleIndex varianceIndex,
+                                                HistogramIndex histogramIndex) {
     final LongSampleIndex result =
-      new LongSampleIndex(sumIndex, countIndex, varianceIndex);
+      new LongSampleIndex(sumIndex, countIndex, varianceIndex, histogramIndex);
 
     m_longSampleMap.put(statisticName, result);
 
@@ -301,38 +422,26 @@ public final class StatisticsIndexMap implements Serializable {
   }
 
   /**
-   * Factory for {@link DoubleSampleIndex}s.
+   * Create a copy of this map with an additional {@link DoubleSampleIndex}.
    *
-   * <p>Package scope for unit tests.</p>
-   *
-   * <p>If this is made public and called from somewhere other than our
-   * constructor, we need to address synchronisation.</p>
+   * <p>Package scope for unit tests. The standard statistics have no double
+   * sample statistics.</p>
    *
    * @param statisticName Name to register index under.
    * @param sumIndex Index to hold sum.
    * @param countIndex Index to hold count.
    * @param varianceIndex Index to hold variance.
-   * @return The new index.
-   */
-  DoubleSampleIndex createDoubleSampleIndex(String statisticName,
-                                            DoubleIndex sumIndex,
-                                            LongIndex countIndex,
-                                            DoubleIndex varianceIndex) {
-    final DoubleSampleIndex result =
-      new DoubleSampleIndex(sumIndex, countIndex, varianceIndex);
-
-    m_doubleSampleMap.put(statisticName, result);
-
-    return result;
-  }
-
-  /**
-   * For unit tests to remove {@link DoubleSampleIndex}s they've created.
-   *
-   * @param statisticName Name of the DoubleSampleIndex.
+   * @return The new map.
    */
-  void removeDoubleSampleIndex(String statisticName) {
-    m_doubleSampleMap.remove(statisticName);
+  StatisticsIndexMap withDoubleSampleIndex(String statisticName,
+                                           DoubleIndex sumIndex,
+                                           LongIndex countIndex,
+                                           DoubleIndex varianceIndex) {
+    return new StatisticsIndexMap(
+      this,
+      Collections.singletonMap(
+        statisticName,
+        new DoubleSampleIndex(sumIndex, countIndex, varianceIndex)));
   }
 
   /**
@@ -385,6 +494,16 @@ public final class StatisticsIndexMap implements Serializable {
     }
   }
 
+  /**
+   * Class of opaque objects that represent the histogram of a
+   * {@link LongSampleIndex}.
+   */
+  static final class HistogramIndex extends AbstractSimpleIndex {
+    private HistogramIndex(int i) {
+      super(i, false);
+    }
+  }
+
   /**
    * Base class for sample statistic indices.
    */
@@ -458,12 +577,15 @@ public final class StatisticsIndexMap implements Serializable {
    */
   public static final class LongSampleIndex extends SampleIndex {
     private final LongIndex m_sumIndex;
+    private final HistogramIndex m_histogramIndex;
 
     private LongSampleIndex(LongIndex sumIndex,
                             LongIndex countIndex,
-                            DoubleIndex varianceIndex) {
+                            DoubleIndex varianceIndex,
+                            HistogramIndex histogramIndex) {
       super(countIndex, varianceIndex);
       m_sumIndex = sumIndex;
+      m_histogramIndex = histogramIndex;
     }
 
     /**
@@ -478,5 +600,19 @@ public final class StatisticsIndexMap implements Serializable {
     LongIndex getSumIndex() {
       return m_sumIndex;
     }
+
+    /**
+     * Get the index object for our histogram.
+     *
+     * <p>Package scope to prevent direct write access. External clients should
+     * use the {@link StatisticsSet} or {@link StatisticExpression} interfaces.
+     * </p>
+     *
+     * @return The index object, or {@code null} if the statistic has no
+     * histogram.
+     */
+    HistogramIndex getHistogramIndex() {
+      return m_histogramIndex;
+    }
   }
 }
@@ -1,4 +1,4 @@
-// Copyright (C) 2000, 2001, 2002, 2003, 2004, 2005 Philip Aston
+// Copyright (C) 2000 - 2013 Philip Aston
 // All rights reserved.
 //
 // This file is part of The Grinder software distribution. Refer to
@@ -21,9 +21,9 @@
 
 package net.grinder.statistics;
 
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.IOException;
-import java.io.ObjectInput;
-import java.io.ObjectOutput;
 
 import net.grinder.util.Serialiser;
 
@@ -51,13 +51,45 @@ public final class StatisticsSetFactory {
     return new StatisticsSetImplementation(m_statisticsIndexMap);
   }
 
-  void writeStatisticsExternal(ObjectOutput out,
+  /**
+   * Factory method.
+   *
+   * @return A new <code>StripedStatisticsSet</code>.
+   */
+  public StripedStatisticsSet createStriped() {
+    return new StripedStatisticsSetImplementation(m_statisticsIndexMap);
+  }
+
+  /**
+   * Copy the values of one statistics set to another, without allocating.
+   *
+   * <p>
+   * Sample histograms are not copied, and the histograms of {@code target}
+   * are emptied. A statistic with fewer than two samples has an empty
+   * histogram, so nothing is lost when copying the statistics for a single
+   * test.
+   * </p>
+   *
+   * @param source
+   *          The statistics to copy.
+   * @param target
+   *          A statistics set created by this factory, which is overwritten.
+   */
+  public void copyValues(ImmutableStatisticsSet source, StatisticsSet target) {
+    final ImmutableStatisticsSet sourceImplementation =
+      source instanceof StripedStatisticsSet ? source.snapshot() : source;
+
+    ((StatisticsSetImplementation) target).setValues(
+      (StatisticsSetImplementation) sourceImplementation);
+  }
+
+  void writeStatisticsExternal(DataOutput out,
                                StatisticsSetImplementation statistics)
     throws IOException {
     statistics.writeExternal(out, m_serialiser);
   }
 
-  StatisticsSet readStatisticsExternal(ObjectInput in) throws IOException {
+  StatisticsSet readStatisticsExternal(DataInput in) throws IOException {
     return new StatisticsSetImplementation(m_statisticsIndexMap,
                                            in,
                                            m_serialiser);
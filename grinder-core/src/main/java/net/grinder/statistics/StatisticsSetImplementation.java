@@ -1,4 +1,4 @@
-// Copyright (C) 2000 - 2011 Philip Aston
+// Copyright (C) 2000 - 2013 Philip Aston
 // All rights reserved.
 //
 // This file is part of The Grinder software distribution. Refer to
@@ -21,13 +21,14 @@
 
 package net.grinder.statistics;
 
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.IOException;
-import java.io.ObjectInput;
-import java.io.ObjectOutput;
 import java.util.Arrays;
 
 import net.grinder.statistics.StatisticsIndexMap.DoubleIndex;
 import net.grinder.statistics.StatisticsIndexMap.DoubleSampleIndex;
+import net.grinder.statistics.StatisticsIndexMap.HistogramIndex;
 import net.grinder.statistics.StatisticsIndexMap.LongIndex;
 import net.grinder.statistics.StatisticsIndexMap.LongSampleIndex;
 import net.grinder.statistics.StatisticsIndexMap.SampleIndex;
@@ -39,6 +40,15 @@ import net.grinder.util.Serialiser;
  * can access individual values using an index obtained from a {@link
  * StatisticsIndexMap}.
  *
+ * <p>
+ * The <em>long</em> sample statistics that need percentiles, such as the
+ * test time, also have a {@link LogLinearHistogram}. A histogram is only
+ * allocated when the statistic has more than one sample;
+ * while there is a single sample, its value is the sample sum. This keeps the
+ * statistics sets used to record individual tests small. The histogram of a
+ * statistic with fewer than two samples is always empty.
+ * </p>
+ *
  * @author Philip Aston
  */
 final class StatisticsSetImplementation implements StatisticsSet {
@@ -47,6 +57,10 @@ final class StatisticsSetImplementation implements StatisticsSet {
   private final long[] m_longData;
   private final double[] m_doubleData;
 
+  // Histograms for the long sample statistics, indexed by HistogramIndex.
+  // Allocated on demand.
+  private final long[][] m_histograms;
+
   // Transient fields are context specific. They are not serialised, nor are
   // they added to other statistics sets. E.g. the "period" field.
   private transient long[] m_transientLongData;
@@ -65,8 +79,39 @@ final class StatisticsSetImplementation implements StatisticsSet {
     m_statisticsIndexMap = statisticsIndexMap;
     m_longData = new long[m_statisticsIndexMap.getNumberOfLongs()];
     m_doubleData = new double[m_statisticsIndexMap.getNumberOfDoubles()];
+    m_histograms = new long[m_statisticsIndexMap.getNumberOfHistograms()][];
+    m_transientLongData =
+      new long[m_statisticsIndexMap.getNumberOfTransientLongs()];
+  }
+
+  /**
+   * Creates a new <code>StatisticsSetImplementation</code> instance from raw
+   * values. Used by {@link StripedStatisticsSetImplementation}.
+   *
+   * @param statisticsIndexMap The {@link StatisticsIndexMap} to use.
+   * @param longData The long values. Not copied.
+   * @param doubleData The double values. Not copied.
+   * @param histograms The histograms, indexed by
+   * {@link StatisticsIndexMap.HistogramIndex}. Not copied.
+   */
+  StatisticsSetImplementation(StatisticsIndexMap statisticsIndexMap,
+                              long[] longData,
+                              double[] doubleData,
+                              long[][] histograms) {
+    m_statisticsIndexMap = statisticsIndexMap;
+    m_longData = longData;
+    m_doubleData = doubleData;
+    m_histograms = histograms;
     m_transientLongData =
       new long[m_statisticsIndexMap.getNumberOfTransientLongs()];
+
+    for (long l : longData) {
+      m_zero &= l == 0;
+    }
+
+    for (double d : doubleData) {
+      m_zero &= d == 0;
+    }
   }
 
   /**
@@ -78,6 +123,13 @@ final class StatisticsSetImplementation implements StatisticsSet {
       Arrays.fill(m_longData, 0);
       Arrays.fill(m_doubleData, 0);
       Arrays.fill(m_transientLongData, 0);
+
+      for (long[] histogram : m_histograms) {
+        if (histogram != null) {
+          Arrays.fill(histogram, 0);
+        }
+      }
+
       m_zero = true;
       m_composite = false;
     }
@@ -116,6 +168,12 @@ final class StatisticsSetImplementation implements StatisticsSet {
                          result.m_transientLongData,
                          0, result.m_transientLongData.length);
 
+        for (int i = 0; i < m_histograms.length; ++i) {
+          if (m_histograms[i] != null) {
+            result.m_histograms[i] = m_histograms[i].clone();
+          }
+        }
+
         result.m_zero = false;
         result.m_composite = m_composite;
       }
@@ -124,6 +182,39 @@ final class StatisticsSetImplementation implements StatisticsSet {
     return result;
   }
 
+  /**
+   * Overwrite this set with the values of another, leaving the histograms
+   * empty. Used by {@link StatisticsSetFactory#copyValues}.
+   *
+   * @param source The statistics to copy.
+   */
+  synchronized void setValues(StatisticsSetImplementation source) {
+    for (long[] histogram : m_histograms) {
+      if (histogram != null) {
+        Arrays.fill(histogram, 0);
+      }
+    }
+
+    synchronized (source) {
+      System.arraycopy(source.m_longData, 0, m_longData, 0, m_longData.length);
+
+      System.arraycopy(source.m_doubleData,
+                       0,
+                       m_doubleData,
+                       0,
+                       m_doubleData.length);
+
+      System.arraycopy(source.m_transientLongData,
+                       0,
+                       m_transientLongData,
+                       0,
+                       m_transientLongData.length);
+
+      m_zero = source.m_zero;
+      m_composite = source.m_composite;
+    }
+  }
+
   /**
    * Return the value specified by <code>index</code>.
    *
@@ -228,6 +319,18 @@ final class StatisticsSetImplementation implements StatisticsSet {
    */
   public synchronized void addSample(LongSampleIndex index, long value) {
 
+    final long count = getValue(index.getCountIndex());
+
+    if (count > 0 && index.getHistogramIndex() != null) {
+      final long[] histogram = getHistogram(index);
+
+      if (count == 1) {
+        LogLinearHistogram.record(histogram, getValue(index.getSumIndex()));
+      }
+
+      LogLinearHistogram.record(histogram, value);
+    }
+
     setValue(index.getVarianceIndex(),
         calculateVariance(getValue(index.getSumIndex()),
                           getValue(index.getCountIndex()),
@@ -268,6 +371,15 @@ final class StatisticsSetImplementation implements StatisticsSet {
     setValue(index.getSumIndex(), 0);
     setValue(index.getCountIndex(), 0);
     setValue(index.getVarianceIndex(), 0);
+
+    if (index.getHistogramIndex() != null) {
+      final long[] histogram =
+        m_histograms[index.getHistogramIndex().getValue()];
+
+      if (histogram != null) {
+        Arrays.fill(histogram, 0);
+      }
+    }
   }
 
   /**
@@ -381,13 +493,143 @@ final class StatisticsSetImplementation implements StatisticsSet {
     return getValue(index.getVarianceIndex());
   }
 
+  /**
+   * Get a percentile of the sample values for the sample statistic specified
+   * by <code>index</code>.
+   *
+   * <p>
+   * The result is read from a log-linear histogram, so is approximate. It is
+   * no more than 1/16 higher than the true value.
+   * </p>
+   *
+   * @param index The index. Must have a histogram.
+   * @param percentile The percentile, between 0 and 100.
+   * @return The percentile, or 0 if there are no samples.
+   */
+  synchronized long getPercentile(LongSampleIndex index, double percentile) {
+    final long count = getValue(index.getCountIndex());
+
+    if (count == 1) {
+      return getValue(index.getSumIndex());
+    }
+
+    final long[] histogram =
+      m_histograms[index.getHistogramIndex().getValue()];
+
+    if (histogram == null) {
+      return 0;
+    }
+
+    return LogLinearHistogram.percentile(histogram, count, percentile);
+  }
+
+  /**
+   * Multiply the values of a sample statistic by a factor.
+   *
+   * @param index The index.
+   * @param factor The factor.
+   * @see TestStatisticsMap#convertTimeUnit
+   */
+  synchronized void scaleSample(LongSampleIndex index, double factor) {
+    setValue(index.getSumIndex(),
+             Math.round(getValue(index.getSumIndex()) * factor));
+
+    setValue(index.getVarianceIndex(),
+             getValue(index.getVarianceIndex()) * factor * factor);
+
+    final long[] histogram = index.getHistogramIndex() != null ?
+      m_histograms[index.getHistogramIndex().getValue()] : null;
+
+    if (histogram != null) {
+      final long[] original = histogram.clone();
+      Arrays.fill(histogram, 0);
+
+      for (int i = 0; i < original.length; ++i) {
+        if (original[i] != 0) {
+          histogram[LogLinearHistogram.bucketIndex(
+            Math.round(LogLinearHistogram.representativeValue(i) * factor))] +=
+            original[i];
+        }
+      }
+    }
+  }
+
+  // Raw accessors for StripedStatisticsSetImplementation. Callers must hold
+  // our monitor, and must not modify the arrays.
+
+  long[] getLongData() {
+    return m_longData;
+  }
+
+  double[] getDoubleData() {
+    return m_doubleData;
+  }
+
+  long[] getHistogramData(HistogramIndex index) {
+    return m_histograms[index.getValue()];
+  }
+
+  private long[] getHistogram(LongSampleIndex index) {
+    final HistogramIndex histogramIndex = index.getHistogramIndex();
+    long[] result = m_histograms[histogramIndex.getValue()];
+
+    if (result == null) {
+      result = new long[LogLinearHistogram.NUMBER_OF_BUCKETS];
+      m_histograms[histogramIndex.getValue()] = result;
+    }
+
+    return result;
+  }
+
+  /**
+   * Merge the histogram of a long sample statistic from another set into
+   * ours. Must be called before the sums and counts are added.
+   */
+  private void addHistogram(LongSampleIndex index,
+                            StatisticsSetImplementation operand) {
+    final long operandCount = operand.getValue(index.getCountIndex());
+
+    if (operandCount == 0 || index.getHistogramIndex() == null) {
+      return;
+    }
+
+    final long count = getValue(index.getCountIndex());
+
+    if (count + operandCount < 2) {
+      // The single sample is held in the sum.
+      return;
+    }
+
+    final long[] histogram = getHistogram(index);
+
+    if (count == 1) {
+      LogLinearHistogram.record(histogram, getValue(index.getSumIndex()));
+    }
+
+    if (operandCount == 1) {
+      LogLinearHistogram.record(histogram,
+                                operand.getValue(index.getSumIndex()));
+    }
+    else {
+      final long[] operandHistogram =
+        operand.m_histograms[index.getHistogramIndex().getValue()];
+
+      if (operandHistogram != null) {
+        for (int i = 0; i < histogram.length; ++i) {
+          histogram[i] += operandHistogram[i];
+        }
+      }
+    }
+  }
+
   /**
    * Add the values of another <code>StatisticsSet</code> to ours. Assumes we
    * don't need to synchronise access to operand.
    *
    * <p>
    * <strong>Currently the implementation assumes that the argument is actually
-   * a <code>StatisticsSetImplementation</code>.</strong>
+   * a <code>StatisticsSetImplementation</code>, or a
+   * {@link StripedStatisticsSet} whose cells are merged first.</strong>
    * </p>
    *
    * <p>
@@ -400,24 +642,23 @@ final class StatisticsSetImplementation implements StatisticsSet {
   public synchronized void add(ImmutableStatisticsSet operand) {
 
     final StatisticsSetImplementation operandImplementation =
-      (StatisticsSetImplementation)operand;
-
-    final boolean[] isVarianceIndex = new boolean[m_doubleData.length];
+      (StatisticsSetImplementation)
+      (operand instanceof StripedStatisticsSet ? operand.snapshot() : operand);
 
     for (LongSampleIndex index : m_statisticsIndexMap.getLongSampleIndicies()) {
       final LongIndex sumIndex = index.getSumIndex();
       final LongIndex countIndex = index.getCountIndex();
       final DoubleIndex varianceIndex = index.getVarianceIndex();
 
+      addHistogram(index, operandImplementation);
+
       setValue(varianceIndex,
         calculateVariance(getValue(sumIndex),
                           getValue(countIndex),
                           getValue(varianceIndex),
-                          operand.getValue(sumIndex),
-                          operand.getValue(countIndex),
-                          operand.getValue(varianceIndex)));
-
-      isVarianceIndex[varianceIndex.getValue()] = true;
+                          operandImplementation.getValue(sumIndex),
+                          operandImplementation.getValue(countIndex),
+                          operandImplementation.getValue(varianceIndex)));
     }
 
     for (DoubleSampleIndex index :
@@ -428,14 +669,12 @@ final class StatisticsSetImplementation implements StatisticsSet {
       final DoubleIndex varianceIndex = index.getVarianceIndex();
 
       setValue(varianceIndex,
-               calculateVariance(getValue(sumIndex),
-                                 getValue(countIndex),
-                                 getValue(varianceIndex),
-                                 operand.getValue(sumIndex),
-                                 operand.getValue(countIndex),
-                                 operand.getValue(varianceIndex)));
-
-      isVarianceIndex[varianceIndex.getValue()] = true;
+        calculateVariance(getValue(sumIndex),
+                          getValue(countIndex),
+                          getValue(varianceIndex),
+                          operandImplementation.getValue(sumIndex),
+                          operandImplementation.getValue(countIndex),
+                          operandImplementation.getValue(varianceIndex)));
     }
 
     final long[] longData = operandImplementation.m_longData;
@@ -445,6 +684,8 @@ final class StatisticsSetImplementation implements StatisticsSet {
     }
 
     final double[] doubleData = operandImplementation.m_doubleData;
+    final boolean[] isVarianceIndex =
+      m_statisticsIndexMap.getVarianceIndexFlags();
 
     for (int i = 0; i < doubleData.length; i++) {
       if (!isVarianceIndex[i]) {
@@ -516,6 +757,36 @@ final class StatisticsSetImplementation implements StatisticsSet {
           return false;
         }
       }
+
+      for (int i = 0; i < m_histograms.length; i++) {
+        if (!histogramEquals(m_histograms[i],
+                             otherStatistics.m_histograms[i])) {
+          return false;
+        }
+      }
+    }
+
+    return true;
+  }
+
+  /**
+   * Compare histograms, treating an unallocated histogram as empty.
+   */
+  private static boolean histogramEquals(long[] h1, long[] h2) {
+    if (h1 == null || h2 == null) {
+      return isEmpty(h1) && isEmpty(h2);
+    }
+
+    return Arrays.equals(h1, h2);
+  }
+
+  private static boolean isEmpty(long[] histogram) {
+    if (histogram != null) {
+      for (long l : histogram) {
+        if (l != 0) {
+          return false;
+        }
+      }
     }
 
     return true;
@@ -615,17 +886,71 @@ final class StatisticsSetImplementation implements StatisticsSet {
    * @param out Handle to the output stream.
    * @param serialiser <code>Serialiser</code> helper object.
    * @exception IOException If an error occurs.
-   * @see #StatisticsSetImplementation(StatisticsIndexMap, ObjectInput,
+   * @see #StatisticsSetImplementation(StatisticsIndexMap, DataInput,
    * Serialiser)
    */
-  synchronized void writeExternal(ObjectOutput out, Serialiser serialiser)
+  synchronized void writeExternal(DataOutput out, Serialiser serialiser)
     throws IOException {
-    for (int i = 0; i < m_longData.length; i++) {
-      serialiser.writeLong(out, m_longData[i]);
+
+    // Most slots are zero in a report for a single interval, so we only write
+    // the non-zero slots. Each is preceded by the gap from the previous one.
+    int nonZero = 0;
+
+    for (long l : m_longData) {
+      if (l != 0) {
+        ++nonZero;
+      }
     }
 
-    for (int i = 0; i < m_doubleData.length; i++) {
-      serialiser.writeDouble(out, m_doubleData[i]);
+    serialiser.writeVarLong(out, nonZero);
+
+    for (int i = 0, last = 0; nonZero > 0; ++i) {
+      if (m_longData[i] != 0) {
+        serialiser.writeVarLong(out, i - last);
+        serialiser.writeVarLong(out, m_longData[i]);
+        last = i;
+        --nonZero;
+      }
+    }
+
+    for (double d : m_doubleData) {
+      if (d != 0) {
+        ++nonZero;
+      }
+    }
+
+    serialiser.writeVarLong(out, nonZero);
+
+    for (int i = 0, last = 0; nonZero > 0; ++i) {
+      if (m_doubleData[i] != 0) {
+        serialiser.writeVarLong(out, i - last);
+        serialiser.writeDouble(out, m_doubleData[i]);
+        last = i;
+        --nonZero;
+      }
+    }
+
+    // Similarly, we write the number of non-empty buckets of each histogram,
+    // followed by the gap to and count of each.
+    for (long[] histogram : m_histograms) {
+      if (histogram != null) {
+        for (long l : histogram) {
+          if (l != 0) {
+            ++nonZero;
+          }
+        }
+      }
+
+      serialiser.writeVarLong(out, nonZero);
+
+      for (int i = 0, last = 0; nonZero > 0; ++i) {
+        if (histogram[i] != 0) {
+          serialiser.writeVarLong(out, i - last);
+          serialiser.writeVarLong(out, histogram[i]);
+          last = i;
+          --nonZero;
+        }
+      }
     }
 
     out.writeBoolean(m_composite);
@@ -640,24 +965,76 @@ final class StatisticsSetImplementation implements StatisticsSet {
    * @param statisticsIndexMap The {@link StatisticsIndexMap} to use.
    * @param in Handle to the input stream.
    * @param serialiser <code>Serialiser</code> helper object.
-   * @exception IOException If an error occurs.
-   * @see #writeExternal(ObjectOutput, Serialiser)
+   * @exception IOException If an error occurs, or if the input is invalid.
+   * @see #writeExternal(DataOutput, Serialiser)
    */
   StatisticsSetImplementation(StatisticsIndexMap statisticsIndexMap,
-                              ObjectInput in, Serialiser serialiser)
+                              DataInput in, Serialiser serialiser)
     throws IOException {
     this(statisticsIndexMap);
 
-    for (int i = 0; i < m_longData.length; i++) {
-      m_longData[i] = serialiser.readLong(in);
-      m_zero &= m_longData[i] == 0;
+    // The input may not have been written by writeExternal, so we check the
+    // counts and indices rather than trusting them.
+    for (int i = readCount(in, serialiser, m_longData.length), slot = 0;
+         i > 0;
+         --i) {
+      slot = readIndex(in, serialiser, slot, m_longData.length);
+      m_longData[slot] = serialiser.readVarLong(in);
+      m_zero &= m_longData[slot] == 0;
     }
 
-    for (int i = 0; i < m_doubleData.length; i++) {
-      m_doubleData[i] = serialiser.readDouble(in);
-      m_zero &= m_doubleData[i] == 0;
+    for (int i = readCount(in, serialiser, m_doubleData.length), slot = 0;
+         i > 0;
+         --i) {
+      slot = readIndex(in, serialiser, slot, m_doubleData.length);
+      m_doubleData[slot] = serialiser.readDouble(in);
+      m_zero &= m_doubleData[slot] == 0;
+    }
+
+    for (int i = 0; i < m_histograms.length; i++) {
+      final int nonEmpty =
+        readCount(in, serialiser, LogLinearHistogram.NUMBER_OF_BUCKETS);
+
+      if (nonEmpty > 0) {
+        final long[] histogram = new long[LogLinearHistogram.NUMBER_OF_BUCKETS];
+        int bucket = 0;
+
+        for (int j = 0; j < nonEmpty; ++j) {
+          bucket = readIndex(in, serialiser, bucket, histogram.length);
+          histogram[bucket] = serialiser.readVarLong(in);
+        }
+
+        m_histograms[i] = histogram;
+      }
     }
 
     m_composite = in.readBoolean();
   }
+
+  private static int readCount(DataInput in, Serialiser serialiser, int limit)
+    throws IOException {
+
+    final long count = serialiser.readVarLong(in);
+
+    if (count < 0 || count > limit) {
+      throw new IOException("Invalid count " + count);
+    }
+
+    return (int)count;
+  }
+
+  private static int readIndex(DataInput in,
+                               Serialiser serialiser,
+                               int previous,
+                               int limit)
+    throws IOException {
+
+    final long gap = serialiser.readVarLong(in);
+
+    if (gap < 0 || gap >= limit - previous) {
+      throw new IOException("Invalid index gap " + gap + " after " + previous);
+    }
+
+    return previous + (int)gap;
+  }
 }
@@ -1,4 +1,4 @@
-// Copyright (C) 2000 - 2011 Philip Aston
+// Copyright (C) 2000 - 2013 Philip Aston
 // All rights reserved.
 //
 // This file is part of The Grinder software distribution. Refer to
@@ -23,6 +23,7 @@ package net.grinder.statistics;
 
 import java.io.PrintWriter;
 import java.text.DecimalFormat;
+import java.util.concurrent.TimeUnit;
 
 import net.grinder.common.Test;
 import net.grinder.statistics.StatisticsIndexMap.LongIndex;
@@ -70,9 +71,11 @@ public class StatisticsTable {
 
   private final StatisticsView m_statisticsView;
   private final LongIndex m_periodIndex;
+  private final TimeUnit m_timeUnit;
 
   /**
-   * Creates a new <code>StatisticsTable</code> instance.
+   * Creates a new <code>StatisticsTable</code> instance for statistics with
+   * test times in milliseconds.
    *
    * @param statisticsView Views.
    * @param statisticsIndexMap The statistics index map.
@@ -81,8 +84,27 @@ public class StatisticsTable {
   public StatisticsTable(final StatisticsView statisticsView,
                          final StatisticsIndexMap statisticsIndexMap,
                          final TestStatisticsMap testStatisticsMap) {
+    this(statisticsView,
+         statisticsIndexMap,
+         testStatisticsMap,
+         TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Creates a new <code>StatisticsTable</code> instance.
+   *
+   * @param statisticsView Views.
+   * @param statisticsIndexMap The statistics index map.
+   * @param testStatisticsMap Tests and associated statistics.
+   * @param timeUnit The unit of the test times in {@code testStatisticsMap}.
+   */
+  public StatisticsTable(final StatisticsView statisticsView,
+                         final StatisticsIndexMap statisticsIndexMap,
+                         final TestStatisticsMap testStatisticsMap,
+                         final TimeUnit timeUnit) {
     m_statisticsView = statisticsView;
     m_testStatisticsMap = testStatisticsMap;
+    m_timeUnit = timeUnit;
 
     m_periodIndex = statisticsIndexMap.getLongIndex("period");
   }
@@ -268,10 +290,9 @@ public class StatisticsTable {
     protected String formatExpression(final ExpressionView expressionView,
                                       final StatisticsSet statistics) {
 
-      final StatisticExpression expression = expressionView.getExpression();
-
-      if (expression.isDouble()) {
-        final double value = expression.getDoubleValue(statistics);
+      if (expressionView.isDisplayedAsDouble(m_timeUnit)) {
+        final double value =
+          expressionView.getDisplayValue(statistics, m_timeUnit);
 
         if (Double.isNaN(value)) {
           return "-";
@@ -280,7 +301,8 @@ public class StatisticsTable {
         return m_twoDPFormat.format(value);
       }
       else {
-        return String.valueOf(expression.getLongValue(statistics));
+        return String.valueOf(
+          expressionView.getExpression().getLongValue(statistics));
       }
     }
   }
@@ -0,0 +1,51 @@
+// Copyright (C) 2013 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.grinder.statistics;
+
+
+/**
+ * A {@link StatisticsSet} that many threads can update concurrently without
+ * contending for a lock.
+ *
+ * <p>
+ * Updates are recorded into a fixed number of stripes, chosen by the identity
+ * of the updating thread, using atomic operations. Reading the striped set
+ * merges the stripes.
+ * </p>
+ *
+ * @author Philip Aston
+ */
+public interface StripedStatisticsSet extends StatisticsSet {
+
+  /**
+   * Atomically take a snapshot of the statistics and reset them.
+   *
+   * <p>
+   * Each update made through {@link #add}, {@link #addValue} or
+   * {@link #addSample} is either wholly included in the snapshot, or wholly
+   * left for the next one.
+   * </p>
+   *
+   * @return The snapshot.
+   */
+  StatisticsSet snapshotAndReset();
+}
@@ -0,0 +1,716 @@
+// Copyright (C) 2013 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.grinder.statistics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import net.grinder.statistics.StatisticsIndexMap.DoubleIndex;
+import net.grinder.statistics.StatisticsIndexMap.DoubleSampleIndex;
+import net.grinder.statistics.StatisticsIndexMap.HistogramIndex;
+import net.grinder.statistics.StatisticsIndexMap.LongIndex;
+import net.grinder.statistics.StatisticsIndexMap.LongSampleIndex;
+import net.grinder.statistics.StatisticsIndexMap.SampleIndex;
+
+
+/**
+ * {@link StripedStatisticsSet} implementation.
+ *
+ * <p>
+ * Writers add to one of a bounded number of stripes, chosen by a hash of the
+ * thread identifier, using atomic operations. Stripes are created on first
+ * use. Threads that share a stripe may retry a compare-and-set, but never
+ * block.
+ * </p>
+ *
+ * <p>
+ * Each stripe has two banks of values. Writers record into the bank of the
+ * current phase. A reader flips the phase, waits for writers that are still
+ * recording into the old bank, then drains the old bank into a
+ * {@link StatisticsSetImplementation} that holds the accumulated values. The
+ * flip follows Gil Tene's <em>WriterReaderPhaser</em>. Readers are serialised
+ * by our monitor; they are expected to be infrequent, typically once per
+ * console report interval.
+ * </p>
+ *
+ * <p>
+ * Sample variances can't be combined atomically, so a bank holds the sum of
+ * the squares of the sample values in each variance slot. Histograms are not
+ * striped. Each bank has a single histogram for each long sample statistic,
+ * shared by all the stripes.
+ * </p>
+ *
+ * <p>
+ * Updates that are not additive, such as {@link #setValue}, are applied to
+ * the accumulated values.
+ * </p>
+ *
+ * @author Philip Aston
+ */
+final class StripedStatisticsSetImplementation
+  implements StripedStatisticsSet {
+
+  private static final int NUMBER_OF_STRIPES;
+
+  static {
+    // A power of two, at least twice the number of processors.
+    int stripes = 2;
+
+    while (stripes < 2 * Runtime.getRuntime().availableProcessors() &&
+           stripes < 64) {
+      stripes <<= 1;
+    }
+
+    NUMBER_OF_STRIPES = stripes;
+  }
+
+  private final StatisticsIndexMap m_statisticsIndexMap;
+
+  private final AtomicReferenceArray<Stripe> m_stripes =
+    new AtomicReferenceArray<Stripe>(NUMBER_OF_STRIPES);
+
+  /**
+   * Shared histograms. Indexed by phase, then {@link HistogramIndex}.
+   * Created on first use.
+   */
+  private final AtomicReferenceArray<AtomicLongArray> m_histograms;
+
+  /** Guarded by this. */
+  private final StatisticsSetImplementation m_accumulated;
+
+  /** The phase that writers record into. Guarded by this. */
+  private int m_phase = 0;
+
+  private volatile boolean m_composite;
+
+  /**
+   * Constructor.
+   *
+   * @param statisticsIndexMap The {@link StatisticsIndexMap} to use.
+   */
+  StripedStatisticsSetImplementation(StatisticsIndexMap statisticsIndexMap) {
+    m_statisticsIndexMap = statisticsIndexMap;
+    m_histograms = new AtomicReferenceArray<AtomicLongArray>(
+      2 * statisticsIndexMap.getNumberOfHistograms());
+    m_accumulated = new StatisticsSetImplementation(statisticsIndexMap);
+  }
+
+  private Stripe getStripe() {
+    final long id = Thread.currentThread().getId();
+    final int i = (int)(id ^ (id >>> 32)) & (NUMBER_OF_STRIPES - 1);
+
+    final Stripe stripe = m_stripes.get(i);
+
+    if (stripe != null) {
+      return stripe;
+    }
+
+    synchronized (this) {
+      // Create the stripe with the reader's lock held, so the stripe starts
+      // in the current phase.
+      if (m_stripes.get(i) == null) {
+        m_stripes.set(i, new Stripe(m_statisticsIndexMap, m_phase));
+      }
+
+      return m_stripes.get(i);
+    }
+  }
+
+  private AtomicLongArray getHistogram(int phase, HistogramIndex index) {
+    final int i = phase * m_statisticsIndexMap.getNumberOfHistograms() +
+                  index.getValue();
+
+    final AtomicLongArray histogram = m_histograms.get(i);
+
+    if (histogram != null) {
+      return histogram;
+    }
+
+    m_histograms.compareAndSet(
+      i, null, new AtomicLongArray(LogLinearHistogram.NUMBER_OF_BUCKETS));
+
+    return m_histograms.get(i);
+  }
+
+  private static void addDouble(AtomicLongArray array, int i, double value) {
+    while (true) {
+      final long bits = array.get(i);
+      final double sum = Double.longBitsToDouble(bits) + value;
+
+      if (array.compareAndSet(i, bits, Double.doubleToRawLongBits(sum))) {
+        return;
+      }
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  public void add(ImmutableStatisticsSet operand) {
+    final StatisticsSetImplementation operandImplementation =
+      (StatisticsSetImplementation)
+      (operand instanceof StripedStatisticsSet ? operand.snapshot() : operand);
+
+    if (operandImplementation.isComposite() && !m_composite) {
+      setIsComposite();
+    }
+
+    final Stripe stripe = getStripe();
+    final long epoch = stripe.enter();
+
+    try {
+      final int phase = Stripe.phase(epoch);
+      final Bank bank = stripe.getBank(phase);
+
+      // The operand is normally owned by the calling thread, so this is
+      // uncontended.
+      synchronized (operandImplementation) {
+        final long[] longData = operandImplementation.getLongData();
+
+        for (int i = 0; i < longData.length; ++i) {
+          if (longData[i] != 0) {
+            bank.m_longs.getAndAdd(i, longData[i]);
+          }
+        }
+
+        final double[] doubleData = operandImplementation.getDoubleData();
+        final boolean[] isVarianceIndex =
+          m_statisticsIndexMap.getVarianceIndexFlags();
+
+        for (int i = 0; i < doubleData.length; ++i) {
+          if (doubleData[i] != 0 && !isVarianceIndex[i]) {
+            addDouble(bank.m_doubles, i, doubleData[i]);
+          }
+        }
+
+        for (LongSampleIndex index :
+             m_statisticsIndexMap.getLongSampleIndicies()) {
+          final long count = longData[index.getCountIndex().getValue()];
+
+          if (count > 0) {
+            final long sum = longData[index.getSumIndex().getValue()];
+
+            addSumOfSquares(bank,
+                            index,
+                            sum,
+                            count,
+                            doubleData[index.getVarianceIndex().getValue()]);
+
+            final HistogramIndex histogramIndex = index.getHistogramIndex();
+
+            if (histogramIndex == null) {
+              continue;
+            }
+
+            final AtomicLongArray histogram =
+              getHistogram(phase, histogramIndex);
+
+            if (count == 1) {
+              histogram.incrementAndGet(LogLinearHistogram.bucketIndex(sum));
+            }
+            else {
+              final long[] operandHistogram =
+                operandImplementation.getHistogramData(histogramIndex);
+
+              if (operandHistogram != null) {
+                for (int i = 0; i < operandHistogram.length; ++i) {
+                  if (operandHistogram[i] != 0) {
+                    histogram.getAndAdd(i, operandHistogram[i]);
+                  }
+                }
+              }
+            }
+          }
+        }
+
+        for (DoubleSampleIndex index :
+             m_statisticsIndexMap.getDoubleSampleIndicies()) {
+          final long count = longData[index.getCountIndex().getValue()];
+
+          if (count > 0) {
+            addSumOfSquares(bank,
+                            index,
+                            doubleData[index.getSumIndex().getValue()],
+                            count,
+                            doubleData[index.getVarianceIndex().getValue()]);
+          }
+        }
+      }
+    }
+    finally {
+      stripe.exit(epoch);
+    }
+  }
+
+  private static void addSumOfSquares(Bank bank,
+                                      SampleIndex index,
+                                      double sum,
+                                      long count,
+                                      double variance) {
+    addDouble(bank.m_doubles,
+              index.getVarianceIndex().getValue(),
+              count * variance + sum * sum / count);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  public void addValue(LongIndex index, long value) {
+    if (index.isTransient()) {
+      // Consistent with StatisticsSetImplementation.
+      return;
+    }
+
+    final Stripe stripe = getStripe();
+    final long epoch = stripe.enter();
+
+    try {
+      stripe.getBank(Stripe.phase(epoch)).m_longs.getAndAdd(index.getValue(),
+                                                            value);
+    }
+    finally {
+      stripe.exit(epoch);
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  public void addValue(DoubleIndex index, double value) {
+    final Stripe stripe = getStripe();
+    final long epoch = stripe.enter();
+
+    try {
+      addDouble(stripe.getBank(Stripe.phase(epoch)).m_doubles,
+                index.getValue(),
+                value);
+    }
+    finally {
+      stripe.exit(epoch);
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  public void addSample(LongSampleIndex index, long value) {
+    final Stripe stripe = getStripe();
+    final long epoch = stripe.enter();
+
+    try {
+      final int phase = Stripe.phase(epoch);
+      final Bank bank = stripe.getBank(phase);
+
+      bank.m_longs.getAndAdd(index.getSumIndex().getValue(), value);
+      bank.m_longs.incrementAndGet(index.getCountIndex().getValue());
+      addSumOfSquares(bank, index, value, 1, 0);
+
+      if (index.getHistogramIndex() != null) {
+        getHistogram(phase, index.getHistogramIndex()).incrementAndGet(
+          LogLinearHistogram.bucketIndex(value));
+      }
+    }
+    finally {
+      stripe.exit(epoch);
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  public void addSample(DoubleSampleIndex index, double value) {
+    final Stripe stripe = getStripe();
+    final long epoch = stripe.enter();
+
+    try {
+      final Bank bank = stripe.getBank(Stripe.phase(epoch));
+
+      addDouble(bank.m_doubles, index.getSumIndex().getValue(), value);
+      bank.m_longs.incrementAndGet(index.getCountIndex().getValue());
+      addSumOfSquares(bank, index, value, 1, 0);
+    }
+    finally {
+      stripe.exit(epoch);
+    }
+  }
+
+  /**
+   * Flip the phase and add the values recorded in the old phase to
+   * {@link #m_accumulated}.
+   */
+  private void drain() {
+    assert Thread.holdsLock(this);
+
+    final int oldPhase = m_phase;
+    m_phase = 1 - oldPhase;
+
+    final int numberOfLongs = m_statisticsIndexMap.getNumberOfLongs();
+    final int numberOfDoubles = m_statisticsIndexMap.getNumberOfDoubles();
+
+    final long[] longData = new long[numberOfLongs];
+    final double[] doubleData = new double[numberOfDoubles];
+    boolean zero = true;
+
+    for (int s = 0; s < NUMBER_OF_STRIPES; ++s) {
+      final Stripe stripe = m_stripes.get(s);
+
+      if (stripe != null) {
+        stripe.flip(m_phase);
+
+        // Writers have finished with the old bank.
+        final Bank bank = stripe.getBank(oldPhase);
+
+        for (int i = 0; i < numberOfLongs; ++i) {
+          final long value = bank.m_longs.get(i);
+
+          if (value != 0) {
+            longData[i] += value;
+            bank.m_longs.set(i, 0);
+            zero = false;
+          }
+        }
+
+        for (int i = 0; i < numberOfDoubles; ++i) {
+          final long bits = bank.m_doubles.get(i);
+
+          if (bits != 0) {
+            doubleData[i] += Double.longBitsToDouble(bits);
+            bank.m_doubles.set(i, 0);
+            zero = false;
+          }
+        }
+      }
+    }
+
+    if (zero) {
+      return;
+    }
+
+    final int numberOfHistograms = m_statisticsIndexMap.getNumberOfHistograms();
+    final long[][] histograms = new long[numberOfHistograms][];
+
+    for (LongSampleIndex index : m_statisticsIndexMap.getLongSampleIndicies()) {
+      final long count = longData[index.getCountIndex().getValue()];
+
+      convertSumOfSquares(longData[index.getSumIndex().getValue()],
+                          count,
+                          doubleData,
+                          index);
+
+      if (index.getHistogramIndex() == null) {
+        continue;
+      }
+
+      final int h = index.getHistogramIndex().getValue();
+      final AtomicLongArray histogram =
+        m_histograms.get(oldPhase * numberOfHistograms + h);
+
+      if (histogram != null) {
+        final long[] values = new long[histogram.length()];
+
+        for (int i = 0; i < values.length; ++i) {
+          values[i] = histogram.get(i);
+
+          if (values[i] != 0) {
+            histogram.set(i, 0);
+          }
+        }
+
+        // StatisticsSetImplementation holds a single sample in the sum.
+        if (count > 1) {
+          histograms[h] = values;
+        }
+      }
+    }
+
+    for (DoubleSampleIndex index :
+         m_statisticsIndexMap.getDoubleSampleIndicies()) {
+      convertSumOfSquares(doubleData[index.getSumIndex().getValue()],
+                          longData[index.getCountIndex().getValue()],
+                          doubleData,
+                          index);
+    }
+
+    m_accumulated.add(
+      new StatisticsSetImplementation(m_statisticsIndexMap,
+                                      longData,
+                                      doubleData,
+                                      histograms));
+  }
+
+  private static void convertSumOfSquares(double sum,
+                                          long count,
+                                          double[] doubleData,
+                                          SampleIndex index) {
+    final int i = index.getVarianceIndex().getValue();
+
+    if (count == 0) {
+      doubleData[i] = 0;
+    }
+    else {
+      final double mean = sum / count;
+      doubleData[i] = Math.max(doubleData[i] / count - mean * mean, 0);
+    }
+  }
+
+  private StatisticsSetImplementation copyAccumulated() {
+    final StatisticsSetImplementation result =
+      (StatisticsSetImplementation)m_accumulated.snapshot();
+
+    if (m_composite) {
+      result.setIsComposite();
+    }
+
+    return result;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  public synchronized StatisticsSet snapshot() {
+    drain();
+    return copyAccumulated();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  public synchronized StatisticsSet snapshotAndReset() {
+    drain();
+    final StatisticsSet result = copyAccumulated();
+    m_accumulated.reset();
+    return result;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  public synchronized void reset() {
+    drain();
+    m_accumulated.reset();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  public synchronized long getValue(LongIndex index) {
+    drain();
+    return m_accumulated.getValue(index);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  public synchronized double getValue(DoubleIndex index) {
+    drain();
+    return m_accumulated.getValue(index);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  public synchronized long getSum(LongSampleIndex index) {
+    drain();
+    return m_accumulated.getSum(index);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  public synchronized double getSum(DoubleSampleIndex index) {
+    drain();
+    return m_accumulated.getSum(index);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  public synchronized long getCount(SampleIndex index) {
+    drain();
+    return m_accumulated.getCount(index);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  public synchronized double getVariance(SampleIndex index) {
+    drain();
+    return m_accumulated.getVariance(index);
+  }
+
+  /**
+   * Get a percentile of the sample values for a sample statistic.
+   *
+   * @param index The index.
+   * @param percentile The percentile, between 0 and 100.
+   * @return The percentile.
+   * @see StatisticsSetImplementation#getPercentile
+   */
+  synchronized long getPercentile(LongSampleIndex index, double percentile) {
+    drain();
+    return m_accumulated.getPercentile(index, percentile);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  public synchronized boolean isZero() {
+    drain();
+    return m_accumulated.isZero();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  public boolean isComposite() {
+    return m_composite;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  public void setIsComposite() {
+    m_composite = true;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  public synchronized void setValue(LongIndex index, long value) {
+    drain();
+    m_accumulated.setValue(index, value);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  public synchronized void setValue(DoubleIndex index, double value) {
+    drain();
+    m_accumulated.setValue(index, value);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  public synchronized void reset(LongSampleIndex index) {
+    drain();
+    m_accumulated.reset(index);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  public synchronized void reset(DoubleSampleIndex index) {
+    drain();
+    m_accumulated.reset(index);
+  }
+
+  /**
+   * Return a <code>String</code> representation of this
+   * <code>StatisticsSet</code>.
+   *
+   * @return The <code>String</code>
+   */
+  public String toString() {
+    return snapshot().toString();
+  }
+
+  /**
+   * Values recorded by a stripe in one phase. Variance slots hold the sum of
+   * the squares of the sample values; double values are held as raw bits.
+   */
+  private static final class Bank {
+    private final AtomicLongArray m_longs;
+    private final AtomicLongArray m_doubles;
+
+    public Bank(StatisticsIndexMap statisticsIndexMap) {
+      m_longs = new AtomicLongArray(statisticsIndexMap.getNumberOfLongs());
+      m_doubles = new AtomicLongArray(statisticsIndexMap.getNumberOfDoubles());
+    }
+  }
+
+  /**
+   * A stripe, and its writer-reader phaser.
+   *
+   * <p>
+   * Writers increment the start epoch on entry, and the end epoch for their
+   * phase on exit. The sign of the start epoch identifies the phase. To flip
+   * the phase, the reader swaps the start epoch for the initial value of the
+   * new phase, then waits until the old phase's end epoch catches up with the
+   * start epoch it swapped out.
+   * </p>
+   */
+  private static final class Stripe {
+    private final AtomicLong m_startEpoch;
+    private final AtomicLong m_evenEndEpoch = new AtomicLong(0);
+    private final AtomicLong m_oddEndEpoch = new AtomicLong(Long.MIN_VALUE);
+
+    private final Bank[] m_banks;
+
+    public Stripe(StatisticsIndexMap statisticsIndexMap, int phase) {
+      m_startEpoch = new AtomicLong(phase == 0 ? 0 : Long.MIN_VALUE);
+      m_banks = new Bank[] {
+        new Bank(statisticsIndexMap),
+        new Bank(statisticsIndexMap),
+      };
+    }
+
+    public long enter() {
+      return m_startEpoch.getAndIncrement();
+    }
+
+    public void exit(long epoch) {
+      (epoch < 0 ? m_oddEndEpoch : m_evenEndEpoch).incrementAndGet();
+    }
+
+    public static int phase(long epoch) {
+      return epoch < 0 ? 1 : 0;
+    }
+
+    public Bank getBank(int phase) {
+      return m_banks[phase];
+    }
+
+    /**
+     * Switch writers to the given phase, and wait for writers in the other
+     * phase to finish.
+     */
+    public void flip(int phase) {
+      final long initialValue = phase == 0 ? 0 : Long.MIN_VALUE;
+
+      final AtomicLong newEndEpoch =
+        phase == 0 ? m_evenEndEpoch : m_oddEndEpoch;
+      final AtomicLong oldEndEpoch =
+        phase == 0 ? m_oddEndEpoch : m_evenEndEpoch;
+
+      newEndEpoch.set(initialValue);
+
+      final long oldStartEpoch = m_startEpoch.getAndSet(initialValue);
+
+      // A writer between enter() and exit() is only adding a few values.
+      while (oldEndEpoch.get() != oldStartEpoch) {
+        Thread.yield();
+      }
+    }
+  }
+}
@@ -21,6 +21,8 @@
 
 package net.grinder.statistics;
 
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.IOException;
 import java.io.ObjectInput;
 import java.io.ObjectOutput;
@@ -28,9 +30,11 @@ import java.util.Iterator;
 import java.util.Map;
 import java.util.TreeMap;
 import java.util.Map.Entry;
+import java.util.concurrent.TimeUnit;
 
 import net.grinder.common.AbstractTestSemantics;
 import net.grinder.common.Test;
+import net.grinder.statistics.StatisticsIndexMap.LongSampleIndex;
 
 
 /**
@@ -47,7 +51,7 @@ public final class TestStatisticsMap implements java.io.Externalizable {
   // The serialVersionUID should be incremented whenever the default
   // statistic indices are changed in StatisticsIndexMap, or
   // when the StatisticsSet externalisation methods are changed.
-  private static final long serialVersionUID = 5L;
+  private static final long serialVersionUID = 6L;
 
   private final transient StatisticsSetFactory m_statisticsSetFactory;
 
@@ -84,7 +88,8 @@ public final class TestStatisticsMap implements java.io.Externalizable {
    * @param statistics The test's statistics.
    */
   public void put(Test test, StatisticsSet statistics) {
-    if (!(statistics instanceof StatisticsSetImplementation)) {
+    if (!(statistics instanceof StatisticsSetImplementation ||
+          statistics instanceof StripedStatisticsSet)) {
       throw new AssertionError(
         "StatisticsSet implementation not supported");
     }
@@ -138,6 +143,9 @@ public final class TestStatisticsMap implements java.io.Externalizable {
   /**
    * Reset all our statistics and return a snapshot.
    *
+   * <p>Resetting a {@link StripedStatisticsSet} does not block the threads
+   * that are updating it.</p>
+   *
    * @return The snapshot. Only Tests with non-zero statistics are included.
    */
   public TestStatisticsMap reset() {
@@ -148,9 +156,14 @@ public final class TestStatisticsMap implements java.io.Externalizable {
       public void next(Test test, StatisticsSet statistics) {
         final StatisticsSet snapshot;
 
-        synchronized (statistics) {
-          snapshot = statistics.snapshot();
-          statistics.reset();
+        if (statistics instanceof StripedStatisticsSet) {
+          snapshot = ((StripedStatisticsSet)statistics).snapshotAndReset();
+        }
+        else {
+          synchronized (statistics) {
+            snapshot = statistics.snapshot();
+            statistics.reset();
+          }
         }
 
         if (!snapshot.isZero()) {
@@ -163,6 +176,43 @@ public final class TestStatisticsMap implements java.io.Externalizable {
     return result;
   }
 
+  /**
+   * Convert the values of a time sample statistic from one unit to another.
+   *
+   * <p>The sum is rounded to the nearest whole unit. The variance is scaled
+   * by the square of the conversion factor, so the standard deviation is
+   * preserved. Histogram buckets are moved according to their midpoints.</p>
+   *
+   * <p>Only supported for maps that do not contain
+   * {@link StripedStatisticsSet}s, such as those returned by {@link #reset()}
+   * or received from a worker process.</p>
+   *
+   * @param index The sample statistic, typically <em>timedTests</em>.
+   * @param from The unit of the current values.
+   * @param to The required unit.
+   */
+  public void convertTimeUnit(final LongSampleIndex index,
+                              final TimeUnit from,
+                              final TimeUnit to) {
+    if (from == to) {
+      return;
+    }
+
+    final double factor = (double)from.toNanos(1) / to.toNanos(1);
+
+    new ForEach() {
+      public void next(Test test, StatisticsSet statistics) {
+        if (statistics instanceof StripedStatisticsSet) {
+          throw new UnsupportedOperationException(
+            "Cannot convert striped statistics");
+        }
+
+        ((StatisticsSetImplementation)statistics).scaleSample(index, factor);
+      }
+    }
+    .iterate();
+  }
+
   /**
    * Add up all the non-composite statistics.
    *
@@ -289,6 +339,18 @@ public final class TestStatisticsMap implements java.io.Externalizable {
    * @exception IOException If an I/O error occurs.
    */
   public void writeExternal(ObjectOutput out) throws IOException {
+    write(out);
+  }
+
+  /**
+   * Write the map in the format used by {@link #writeExternal}, for
+   * messages that have their own encoding.
+   *
+   * @param out The output.
+   * @exception IOException If an I/O error occurs.
+   * @see #read(DataInput)
+   */
+  public void write(DataOutput out) throws IOException {
 
     synchronized (this) {
       out.writeInt(m_data.size());
@@ -297,9 +359,15 @@ public final class TestStatisticsMap implements java.io.Externalizable {
         out.writeInt(entry.getKey().getNumber());
 
         // Its a class invariant that our StatisticsSets are all
-        // StatisticsSetImplementations.
+        // StatisticsSetImplementations or StripedStatisticsSets. The snapshot
+        // of a StripedStatisticsSet is a StatisticsSetImplementation.
+        final StatisticsSet statistics = entry.getValue();
+
         m_statisticsSetFactory.writeStatisticsExternal(
-          out, (StatisticsSetImplementation)entry.getValue());
+          out,
+          (StatisticsSetImplementation)
+          (statistics instanceof StripedStatisticsSet ?
+              statistics.snapshot() : statistics));
       }
     }
   }
@@ -312,6 +380,17 @@ public final class TestStatisticsMap implements java.io.Externalizable {
    * @exception IOException If an I/O error occurs.
    */
   public void readExternal(ObjectInput in) throws IOException {
+    read(in);
+  }
+
+  /**
+   * Read a map written by {@link #write(DataOutput)}. No synchronisation,
+   * assume that we're being read into a new instance.
+   *
+   * @param in The input.
+   * @exception IOException If an I/O error occurs.
+   */
+  public void read(DataInput in) throws IOException {
 
     final int n = in.readInt();
 
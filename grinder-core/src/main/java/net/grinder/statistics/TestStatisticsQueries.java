@@ -1,4 +1,4 @@
-// Copyright (C) 2000, 2001, 2002, 2003, 2004, 2005 Philip Aston
+// Copyright (C) 2000 - 2013 Philip Aston
 // All rights reserved.
 //
 // This file is part of The Grinder software distribution. Refer to
@@ -21,6 +21,8 @@
 
 package net.grinder.statistics;
 
+import java.util.concurrent.TimeUnit;
+
 
 /**
  * Common queries against the standard statistics.
@@ -82,4 +84,19 @@ public final class TestStatisticsQueries {
       count == 0 ?
       Double.NaN : statistics.getSum(m_timedTestsIndex) / (double)count;
   }
+
+  /**
+   * Return the average test time in milliseconds.
+   *
+   * @param statistics The statistics to query.
+   * @param timeUnit The unit of the test times in {@code statistics}.
+   * @return The average test time, or {@code NaN} if there are no timed
+   *         tests.
+   * @see #getAverageTestTime(StatisticsSet)
+   */
+  public double getAverageTestTime(StatisticsSet statistics,
+                                   TimeUnit timeUnit) {
+    return getAverageTestTime(statistics) *
+           timeUnit.toNanos(1) / TimeUnit.MILLISECONDS.toNanos(1);
+  }
 }
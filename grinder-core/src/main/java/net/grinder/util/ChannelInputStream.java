@@ -0,0 +1,180 @@
+// Copyright (C) 2013 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.grinder.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+
+
+/**
+ * {@link InputStream} over a {@link SocketChannel} that is in non-blocking
+ * mode, so that the channel can also be registered with a {@link Selector}.
+ *
+ * <p>
+ * {@link #available()} never blocks, and reads data from the channel into an
+ * internal buffer if the buffer is empty. The {@code read} methods block
+ * until data is available, as for a socket stream.
+ * </p>
+ *
+ * @author Philip Aston
+ */
+public final class ChannelInputStream extends InputStream {
+
+  private static final int BUFFER_SIZE = 8192;
+
+  /**
+   * How long to wait for data before checking whether the channel has been
+   * closed.
+   */
+  private static final long SELECT_TIME_OUT = 1000;
+
+  private final SocketChannel m_channel;
+
+  // Guarded by this. Data from position to limit is unread.
+  private final ByteBuffer m_buffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+  // Guarded by this.
+  private boolean m_endOfStream;
+
+  /**
+   * Constructor.
+   *
+   * @param channel
+   *          The channel. Should be in non-blocking mode.
+   */
+  public ChannelInputStream(SocketChannel channel) {
+    m_channel = channel;
+    m_buffer.flip();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override public synchronized int available() throws IOException {
+    if (!m_buffer.hasRemaining() && !m_endOfStream) {
+      fill();
+    }
+
+    return m_buffer.remaining();
+  }
+
+  /**
+   * Whether the peer has closed the connection, and all of the data it sent
+   * has been read. Only updated by {@link #available()} and the {@code read}
+   * methods.
+   *
+   * @return {@code true} if the end of the stream has been reached.
+   */
+  public synchronized boolean isEndOfStream() {
+    return m_endOfStream && !m_buffer.hasRemaining();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override public int read() throws IOException {
+    final byte[] b = new byte[1];
+
+    if (read(b, 0, 1) == -1) {
+      return -1;
+    }
+
+    return b[0] & 0xFF;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override public synchronized int read(byte[] b, int off, int len)
+    throws IOException {
+
+    if (len == 0) {
+      return 0;
+    }
+
+    while (!m_buffer.hasRemaining()) {
+      if (m_endOfStream) {
+        return -1;
+      }
+
+      if (fill() == 0) {
+        waitForData();
+      }
+    }
+
+    final int n = Math.min(len, m_buffer.remaining());
+    m_buffer.get(b, off, n);
+
+    return n;
+  }
+
+  /**
+   * Close the channel, as closing a socket stream closes the socket.
+   *
+   * @throws IOException If the channel could not be closed.
+   */
+  @Override public void close() throws IOException {
+    m_channel.close();
+  }
+
+  private int fill() throws IOException {
+    m_buffer.clear();
+
+    try {
+      final int n = m_channel.read(m_buffer);
+
+      if (n < 0) {
+        m_endOfStream = true;
+      }
+
+      return n;
+    }
+    finally {
+      m_buffer.flip();
+    }
+  }
+
+  /**
+   * Data is only incomplete if a message spans several TCP segments, so we
+   * don't keep a selector open for the life of the stream.
+   */
+  private void waitForData() throws IOException {
+    final Selector selector = Selector.open();
+
+    try {
+      m_channel.register(selector, SelectionKey.OP_READ);
+      selector.select(SELECT_TIME_OUT);
+    }
+    finally {
+      selector.close();
+    }
+
+    if (Thread.currentThread().isInterrupted()) {
+      throw new InterruptedIOException("Interrupted waiting for data");
+    }
+  }
+}
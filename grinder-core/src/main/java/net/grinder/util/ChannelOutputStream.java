@@ -0,0 +1,110 @@
+// Copyright (C) 2013 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.grinder.util;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+
+
+/**
+ * {@link OutputStream} over a {@link SocketChannel} that is in non-blocking
+ * mode. Writes block until all of the data has been passed to the channel, as
+ * for a socket stream.
+ *
+ * @author Philip Aston
+ */
+public final class ChannelOutputStream extends OutputStream {
+
+  /**
+   * How long to wait for the channel to become writable before checking
+   * whether it has been closed.
+   */
+  private static final long SELECT_TIME_OUT = 1000;
+
+  private final SocketChannel m_channel;
+
+  /**
+   * Constructor.
+   *
+   * @param channel
+   *          The channel. Should be in non-blocking mode.
+   */
+  public ChannelOutputStream(SocketChannel channel) {
+    m_channel = channel;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override public void write(int b) throws IOException {
+    write(new byte[] { (byte) b }, 0, 1);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override public synchronized void write(byte[] b, int off, int len)
+    throws IOException {
+
+    final ByteBuffer buffer = ByteBuffer.wrap(b, off, len);
+
+    while (buffer.hasRemaining()) {
+      if (m_channel.write(buffer) == 0) {
+        waitForSpace();
+      }
+    }
+  }
+
+  /**
+   * Close the channel, as closing a socket stream closes the socket.
+   *
+   * @throws IOException If the channel could not be closed.
+   */
+  @Override public void close() throws IOException {
+    m_channel.close();
+  }
+
+  /**
+   * The socket send buffer is only full if the peer is slow to read, so we
+   * don't keep a selector open for the life of the stream.
+   */
+  private void waitForSpace() throws IOException {
+    final Selector selector = Selector.open();
+
+    try {
+      m_channel.register(selector, SelectionKey.OP_WRITE);
+      selector.select(SELECT_TIME_OUT);
+    }
+    finally {
+      selector.close();
+    }
+
+    if (Thread.currentThread().isInterrupted()) {
+      throw new InterruptedIOException("Interrupted waiting to write");
+    }
+  }
+}
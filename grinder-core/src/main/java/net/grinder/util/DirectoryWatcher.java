@@ -0,0 +1,283 @@
+// Copyright (C) 2013 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+
+package net.grinder.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import net.grinder.common.UncheckedInterruptedException;
+
+
+/**
+ * Watches directories for changes, using the platform file watch service on
+ * JVMs that support it.
+ *
+ * <p>
+ * The Grinder is built for older JVMs, so the {@code java.nio.file} API is
+ * accessed reflectively.
+ * </p>
+ *
+ * <p>
+ * Changes to the entries of each registered directory are reported; changes
+ * to sub-directories must be watched by registering them separately.
+ * </p>
+ *
+ * @author Philip Aston
+ */
+public final class DirectoryWatcher {
+
+  private static final Method s_getDefault;
+  private static final Method s_newWatchService;
+  private static final Method s_toPath;
+  private static final Method s_register;
+  private static final Method s_resolve;
+  private static final Method s_toFile;
+  private static final Method s_poll;
+  private static final Method s_close;
+  private static final Method s_pollEvents;
+  private static final Method s_reset;
+  private static final Method s_watchable;
+  private static final Method s_kind;
+  private static final Method s_context;
+  private static final Object s_overflow;
+  private static final Object s_kinds;
+
+  static {
+    Method getDefault = null;
+    Method newWatchService = null;
+    Method toPath = null;
+    Method register = null;
+    Method resolve = null;
+    Method toFile = null;
+    Method poll = null;
+    Method close = null;
+    Method pollEvents = null;
+    Method reset = null;
+    Method watchable = null;
+    Method kind = null;
+    Method context = null;
+    Object overflow = null;
+    Object kinds = null;
+
+    try {
+      final Class<?> fileSystemsClass =
+        Class.forName("java.nio.file.FileSystems");
+      final Class<?> fileSystemClass =
+        Class.forName("java.nio.file.FileSystem");
+      final Class<?> pathClass = Class.forName("java.nio.file.Path");
+      final Class<?> watchServiceClass =
+        Class.forName("java.nio.file.WatchService");
+      final Class<?> watchKeyClass = Class.forName("java.nio.file.WatchKey");
+      final Class<?> watchEventClass =
+        Class.forName("java.nio.file.WatchEvent");
+      final Class<?> kindClass =
+        Class.forName("java.nio.file.WatchEvent$Kind");
+      final Class<?> standardKindsClass =
+        Class.forName("java.nio.file.StandardWatchEventKinds");
+
+      kinds = Array.newInstance(kindClass, 3);
+      Array.set(kinds, 0,
+                standardKindsClass.getField("ENTRY_CREATE").get(null));
+      Array.set(kinds, 1,
+                standardKindsClass.getField("ENTRY_DELETE").get(null));
+      Array.set(kinds, 2,
+                standardKindsClass.getField("ENTRY_MODIFY").get(null));
+      overflow = standardKindsClass.getField("OVERFLOW").get(null);
+
+      getDefault = fileSystemsClass.getMethod("getDefault");
+      newWatchService = fileSystemClass.getMethod("newWatchService");
+      toPath = File.class.getMethod("toPath");
+      register =
+        pathClass.getMethod("register", watchServiceClass, kinds.getClass());
+      resolve = pathClass.getMethod("resolve", pathClass);
+      toFile = pathClass.getMethod("toFile");
+      poll = watchServiceClass.getMethod("poll");
+      close = watchServiceClass.getMethod("close");
+      pollEvents = watchKeyClass.getMethod("pollEvents");
+      reset = watchKeyClass.getMethod("reset");
+      watchable = watchKeyClass.getMethod("watchable");
+      kind = watchEventClass.getMethod("kind");
+      context = watchEventClass.getMethod("context");
+    }
+    catch (final ClassNotFoundException e) {
+      getDefault = null;
+    }
+    catch (final NoSuchMethodException e) {
+      getDefault = null;
+    }
+    catch (final NoSuchFieldException e) {
+      getDefault = null;
+    }
+    catch (final IllegalAccessException e) {
+      getDefault = null;
+    }
+
+    s_getDefault = getDefault;
+    s_newWatchService = newWatchService;
+    s_toPath = toPath;
+    s_register = register;
+    s_resolve = resolve;
+    s_toFile = toFile;
+    s_poll = poll;
+    s_close = close;
+    s_pollEvents = pollEvents;
+    s_reset = reset;
+    s_watchable = watchable;
+    s_kind = kind;
+    s_context = context;
+    s_overflow = overflow;
+    s_kinds = kinds;
+  }
+
+  private final Object m_watchService;
+
+  /**
+   * Whether the JVM supports watching directories.
+   *
+   * @return {@code true} if and only if directory watching is supported.
+   */
+  public static boolean isSupported() {
+    return s_getDefault != null;
+  }
+
+  /**
+   * Constructor.
+   *
+   * @throws IOException
+   *           If the watch service could not be created.
+   * @throws UnsupportedOperationException
+   *           If the JVM does not support directory watching.
+   */
+  public DirectoryWatcher() throws IOException {
+    if (!isSupported()) {
+      throw new UnsupportedOperationException(
+        "Directory watching is not supported by this JVM");
+    }
+
+    m_watchService = invoke(s_newWatchService, invoke(s_getDefault, null));
+  }
+
+  /**
+   * Start watching a directory. Registering a directory that is already
+   * watched has no effect.
+   *
+   * @param directory
+   *          The directory.
+   * @throws IOException
+   *           If the directory could not be watched.
+   */
+  public void register(File directory) throws IOException {
+    invoke(s_register, invoke(s_toPath, directory), m_watchService, s_kinds);
+  }
+
+  /**
+   * Return the files that have changed since the last call, without
+   * blocking.
+   *
+   * <p>
+   * A file is reported if it was created, deleted, or modified. A registered
+   * directory is reported if it can no longer be watched, for example because
+   * it has been deleted. The file names are formed by resolving each entry
+   * against its registered directory.
+   * </p>
+   *
+   * @return The changed files, or {@code null} if the platform lost events
+   *         and some changes might not be reported. The caller should then
+   *         examine the directories itself.
+   * @throws IOException
+   *           If the watch service has failed.
+   */
+  public Set<File> poll() throws IOException {
+    final Set<File> result = new HashSet<File>();
+    boolean lostEvents = false;
+
+    while (true) {
+      final Object key = invoke(s_poll, m_watchService);
+
+      if (key == null) {
+        break;
+      }
+
+      final Object directory = invoke(s_watchable, key);
+
+      for (Object event : (List<?>) invoke(s_pollEvents, key)) {
+        if (s_overflow.equals(invoke(s_kind, event))) {
+          lostEvents = true;
+        }
+        else {
+          result.add(
+            (File) invoke(s_toFile,
+                          invoke(s_resolve, directory,
+                                 invoke(s_context, event))));
+        }
+      }
+
+      if (!(Boolean) invoke(s_reset, key)) {
+        result.add((File) invoke(s_toFile, directory));
+      }
+    }
+
+    return lostEvents ? null : result;
+  }
+
+  /**
+   * Stop watching, and release resources.
+   */
+  public void close() {
+    try {
+      invoke(s_close, m_watchService);
+    }
+    catch (final IOException e) {
+      UncheckedInterruptedException.ioException(e);
+    }
+  }
+
+  private static Object invoke(Method method, Object target, Object... args)
+    throws IOException {
+
+    try {
+      return method.invoke(target, args);
+    }
+    catch (final IllegalAccessException e) {
+      throw new UnsupportedOperationException(e.getMessage(), e);
+    }
+    catch (final InvocationTargetException e) {
+      final Throwable cause = e.getCause();
+
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      }
+      else if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+
+      throw new UnsupportedOperationException(cause.getMessage(), cause);
+    }
+  }
+}
@@ -0,0 +1,316 @@
+// Copyright (C) 2013 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+
+package net.grinder.util;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Serializable;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import net.grinder.common.Closer;
+import net.grinder.common.UncheckedInterruptedException;
+import net.grinder.util.FileContents.FileContentsException;
+
+
+/**
+ * A compressed part of a file, identified by the file's relative name and
+ * the digest of its complete contents.
+ *
+ * <p>
+ * Large files are distributed as a sequence of chunks, so neither end needs
+ * to hold the whole file in memory.
+ * </p>
+ *
+ * @author Philip Aston
+ */
+public final class FileChunk implements Serializable {
+
+  private static final long serialVersionUID = 1L;
+
+  private static final String DIGEST_ALGORITHM = "SHA-1";
+
+  private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+  /** @serial The file name. */
+  private final File m_filename;
+
+  /** @serial Digest of the complete file contents. */
+  private final String m_digest;
+
+  /** @serial Offset of the chunk within the file. */
+  private final long m_offset;
+
+  /** @serial Uncompressed length of the chunk. */
+  private final int m_length;
+
+  /** @serial The compressed chunk data. */
+  private final byte[] m_data;
+
+  /** @serial Whether this is the last chunk of the file. */
+  private final boolean m_last;
+
+  /**
+   * Constructor.
+   *
+   * @param filename
+   *          Relative file name.
+   * @param digest
+   *          Digest of the complete file contents.
+   * @param offset
+   *          Offset of the chunk within the file.
+   * @param buffer
+   *          Buffer holding the chunk data. It is compressed, so the buffer
+   *          can be reused once the constructor returns.
+   * @param length
+   *          Length of the chunk data.
+   * @param last
+   *          Whether this is the last chunk of the file.
+   * @param deflater
+   *          Used to compress the data. Will be reset.
+   * @throws FileContentsException
+   *           If {@code filename} is not relative.
+   */
+  public FileChunk(File filename,
+                   String digest,
+                   long offset,
+                   byte[] buffer,
+                   int length,
+                   boolean last,
+                   Deflater deflater)
+    throws FileContentsException {
+
+    if (filename.isAbsolute()) {
+      throw new FileContentsException(
+        "Original file name '" + filename + "' is not relative");
+    }
+
+    m_filename = filename;
+    m_digest = digest;
+    m_offset = offset;
+    m_length = length;
+    m_last = last;
+
+    deflater.reset();
+    deflater.setInput(buffer, 0, length);
+    deflater.finish();
+
+    byte[] data = new byte[length / 2 + 64];
+    int n = 0;
+
+    while (!deflater.finished()) {
+      if (n == data.length) {
+        data = Arrays.copyOf(data, data.length * 2);
+      }
+
+      n += deflater.deflate(data, n, data.length - n);
+    }
+
+    m_data = Arrays.copyOf(data, n);
+  }
+
+  /**
+   * The relative file name.
+   *
+   * @return The file name.
+   */
+  public File getFilename() {
+    return m_filename;
+  }
+
+  /**
+   * The digest of the complete file contents.
+   *
+   * @return The digest.
+   * @see #createDigest()
+   */
+  public String getDigest() {
+    return m_digest;
+  }
+
+  /**
+   * The offset of the chunk within the file.
+   *
+   * @return The offset.
+   */
+  public long getOffset() {
+    return m_offset;
+  }
+
+  /**
+   * The uncompressed length of the chunk.
+   *
+   * @return The length.
+   */
+  public int getLength() {
+    return m_length;
+  }
+
+  /**
+   * Whether this is the last chunk of the file.
+   *
+   * @return {@code true} if this is the last chunk.
+   */
+  public boolean isLast() {
+    return m_last;
+  }
+
+  /**
+   * Allow unit tests access to the compressed data.
+   *
+   * @return The compressed data.
+   */
+  byte[] getCompressedData() {
+    return m_data;
+  }
+
+  /**
+   * Uncompress the chunk data.
+   *
+   * @param buffer
+   *          Buffer to receive the data. Must be at least
+   *          {@link #getLength()} bytes long.
+   * @throws FileContentsException
+   *           If the data is corrupt.
+   */
+  public void inflate(byte[] buffer) throws FileContentsException {
+    final Inflater inflater = new Inflater();
+
+    try {
+      inflater.setInput(m_data);
+
+      int n = 0;
+
+      while (n < m_length && !inflater.finished()) {
+        final int inflated = inflater.inflate(buffer, n, m_length - n);
+
+        if (inflated == 0 && inflater.needsInput()) {
+          break;
+        }
+
+        n += inflated;
+      }
+
+      if (n != m_length) {
+        throw new FileContentsException(
+          "Chunk of '" + m_filename + "' is truncated");
+      }
+    }
+    catch (DataFormatException e) {
+      throw new FileContentsException(
+        "Chunk of '" + m_filename + "' is corrupt: " + e.getMessage(), e);
+    }
+    finally {
+      inflater.end();
+    }
+  }
+
+  /**
+   * Create a {@code MessageDigest} for calculating file digests.
+   *
+   * @return The message digest.
+   */
+  public static MessageDigest createDigest() {
+    try {
+      return MessageDigest.getInstance(DIGEST_ALGORITHM);
+    }
+    catch (NoSuchAlgorithmException e) {
+      // Every Java platform is required to support SHA-1.
+      throw new AssertionError(e);
+    }
+  }
+
+  /**
+   * Calculate the digest of a file's contents.
+   *
+   * @param file
+   *          The file.
+   * @return The digest, in the form used by {@link #getDigest()}.
+   * @throws FileContentsException
+   *           If the file could not be read.
+   */
+  public static String calculateDigest(File file)
+    throws FileContentsException {
+
+    final MessageDigest messageDigest = createDigest();
+    final byte[] buffer = new byte[65536];
+
+    InputStream in = null;
+
+    try {
+      in = new FileInputStream(file);
+
+      int n;
+
+      while ((n = in.read(buffer)) != -1) {
+        messageDigest.update(buffer, 0, n);
+      }
+    }
+    catch (IOException e) {
+      UncheckedInterruptedException.ioException(e);
+      throw new FileContentsException(
+        "Failed to read file: " + e.getMessage(), e);
+    }
+    finally {
+      Closer.close(in);
+    }
+
+    return digestToString(messageDigest);
+  }
+
+  /**
+   * Complete a digest calculation, and return the result in the form used by
+   * {@link #getDigest()}.
+   *
+   * @param digest
+   *          The message digest.
+   * @return The digest, as a hexadecimal string.
+   */
+  public static String digestToString(MessageDigest digest) {
+    final byte[] bytes = digest.digest();
+    final char[] result = new char[bytes.length * 2];
+
+    for (int i = 0; i < bytes.length; ++i) {
+      result[i * 2] = HEX_DIGITS[(bytes[i] >> 4) & 0xF];
+      result[i * 2 + 1] = HEX_DIGITS[bytes[i] & 0xF];
+    }
+
+    return new String(result);
+  }
+
+  /**
+   * Return a description of the {@code FileChunk}.
+   *
+   * @return The description.
+   */
+  @Override public String toString() {
+    return "\"" + m_filename + "\" (" + m_length + " bytes at " + m_offset +
+           (m_last ? ", last)" : ")");
+  }
+}
@@ -1,4 +1,4 @@
-// Copyright (C) 2004 - 2008 Philip Aston
+// Copyright (C) 2004 - 2013 Philip Aston
 // All rights reserved.
 //
 // This file is part of The Grinder software distribution. Refer to
@@ -145,11 +145,23 @@ public final class FileContents implements Serializable {
    * problem.
    */
   public static final class FileContentsException extends GrinderException {
-    FileContentsException(String message) {
+
+    /**
+     * Constructor.
+     *
+     * @param message The exception message.
+     */
+    public FileContentsException(String message) {
       super(message);
     }
 
-    FileContentsException(String message, Throwable nested) {
+    /**
+     * Constructor.
+     *
+     * @param message The exception message.
+     * @param nested The cause.
+     */
+    public FileContentsException(String message, Throwable nested) {
       super(message, nested);
     }
   }
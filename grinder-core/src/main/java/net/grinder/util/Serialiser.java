@@ -156,6 +156,56 @@ public class Serialiser {
     return result;
   }
 
+  /**
+   * Write a <code>long</code> to a stream in such a way it can be
+   * read by {@link #readVarLong}.
+   *
+   * <p>The value is zig-zag encoded, so that small negative values are
+   * also small, and then written seven bits at a time, least significant
+   * first. Values between -64 and 63 inclusive take one byte; the worst
+   * cases take ten bytes.</p>
+   *
+   * @param output The stream.
+   * @param l Value to write.
+   * @exception IOException If the stream raises an error.
+   */
+  public final void writeVarLong(DataOutput output, long l)
+    throws IOException {
+
+    long v = (l << 1) ^ (l >> 63);
+
+    while ((v & ~0x7FL) != 0) {
+      output.writeByte((int)((v & 0x7F) | 0x80));
+      v >>>= 7;
+    }
+
+    output.writeByte((int)v);
+  }
+
+  /**
+   * Read a <code>long</code> written by {@link #writeVarLong}.
+   *
+   * @param input The stream.
+   * @return The value.
+   * @exception IOException If the stream raises an error, or the value
+   * is malformed.
+   */
+  public final long readVarLong(DataInput input) throws IOException {
+
+    long v = 0;
+
+    for (int shift = 0; shift < 64; shift += 7) {
+      final int b = input.readUnsignedByte();
+      v |= (long)(b & 0x7F) << shift;
+
+      if ((b & 0x80) == 0) {
+        return (v >>> 1) ^ -(v & 1);
+      }
+    }
+
+    throw new IOException("Malformed variable length long");
+  }
+
   /**
    * Write a <code>double</code> to a stream in such a way it can be
    * read by {@link #readDouble}.
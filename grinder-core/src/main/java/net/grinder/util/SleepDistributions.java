@@ -0,0 +1,253 @@
+// Copyright (C) 2013 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+package net.grinder.util;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+
+/**
+ * Standard {@link SleepDistribution}s.
+ *
+ * @author Philip Aston
+ */
+public final class SleepDistributions {
+
+  private SleepDistributions() {
+  }
+
+  /**
+   * Normal distribution.
+   */
+  public static final SleepDistribution NORMAL = new SleepDistribution() {
+    @Override public long sample(final Random random,
+                                 final long meanTime,
+                                 final long sigma) {
+      if (sigma > 0) {
+        return meanTime + (long) (random.nextGaussian() * sigma);
+      }
+
+      return meanTime;
+    }
+
+    @Override public String toString() {
+      return "normal";
+    }
+  };
+
+  /**
+   * Exponential distribution. The time between events that occur
+   * independently at a constant rate. Ignores {@code sigma}.
+   */
+  public static final SleepDistribution EXPONENTIAL = new SleepDistribution() {
+    @Override public long sample(final Random random,
+                                 final long meanTime,
+                                 final long sigma) {
+      // nextDouble() is in [0, 1), so the logarithm is finite.
+      return (long) (-meanTime * Math.log(1 - random.nextDouble()));
+    }
+
+    @Override public String toString() {
+      return "exponential";
+    }
+  };
+
+  /**
+   * Log-normal distribution. Skewed, with a long tail of longer times, and
+   * never negative.
+   */
+  public static final SleepDistribution LOG_NORMAL = new SleepDistribution() {
+    @Override public long sample(final Random random,
+                                 final long meanTime,
+                                 final long sigma) {
+      if (sigma <= 0 || meanTime <= 0) {
+        return meanTime;
+      }
+
+      final double ratio = sigma / (double) meanTime;
+      final double variance = Math.log(1 + ratio * ratio);
+      final double mu = Math.log(meanTime) - variance / 2;
+
+      return (long) Math.exp(mu + Math.sqrt(variance) * random.nextGaussian());
+    }
+
+    @Override public String toString() {
+      return "lognormal";
+    }
+  };
+
+  /**
+   * Look up a standard distribution by name.
+   *
+   * @param name
+   *          {@code normal}, {@code exponential}, or {@code lognormal}.
+   * @return The distribution.
+   * @throws IllegalArgumentException
+   *           If {@code name} is not recognised.
+   */
+  public static SleepDistribution forName(final String name) {
+    for (final SleepDistribution d :
+         new SleepDistribution[] { NORMAL, EXPONENTIAL, LOG_NORMAL, }) {
+      if (d.toString().equalsIgnoreCase(name.trim())) {
+        return d;
+      }
+    }
+
+    throw new IllegalArgumentException(
+      "Unknown sleep distribution '" + name + "'");
+  }
+
+  /**
+   * Create an empirical distribution from a histogram.
+   *
+   * <p>
+   * Each line of the histogram has a time and a weight, separated by a
+   * comma. Blank lines and lines starting with {@code #} are ignored. Times
+   * are chosen with a probability proportional to their weight, and scaled
+   * so that the distribution has the requested mean. The shape of the
+   * histogram is used, but its units are not.
+   * </p>
+   *
+   * @param histogram
+   *          The histogram, in CSV format.
+   * @return The distribution.
+   * @throws IOException
+   *           If the histogram could not be read.
+   * @throws IllegalArgumentException
+   *           If the histogram is badly formed.
+   */
+  public static SleepDistribution empirical(final Reader histogram)
+    throws IOException {
+
+    final BufferedReader reader = new BufferedReader(histogram);
+    final List<double[]> bins = new ArrayList<double[]>();
+
+    int lineNumber = 0;
+    String line;
+
+    while ((line = reader.readLine()) != null) {
+      ++lineNumber;
+      line = line.trim();
+
+      if (line.length() == 0 || line.startsWith("#")) {
+        continue;
+      }
+
+      final String[] fields = line.split(",", -1);
+
+      try {
+        if (fields.length != 2) {
+          throw new NumberFormatException();
+        }
+
+        final double time = Double.parseDouble(fields[0].trim());
+        final double weight = Double.parseDouble(fields[1].trim());
+
+        // Comparisons with NaN are false, so test for the valid range.
+        if (!(time >= 0) || Double.isInfinite(time) ||
+            !(weight >= 0) || Double.isInfinite(weight)) {
+          throw new NumberFormatException();
+        }
+
+        bins.add(new double[] { time, weight });
+      }
+      catch (final NumberFormatException e) {
+        throw new IllegalArgumentException(
+          "Line " + lineNumber + " of histogram should be 'time, weight': " +
+          line);
+      }
+    }
+
+    return new EmpiricalDistribution(bins);
+  }
+
+  private static final class EmpiricalDistribution
+    implements SleepDistribution {
+
+    private final double[] m_times;
+    private final double[] m_cumulativeWeights;
+    private final double m_mean;
+
+    public EmpiricalDistribution(final List<double[]> bins) {
+      m_times = new double[bins.size()];
+      m_cumulativeWeights = new double[bins.size()];
+
+      double total = 0;
+      double weightedTotal = 0;
+
+      for (int i = 0; i < m_times.length; ++i) {
+        final double[] bin = bins.get(i);
+        m_times[i] = bin[0];
+        total += bin[1];
+        weightedTotal += bin[0] * bin[1];
+        m_cumulativeWeights[i] = total;
+      }
+
+      if (total <= 0) {
+        throw new IllegalArgumentException("Histogram has no weight");
+      }
+
+      if (Double.isInfinite(weightedTotal)) {
+        throw new IllegalArgumentException("Histogram values are too large");
+      }
+
+      m_mean = weightedTotal / total;
+    }
+
+    @Override public long sample(final Random random,
+                                 final long meanTime,
+                                 final long sigma) {
+
+      if (m_mean == 0) {
+        return 0;
+      }
+
+      final double target =
+        random.nextDouble() * m_cumulativeWeights[m_times.length - 1];
+
+      // Find the first bin whose cumulative weight exceeds the target. Bins
+      // with no weight are never chosen.
+      int low = 0;
+      int high = m_times.length - 1;
+
+      while (low < high) {
+        final int middle = (low + high) >>> 1;
+
+        if (m_cumulativeWeights[middle] > target) {
+          high = middle;
+        }
+        else {
+          low = middle + 1;
+        }
+      }
+
+      return Math.round(m_times[low] * meanTime / m_mean);
+    }
+
+    @Override public String toString() {
+      return "empirical";
+    }
+  }
+}
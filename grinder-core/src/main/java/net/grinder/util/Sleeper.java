@@ -39,6 +39,31 @@ public interface Sleeper extends TimeAuthority {
    */
   void shutdown();
 
+  /**
+   * Sleep for a time drawn from the configured sleep distribution, by default
+   * a pseudo normal distribution. The variation is the same as for
+   * {@link #sleepNormal(long)}.
+   *
+   * @param meanTime
+   *          Mean time.
+   * @throws Sleeper.ShutdownException
+   *           If this {@code Sleeper} has been shutdown.
+   */
+  void sleep(long meanTime) throws Sleeper.ShutdownException;
+
+  /**
+   * Sleep for a time drawn from the configured sleep distribution, by default
+   * a pseudo normal distribution.
+   *
+   * @param meanTime
+   *          Mean time.
+   * @param sigma
+   *          Standard deviation. Ignored by distributions with a fixed shape.
+   * @throws Sleeper.ShutdownException
+   *           If this {@code Sleeper} has been shutdown.
+   */
+  void sleep(long meanTime, long sigma) throws Sleeper.ShutdownException;
+
   /**
    * Sleep for a time based on the meanTime parameter. The actual time is taken
    * from a pseudo normal distribution. Approximately 99.75% of times will be
@@ -74,6 +99,51 @@ public interface Sleeper extends TimeAuthority {
    */
   void sleepFlat(long maximumTime) throws Sleeper.ShutdownException;
 
+  /**
+   * Sleep for a random time drawn from an exponential distribution.
+   *
+   * @param meanTime
+   *          Mean time.
+   * @throws Sleeper.ShutdownException
+   *           If this {@code Sleeper} has been shutdown.
+   */
+  void sleepExponential(long meanTime) throws Sleeper.ShutdownException;
+
+  /**
+   * Sleep for a random time drawn from a log-normal distribution.
+   *
+   * @param meanTime
+   *          Mean time.
+   * @param sigma
+   *          Standard deviation.
+   * @throws Sleeper.ShutdownException
+   *           If this {@code Sleeper} has been shutdown.
+   */
+  void sleepLogNormal(long meanTime, long sigma)
+    throws Sleeper.ShutdownException;
+
+  /**
+   * Seed the calling thread's random sleep times, so that a thread with the
+   * same number draws the same sequence of times each time a test is run
+   * with the same seed. Threads that don't call this method are given an
+   * arbitrary seed.
+   *
+   * @param threadNumber
+   *          The thread number.
+   */
+  void seedThread(int threadNumber);
+
+  /**
+   * Sleep for the given time. Unlike the other methods, the time is not
+   * modified by the sleep time factor.
+   *
+   * @param time
+   *          Time to sleep, in milliseconds.
+   * @throws Sleeper.ShutdownException
+   *           If this {@code Sleeper} has been shutdown.
+   */
+  void sleepExactly(long time) throws Sleeper.ShutdownException;
+
   /**
    * Exception used to indicate that a Sleeper has been shutdown.
    */
@@ -25,9 +25,14 @@ import java.lang.ref.WeakReference;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
 import net.grinder.common.TimeAuthority;
-import net.grinder.util.thread.Condition;
+import net.grinder.common.UncheckedInterruptedException;
 
 import org.slf4j.Logger;
 
@@ -36,13 +41,16 @@ import org.slf4j.Logger;
  * Manage sleeping.
  *
  * <p>Several threads can safely use the same <code>Sleeper</code>.
+ * Each thread draws its sleep times from its own random number generator,
+ * seeded from the <code>Sleeper</code>'s seed, so threads do not contend on
+ * a shared generator.
  * </p>
  *
  * @author Philip Aston
  */
 public final class SleeperImplementation implements Sleeper {
 
-  private static final Random s_random = new Random();
+  private static final AtomicLong s_seedUniquifier = new AtomicLong();
   private static final List<WeakReference<SleeperImplementation>>
     s_allSleepers = new ArrayList<WeakReference<SleeperImplementation>>();
 
@@ -50,8 +58,25 @@ public final class SleeperImplementation implements Sleeper {
   private final double m_factor;
   private final double m_limit9975Factor;
   private final Logger m_logger;
-  private final Condition m_condition = new Condition();
+  private final SleepDistribution m_distribution;
+  private final long m_seed;
 
+  // A lock rather than a monitor, so virtual threads can sleep without
+  // pinning their carrier thread.
+  private final Lock m_lock = new ReentrantLock();
+  private final Condition m_shutdownCondition = m_lock.newCondition();
+
+  private final AtomicLong m_unseededThreads = new AtomicLong();
+
+  private final ThreadLocal<Random> m_random = new ThreadLocal<Random>() {
+    @Override protected Random initialValue() {
+      // Use negative keys, so we don't collide with seeded threads.
+      return new Random(
+        splitSeed(m_seed, -1 - m_unseededThreads.getAndIncrement()));
+    }
+  };
+
+  // Guarded by m_lock.
   private boolean m_shutdown = false;
 
   /**
@@ -66,6 +91,30 @@ public final class SleeperImplementation implements Sleeper {
                                final Logger logger,
                                final double factor,
                                final double limit9975Factor) {
+    this(timeAuthority,
+         logger,
+         factor,
+         limit9975Factor,
+         SleepDistributions.NORMAL,
+         System.nanoTime() + s_seedUniquifier.incrementAndGet());
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param timeAuthority An authority on the current time.
+   * @param logger A logger to chat to. Pass <code>null</code> for no chat.
+   * @param factor All sleep times are modified by this factor.
+   * @param limit9975Factor See {@link #sleepNormal(long)}.
+   * @param distribution The distribution used by {@link #sleep(long)}.
+   * @param seed Seed for the random sleep times.
+   */
+  public SleeperImplementation(final TimeAuthority timeAuthority,
+                               final Logger logger,
+                               final double factor,
+                               final double limit9975Factor,
+                               final SleepDistribution distribution,
+                               final long seed) {
 
     if (factor < 0d || limit9975Factor < 0d) {
       throw new IllegalArgumentException("Factors must be positive");
@@ -79,6 +128,24 @@ public final class SleeperImplementation implements Sleeper {
     m_factor = factor;
     m_limit9975Factor = limit9975Factor;
     m_logger = logger;
+    m_distribution = distribution;
+    m_seed = seed;
+  }
+
+  /**
+   * Derive an independent seed for {@code key} from {@code seed}. Uses the
+   * SplitMix64 mixing function, so that seeds for consecutive keys produce
+   * unrelated sequences.
+   *
+   * @param seed The parent seed.
+   * @param key Identifies the child.
+   * @return The child seed.
+   */
+  public static long splitSeed(final long seed, final long key) {
+    long z = seed + (key + 1) * 0x9E3779B97F4A7C15L;
+    z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+    z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+    return z ^ (z >>> 31);
   }
 
   /**
@@ -102,9 +169,14 @@ public final class SleeperImplementation implements Sleeper {
    */
   @Override public void shutdown() {
 
-    synchronized (m_condition) {
+    m_lock.lock();
+
+    try {
       m_shutdown = true;
-      m_condition.notifyAll();
+      m_shutdownCondition.signalAll();
+    }
+    finally {
+      m_lock.unlock();
     }
   }
 
@@ -115,6 +187,29 @@ public final class SleeperImplementation implements Sleeper {
     return m_timeAuthority.getTimeInMilliseconds();
   }
 
+  /**
+   * {@inheritDoc}
+   */
+  @Override public void seedThread(final int threadNumber) {
+    m_random.set(new Random(splitSeed(m_seed, threadNumber)));
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override public void sleep(final long meanTime) throws ShutdownException {
+    sleep(meanTime, (long)((meanTime * m_limit9975Factor) / 3.0));
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override public void sleep(final long meanTime, final long sigma)
+    throws ShutdownException {
+
+    sleep(m_distribution, meanTime, sigma);
+  }
+
   /**
    * {@inheritDoc}
    */
@@ -130,15 +225,36 @@ public final class SleeperImplementation implements Sleeper {
   @Override public void sleepNormal(final long meanTime, final long sigma)
     throws ShutdownException {
 
+    sleep(SleepDistributions.NORMAL, meanTime, sigma);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override public void sleepExponential(final long meanTime)
+    throws ShutdownException {
+
+    sleep(SleepDistributions.EXPONENTIAL, meanTime, 0);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override public void sleepLogNormal(final long meanTime, final long sigma)
+    throws ShutdownException {
+
+    sleep(SleepDistributions.LOG_NORMAL, meanTime, sigma);
+  }
+
+  private void sleep(final SleepDistribution distribution,
+                     final long meanTime,
+                     final long sigma)
+    throws ShutdownException {
+
     checkShutdown();
 
     if (meanTime > 0) {
-      if (sigma > 0) {
-        doSleep(meanTime + (long) (s_random.nextGaussian() * sigma));
-      }
-      else {
-        doSleep(meanTime);
-      }
+      doSleep(distribution.sample(m_random.get(), meanTime, sigma));
     }
   }
 
@@ -151,7 +267,20 @@ public final class SleeperImplementation implements Sleeper {
     checkShutdown();
 
     if (maximumTime > 0) {
-      doSleep(Math.abs(s_random.nextLong()) % maximumTime);
+      doSleep(Math.abs(m_random.get().nextLong()) % maximumTime);
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override public void sleepExactly(final long time)
+      throws ShutdownException {
+
+    checkShutdown();
+
+    if (time > 0) {
+      sleepUntil(m_timeAuthority.getTimeInMilliseconds() + time);
     }
   }
 
@@ -159,31 +288,48 @@ public final class SleeperImplementation implements Sleeper {
 
     final long factoredTime = (long)(time * m_factor);
 
-    if (m_logger != null) {
-      m_logger.info("sleeping for {} ms", factoredTime);
+    if (m_logger != null && m_logger.isDebugEnabled()) {
+      m_logger.debug("sleeping for {} ms", factoredTime);
     }
 
     if (time > 0) {
-      long currentTime = m_timeAuthority.getTimeInMilliseconds();
-      final long wakeUpTime = currentTime + factoredTime;
+      sleepUntil(m_timeAuthority.getTimeInMilliseconds() + factoredTime);
+    }
+  }
 
-      while (currentTime < wakeUpTime) {
-        synchronized (m_condition) {
-          checkShutdown();
-          m_condition.waitNoInterrruptException(wakeUpTime - currentTime);
-        }
+  private void sleepUntil(final long wakeUpTime) throws ShutdownException {
+    long currentTime = m_timeAuthority.getTimeInMilliseconds();
 
-        currentTime = m_timeAuthority.getTimeInMilliseconds();
+    while (currentTime < wakeUpTime) {
+      m_lock.lock();
+
+      try {
+        checkShutdown();
+        m_shutdownCondition.await(wakeUpTime - currentTime,
+                                  TimeUnit.MILLISECONDS);
+      }
+      catch (final InterruptedException e) {
+        throw new UncheckedInterruptedException(e);
       }
+      finally {
+        m_lock.unlock();
+      }
+
+      currentTime = m_timeAuthority.getTimeInMilliseconds();
     }
   }
 
   private void checkShutdown() throws ShutdownException {
 
-    synchronized (m_condition) {
+    m_lock.lock();
+
+    try {
       if (m_shutdown) {
         throw new ShutdownException("Shut down");
       }
     }
+    finally {
+      m_lock.unlock();
+    }
   }
 }
@@ -1,4 +1,4 @@
-// Copyright (C) 2011 Philip Aston
+// Copyright (C) 2011 - 2013 Philip Aston
 // All rights reserved.
 //
 // This file is part of The Grinder software distribution. Refer to
@@ -23,8 +23,11 @@ package net.grinder.util.thread;
 
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
 
@@ -70,6 +73,32 @@ public class ExecutorFactory {
                                         new NamedThreadFactory(name));
   }
 
+  /**
+   * Create a thread pool whose threads exit when they have been idle for a
+   * second. Suitable for work that comes in bursts, where the pool might
+   * not be shut down.
+   *
+   * @param name
+   *          Pool name.
+   * @param numberOfThreads
+   *          The maximum number of threads.
+   * @return The thread pool.
+   */
+  public static ExecutorService createTransientThreadPool(
+    String name, int numberOfThreads) {
+
+    final ThreadPoolExecutor result =
+      new ThreadPoolExecutor(numberOfThreads,
+                             numberOfThreads,
+                             1,
+                             TimeUnit.SECONDS,
+                             new LinkedBlockingQueue<Runnable>(),
+                             new NamedThreadFactory(name));
+    result.allowCoreThreadTimeOut(true);
+
+    return result;
+  }
+
   /**
    * Create a cached thread pool.
    *
@@ -26,6 +26,7 @@ import static java.util.Collections.nCopies;
 import java.lang.instrument.ClassFileTransformer;
 import java.lang.instrument.IllegalClassFormatException;
 import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.security.ProtectionDomain;
@@ -65,6 +66,7 @@ public final class ASMTransformerFactory
   implements ClassFileTransformerFactory {
 
   private final String m_adviceClass;
+  private final Method m_slotMethod;
 
   /**
    * Constructor.
@@ -93,6 +95,34 @@ public final class ASMTransformerFactory
    *                         boolean success);
    * </pre>
    *
+   * <p>
+   * The advice class can also provide a {@code slot} method that assigns a
+   * number to each location, and versions of the {@code enter} and {@code
+   * exit} methods that take the number in place of the location string. If
+   * these are all present, the generated code uses them, and the advice
+   * class can find its state with an array index rather than a map lookup.
+   * </p>
+   *
+   * <pre>
+   * public static int slot(String location);
+   *
+   * public static void enter(Object reference,
+   *                          int slot);
+   *
+   * public static void exit(Object reference,
+   *                         int slot,
+   *                         boolean success);
+   *
+   * public static void enter(Object reference,
+   *                          Object reference2,
+   *                          int slot);
+   *
+   * public static void exit(Object reference,
+   *                         Object reference2,
+   *                         int slot,
+   *                         boolean success);
+   * </pre>
+   *
    * @param adviceClass
    *          Class that provides the advice.
    * @throws WeavingException
@@ -136,6 +166,48 @@ public final class ASMTransformerFactory
     }
 
     m_adviceClass = Type.getInternalName(adviceClass);
+    m_slotMethod = getSlotMethod(adviceClass);
+  }
+
+  private static Method getSlotMethod(final Class<?> adviceClass) {
+    try {
+      final Method[] methods = {
+        adviceClass.getMethod("slot",
+                              String.class),
+        adviceClass.getMethod("enter",
+                              Object.class,
+                              Integer.TYPE),
+        adviceClass.getMethod("exit",
+                              Object.class,
+                              Integer.TYPE,
+                              Boolean.TYPE),
+        adviceClass.getMethod("enter",
+                              Object.class,
+                              Object.class,
+                              Integer.TYPE),
+        adviceClass.getMethod("exit",
+                              Object.class,
+                              Object.class,
+                              Integer.TYPE,
+                              Boolean.TYPE),
+      };
+
+      for (final Method m : methods) {
+        if (!Modifier.isStatic(m.getModifiers())) {
+          return null;
+        }
+      }
+
+      if (methods[0].getReturnType() != Integer.TYPE) {
+        return null;
+      }
+
+      return methods[0];
+    }
+    catch (final NoSuchMethodException e) {
+      // Fall back to location strings.
+      return null;
+    }
   }
 
   /**
@@ -234,6 +306,9 @@ public final class ASMTransformerFactory
         }
       }
 
+      final Map<String, Integer> locationToSlot =
+        getSlots(nameAndDescriptionToWeavingDetails);
+
       final ClassReader classReader = new ClassReader(originalBytes);
 
       final ClassWriter classWriter =
@@ -248,7 +323,8 @@ public final class ASMTransformerFactory
       visitorChain = new AddAdviceClassAdapter(
                            visitorChain,
                            Type.getType("L" + internalClassName + ";"),
-                           nameAndDescriptionToWeavingDetails);
+                           nameAndDescriptionToWeavingDetails,
+                           locationToSlot);
 
       // Uncomment to see the original code:
 //      visitorChain =
@@ -258,6 +334,43 @@ public final class ASMTransformerFactory
 
       return classWriter.toByteArray();
     }
+
+    /**
+     * Ask the advice class for the slot numbers of the locations we are
+     * about to weave.
+     *
+     * @return Map of location to slot, or {@code null} if the advice class
+     * doesn't use slots.
+     */
+    private Map<String, Integer> getSlots(
+      final Map<Pair<String, String>, List<WeavingDetails>> weavingDetails)
+      throws IllegalClassFormatException {
+
+      if (m_slotMethod == null) {
+        return null;
+      }
+
+      final Map<String, Integer> result = new HashMap<String, Integer>();
+
+      for (final List<WeavingDetails> list : weavingDetails.values()) {
+        for (final WeavingDetails details : list) {
+          final String location = details.getLocation();
+
+          try {
+            result.put(location, (Integer) m_slotMethod.invoke(null, location));
+          }
+          catch (final IllegalAccessException e) {
+            throw new IllegalClassFormatException(e.getMessage());
+          }
+          catch (final InvocationTargetException e) {
+            throw new IllegalClassFormatException(
+              e.getTargetException().toString());
+          }
+        }
+      }
+
+      return result;
+    }
   }
 
   private final class AddAdviceClassAdapter extends ClassAdapter {
@@ -265,15 +378,18 @@ public final class ASMTransformerFactory
     private final Type m_internalClassType;
     private final Map<Pair<String, String>,
                       List<WeavingDetails>> m_weavingDetails;
+    private final Map<String, Integer> m_locationToSlot;
 
     private AddAdviceClassAdapter(
       final ClassVisitor classVisitor,
       final Type internalClassType,
-      final Map<Pair<String, String>, List<WeavingDetails>> weavingDetails) {
+      final Map<Pair<String, String>, List<WeavingDetails>> weavingDetails,
+      final Map<String, Integer> locationToSlot) {
 
       super(classVisitor);
       m_internalClassType = internalClassType;
       m_weavingDetails = weavingDetails;
+      m_locationToSlot = locationToSlot;
     }
 
     @Override
@@ -312,7 +428,8 @@ public final class ASMTransformerFactory
                                        m_internalClassType,
                                        access,
                                        name,
-                                       weavingDetails);
+                                       weavingDetails,
+                                       m_locationToSlot);
       }
 
       return defaultVisitor;
@@ -400,6 +517,7 @@ public final class ASMTransformerFactory
 
     private final Type m_internalClassType;
     private final List<WeavingDetails> m_weavingDetails;
+    private final Map<String, Integer> m_locationToSlot;
 
     private final Label m_entryLabel = new Label();
     private final Label m_exceptionExitLabel = new Label();
@@ -410,11 +528,29 @@ public final class ASMTransformerFactory
                                 final Type internalClassType,
                                 final int access,
                                 final String name,
-                                final List<WeavingDetails> weavingDetails) {
+                                final List<WeavingDetails> weavingDetails,
+                                final Map<String, Integer> locationToSlot) {
       super(mv);
 
       m_internalClassType = internalClassType;
       m_weavingDetails = weavingDetails;
+      m_locationToSlot = locationToSlot;
+    }
+
+    /**
+     * Push the slot number for the location if we have one, otherwise the
+     * location string.
+     */
+    private Type generateLocation(final WeavingDetails weavingDetails) {
+      final String location = weavingDetails.getLocation();
+
+      if (m_locationToSlot != null) {
+        super.visitLdcInsn(m_locationToSlot.get(location));
+        return Type.INT_TYPE;
+      }
+
+      super.visitLdcInsn(location);
+      return STRING_TYPE;
     }
 
     private void generateTryCatchBlock() {
@@ -447,12 +583,13 @@ public final class ASMTransformerFactory
             getExtractor(targetSource).extract(this);
           }
 
-          super.visitLdcInsn(weavingDetails.getLocation());
+          final Type locationType = generateLocation(weavingDetails);
 
           super.visitMethodInsn(INVOKESTATIC,
                                 m_adviceClass,
                                 "enter",
-                                entryMethodDescriptor(targetSources.size()));
+                                entryMethodDescriptor(targetSources.size(),
+                                                      locationType));
         }
       }
     }
@@ -476,14 +613,15 @@ public final class ASMTransformerFactory
           getExtractor(targetSource).extract(this);
         }
 
-        super.visitLdcInsn(weavingDetails.getLocation());
+        final Type locationType = generateLocation(weavingDetails);
 
         super.visitInsn(success ? ICONST_1 : ICONST_0);
 
         super.visitMethodInsn(INVOKESTATIC,
                               m_adviceClass,
                               "exit",
-                              exitMethodDescriptor(targetSources.size()));
+                              exitMethodDescriptor(targetSources.size(),
+                                                   locationType));
       }
     }
 
@@ -636,18 +774,20 @@ public final class ASMTransformerFactory
     return new ArrayList<Type>(nCopies(numberOfTargets, OBJECT_TYPE));
   }
 
-  private static String entryMethodDescriptor(final int numberOfTargets) {
+  private static String entryMethodDescriptor(final int numberOfTargets,
+                                              final Type locationType) {
     final List<Type> parameters = parameterSignature(numberOfTargets);
-    parameters.add(STRING_TYPE);
+    parameters.add(locationType);
 
     return Type.getMethodDescriptor(Type.VOID_TYPE,
                                     parameters.toArray(
                                       new Type[parameters.size()]));
   }
 
-  private static String exitMethodDescriptor(final int numberOfTargets) {
+  private static String exitMethodDescriptor(final int numberOfTargets,
+                                             final Type locationType) {
     final List<Type> parameters = parameterSignature(numberOfTargets);
-    parameters.add(STRING_TYPE);
+    parameters.add(locationType);
     parameters.add(Type.BOOLEAN_TYPE);
 
     return Type.getMethodDescriptor(Type.VOID_TYPE,
@@ -46,7 +46,8 @@ public abstract class AbstractSenderAndReceiverSocketTests
     final int port = findFreePort();
 
     m_connectionType = ConnectionType.AGENT;
-    m_connector = new Connector("localhost", port, m_connectionType);
+    m_connector =
+      new Connector("localhost", port, m_connectionType, getWireFormat());
     m_acceptor =
         new Acceptor("localhost", port, 1, new StandardTimeAuthority());
   }
@@ -57,6 +58,15 @@ public abstract class AbstractSenderAndReceiverSocketTests
     }
   }
 
+  /**
+   * Subclasses can override this to test other wire formats.
+   *
+   * @return The wire format used by the connector.
+   */
+  protected WireFormat getWireFormat() {
+    return WireFormat.SERIALISATION;
+  }
+
   protected final Acceptor getAcceptor() throws Exception {
     return m_acceptor;
   }
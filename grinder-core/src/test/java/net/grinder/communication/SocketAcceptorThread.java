@@ -1,4 +1,4 @@
-// Copyright (C) 2003 - 2012 Philip Aston
+// Copyright (C) 2003 - 2013 Philip Aston
 // All rights reserved.
 //
 // This file is part of The Grinder software distribution. Refer to
@@ -21,6 +21,7 @@
 
 package net.grinder.communication;
 
+import java.io.OutputStream;
 import java.net.InetAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
@@ -28,30 +29,58 @@ import java.net.UnknownHostException;
 
 
 /**
- * Active acceptor that accepts a single connection.
+ * Active acceptor that accepts a single connection, and completes the
+ * {@link Connector} handshake.
  */
 public final class SocketAcceptorThread extends Thread {
 
   private final ServerSocket m_serverSocket;
   private final int m_numberOfAccepts;
+  private final WireFormat m_acceptedFormat;
   private Exception m_exception;
   private Socket m_acceptedSocket;
+  private Connector.ConnectDetails m_connectDetails;
 
   public static SocketAcceptorThread create() throws Exception {
-    final SocketAcceptorThread acceptor = new SocketAcceptorThread(1);
+    return create(null);
+  }
+
+  /**
+   * Create an acceptor that replies to the handshake with a particular
+   * format, irrespective of the format requested.
+   */
+  public static SocketAcceptorThread create(WireFormat acceptedFormat)
+    throws Exception {
+    final SocketAcceptorThread acceptor =
+      new SocketAcceptorThread(1, acceptedFormat);
     acceptor.start();
     return acceptor;
   }
 
-  private SocketAcceptorThread(int numberOfAccepts) throws Exception {
+  private SocketAcceptorThread(int numberOfAccepts, WireFormat acceptedFormat)
+    throws Exception {
     m_serverSocket = new ServerSocket(0);
     m_numberOfAccepts = numberOfAccepts;
+    m_acceptedFormat = acceptedFormat;
   }
 
   public void run() {
     try {
       for (int i=0; i<m_numberOfAccepts; ++i) {
         m_acceptedSocket = m_serverSocket.accept();
+
+        m_connectDetails =
+          Connector.read(m_acceptedSocket.getInputStream());
+
+        if (m_acceptedFormat != null) {
+          final OutputStream out = m_acceptedSocket.getOutputStream();
+          out.write(m_acceptedFormat.getIdentifier());
+          out.flush();
+        }
+        else {
+          Connector.accept(m_acceptedSocket.getOutputStream(),
+                           m_connectDetails);
+        }
       }
     }
     catch (Exception e) {
@@ -71,6 +100,22 @@ public final class SocketAcceptorThread extends Thread {
     return m_acceptedSocket;
   }
 
+  public Connector.ConnectDetails getConnectDetails() {
+    return m_connectDetails;
+  }
+
+  public ConnectionType getConnectionType() {
+    return m_connectDetails.getConnectionType();
+  }
+
+  public Address getAddress() {
+    return m_connectDetails.getAddress();
+  }
+
+  public WireFormat getWireFormat() {
+    return m_connectDetails.getWireFormat();
+  }
+
   public final void close() throws Exception {
 
     join();
@@ -0,0 +1,190 @@
+// Copyright (C) 2013 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.grinder.communication;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.junit.Test;
+
+
+/**
+ * Unit tests for {@link BinaryCodec}.
+ *
+ * @author Philip Aston
+ */
+public class TestBinaryCodec {
+
+  private final MessageCodec m_codec = new BinaryCodec();
+  private final ByteArrayOutputStream m_out = new ByteArrayOutputStream();
+
+  @Test public void testKeepAliveAndClose() throws Exception {
+    m_codec.writeMessage(new KeepAliveMessage(), m_out);
+
+    // Four byte length, one byte kind.
+    assertEquals(5, m_out.size());
+
+    m_codec.writeMessage(new CloseCommunicationMessage(), m_out);
+
+    final InputStream in = new ByteArrayInputStream(m_out.toByteArray());
+
+    assertTrue(m_codec.readMessage(in) instanceof KeepAliveMessage);
+    assertTrue(m_codec.readMessage(in) instanceof CloseCommunicationMessage);
+    assertEquals(-1, in.read());
+  }
+
+  @Test public void testBinaryMessage() throws Exception {
+    m_codec.writeMessage(new MyBinaryMessage(-1234567890123L), m_out);
+    m_codec.writeMessage(new MyBinaryMessage(99), m_out);
+
+    final InputStream in = new ByteArrayInputStream(m_out.toByteArray());
+
+    assertEquals(-1234567890123L,
+                 ((MyBinaryMessage)m_codec.readMessage(in)).getValue());
+    assertEquals(99, ((MyBinaryMessage)m_codec.readMessage(in)).getValue());
+    assertEquals(-1, in.read());
+  }
+
+  @Test public void testSerialisedMessage() throws Exception {
+    final SimpleMessage message = new SimpleMessage();
+    message.setPayload("payload");
+
+    m_codec.writeMessage(message, m_out);
+    m_codec.writeMessage(new KeepAliveMessage(), m_out);
+
+    final InputStream in = new ByteArrayInputStream(m_out.toByteArray());
+
+    final SimpleMessage received = (SimpleMessage)m_codec.readMessage(in);
+    assertEquals(message, received);
+    assertEquals("payload", received.getPayload());
+
+    // The serialised message doesn't consume the next frame.
+    assertTrue(m_codec.readMessage(in) instanceof KeepAliveMessage);
+  }
+
+  @Test public void testBadFrames() throws Exception {
+    assertBadFrame(new byte[] { 0, 0, 0, 0 });
+    assertBadFrame(new byte[] { (byte)0xFF, 0, 0, 0 });
+    assertBadFrame(new byte[] { 0, 0, 0, 1, 99 });
+
+    // Too long. Rejected before the body is allocated.
+    assertBadFrame(new byte[] { 0x7F, (byte)0xFF, (byte)0xFF, (byte)0xFF });
+
+    // Truncated.
+    assertBadFrame(new byte[] { 0, 0, 0, 9, 1 });
+  }
+
+  @Test public void testNotABinaryMessage() throws Exception {
+    assertBadFrame(binaryMessageFrame(SimpleMessage.class.getName()));
+  }
+
+  @Test public void testNotABinaryMessageIsNotInitialised() throws Exception {
+    assertBadFrame(binaryMessageFrame(
+      NotInitialised.class.getName()));
+
+    assertFalse(s_initialised);
+  }
+
+  private static byte[] binaryMessageFrame(String className)
+    throws IOException {
+    final ByteArrayOutputStream body = new ByteArrayOutputStream();
+    final DataOutputStream out = new DataOutputStream(body);
+    out.writeByte(3);
+    out.writeUTF(className);
+    out.close();
+
+    final ByteArrayOutputStream frame = new ByteArrayOutputStream();
+    new DataOutputStream(frame).writeInt(body.size());
+    body.writeTo(frame);
+
+    return frame.toByteArray();
+  }
+
+  @Test public void testNoDataInputConstructor() throws Exception {
+    m_codec.writeMessage(new NoConstructorMessage(), m_out);
+
+    assertBadFrame(m_out.toByteArray());
+  }
+
+  @Test public void testReadFailure() throws Exception {
+    m_codec.writeMessage(new MyBinaryMessage(1), m_out);
+
+    final byte[] bytes = m_out.toByteArray();
+
+    // Shorten the frame so the message body is truncated.
+    bytes[3] -= 4;
+
+    assertBadFrame(bytes);
+  }
+
+  private void assertBadFrame(byte[] bytes) throws Exception {
+    try {
+      m_codec.readMessage(new ByteArrayInputStream(bytes));
+      fail("Expected IOException");
+    }
+    catch (IOException e) {
+    }
+  }
+
+  public static final class MyBinaryMessage implements BinaryMessage {
+    private final long m_value;
+
+    public MyBinaryMessage(long value) {
+      m_value = value;
+    }
+
+    public MyBinaryMessage(DataInput in) throws IOException {
+      m_value = in.readLong();
+    }
+
+    public long getValue() {
+      return m_value;
+    }
+
+    @Override public void writeBinary(DataOutput out) throws IOException {
+      out.writeLong(m_value);
+    }
+  }
+
+  private static boolean s_initialised;
+
+  public static final class NotInitialised {
+    static {
+      s_initialised = true;
+    }
+  }
+
+  public static final class NoConstructorMessage implements BinaryMessage {
+    @Override public void writeBinary(DataOutput out) throws IOException {
+    }
+  }
+}
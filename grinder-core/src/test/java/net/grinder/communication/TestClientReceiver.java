@@ -1,4 +1,4 @@
-// Copyright (C) 2003 - 2012 Philip Aston
+// Copyright (C) 2003 - 2013 Philip Aston
 // All rights reserved.
 //
 // This file is part of The Grinder software distribution. Refer to
@@ -26,7 +26,6 @@ import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.fail;
 
-import java.io.InputStream;
 import java.io.ObjectOutputStream;
 import java.io.OutputStream;
 import java.net.Socket;
@@ -60,7 +59,7 @@ public class TestClientReceiver {
     final Socket acceptedSocket = socketAcceptor.getAcceptedSocket();
 
     assertConnection(
-      acceptedSocket.getInputStream(), ConnectionType.AGENT, address);
+      socketAcceptor.getConnectDetails(), ConnectionType.AGENT, address);
 
     final OutputStream socketOutput = acceptedSocket.getOutputStream();
 
@@ -94,10 +93,9 @@ public class TestClientReceiver {
     }
   }
 
-  private void assertConnection(InputStream in,
+  private void assertConnection(ConnectDetails details,
                                 ConnectionType type,
                                 Address address) throws Exception {
-    final ConnectDetails details = Connector.read(in);
     assertEquals(type, details.getConnectionType());
     assertEquals(address, details.getAddress());
   }
@@ -118,7 +116,7 @@ public class TestClientReceiver {
 
     final Socket acceptedSocket = socketAcceptor.getAcceptedSocket();
     assertConnection(
-      acceptedSocket.getInputStream(), ConnectionType.AGENT, address);
+      socketAcceptor.getConnectDetails(), ConnectionType.AGENT, address);
 
     final OutputStream socketOutput = acceptedSocket.getOutputStream();
 
@@ -156,7 +154,7 @@ public class TestClientReceiver {
     final Socket acceptedSocket = socketAcceptor.getAcceptedSocket();
 
     assertConnection(
-      acceptedSocket.getInputStream(), ConnectionType.AGENT, address);
+      socketAcceptor.getConnectDetails(), ConnectionType.AGENT, address);
 
     final OutputStream socketOutput = acceptedSocket.getOutputStream();
 
@@ -1,4 +1,4 @@
-// Copyright (C) 2003 - 2012 Philip Aston
+// Copyright (C) 2003 - 2013 Philip Aston
 // All rights reserved.
 //
 // This file is part of The Grinder software distribution. Refer to
@@ -68,7 +68,7 @@ public class TestClientSender {
       socketAcceptor.getAcceptedSocket().getInputStream();
 
     assertEquals(ConnectionType.AGENT,
-                 Connector.read(socketInput).getConnectionType());
+                 socketAcceptor.getConnectDetails().getConnectionType());
 
     // Need an ObjectInputStream for every message. See note in
     // ClientSender.writeMessage.
@@ -122,7 +122,7 @@ public class TestClientSender {
       socketAcceptor.getAcceptedSocket().getInputStream();
 
     assertEquals(ConnectionType.AGENT,
-                 Connector.read(socketInput).getConnectionType());
+                 socketAcceptor.getConnectDetails().getConnectionType());
 
     final ObjectInputStream inputStream1 = new ObjectInputStream(socketInput);
     final Object o1 = inputStream1.readObject();
@@ -177,7 +177,7 @@ public class TestClientSender {
     final Socket remoteSocket = socketAcceptor.getAcceptedSocket();
     final InputStream inputStream = remoteSocket.getInputStream();
     assertEquals(ConnectionType.AGENT,
-                 Connector.read(inputStream).getConnectionType());
+                 socketAcceptor.getConnectDetails().getConnectionType());
 
     new Thread(
       new StreamCopier(1000, true).getRunnable(inputStream,
@@ -232,7 +232,7 @@ public class TestClientSender {
     final OutputStream socketOutput = acceptedSocket.getOutputStream();
 
     assertEquals(ConnectionType.AGENT,
-                 Connector.read(socketInput).getConnectionType());
+                 socketAcceptor.getConnectDetails().getConnectionType());
 
     final SimpleMessage message1 = new SimpleMessage();
 
@@ -23,13 +23,18 @@ package net.grinder.communication;
 
 import static net.grinder.testutility.AssertUtilities.assertContains;
 import static net.grinder.testutility.AssertUtilities.assertNotEquals;
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.fail;
 
+import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
 import java.io.ObjectOutputStream;
 import java.io.PipedInputStream;
 import java.io.PipedOutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
 import java.net.Socket;
 
 import net.grinder.testutility.IsolatedObjectFactory;
@@ -58,8 +63,9 @@ public class TestConnector {
     final Socket serverSocket = socketAcceptor.getAcceptedSocket();
     final InputStream inputStream = serverSocket.getInputStream();
 
-    assertEquals(ConnectionType.WORKER,
-                 Connector.read(inputStream).getConnectionType());
+    final Connector.ConnectDetails details = socketAcceptor.getConnectDetails();
+    assertEquals(ConnectionType.WORKER, details.getConnectionType());
+    assertEquals(WireFormat.SERIALISATION, details.getWireFormat());
 
     final byte[] text = "Hello".getBytes();
 
@@ -90,6 +96,121 @@ public class TestConnector {
     }
   }
 
+  @Test public void testConnectBinary() throws Exception {
+    final SocketAcceptorThread socketAcceptor = SocketAcceptorThread.create();
+
+    final Connector connector =
+      new Connector(socketAcceptor.getHostName(), socketAcceptor.getPort(),
+                    ConnectionType.AGENT, WireFormat.BINARY);
+
+    assertEquals(WireFormat.BINARY, connector.getWireFormat());
+
+    final StubAddress address = new StubAddress();
+    final Socket localSocket = connector.connect(address);
+
+    socketAcceptor.join();
+
+    final Connector.ConnectDetails details = socketAcceptor.getConnectDetails();
+
+    assertEquals(ConnectionType.AGENT, details.getConnectionType());
+    assertEquals(address, details.getAddress());
+    assertEquals(WireFormat.BINARY, details.getWireFormat());
+
+    localSocket.close();
+    socketAcceptor.close();
+  }
+
+  @Test public void testConnectWithDowngradedFormat() throws Exception {
+    final SocketAcceptorThread socketAcceptor =
+      SocketAcceptorThread.create(WireFormat.SERIALISATION);
+
+    final Connector connector =
+      new Connector(socketAcceptor.getHostName(), socketAcceptor.getPort(),
+                    ConnectionType.AGENT, WireFormat.BINARY);
+
+    try {
+      connector.connect();
+      fail("Expected CommunicationException");
+    }
+    catch (final CommunicationException e) {
+    }
+
+    socketAcceptor.close();
+  }
+
+  @Test public void testConnectSocketWrapper() throws Exception {
+    final SocketAcceptorThread socketAcceptor =
+      SocketAcceptorThread.create(WireFormat.SERIALISATION);
+
+    final Connector connector =
+      new Connector(socketAcceptor.getHostName(), socketAcceptor.getPort(),
+                    ConnectionType.AGENT, WireFormat.BINARY);
+
+    final SocketWrapper socketWrapper = connector.connectSocketWrapper(null);
+
+    socketAcceptor.join();
+
+    assertEquals(WireFormat.BINARY, socketAcceptor.getWireFormat());
+
+    // The wrapper uses the format chosen by the acceptor.
+    assertSame(WireFormat.SERIALISATION.getCodec(), socketWrapper.getCodec());
+
+    socketWrapper.close();
+    socketAcceptor.close();
+  }
+
+  @Test public void testConnectNoReply() throws Exception {
+    final ServerSocket serverSocket = new ServerSocket(0);
+
+    final Thread closer = new Thread() {
+        @Override public void run() {
+          try {
+            final Socket socket = serverSocket.accept();
+            Connector.read(socket.getInputStream());
+            socket.close();
+          }
+          catch (final Exception e) {
+            e.printStackTrace();
+          }
+        }
+      };
+
+    closer.start();
+
+    final Connector connector =
+      new Connector(InetAddress.getByName(null).getHostName(),
+                    serverSocket.getLocalPort(),
+                    ConnectionType.AGENT);
+
+    try {
+      connector.connectSocketWrapper(null);
+      fail("Expected CommunicationException");
+    }
+    catch (final CommunicationException e) {
+    }
+
+    closer.join();
+    serverSocket.close();
+  }
+
+  @Test public void testReadUnsupportedFormat() throws Exception {
+    final PipedOutputStream out = new PipedOutputStream();
+    final PipedInputStream in = new PipedInputStream(out);
+
+    final ObjectOutputStream objectStream = new ObjectOutputStream(out);
+    objectStream.writeObject(ConnectionType.WORKER);
+    objectStream.writeObject(null);
+    objectStream.writeByte(99);
+    objectStream.flush();
+
+    final Connector.ConnectDetails details = Connector.read(in);
+    assertEquals(WireFormat.SERIALISATION, details.getWireFormat());
+
+    final ByteArrayOutputStream reply = new ByteArrayOutputStream();
+    Connector.accept(reply, details);
+    assertArrayEquals(new byte[] { 0 }, reply.toByteArray());
+  }
+
   @Test public void testBadRead() throws Exception {
     final PipedOutputStream out = new PipedOutputStream();
     final PipedInputStream in = new PipedInputStream(out);
@@ -149,6 +270,7 @@ public class TestConnector {
       new Connector("a", 6423, ConnectionType.WORKER),
       new Connector("b", 1234, ConnectionType.WORKER),
       new Connector("a", 1234, ConnectionType.AGENT),
+      new Connector("a", 1234, ConnectionType.WORKER, WireFormat.BINARY),
     };
 
     for (final Connector element : equal) {
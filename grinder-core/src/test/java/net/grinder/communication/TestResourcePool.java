@@ -307,6 +307,33 @@ public class TestResourcePool {
     assertEquals(0, resourcePool.countActive());
   }
 
+  @Test public void testReserve() throws Exception {
+
+    final ResourcePool resourcePool = new ResourcePoolImplementation();
+
+    final MyResource resource1 = new MyResource();
+    final MyResource resource2 = new MyResource();
+
+    resourcePool.add(resource1);
+
+    assertNull(resourcePool.reserve(resource2));
+
+    final ResourcePool.Reservation reservation1 =
+      resourcePool.reserve(resource1);
+    assertSame(resource1, reservation1.getResource());
+    assertNull(resourcePool.reserve(resource1));
+
+    // The reservation is shared with reserveNext().
+    assertTrue(resourcePool.reserveNext().isSentinel());
+
+    reservation1.free();
+    assertSame(reservation1, resourcePool.reserve(resource1));
+
+    reservation1.close();
+    assertTrue(resource1.isClosed());
+    assertNull(resourcePool.reserve(resource1));
+  }
+
   private static class MyResource implements ResourcePool.Resource {
 
     private boolean m_closed = false;
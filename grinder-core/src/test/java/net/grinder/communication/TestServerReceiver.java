@@ -27,6 +27,7 @@ import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.io.ByteArrayOutputStream;
 import java.io.ObjectOutputStream;
 import java.net.InetAddress;
 import java.net.Socket;
@@ -341,4 +342,103 @@ public class TestServerReceiver {
     acceptor.shutdown();
     receiver.shutdown();
   }
+
+  @Test public void testLargeMessage() throws Exception {
+    final Acceptor acceptor = new Acceptor("localhost", 0, 1, m_timeAuthority);
+
+    final ServerReceiver serverReceiver = new ServerReceiver();
+    serverReceiver.receiveFrom(
+      acceptor, new ConnectionType[] { ConnectionType.AGENT }, 3, 10, 10000);
+
+    final Socket socket =
+      new Connector(InetAddress.getByName(null).getHostName(),
+                    acceptor.getPort(),
+                    ConnectionType.AGENT)
+      .connect();
+
+    // Larger than the socket buffers, so the message arrives in pieces.
+    final SimpleMessage message = new SimpleMessage(1000000);
+
+    final ObjectOutputStream objectStream =
+      new ObjectOutputStream(socket.getOutputStream());
+    objectStream.writeObject(message);
+    objectStream.flush();
+
+    assertEquals(message, serverReceiver.waitForMessage());
+
+    serverReceiver.shutdown();
+    acceptor.shutdown();
+  }
+
+  @Test public void testMessageAfterMessageRequiringResponse()
+    throws Exception {
+
+    final Acceptor acceptor = new Acceptor("localhost", 0, 1, m_timeAuthority);
+
+    final ServerReceiver serverReceiver = new ServerReceiver();
+    serverReceiver.receiveFrom(
+      acceptor, new ConnectionType[] { ConnectionType.AGENT }, 3, 10, 10000);
+
+    final Socket socket =
+      new Connector(InetAddress.getByName(null).getHostName(),
+                    acceptor.getPort(),
+                    ConnectionType.AGENT)
+      .connect();
+
+    final SimpleMessage message = new SimpleMessage();
+
+    // Both messages arrive together, so the second is buffered whilst the
+    // connection is reserved for the response.
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    final MessageCodec codec = WireFormat.SERIALISATION.getCodec();
+    codec.writeMessage(
+      new MessageRequiringResponse(new SimpleMessage()), bytes);
+    codec.writeMessage(message, bytes);
+
+    socket.getOutputStream().write(bytes.toByteArray());
+
+    final MessageRequiringResponse received =
+      (MessageRequiringResponse)serverReceiver.waitForMessage();
+    received.sendResponse(new SimpleMessage());
+
+    assertEquals(message, serverReceiver.waitForMessage());
+
+    serverReceiver.shutdown();
+    acceptor.shutdown();
+  }
+
+  @Test public void testPeerDisconnect() throws Exception {
+    final Acceptor acceptor = new Acceptor("localhost", 0, 1, m_timeAuthority);
+
+    final ServerReceiver serverReceiver = new ServerReceiver();
+
+    // An inactive client time out that the test won't reach.
+    serverReceiver.receiveFrom(
+      acceptor, new ConnectionType[] { ConnectionType.AGENT }, 3, 10, 100000);
+
+    final Socket socket =
+      new Connector(InetAddress.getByName(null).getHostName(),
+                    acceptor.getPort(),
+                    ConnectionType.AGENT)
+      .connect();
+
+    final ResourcePool socketSet = acceptor.getSocketSet(ConnectionType.AGENT);
+
+    for (int i=0; socketSet.countActive() != 1 && i<10; ++i) {
+      Thread.sleep(i * i * 10);
+    }
+
+    assertEquals(1, socketSet.countActive());
+
+    socket.close();
+
+    for (int i=0; socketSet.countActive() != 0 && i<10; ++i) {
+      Thread.sleep(i * i * 10);
+    }
+
+    assertEquals(0, socketSet.countActive());
+
+    serverReceiver.shutdown();
+    acceptor.shutdown();
+  }
 }
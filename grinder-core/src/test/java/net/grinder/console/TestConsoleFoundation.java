@@ -56,6 +56,7 @@ import net.grinder.console.model.SampleModel;
 import net.grinder.console.model.SampleModelViews;
 import net.grinder.messages.console.RegisterExpressionViewMessage;
 import net.grinder.messages.console.RegisterTestsMessage;
+import net.grinder.messages.console.ReportStatisticsCounter;
 import net.grinder.messages.console.ReportStatisticsMessage;
 import net.grinder.statistics.ExpressionView;
 import net.grinder.statistics.StatisticsServicesImplementation;
@@ -218,7 +219,8 @@ public class TestConsoleFoundation extends AbstractJUnit4FileTestCase {
     new ConsoleFoundation.WireMessageDispatch(m_consoleCommunication,
                                               sampleModel,
                                               sampleModelViews,
-                                              dispatchClientCommands);
+                                              dispatchClientCommands,
+                                              new ReportStatisticsCounter());
 
     verify(m_messageDispatchRegistry).set(eq(RegisterTestsMessage.class),
                                           m_handlerCaptor.capture());
@@ -234,7 +236,14 @@ public class TestConsoleFoundation extends AbstractJUnit4FileTestCase {
     final TestStatisticsMap delta = new TestStatisticsMap();
     m_handlerCaptor.getValue().handle(new ReportStatisticsMessage(delta));
 
-    verify(sampleModel).addTestReport(delta);
+    verify(sampleModel).addTestReport(delta, TimeUnit.MILLISECONDS);
+
+    final TestStatisticsMap microsecondDelta = new TestStatisticsMap();
+
+    m_handlerCaptor.getValue().handle(
+      new ReportStatisticsMessage(microsecondDelta, TimeUnit.MICROSECONDS));
+
+    verify(sampleModel).addTestReport(microsecondDelta, TimeUnit.MICROSECONDS);
 
     verify(m_messageDispatchRegistry).set(
       eq(RegisterExpressionViewMessage.class), m_handlerCaptor.capture());
@@ -1,4 +1,4 @@
-// Copyright (C) 2007 - 2012 Philip Aston
+// Copyright (C) 2007 - 2013 Philip Aston
 // All rights reserved.
 //
 // This file is part of The Grinder software distribution. Refer to
@@ -38,6 +38,7 @@ import net.grinder.communication.CommunicationException;
 import net.grinder.communication.ConnectionType;
 import net.grinder.communication.KeepAliveMessage;
 import net.grinder.communication.SocketAcceptorThread;
+import net.grinder.communication.WireFormat;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -72,13 +73,8 @@ public class TestConsoleConnectionFactory {
 
     socketAcceptor.close();
 
-    final InputStream socketInput =
-      socketAcceptor.getAcceptedSocket().getInputStream();
-
-    final ObjectInputStream objectInputStream =
-      new ObjectInputStream(socketInput);
-
-    assertEquals(ConnectionType.CONSOLE_CLIENT, objectInputStream.readObject());
+    assertEquals(ConnectionType.CONSOLE_CLIENT,
+                 socketAcceptor.getConnectionType());
   }
 
   @Test(expected = ConsoleConnectionException.class)
@@ -116,14 +112,13 @@ public class TestConsoleConnectionFactory {
                                                isA(Long.class),
                                                isA(TimeUnit.class));
 
+    assertEquals(ConnectionType.CONSOLE_CLIENT,
+                 socketAcceptor.getConnectionType());
+    assertNull(socketAcceptor.getAddress());
+    assertEquals(WireFormat.SERIALISATION, socketAcceptor.getWireFormat());
+
     final InputStream socketInput =
       socketAcceptor.getAcceptedSocket().getInputStream();
-
-    final ObjectInputStream objectInputStream =
-      new ObjectInputStream(socketInput);
-
-    assertEquals(ConnectionType.CONSOLE_CLIENT, objectInputStream.readObject());
-    assertNull(objectInputStream.readObject());
     assertEquals(0, socketInput.available());
 
     final Runnable keepAlive = m_runnableCaptor.getValue();
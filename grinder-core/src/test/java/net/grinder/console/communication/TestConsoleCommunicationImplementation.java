@@ -40,6 +40,7 @@ import java.io.ObjectOutputStream;
 import java.net.InetAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.util.Arrays;
 import java.util.TimerTask;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
@@ -73,6 +74,7 @@ import net.grinder.messages.agent.StopGrinderMessage;
 import net.grinder.messages.agent.StubCacheHighWaterMark;
 import net.grinder.messages.console.AgentAddress;
 import net.grinder.messages.console.AgentProcessReportMessage;
+import net.grinder.messages.console.AggregatedReportMessage;
 import net.grinder.messages.console.WorkerAddress;
 import net.grinder.messages.console.WorkerProcessReportMessage;
 import net.grinder.testutility.AbstractJUnit4FileTestCase;
@@ -84,6 +86,7 @@ import net.grinder.util.StandardTimeAuthority;
 
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
@@ -433,8 +436,8 @@ public class TestConsoleCommunicationImplementation
 
     final WorkerProcessReportMessage message =
       new WorkerProcessReportMessage(State.STARTED,
-                                     (short)0,
-                                     (short)0);
+                                     0,
+                                     0);
 
     final Socket workerSocket =
       new StubConnector(InetAddress.getByName(null).getHostName(),
@@ -464,6 +467,42 @@ public class TestConsoleCommunicationImplementation
     verifyNoMoreInteractions(m_messageHandler);
   }
 
+  @Test public void testAggregatedReports() throws Exception {
+    m_consoleCommunication.getMessageDispatchRegistry()
+      .addFallback(m_messageHandler);
+
+    m_processMessagesThread.start();
+
+    final StubAgentIdentity agentIdentity = new StubAgentIdentity("agent");
+    final WorkerAddress workerAddress =
+      new WorkerAddress(agentIdentity.createWorkerIdentity());
+
+    final Socket agentSocket =
+      new StubConnector(InetAddress.getByName(null).getHostName(),
+                        m_properties.getConsolePort(),
+                        ConnectionType.AGENT)
+      .connect(new AgentAddress(agentIdentity));
+
+    sendMessage(agentSocket,
+      new AggregatedReportMessage(
+        Arrays.<Message>asList(
+          new WorkerProcessReportMessage(State.RUNNING, 1, 1),
+          new MyMessage()),
+        Arrays.<Address>asList(workerAddress, null)));
+
+    final ArgumentCaptor<Message> captor =
+      ArgumentCaptor.forClass(Message.class);
+
+    verify(m_messageHandler, timeout(10000).times(2)).handle(captor.capture());
+
+    final WorkerProcessReportMessage report =
+      (WorkerProcessReportMessage) captor.getAllValues().get(0);
+    assertEquals(workerAddress, report.getProcessAddress());
+    assertTrue(captor.getAllValues().get(1) instanceof MyMessage);
+
+    verifyNoMoreInteractions(m_messageHandler);
+  }
+
   @Test public void testSendExceptions() throws Exception {
     // Need a thread to be attempting to process messages or
     // ConsoleCommunicationImplementation.reset() will not complete.
@@ -1,4 +1,4 @@
-// Copyright (C) 2005 - 2012 Philip Aston
+// Copyright (C) 2005 - 2013 Philip Aston
 // All rights reserved.
 //
 // This file is part of The Grinder software distribution. Refer to
@@ -21,9 +21,14 @@
 
 package net.grinder.console.distribution;
 
+import static java.util.Arrays.asList;
+
 import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
 import java.io.File;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
 import java.util.regex.Pattern;
 
 import net.grinder.common.processidentity.ProcessReport;
@@ -279,4 +284,65 @@ public class TestAgentCacheStateImplementation extends AbstractFileTestCase {
       cacheState.getAgentSet().getAddressOfOutOfDateAgents(1000).includes(
         new AgentAddress(agentIdentity1)));
   }
+
+  public void testAgentSetGetAgentsByManifest() throws Exception {
+    final UpdateableAgentCacheState cacheState =
+      new AgentCacheStateImplementation(
+        m_processControl, m_directory, m_pattern);
+
+    final Listener processListener =
+      (Listener) m_processControlStubFactory.assertSuccess(
+        "addProcessStatusListener", Listener.class).getParameters()[0];
+    m_processControlStubFactory.assertNoMoreCalls();
+
+    assertEquals(0, cacheState.getAgentSet().getAgentsByManifest().size());
+
+    final StubAgentIdentity agentIdentity1 = new StubAgentIdentity("agent1");
+    final StubAgentProcessReport agentReport1 =
+      new StubAgentProcessReport(agentIdentity1, ProcessReport.State.RUNNING);
+
+    final StubAgentIdentity agentIdentity2 = new StubAgentIdentity("agent2");
+    final StubAgentProcessReport agentReport2 =
+      new StubAgentProcessReport(agentIdentity2, ProcessReport.State.RUNNING);
+
+    final StubAgentIdentity agentIdentity3 = new StubAgentIdentity("agent3");
+    final StubAgentProcessReport agentReport3 =
+      new StubAgentProcessReport(agentIdentity3, ProcessReport.State.RUNNING);
+
+    final CacheParameters cacheParameters = cacheState.getCacheParameters();
+    agentReport1.setCacheHighWaterMark(
+      cacheParameters.createHighWaterMark(1000, "abc"));
+    agentReport2.setCacheHighWaterMark(
+      cacheParameters.createHighWaterMark(1000, "abc"));
+    agentReport3.setCacheHighWaterMark(
+      cacheParameters.createHighWaterMark(1000));
+
+    processListener.update(new ProcessReports[] {
+      new StubProcessReports(agentReport1, null),
+      new StubProcessReports(agentReport2, null),
+      new StubProcessReports(agentReport3, null),
+    });
+
+    final Map<String, Set<AgentAddress>> agentsByManifest =
+      cacheState.getAgentSet().getAgentsByManifest();
+
+    assertEquals(2, agentsByManifest.size());
+    assertEquals(
+      new HashSet<AgentAddress>(asList(new AgentAddress(agentIdentity1),
+                                       new AgentAddress(agentIdentity2))),
+      agentsByManifest.get("abc"));
+    assertEquals(
+      new HashSet<AgentAddress>(asList(new AgentAddress(agentIdentity3))),
+      agentsByManifest.get(null));
+
+    final AgentSet agentSet = cacheState.getAgentSet();
+    cacheState.setDirectory(new Directory(new File("foo")));
+
+    try {
+      agentSet.getAgentsByManifest();
+      fail("Expected OutOfDateException");
+    }
+    catch (OutOfDateException e) {
+    }
+  }
 }
@@ -24,12 +24,20 @@ package net.grinder.console.distribution;
 import static net.grinder.testutility.AssertUtilities.assertNotEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.util.regex.Pattern;
 
+import net.grinder.common.processidentity.ProcessReport.State;
 import net.grinder.messages.agent.CacheHighWaterMark;
+import net.grinder.messages.console.AgentProcessReportMessage;
 import net.grinder.util.Directory;
 import net.grinder.util.Directory.DirectoryException;
 
@@ -119,10 +127,43 @@ public class TestCacheParametersImplementation {
         public boolean isForSameCache(final CacheHighWaterMark other) {
           return true;
         }
+
+        @Override
+        public void writeBinary(final DataOutput out) {
+        }
       }
     ));
   }
 
+  @Test
+  public void testCacheHighWaterMarkBinary() throws Exception {
+    final CacheParameters cache1 =
+      new CacheParametersImplementation(m_directory1,
+                                        Pattern.compile("a.*",
+                                                        Pattern.DOTALL));
+
+    final CacheHighWaterMark[] marks = {
+      cache1.createHighWaterMark(100),
+      cache1.createHighWaterMark(200, "abc123"),
+    };
+
+    for (final CacheHighWaterMark mark : marks) {
+      final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      final DataOutputStream out = new DataOutputStream(bytes);
+      new AgentProcessReportMessage(State.RUNNING, mark).writeBinary(out);
+      out.close();
+
+      final CacheHighWaterMark received =
+        new AgentProcessReportMessage(
+          new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())))
+        .getCacheHighWaterMark();
+
+      assertEquals(mark, received);
+      assertTrue(received.isForSameCache(mark));
+      assertEquals(cache1.getManifest(mark), cache1.getManifest(received));
+    }
+  }
+
   @Test
   public void testCacheHighWaterMarkEquality() throws Exception {
     final CacheParameters cache1 =
@@ -147,4 +188,27 @@ public class TestCacheParametersImplementation {
     final CacheHighWaterMark d = cache2.createHighWaterMark(100);
     assertNotEquals(a, d);
   }
+
+  @Test
+  public void testManifest() throws Exception {
+    final CacheParameters cache1 =
+        new CacheParametersImplementation(m_directory1, m_pattern1);
+    final CacheParameters cache2 =
+        new CacheParametersImplementation(m_directory1, m_pattern2);
+
+    final CacheHighWaterMark a = cache1.createHighWaterMark(100, "abc");
+    assertEquals(100, a.getTime());
+    assertEquals("abc", cache1.getManifest(a));
+    assertNull(cache2.getManifest(a));
+    assertNull(cache1.getManifest(cache1.createHighWaterMark(100)));
+    assertNull(cache1.getManifest(null));
+
+    assertTrue(a.isForSameCache(cache1.createHighWaterMark(100)));
+    assertNotEquals(a, cache1.createHighWaterMark(100));
+    assertNotEquals(a, cache1.createHighWaterMark(100, "def"));
+
+    final CacheHighWaterMark b = cache1.createHighWaterMark(100, "abc");
+    assertEquals(a, b);
+    assertEquals(a.hashCode(), b.hashCode());
+  }
 }
@@ -0,0 +1,185 @@
+// Copyright (C) 2013 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+
+package net.grinder.console.distribution;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import net.grinder.testutility.AbstractJUnit4FileTestCase;
+import net.grinder.util.FileChunk;
+import net.grinder.util.FileContents.FileContentsException;
+
+import org.junit.Before;
+import org.junit.Test;
+
+
+/**
+ * Unit tests for {@link ContentIndex}.
+ *
+ * @author Philip Aston
+ */
+public class TestContentIndex extends AbstractJUnit4FileTestCase {
+
+  private File m_privateDirectory;
+
+  @Before public void setUp() throws Exception {
+    m_privateDirectory = new File(getDirectory(), ".grinder");
+  }
+
+  private void writeFile(String name, String content, long lastModified)
+    throws IOException {
+
+    final File file = new File(getDirectory(), name);
+    file.getParentFile().mkdirs();
+
+    final OutputStream out = new FileOutputStream(file);
+    out.write(content.getBytes("US-ASCII"));
+    out.close();
+
+    assertTrue(file.setLastModified(lastModified));
+  }
+
+  @Test public void testGetDigest() throws Exception {
+    final ContentIndex index =
+      new ContentIndex(getDirectory(), m_privateDirectory);
+
+    assertEquals(getDirectory(), index.getDirectory());
+
+    writeFile("a", "Hello world", 100000);
+
+    final String digest = index.getDigest(new File("a"));
+    assertEquals(FileChunk.calculateDigest(new File(getDirectory(), "a")),
+                 digest);
+
+    // Unchanged length and modification time, so the file isn't read again.
+    writeFile("a", "Hello World", 100000);
+    assertEquals(digest, index.getDigest(new File("a")));
+
+    writeFile("a", "Hello World", 200000);
+    final String digest2 = index.getDigest(new File("a"));
+    assertFalse(digest.equals(digest2));
+
+    writeFile("a", "Hello world!", 200000);
+    assertFalse(digest2.equals(index.getDigest(new File("a"))));
+
+    try {
+      index.getDigest(new File("missing"));
+      fail("Expected FileContentsException");
+    }
+    catch (FileContentsException e) {
+    }
+  }
+
+  @Test public void testManifests() throws Exception {
+    final ContentIndex index =
+      new ContentIndex(getDirectory(), m_privateDirectory);
+
+    writeFile("a", "Hello world", 100000);
+    writeFile("dir/b", "Goodbye", 100000);
+
+    final SortedMap<String, String> manifest = new TreeMap<String, String>();
+    manifest.put("a", index.getDigest(new File("a")));
+    manifest.put(new File("dir/b").getPath(),
+                 index.getDigest(new File("dir/b")));
+
+    final String id = index.putManifest(manifest);
+    assertEquals(id, index.putManifest(manifest));
+    assertEquals(manifest, index.getManifest(id));
+
+    final SortedMap<String, String> manifest2 =
+      new TreeMap<String, String>(manifest);
+    manifest2.remove("a");
+    final String id2 = index.putManifest(manifest2);
+    assertFalse(id.equals(id2));
+    assertEquals(manifest2, index.getManifest(id2));
+
+    assertNull(index.getManifest("0123456789abcdef"));
+    assertNull(index.getManifest("../../a"));
+
+    // The index survives a restart.
+    final ContentIndex index2 =
+      new ContentIndex(getDirectory(), m_privateDirectory);
+
+    assertEquals(manifest, index2.getManifest(id));
+    assertEquals(manifest2, index2.getManifest(id2));
+
+    // Only the digests of files in the last manifest are saved.
+    writeFile("a", "Hello World", 100000);
+    writeFile("dir/b", "Goodbye", 100000);
+    assertFalse(manifest.get("a").equals(index2.getDigest(new File("a"))));
+    assertEquals(manifest.get(new File("dir/b").getPath()),
+                 index2.getDigest(new File("dir/b")));
+
+    writeFile("dir/b", "Goodbyz", 100000);
+    assertEquals(manifest.get(new File("dir/b").getPath()),
+                 index2.getDigest(new File("dir/b")));
+  }
+
+  @Test public void testPruneManifests() throws Exception {
+    final ContentIndex index =
+      new ContentIndex(getDirectory(), m_privateDirectory);
+
+    String id = null;
+
+    for (int i = 0; i < 20; ++i) {
+      final SortedMap<String, String> manifest =
+        new TreeMap<String, String>();
+      manifest.put("a", Integer.toString(i));
+      id = index.putManifest(manifest);
+    }
+
+    final File manifestsDirectory = new File(m_privateDirectory, "manifests");
+    assertEquals(16, manifestsDirectory.list().length);
+
+    final ContentIndex index2 =
+      new ContentIndex(getDirectory(), m_privateDirectory);
+    assertNotNull(index2.getManifest(id));
+  }
+
+  @Test public void testCorruptIndex() throws Exception {
+    writeFile(".grinder/digests", "rubbish\nabc x y a\n", 100000);
+    writeFile(".grinder/manifests/abcdef", "rubbish\n", 100000);
+    writeFile("a", "Hello world", 100000);
+
+    final ContentIndex index =
+      new ContentIndex(getDirectory(), m_privateDirectory);
+
+    assertEquals(FileChunk.calculateDigest(new File(getDirectory(), "a")),
+                 index.getDigest(new File("a")));
+
+    final Map<String, String> manifest = index.getManifest("abcdef");
+    assertEquals(0, manifest.size());
+  }
+}
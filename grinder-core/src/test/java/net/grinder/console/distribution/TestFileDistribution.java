@@ -1,4 +1,4 @@
-// Copyright (C) 2005 - 2009 Philip Aston
+// Copyright (C) 2005 - 2013 Philip Aston
 // All rights reserved.
 //
 // This file is part of The Grinder software distribution. Refer to
@@ -21,8 +21,15 @@
 
 package net.grinder.console.distribution;
 
+import static java.util.Arrays.asList;
+import static java.util.Collections.singleton;
+
 import java.io.File;
 import java.io.FileFilter;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.util.HashSet;
+import java.util.Set;
 import java.util.regex.Pattern;
 
 import net.grinder.console.communication.DistributionControl;
@@ -149,22 +156,31 @@ public class TestFileDistribution extends AbstractFileTestCase {
     assertTrue(file2.createNewFile());
     assertTrue(file2.setLastModified(file1.lastModified() + 5000));
 
+    // New files are reported, whatever their modification time.
     fileDistribution.scanDistributionFiles();
-    assertEquals(file1.lastModified(),
+    assertEquals(oldFile.lastModified(),
                  agentCacheStateStubFactory.getEarliestOutOfDateTime());
 
     final CallData filesChangedCall2 =
       fileListenerStubFactory.assertSuccess("filesChanged", File[].class);
     final File[] changedFiles2 = (File[])(filesChangedCall2.getParameters()[0]);
-    assertEquals(3, changedFiles2.length);
+    assertEquals(4, changedFiles2.length);
     AssertUtilities.assertArrayContainsAll(
       changedFiles2,
-      new File[] { directory.getFile(), file1, file2 } );
+      new File[] { directory.getFile(), file1, file2, oldFile } );
+
+    fileListenerStubFactory.assertNoMoreCalls();
+
+    // Nothing has changed.
+    agentCacheStateStubFactory.resetOutOfDate();
+    fileDistribution.scanDistributionFiles();
+    assertEquals(Long.MAX_VALUE,
+                 agentCacheStateStubFactory.getEarliestOutOfDateTime());
 
     fileListenerStubFactory.assertNoMoreCalls();
 
-    // Even if the cache has older out of date times, we only scan from the
-    // last scan time.
+    // Even if the cache has older out of date times, we only report the
+    // files that have changed since the last scan.
     final File file4 = new File(getDirectory(), "file4");
     assertTrue(file4.createNewFile());
     agentCacheStateStubFactory.resetOutOfDate();
@@ -210,9 +226,9 @@ public class TestFileDistribution extends AbstractFileTestCase {
       fileListenerStubFactory.assertSuccess("filesChanged", File[].class);
     final File[] changedDirectories =
       (File[])(directoriesChangedCall.getParameters()[0]);
-    assertEquals(3, changedDirectories.length);
+    assertEquals(4, changedDirectories.length);
     AssertUtilities.assertArrayContainsAll(changedDirectories,
-      new File[] { testDirectory, directory1, directory2 } );
+      new File[] { testDirectory, directory1, directory2, oldDirectory } );
 
     fileListenerStubFactory.assertNoMoreCalls();
 
@@ -240,6 +256,108 @@ public class TestFileDistribution extends AbstractFileTestCase {
     FileUtilities.setCanAccess(subdirectory.getFile(), true);
   }
 
+  public void testCheckDistributionFiles() throws Exception {
+    final RandomStubFactory<DistributionControl>
+      distributionControlStubFactory =
+        RandomStubFactory.create(DistributionControl.class);
+
+    final UpdateableAgentCacheStateStubFactory
+      agentCacheStateStubFactory =
+        new UpdateableAgentCacheStateStubFactory();
+
+    final Directory directory = new Directory(getDirectory());
+    agentCacheStateStubFactory.override_setDirectory(null, directory);
+    agentCacheStateStubFactory.override_setFileFilterPattern(
+      null, m_matchIgnoredPattern);
+
+    final FileDistributionImplementation fileDistribution =
+      new FileDistributionImplementation(
+        distributionControlStubFactory.getStub(),
+        agentCacheStateStubFactory.getStub());
+
+    final Set<File> changedFiles = new HashSet<File>();
+
+    fileDistribution.addFileChangedListener(new FileChangedListener() {
+        public void filesChanged(File[] files) {
+          changedFiles.addAll(asList(files));
+        }
+      });
+
+    fileDistribution.checkDistributionFiles();
+    assertEquals(singleton(directory.getFile()), changedFiles);
+
+    changedFiles.clear();
+    fileDistribution.checkDistributionFiles();
+    assertEquals(0, changedFiles.size());
+
+    final File directory1 = new File(getDirectory(), "dir1");
+    assertTrue(directory1.mkdir());
+    final File file1 = new File(directory1, "file1");
+    assertTrue(file1.createNewFile());
+    final File privateDirectory = new File(getDirectory(), ".grinder");
+    assertTrue(privateDirectory.mkdir());
+    assertTrue(new File(privateDirectory, "ignored").createNewFile());
+
+    waitForChanges(fileDistribution, changedFiles,
+                   directory.getFile(), directory1, file1);
+    assertFalse(changedFiles.contains(privateDirectory));
+    assertEquals(file1.lastModified(),
+                 agentCacheStateStubFactory.getEarliestOutOfDateTime());
+
+    // Changes to files in the new directory are noticed.
+    changedFiles.clear();
+    agentCacheStateStubFactory.resetOutOfDate();
+
+    final OutputStream out = new FileOutputStream(file1);
+    out.write(1);
+    out.close();
+    assertTrue(file1.setLastModified(file1.lastModified() + 5000));
+
+    waitForChanges(fileDistribution, changedFiles, file1);
+    assertEquals(file1.lastModified(),
+                 agentCacheStateStubFactory.getEarliestOutOfDateTime());
+
+    // Deleted files are forgotten.
+    changedFiles.clear();
+    assertTrue(file1.delete());
+    assertTrue(directory1.delete());
+
+    waitForChanges(fileDistribution, changedFiles, directory.getFile());
+
+    changedFiles.clear();
+    agentCacheStateStubFactory.resetOutOfDate();
+    assertTrue(directory1.mkdir());
+
+    waitForChanges(fileDistribution, changedFiles, directory1);
+    assertFalse(changedFiles.contains(file1));
+    assertEquals(Long.MAX_VALUE,
+                 agentCacheStateStubFactory.getEarliestOutOfDateTime());
+
+    changedFiles.clear();
+    fileDistribution.scanDistributionFiles();
+    assertEquals(0, changedFiles.size());
+  }
+
+  private static void waitForChanges(FileDistribution fileDistribution,
+                                     Set<File> changedFiles,
+                                     File... expected)
+    throws InterruptedException {
+
+    // File system notifications are asynchronous.
+    for (int i = 0; i < 100; ++i) {
+      fileDistribution.checkDistributionFiles();
+
+      if (changedFiles.containsAll(asList(expected))) {
+        return;
+      }
+
+      Thread.sleep(50);
+    }
+
+    fail("Expected changes to " + asList(expected) +
+         ", but only saw " + changedFiles);
+  }
+
   public static class UpdateableAgentCacheStateStubFactory
     extends RandomStubFactory<UpdateableAgentCacheState> {
 
@@ -1,4 +1,4 @@
-// Copyright (C) 2005 - 2011 Philip Aston
+// Copyright (C) 2005 - 2013 Philip Aston
 // All rights reserved.
 //
 // This file is part of The Grinder software distribution. Refer to
@@ -19,131 +19,386 @@
 // ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
 // OF THE POSSIBILITY OF SUCH DAMAGE.
 
+
 package net.grinder.console.distribution;
 
+import static java.util.Arrays.asList;
 import static net.grinder.testutility.FileUtilities.createRandomFile;
-
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.regex.Pattern;
 
 import net.grinder.communication.Address;
 import net.grinder.console.communication.DistributionControl;
+import net.grinder.engine.agent.StubAgentIdentity;
 import net.grinder.messages.agent.CacheHighWaterMark;
-import net.grinder.testutility.AbstractFileTestCase;
-import net.grinder.testutility.RandomStubFactory;
-import net.grinder.util.FileContents;
+import net.grinder.messages.console.AgentAddress;
+import net.grinder.testutility.AbstractJUnit4FileTestCase;
+import net.grinder.util.Directory;
+import net.grinder.util.FileChunk;
+import net.grinder.util.FileContents.FileContentsException;
+import net.grinder.util.StreamCopier;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
 
 /**
- * Unit test for {@link FileDistributionHandlerImplementation}.
+ * Unit tests for {@link FileDistributionHandlerImplementation}.
  *
  * @author Philip Aston
  */
 public class TestFileDistributionHandlerImplementation
-  extends AbstractFileTestCase {
+  extends AbstractJUnit4FileTestCase {
+
+  private static final Random s_random = new Random();
 
-  private final RandomStubFactory<DistributionControl>
-    m_distributionControlStubFactory =
-      RandomStubFactory.create(DistributionControl.class);
   private final DistributionControl m_distributionControl =
-    m_distributionControlStubFactory.getStub();
+    mock(DistributionControl.class);
+
+  private final AgentSet m_agentSet = mock(AgentSet.class);
 
-  private final RandomStubFactory<AgentSet> m_agentSetStubFactory =
-    RandomStubFactory.create(AgentSet.class);
-  private final AgentSet m_agentSet = m_agentSetStubFactory.getStub();
+  private final Address m_outOfDateAgents = mock(Address.class);
+  private final Address m_allAgents = mock(Address.class);
 
-  private final CacheParameters m_cacheParameters =
-    new CacheParametersImplementation(null, null);
+  private final AgentAddress m_agent1 =
+    new AgentAddress(new StubAgentIdentity("agent1"));
+  private final AgentAddress m_agent2 =
+    new AgentAddress(new StubAgentIdentity("agent2"));
 
-  final File[] m_files = {
+  private CacheParameters m_cacheParameters;
+  private ContentIndex m_contentIndex;
+
+  private final File[] m_files = {
     new File("a"),
     new File("b"),
   };
 
-  protected void setUp() throws Exception {
-    super.setUp();
+  @Before public void setUp() throws Exception {
+    m_cacheParameters =
+      new CacheParametersImplementation(new Directory(getDirectory()),
+                                        Pattern.compile("^$"));
+
+    m_contentIndex =
+      new ContentIndex(getDirectory(), new File(getDirectory(), ".grinder"));
 
-    for (int i = 0; i < m_files.length; ++i) {
-      createRandomFile(new File(getDirectory(), m_files[i].getPath()));
+    for (File file : m_files) {
+      createRandomFile(new File(getDirectory(), file.getPath()));
     }
+
+    when(m_agentSet.getAddressOfOutOfDateAgents(0))
+      .thenReturn(m_outOfDateAgents);
+    when(m_agentSet.getAddressOfAllAgents()).thenReturn(m_allAgents);
   }
 
-  public void testFileDistributionHandlerImplementation() throws Exception {
-    final FileDistributionHandlerImplementation fileDistributionHandler =
-      new FileDistributionHandlerImplementation(
-        m_cacheParameters,
-        getDirectory(),
-        m_files,
-        m_distributionControl,
-        m_agentSet);
+  private FileDistributionHandler createHandler(File... files)
+    throws IOException {
 
-    m_distributionControlStubFactory.assertNoMoreCalls();
+    return new FileDistributionHandlerImplementation(m_cacheParameters,
+                                                     getDirectory(),
+                                                     files,
+                                                     m_distributionControl,
+                                                     m_agentSet,
+                                                     m_contentIndex);
+  }
 
-    final FileDistributionHandler.Result result0 =
-      fileDistributionHandler.sendNextFile();
+  private void agentsHold(String manifest, AgentAddress... agents)
+    throws Exception {
 
-    assertEquals(50, result0.getProgressInCents());
-    assertEquals("a", result0.getFileName());
+    final Map<String, Set<AgentAddress>> agentsByManifest =
+      new HashMap<String, Set<AgentAddress>>();
+    agentsByManifest.put(manifest, new HashSet<AgentAddress>(asList(agents)));
 
-    m_distributionControlStubFactory.assertSuccess(
-      "clearFileCaches", Address.class);
+    doReturn(agentsByManifest).when(m_agentSet).getAgentsByManifest();
+  }
 
-    m_agentSetStubFactory.assertSuccess(
-      "getAddressOfOutOfDateAgents", new Long(0));
+  private static List<FileDistributionHandler.Result> distribute(
+    FileDistributionHandler handler) throws Exception {
 
-    m_distributionControlStubFactory.assertSuccess("sendFile",
-                                                 Address.class,
-                                                 FileContents.class);
+    final List<FileDistributionHandler.Result> result =
+      new ArrayList<FileDistributionHandler.Result>();
 
-    m_agentSetStubFactory.assertSuccess(
-      "getAddressOfOutOfDateAgents",
-      new Long(new File(getDirectory(), m_files[0].getPath()).lastModified()));
+    int lastProgress = 0;
 
-    m_agentSetStubFactory.assertNoMoreCalls();
+    while (true) {
+      final FileDistributionHandler.Result r = handler.sendNextFile();
 
-    final FileDistributionHandler.Result result1 =
-      fileDistributionHandler.sendNextFile();
+      if (r == null) {
+        return result;
+      }
 
-    assertEquals(100, result1.getProgressInCents());
-    assertEquals("b", result1.getFileName());
+      assertTrue(r.getProgressInCents() >= lastProgress);
+      lastProgress = r.getProgressInCents();
 
-    m_distributionControlStubFactory.assertSuccess("sendFile",
-                                                 Address.class,
-                                                 FileContents.class);
+      result.add(r);
+    }
+  }
 
-    m_agentSetStubFactory.assertSuccess(
-      "getAddressOfOutOfDateAgents",
-      new Long(new File(getDirectory(), m_files[1].getPath()).lastModified()));
+  private String getManifestOfHighWaterMark() {
+    final ArgumentCaptor<CacheHighWaterMark> highWaterMarkCaptor =
+      ArgumentCaptor.forClass(CacheHighWaterMark.class);
 
-    m_agentSetStubFactory.assertNoMoreCalls();
+    verify(m_distributionControl, times(1)).setHighWaterMark(
+      any(Address.class), highWaterMarkCaptor.capture());
 
-    final FileDistributionHandler.Result result2 =
-      fileDistributionHandler.sendNextFile();
+    return m_cacheParameters.getManifest(highWaterMarkCaptor.getValue());
+  }
 
-    assertNull(result2);
+  private void createFile(String name, int length) throws IOException {
+    final byte[] bytes = new byte[length];
+    s_random.nextBytes(bytes);
 
-    m_distributionControlStubFactory.assertSuccess(
-      "setHighWaterMark", Address.class, CacheHighWaterMark.class);
-    m_distributionControlStubFactory.assertNoMoreCalls();
+    final OutputStream out =
+      new FileOutputStream(new File(getDirectory(), name));
+    out.write(bytes);
+    out.close();
+  }
 
-    m_agentSetStubFactory.assertSuccess("getAddressOfAllAgents");
+  private byte[] readFile(String name) throws IOException {
+    final ByteArrayOutputStream result = new ByteArrayOutputStream();
+    new StreamCopier(4096, true).copy(
+      new FileInputStream(new File(getDirectory(), name)), result);
+    return result.toByteArray();
+  }
+
+  @Test public void testFileDistributionHandlerImplementation()
+    throws Exception {
+
+    final int chunkSize = FileDistributionHandlerImplementation.CHUNK_SIZE;
+
+    createFile("c", chunkSize * 2 + 1);
+    createFile("d", chunkSize);
+    createFile("e", chunkSize + 1);
+
+    agentsHold(null, m_agent1);
+
+    final FileDistributionHandler handler =
+      createHandler(m_files[0], m_files[1],
+                    new File("c"), new File("d"), new File("e"));
+
+    final List<FileDistributionHandler.Result> results = distribute(handler);
 
-    m_agentSetStubFactory.assertNoMoreCalls();
+    verify(m_distributionControl).clearFileCaches(m_outOfDateAgents);
+    verify(m_distributionControl).setHighWaterMark(
+      any(Address.class), any(CacheHighWaterMark.class));
+
+    final ArgumentCaptor<Address> addressCaptor =
+      ArgumentCaptor.forClass(Address.class);
+    final ArgumentCaptor<FileChunk> chunkCaptor =
+      ArgumentCaptor.forClass(FileChunk.class);
+
+    verify(m_distributionControl, times(8)).sendFileChunk(
+      addressCaptor.capture(), chunkCaptor.capture());
+
+    for (Address address : addressCaptor.getAllValues()) {
+      assertTrue(address.includes(m_agent1));
+      assertFalse(address.includes(m_agent2));
+    }
+
+    // The files in progress are served in turn.
+    final List<String> names = new ArrayList<String>();
+
+    for (FileDistributionHandler.Result result : results) {
+      names.add(result.getFileName());
+    }
+
+    assertEquals(asList("a", "b", "c", "d", "e", "c", "e", "c"), names);
+    assertEquals(100, results.get(results.size() - 1).getProgressInCents());
+
+    // Reassemble the files.
+    final Map<String, ByteArrayOutputStream> contents =
+      new HashMap<String, ByteArrayOutputStream>();
+    final Set<String> complete = new HashSet<String>();
+
+    for (FileChunk chunk : chunkCaptor.getAllValues()) {
+      final String name = chunk.getFilename().getPath();
+
+      if (chunk.getOffset() == 0) {
+        contents.put(name, new ByteArrayOutputStream());
+      }
+
+      final ByteArrayOutputStream out = contents.get(name);
+      assertEquals(out.size(), chunk.getOffset());
+      assertFalse(complete.contains(name));
+
+      final byte[] buffer = new byte[chunk.getLength()];
+      chunk.inflate(buffer);
+      out.write(buffer);
+
+      if (chunk.isLast()) {
+        complete.add(name);
+      }
+
+      assertEquals(
+        FileChunk.calculateDigest(new File(getDirectory(), name)),
+        chunk.getDigest());
+    }
+
+    assertEquals(5, complete.size());
+
+    for (String name : complete) {
+      assertArrayEquals(readFile(name), contents.get(name).toByteArray());
+    }
+
+    final Map<String, String> manifest =
+      m_contentIndex.getManifest(getManifestOfHighWaterMark());
+
+    assertEquals(new HashSet<String>(asList("a", "b", "c", "d", "e")),
+                 manifest.keySet());
   }
 
-  public void testOutOfDateHandler() throws Exception {
+  @Test public void testSkipsFilesAgentsHold() throws Exception {
+    agentsHold(null, m_agent1);
+
+    distribute(createHandler(m_files));
+
+    final String manifest = getManifestOfHighWaterMark();
+    assertNotNull(manifest);
+
+    // Agent 1 holds the manifest, agent 2 has nothing.
+    final Map<String, Set<AgentAddress>> agentsByManifest =
+      new HashMap<String, Set<AgentAddress>>();
+    agentsByManifest.put(manifest,
+                         new HashSet<AgentAddress>(asList(m_agent1)));
+    agentsByManifest.put(null, new HashSet<AgentAddress>(asList(m_agent2)));
+    when(m_agentSet.getAgentsByManifest()).thenReturn(agentsByManifest);
+
+    final File fileB = new File(getDirectory(), "b");
+    createFile("b", 100);
+    fileB.setLastModified(fileB.lastModified() + 5000);
+
+    final DistributionControl distributionControl2 =
+      mock(DistributionControl.class);
+
+    distribute(
+      new FileDistributionHandlerImplementation(m_cacheParameters,
+                                                getDirectory(),
+                                                m_files,
+                                                distributionControl2,
+                                                m_agentSet,
+                                                m_contentIndex));
+
+    final ArgumentCaptor<Address> addressCaptor =
+      ArgumentCaptor.forClass(Address.class);
+    final ArgumentCaptor<FileChunk> chunkCaptor =
+      ArgumentCaptor.forClass(FileChunk.class);
+
+    verify(distributionControl2, times(2)).sendFileChunk(
+      addressCaptor.capture(), chunkCaptor.capture());
+
+    assertEquals("a", chunkCaptor.getAllValues().get(0).getFilename().getPath());
+    assertFalse(addressCaptor.getAllValues().get(0).includes(m_agent1));
+    assertTrue(addressCaptor.getAllValues().get(0).includes(m_agent2));
+
+    assertEquals("b", chunkCaptor.getAllValues().get(1).getFilename().getPath());
+    assertTrue(addressCaptor.getAllValues().get(1).includes(m_agent1));
+    assertTrue(addressCaptor.getAllValues().get(1).includes(m_agent2));
+
+    final ArgumentCaptor<CacheHighWaterMark> highWaterMarkCaptor =
+      ArgumentCaptor.forClass(CacheHighWaterMark.class);
+    verify(distributionControl2).setHighWaterMark(
+      any(Address.class), highWaterMarkCaptor.capture());
+
+    final String manifest2 =
+      m_cacheParameters.getManifest(highWaterMarkCaptor.getValue());
+    assertFalse(manifest.equals(manifest2));
+
+    // Both agents now hold everything, so nothing need be sent.
+    agentsHold(manifest2, m_agent1, m_agent2);
+
+    final DistributionControl distributionControl3 =
+      mock(DistributionControl.class);
+
+    final List<FileDistributionHandler.Result> results =
+      distribute(
+        new FileDistributionHandlerImplementation(m_cacheParameters,
+                                                  getDirectory(),
+                                                  m_files,
+                                                  distributionControl3,
+                                                  m_agentSet,
+                                                  m_contentIndex));
+
+    assertEquals(2, results.size());
+    assertEquals("b", results.get(1).getFileName());
+    assertEquals(100, results.get(1).getProgressInCents());
+
+    verify(distributionControl3, never()).sendFileChunk(
+      any(Address.class), any(FileChunk.class));
+    verify(distributionControl3).setHighWaterMark(
+      any(Address.class), highWaterMarkCaptor.capture());
+    assertEquals(manifest2,
+                 m_cacheParameters.getManifest(highWaterMarkCaptor.getValue()));
+  }
+
+  @Test public void testUnreadableFile() throws Exception {
+    agentsHold(null, m_agent1);
+
+    final FileDistributionHandler handler =
+      createHandler(m_files[0], new File("missing"), m_files[1]);
+
+    try {
+      handler.sendNextFile();
+      fail("Expected FileContentsException");
+    }
+    catch (FileContentsException e) {
+    }
+
+    // The distribution carries on without the file.
+    assertEquals(2, distribute(handler).size());
+
+    final Map<String, String> manifest =
+      m_contentIndex.getManifest(getManifestOfHighWaterMark());
+
+    assertEquals(new HashSet<String>(asList("a", "b")), manifest.keySet());
+  }
+
+  @Test public void testOutOfDateHandler() throws Exception {
+    doThrow(new AgentSet.OutOfDateException())
+      .when(m_agentSet).getAgentsByManifest();
+
+    assertNull(createHandler(m_files).sendNextFile());
+
+    agentsHold(null, m_agent1);
+
+    final FileDistributionHandler handler = createHandler(m_files);
 
-    final FileDistributionHandlerImplementation fileDistributionHandler =
-      new FileDistributionHandlerImplementation(
-        m_cacheParameters,
-        getDirectory(),
-        m_files,
-        m_distributionControl,
-        m_agentSet);
+    assertNotNull(handler.sendNextFile());
 
-    assertNotNull(fileDistributionHandler.sendNextFile());
+    doThrow(new AgentSet.OutOfDateException())
+      .when(m_agentSet).getAddressOfAllAgents();
 
-    m_agentSetStubFactory.setThrows("getAddressOfOutOfDateAgents",
-                                    new AgentSet.OutOfDateException());
+    assertNotNull(handler.sendNextFile());
+    assertNull(handler.sendNextFile());
 
-    assertNull(fileDistributionHandler.sendNextFile());
+    verify(m_distributionControl, never()).setHighWaterMark(
+      any(Address.class), any(CacheHighWaterMark.class));
   }
 }
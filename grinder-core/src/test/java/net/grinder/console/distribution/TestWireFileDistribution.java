@@ -83,7 +83,7 @@ public class TestWireFileDistribution extends AbstractJUnit4FileTestCase {
 
     final TimerTask scanFileTask = timer.getLastScheduledTimerTask();
     scanFileTask.run();
-    verify(fileDistribution).scanDistributionFiles();
+    verify(fileDistribution).checkDistributionFiles();
 
     consoleProperties.setDistributionFileFilterExpression(".*");
 
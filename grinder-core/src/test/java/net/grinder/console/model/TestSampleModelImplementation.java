@@ -48,6 +48,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 import java.util.TimerTask;
+import java.util.concurrent.TimeUnit;
 
 import net.grinder.common.StubTest;
 import net.grinder.console.common.ErrorHandler;
@@ -56,6 +57,7 @@ import net.grinder.console.model.SampleModel.Listener;
 import net.grinder.console.model.SampleModel.State;
 import net.grinder.statistics.StatisticExpression;
 import net.grinder.statistics.StatisticsIndexMap.LongIndex;
+import net.grinder.statistics.StatisticsIndexMap.LongSampleIndex;
 import net.grinder.statistics.StatisticsServices;
 import net.grinder.statistics.StatisticsServicesImplementation;
 import net.grinder.statistics.StatisticsSet;
@@ -520,6 +522,71 @@ public class TestSampleModelImplementation extends AbstractJUnit4FileTestCase {
     assertEquals(0, m_statisicsSetCaptor2.getValue().getValue(userLong0));
   }
 
+  @Test
+  public void testTimeUnit() throws Exception {
+    assertSame(TimeUnit.MILLISECONDS,
+               m_sampleModelImplementation.getTimeUnit());
+
+    final LongSampleIndex timedTests =
+        m_statisticsServices.getStatisticsIndexMap()
+        .getLongSampleIndex("timedTests");
+
+    final StatisticsSet statistics1 =
+        m_statisticsServices.getStatisticsSetFactory().create();
+    statistics1.addSample(timedTests, 1500);
+    statistics1.addSample(timedTests, 2500);
+    final TestStatisticsMap testReports1 = new TestStatisticsMap();
+    testReports1.put(m_test1, statistics1);
+
+    m_sampleModelImplementation.registerTests(asSet(m_test1));
+    m_sampleModelImplementation.addTestReport(testReports1,
+                                              TimeUnit.MICROSECONDS);
+
+    assertSame(TimeUnit.MICROSECONDS,
+               m_sampleModelImplementation.getTimeUnit());
+    assertEquals(4000, statistics1.getSum(timedTests));
+
+    final StatisticsSet statistics2 =
+        m_statisticsServices.getStatisticsSetFactory().create();
+    statistics2.addSample(timedTests, 3);
+    final TestStatisticsMap testReports2 = new TestStatisticsMap();
+    testReports2.put(m_test1, statistics2);
+
+    m_sampleModelImplementation.addTestReport(testReports2,
+                                              TimeUnit.MILLISECONDS);
+
+    assertSame(TimeUnit.MICROSECONDS,
+               m_sampleModelImplementation.getTimeUnit());
+    assertEquals(3000, statistics2.getSum(timedTests));
+
+    m_timer.getLastScheduledTimerTask().run();
+
+    assertEquals(7000,
+      m_sampleModelImplementation.getTotalCumulativeStatistics()
+      .getSum(timedTests));
+
+    m_sampleModelImplementation.zeroStatistics();
+
+    final StatisticsSet statistics3 =
+        m_statisticsServices.getStatisticsSetFactory().create();
+    statistics3.addSample(timedTests, 5);
+    final TestStatisticsMap testReports3 = new TestStatisticsMap();
+    testReports3.put(m_test1, statistics3);
+
+    m_sampleModelImplementation.addTestReport(testReports3,
+                                              TimeUnit.NANOSECONDS);
+
+    assertSame(TimeUnit.NANOSECONDS,
+               m_sampleModelImplementation.getTimeUnit());
+    assertEquals(5, statistics3.getSum(timedTests));
+
+    m_sampleModelImplementation.reset();
+    m_sampleModelImplementation.addTestReport(new TestStatisticsMap());
+
+    assertSame(TimeUnit.MILLISECONDS,
+               m_sampleModelImplementation.getTimeUnit());
+  }
+
   @Test
   public void testAbstractListener() {
     // An exercise in coverage.
@@ -60,7 +60,7 @@ public class TestTextUI {
   @Before public void setUp() {
     initMocks(this);
 
-    when(m_translations.translate("console.state/worker-threads", (short)3, (short)6))
+    when(m_translations.translate("console.state/worker-threads", 3, 6))
       .thenReturn("(3/6 strings)");
 
     when(m_translations.translate("console.state/finished"))
@@ -22,6 +22,7 @@
 package net.grinder.engine.agent;
 
 import static net.grinder.testutility.AssertUtilities.assertNotEquals;
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
@@ -34,24 +35,37 @@ import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.OutputStream;
+import java.security.MessageDigest;
 import java.util.Random;
+import java.util.zip.Deflater;
 
+import net.grinder.common.processidentity.ProcessReport.State;
 import net.grinder.communication.CommunicationException;
 import net.grinder.communication.Message;
 import net.grinder.communication.MessageDispatchSender;
 import net.grinder.communication.SimpleMessage;
 import net.grinder.messages.agent.CacheHighWaterMark;
 import net.grinder.messages.agent.ClearCacheMessage;
+import net.grinder.messages.agent.DistributeFileChunkMessage;
 import net.grinder.messages.agent.DistributeFileMessage;
 import net.grinder.messages.agent.DistributionCacheCheckpointMessage;
 import net.grinder.messages.agent.StubCacheHighWaterMark;
+import net.grinder.messages.console.AgentProcessReportMessage;
 import net.grinder.testutility.AbstractJUnit4FileTestCase;
 import net.grinder.testutility.FileUtilities;
 import net.grinder.util.Directory;
+import net.grinder.util.FileChunk;
 import net.grinder.util.FileContents;
+import net.grinder.util.StreamCopier;
 
 import org.junit.Test;
 import org.slf4j.Logger;
@@ -264,6 +278,97 @@ public class TestFileStore extends AbstractJUnit4FileTestCase {
     assertEquals(currentDirectoryFile, fileStore.getDirectory().getFile());
   }
 
+  @Test public void testFileChunks() throws Exception {
+
+    final Logger logger = mock(Logger.class);
+
+    final FileStore fileStore = new FileStore(getDirectory(), logger);
+
+    final MessageDispatchSender messageDispatcher = new MessageDispatchSender();
+    fileStore.registerMessageHandlers(messageDispatcher);
+
+    final byte[] bytes = new byte[1000];
+    s_random.nextBytes(bytes);
+
+    final MessageDigest messageDigest = FileChunk.createDigest();
+    messageDigest.update(bytes);
+    final String digest = FileChunk.digestToString(messageDigest);
+
+    final File file = new File("dir/file0");
+    final Deflater deflater = new Deflater();
+
+    final byte[] buffer = new byte[600];
+    System.arraycopy(bytes, 0, buffer, 0, 600);
+    final FileChunk chunk0 =
+      new FileChunk(file, digest, 0, buffer, 600, false, deflater);
+
+    System.arraycopy(bytes, 600, buffer, 0, 400);
+    final FileChunk chunk1 =
+      new FileChunk(file, digest, 600, buffer, 400, true, deflater);
+
+    final File incomingDirectoryFile = new File(getDirectory(), "incoming");
+    final File targetFile = new File(incomingDirectoryFile, "dir/file0");
+
+    messageDispatcher.send(new DistributeFileChunkMessage(chunk0));
+    verify(logger).info(contains("Updating file store"),
+                        isA(FileChunk.class));
+
+    // The file is not visible until it is complete.
+    assertFalse(targetFile.exists());
+
+    messageDispatcher.send(new DistributeFileChunkMessage(chunk1));
+    assertArrayEquals(bytes, readFile(targetFile));
+
+    // A chunk out of sequence is rejected.
+    try {
+      messageDispatcher.send(new DistributeFileChunkMessage(chunk1));
+      fail("Expected CommunicationException");
+    }
+    catch (final CommunicationException e) {
+    }
+
+    verify(logger).error(contains("Unexpected chunk"));
+
+    // As is a file with the wrong digest.
+    final FileChunk badChunk =
+      new FileChunk(file, "abc", 0, bytes, 1000, true, deflater);
+
+    try {
+      messageDispatcher.send(new DistributeFileChunkMessage(badChunk));
+      fail("Expected CommunicationException");
+    }
+    catch (final CommunicationException e) {
+    }
+
+    verify(logger).error(contains("does not match"));
+    assertArrayEquals(bytes, readFile(targetFile));
+
+    // A file can be restarted, and clearing the cache discards
+    // partial files.
+    messageDispatcher.send(new DistributeFileChunkMessage(chunk0));
+    messageDispatcher.send(new DistributeFileChunkMessage(chunk0));
+
+    final File partialDirectory = new File(getDirectory(), "partial");
+    assertEquals(1, partialDirectory.list().length);
+
+    messageDispatcher.send(new ClearCacheMessage());
+    assertEquals(0, partialDirectory.list().length);
+    assertFalse(targetFile.exists());
+
+    try {
+      messageDispatcher.send(new DistributeFileChunkMessage(chunk1));
+      fail("Expected CommunicationException");
+    }
+    catch (final CommunicationException e) {
+    }
+  }
+
+  private static byte[] readFile(final File file) throws IOException {
+    final ByteArrayOutputStream result = new ByteArrayOutputStream();
+    new StreamCopier(4096, true).copy(new FileInputStream(file), result);
+    return result.toByteArray();
+  }
+
   @Test public void testFileStoreException() throws Exception {
     final Exception nested = new Exception("");
     final FileStore.FileStoreException e =
@@ -308,5 +413,16 @@ public class TestFileStore extends AbstractJUnit4FileTestCase {
     assertEquals(hwm, hwm2);
     assertEquals(hwm.hashCode(), hwm2.hashCode());
     assertEquals(hwm.toString(), hwm2.toString());
+
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    final DataOutputStream out = new DataOutputStream(bytes);
+    new AgentProcessReportMessage(State.RUNNING, hwm).writeBinary(out);
+    out.close();
+
+    final CacheHighWaterMark received =
+      new AgentProcessReportMessage(
+        new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())))
+      .getCacheHighWaterMark();
+    assertEquals(hwm, received);
   }
 }
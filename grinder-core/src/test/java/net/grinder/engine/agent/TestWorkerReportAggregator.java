@@ -0,0 +1,277 @@
+// Copyright (C) 2013 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+
+package net.grinder.engine.agent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Matchers.isA;
+import static org.mockito.Matchers.same;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Timer;
+import java.util.concurrent.TimeUnit;
+
+import net.grinder.common.GrinderProperties;
+import net.grinder.common.StubTest;
+import net.grinder.common.processidentity.ProcessReport.State;
+import net.grinder.common.processidentity.WorkerIdentity;
+import net.grinder.communication.ClientSender;
+import net.grinder.communication.CommunicationException;
+import net.grinder.communication.ConnectionType;
+import net.grinder.communication.Message;
+import net.grinder.communication.Sender;
+import net.grinder.engine.common.ConnectorFactory;
+import net.grinder.messages.console.AggregatedReportMessage;
+import net.grinder.messages.console.RegisterTestsMessage;
+import net.grinder.messages.console.ReportStatisticsMessage;
+import net.grinder.messages.console.WorkerAddress;
+import net.grinder.messages.console.WorkerProcessReportMessage;
+import net.grinder.statistics.StatisticsIndexMap;
+import net.grinder.statistics.StatisticsServicesImplementation;
+import net.grinder.statistics.StatisticsSet;
+import net.grinder.statistics.StatisticsSetFactory;
+import net.grinder.statistics.TestStatisticsMap;
+import net.grinder.synchronisation.messages.AddWaiterMessage;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.slf4j.Logger;
+
+
+/**
+ * Unit tests for {@link WorkerReportAggregator} and {@link WorkerReportHub}.
+ *
+ * @author Philip Aston
+ */
+public class TestWorkerReportAggregator {
+
+  private final StatisticsSetFactory m_statisticsSetFactory =
+    StatisticsServicesImplementation.getInstance().getStatisticsSetFactory();
+  private final StatisticsIndexMap.LongIndex m_errorsIndex =
+    StatisticsServicesImplementation.getInstance().getStatisticsIndexMap()
+    .getLongIndex("errors");
+
+  private final net.grinder.common.Test m_test1 = new StubTest(1, "one");
+  private final net.grinder.common.Test m_test2 = new StubTest(2, "two");
+
+  private final StubAgentIdentity m_agentIdentity =
+    new StubAgentIdentity("agent");
+  private final WorkerIdentity m_worker1 =
+    m_agentIdentity.createWorkerIdentity();
+  private final WorkerIdentity m_worker2 =
+    m_agentIdentity.createWorkerIdentity();
+
+  @Mock private Sender m_consoleSender;
+  @Mock private Logger m_logger;
+  @Captor private ArgumentCaptor<AggregatedReportMessage> m_messageCaptor;
+
+  @Before public void setUp() {
+    MockitoAnnotations.initMocks(this);
+  }
+
+  private TestStatisticsMap statistics(net.grinder.common.Test test,
+                                       long errors) {
+    final TestStatisticsMap result =
+      new TestStatisticsMap(m_statisticsSetFactory);
+    final StatisticsSet statistics = m_statisticsSetFactory.create();
+    statistics.setValue(m_errorsIndex, errors);
+    result.put(test, statistics);
+    return result;
+  }
+
+  private static WorkerProcessReportMessage report(WorkerIdentity worker,
+                                                   int runningThreads)
+    throws CommunicationException {
+
+    final WorkerProcessReportMessage result =
+      new WorkerProcessReportMessage(State.RUNNING, runningThreads, 10);
+    result.setAddress(new WorkerAddress(worker));
+    return result;
+  }
+
+  @Test public void testAggregation() throws Exception {
+    final WorkerReportAggregator aggregator =
+      new WorkerReportAggregator(m_consoleSender, m_logger);
+
+    aggregator.flush();
+    verifyNoMoreInteractions(m_consoleSender);
+
+    aggregator.send(report(m_worker1, 1));
+    aggregator.send(
+      new ReportStatisticsMessage(statistics(m_test1, 1)));
+    aggregator.send(report(m_worker2, 2));
+    aggregator.send(
+      new RegisterTestsMessage(Collections.singleton(m_test2)));
+    aggregator.send(
+      new ReportStatisticsMessage(statistics(m_test1, 2)));
+    aggregator.send(
+      new ReportStatisticsMessage(statistics(m_test2, 3)));
+    aggregator.send(report(m_worker1, 3));
+
+    verifyNoMoreInteractions(m_consoleSender);
+
+    aggregator.flush();
+
+    verify(m_consoleSender).send(m_messageCaptor.capture());
+    final List<Message> messages = m_messageCaptor.getValue().getMessages();
+
+    assertEquals(4, messages.size());
+    assertEquals(RegisterTestsMessage.class, messages.get(0).getClass());
+
+    final WorkerProcessReportMessage report1 =
+      (WorkerProcessReportMessage) messages.get(1);
+    assertEquals(m_worker1, report1.getWorkerIdentity());
+    assertEquals(3, report1.getNumberOfRunningThreads());
+
+    final WorkerProcessReportMessage report2 =
+      (WorkerProcessReportMessage) messages.get(2);
+    assertEquals(m_worker2, report2.getWorkerIdentity());
+
+    final TestStatisticsMap expected = statistics(m_test1, 3);
+    expected.add(statistics(m_test2, 3));
+    assertEquals(expected,
+      ((ReportStatisticsMessage) messages.get(3)).getStatisticsDelta());
+
+    aggregator.flush();
+    verifyNoMoreInteractions(m_consoleSender);
+
+    assertEquals("7 worker messages, 1 aggregated reports",
+                 aggregator.toString());
+  }
+
+  @Test public void testTimeUnits() throws Exception {
+    final WorkerReportAggregator aggregator =
+      new WorkerReportAggregator(m_consoleSender, m_logger);
+
+    aggregator.send(
+      new ReportStatisticsMessage(statistics(m_test1, 1)));
+    aggregator.send(
+      new ReportStatisticsMessage(statistics(m_test1, 1),
+                                  TimeUnit.MICROSECONDS));
+    aggregator.shutdown();
+
+    verify(m_consoleSender).send(m_messageCaptor.capture());
+    final List<Message> messages = m_messageCaptor.getValue().getMessages();
+
+    assertEquals(2, messages.size());
+    assertEquals(TimeUnit.MILLISECONDS,
+                 ((ReportStatisticsMessage) messages.get(0)).getTimeUnit());
+    assertEquals(TimeUnit.MICROSECONDS,
+                 ((ReportStatisticsMessage) messages.get(1)).getTimeUnit());
+
+    // The console sender isn't ours to shut down.
+    aggregator.send(report(m_worker1, 1));
+    aggregator.flush();
+    verifyNoMoreInteractions(m_consoleSender);
+  }
+
+  @Test public void testBarrierMessagesAreNotDelayed() throws Exception {
+    final WorkerReportAggregator aggregator =
+      new WorkerReportAggregator(m_consoleSender, m_logger);
+
+    final AddWaiterMessage barrierMessage = new AddWaiterMessage("b", null);
+    barrierMessage.setAddress(new WorkerAddress(m_worker2));
+
+    aggregator.send(report(m_worker1, 1));
+    aggregator.send(barrierMessage);
+
+    verify(m_consoleSender).send(m_messageCaptor.capture());
+    final List<Message> messages = m_messageCaptor.getValue().getMessages();
+
+    assertEquals(2, messages.size());
+    assertSame(barrierMessage, messages.get(0));
+    assertEquals(m_worker2, barrierMessage.getProcessIdentity());
+    assertEquals(m_worker1,
+      ((WorkerProcessReportMessage) messages.get(1)).getWorkerIdentity());
+  }
+
+  @Test public void testSendFailure() throws Exception {
+    final WorkerReportAggregator aggregator =
+      new WorkerReportAggregator(m_consoleSender, m_logger);
+
+    final CommunicationException exception = new CommunicationException("");
+    doThrow(exception).when(m_consoleSender).send(isA(Message.class));
+
+    aggregator.send(report(m_worker1, 1));
+    aggregator.flush();
+
+    verify(m_logger).error(isA(String.class), same(exception));
+
+    // The failed report is not retried.
+    aggregator.flush();
+    verify(m_consoleSender).send(isA(Message.class));
+  }
+
+  @Test public void testHub() throws Exception {
+    final Timer timer = new Timer(true);
+
+    final WorkerReportHub hub =
+      new WorkerReportHub(m_consoleSender, timer, 10, m_logger);
+
+    try {
+      final GrinderProperties properties = new GrinderProperties();
+      properties.setProperty("foo", "bah");
+
+      final GrinderProperties workerProperties =
+        hub.redirectWorkers(properties);
+      assertEquals("bah", workerProperties.getProperty("foo"));
+      assertNull(properties.getProperty(GrinderProperties.CONSOLE_PORT));
+
+      final ClientSender workerSender =
+        ClientSender.connect(
+          new ConnectorFactory(ConnectionType.WORKER).create(workerProperties),
+          new WorkerAddress(m_worker1));
+
+      workerSender.send(
+        new WorkerProcessReportMessage(State.RUNNING, 2, 3));
+
+      verify(m_consoleSender, timeout(5000)).send(m_messageCaptor.capture());
+
+      final List<Message> messages = m_messageCaptor.getValue().getMessages();
+      assertEquals(1, messages.size());
+      assertEquals(m_worker1,
+        ((WorkerProcessReportMessage) messages.get(0)).getWorkerIdentity());
+
+      workerSender.shutdown();
+    }
+    finally {
+      hub.shutdown();
+      timer.cancel();
+    }
+
+    verify(m_logger).info(eq("aggregated {}"), any(WorkerReportAggregator.class));
+  }
+}
@@ -0,0 +1,104 @@
+// Copyright (C) 2013 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.grinder.engine.process;
+
+import static org.mockito.Mockito.mock;
+
+import net.grinder.common.GrinderProperties;
+import net.grinder.common.StubTest;
+import net.grinder.engine.common.EngineException;
+import net.grinder.plugininterface.PluginProcessContext;
+import net.grinder.script.Statistics.StatisticsForTest;
+import net.grinder.statistics.StatisticsServicesImplementation;
+import net.grinder.statistics.StatisticsSet;
+import net.grinder.util.StandardTimeAuthority;
+
+import org.slf4j.Logger;
+
+
+/**
+ * Allow unit tests in other packages to dispatch a test on the current
+ * thread, with a real {@link TestData} and {@link PluginProcessContext}.
+ *
+ * @author Philip Aston
+ */
+public class DispatchScopeTunnel {
+
+  private final ThreadContext m_threadContext;
+  private final PluginProcessContext m_pluginProcessContext;
+  private final TestData m_testData;
+
+  public DispatchScopeTunnel() throws EngineException {
+    final GrinderProperties properties = new GrinderProperties();
+    properties.setBoolean("grinder.logData", false);
+
+    m_threadContext =
+      new ThreadContextImplementation(
+        properties,
+        StatisticsServicesImplementation.getInstance(),
+        1,
+        null);
+
+    final StubThreadContextLocator threadContextLocator =
+      new StubThreadContextLocator();
+    threadContextLocator.set(m_threadContext);
+
+    m_pluginProcessContext =
+      new PluginProcessContextImplementation(threadContextLocator,
+                                             mock(Logger.class));
+
+    m_testData =
+      new TestData(threadContextLocator,
+                   StatisticsServicesImplementation.getInstance()
+                   .getStatisticsSetFactory(),
+                   new TestStatisticsHelperImplementation(
+                     StatisticsServicesImplementation.getInstance()
+                     .getStatisticsIndexMap()),
+                   new MillisecondTestClock(new StandardTimeAuthority()),
+                   null,
+                   new StubTest(1, "test1"));
+  }
+
+  public PluginProcessContext getPluginProcessContext() {
+    return m_pluginProcessContext;
+  }
+
+  public void start() throws EngineException {
+    m_testData.start();
+  }
+
+  public void end(boolean success) throws EngineException {
+    m_testData.end(success);
+  }
+
+  /**
+   * Unlike the script interface, doesn't stop the engine from reusing
+   * the result.
+   */
+  public StatisticsForTest getStatisticsForLastTest() {
+    return m_threadContext.getStatisticsForLastTest();
+  }
+
+  public StatisticsSet getTestStatistics() {
+    return m_testData.getTestStatistics();
+  }
+}
@@ -0,0 +1,166 @@
+// Copyright (C) 2013 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.grinder.engine.process;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.concurrent.TimeUnit;
+
+import net.grinder.engine.common.EngineException;
+
+import org.junit.Before;
+import org.junit.Test;
+
+
+/**
+ * Unit tests for {@link ArrivalSchedule}.
+ *
+ * @author Philip Aston
+ */
+public class TestArrivalSchedule {
+
+  private final TestClock m_testClock = mock(TestClock.class);
+
+  @Before public void setUp() {
+    when(m_testClock.getTimeUnit()).thenReturn(TimeUnit.MILLISECONDS);
+  }
+
+  @Test public void testFixedRate() throws Exception {
+    final ArrivalSchedule schedule =
+      ArrivalSchedule.parse("10", false, m_testClock);
+
+    // The first call starts the schedule.
+    assertEquals(1100, schedule.nextRunTime(1000));
+    assertEquals(1200, schedule.nextRunTime(5000));
+
+    for (int i = 3; i < 1000; ++i) {
+      assertEquals(1000 + i * 100, schedule.nextRunTime(0));
+    }
+  }
+
+  @Test public void testHighResolutionClock() throws Exception {
+    when(m_testClock.getTimeUnit()).thenReturn(TimeUnit.MICROSECONDS);
+
+    final ArrivalSchedule schedule =
+      ArrivalSchedule.parse("3000", false, m_testClock);
+
+    assertEquals(333, schedule.nextRunTime(0));
+    assertEquals(667, schedule.nextRunTime(0));
+    assertEquals(1000, schedule.nextRunTime(0));
+  }
+
+  @Test public void testSteps() throws Exception {
+    final ArrivalSchedule schedule =
+      ArrivalSchedule.parse(" 10:1000, 0:500,20 : 1000", false, m_testClock);
+
+    final int[] counts = countArrivals(schedule, 1000, 1500, 2500);
+
+    assertEquals(10, counts[0], 1);
+    assertEquals(0, counts[1]);
+    assertEquals(20, counts[2], 1);
+    assertEquals(30, counts[0] + counts[1] + counts[2]);
+
+    assertEquals(-1, schedule.nextRunTime(0));
+    assertEquals(-1, schedule.nextRunTime(0));
+  }
+
+  @Test public void testRamp() throws Exception {
+    final ArrivalSchedule schedule =
+      ArrivalSchedule.parse("0:1000, 100:1000, 50:1000", true, m_testClock);
+
+    final int[] counts = countArrivals(schedule, 500, 1000, 2000, 3000);
+
+    // The number of arrivals is the area under the rate curve.
+    assertEquals(12.5, counts[0], 1);
+    assertEquals(37.5, counts[1], 1);
+    assertEquals(75, counts[2], 1);
+    assertEquals(50, counts[3], 1);
+
+    assertEquals(-1, schedule.nextRunTime(0));
+  }
+
+  @Test public void testNoArrivals() throws Exception {
+    assertEquals(-1,
+                 ArrivalSchedule.parse("0", false, m_testClock)
+                 .nextRunTime(0));
+
+    assertEquals(-1,
+                 ArrivalSchedule.parse("0:1000, 0", true, m_testClock)
+                 .nextRunTime(0));
+  }
+
+  @Test public void testBadSpecifications() throws Exception {
+    final String[] specifications = {
+      "",
+      "abc",
+      "10:",
+      "10:0",
+      "10:-1",
+      "-1",
+      "NaN",
+      "Infinity",
+      "10, 20",
+      "10:100:100",
+    };
+
+    for (final String specification : specifications) {
+      try {
+        ArrivalSchedule.parse(specification, false, m_testClock);
+        fail("Expected EngineException for '" + specification + "'");
+      }
+      catch (final EngineException e) {
+      }
+    }
+  }
+
+  /**
+   * Count the arrivals that fall before each of the given times, and after
+   * the previous time.
+   */
+  private static int[] countArrivals(final ArrivalSchedule schedule,
+                                     final long... times) {
+    final int[] result = new int[times.length];
+    long last = 0;
+
+    while (true) {
+      final long arrival = schedule.nextRunTime(0);
+
+      if (arrival < 0) {
+        return result;
+      }
+
+      assertTrue(arrival >= last);
+      last = arrival;
+
+      for (int i = 0; i < times.length; ++i) {
+        if (arrival <= times[i]) {
+          ++result[i];
+          break;
+        }
+      }
+    }
+  }
+}
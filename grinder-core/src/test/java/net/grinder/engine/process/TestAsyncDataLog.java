@@ -0,0 +1,334 @@
+// Copyright (C) 2013 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.grinder.engine.process;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import net.grinder.common.StubTest;
+import net.grinder.engine.process.AsyncDataLog.OverflowPolicy;
+import net.grinder.engine.process.AsyncDataLog.RecordWriter;
+import net.grinder.statistics.StatisticsIndexMap;
+import net.grinder.statistics.StatisticsServices;
+import net.grinder.statistics.StatisticsServicesTestFactory;
+import net.grinder.statistics.StatisticsSet;
+import net.grinder.statistics.StatisticsSetFactory;
+
+import org.junit.Test;
+
+
+/**
+ * Unit tests for {@link AsyncDataLog}.
+ *
+ * @author Philip Aston
+ */
+public class TestAsyncDataLog {
+
+  private final net.grinder.common.Test m_test = new StubTest(1, "T1");
+
+  private final StatisticsServices m_statisticsServices =
+    StatisticsServicesTestFactory.createTestInstance();
+
+  private final StatisticsSetFactory m_statisticsSetFactory =
+    m_statisticsServices.getStatisticsSetFactory();
+
+  private final StatisticsSet m_statistics = m_statisticsSetFactory.create();
+
+  /**
+   * Records the run numbers written. Optionally blocks the writer thread
+   * on a given run number.
+   */
+  private static final class RecordingWriter implements RecordWriter {
+    private final List<Integer> m_runNumbers =
+      Collections.synchronizedList(new ArrayList<Integer>());
+    private final CountDownLatch m_writing = new CountDownLatch(1);
+    private final CountDownLatch m_release = new CountDownLatch(1);
+    private final int m_blockOn;
+
+    public RecordingWriter(int blockOn) {
+      m_blockOn = blockOn;
+    }
+
+    public RecordingWriter() {
+      this(-1);
+    }
+
+    public void write(int runNumber,
+                      net.grinder.common.Test test,
+                      long timeSinceExecutionStart,
+                      StatisticsSet statistics) {
+      m_runNumbers.add(runNumber);
+
+      if (runNumber == m_blockOn) {
+        m_writing.countDown();
+
+        try {
+          m_release.await();
+        }
+        catch (InterruptedException e) {
+          throw new AssertionError(e);
+        }
+      }
+    }
+  }
+
+  @Test public void testOverflowPolicy() throws Exception {
+    assertSame(OverflowPolicy.BLOCK, OverflowPolicy.parse("block"));
+    assertSame(OverflowPolicy.DROP, OverflowPolicy.parse(" Drop "));
+    assertNull(OverflowPolicy.parse("foo"));
+  }
+
+  @Test public void testBadQueueSize() throws Exception {
+    try {
+      new AsyncDataLog(0, OverflowPolicy.BLOCK);
+      fail("Expected IllegalArgumentException");
+    }
+    catch (IllegalArgumentException e) {
+    }
+  }
+
+  @Test public void testOrdering() throws Exception {
+    final AsyncDataLog asyncDataLog = new AsyncDataLog(3, OverflowPolicy.BLOCK);
+
+    final RecordingWriter writer1 = new RecordingWriter();
+    final RecordingWriter writer2 = new RecordingWriter();
+
+    final AsyncDataLog.ThreadQueue queue1 =
+      asyncDataLog.createThreadQueue(m_statisticsSetFactory, writer1);
+    final AsyncDataLog.ThreadQueue queue2 =
+      asyncDataLog.createThreadQueue(m_statisticsSetFactory, writer2);
+
+    for (int i = 0; i < 1000; ++i) {
+      queue1.offer(i, m_test, 0, m_statistics);
+      queue2.offer(i, m_test, 0, m_statistics);
+    }
+
+    asyncDataLog.shutdown();
+
+    assertEquals(1000, writer1.m_runNumbers.size());
+    assertEquals(1000, writer2.m_runNumbers.size());
+
+    for (int i = 0; i < 1000; ++i) {
+      assertEquals(i, writer1.m_runNumbers.get(i).intValue());
+      assertEquals(i, writer2.m_runNumbers.get(i).intValue());
+    }
+
+    assertEquals(0, asyncDataLog.getQueueDepth());
+    assertEquals(0, asyncDataLog.getDroppedRecords());
+    assertTrue(asyncDataLog.getMaximumQueueDepth() <= 8);
+  }
+
+  @Test public void testValuesAreCopied() throws Exception {
+    final StatisticsIndexMap.LongIndex errorsIndex =
+      m_statisticsServices.getStatisticsIndexMap().getLongIndex("errors");
+
+    final AsyncDataLog asyncDataLog = new AsyncDataLog(2, OverflowPolicy.BLOCK);
+
+    final List<Long> errors = new ArrayList<Long>();
+
+    final AsyncDataLog.ThreadQueue queue =
+      asyncDataLog.createThreadQueue(
+        m_statisticsSetFactory,
+        new RecordWriter() {
+          public void write(int runNumber,
+                            net.grinder.common.Test test,
+                            long timeSinceExecutionStart,
+                            StatisticsSet statistics) {
+            assertNotSame(m_statistics, statistics);
+            assertSame(m_test, test);
+            assertEquals(runNumber * 10L, timeSinceExecutionStart);
+            errors.add(statistics.getValue(errorsIndex));
+          }
+        });
+
+    for (int i = 0; i < 10; ++i) {
+      m_statistics.setValue(errorsIndex, i);
+      queue.offer(i, m_test, i * 10L, m_statistics);
+    }
+
+    m_statistics.reset();
+
+    asyncDataLog.shutdown();
+
+    assertEquals(10, errors.size());
+
+    for (int i = 0; i < 10; ++i) {
+      assertEquals(i, errors.get(i).longValue());
+    }
+  }
+
+  @Test public void testIdleWriterParks() throws Exception {
+    final AsyncDataLog asyncDataLog = new AsyncDataLog(4, OverflowPolicy.BLOCK);
+
+    final RecordingWriter writer = new RecordingWriter();
+
+    final AsyncDataLog.ThreadQueue queue =
+      asyncDataLog.createThreadQueue(m_statisticsSetFactory, writer);
+
+    for (int i = 0; i < 3; ++i) {
+      awaitWriterParked();
+
+      queue.offer(i, m_test, 0, m_statistics);
+
+      for (int j = 0; j < 500 && writer.m_runNumbers.size() <= i; ++j) {
+        Thread.sleep(10);
+      }
+
+      assertEquals(i + 1, writer.m_runNumbers.size());
+    }
+
+    asyncDataLog.shutdown();
+  }
+
+  /**
+   * Wait until a writer thread is parked without a timeout, rather than
+   * polling.
+   */
+  private static void awaitWriterParked() throws InterruptedException {
+    for (int i = 0; i < 500; ++i) {
+      for (Thread thread : Thread.getAllStackTraces().keySet()) {
+        if (thread.getName().equals("Data log writer") &&
+            thread.getState() == Thread.State.WAITING) {
+          return;
+        }
+      }
+
+      Thread.sleep(10);
+    }
+
+    fail("Writer thread did not park");
+  }
+
+  @Test public void testDrop() throws Exception {
+    final AsyncDataLog asyncDataLog = new AsyncDataLog(2, OverflowPolicy.DROP);
+
+    final RecordingWriter writer = new RecordingWriter(1);
+
+    final AsyncDataLog.ThreadQueue queue =
+      asyncDataLog.createThreadQueue(m_statisticsSetFactory, writer);
+
+    queue.offer(1, m_test, 0, m_statistics);
+
+    // The writer is blocked, holding the first slot.
+    writer.m_writing.await();
+
+    queue.offer(2, m_test, 0, m_statistics);
+    queue.offer(3, m_test, 0, m_statistics);
+    queue.offer(4, m_test, 0, m_statistics);
+
+    assertEquals(2, asyncDataLog.getQueueDepth());
+    assertEquals(2, asyncDataLog.getDroppedRecords());
+
+    writer.m_release.countDown();
+    asyncDataLog.shutdown();
+
+    assertEquals(Arrays.asList(1, 2), writer.m_runNumbers);
+    assertEquals(0, asyncDataLog.getQueueDepth());
+  }
+
+  @Test public void testBlock() throws Exception {
+    final AsyncDataLog asyncDataLog = new AsyncDataLog(1, OverflowPolicy.BLOCK);
+
+    final RecordingWriter writer = new RecordingWriter(0);
+
+    final AsyncDataLog.ThreadQueue queue =
+      asyncDataLog.createThreadQueue(m_statisticsSetFactory, writer);
+
+    queue.offer(0, m_test, 0, m_statistics);
+    writer.m_writing.await();
+
+    final Thread producer = new Thread() {
+        @Override public void run() {
+          for (int i = 1; i < 10; ++i) {
+            queue.offer(i, m_test, 0, m_statistics);
+          }
+        }
+      };
+
+    producer.start();
+    producer.join(100);
+    assertTrue(producer.isAlive());
+
+    writer.m_release.countDown();
+    producer.join();
+    asyncDataLog.shutdown();
+
+    assertEquals(10, writer.m_runNumbers.size());
+    assertEquals(0, asyncDataLog.getDroppedRecords());
+  }
+
+  @Test public void testShutdownReleasesBlockedProducer() throws Exception {
+    final AsyncDataLog asyncDataLog = new AsyncDataLog(1, OverflowPolicy.BLOCK);
+
+    final RecordingWriter writer = new RecordingWriter(0);
+
+    final AsyncDataLog.ThreadQueue queue =
+      asyncDataLog.createThreadQueue(m_statisticsSetFactory, writer);
+
+    queue.offer(0, m_test, 0, m_statistics);
+    writer.m_writing.await();
+
+    // Fills the queue, then waits for space.
+    final Thread producer = new Thread() {
+        @Override public void run() {
+          for (int i = 1; i < 10; ++i) {
+            queue.offer(i, m_test, 0, m_statistics);
+          }
+        }
+      };
+
+    producer.start();
+    producer.join(100);
+    assertTrue(producer.isAlive());
+
+    final Thread shutdown = new Thread() {
+        @Override public void run() {
+          asyncDataLog.shutdown();
+        }
+      };
+
+    shutdown.start();
+    writer.m_release.countDown();
+    shutdown.join();
+    producer.join(5000);
+
+    assertFalse(producer.isAlive());
+
+    // Records queued after the writer stopped are neither written nor
+    // dropped.
+    assertEquals(10,
+                 writer.m_runNumbers.size() +
+                 asyncDataLog.getDroppedRecords() +
+                 asyncDataLog.getQueueDepth());
+  }
+}
@@ -0,0 +1,253 @@
+// Copyright (C) 2013 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.grinder.engine.process;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+
+import net.grinder.common.StubTest;
+import net.grinder.statistics.ExpressionView;
+import net.grinder.statistics.StatisticsIndexMap;
+import net.grinder.statistics.StatisticsServices;
+import net.grinder.statistics.StatisticsServicesTestFactory;
+import net.grinder.statistics.StatisticsSet;
+import net.grinder.testutility.AbstractJUnit4FileTestCase;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.slf4j.Logger;
+
+
+/**
+ * Unit tests for {@link BinaryDataLog}, {@link BinaryDataLogReader}, and
+ * {@link BinaryDataLogConverter}.
+ *
+ * @author Philip Aston
+ */
+public class TestBinaryDataLog extends AbstractJUnit4FileTestCase {
+
+  private static final String HEADER = "Thread, Run, Test, Start time";
+
+  @Mock private Logger m_logger;
+
+  private final net.grinder.common.Test m_test1 = new StubTest(1, "T1");
+  private final net.grinder.common.Test m_test3 = new StubTest(3, "T3");
+
+  private final StatisticsServices m_statisticsServices =
+    StatisticsServicesTestFactory.createTestInstance();
+
+  private ExpressionView[] m_expressionViews;
+  private StatisticsSet m_statistics;
+  private StatisticsIndexMap.LongIndex m_errorsIndex;
+  private StatisticsIndexMap.LongSampleIndex m_timedTestsIndex;
+  private File m_file;
+
+  @Before public void setUp() throws Exception {
+    MockitoAnnotations.initMocks(this);
+
+    final StatisticsIndexMap indexMap =
+      m_statisticsServices.getStatisticsIndexMap();
+
+    m_errorsIndex = indexMap.getLongIndex("errors");
+    m_timedTestsIndex = indexMap.getLongSampleIndex("timedTests");
+
+    m_expressionViews =
+      m_statisticsServices.getDetailStatisticsView().getExpressionViews();
+
+    m_statistics = m_statisticsServices.getStatisticsSetFactory().create();
+
+    m_file = new File(getDirectory(), "data.bin");
+  }
+
+  @Test public void testWriteAndRead() throws Exception {
+    final BinaryDataLog log =
+      new BinaryDataLog(m_file, HEADER, m_expressionViews, m_logger);
+
+    final BinaryDataLog.ThreadWriter writer1 = log.createThreadWriter(0);
+    final BinaryDataLog.ThreadWriter writer2 = log.createThreadWriter(1);
+
+    m_statistics.addSample(m_timedTestsIndex, 99);
+    writer1.report(10, m_test1, 123L, m_statistics);
+
+    m_statistics.reset();
+    m_statistics.setValue(m_errorsIndex, 1);
+    writer2.report(0, m_test3, 301L, m_statistics);
+
+    log.close();
+    log.close();
+
+    writer1.report(11, m_test1, 400L, m_statistics);
+
+    final BinaryDataLogReader reader = new BinaryDataLogReader(m_file);
+
+    assertEquals(HEADER, reader.getHeader());
+
+    final String[] columnNames = reader.getColumnNames();
+    assertEquals(m_expressionViews.length, columnNames.length);
+
+    for (int i = 0; i < columnNames.length; ++i) {
+      assertEquals(m_expressionViews[i].getDisplayName(), columnNames[i]);
+      assertEquals(m_expressionViews[i].getExpression().isDouble(),
+                   reader.isDouble(i));
+    }
+
+    assertTrue(reader.next());
+    assertEquals(0, reader.getThreadNumber());
+    assertEquals(10, reader.getRunNumber());
+    assertEquals(1, reader.getTestNumber());
+    assertEquals(123L, reader.getStartTime());
+    assertEquals(99, reader.getLongValue(0));
+
+    assertTrue(reader.next());
+    assertEquals(1, reader.getThreadNumber());
+    assertEquals(0, reader.getRunNumber());
+    assertEquals(3, reader.getTestNumber());
+    assertEquals(301L, reader.getStartTime());
+    assertEquals(1, reader.getLongValue(columnNames.length - 1));
+
+    assertFalse(reader.next());
+
+    reader.close();
+
+    verifyNoMoreInteractions(m_logger);
+  }
+
+  @Test public void testManyRegions() throws Exception {
+    // Tiny regions that hold a single record.
+    final BinaryDataLog log =
+      new BinaryDataLog(m_file, HEADER, m_expressionViews, m_logger, 1);
+
+    final BinaryDataLog.ThreadWriter[] writers =
+      new BinaryDataLog.ThreadWriter[3];
+
+    for (int i = 0; i < writers.length; ++i) {
+      writers[i] = log.createThreadWriter(i);
+    }
+
+    for (int i = 0; i < 100; ++i) {
+      m_statistics.reset();
+      m_statistics.addSample(m_timedTestsIndex, i);
+      writers[i % writers.length].report(i, m_test1, i, m_statistics);
+    }
+
+    log.close();
+
+    final BinaryDataLogReader reader = new BinaryDataLogReader(m_file);
+
+    for (int i = 0; i < 100; ++i) {
+      assertTrue(reader.next());
+      assertEquals(i % writers.length, reader.getThreadNumber());
+      assertEquals(i, reader.getRunNumber());
+      assertEquals(i, reader.getStartTime());
+      assertEquals(i, reader.getLongValue(0));
+    }
+
+    assertFalse(reader.next());
+    reader.close();
+  }
+
+  @Test public void testNotClosed() throws Exception {
+    final BinaryDataLog log =
+      new BinaryDataLog(m_file, HEADER, m_expressionViews, m_logger, 1000);
+
+    final BinaryDataLog.ThreadWriter writer = log.createThreadWriter(2);
+
+    writer.report(1, m_test1, 10, m_statistics);
+    writer.report(1, m_test3, 20, m_statistics);
+
+    // The record count isn't written until the log is closed; unwritten
+    // records are skipped.
+    final BinaryDataLogReader reader = new BinaryDataLogReader(m_file);
+
+    assertTrue(reader.next());
+    assertEquals(1, reader.getTestNumber());
+    assertTrue(reader.next());
+    assertEquals(3, reader.getTestNumber());
+    assertFalse(reader.next());
+    reader.close();
+
+    log.close();
+  }
+
+  @Test public void testBadFile() throws Exception {
+    final FileOutputStream out = new FileOutputStream(m_file);
+    out.write(new byte[100]);
+    out.close();
+
+    try {
+      new BinaryDataLogReader(m_file);
+      fail("Expected IOException");
+    }
+    catch (IOException e) {
+    }
+  }
+
+  @Test public void testConvert() throws Exception {
+    final BinaryDataLog log =
+      new BinaryDataLog(m_file, HEADER, m_expressionViews, m_logger);
+
+    final BinaryDataLog.ThreadWriter writer = log.createThreadWriter(33);
+
+    m_statistics.addSample(m_timedTestsIndex, 99);
+    writer.report(10, m_test1, 123L, m_statistics);
+    writer.report(10, m_test1, 125L, m_statistics);
+
+    m_statistics.reset();
+    m_statistics.setValue(m_errorsIndex, 1);
+    writer.report(11, m_test3, 301L, m_statistics);
+
+    log.close();
+
+    final BinaryDataLogReader reader = new BinaryDataLogReader(m_file);
+    final StringWriter out = new StringWriter();
+
+    final String summary = BinaryDataLogConverter.convert(reader, out);
+
+    reader.close();
+
+    // The same format as ThreadDataLogger.
+    assertArrayEquals(new String[] {
+                        HEADER,
+                        "33, 10, 1, 123, 99, 0",
+                        "33, 10, 1, 125, 99, 0",
+                        "33, 11, 3, 301, 0, 1",
+                      },
+                      out.toString().split("\n"));
+
+    final String[] summaryLines = summary.trim().split("\n");
+    assertEquals(3, summaryLines.length);
+    assertTrue(summaryLines[0].startsWith("Test, Records, Mean "));
+    assertEquals("1, 2, 99.0, 0.0", summaryLines[1]);
+    assertEquals("3, 1, 0.0, 1.0", summaryLines[2]);
+  }
+}
@@ -36,20 +36,26 @@ import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.when;
 
+import java.io.File;
+import java.io.FileWriter;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
+import net.grinder.common.GrinderProperties;
 import net.grinder.common.ThreadLifeCycleListener;
 import net.grinder.communication.CommunicationException;
 import net.grinder.communication.Message;
 import net.grinder.communication.QueuedSender;
 import net.grinder.communication.SimpleMessage;
+import net.grinder.engine.common.EngineException;
 import net.grinder.engine.process.GrinderProcess.ThreadContexts;
 import net.grinder.engine.process.GrinderProcess.ThreadSynchronisation;
 import net.grinder.engine.process.GrinderProcess.Times;
 import net.grinder.script.InvalidContextException;
+import net.grinder.util.SleepDistributions;
 import net.grinder.util.thread.Condition;
 
 import org.junit.AfterClass;
@@ -153,6 +159,97 @@ public class TestGrinderProcess {
     }
   }
 
+  @Test public void testCreateTestClock() throws Exception {
+    final Times times = new Times();
+
+    final TestClock milliseconds =
+      GrinderProcess.createTestClock("milliseconds", times);
+    assertEquals(TimeUnit.MILLISECONDS, milliseconds.getTimeUnit());
+    assertTrue(milliseconds instanceof MillisecondTestClock);
+
+    assertEquals(TimeUnit.MICROSECONDS,
+                 GrinderProcess.createTestClock(" Microseconds ", times)
+                 .getTimeUnit());
+
+    assertEquals(TimeUnit.NANOSECONDS,
+                 GrinderProcess.createTestClock("NANOSECONDS", times)
+                 .getTimeUnit());
+
+    for (final String bad : new String[] { "seconds", "ms", "" }) {
+      try {
+        GrinderProcess.createTestClock(bad, times);
+        fail("Expected EngineException");
+      }
+      catch (final EngineException e) {
+      }
+    }
+  }
+
+  @Test public void testCreateSleepDistribution() throws Exception {
+    final GrinderProperties properties = new GrinderProperties();
+
+    assertSame(SleepDistributions.NORMAL,
+               GrinderProcess.createSleepDistribution(properties));
+
+    properties.setProperty("grinder.sleepDistribution", "exponential");
+    assertSame(SleepDistributions.EXPONENTIAL,
+               GrinderProcess.createSleepDistribution(properties));
+
+    final File histogram = File.createTempFile("histogram", ".csv");
+
+    try {
+      final FileWriter writer = new FileWriter(histogram);
+      writer.write("10, 1\n20, 1\n");
+      writer.close();
+
+      properties.setProperty("grinder.sleepDistribution", "empirical");
+
+      try {
+        GrinderProcess.createSleepDistribution(properties);
+        fail("Expected EngineException");
+      }
+      catch (final EngineException e) {
+      }
+
+      properties.setFile("grinder.sleepHistogram", histogram);
+      assertEquals("empirical",
+                   GrinderProcess.createSleepDistribution(properties)
+                   .toString());
+
+      final FileWriter writer2 = new FileWriter(histogram);
+      writer2.write("10\n");
+      writer2.close();
+
+      try {
+        GrinderProcess.createSleepDistribution(properties);
+        fail("Expected EngineException");
+      }
+      catch (final EngineException e) {
+      }
+    }
+    finally {
+      histogram.delete();
+    }
+
+    properties.setFile("grinder.sleepHistogram", histogram);
+
+    try {
+      GrinderProcess.createSleepDistribution(properties);
+      fail("Expected EngineException");
+    }
+    catch (final EngineException e) {
+    }
+
+    properties.setProperty("grinder.sleepDistribution", "gamma");
+
+    try {
+      GrinderProcess.createSleepDistribution(properties);
+      fail("Expected EngineException");
+    }
+    catch (final EngineException e) {
+    }
+  }
+
   @Test public void testTimes() {
     final Times times = new Times();
     assertNotNull(times.getTimeAuthority());
@@ -22,11 +22,15 @@
 package net.grinder.engine.process;
 
 import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.when;
+
+import java.util.concurrent.TimeUnit;
+
 import net.grinder.common.GrinderProperties;
 import net.grinder.engine.common.EngineException;
 import net.grinder.scriptengine.ScriptEngineService.WorkerRunnable;
@@ -71,6 +75,7 @@ public class TestGrinderThread extends AbstractJUnit4FileTestCase {
                       m_workerThreadSynchronisation,
                       m_properties,
                       m_sleeper,
+                      null,
                       m_workerRunnableFactory);
 
     verify(m_workerThreadSynchronisation).threadCreated();
@@ -86,6 +91,7 @@ public class TestGrinderThread extends AbstractJUnit4FileTestCase {
                         m_workerThreadSynchronisation,
                         m_properties,
                         m_sleeper,
+                        null,
                         m_workerRunnableFactory);
 
     grinderThread.run();
@@ -103,6 +109,7 @@ public class TestGrinderThread extends AbstractJUnit4FileTestCase {
     verify(m_workerThreadSynchronisation).awaitStart();
     verify(m_workerThreadSynchronisation).threadFinished();
 
+    verify(m_sleeper).seedThread(0);
     verify(m_sleeper).sleepFlat(0);
     verifyNoMoreInteractions(m_sleeper);
   }
@@ -115,6 +122,7 @@ public class TestGrinderThread extends AbstractJUnit4FileTestCase {
                         m_workerThreadSynchronisation,
                         m_properties,
                         m_sleeper,
+                        null,
                         m_workerRunnableFactory);
 
     m_properties.setInt("grinder.runs", 2);
@@ -135,6 +143,7 @@ public class TestGrinderThread extends AbstractJUnit4FileTestCase {
     verify(m_workerThreadSynchronisation).awaitStart();
     verify(m_workerThreadSynchronisation).threadFinished();
 
+    verify(m_sleeper).seedThread(0);
     verify(m_sleeper).sleepFlat(100);
     verifyNoMoreInteractions(m_sleeper);
   }
@@ -147,6 +156,7 @@ public class TestGrinderThread extends AbstractJUnit4FileTestCase {
                         m_workerThreadSynchronisation,
                         m_properties,
                         m_sleeper,
+                        null,
                         m_workerRunnableFactory);
 
     m_properties.setInt("grinder.runs", 0);
@@ -169,12 +179,78 @@ public class TestGrinderThread extends AbstractJUnit4FileTestCase {
     verify(m_workerThreadSynchronisation).awaitStart();
     verify(m_workerThreadSynchronisation).threadFinished();
 
+    verify(m_sleeper).seedThread(0);
     verify(m_sleeper).sleepFlat(0);
     verifyNoMoreInteractions(m_sleeper);
 
     // TODO verify(m_threadLogger).output("shut down");
   }
 
+  @Test public void testArrivalSchedule() throws Exception {
+    final TestClock testClock = mock(TestClock.class);
+    when(testClock.getTimeUnit()).thenReturn(TimeUnit.MILLISECONDS);
+    when(testClock.getTime()).thenReturn(0L, 0L, 0L, 5L, 5L);
+
+    // Two runs, due at 1 ms and 2 ms.
+    final ArrivalSchedule arrivalSchedule =
+      ArrivalSchedule.parse("1000:2", false, testClock);
+
+    final GrinderThread grinderThread =
+      new GrinderThread(m_logger,
+                        m_threadContext,
+                        m_workerThreadSynchronisation,
+                        m_properties,
+                        m_sleeper,
+                        arrivalSchedule,
+                        m_workerRunnableFactory);
+
+    // grinder.runs defaults to 0, so the schedule decides how many runs.
+    grinderThread.run();
+
+    verify(m_threadContext, times(2)).fireBeginRunEvent();
+    verify(m_threadContext, times(2)).fireEndRunEvent();
+    verify(m_workerRunnable, times(2)).run();
+
+    verify(m_threadContext).setRunScheduleDelay(0);
+    verify(m_threadContext).setRunScheduleDelay(3);
+
+    verify(m_sleeper).seedThread(0);
+    verify(m_sleeper).sleepFlat(0);
+    verify(m_sleeper).sleepExactly(1);
+    verify(m_sleeper).sleepExactly(2);
+    verifyNoMoreInteractions(m_sleeper);
+
+    verify(m_workerThreadSynchronisation).threadFinished();
+  }
+
+  @Test public void testArrivalScheduleShutdown() throws Exception {
+    final TestClock testClock = mock(TestClock.class);
+    when(testClock.getTimeUnit()).thenReturn(TimeUnit.MILLISECONDS);
+
+    final ArrivalSchedule arrivalSchedule =
+      ArrivalSchedule.parse("1", false, testClock);
+
+    final GrinderThread grinderThread =
+      new GrinderThread(m_logger,
+                        m_threadContext,
+                        m_workerThreadSynchronisation,
+                        m_properties,
+                        m_sleeper,
+                        arrivalSchedule,
+                        m_workerRunnableFactory);
+
+    doThrow(new Sleeper.ShutdownException("bye"))
+      .when(m_sleeper).sleepExactly(1000);
+
+    grinderThread.run();
+
+    verify(m_threadContext, never()).fireBeginRunEvent();
+    verify(m_workerRunnable, never()).run();
+    verify(m_workerRunnable).shutdown();
+    verify(m_threadContext).fireEndThreadEvent();
+    verify(m_workerThreadSynchronisation).threadFinished();
+  }
+
   @Test public void testRunScriptException() throws Exception {
 
     final GrinderThread grinderThread =
@@ -183,6 +259,7 @@ public class TestGrinderThread extends AbstractJUnit4FileTestCase {
                         m_workerThreadSynchronisation,
                         m_properties,
                         m_sleeper,
+                        null,
                         m_workerRunnableFactory);
 
     doThrow(new MyScriptEngineException("whatever"))
@@ -214,6 +291,7 @@ public class TestGrinderThread extends AbstractJUnit4FileTestCase {
                         m_workerThreadSynchronisation,
                         m_properties,
                         m_sleeper,
+                        null,
                         m_workerRunnableFactory);
 
     when(m_workerRunnableFactory.create())
@@ -238,6 +316,7 @@ public class TestGrinderThread extends AbstractJUnit4FileTestCase {
                         m_workerThreadSynchronisation,
                         m_properties,
                         m_sleeper,
+                        null,
                         m_workerRunnableFactory);
 
     when(m_workerRunnableFactory.create())
@@ -0,0 +1,85 @@
+// Copyright (C) 2013 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.grinder.engine.process;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+
+/**
+ * Unit tests for {@link HighResolutionTestClock}.
+ *
+ * @author Philip Aston
+ */
+public class TestHighResolutionTestClock {
+
+  @Test public void testMicroseconds() throws Exception {
+    final long before = System.currentTimeMillis();
+    final TestClock clock = new HighResolutionTestClock(TimeUnit.MICROSECONDS);
+    assertEquals(TimeUnit.MICROSECONDS, clock.getTimeUnit());
+
+    final long t1 = clock.getTime();
+    assertTrue(t1 >= 0);
+
+    Thread.sleep(20);
+
+    final long t2 = clock.getTime();
+    assertTrue(t2 - t1 >= 19000);
+
+    // Fudge required since nanoTime() is more precise that currentTimeMillis().
+    final long fudge = 10;
+
+    final long epochTime = clock.toTimeInMilliseconds(t2);
+    assertTrue(epochTime >= before + 19 - fudge);
+    assertTrue(epochTime <= System.currentTimeMillis() + fudge);
+  }
+
+  @Test public void testNanoseconds() throws Exception {
+    final TestClock clock = new HighResolutionTestClock(TimeUnit.NANOSECONDS);
+    assertEquals(TimeUnit.NANOSECONDS, clock.getTimeUnit());
+
+    final long t1 = clock.getTime();
+    final long t2 = clock.getTime();
+    assertTrue(t1 >= 0);
+    assertTrue(t2 >= t1);
+
+    assertEquals(clock.toTimeInMilliseconds(0) + 2,
+                 clock.toTimeInMilliseconds(2999999));
+  }
+
+  @Test public void testCoarseUnits() throws Exception {
+    for (final TimeUnit unit :
+         new TimeUnit[] { TimeUnit.MILLISECONDS, TimeUnit.SECONDS }) {
+      try {
+        new HighResolutionTestClock(unit);
+        fail("Expected IllegalArgumentException");
+      }
+      catch (final IllegalArgumentException e) {
+      }
+    }
+  }
+}
@@ -0,0 +1,89 @@
+// Copyright (C) 2013 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.grinder.engine.process;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.mockito.Mockito.when;
+
+import java.util.concurrent.TimeUnit;
+
+import net.grinder.util.Sleeper;
+
+import org.junit.Test;
+
+
+/**
+ * Unit tests for {@link PacingSchedule}.
+ *
+ * @author Philip Aston
+ */
+public class TestPacingSchedule {
+
+  private final TestClock m_testClock = mock(TestClock.class);
+  private final Sleeper m_sleeper = mock(Sleeper.class);
+
+  @Test public void testConstruction() throws Exception {
+    when(m_testClock.getTimeUnit()).thenReturn(TimeUnit.MILLISECONDS);
+
+    try {
+      new PacingSchedule(0, m_testClock);
+      fail("Expected IllegalArgumentException");
+    }
+    catch (final IllegalArgumentException e) {
+    }
+  }
+
+  @Test public void testPacing() throws Exception {
+    when(m_testClock.getTimeUnit()).thenReturn(TimeUnit.MICROSECONDS);
+
+    final RunSchedule schedule = new PacingSchedule(100, m_testClock);
+
+    // First run starts immediately.
+    when(m_testClock.getTime()).thenReturn(1000L);
+    assertEquals(0, schedule.awaitNextRun(m_sleeper));
+
+    // Run finished early, so we wait for the next slot.
+    when(m_testClock.getTime()).thenReturn(41000L, 101000L);
+    assertEquals(0, schedule.awaitNextRun(m_sleeper));
+    verify(m_sleeper).sleepExactly(60);
+
+    // Run overran; the next starts immediately, and is late.
+    when(m_testClock.getTime()).thenReturn(251000L);
+    assertEquals(50000, schedule.awaitNextRun(m_sleeper));
+
+    // Slots are not skipped.
+    when(m_testClock.getTime()).thenReturn(260000L);
+    assertEquals(0, schedule.awaitNextRun(m_sleeper));
+    verify(m_sleeper).sleepExactly(41);
+
+    // Waits are rounded up to the next millisecond.
+    when(m_testClock.getTime()).thenReturn(300500L, 401000L);
+    assertEquals(0, schedule.awaitNextRun(m_sleeper));
+    verify(m_sleeper).sleepExactly(101);
+
+    verifyNoMoreInteractions(m_sleeper);
+  }
+}
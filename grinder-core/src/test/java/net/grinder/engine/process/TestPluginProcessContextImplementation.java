@@ -21,6 +21,8 @@
 
 package net.grinder.engine.process;
 
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertSame;
 import static org.junit.Assert.fail;
 import static org.mockito.Matchers.eq;
@@ -34,6 +36,7 @@ import net.grinder.plugininterface.PluginException;
 import net.grinder.plugininterface.PluginProcessContext;
 import net.grinder.plugininterface.PluginThreadListener;
 import net.grinder.script.Grinder.ScriptContext;
+import net.grinder.statistics.StatisticsServicesImplementation;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -56,6 +59,7 @@ public class TestPluginProcessContextImplementation {
   @Mock private ScriptContext m_scriptContext;
   @Mock private PluginThreadListener m_pluginThreadListener;
   @Mock private Marker m_logMarker;
+  @Mock private DispatchContext m_dispatchContext;
 
   @Before public void setUp() {
     MockitoAnnotations.initMocks(this);
@@ -125,4 +129,35 @@ public class TestPluginProcessContextImplementation {
 
     verifyNoMoreInteractions(m_plugin, m_logger, m_threadContext);
   }
+
+  @Test public void testGetStatisticsForCurrentTest() throws Exception {
+
+    final StubThreadContextLocator threadContextLocator =
+      new StubThreadContextLocator();
+
+    final PluginProcessContext processContext =
+      new PluginProcessContextImplementation(threadContextLocator, m_logger);
+
+    assertNull(processContext.getStatisticsForCurrentTest());
+
+    threadContextLocator.set(m_threadContext);
+
+    assertNull(processContext.getStatisticsForCurrentTest());
+
+    final StatisticsForTestImplementation statisticsForTest =
+      new StatisticsForTestImplementation(
+        m_dispatchContext,
+        null,
+        StatisticsServicesImplementation.getInstance()
+        .getStatisticsSetFactory().create());
+    when(m_threadContext.getStatisticsForCurrentTest())
+      .thenReturn(statisticsForTest);
+
+    assertSame(statisticsForTest,
+               processContext.getStatisticsForCurrentTest());
+
+    // The statistics are not marked as exposed, so the engine can reuse
+    // them for a later test.
+    assertFalse(statisticsForTest.isExposed());
+  }
 }
@@ -40,9 +40,10 @@ public class TestStopWatchImplementation extends TestCase {
       new TimeAuthorityStubFactory();
     final TimeAuthority timeAuthority =
       timeAuthorityStubFactory.getStub();
+    final TestClock testClock = new MillisecondTestClock(timeAuthority);
     timeAuthorityStubFactory.nextTime(2000);
 
-    final StopWatch stopWatch = new StopWatchImplementation(timeAuthority);
+    final StopWatch stopWatch = new StopWatchImplementation(testClock);
 
     try {
       stopWatch.stop();
@@ -81,7 +82,7 @@ public class TestStopWatchImplementation extends TestCase {
 
     timeAuthorityStubFactory.assertNoMoreCalls();
 
-    final StopWatch stopWatch2 = new StopWatchImplementation(timeAuthority);
+    final StopWatch stopWatch2 = new StopWatchImplementation(testClock);
 
     try {
       stopWatch2.add(stopWatch);
@@ -1,4 +1,4 @@
-// Copyright (C) 2000 - 2009 Philip Aston
+// Copyright (C) 2000 - 2013 Philip Aston
 // All rights reserved.
 //
 // This file is part of The Grinder software distribution. Refer to
@@ -21,8 +21,11 @@
 
 package net.grinder.engine.process;
 
+import java.lang.management.ManagementFactory;
+
 import junit.framework.TestCase;
 
+import net.grinder.common.GrinderProperties;
 import net.grinder.common.Test;
 import net.grinder.common.StubTest;
 import net.grinder.engine.common.EngineException;
@@ -49,6 +52,8 @@ public class TestTestData extends TestCase {
 
   private static final StatisticsIndexMap.LongSampleIndex s_timedTestsIndex;
   private static final StatisticsIndexMap.LongIndex s_untimedTestsIndex;
+  private static final StatisticsIndexMap.LongSampleIndex s_correctedTimeIndex;
+  private static final StatisticsIndexMap.LongSampleIndex s_scheduleDelayIndex;
 
   static {
     final StatisticsIndexMap indexMap =
@@ -56,6 +61,8 @@ public class TestTestData extends TestCase {
 
     s_timedTestsIndex= indexMap.getLongSampleIndex("timedTests");
     s_untimedTestsIndex= indexMap.getLongIndex("untimedTests");
+    s_correctedTimeIndex= indexMap.getLongSampleIndex("correctedTime");
+    s_scheduleDelayIndex= indexMap.getLongSampleIndex("scheduleDelay");
   }
 
 
@@ -80,15 +87,23 @@ public class TestTestData extends TestCase {
   private final ThreadContext m_threadContext =
     m_threadContextStubFactory.getStub();
 
-  private final StandardTimeAuthority m_timeAuthority =
-    new StandardTimeAuthority();
+  private final TestClock m_testClock =
+    new MillisecondTestClock(new StandardTimeAuthority());
+
+  @Override protected void setUp() throws Exception {
+    super.setUp();
+
+    // By default, runs are not scheduled.
+    m_threadContextStubFactory.setResult("getRunScheduleDelay", -1L);
+    m_threadContextStubFactory.setIgnoreMethod("getRunScheduleDelay");
+  }
 
   public void testCreateProxy() throws Exception {
     final Test test1 = new StubTest(1, "test1");
 
     final TestData testData =
       new TestData(null, m_statisticsSetFactory, null,
-                   m_timeAuthority, m_instrumenter, test1);
+                   m_testClock, m_instrumenter, test1);
 
     final Object original = new Object();
 
@@ -106,7 +121,7 @@ public class TestTestData extends TestCase {
       new TestData(m_threadContextLocator,
                    m_statisticsSetFactory,
                    m_testStatisticsHelper,
-                   m_timeAuthority,
+                   m_testClock,
                    m_instrumenter,
                    test1);
 
@@ -252,7 +267,7 @@ public class TestTestData extends TestCase {
       new TestData(m_threadContextLocator,
                    m_statisticsSetFactory,
                    testStatisticsHelper,
-                   m_timeAuthority,
+                   m_testClock,
                    m_instrumenter,
                    test1);
 
@@ -319,6 +334,7 @@ public class TestTestData extends TestCase {
     // Its easier for the test to update the statistics by hand.
     dispatchStatisticsForTest.setLong("untimedTests", 2);
 
+    m_threadContextStubFactory.setResult("getRunScheduleDelay", 7L);
     dispatchContext.report();
 
     try {
@@ -332,6 +348,10 @@ public class TestTestData extends TestCase {
     // successful, timed test.
     assertEquals(1, statistics.getCount(s_timedTestsIndex));
     assertEquals(0, statistics.getValue(s_untimedTestsIndex));
+    assertEquals(1, statistics.getCount(s_scheduleDelayIndex));
+    assertEquals(7, statistics.getSum(s_scheduleDelayIndex));
+    assertEquals(statistics.getSum(s_timedTestsIndex) + 7,
+                 statistics.getSum(s_correctedTimeIndex));
 
     assertEquals(-1, dispatchContext.getElapsedTime());
     assertNull(dispatchContext.getStatisticsForTest());
@@ -367,12 +387,125 @@ public class TestTestData extends TestCase {
     assertTrue(statistics.isComposite());
   }
 
+  public void testSteadyStateDispatchDoesNotAllocate() throws Exception {
+    final java.lang.management.ThreadMXBean threadMXBean =
+      ManagementFactory.getThreadMXBean();
+
+    if (!(threadMXBean instanceof com.sun.management.ThreadMXBean)) {
+      return;
+    }
+
+    final com.sun.management.ThreadMXBean allocationMXBean =
+      (com.sun.management.ThreadMXBean) threadMXBean;
+
+    if (!allocationMXBean.isThreadAllocatedMemorySupported() ||
+        !allocationMXBean.isThreadAllocatedMemoryEnabled()) {
+      return;
+    }
+
+    final GrinderProperties properties = new GrinderProperties();
+    properties.setBoolean("grinder.logData", false);
+
+    final ThreadContext threadContext =
+      new ThreadContextImplementation(
+        properties,
+        StatisticsServicesImplementation.getInstance(),
+        1,
+        null);
+
+    m_threadContextLocator.set(threadContext);
+
+    final TestData testData =
+      new TestData(m_threadContextLocator,
+                   m_statisticsSetFactory,
+                   new TestStatisticsHelperImplementation(
+                     StatisticsServicesImplementation.getInstance()
+                     .getStatisticsIndexMap()),
+                   m_testClock,
+                   m_instrumenter,
+                   new StubTest(1, "test1"));
+
+    final int iterations = 20000;
+
+    // Warm up, giving the JIT a chance to compile the dispatch path.
+    for (int i = 0; i < iterations * 5; ++i) {
+      testData.start();
+      testData.end(i % 100 != 0);
+    }
+
+    final long threadID = Thread.currentThread().getId();
+    final long before = allocationMXBean.getThreadAllocatedBytes(threadID);
+
+    for (int i = 0; i < iterations; ++i) {
+      testData.start();
+      testData.end(i % 100 != 0);
+    }
+
+    final long allocated =
+      allocationMXBean.getThreadAllocatedBytes(threadID) - before;
+
+    assertEquals("Bytes allocated per start()/end()/report() cycle",
+                 0, allocated / iterations);
+
+    assertEquals(iterations * 6 - iterations * 6 / 100,
+                 testData.getTestStatistics().getCount(s_timedTestsIndex));
+  }
+
+  public void testExposedStatisticsAreNotReused() throws Exception {
+    final GrinderProperties properties = new GrinderProperties();
+    properties.setBoolean("grinder.logData", false);
+
+    final ThreadContext threadContext =
+      new ThreadContextImplementation(
+        properties,
+        StatisticsServicesImplementation.getInstance(),
+        1,
+        null);
+
+    m_threadContextLocator.set(threadContext);
+
+    final TestData testData =
+      new TestData(m_threadContextLocator,
+                   m_statisticsSetFactory,
+                   new TestStatisticsHelperImplementation(
+                     StatisticsServicesImplementation.getInstance()
+                     .getStatisticsIndexMap()),
+                   m_testClock,
+                   m_instrumenter,
+                   new StubTest(1, "test1"));
+
+    testData.start();
+    testData.end(false);
+
+    final StatisticsForTestImplementation held =
+      (StatisticsForTestImplementation)
+      threadContext.getStatisticsForLastTest();
+    held.setExposed();
+
+    for (int i = 0; i < 5; ++i) {
+      testData.start();
+      testData.end(true);
+
+      assertNotSame(held, threadContext.getStatisticsForLastTest());
+      assertTrue(threadContext.getStatisticsForLastTest().getSuccess());
+    }
+
+    assertFalse(held.getSuccess());
+
+    try {
+      held.reset();
+      fail("Expected IllegalStateException");
+    }
+    catch (IllegalStateException e) {
+    }
+  }
+
   public void testDispatchForBug1593169() throws Exception {
     final TestData testData =
       new TestData(m_threadContextLocator,
                    m_statisticsSetFactory,
                    m_testStatisticsHelper,
-                   m_timeAuthority,
+                   m_testClock,
                    m_instrumenter,
                    new StubTest(1, "test1"));
 
@@ -62,7 +62,7 @@ public class TestTestRegistry extends TestCase {
     final TestRegistryImplementation testRegistryImplementation =
       new TestRegistryImplementation(
         threadContextLocator, statisticsSetFactory, m_testStatisticsHelper,
-        m_timeAuthority);
+        new MillisecondTestClock(m_timeAuthority));
 
     assertNotNull(testRegistryImplementation.getTestStatisticsMap());
 
@@ -79,7 +79,7 @@ public class TestTestRegistry extends TestCase {
     final TestRegistryImplementation testRegistryImplementation =
       new TestRegistryImplementation(
         threadContextLocator, statisticsSetFactory, m_testStatisticsHelper,
-        m_timeAuthority);
+        new MillisecondTestClock(m_timeAuthority));
 
     assertNull(testRegistryImplementation.getNewTests());
 
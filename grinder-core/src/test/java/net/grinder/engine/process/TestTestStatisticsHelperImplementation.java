@@ -52,6 +52,12 @@ public class TestTestStatisticsHelperImplementation extends TestCase {
   private final StatisticsIndexMap.LongIndex m_untimedTestsIndex =
     m_indexMap.getLongIndex("untimedTests");
 
+  private final StatisticsIndexMap.LongSampleIndex m_correctedTimeIndex =
+    m_indexMap.getLongSampleIndex("correctedTime");
+
+  private final StatisticsIndexMap.LongSampleIndex m_scheduleDelayIndex =
+    m_indexMap.getLongSampleIndex("scheduleDelay");
+
 
   public void testSuccessMethods() throws Exception {
     final TestStatisticsHelper helper =
@@ -93,6 +99,8 @@ public class TestTestStatisticsHelperImplementation extends TestCase {
     helper.recordTest(statistics, 1234);
     assertEquals(0, statistics.getValue(m_errorsIndex));
     assertEquals(1234, statistics.getSum(m_timedTestsIndex));
+    assertEquals(0, statistics.getCount(m_correctedTimeIndex));
+    assertEquals(0, statistics.getCount(m_scheduleDelayIndex));
 
     statistics.setValue(m_untimedTestsIndex, 1);
     helper.recordTest(statistics, 999);
@@ -107,6 +115,32 @@ public class TestTestStatisticsHelperImplementation extends TestCase {
     assertEquals(0, statistics.getValue(m_untimedTestsIndex));
   }
 
+  public void testRecordScheduleDelay() throws Exception {
+
+    final StatisticsSet statistics =
+      m_statisticsServices.getStatisticsSetFactory().create();
+
+    final TestStatisticsHelper helper =
+      new TestStatisticsHelperImplementation(m_indexMap);
+
+    helper.recordTest(statistics, 100);
+    helper.recordScheduleDelay(statistics, 20);
+
+    assertEquals(100, statistics.getSum(m_timedTestsIndex));
+    assertEquals(1, statistics.getCount(m_scheduleDelayIndex));
+    assertEquals(20, statistics.getSum(m_scheduleDelayIndex));
+    assertEquals(1, statistics.getCount(m_correctedTimeIndex));
+    assertEquals(120, statistics.getSum(m_correctedTimeIndex));
+
+    helper.recordTest(statistics, 50);
+    helper.recordScheduleDelay(statistics, 0);
+
+    assertEquals(50, statistics.getSum(m_timedTestsIndex));
+    assertEquals(1, statistics.getCount(m_scheduleDelayIndex));
+    assertEquals(0, statistics.getSum(m_scheduleDelayIndex));
+    assertEquals(50, statistics.getSum(m_correctedTimeIndex));
+  }
+
   public void testRemoveTestTimeFromSample() throws Exception {
 
     final TestStatisticsHelper helper =
@@ -116,6 +150,8 @@ public class TestTestStatisticsHelperImplementation extends TestCase {
       m_statisticsServices.getStatisticsSetFactory().create();
     statistics1.addSample(m_timedTestsIndex, 21321);
     statistics1.addSample(m_timedTestsIndex, 1231);
+    statistics1.addSample(m_correctedTimeIndex, 1231);
+    statistics1.addSample(m_scheduleDelayIndex, 0);
 
     assertEquals(21321 + 1231, helper.getTestTime(statistics1));
 
@@ -137,6 +173,8 @@ public class TestTestStatisticsHelperImplementation extends TestCase {
     assertEquals(2, statistics1.getValue(m_untimedTestsIndex));
     assertEquals(0, statistics1.getCount(m_timedTestsIndex));
     assertEquals(0, statistics1.getSum(m_timedTestsIndex));
+    assertEquals(0, statistics1.getCount(m_correctedTimeIndex));
+    assertEquals(0, statistics1.getCount(m_scheduleDelayIndex));
     assertEquals(0, helper.getTestTime(statistics1));
 
     assertEquals(1, statistics2.getValue(m_errorsIndex));
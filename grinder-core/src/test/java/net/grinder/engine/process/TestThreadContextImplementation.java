@@ -37,6 +37,9 @@ import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.when;
+
+import java.io.File;
+
 import net.grinder.common.GrinderProperties;
 import net.grinder.common.SSLContextFactory;
 import net.grinder.common.StubTest;
@@ -113,6 +116,48 @@ public class TestThreadContextImplementation {
                               isA(DataLogArguments.class));
   }
 
+  @Test public void testBinaryDispatchResultReporter() throws Exception {
+
+    final File file = File.createTempFile("data", ".bin");
+
+    try {
+      final BinaryDataLog binaryDataLog =
+        new BinaryDataLog(file,
+                          "header",
+                          m_statisticsServices.getDetailStatisticsView()
+                            .getExpressionViews(),
+                          m_dataLogger);
+
+      final ThreadContext threadContext =
+        new ThreadContextImplementation(m_properties,
+                                        m_statisticsServices,
+                                        1,
+                                        m_dataLogger,
+                                        null,
+                                        binaryDataLog);
+
+      final StatisticsSet statistics =
+        m_statisticsServices.getStatisticsSetFactory().create();
+
+      threadContext.getDispatchResultReporter().report(
+        new StubTest(22, "test"), 123456, statistics);
+
+      binaryDataLog.close();
+
+      verifyNoMoreInteractions(m_dataLogger);
+
+      final BinaryDataLogReader reader = new BinaryDataLogReader(file);
+      assertTrue(reader.next());
+      assertEquals(1, reader.getThreadNumber());
+      assertEquals(22, reader.getTestNumber());
+      assertEquals(123456, reader.getStartTime());
+      reader.close();
+    }
+    finally {
+      file.delete();
+    }
+  }
+
   @Test public void testNullDispatchResultReporter() throws Exception {
 
     when(m_properties.getProperty("grinder.logData")).thenReturn("false");
@@ -1,4 +1,4 @@
-// Copyright (C) 2005 - 2012 Philip Aston
+// Copyright (C) 2005 - 2013 Philip Aston
 // All rights reserved.
 //
 // This file is part of The Grinder software distribution. Refer to
@@ -22,6 +22,7 @@
 package net.grinder.engine.process;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertSame;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.verify;
@@ -139,4 +140,45 @@ public class TestThreadDataLogger {
     verify(m_dataLogger).info(eq("33, 11, 3, 530, 5, 0, 1.5"),
                               m_argumentCaptor.capture());
   }
+
+  @Test public void testAsyncReport() throws Exception {
+    final AsyncDataLog asyncDataLog =
+      new AsyncDataLog(10, AsyncDataLog.OverflowPolicy.BLOCK);
+
+    final ThreadDataLogger threadDataLogger =
+      new ThreadDataLogger(
+          m_dataLogger,
+          asyncDataLog,
+          m_statisticsServices.getStatisticsSetFactory(),
+          m_statisticsServices.getDetailStatisticsView().getExpressionViews(),
+          33);
+
+    final StatisticsSet statistics =
+      m_statisticsServices.getStatisticsSetFactory().create();
+
+    statistics.addSample(s_timedTestsIndex, 99);
+
+    threadDataLogger.report(10, m_test1, 123L, statistics);
+
+    statistics.reset();
+    statistics.setValue(s_errorsIndex, 1);
+
+    threadDataLogger.report(10, m_test3, 124L, statistics);
+
+    statistics.reset();
+
+    asyncDataLog.shutdown();
+
+    verify(m_dataLogger).info(eq("33, 10, 1, 123, 99, 0"),
+                              m_argumentCaptor.capture());
+
+    final DataLogArguments arguments = m_argumentCaptor.getValue();
+
+    assertEquals(33, arguments.getThreadNumber());
+    assertSame(m_test1, arguments.getTest());
+    assertNotSame(statistics, arguments.getStatistics());
+
+    verify(m_dataLogger).info(eq("33, 10, 3, 124, 0, 1"),
+                              m_argumentCaptor.capture());
+  }
 }
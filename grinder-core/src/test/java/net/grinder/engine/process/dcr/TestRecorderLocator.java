@@ -1,4 +1,4 @@
-// Copyright (C) 2009 - 2012 Philip Aston
+// Copyright (C) 2009 - 2013 Philip Aston
 // All rights reserved.
 //
 // This file is part of The Grinder software distribution. Refer to
@@ -22,6 +22,7 @@
 package net.grinder.engine.process.dcr;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
@@ -29,11 +30,13 @@ import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
 
+import java.lang.ref.WeakReference;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Random;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -108,6 +111,124 @@ public class TestRecorderLocator {
     verifyNoMoreInteractions(m_recorder);
   }
 
+  @Test public void testSlots() throws Exception {
+    final Object target = new Object();
+    final Object target2 = new Object();
+    final Object target3 = new Object();
+
+    final int slot = RecorderLocator.slot("location");
+    assertEquals(slot, RecorderLocator.slot(new String("location")));
+    assertTrue(slot != RecorderLocator.slot("location2"));
+
+    m_recorderRegistry.register(target, "location", m_recorder);
+
+    RecorderLocator.enter(target, slot);
+    RecorderLocator.exit(target, slot, true);
+    verify(m_recorder).start();
+    verify(m_recorder).end(true);
+
+    // Wrong target.
+    RecorderLocator.enter(target2, slot);
+    RecorderLocator.exit(target2, slot, true);
+    RecorderLocator.enter(null, slot);
+    RecorderLocator.exit(null, slot, true);
+
+    m_recorderRegistry.register(target2, "location", m_recorder2);
+    m_recorderRegistry.register(target2, "location", m_recorder2);
+
+    RecorderLocator.enter(target2, slot);
+    RecorderLocator.exit(target2, slot, false);
+    verify(m_recorder2).start();
+    verify(m_recorder2).end(false);
+
+    m_recorderRegistry.register(target, target3, "location", m_recorder2);
+
+    RecorderLocator.enter(target, target3, slot);
+    RecorderLocator.exit(target, target3, slot, true);
+    verify(m_recorder2, times(2)).start();
+    verify(m_recorder2).end(true);
+
+    RecorderLocator.enter(target3, target, slot);
+    RecorderLocator.exit(target3, target, slot, true);
+    RecorderLocator.enter(target, null, slot);
+    RecorderLocator.exit(target, null, slot, true);
+
+    // Clearing the recorders keeps the slot.
+    RecorderLocator.clearRecorders();
+    assertEquals(slot, RecorderLocator.slot("location"));
+
+    RecorderLocator.enter(target, slot);
+    RecorderLocator.exit(target, slot, true);
+    RecorderLocator.enter(target, target3, slot);
+    RecorderLocator.exit(target, target3, slot, true);
+
+    verifyNoMoreInteractions(m_recorder, m_recorder2);
+  }
+
+  @Test public void testReplaceCollectedFirstTarget() throws Exception {
+    Object target = new Object();
+    final WeakReference<Object> reference = new WeakReference<Object>(target);
+    final Object target2 = new Object();
+
+    m_recorderRegistry.register(target, "location", m_recorder);
+    m_recorderRegistry.register(target2, "location", m_recorder);
+
+    target = null;
+
+    for (int i = 0; reference.get() != null && i < 100; ++i) {
+      System.gc();
+      Thread.sleep(10);
+    }
+
+    assertNull(reference.get());
+
+    // The second target replaces the collected first target, and keeps the
+    // recorder it already had.
+    m_recorderRegistry.register(target2, "location", m_recorder2);
+
+    RecorderLocator.enter(target2, "location");
+    RecorderLocator.exit(target2, "location", true);
+
+    verify(m_recorder).start();
+    verify(m_recorder).end(true);
+    verify(m_recorder2).start();
+    verify(m_recorder2).end(true);
+
+    m_recorderRegistry.register(target2, "location", m_recorder2);
+
+    RecorderLocator.enter(target2, "location");
+    verify(m_recorder, times(2)).start();
+    verify(m_recorder2, times(2)).start();
+
+    verifyNoMoreInteractions(m_recorder, m_recorder2);
+  }
+
+  @Test public void testConcurrentSlots() throws Exception {
+    final ExecutorService executor = Executors.newFixedThreadPool(4);
+
+    final List<Future<?>> futures = new ArrayList<Future<?>>();
+
+    for (int i = 0; i < 4; ++i) {
+      final int thread = i;
+
+      futures.add(executor.submit(new Runnable() {
+        @Override public void run() {
+          for (int j = 0; j < 500; ++j) {
+            final int slot = RecorderLocator.slot("slot" + thread + "/" + j);
+
+            RecorderLocator.enter(this, slot);
+            RecorderLocator.exit(this, slot, true);
+          }
+        }}));
+    }
+
+    for (final Future<?> future : futures) {
+      future.get();
+    }
+
+    executor.shutdown();
+  }
+
   @Test public void testBadRegistration() throws Exception {
     final Object target = new Object();
 
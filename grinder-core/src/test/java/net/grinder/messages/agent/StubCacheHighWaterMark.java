@@ -1,4 +1,4 @@
-// Copyright (C) 2008 Philip Aston
+// Copyright (C) 2008 - 2013 Philip Aston
 // All rights reserved.
 //
 // This file is part of The Grinder software distribution. Refer to
@@ -21,6 +21,10 @@
 
 package net.grinder.messages.agent;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
 import net.grinder.messages.agent.CacheHighWaterMark;
 
 
@@ -38,6 +42,21 @@ public class StubCacheHighWaterMark implements CacheHighWaterMark {
     m_time = height;
   }
 
+  public StubCacheHighWaterMark(DataInput in) throws IOException {
+    m_cacheID = in.readBoolean() ? in.readUTF() : null;
+    m_time = in.readLong();
+  }
+
+  public void writeBinary(DataOutput out) throws IOException {
+    out.writeBoolean(m_cacheID != null);
+
+    if (m_cacheID != null) {
+      out.writeUTF(m_cacheID);
+    }
+
+    out.writeLong(m_time);
+  }
+
   public boolean isLater(CacheHighWaterMark other) {
     return m_time >= ((StubCacheHighWaterMark)other).m_time;
   }
@@ -1,4 +1,4 @@
-// Copyright (C) 2000 - 2011 Philip Aston
+// Copyright (C) 2000 - 2013 Philip Aston
 // All rights reserved.
 //
 // This file is part of The Grinder software distribution. Refer to
@@ -22,10 +22,12 @@
 package net.grinder.messages.agent;
 
 import java.io.File;
+import java.util.zip.Deflater;
 
 import net.grinder.common.GrinderProperties;
 import net.grinder.testutility.AbstractFileTestCase;
 import net.grinder.testutility.Serializer;
+import net.grinder.util.FileChunk;
 import net.grinder.util.FileContents;
 
 import org.junit.Test;
@@ -70,6 +72,20 @@ public class TestAgentMessages extends AbstractFileTestCase {
                  received.getFileContents().toString());
   }
 
+  @Test public void testDistributeFileChunkMessage() throws Exception {
+    final byte[] bytes = "Hello world".getBytes();
+
+    final FileChunk fileChunk =
+      new FileChunk(new File("test"), "abc", 10, bytes, bytes.length, true,
+                    new Deflater());
+
+    final DistributeFileChunkMessage received =
+      Serializer.serialize(new DistributeFileChunkMessage(fileChunk));
+
+    assertEquals(fileChunk.toString(), received.getFileChunk().toString());
+    assertEquals("abc", received.getFileChunk().getDigest());
+  }
+
   @Test public void testClearCacheMessage() throws Exception {
     Serializer.serialize(new ClearCacheMessage());
   }
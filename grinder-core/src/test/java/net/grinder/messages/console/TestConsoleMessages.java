@@ -23,26 +23,38 @@ package net.grinder.messages.console;
 
 import static net.grinder.testutility.AssertUtilities.assertNotEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 
+import net.grinder.common.StubTest;
 import net.grinder.common.processidentity.ProcessReport.State;
 import net.grinder.common.processidentity.WorkerIdentity;
 import net.grinder.communication.Address;
+import net.grinder.communication.BinaryMessage;
 import net.grinder.communication.CommunicationException;
+import net.grinder.communication.Message;
 import net.grinder.engine.agent.StubAgentIdentity;
 import net.grinder.messages.agent.CacheHighWaterMark;
 import net.grinder.messages.agent.StubCacheHighWaterMark;
 import net.grinder.statistics.ExpressionView;
 import net.grinder.statistics.StatisticExpressionFactory;
 import net.grinder.statistics.StatisticsServicesImplementation;
+import net.grinder.statistics.StatisticsSet;
 import net.grinder.statistics.StatisticsSetFactory;
 import net.grinder.statistics.TestStatisticsMap;
 import net.grinder.testutility.Serializer;
@@ -75,6 +87,15 @@ public class TestConsoleMessages {
 
     assertEquals(original.getExpressionView(),
                  received.getExpressionView());
+    assertFalse(received.getExpressionView().isTestTime());
+
+    final RegisterExpressionViewMessage testTimeMessage =
+      new RegisterExpressionViewMessage(
+        statisticExpressionFactory.createExpressionView(
+          "Two", "(sum timedTests)", false).asTestTime());
+
+    assertTrue(Serializer.serialize(testTimeMessage)
+               .getExpressionView().isTestTime());
 
     final ExpressionView view2 =
       statisticExpressionFactory
@@ -121,6 +142,24 @@ public class TestConsoleMessages {
     assertEquals(original.getTests(), received.getTests());
   }
 
+  @Test public void testRegisterTestsMessageBinary() throws Exception {
+
+    final List<net.grinder.common.Test> tests =
+      new ArrayList<net.grinder.common.Test>();
+    tests.add(new StubTest(1, "first"));
+    tests.add(new StubTest(3, null));
+
+    final RegisterTestsMessage received =
+      new RegisterTestsMessage(writeBinary(new RegisterTestsMessage(tests)));
+
+    final List<net.grinder.common.Test> receivedTests =
+      new ArrayList<net.grinder.common.Test>(received.getTests());
+
+    assertEquals(tests, receivedTests);
+    assertEquals("first", receivedTests.get(0).getDescription());
+    assertEquals(null, receivedTests.get(1).getDescription());
+  }
+
   @Test public void testReportStatisticsMessage() throws Exception {
 
     final StatisticsSetFactory statisticsSetFactory =
@@ -136,6 +175,93 @@ public class TestConsoleMessages {
     final ReportStatisticsMessage received = Serializer.serialize(original);
 
     assertEquals(original.getStatisticsDelta(), received.getStatisticsDelta());
+    assertEquals(TimeUnit.MILLISECONDS, received.getTimeUnit());
+
+    final ReportStatisticsMessage original2 =
+      new ReportStatisticsMessage(statisticsDelta, TimeUnit.NANOSECONDS);
+
+    final ReportStatisticsMessage received2 = Serializer.serialize(original2);
+
+    assertEquals(statisticsDelta, received2.getStatisticsDelta());
+    assertEquals(TimeUnit.NANOSECONDS, received2.getTimeUnit());
+  }
+
+  @Test public void testReportStatisticsMessageBinary() throws Exception {
+
+    final StatisticsSetFactory statisticsSetFactory =
+      StatisticsServicesImplementation.getInstance().getStatisticsSetFactory();
+    final TestStatisticsMap statisticsDelta =
+      new TestStatisticsMap(statisticsSetFactory);
+
+    final StatisticsSet statistics = statisticsSetFactory.create();
+    statistics.addSample(
+      StatisticsServicesImplementation.getInstance().getStatisticsIndexMap()
+      .getLongSampleIndex("timedTests"), 123);
+    statisticsDelta.put(new StubTest(1, "test"), statistics);
+
+    final ReportStatisticsMessage original =
+      new ReportStatisticsMessage(statisticsDelta, TimeUnit.MICROSECONDS);
+    assertEquals(0, original.getEncodedSize());
+
+    final ReportStatisticsMessage received =
+      new ReportStatisticsMessage(writeBinary(original));
+
+    assertEquals(statisticsDelta, received.getStatisticsDelta());
+    assertEquals(TimeUnit.MICROSECONDS, received.getTimeUnit());
+    assertTrue(original.getEncodedSize() > 0);
+    assertEquals(original.getEncodedSize(), received.getEncodedSize());
+
+    final ReportStatisticsCounter counter = new ReportStatisticsCounter();
+    counter.add(received);
+    counter.add(new ReportStatisticsMessage(statisticsDelta));
+    assertEquals(1, counter.getNumberOfReports());
+    assertEquals(received.getEncodedSize(), counter.getNumberOfBytes());
+
+    final ByteArrayOutputStream serialised = new ByteArrayOutputStream();
+    final ObjectOutputStream objectStream = new ObjectOutputStream(serialised);
+    objectStream.writeObject(received);
+    objectStream.close();
+    assertEquals(serialised.size(), counter.getNumberOfSerialisedBytes());
+
+    assertEquals("1 statistics reports, " + received.getEncodedSize() +
+                 " bytes, " + received.getEncodedSize() +
+                 " bytes per report (about " + serialised.size() +
+                 " bytes per report with Java serialisation)",
+                 counter.toString());
+
+    // Only a sample of the reports is serialised; the serialised size of
+    // the rest is estimated.
+    final int n = ReportStatisticsCounter.SAMPLE_INTERVAL * 2 + 50;
+
+    for (int i = 1; i < n; ++i) {
+      counter.add(received);
+    }
+
+    assertEquals(n, counter.getNumberOfReports());
+    assertEquals(n * received.getEncodedSize(), counter.getNumberOfBytes());
+    assertEquals(n * serialised.size(),
+                 counter.getNumberOfSerialisedBytes());
+
+    assertEquals(0, new ReportStatisticsCounter().getNumberOfSerialisedBytes());
+  }
+
+  @Test public void testReportStatisticsMessageBinaryBadInput()
+    throws Exception {
+
+    final byte[][] inputs = {
+      { 99 },
+      { 0, (byte)0xFF, (byte)0xFF, (byte)0xFF, (byte)0xFF },
+    };
+
+    for (byte[] input : inputs) {
+      try {
+        new ReportStatisticsMessage(
+          new DataInputStream(new ByteArrayInputStream(input)));
+        fail("Expected IOException");
+      }
+      catch (IOException e) {
+      }
+    }
   }
 
   @Test public void testWorkerReportMessage() throws Exception {
@@ -145,7 +271,7 @@ public class TestConsoleMessages {
     final WorkerIdentity workerIdentity = agentIdentity.createWorkerIdentity();
 
     final WorkerProcessReportMessage original =
-      new WorkerProcessReportMessage(State.RUNNING, (short)2, (short)3);
+      new WorkerProcessReportMessage(State.RUNNING, 2, 3);
 
     final WorkerAddress address = new WorkerAddress(workerIdentity);
     original.setAddress(address);
@@ -165,6 +291,24 @@ public class TestConsoleMessages {
     assertEquals(3, received.getMaximumNumberOfThreads());
   }
 
+  @Test public void testWorkerReportMessageBinary() throws Exception {
+
+    final WorkerProcessReportMessage original =
+      new WorkerProcessReportMessage(State.FINISHED, 70000, 100000);
+
+    final WorkerProcessReportMessage received =
+      new WorkerProcessReportMessage(writeBinary(original));
+
+    assertEquals(original, received);
+    assertEquals(70000, received.getNumberOfRunningThreads());
+  }
+
+  @Test(expected=IOException.class)
+  public void testWorkerReportMessageBinaryBadState() throws Exception {
+    new WorkerProcessReportMessage(
+      new DataInputStream(new ByteArrayInputStream(new byte[] { 99 })));
+  }
+
   @Test public void testWorkerReportMessageEquality() throws Exception {
 
     final StubAgentIdentity agentIdentity =
@@ -172,7 +316,7 @@ public class TestConsoleMessages {
     final WorkerIdentity workerIdentity = agentIdentity.createWorkerIdentity();
 
     final WorkerProcessReportMessage m1 =
-      new WorkerProcessReportMessage(State.RUNNING, (short)2, (short)3);
+      new WorkerProcessReportMessage(State.RUNNING, 2, 3);
 
     assertEquals(m1, m1);
     assertEquals(m1.hashCode(), m1.hashCode());
@@ -180,7 +324,7 @@ public class TestConsoleMessages {
     assertNotEquals(m1, this);
 
     final WorkerProcessReportMessage m2 =
-        new WorkerProcessReportMessage(State.RUNNING, (short)2, (short)3);
+        new WorkerProcessReportMessage(State.RUNNING, 2, 3);
 
     m2.setAddress(new WorkerAddress(workerIdentity));
 
@@ -189,24 +333,24 @@ public class TestConsoleMessages {
 
     assertNotEquals(m1,
                     new WorkerProcessReportMessage(State.STARTED,
-                                                   (short)2,
-                                                   (short)3));
+                                                   2,
+                                                   3));
 
     assertNotEquals(m1,
                     new WorkerProcessReportMessage(State.RUNNING,
-                                                   (short)1,
-                                                   (short)3));
+                                                   1,
+                                                   3));
     assertNotEquals(m1,
                     new WorkerProcessReportMessage(State.RUNNING,
-                                                   (short)2,
-                                                   (short)2));
+                                                   2,
+                                                   2));
 
   }
 
   @Test public void testWorkerReportMessageBadAddress() throws Exception {
 
     final WorkerProcessReportMessage message =
-      new WorkerProcessReportMessage(State.RUNNING, (short)2, (short)3);
+      new WorkerProcessReportMessage(State.RUNNING, 2, 3);
 
     final Address badAddress =
       new AgentAddress(new StubAgentIdentity("Agent"));
@@ -246,6 +390,48 @@ public class TestConsoleMessages {
     assertEquals(cacheHighWaterMark, received.getCacheHighWaterMark());
   }
 
+  @Test public void testAgentReportMessageBinary() throws Exception {
+
+    final AgentProcessReportMessage original =
+      new AgentProcessReportMessage(State.STARTED,
+                                    new StubCacheHighWaterMark("", 100));
+
+    final AgentProcessReportMessage received =
+      new AgentProcessReportMessage(writeBinary(original));
+
+    assertEquals(original, received);
+  }
+
+  @Test public void testAgentReportMessageBinaryBadInput() throws Exception {
+    assertBadAgentReport(new byte[] { 99 });
+
+    final ByteArrayOutputStream byteStream = new ByteArrayOutputStream();
+    final DataOutputStream out = new DataOutputStream(byteStream);
+    out.writeByte(State.RUNNING.ordinal());
+    out.writeUTF(String.class.getName());
+    out.close();
+
+    assertBadAgentReport(byteStream.toByteArray());
+
+    byteStream.reset();
+    final DataOutputStream out2 = new DataOutputStream(byteStream);
+    out2.writeByte(State.RUNNING.ordinal());
+    out2.writeUTF("no.such.Class");
+    out2.close();
+
+    assertBadAgentReport(byteStream.toByteArray());
+  }
+
+  private static void assertBadAgentReport(byte[] bytes) throws Exception {
+    try {
+      new AgentProcessReportMessage(
+        new DataInputStream(new ByteArrayInputStream(bytes)));
+      fail("Expected IOException");
+    }
+    catch (IOException e) {
+    }
+  }
+
   @Test public void testAgentReportMessageEquality() throws Exception {
 
     final StubAgentIdentity agentIdentity =
@@ -295,4 +481,83 @@ public class TestConsoleMessages {
     catch (final CommunicationException e) {
     }
   }
+
+  @Test public void testAggregatedReportMessage() throws Exception {
+    final WorkerAddress workerAddress =
+      new WorkerAddress(new StubAgentIdentity("Agent").createWorkerIdentity());
+
+    // StubTests aren't serialisable, so we don't register any.
+    final List<net.grinder.common.Test> tests =
+      new ArrayList<net.grinder.common.Test>();
+
+    final StatisticsSetFactory statisticsSetFactory =
+      StatisticsServicesImplementation.getInstance().getStatisticsSetFactory();
+    final TestStatisticsMap statistics =
+      new TestStatisticsMap(statisticsSetFactory);
+    statistics.put(new StubTest(1, "first"), statisticsSetFactory.create());
+
+    final List<Message> messages = new ArrayList<Message>();
+    final List<Address> addresses = new ArrayList<Address>();
+    messages.add(new RegisterTestsMessage(tests));
+    addresses.add(null);
+    messages.add(new WorkerProcessReportMessage(State.RUNNING, 1, 2));
+    addresses.add(workerAddress);
+    messages.add(
+      new ReportStatisticsMessage(statistics, TimeUnit.MICROSECONDS));
+    addresses.add(null);
+
+    final AggregatedReportMessage original =
+      new AggregatedReportMessage(messages, addresses);
+
+    final AggregatedReportMessage[] received = {
+      Serializer.serialize(original),
+      new AggregatedReportMessage(writeBinary(original)),
+    };
+
+    for (final AggregatedReportMessage message : received) {
+      final List<Message> receivedMessages = message.getMessages();
+      assertEquals(3, receivedMessages.size());
+
+      assertEquals(tests,
+        new ArrayList<net.grinder.common.Test>(
+          ((RegisterTestsMessage) receivedMessages.get(0)).getTests()));
+
+      final WorkerProcessReportMessage report =
+        (WorkerProcessReportMessage) receivedMessages.get(1);
+      assertEquals(messages.get(1), report);
+      assertEquals(workerAddress, report.getProcessAddress());
+
+      final ReportStatisticsMessage statisticsMessage =
+        (ReportStatisticsMessage) receivedMessages.get(2);
+      assertEquals(TimeUnit.MICROSECONDS, statisticsMessage.getTimeUnit());
+      assertEquals(statistics, statisticsMessage.getStatisticsDelta());
+    }
+
+    try {
+      new AggregatedReportMessage(messages, addresses.subList(0, 1));
+      fail("Expected IllegalArgumentException");
+    }
+    catch (final IllegalArgumentException e) {
+    }
+
+    addresses.set(0, workerAddress);
+
+    try {
+      new AggregatedReportMessage(messages, addresses).getMessages();
+      fail("Expected CommunicationException");
+    }
+    catch (final CommunicationException e) {
+    }
+  }
+
+  private static DataInput writeBinary(BinaryMessage message)
+    throws IOException {
+    final ByteArrayOutputStream byteStream = new ByteArrayOutputStream();
+    final DataOutputStream out = new DataOutputStream(byteStream);
+    message.writeBinary(out);
+    out.close();
+
+    return new DataInputStream(
+      new ByteArrayInputStream(byteStream.toByteArray()));
+  }
 }
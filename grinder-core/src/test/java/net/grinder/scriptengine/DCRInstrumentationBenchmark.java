@@ -0,0 +1,154 @@
+// Copyright (C) 2013 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.grinder.scriptengine;
+
+import net.grinder.engine.common.EngineException;
+import net.grinder.engine.process.dcr.DCRContextImplementation;
+import net.grinder.util.weave.ClassSource;
+import net.grinder.util.weave.ParameterSource;
+
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * Measures the cost of calling a method that has been instrumented with DCR,
+ * compared to the same method uninstrumented.
+ *
+ * <p>
+ * This is not a unit test. Run it by hand, with the DCR agent:
+ * </p>
+ *
+ * <pre>
+ * java -javaagent:grinder-dcr-agent.jar -cp ... \
+ *   net.grinder.scriptengine.DCRInstrumentationBenchmark
+ * </pre>
+ *
+ * <p>
+ * The recorder does nothing, so the difference between the instrumented and
+ * uninstrumented times is the cost of dispatching the enter and exit calls.
+ * The "other instance" case calls a woven method on an instance that was not
+ * itself instrumented, which is the cost paid by every object of an
+ * instrumented class.
+ * </p>
+ *
+ * @author Philip Aston
+ */
+public class DCRInstrumentationBenchmark {
+
+  private static final int CALLS = 10000000;
+  private static final int ITERATIONS = 5;
+
+  private static long s_sink;
+
+  public static void main(String[] args) throws Exception {
+    final DCRContext context =
+      DCRContextImplementation.create(
+        LoggerFactory.getLogger(DCRInstrumentationBenchmark.class));
+
+    if (context == null) {
+      System.err.println("DCR unavailable, is the agent on the command line?");
+      System.exit(1);
+    }
+
+    final Recorder recorder = new Recorder() {
+      @Override public void start() throws EngineException { }
+
+      @Override public void end(boolean success) throws EngineException { }
+    };
+
+    final Target instrumented = new Target();
+    final Target other = new Target();
+
+    context.add(ClassSource.CLASS,
+                Target.class,
+                Target.class.getDeclaredMethod("staticCall", Integer.TYPE),
+                recorder);
+
+    context.add(ParameterSource.FIRST_PARAMETER,
+                instrumented,
+                Target.class.getDeclaredMethod("call", Integer.TYPE),
+                recorder);
+
+    context.applyChanges();
+
+    final Target plain = new Target() {
+      // Not woven: the instrumented method is declared by the superclass.
+      @Override public int call(int x) {
+        return x * 31 + 7;
+      }
+    };
+
+    System.out.printf("%20s %12s%n", "case", "ns/call");
+
+    for (int i = 0; i < ITERATIONS; ++i) {
+      report("uninstrumented", instanceCalls(plain));
+      report("static", staticCalls());
+      report("instance", instanceCalls(instrumented));
+      report("other instance", instanceCalls(other));
+    }
+
+    // Keep the results live.
+    if (s_sink == 0) {
+      throw new AssertionError();
+    }
+  }
+
+  private static void report(String name, long nanos) {
+    System.out.printf("%20s %12.2f%n", name, nanos / (double)CALLS);
+  }
+
+  private static long instanceCalls(Target target) {
+    final long start = System.nanoTime();
+    int x = 0;
+
+    for (int i = 0; i < CALLS; ++i) {
+      x = target.call(x);
+    }
+
+    s_sink += x;
+
+    return System.nanoTime() - start;
+  }
+
+  private static long staticCalls() {
+    final long start = System.nanoTime();
+    int x = 0;
+
+    for (int i = 0; i < CALLS; ++i) {
+      x = Target.staticCall(x);
+    }
+
+    s_sink += x;
+
+    return System.nanoTime() - start;
+  }
+
+  public static class Target {
+    public int call(int x) {
+      return x * 31 + 7;
+    }
+
+    public static int staticCall(int x) {
+      return x * 31 + 7;
+    }
+  }
+}
@@ -0,0 +1,182 @@
+// Copyright (C) 2013 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.grinder.statistics;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.grinder.common.StubTest;
+import net.grinder.statistics.StatisticsIndexMap.LongIndex;
+import net.grinder.statistics.StatisticsIndexMap.LongSampleIndex;
+
+
+/**
+ * Compares the throughput of recording test results into a single shared
+ * {@link StatisticsSet} with recording into a {@link StripedStatisticsSet}.
+ *
+ * <p>
+ * This is not a unit test. Run it by hand:
+ * </p>
+ *
+ * <pre>
+ * java -cp ... net.grinder.statistics.StatisticsSetContentionBenchmark
+ * </pre>
+ *
+ * <p>
+ * Each measurement has a warm up period, then counts the number of reports
+ * completed in the measurement period. A reporter thread drains the
+ * statistics every 500 ms, as the worker process does.
+ * </p>
+ *
+ * @author Philip Aston
+ */
+public class StatisticsSetContentionBenchmark {
+
+  private static final int[] THREADS = { 1, 16, 256, 1024 };
+  private static final long WARM_UP_MILLIS = 2000;
+  private static final long MEASURE_MILLIS = 5000;
+  private static final long REPORT_INTERVAL_MILLIS = 500;
+
+  private final StatisticsServices m_statisticsServices =
+    StatisticsServicesImplementation.getInstance();
+
+  private final StatisticsSetFactory m_factory =
+    m_statisticsServices.getStatisticsSetFactory();
+
+  private final LongSampleIndex m_timedTestsIndex =
+    m_statisticsServices.getStatisticsIndexMap().getLongSampleIndex(
+      "timedTests");
+
+  private final LongIndex m_untimedTestsIndex =
+    m_statisticsServices.getStatisticsIndexMap().getLongIndex("untimedTests");
+
+  public static void main(String[] args) throws Exception {
+    final StatisticsSetContentionBenchmark benchmark =
+      new StatisticsSetContentionBenchmark();
+
+    System.out.printf("%8s %18s %18s %8s%n",
+                      "threads", "shared (ops/ms)", "striped (ops/ms)",
+                      "ratio");
+
+    for (int threads : THREADS) {
+      final double shared = benchmark.run(threads, false);
+      final double striped = benchmark.run(threads, true);
+
+      System.out.printf("%8d %18.0f %18.0f %8.2f%n",
+                        threads, shared, striped, striped / shared);
+    }
+  }
+
+  private double run(int numberOfThreads, final boolean striped)
+    throws InterruptedException {
+
+    final TestStatisticsMap map = new TestStatisticsMap(m_factory);
+    final StatisticsSet shared =
+      striped ? m_factory.createStriped() : m_factory.create();
+
+    map.put(new StubTest(1, ""), shared);
+
+    final AtomicBoolean measuring = new AtomicBoolean();
+    final AtomicBoolean stop = new AtomicBoolean();
+    final AtomicLong operations = new AtomicLong();
+    final CountDownLatch go = new CountDownLatch(1);
+    final Thread[] threads = new Thread[numberOfThreads];
+
+    for (int i = 0; i < numberOfThreads; ++i) {
+      threads[i] = new Thread() {
+        @Override public void run() {
+          // Each report mirrors TestData.TestRecorder.report().
+          final StatisticsSet statistics = m_factory.create();
+          long count = 0;
+
+          // Wait for the other threads to be created. Otherwise, with many
+          // threads and few processors, creating the threads takes forever.
+          try {
+            go.await();
+          }
+          catch (InterruptedException e) {
+            return;
+          }
+
+          while (!stop.get()) {
+            statistics.reset();
+            statistics.addSample(m_timedTestsIndex, count & 0xFF);
+            shared.add(statistics);
+
+            if (measuring.get()) {
+              ++count;
+            }
+          }
+
+          operations.addAndGet(count);
+        }
+      };
+
+      threads[i].setDaemon(true);
+      threads[i].start();
+    }
+
+    go.countDown();
+
+    final Thread reporter = new Thread() {
+      @Override public void run() {
+        while (!stop.get()) {
+          map.reset();
+
+          try {
+            Thread.sleep(REPORT_INTERVAL_MILLIS);
+          }
+          catch (InterruptedException e) {
+            return;
+          }
+        }
+      }
+    };
+
+    reporter.setDaemon(true);
+    reporter.start();
+
+    Thread.sleep(WARM_UP_MILLIS);
+    measuring.set(true);
+    final long start = System.nanoTime();
+    Thread.sleep(MEASURE_MILLIS);
+    measuring.set(false);
+    final long elapsed = System.nanoTime() - start;
+    stop.set(true);
+
+    for (Thread thread : threads) {
+      thread.join();
+    }
+
+    reporter.interrupt();
+    reporter.join();
+
+    // Keep the results live.
+    if (shared.getValue(m_untimedTestsIndex) != 0) {
+      throw new AssertionError();
+    }
+
+    return operations.get() / (double)TimeUnit.NANOSECONDS.toMillis(elapsed);
+  }
+}
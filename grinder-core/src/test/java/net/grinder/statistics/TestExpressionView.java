@@ -23,8 +23,11 @@
 package net.grinder.statistics;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
+import java.util.concurrent.TimeUnit;
+
 import org.junit.Test;
 
 
@@ -123,4 +126,52 @@ public class TestExpressionView  {
     assertEquals("console.statistic/My-view",
                  expressionView.getTranslationKey());
   }
+
+  @Test
+  public void testTestTime() throws Exception {
+    final StatisticsServices statisticsServices =
+      StatisticsServicesImplementation.getInstance();
+
+    final StatisticExpressionFactory statisticExpressionFactory =
+      statisticsServices.getStatisticExpressionFactory();
+
+    final ExpressionView testTimeView =
+      statisticExpressionFactory.createExpressionView(
+        "Test time", "(sum timedTests)", false).asTestTime();
+
+    final ExpressionView meanView =
+      statisticExpressionFactory.createExpressionView(
+        "Mean", "(/ (sum timedTests) (count timedTests))", false).asTestTime();
+
+    final ExpressionView otherView =
+      statisticExpressionFactory.createExpressionView(
+        "Other", "(sum timedTests)", false);
+
+    assertTrue(testTimeView.isTestTime());
+    assertTrue(meanView.isTestTime());
+    assertFalse(otherView.isTestTime());
+    assertFalse(testTimeView.getShowForCompositeStatistics());
+
+    assertFalse(testTimeView.isDisplayedAsDouble(TimeUnit.MILLISECONDS));
+    assertTrue(testTimeView.isDisplayedAsDouble(TimeUnit.MICROSECONDS));
+    assertTrue(meanView.isDisplayedAsDouble(TimeUnit.MILLISECONDS));
+    assertFalse(otherView.isDisplayedAsDouble(TimeUnit.NANOSECONDS));
+
+    final StatisticsSet statistics =
+      statisticsServices.getStatisticsSetFactory().create();
+    final StatisticsIndexMap.LongSampleIndex timedTests =
+      statisticsServices.getStatisticsIndexMap()
+      .getLongSampleIndex("timedTests");
+    statistics.addSample(timedTests, 1500);
+    statistics.addSample(timedTests, 2500);
+
+    assertEquals(4000,
+      testTimeView.getDisplayValue(statistics, TimeUnit.MILLISECONDS), 0);
+    assertEquals(4,
+      testTimeView.getDisplayValue(statistics, TimeUnit.MICROSECONDS), 0);
+    assertEquals(0.002,
+      meanView.getDisplayValue(statistics, TimeUnit.NANOSECONDS), 1e-9);
+    assertEquals(4000,
+      otherView.getDisplayValue(statistics, TimeUnit.MICROSECONDS), 0);
+  }
 }
@@ -0,0 +1,104 @@
+// Copyright (C) 2013 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.grinder.statistics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+
+/**
+ * Unit tests for {@link LogLinearHistogram}.
+ *
+ * @author Philip Aston
+ */
+public class TestLogLinearHistogram {
+
+  @Test public void testSmallValuesAreExact() {
+    for (int i = 0; i < LogLinearHistogram.SUB_BUCKETS; ++i) {
+      assertEquals(i, LogLinearHistogram.bucketIndex(i));
+      assertEquals(i, LogLinearHistogram.lowestValue(i));
+      assertEquals(i, LogLinearHistogram.highestValue(i));
+    }
+
+    assertEquals(0, LogLinearHistogram.bucketIndex(-10));
+  }
+
+  @Test public void testBucketBoundaries() {
+    long expectedLowest = 0;
+
+    for (int i = 0; i < LogLinearHistogram.NUMBER_OF_BUCKETS - 1; ++i) {
+      final long lowest = LogLinearHistogram.lowestValue(i);
+      final long highest = LogLinearHistogram.highestValue(i);
+
+      assertEquals(expectedLowest, lowest);
+      assertTrue(highest >= lowest);
+      assertTrue((highest - lowest + 1) * LogLinearHistogram.SUB_BUCKETS <=
+                 Math.max(lowest, LogLinearHistogram.SUB_BUCKETS));
+
+      assertEquals(i, LogLinearHistogram.bucketIndex(lowest));
+      assertEquals(i, LogLinearHistogram.bucketIndex(highest));
+      assertEquals(i, LogLinearHistogram.bucketIndex(
+        LogLinearHistogram.representativeValue(i)));
+
+      expectedLowest = highest + 1;
+    }
+
+    final int last = LogLinearHistogram.NUMBER_OF_BUCKETS - 1;
+    assertEquals(expectedLowest, LogLinearHistogram.lowestValue(last));
+    assertEquals(last, LogLinearHistogram.bucketIndex(expectedLowest));
+    assertEquals(last, LogLinearHistogram.bucketIndex(Long.MAX_VALUE));
+    assertEquals(last,
+                 LogLinearHistogram.bucketIndex(
+                   1L << LogLinearHistogram.MAXIMUM_VALUE_BITS));
+  }
+
+  @Test public void testPercentile() {
+    final long[] buckets = new long[LogLinearHistogram.NUMBER_OF_BUCKETS];
+
+    assertEquals(0, LogLinearHistogram.percentile(buckets, 0, 50));
+
+    final Random random = new Random(1);
+    final long[] values = new long[10000];
+
+    for (int i = 0; i < values.length; ++i) {
+      values[i] = (long)Math.abs(random.nextGaussian() * 100000);
+      LogLinearHistogram.record(buckets, values[i]);
+    }
+
+    Arrays.sort(values);
+
+    for (double p : new double[] { 1, 50, 90, 99, 99.9, 100 }) {
+      final long exact =
+        values[(int)Math.ceil(values.length * p / 100) - 1];
+      final long approximate =
+        LogLinearHistogram.percentile(buckets, values.length, p);
+
+      assertTrue(approximate >= exact);
+      assertTrue(approximate - exact <= exact / LogLinearHistogram.SUB_BUCKETS);
+    }
+  }
+}
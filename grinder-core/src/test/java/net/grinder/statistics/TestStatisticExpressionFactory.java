@@ -1,4 +1,4 @@
-// Copyright (C) 2000 - 2012 Philip Aston
+// Copyright (C) 2000 - 2013 Philip Aston
 // All rights reserved.
 //
 // This file is part of The Grinder software distribution. Refer to
@@ -23,6 +23,7 @@ package net.grinder.statistics;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import net.grinder.statistics.StatisticExpressionFactoryImplementation.ParseContext.ParseException;
@@ -435,64 +436,105 @@ public class TestStatisticExpressionFactory {
     }
   }
 
-  @Test public void testDoubleSample() throws Exception {
-    try {
-      final StatisticsIndexMap.DoubleIndex sumIndex =
-        m_indexMap.getDoubleIndex("userDouble0");
-      final StatisticsIndexMap.LongIndex countIndex =
-        m_indexMap.getLongIndex("userLong3");
-      final StatisticsIndexMap.DoubleIndex varianceIndex =
-        m_indexMap.getDoubleIndex("userDouble1");
-
-      final StatisticsIndexMap.DoubleSampleIndex doubleSampleIndex =
-        m_indexMap.createDoubleSampleIndex("testDoubleSampleStatistic",
-                                           sumIndex,
-                                           countIndex,
-                                           varianceIndex);
-      assertNotNull(doubleSampleIndex);
-
-      myAssertEquals(0, m_factory.createExpression(
-                          "(count testDoubleSampleStatistic)"));
-      myAssertEquals(0, m_factory.createExpression(
-                          "(sum testDoubleSampleStatistic)"));
-      myAssertEquals(0, m_factory.createExpression(
-                          "(variance testDoubleSampleStatistic)"));
-
-      final StatisticsIndexMap.DoubleSampleIndex index =
-        m_indexMap.getDoubleSampleIndex("testDoubleSampleStatistic");
-      m_statistics.addSample(index, 2);
-      m_statistics.addSample(index, -1);
-
-      myAssertEquals(2, m_factory.createExpression(
-                          "(count testDoubleSampleStatistic)"));
-      myAssertEquals(1, m_factory.createExpression(
-                          "(sum testDoubleSampleStatistic)"));
-      myAssertEquals(2.25, m_factory.createExpression(
-                             "(variance testDoubleSampleStatistic)"));
+  @Test public void testPercentile() throws Exception {
+    final StatisticsIndexMap.LongSampleIndex timedTests =
+      m_indexMap.getLongSampleIndex("timedTests");
 
-      try {
-        m_factory.createExpression("(sum userDouble0)");
-        fail("Expected ParseException");
-      }
-      catch (ParseException e) {
-      }
+    myAssertEquals(0, m_factory.createExpression("(percentile timedTests 50)"));
 
-      try {
-        m_factory.createExpression("(count userDouble0)");
-        fail("Expected ParseException");
-      }
-      catch (ParseException e) {
-      }
+    m_statistics.addSample(timedTests, 7);
+
+    myAssertEquals(7, m_factory.createExpression("(percentile timedTests 99)"));
+
+    for (int i = 1; i <= 10; ++i) {
+      m_statistics.addSample(timedTests, i);
+    }
+
+    myAssertEquals(6, m_factory.createExpression("(percentile timedTests 50)"));
+    myAssertEquals(7,
+                   m_factory.createExpression("(percentile timedTests 62.5)"));
+    myAssertEquals(10,
+                   m_factory.createExpression("(percentile timedTests 100)"));
+    myAssertEquals(1, m_factory.createExpression("(percentile timedTests 0)"));
 
+    final String[] invalid = {
+      "(percentile userLong0 50)",
+      "(percentile scheduleDelay 50)",
+      "(percentile timedTests)",
+      "(percentile timedTests foo)",
+      "(percentile timedTests 101)",
+      "(percentile timedTests -1)",
+      "(percentile timedTests 50 50)",
+    };
+
+    for (String expression : invalid) {
       try {
-        m_factory.createExpression("(variance userDouble0)");
-        fail("Expected ParseException");
+        m_factory.createExpression(expression);
+        fail("Expected ParseException for " + expression);
       }
       catch (ParseException e) {
       }
     }
-    finally {
-      m_indexMap.removeDoubleSampleIndex("testDoubleSampleStatistic");
+  }
+
+  @Test public void testDoubleSample() throws Exception {
+    final StatisticsIndexMap.DoubleIndex sumIndex =
+      m_indexMap.getDoubleIndex("userDouble0");
+    final StatisticsIndexMap.LongIndex countIndex =
+      m_indexMap.getLongIndex("userLong3");
+    final StatisticsIndexMap.DoubleIndex varianceIndex =
+      m_indexMap.getDoubleIndex("userDouble1");
+
+    final StatisticsIndexMap indexMap =
+      m_indexMap.withDoubleSampleIndex("testDoubleSampleStatistic",
+                                       sumIndex,
+                                       countIndex,
+                                       varianceIndex);
+
+    final StatisticExpressionFactory factory =
+      new StatisticExpressionFactoryImplementation(indexMap);
+
+    final StatisticsIndexMap.DoubleSampleIndex index =
+      indexMap.getDoubleSampleIndex("testDoubleSampleStatistic");
+    assertNotNull(index);
+    assertNull(m_indexMap.getDoubleSampleIndex("testDoubleSampleStatistic"));
+
+    myAssertEquals(0, factory.createExpression(
+                        "(count testDoubleSampleStatistic)"));
+    myAssertEquals(0, factory.createExpression(
+                        "(sum testDoubleSampleStatistic)"));
+    myAssertEquals(0, factory.createExpression(
+                        "(variance testDoubleSampleStatistic)"));
+
+    m_statistics.addSample(index, 2);
+    m_statistics.addSample(index, -1);
+
+    myAssertEquals(2, factory.createExpression(
+                        "(count testDoubleSampleStatistic)"));
+    myAssertEquals(1, factory.createExpression(
+                        "(sum testDoubleSampleStatistic)"));
+    myAssertEquals(2.25, factory.createExpression(
+                           "(variance testDoubleSampleStatistic)"));
+
+    try {
+      factory.createExpression("(sum userDouble0)");
+      fail("Expected ParseException");
+    }
+    catch (ParseException e) {
+    }
+
+    try {
+      factory.createExpression("(count userDouble0)");
+      fail("Expected ParseException");
+    }
+    catch (ParseException e) {
+    }
+
+    try {
+      factory.createExpression("(variance userDouble0)");
+      fail("Expected ParseException");
+    }
+    catch (ParseException e) {
     }
   }
 
@@ -1,4 +1,4 @@
-// Copyright (C) 2000 - 2012 Philip Aston
+// Copyright (C) 2000 - 2013 Philip Aston
 // All rights reserved.
 //
 // This file is part of The Grinder software distribution. Refer to
@@ -27,6 +27,7 @@ import java.util.HashSet;
 import java.util.Set;
 
 import junit.framework.TestCase;
+import net.grinder.statistics.StatisticsIndexMap.DoubleSampleIndex;
 import net.grinder.statistics.StatisticsIndexMap.LongSampleIndex;
 
 /**
@@ -114,7 +115,20 @@ public class TestStatisticsIndexMap extends TestCase {
     assertEquals(6, map.getNumberOfLongs());
     assertEquals(4, map.getNumberOfDoubles());
     assertEquals(2, map.getNumberOfTransientLongs());
-    assertEquals(0, map.getDoubleSampleIndicies().size());
+    assertEquals(2, map.getNumberOfHistograms());
+    assertEquals(0, map.getDoubleSampleIndicies().length);
+    assertEquals(2, map.getLongSampleIndicies().length);
+
+    final boolean[] isVarianceIndex = map.getVarianceIndexFlags();
+    assertEquals(4, isVarianceIndex.length);
+    assertTrue(isVarianceIndex[map.getLongSampleIndex("ls1")
+                               .getVarianceIndex().getValue()]);
+    assertFalse(isVarianceIndex[map.getDoubleIndex("d1").getValue()]);
+
+    assertEquals(0, map.getLongSampleIndex("ls1")
+                 .getHistogramIndex().getValue());
+    assertEquals(1, map.getLongSampleIndex("ls2")
+                 .getHistogramIndex().getValue());
 
     final ExpectedIndices expectedLongs =
         new ExpectedIndices(0, 1, 2, 3, 4, 5);
@@ -144,4 +158,45 @@ public class TestStatisticsIndexMap extends TestCase {
     expectedDoubles.assertEmpty();
     expectedTransientLongs.assertEmpty();
   }
+
+  public void testHistograms() throws Exception {
+    final StatisticsIndexMap map =
+      new StatisticsIndexMap(asList("l1"),
+                             asList("d1"),
+                             asList("t1"),
+                             asList("ls1", "ls2", "ls3"),
+                             asList("ls2"));
+
+    assertEquals(1, map.getNumberOfHistograms());
+    assertNull(map.getLongSampleIndex("ls1").getHistogramIndex());
+    assertEquals(0, map.getLongSampleIndex("ls2")
+                 .getHistogramIndex().getValue());
+    assertNull(map.getLongSampleIndex("ls3").getHistogramIndex());
+
+    assertNotNull(m_indexMap.getLongSampleIndex("timedTests")
+                  .getHistogramIndex());
+    assertNotNull(m_indexMap.getLongSampleIndex("correctedTime")
+                  .getHistogramIndex());
+    assertNull(m_indexMap.getLongSampleIndex("scheduleDelay")
+               .getHistogramIndex());
+  }
+
+  public void testWithDoubleSampleIndex() throws Exception {
+    final StatisticsIndexMap map =
+      m_indexMap.withDoubleSampleIndex("ds",
+                                       m_indexMap.getDoubleIndex("userDouble0"),
+                                       m_indexMap.getLongIndex("userLong0"),
+                                       m_indexMap.getDoubleIndex("userDouble1"));
+
+    assertNull(m_indexMap.getDoubleSampleIndex("ds"));
+    assertEquals(0, m_indexMap.getDoubleSampleIndicies().length);
+
+    final DoubleSampleIndex ds = map.getDoubleSampleIndex("ds");
+    assertSame(ds, map.getDoubleSampleIndicies()[0]);
+    assertTrue(map.getVarianceIndexFlags()[
+                 m_indexMap.getDoubleIndex("userDouble1").getValue()]);
+    assertSame(m_indexMap.getLongIndex("userLong1"),
+               map.getLongIndex("userLong1"));
+    assertEquals(m_indexMap.getNumberOfLongs(), map.getNumberOfLongs());
+  }
 }
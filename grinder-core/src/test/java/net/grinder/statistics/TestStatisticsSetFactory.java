@@ -1,5 +1,5 @@
 // Copyright (C) 2000 Paco Gomez
-// Copyright (C) 2000, 2001, 2002, 2003, 2004, 2005 Philip Aston
+// Copyright (C) 2000 - 2013 Philip Aston
 // All rights reserved.
 //
 // This file is part of The Grinder software distribution. Refer to
@@ -26,10 +26,16 @@ import junit.framework.TestCase;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.util.Random;
 
+import net.grinder.util.Serialiser;
+
 
 /**
  * Unit test case for <code>StatisticsSetFactory</code>.
@@ -108,4 +114,146 @@ public class TestStatisticsSetFactory extends TestCase {
     assertEquals(original0, received0);
     assertEquals(original1, received1);
   }
+
+  public void testSparseSerialisation() throws Exception {
+    final StatisticsSetFactory factory =
+      m_statisticsServices.getStatisticsSetFactory();
+
+    final StatisticsIndexMap indexMap =
+      m_statisticsServices.getStatisticsIndexMap();
+
+    final StatisticsSet original = factory.create();
+    original.setValue(indexMap.getLongIndex("userLong3"), -5);
+    original.setValue(indexMap.getDoubleIndex("userDouble1"), 1.5);
+    original.addSample(indexMap.getLongSampleIndex("timedTests"), 1000000);
+    original.addSample(indexMap.getLongSampleIndex("timedTests"), 10);
+
+    final ByteArrayOutputStream byteOutputStream = new ByteArrayOutputStream();
+    final DataOutputStream out = new DataOutputStream(byteOutputStream);
+
+    factory.writeStatisticsExternal(out,
+      (StatisticsSetImplementation) factory.create());
+
+    // Only the slot counts and the composite flag.
+    assertEquals(3 + indexMap.getNumberOfHistograms(), out.size());
+
+    factory.writeStatisticsExternal(out,
+      (StatisticsSetImplementation) original);
+
+    out.close();
+
+    final DataInputStream in = new DataInputStream(
+      new ByteArrayInputStream(byteOutputStream.toByteArray()));
+
+    assertTrue(factory.readStatisticsExternal(in).isZero());
+
+    final StatisticsSet received = factory.readStatisticsExternal(in);
+    assertEquals(original, received);
+    assertEquals(2, received.getCount(
+      indexMap.getLongSampleIndex("timedTests")));
+    assertEquals(0, in.available());
+  }
+
+  public void testCopyValues() throws Exception {
+    final StatisticsSetFactory factory =
+      m_statisticsServices.getStatisticsSetFactory();
+
+    final StatisticsIndexMap indexMap =
+      m_statisticsServices.getStatisticsIndexMap();
+
+    final StatisticsIndexMap.LongSampleIndex timedTestsIndex =
+      indexMap.getLongSampleIndex("timedTests");
+    final StatisticsIndexMap.LongIndex periodIndex =
+      indexMap.getLongIndex("period");
+
+    final StatisticsSet source = factory.create();
+    source.setValue(indexMap.getLongIndex("userLong3"), -5);
+    source.setValue(indexMap.getDoubleIndex("userDouble1"), 1.5);
+    source.addSample(timedTestsIndex, 7);
+    source.setValue(periodIndex, 100);
+    source.setIsComposite();
+
+    // The target has a histogram, which is emptied.
+    final StatisticsSet target = factory.create();
+    target.addSample(timedTestsIndex, 10);
+    target.addSample(timedTestsIndex, 20);
+    target.setValue(indexMap.getLongIndex("errors"), 3);
+
+    factory.copyValues(source, target);
+
+    assertEquals(source, target);
+    assertEquals(7, target.getSum(timedTestsIndex));
+    assertEquals(1, target.getCount(timedTestsIndex));
+    assertEquals(100, target.getValue(periodIndex));
+    assertTrue(target.isComposite());
+
+    source.reset();
+    assertEquals(7, target.getSum(timedTestsIndex));
+
+    factory.copyValues(source, target);
+    assertTrue(target.isZero());
+    assertEquals(source, target);
+
+    final StatisticsSet striped = factory.createStriped();
+    striped.addSample(timedTestsIndex, 9);
+
+    factory.copyValues(striped, target);
+    assertEquals(9, target.getSum(timedTestsIndex));
+  }
+
+  public void testBadSparseInput() throws Exception {
+    final int histograms = m_statisticsServices.getStatisticsIndexMap()
+      .getNumberOfHistograms();
+
+    // Too many long slots.
+    assertBadInput(new long[] { 100000 });
+
+    // Negative count.
+    assertBadInput(new long[] { -1 });
+
+    // Long slot out of range.
+    assertBadInput(new long[] { 1, 100000, 1 });
+
+    // Negative gap.
+    assertBadInput(new long[] { 2, 1, 1, -1, 1 });
+
+    // Double slot out of range.
+    assertBadInput(new long[] { 0, 1, 100000 });
+
+    // Histogram bucket out of range.
+    assertTrue(histograms > 0);
+    assertBadInput(
+      new long[] { 0, 0, 1, LogLinearHistogram.NUMBER_OF_BUCKETS, 1 });
+
+    // Too many histogram buckets.
+    assertBadInput(
+      new long[] { 0, 0, LogLinearHistogram.NUMBER_OF_BUCKETS + 1 });
+  }
+
+  private void assertBadInput(long[] values) throws Exception {
+    final ByteArrayOutputStream byteOutputStream = new ByteArrayOutputStream();
+    final DataOutputStream out = new DataOutputStream(byteOutputStream);
+    final Serialiser serialiser = new Serialiser();
+
+    for (long value : values) {
+      serialiser.writeVarLong(out, value);
+    }
+
+    // Padding, so that we don't fail with an EOFException.
+    for (int i = 0; i < 1000; ++i) {
+      out.writeByte(0);
+    }
+
+    out.close();
+
+    try {
+      m_statisticsServices.getStatisticsSetFactory().readStatisticsExternal(
+        new DataInputStream(
+          new ByteArrayInputStream(byteOutputStream.toByteArray())));
+      fail("Expected IOException");
+    }
+    catch (IOException e) {
+      assertFalse(e instanceof EOFException);
+    }
+  }
 }
@@ -1,5 +1,5 @@
 // Copyright (C) 2000 Paco Gomez
-// Copyright (C) 2000 - 2011 Philip Aston
+// Copyright (C) 2000 - 2013 Philip Aston
 // All rights reserved.
 //
 // This file is part of The Grinder software distribution. Refer to
@@ -26,6 +26,8 @@ import static java.util.Arrays.asList;
 import static net.grinder.testutility.AssertUtilities.assertNotEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 import java.io.ByteArrayInputStream;
@@ -36,6 +38,7 @@ import java.util.Random;
 
 import net.grinder.statistics.StatisticsIndexMap.DoubleIndex;
 import net.grinder.statistics.StatisticsIndexMap.LongIndex;
+import net.grinder.statistics.StatisticsIndexMap.LongSampleIndex;
 import net.grinder.util.Serialiser;
 
 import org.junit.Before;
@@ -336,73 +339,71 @@ public class TestStatisticsSetImplementation {
   }
 
   @Test public void testDoubleSampleReadAndWrite() throws Exception {
-    try {
-      final StatisticsIndexMap.DoubleIndex sumIndex = m_indexMap
-          .getDoubleIndex("userDouble0");
-      final StatisticsIndexMap.LongIndex countIndex = m_indexMap
-          .getLongIndex("userLong0");
-      final StatisticsIndexMap.DoubleIndex varianceIndex = m_indexMap
-          .getDoubleIndex("userDouble1");
-
-      final StatisticsIndexMap.DoubleSampleIndex doubleSampleIndex = m_indexMap
-          .createDoubleSampleIndex("testDoubleSampleStatistic", sumIndex,
-            countIndex, varianceIndex);
-
-      final StatisticsSet rawStatistics0 =
-        new StatisticsSetImplementation(m_indexMap);
-
-      assertDoublesEqual(0, rawStatistics0.getSum(doubleSampleIndex));
-      assertEquals(0, rawStatistics0.getCount(doubleSampleIndex));
-      assertDoublesEqual(0d, rawStatistics0.getVariance(doubleSampleIndex));
-
-      rawStatistics0.addSample(doubleSampleIndex, 0);
-      assertDoublesEqual(0, rawStatistics0.getSum(doubleSampleIndex));
-      assertEquals(1, rawStatistics0.getCount(doubleSampleIndex));
-      assertDoublesEqual(0d, rawStatistics0.getVariance(doubleSampleIndex));
-
-      rawStatistics0.addSample(doubleSampleIndex, 5);
-      assertDoublesEqual(5, rawStatistics0.getSum(doubleSampleIndex));
-      assertEquals(2, rawStatistics0.getCount(doubleSampleIndex));
-      assertDoublesEqual(6.25, rawStatistics0.getVariance(doubleSampleIndex));
-
-      rawStatistics0.addSample(doubleSampleIndex, 1);
-      assertDoublesEqual(6, rawStatistics0.getSum(doubleSampleIndex));
-      assertEquals(3, rawStatistics0.getCount(doubleSampleIndex));
-      assertDoublesEqual(14 / 3d, rawStatistics0.getVariance(doubleSampleIndex));
-
-      final StatisticsSet rawStatistics1 =
-        new StatisticsSetImplementation(m_indexMap);
-
-      rawStatistics0.add(rawStatistics1);
-      assertDoublesEqual(6, rawStatistics0.getSum(doubleSampleIndex));
-      assertEquals(3, rawStatistics0.getCount(doubleSampleIndex));
-      assertDoublesEqual(14 / 3d, rawStatistics0.getVariance(doubleSampleIndex));
-      assertDoublesEqual(0, rawStatistics1.getSum(doubleSampleIndex));
-      assertEquals(0, rawStatistics1.getCount(doubleSampleIndex));
-      assertDoublesEqual(0d, rawStatistics1.getVariance(doubleSampleIndex));
-
-      rawStatistics1.addSample(doubleSampleIndex, 5);
-      rawStatistics1.addSample(doubleSampleIndex, -5);
-      assertDoublesEqual(0, rawStatistics1.getSum(doubleSampleIndex));
-      assertEquals(2, rawStatistics1.getCount(doubleSampleIndex));
-      assertDoublesEqual(25, rawStatistics1.getVariance(doubleSampleIndex));
-
-      rawStatistics0.add(rawStatistics1);
-      assertDoublesEqual(6, rawStatistics0.getSum(doubleSampleIndex));
-      assertEquals(5, rawStatistics0.getCount(doubleSampleIndex));
-      assertDoublesEqual(13.76, rawStatistics0.getVariance(doubleSampleIndex));
-      assertDoublesEqual(0, rawStatistics1.getSum(doubleSampleIndex));
-      assertEquals(2, rawStatistics1.getCount(doubleSampleIndex));
-      assertDoublesEqual(25, rawStatistics1.getVariance(doubleSampleIndex));
-
-      rawStatistics0.reset(doubleSampleIndex);
-      assertDoublesEqual(0, rawStatistics0.getSum(doubleSampleIndex));
-      assertEquals(0, rawStatistics0.getCount(doubleSampleIndex));
-      assertDoublesEqual(0d, rawStatistics0.getVariance(doubleSampleIndex));
-    }
-    finally {
-      m_indexMap.removeDoubleSampleIndex("testDoubleSampleStatistic");
-    }
+    final StatisticsIndexMap.DoubleIndex sumIndex = m_indexMap
+        .getDoubleIndex("userDouble0");
+    final StatisticsIndexMap.LongIndex countIndex = m_indexMap
+        .getLongIndex("userLong0");
+    final StatisticsIndexMap.DoubleIndex varianceIndex = m_indexMap
+        .getDoubleIndex("userDouble1");
+
+    final StatisticsIndexMap indexMap = m_indexMap
+        .withDoubleSampleIndex("testDoubleSampleStatistic", sumIndex,
+          countIndex, varianceIndex);
+
+    final StatisticsIndexMap.DoubleSampleIndex doubleSampleIndex =
+      indexMap.getDoubleSampleIndex("testDoubleSampleStatistic");
+
+    final StatisticsSet rawStatistics0 =
+      new StatisticsSetImplementation(indexMap);
+
+    assertDoublesEqual(0, rawStatistics0.getSum(doubleSampleIndex));
+    assertEquals(0, rawStatistics0.getCount(doubleSampleIndex));
+    assertDoublesEqual(0d, rawStatistics0.getVariance(doubleSampleIndex));
+
+    rawStatistics0.addSample(doubleSampleIndex, 0);
+    assertDoublesEqual(0, rawStatistics0.getSum(doubleSampleIndex));
+    assertEquals(1, rawStatistics0.getCount(doubleSampleIndex));
+    assertDoublesEqual(0d, rawStatistics0.getVariance(doubleSampleIndex));
+
+    rawStatistics0.addSample(doubleSampleIndex, 5);
+    assertDoublesEqual(5, rawStatistics0.getSum(doubleSampleIndex));
+    assertEquals(2, rawStatistics0.getCount(doubleSampleIndex));
+    assertDoublesEqual(6.25, rawStatistics0.getVariance(doubleSampleIndex));
+
+    rawStatistics0.addSample(doubleSampleIndex, 1);
+    assertDoublesEqual(6, rawStatistics0.getSum(doubleSampleIndex));
+    assertEquals(3, rawStatistics0.getCount(doubleSampleIndex));
+    assertDoublesEqual(14 / 3d, rawStatistics0.getVariance(doubleSampleIndex));
+
+    final StatisticsSet rawStatistics1 =
+      new StatisticsSetImplementation(indexMap);
+
+    rawStatistics0.add(rawStatistics1);
+    assertDoublesEqual(6, rawStatistics0.getSum(doubleSampleIndex));
+    assertEquals(3, rawStatistics0.getCount(doubleSampleIndex));
+    assertDoublesEqual(14 / 3d, rawStatistics0.getVariance(doubleSampleIndex));
+    assertDoublesEqual(0, rawStatistics1.getSum(doubleSampleIndex));
+    assertEquals(0, rawStatistics1.getCount(doubleSampleIndex));
+    assertDoublesEqual(0d, rawStatistics1.getVariance(doubleSampleIndex));
+
+    rawStatistics1.addSample(doubleSampleIndex, 5);
+    rawStatistics1.addSample(doubleSampleIndex, -5);
+    assertDoublesEqual(0, rawStatistics1.getSum(doubleSampleIndex));
+    assertEquals(2, rawStatistics1.getCount(doubleSampleIndex));
+    assertDoublesEqual(25, rawStatistics1.getVariance(doubleSampleIndex));
+
+    rawStatistics0.add(rawStatistics1);
+    assertDoublesEqual(6, rawStatistics0.getSum(doubleSampleIndex));
+    assertEquals(5, rawStatistics0.getCount(doubleSampleIndex));
+    assertDoublesEqual(13.76, rawStatistics0.getVariance(doubleSampleIndex));
+    assertDoublesEqual(0, rawStatistics1.getSum(doubleSampleIndex));
+    assertEquals(2, rawStatistics1.getCount(doubleSampleIndex));
+    assertDoublesEqual(25, rawStatistics1.getVariance(doubleSampleIndex));
+
+    rawStatistics0.reset(doubleSampleIndex);
+    assertDoublesEqual(0, rawStatistics0.getSum(doubleSampleIndex));
+    assertEquals(0, rawStatistics0.getCount(doubleSampleIndex));
+    assertDoublesEqual(0d, rawStatistics0.getVariance(doubleSampleIndex));
   }
 
   @Test public void testSerialisation() throws Exception {
@@ -451,6 +452,162 @@ public class TestStatisticsSetImplementation {
     assertEquals(original1, received1);
   }
 
+  @Test public void testHistogram() throws Exception {
+    final LongSampleIndex index = m_indexMap.getLongSampleIndex("timedTests");
+
+    final StatisticsSetImplementation single =
+      new StatisticsSetImplementation(m_indexMap);
+    assertEquals(0, single.getPercentile(index, 50));
+
+    single.addSample(index, 1000);
+    assertEquals(1000, single.getPercentile(index, 0));
+    assertEquals(1000, single.getPercentile(index, 100));
+
+    final StatisticsSetImplementation many =
+      new StatisticsSetImplementation(m_indexMap);
+
+    for (int i = 1; i <= 10; ++i) {
+      many.addSample(index, i);
+    }
+
+    assertEquals(5, many.getPercentile(index, 50));
+    assertEquals(10, many.getPercentile(index, 100));
+
+    // Single sample into empty set, then into single sample set.
+    final StatisticsSetImplementation total =
+      new StatisticsSetImplementation(m_indexMap);
+    total.add(single);
+    assertEquals(1000, total.getPercentile(index, 50));
+    total.add(single);
+    assertEquals(2, total.getCount(index));
+    assertTrue(total.getPercentile(index, 0) >= 1000);
+    assertTrue(total.getPercentile(index, 0) <= 1000 * 17 / 16);
+    assertEquals(total.getPercentile(index, 0),
+                 total.getPercentile(index, 100));
+
+    // Many samples into a set with many samples.
+    total.add(many);
+    assertEquals(12, total.getCount(index));
+    assertEquals(6, total.getPercentile(index, 50));
+    assertEquals(10, total.getPercentile(index, 80));
+    assertTrue(total.getPercentile(index, 90) >= 1000);
+
+    // Single sample set into many.
+    final StatisticsSetImplementation snapshot =
+      (StatisticsSetImplementation)many.snapshot();
+    many.add(single);
+    assertEquals(11, many.getCount(index));
+    assertTrue(many.getPercentile(index, 100) >= 1000);
+    assertEquals(10, snapshot.getPercentile(index, 100));
+
+    // Many into a single sample set.
+    single.add(snapshot);
+    assertEquals(11, single.getCount(index));
+
+    for (int p = 0; p <= 100; p += 5) {
+      assertEquals(many.getPercentile(index, p),
+                   single.getPercentile(index, p));
+    }
+
+    single.reset(index);
+    assertEquals(0, single.getPercentile(index, 50));
+    single.addSample(index, 3);
+    assertEquals(3, single.getPercentile(index, 50));
+    single.addSample(index, 5);
+    assertEquals(5, single.getPercentile(index, 100));
+
+    many.reset();
+    assertEquals(0, many.getPercentile(index, 50));
+    assertEquals(new StatisticsSetImplementation(m_indexMap), many);
+  }
+
+  @Test public void testOnlySomeSamplesHaveHistograms() throws Exception {
+    final LongSampleIndex timedTestsIndex =
+      m_indexMap.getLongSampleIndex("timedTests");
+    final LongSampleIndex scheduleDelayIndex =
+      m_indexMap.getLongSampleIndex("scheduleDelay");
+
+    final StatisticsSetImplementation statistics =
+      new StatisticsSetImplementation(m_indexMap);
+
+    for (int i = 0; i < 10; ++i) {
+      statistics.addSample(scheduleDelayIndex, i);
+    }
+
+    final StatisticsSetImplementation total =
+      new StatisticsSetImplementation(m_indexMap);
+    total.add(statistics);
+    total.add(statistics);
+
+    assertEquals(20, total.getCount(scheduleDelayIndex));
+    assertEquals(90, total.getSum(scheduleDelayIndex));
+    assertNull(total.getHistogramData(timedTestsIndex.getHistogramIndex()));
+
+    statistics.addSample(timedTestsIndex, 1);
+    assertNull(
+      statistics.getHistogramData(timedTestsIndex.getHistogramIndex()));
+
+    statistics.addSample(timedTestsIndex, 2);
+    assertNotNull(
+      statistics.getHistogramData(timedTestsIndex.getHistogramIndex()));
+  }
+
+  @Test public void testHistogramSerialisation() throws Exception {
+    final LongSampleIndex index = m_indexMap.getLongSampleIndex("timedTests");
+
+    final Random random = new Random();
+
+    final StatisticsSetImplementation original0 =
+      new StatisticsSetImplementation(m_indexMap);
+
+    for (int i = 0; i < 1000; ++i) {
+      original0.addSample(index, Math.abs(random.nextInt()));
+    }
+
+    final StatisticsSetImplementation original1 =
+      new StatisticsSetImplementation(m_indexMap);
+    original1.addSample(index, 10);
+
+    final ByteArrayOutputStream byteOutputStream = new ByteArrayOutputStream();
+
+    final ObjectOutputStream objectOutputStream =
+      new ObjectOutputStream(byteOutputStream);
+
+    final Serialiser serialiser = new Serialiser();
+
+    original0.writeExternal(objectOutputStream, serialiser);
+    original1.writeExternal(objectOutputStream, serialiser);
+
+    objectOutputStream.close();
+
+    final ObjectInputStream objectInputStream = new ObjectInputStream(
+      new ByteArrayInputStream(byteOutputStream.toByteArray()));
+
+    final StatisticsSetImplementation received0 =
+      new StatisticsSetImplementation(m_indexMap,
+                                      objectInputStream,
+                                      serialiser);
+
+    final StatisticsSetImplementation received1 =
+      new StatisticsSetImplementation(m_indexMap,
+                                      objectInputStream,
+                                      serialiser);
+
+    assertEquals(original0, received0);
+    assertEquals(original0.getPercentile(index, 99),
+                 received0.getPercentile(index, 99));
+    assertEquals(original1, received1);
+
+    final StatisticsSetImplementation different =
+      new StatisticsSetImplementation(m_indexMap);
+    different.addSample(index, 10);
+    different.addSample(index, 20);
+    original1.addSample(index, 30);
+    original1.setValue(index.getSumIndex(), different.getSum(index));
+    original1.setValue(index.getVarianceIndex(), different.getVariance(index));
+    assertNotEquals(original1, different);
+  }
+
   @Test public void testEqualsMiscellanea() throws Exception {
     final StatisticsSet rawStatistics0 =
       new StatisticsSetImplementation(m_indexMap);
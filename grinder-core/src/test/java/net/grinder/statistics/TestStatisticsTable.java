@@ -1,4 +1,4 @@
-// Copyright (C) 2000 - 2012 Philip Aston
+// Copyright (C) 2000 - 2013 Philip Aston
 // Copyright (C) 2005 Martin Wagner.
 // All rights reserved.
 //
@@ -25,6 +25,7 @@ package net.grinder.statistics;
 import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.util.Locale;
+import java.util.concurrent.TimeUnit;
 
 import net.grinder.common.StubTest;
 import net.grinder.testutility.AssertUtilities;
@@ -178,4 +179,49 @@ public class TestStatisticsTable  {
       output.getBuffer().toString(),
       expected.getBuffer().toString());
   }
+
+  @Test public void testStatisticsTableWithTestTimes() throws Exception {
+    final StatisticExpressionFactory statisticExpressionFactory =
+      m_statisticsServices.getStatisticExpressionFactory();
+
+    final StatisticsView statisticsView = new StatisticsView();
+    statisticsView.add(
+      statisticExpressionFactory.createExpressionView(
+        "Time", "(sum timedTests)", false).asTestTime());
+    statisticsView.add(
+      statisticExpressionFactory.createExpressionView(
+        "Raw", "(sum timedTests)", false));
+
+    final StatisticsSet statistics =
+      m_statisticsServices.getStatisticsSetFactory().create();
+    statistics.addSample(m_indexMap.getLongSampleIndex("timedTests"), 1500);
+
+    final TestStatisticsMap testStatisticsMap = new TestStatisticsMap();
+    testStatisticsMap.put(new StubTest(1, null), statistics);
+
+    final StringWriter expected = new StringWriter();
+    final PrintWriter in = new PrintWriter(expected);
+
+    in.println("             Time         Raw          ");
+    in.println();
+    in.println("Test 1       1.50         1500         ");
+    in.println();
+    in.println("Totals       1.50         1500         ");
+    in.close();
+
+    final StatisticsTable table =
+      new StatisticsTable(statisticsView,
+                          m_indexMap,
+                          testStatisticsMap,
+                          TimeUnit.MICROSECONDS);
+
+    final StringWriter output = new StringWriter();
+    final PrintWriter out = new PrintWriter(output);
+    table.print(out, 1234);
+    out.close();
+
+    AssertUtilities.assertContains(
+      output.getBuffer().toString(),
+      expected.getBuffer().toString());
+  }
 }
@@ -0,0 +1,238 @@
+// Copyright (C) 2013 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.grinder.statistics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import net.grinder.statistics.StatisticsIndexMap.DoubleIndex;
+import net.grinder.statistics.StatisticsIndexMap.LongIndex;
+import net.grinder.statistics.StatisticsIndexMap.LongSampleIndex;
+
+import org.junit.Before;
+import org.junit.Test;
+
+
+/**
+ * Unit tests for {@link StripedStatisticsSetImplementation}.
+ *
+ * @author Philip Aston
+ * @see StripedStatisticsSetImplementation
+ */
+public class TestStripedStatisticsSetImplementation {
+
+  private StatisticsIndexMap m_indexMap;
+
+  private LongIndex m_longIndex0;
+  private DoubleIndex m_doubleIndex0;
+  private LongSampleIndex m_timedTestsIndex;
+
+  @Before public void setUp() throws Exception {
+    m_indexMap = StatisticsServicesImplementation.getInstance()
+        .getStatisticsIndexMap();
+
+    m_longIndex0 = m_indexMap.getLongIndex("userLong0");
+    m_doubleIndex0 = m_indexMap.getDoubleIndex("userDouble0");
+    m_timedTestsIndex = m_indexMap.getLongSampleIndex("timedTests");
+  }
+
+  @Test public void testCreation() {
+    final StripedStatisticsSet statistics =
+      new StripedStatisticsSetImplementation(m_indexMap);
+
+    assertTrue(statistics.isZero());
+    assertFalse(statistics.isComposite());
+    assertEquals(0, statistics.getValue(m_longIndex0));
+    assertTrue(statistics.snapshot().isZero());
+  }
+
+  private void inThread(Runnable runnable) throws InterruptedException {
+    final Thread thread = new Thread(runnable);
+    thread.start();
+    thread.join();
+  }
+
+  @Test public void testThreadsAreMerged() throws Exception {
+    final StripedStatisticsSetImplementation statistics =
+      new StripedStatisticsSetImplementation(m_indexMap);
+
+    final StatisticsSetImplementation expected =
+      new StatisticsSetImplementation(m_indexMap);
+
+    for (int i = 0; i < 4; ++i) {
+      final int value = i;
+
+      inThread(new Runnable() {
+          public void run() {
+            final StatisticsSet dispatch =
+              new StatisticsSetImplementation(m_indexMap);
+            dispatch.addValue(m_longIndex0, value);
+            dispatch.addValue(m_doubleIndex0, value / 2.0);
+            dispatch.addSample(m_timedTestsIndex, value * 10);
+
+            statistics.add(dispatch);
+            expected.add(dispatch);
+          }
+        });
+    }
+
+    statistics.addValue(m_longIndex0, 1);
+    expected.addValue(m_longIndex0, 1);
+
+    final StatisticsSet many = new StatisticsSetImplementation(m_indexMap);
+    many.addSample(m_timedTestsIndex, 1000);
+    many.addSample(m_timedTestsIndex, 2000);
+    statistics.add(many);
+    expected.add(many);
+
+    assertFalse(statistics.isZero());
+    assertEquals(7, statistics.getValue(m_longIndex0));
+    assertEquals(3, statistics.getValue(m_doubleIndex0), 0.0001);
+    assertEquals(3060, statistics.getSum(m_timedTestsIndex));
+    assertEquals(6, statistics.getCount(m_timedTestsIndex));
+    assertEquals(expected.getVariance(m_timedTestsIndex),
+                 statistics.getVariance(m_timedTestsIndex),
+                 0.0001);
+
+    for (int p = 0; p <= 100; p += 10) {
+      assertEquals(expected.getPercentile(m_timedTestsIndex, p),
+                   statistics.getPercentile(m_timedTestsIndex, p));
+    }
+
+    final StatisticsSet other = new StatisticsSetImplementation(m_indexMap);
+    other.add(statistics);
+    assertEquals(3060, other.getSum(m_timedTestsIndex));
+    assertEquals(expected.getValue(m_longIndex0),
+                 other.getValue(m_longIndex0));
+  }
+
+  @Test public void testSnapshotAndReset() throws Exception {
+    final StripedStatisticsSet statistics =
+      new StripedStatisticsSetImplementation(m_indexMap);
+
+    assertTrue(statistics.snapshotAndReset().isZero());
+
+    statistics.addValue(m_longIndex0, 10);
+    statistics.setIsComposite();
+
+    final StatisticsSet snapshot = statistics.snapshotAndReset();
+    assertEquals(10, snapshot.getValue(m_longIndex0));
+    assertTrue(snapshot.isComposite());
+
+    assertTrue(statistics.isZero());
+    assertTrue(statistics.isComposite());
+
+    inThread(new Runnable() {
+        public void run() {
+          statistics.addValue(m_longIndex0, 3);
+        }
+      });
+
+    assertEquals(3, statistics.snapshot().getValue(m_longIndex0));
+    assertEquals(3, statistics.snapshotAndReset().getValue(m_longIndex0));
+
+    statistics.addValue(m_longIndex0, 3);
+    statistics.reset();
+    assertTrue(statistics.isZero());
+  }
+
+  @Test public void testSetValue() throws Exception {
+    final StripedStatisticsSet statistics =
+      new StripedStatisticsSetImplementation(m_indexMap);
+
+    statistics.addValue(m_longIndex0, 3);
+    statistics.setValue(m_longIndex0, 10);
+    statistics.addValue(m_longIndex0, 2);
+    assertEquals(12, statistics.getValue(m_longIndex0));
+
+    statistics.setValue(m_doubleIndex0, 1.5);
+    statistics.addValue(m_doubleIndex0, 1);
+    assertEquals(2.5, statistics.getValue(m_doubleIndex0), 0.0001);
+
+    statistics.addSample(m_timedTestsIndex, 10);
+    statistics.reset(m_timedTestsIndex);
+    statistics.addSample(m_timedTestsIndex, 20);
+    assertEquals(20, statistics.getSum(m_timedTestsIndex));
+    assertEquals(1, statistics.getCount(m_timedTestsIndex));
+    assertEquals(0, statistics.getVariance(m_timedTestsIndex), 0.0001);
+  }
+
+  @Test public void testConcurrentRecording() throws Exception {
+    final StripedStatisticsSet statistics =
+      new StripedStatisticsSetImplementation(m_indexMap);
+
+    final int numberOfThreads = 8;
+    final int iterations = 10000;
+
+    final StatisticsSetImplementation total =
+      new StatisticsSetImplementation(m_indexMap);
+    final List<Thread> threads = new ArrayList<Thread>();
+
+    for (int i = 0; i < numberOfThreads; ++i) {
+      threads.add(new Thread() {
+        @Override public void run() {
+          final StatisticsSet dispatch =
+            new StatisticsSetImplementation(m_indexMap);
+
+          for (int j = 0; j < iterations; ++j) {
+            dispatch.reset();
+            dispatch.addSample(m_timedTestsIndex, 1);
+            statistics.add(dispatch);
+            statistics.addValue(m_longIndex0, 1);
+          }
+        }
+      });
+    }
+
+    for (Thread thread : threads) {
+      thread.start();
+    }
+
+    for (int i = 0; i < 100; ++i) {
+      final StatisticsSet snapshot = statistics.snapshotAndReset();
+
+      // Each update is wholly in one snapshot.
+      assertEquals(snapshot.getCount(m_timedTestsIndex),
+                   snapshot.getSum(m_timedTestsIndex));
+
+      total.add(snapshot);
+    }
+
+    for (Thread thread : threads) {
+      thread.join();
+    }
+
+    total.add(statistics.snapshotAndReset());
+
+    assertEquals(numberOfThreads * iterations, total.getValue(m_longIndex0));
+    assertEquals(numberOfThreads * iterations,
+                 total.getCount(m_timedTestsIndex));
+    assertEquals(numberOfThreads * iterations,
+                 total.getSum(m_timedTestsIndex));
+    assertEquals(1, total.getPercentile(m_timedTestsIndex, 0));
+    assertEquals(1, total.getPercentile(m_timedTestsIndex, 100));
+  }
+}
@@ -27,6 +27,7 @@ import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import junit.framework.TestCase;
 import net.grinder.common.StubTest;
@@ -179,6 +180,102 @@ public class TestTestStatisticsMap extends TestCase {
     assertEquals(1, map.size());
   }
 
+  public void testResetWithStripedStatistics() throws Exception {
+    final StatisticsSetFactory factory =
+      m_statisticsServices.getStatisticsSetFactory();
+
+    final TestStatisticsMap map = new TestStatisticsMap(factory);
+    final StripedStatisticsSet striped = factory.createStriped();
+    map.put(m_test0, striped);
+
+    assertEquals(0, map.reset().size());
+
+    striped.addValue(m_index, 10);
+
+    final TestStatisticsMap snapshot = map.reset();
+    assertEquals(1, snapshot.size());
+
+    final Pair snapShotContent = extract(snapshot).get(0);
+    assertEquals(m_test0, snapShotContent.getTest());
+    assertEquals(m_statistics0, snapShotContent.getStatisticsSet());
+
+    assertEquals(0, striped.getValue(m_index));
+    assertEquals(0, map.reset().size());
+
+    striped.addValue(m_index, 10);
+
+    final ByteArrayOutputStream byteOutputStream =
+      new ByteArrayOutputStream();
+
+    final ObjectOutputStream objectOutputStream =
+      new ObjectOutputStream(byteOutputStream);
+
+    objectOutputStream.writeObject(map);
+    objectOutputStream.close();
+
+    final ObjectInputStream objectInputStream =
+      new ObjectInputStream(
+        new ByteArrayInputStream(byteOutputStream.toByteArray()));
+
+    final TestStatisticsMap received =
+      (TestStatisticsMap)objectInputStream.readObject();
+
+    assertEquals(m_statistics0, extract(received).get(0).getStatisticsSet());
+  }
+
+  public void testConvertTimeUnit() throws Exception {
+    final StatisticsSetFactory factory =
+      m_statisticsServices.getStatisticsSetFactory();
+
+    final StatisticsIndexMap.LongSampleIndex timedTestsIndex =
+      m_statisticsServices.getStatisticsIndexMap()
+      .getLongSampleIndex("timedTests");
+
+    final TestStatisticsMap map = new TestStatisticsMap(factory);
+    map.put(m_test0, m_statistics0);
+    map.put(m_test1, m_statistics1);
+
+    m_statistics0.addSample(timedTestsIndex, 1000);
+    m_statistics0.addSample(timedTestsIndex, 3000);
+
+    map.convertTimeUnit(timedTestsIndex,
+                        TimeUnit.MILLISECONDS,
+                        TimeUnit.MILLISECONDS);
+    assertEquals(4000, m_statistics0.getSum(timedTestsIndex));
+
+    map.convertTimeUnit(timedTestsIndex,
+                        TimeUnit.MICROSECONDS,
+                        TimeUnit.MILLISECONDS);
+
+    assertEquals(4, m_statistics0.getSum(timedTestsIndex));
+    assertEquals(2, m_statistics0.getCount(timedTestsIndex));
+    assertEquals(1, ((StatisticsSetImplementation)m_statistics0)
+                    .getPercentile(timedTestsIndex, 50));
+    assertEquals(3, ((StatisticsSetImplementation)m_statistics0)
+                    .getPercentile(timedTestsIndex, 100));
+    assertEquals(1, m_statistics0.getVariance(timedTestsIndex), 0.0001);
+    assertEquals(10, m_statistics0.getValue(m_index));
+    assertTrue(m_statistics1.isZero());
+
+    map.convertTimeUnit(timedTestsIndex,
+                        TimeUnit.MILLISECONDS,
+                        TimeUnit.NANOSECONDS);
+
+    assertEquals(4000000, m_statistics0.getSum(timedTestsIndex));
+    assertEquals(1e12, m_statistics0.getVariance(timedTestsIndex), 0.0001);
+
+    map.put(m_test2, factory.createStriped());
+
+    try {
+      map.convertTimeUnit(timedTestsIndex,
+                          TimeUnit.MILLISECONDS,
+                          TimeUnit.MICROSECONDS);
+      fail("Expected UnsupportedOperationException");
+    }
+    catch (UnsupportedOperationException e) {
+    }
+  }
+
   public void testToString() throws Exception {
     final TestStatisticsMap map =
       new TestStatisticsMap(m_statisticsServices.getStatisticsSetFactory());
@@ -22,6 +22,8 @@
 
 package net.grinder.statistics;
 
+import java.util.concurrent.TimeUnit;
+
 import junit.framework.TestCase;
 
 
@@ -92,5 +94,16 @@ public class TestTestStatisticsQueries extends TestCase {
     statistics1.addSample(timedTestsIndex, 5);
     assertEquals(statistics0, statistics1);
     assertEquals(7.5d, queries.getAverageTestTime(statistics1), 0.01);
+    assertEquals(7.5d,
+                 queries.getAverageTestTime(statistics1,
+                                            TimeUnit.MILLISECONDS),
+                 0.01);
+    assertEquals(0.0075d,
+                 queries.getAverageTestTime(statistics1,
+                                            TimeUnit.MICROSECONDS),
+                 0.00001);
+    assertEquals(7500d,
+                 queries.getAverageTestTime(statistics1, TimeUnit.SECONDS),
+                 0.01);
   }
 }
@@ -0,0 +1,133 @@
+// Copyright (C) 2013 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.grinder.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.DataInputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+
+/**
+ * Unit tests for {@link ChannelInputStream} and {@link ChannelOutputStream}.
+ *
+ * @author Philip Aston
+ */
+public class TestChannelInputStream {
+
+  private SocketChannel m_client;
+  private SocketChannel m_server;
+
+  @Before public void setUp() throws Exception {
+    final ServerSocketChannel serverSocketChannel = ServerSocketChannel.open();
+    serverSocketChannel.socket().bind(
+      new InetSocketAddress(InetAddress.getByName(null), 0));
+
+    m_client = SocketChannel.open(serverSocketChannel.socket()
+                                  .getLocalSocketAddress());
+    m_server = serverSocketChannel.accept();
+    serverSocketChannel.close();
+
+    m_client.configureBlocking(false);
+    m_server.configureBlocking(false);
+  }
+
+  @After public void tearDown() throws Exception {
+    m_client.close();
+    m_server.close();
+  }
+
+  @Test public void testReadAndWrite() throws Exception {
+    final InputStream in = new ChannelInputStream(m_server);
+    final OutputStream out = new ChannelOutputStream(m_client);
+
+    assertEquals(0, in.available());
+    assertFalse(((ChannelInputStream) in).isEndOfStream());
+
+    out.write(99);
+    out.write(new byte[] { 1, 2, 3 }, 1, 2);
+
+    assertEquals(99, in.read());
+    assertEquals(2, in.read());
+    assertEquals(3, in.read());
+    assertEquals(0, in.read(new byte[10], 0, 0));
+  }
+
+  @Test public void testLargeWrite() throws Exception {
+    final byte[] data = new byte[2000000];
+    new Random().nextBytes(data);
+
+    // Much larger than the socket buffers, so both the writer and the reader
+    // have to wait for each other.
+    final Thread writer = new Thread() {
+        @Override public void run() {
+          try {
+            new ChannelOutputStream(m_client).write(data);
+          }
+          catch (Exception e) {
+            throw new AssertionError(e);
+          }
+        }
+      };
+
+    writer.start();
+
+    final byte[] result = new byte[data.length];
+    new DataInputStream(new ChannelInputStream(m_server)).readFully(result);
+    writer.join();
+
+    assertArrayEquals(data, result);
+  }
+
+  @Test public void testEndOfStream() throws Exception {
+    final ChannelInputStream in = new ChannelInputStream(m_server);
+
+    new ChannelOutputStream(m_client).write(7);
+    m_client.close();
+
+    assertEquals(7, in.read());
+    assertEquals(-1, in.read());
+    assertTrue(in.isEndOfStream());
+    assertEquals(0, in.available());
+  }
+
+  @Test public void testClose() throws Exception {
+    new ChannelInputStream(m_server).close();
+    assertFalse(m_server.isOpen());
+
+    new ChannelOutputStream(m_client).close();
+    assertFalse(m_client.isOpen());
+  }
+}
@@ -0,0 +1,135 @@
+// Copyright (C) 2013 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+
+package net.grinder.util;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.HashSet;
+import java.util.Set;
+
+import net.grinder.testutility.AbstractJUnit4FileTestCase;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+
+/**
+ * Unit tests for {@link DirectoryWatcher}.
+ *
+ * @author Philip Aston
+ */
+public class TestDirectoryWatcher extends AbstractJUnit4FileTestCase {
+
+  private DirectoryWatcher m_watcher;
+
+  @Before public void setUp() throws Exception {
+    assumeTrue(DirectoryWatcher.isSupported());
+    m_watcher = new DirectoryWatcher();
+  }
+
+  @After public void closeWatcher() {
+    if (m_watcher != null) {
+      m_watcher.close();
+    }
+  }
+
+  private Set<File> waitForChanges(File... expected) throws Exception {
+    final Set<File> result = new HashSet<File>();
+
+    // Notifications are asynchronous.
+    for (int i = 0; i < 100; ++i) {
+      final Set<File> changes = m_watcher.poll();
+
+      if (changes != null) {
+        result.addAll(changes);
+      }
+
+      if (result.containsAll(asList(expected))) {
+        return result;
+      }
+
+      Thread.sleep(50);
+    }
+
+    fail("Expected changes to " + asList(expected) +
+         ", but only saw " + result);
+    return null;
+  }
+
+  @Test public void testWatch() throws Exception {
+    assertEquals(0, m_watcher.poll().size());
+
+    final File directory = new File(getDirectory(), "dir");
+    assertTrue(directory.mkdir());
+
+    m_watcher.register(getDirectory());
+    m_watcher.register(directory);
+    m_watcher.register(directory);
+
+    final File file1 = new File(getDirectory(), "file1");
+    assertTrue(file1.createNewFile());
+
+    final File file2 = new File(directory, "file2");
+    assertTrue(file2.createNewFile());
+
+    waitForChanges(file1, file2);
+
+    final FileOutputStream out = new FileOutputStream(file1);
+    out.write(1);
+    out.close();
+
+    waitForChanges(file1);
+
+    assertTrue(file2.delete());
+    assertTrue(directory.delete());
+
+    // The deleted directory is reported by its parent, and because it can no
+    // longer be watched.
+    waitForChanges(file2, directory);
+
+    // New sub-directories are not watched automatically.
+    final File directory2 = new File(getDirectory(), "dir2");
+    assertTrue(directory2.mkdir());
+    waitForChanges(directory2);
+
+    assertTrue(new File(directory2, "file3").createNewFile());
+    Thread.sleep(200);
+    assertEquals(0, m_watcher.poll().size());
+  }
+
+  @Test public void testBadRegistration() throws Exception {
+    try {
+      m_watcher.register(new File(getDirectory(), "missing"));
+      fail("Expected IOException");
+    }
+    catch (java.io.IOException e) {
+    }
+  }
+}
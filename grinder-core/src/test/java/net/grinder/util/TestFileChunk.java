@@ -0,0 +1,172 @@
+// Copyright (C) 2013 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+
+package net.grinder.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.Deflater;
+
+import net.grinder.testutility.AbstractJUnit4FileTestCase;
+import net.grinder.testutility.Serializer;
+import net.grinder.util.FileContents.FileContentsException;
+
+import org.junit.Test;
+
+
+/**
+ * Unit tests for {@link FileChunk}.
+ *
+ * @author Philip Aston
+ */
+public class TestFileChunk extends AbstractJUnit4FileTestCase {
+
+  private static final Random s_random = new Random();
+
+  private final Deflater m_deflater = new Deflater(Deflater.BEST_SPEED);
+
+  @Test public void testConstruction() throws Exception {
+    final byte[] bytes = new byte[10000];
+    s_random.nextBytes(bytes);
+
+    // Compressible data.
+    Arrays.fill(bytes, 5000, 10000, (byte) 'x');
+
+    final File file = new File("dir/file");
+
+    final FileChunk chunk =
+      new FileChunk(file, "abc", 1234, bytes, 8000, false, m_deflater);
+
+    assertEquals(file, chunk.getFilename());
+    assertEquals("abc", chunk.getDigest());
+    assertEquals(1234, chunk.getOffset());
+    assertEquals(8000, chunk.getLength());
+    assertFalse(chunk.isLast());
+    assertTrue(chunk.getCompressedData().length < 8000);
+
+    // The buffer can be reused.
+    final byte[] expected = Arrays.copyOf(bytes, 8000);
+    Arrays.fill(bytes, (byte) 0);
+
+    final FileChunk received = Serializer.serialize(chunk);
+    assertEquals(chunk.toString(), received.toString());
+
+    final byte[] buffer = new byte[8000];
+    received.inflate(buffer);
+    assertArrayEquals(expected, buffer);
+
+    final FileChunk chunk2 =
+      new FileChunk(file, "abc", 1234, bytes, 0, true, m_deflater);
+    assertTrue(chunk2.isLast());
+    chunk2.inflate(new byte[0]);
+
+    final String s = chunk.toString();
+    assertTrue(s.indexOf(file.getPath()) >= 0);
+    assertTrue(s.indexOf("8000") >= 0);
+  }
+
+  @Test public void testRoundTrip() throws Exception {
+    final byte[] bytes = new byte[70000];
+    s_random.nextBytes(bytes);
+
+    final FileChunk chunk =
+      new FileChunk(new File("f"), "", 0, bytes, bytes.length, true,
+                    m_deflater);
+
+    final byte[] buffer = new byte[bytes.length];
+    chunk.inflate(buffer);
+    assertArrayEquals(bytes, buffer);
+  }
+
+  @Test public void testBadConstruction() throws Exception {
+    try {
+      new FileChunk(getDirectory(), "", 0, new byte[0], 0, true, m_deflater);
+      fail("Expected FileContentsException");
+    }
+    catch (FileContentsException e) {
+    }
+  }
+
+  @Test public void testCorruptData() throws Exception {
+    final byte[] bytes = new byte[1000];
+    s_random.nextBytes(bytes);
+
+    final FileChunk chunk =
+      new FileChunk(new File("f"), "", 0, bytes, bytes.length, true,
+                    m_deflater);
+
+    final byte[] data = chunk.getCompressedData();
+
+    // Truncate the data.
+    final byte[] compressed = data.clone();
+    Arrays.fill(data, data.length / 2, data.length, (byte) 0);
+
+    try {
+      chunk.inflate(new byte[bytes.length]);
+      fail("Expected FileContentsException");
+    }
+    catch (FileContentsException e) {
+    }
+
+    // Corrupt the header.
+    System.arraycopy(compressed, 0, data, 0, data.length);
+    data[0] = 0;
+
+    try {
+      chunk.inflate(new byte[bytes.length]);
+      fail("Expected FileContentsException");
+    }
+    catch (FileContentsException e) {
+    }
+  }
+
+  @Test public void testDigest() throws Exception {
+    final File file = new File(getDirectory(), "file");
+    final OutputStream out = new FileOutputStream(file);
+    out.write("Hello world".getBytes("US-ASCII"));
+    out.close();
+
+    final String digest = FileChunk.calculateDigest(file);
+    assertEquals("7b502c3a1f48c8609ae212cdfb639dee39673f5e", digest);
+
+    final MessageDigest messageDigest = FileChunk.createDigest();
+    messageDigest.update("Hello world".getBytes("US-ASCII"));
+    assertEquals(digest, FileChunk.digestToString(messageDigest));
+
+    try {
+      FileChunk.calculateDigest(new File(getDirectory(), "missing"));
+      fail("Expected FileContentsException");
+    }
+    catch (FileContentsException e) {
+    }
+  }
+}
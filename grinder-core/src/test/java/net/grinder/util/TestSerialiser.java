@@ -24,9 +24,12 @@ package net.grinder.util;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.util.Arrays;
 import java.util.Random;
 
 import junit.framework.TestCase;
@@ -129,6 +132,66 @@ public class TestSerialiser extends TestCase
 	}
     }
 
+    public void testVarLongs() throws Exception
+    {
+	final ByteArrayOutputStream byteArrayOutputStream =
+	    new ByteArrayOutputStream();
+
+	final DataOutputStream dataOutputStream =
+	    new DataOutputStream(byteArrayOutputStream);
+
+	final long[] longs = new long[3002];
+
+	final Serialiser serialiser = new Serialiser();
+
+	for (int i=0; i<longs.length; i++) {
+	    if (i < 1000) {
+		longs[i] = i - 64;
+	    }
+	    else if (i < 2000) {
+		longs[i] = i * 1000;
+	    }
+	    else {
+		longs[i] = m_random.nextLong();
+	    }
+
+	    longs[3000] = Long.MIN_VALUE;
+	    longs[3001] = Long.MAX_VALUE;
+	}
+
+	for (int i=0; i<longs.length; i++) {
+	    serialiser.writeVarLong(dataOutputStream, longs[i]);
+	}
+
+	dataOutputStream.close();
+
+	final byte[] bytes = byteArrayOutputStream.toByteArray();
+
+	assertTrue("We should compress", bytes.length < 8 * longs.length);
+
+	final DataInputStream dataInputStream =
+	    new DataInputStream(new ByteArrayInputStream(bytes));
+
+	for (int i=0; i<longs.length; i++) {
+	    assertEquals(longs[i], serialiser.readVarLong(dataInputStream));
+	}
+
+	final ByteArrayOutputStream small = new ByteArrayOutputStream();
+	serialiser.writeVarLong(new DataOutputStream(small), -64);
+	serialiser.writeVarLong(new DataOutputStream(small), 63);
+	assertEquals(2, small.size());
+
+	try {
+	    final byte[] malformed = new byte[11];
+	    Arrays.fill(malformed, (byte)0xFF);
+	    serialiser.readVarLong(
+		new DataInputStream(new ByteArrayInputStream(malformed)));
+	    fail("Expected IOException");
+	}
+	catch (IOException e) {
+	}
+    }
+
     public void testDoubles() throws Exception
     {
 	final ByteArrayOutputStream byteArrayOutputStream =
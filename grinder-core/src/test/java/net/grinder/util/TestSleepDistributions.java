@@ -0,0 +1,157 @@
+// Copyright (C) 2013 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.grinder.util;
+
+import static net.grinder.util.SleepDistributions.EXPONENTIAL;
+import static net.grinder.util.SleepDistributions.LOG_NORMAL;
+import static net.grinder.util.SleepDistributions.NORMAL;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.StringReader;
+import java.util.Random;
+
+import org.junit.Test;
+
+
+/**
+ * Unit tests for {@link SleepDistributions}.
+ *
+ * @author Philip Aston
+ */
+public class TestSleepDistributions {
+
+  private final Random m_random = new Random(1);
+
+  @Test public void testForName() throws Exception {
+    assertSame(NORMAL, SleepDistributions.forName("normal"));
+    assertSame(EXPONENTIAL, SleepDistributions.forName(" Exponential "));
+    assertSame(LOG_NORMAL, SleepDistributions.forName("LOGNORMAL"));
+
+    try {
+      SleepDistributions.forName("empirical");
+      fail("Expected IllegalArgumentException");
+    }
+    catch (final IllegalArgumentException e) {
+    }
+  }
+
+  @Test public void testNormal() throws Exception {
+    assertEquals(100, NORMAL.sample(m_random, 100, 0));
+    assertEquals(100, mean(NORMAL, 100, 10), 1);
+  }
+
+  @Test public void testExponential() throws Exception {
+    assertEquals(100, mean(EXPONENTIAL, 100, 0), 2);
+
+    for (int i = 0; i < 1000; ++i) {
+      assertTrue(EXPONENTIAL.sample(m_random, 100, 0) >= 0);
+    }
+  }
+
+  @Test public void testLogNormal() throws Exception {
+    assertEquals(100, LOG_NORMAL.sample(m_random, 100, 0));
+    assertEquals(-1, LOG_NORMAL.sample(m_random, -1, 10));
+    assertEquals(100, mean(LOG_NORMAL, 100, 50), 2);
+
+    for (int i = 0; i < 1000; ++i) {
+      assertTrue(LOG_NORMAL.sample(m_random, 100, 200) >= 0);
+    }
+  }
+
+  @Test public void testEmpirical() throws Exception {
+    final SleepDistribution d =
+      SleepDistributions.empirical(
+        new StringReader("# time, weight\n" +
+                         "10, 1\n" +
+                         "\n" +
+                         " 20 , 0\n" +
+                         "30, 3\n"));
+
+    // The histogram mean is 25.
+    final int[] counts = new int[3];
+
+    for (int i = 0; i < 10000; ++i) {
+      final long t = d.sample(m_random, 50, 0);
+
+      if (t == 20) {
+        ++counts[0];
+      }
+      else if (t == 60) {
+        ++counts[2];
+      }
+      else {
+        ++counts[1];
+      }
+    }
+
+    assertEquals(0, counts[1]);
+    assertEquals(2500, counts[0], 150);
+    assertEquals(50, mean(d, 50, 0), 1);
+
+    assertEquals(0,
+                 SleepDistributions.empirical(new StringReader("0, 1"))
+                 .sample(m_random, 100, 0));
+  }
+
+  @Test public void testBadHistograms() throws Exception {
+    final String[] bad = {
+      "",
+      "10, 0",
+      "10",
+      "10, 1, 2",
+      "x, 1",
+      "-1, 1",
+      "10, -1",
+      "NaN, 1",
+      "10, NaN",
+      "Infinity, 1",
+      "10, Infinity",
+      "-Infinity, 1",
+      "1e308, 1\n1e308, 1e308",
+    };
+
+    for (final String histogram : bad) {
+      try {
+        SleepDistributions.empirical(new StringReader(histogram));
+        fail("Expected IllegalArgumentException for " + histogram);
+      }
+      catch (final IllegalArgumentException e) {
+      }
+    }
+  }
+
+  private double mean(final SleepDistribution distribution,
+                      final long meanTime,
+                      final long sigma) {
+    final int n = 100000;
+    double total = 0;
+
+    for (int i = 0; i < n; ++i) {
+      total += distribution.sample(m_random, meanTime, sigma);
+    }
+
+    return total / n;
+  }
+}
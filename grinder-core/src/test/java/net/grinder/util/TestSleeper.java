@@ -21,17 +21,25 @@
 
 package net.grinder.util;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.mockito.Matchers.contains;
 import static org.mockito.Matchers.isA;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+
 import net.grinder.common.TimeAuthority;
 import net.grinder.testutility.Time;
 
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 import org.slf4j.Logger;
 
 
@@ -173,10 +181,123 @@ public class TestSleeper {
       new SleeperImplementation(m_timeAuthority, logger, 1, 0);
     sleep3.sleepFlat(10);
 
-    verify(logger).info(contains("sleeping"), isA(Long.class));
+    verify(logger).isDebugEnabled();
+    verifyNoMoreInteractions(logger);
+
+    when(logger.isDebugEnabled()).thenReturn(true);
+    sleep3.sleepFlat(10);
+
+    verify(logger, times(2)).isDebugEnabled();
+    verify(logger).debug(contains("sleeping"), isA(Long.class));
     verifyNoMoreInteractions(logger);
   }
 
+  @Test public void testDistributions() throws Exception {
+    final Sleeper sleeper =
+      new SleeperImplementation(m_timeAuthority, null, 1, 0.3);
+
+    assertTrue(
+      new Time(0, 100) {
+        @Override
+        public void doIt() throws Exception  {
+          sleeper.sleep(0);
+          sleeper.sleep(-10, 10);
+          sleeper.sleepExponential(0);
+          sleeper.sleepLogNormal(0, 10);
+        }
+      }.run());
+
+    assertTrue(
+      new Time(40, 100) {
+        @Override
+        public void doIt() throws Exception  { sleeper.sleep(50, 0); }
+      }.run());
+
+    assertTrue(
+      new Time(40, 100) {
+        @Override
+        public void doIt() throws Exception  {
+          sleeper.sleepLogNormal(50, 0);
+        }
+      }.run());
+
+    sleeper.sleepExponential(1);
+  }
+
+  @Test public void testSeedThread() throws Exception {
+    final List<Long> times1 = sampleTimes(99, 1);
+    final List<Long> times2 = sampleTimes(99, 1);
+    final List<Long> times3 = sampleTimes(99, 2);
+    final List<Long> times4 = sampleTimes(100, 1);
+
+    assertEquals(times1, times2);
+    assertFalse(times1.equals(times3));
+    assertFalse(times1.equals(times4));
+  }
+
+  private List<Long> sampleTimes(final long seed, final int threadNumber)
+    throws Exception {
+
+    // A clock that moves on a long way each time it is read, so we never
+    // wait.
+    final TimeAuthority timeAuthority = new TimeAuthority() {
+      private long m_time;
+
+      @Override public long getTimeInMilliseconds() {
+        return m_time += 1000000;
+      }
+    };
+
+    final Logger logger = mock(Logger.class);
+    when(logger.isDebugEnabled()).thenReturn(true);
+
+    final Sleeper sleeper =
+      new SleeperImplementation(timeAuthority, logger, 1, 0.5,
+                                SleepDistributions.EXPONENTIAL, seed);
+
+    sleeper.seedThread(threadNumber);
+
+    for (int i = 0; i < 10; ++i) {
+      sleeper.sleep(1000);
+    }
+
+    final ArgumentCaptor<Long> times = ArgumentCaptor.forClass(Long.class);
+    verify(logger, times(10)).debug(isA(String.class), times.capture());
+
+    return times.getAllValues();
+  }
+
+  @Test public void testSleepExactly() throws Exception {
+    final Logger logger = mock(Logger.class);
+
+    // The sleep time factor is ignored.
+    final Sleeper sleeper =
+      new SleeperImplementation(m_timeAuthority, logger, 10, 0);
+
+    assertTrue(
+      new Time(50, 120) {
+        @Override
+        public void doIt() throws Exception  { sleeper.sleepExactly(50); }
+      }.run());
+
+    assertTrue(
+      new Time(0, 10) {
+        @Override
+        public void doIt() throws Exception  { sleeper.sleepExactly(0); }
+      }.run());
+
+    verifyNoMoreInteractions(logger);
+
+    sleeper.shutdown();
+
+    try {
+      sleeper.sleepExactly(10);
+      fail("Expected ShutdownException");
+    }
+    catch (final SleeperImplementation.ShutdownException e) {
+    }
+  }
+
   @Test public void testShutdown() throws Exception {
     final TakeFifty t1 = new TakeFifty();
 
@@ -494,6 +494,50 @@ public class TestASMTransformerFactory {
     instrumentation.removeTransformer(transformer);
   }
 
+  @Test
+  public void testWithSlotAdvice() throws Exception {
+    final Instrumentation instrumentation = getInstrumentation();
+
+    final ClassFileTransformerFactory transformerFactory =
+      new ASMTransformerFactory(MySlotAdvice.class);
+
+    m_pointCuts.addMethod(A6.class, "m1", "loc1");
+    m_pointCuts.addMethod(A6.class, "m2", "loc2");
+    m_pointCuts.addMethod(A6.class, "m3", "loc3");
+
+    final ClassFileTransformer transformer =
+      transformerFactory.create(m_pointCutRegistry);
+
+    instrumentation.addTransformer(transformer, true);
+    instrumentation.retransformClasses(new Class[] { A6.class, });
+
+    final A6 a = new A6();
+    assertEquals(1, a.m1());
+
+    verify(s_callRecorder).enter(a, 1);
+    verify(s_callRecorder).exit(a, 1, true);
+
+    try {
+      a.m2();
+      fail("Expected RuntimeException");
+    }
+    catch (final RuntimeException e) {
+    }
+
+    verify(s_callRecorder).enter(a, 2);
+    verify(s_callRecorder).exit(a, 2, false);
+
+    assertEquals(2, A6.m3());
+
+    verify(s_callRecorder).enter(A6.class, 3);
+    verify(s_callRecorder).exit(A6.class, 3, true);
+
+    instrumentation.removeTransformer(transformer);
+    instrumentation.retransformClasses(new Class[] { A6.class, });
+
+    a.m1();
+  }
+
   private static final byte[] serialize(final Object a) throws IOException {
     final ByteArrayOutputStream byteOutputStream =
       new ByteArrayOutputStream();
@@ -544,6 +588,20 @@ public class TestASMTransformerFactory {
   public static final class A3 {
   }
 
+  public static final class A6 {
+    public int m1() {
+      return 1;
+    }
+
+    public void m2() {
+      throw new RuntimeException("Test");
+    }
+
+    public static int m3() {
+      return 2;
+    }
+  }
+
   public static final class A4 {
     private A4() {
     }
@@ -630,6 +688,15 @@ public class TestASMTransformerFactory {
       final Object reference2,
       final String location,
       final boolean success);
+
+    void enter(
+      final Object reference,
+      final int slot);
+
+    void exit(
+      final Object reference,
+      final int slot,
+      final boolean success);
   }
 
   private static final CallRecorderI s_callRecorder =
@@ -662,6 +729,62 @@ public class TestASMTransformerFactory {
     }
   }
 
+  /**
+   * Advice that uses slots. Each location is "loc" followed by its slot.
+   */
+  public static final class MySlotAdvice {
+    public static int slot(final String location) {
+      return Integer.parseInt(location.substring(3));
+    }
+
+    public static void enter(final Object reference, final String location) {
+      s_callRecorder.enter(reference, location);
+    }
+
+    public static void enter(final Object reference,
+                             final Object reference2,
+                             final String location) {
+      s_callRecorder.enter(reference, reference2, location);
+    }
+
+    public static void exit(final Object reference,
+                            final String location,
+                            final boolean success) {
+
+      s_callRecorder.exit(reference, location, success);
+    }
+
+    public static void exit(final Object reference,
+                            final Object reference2,
+                            final String location,
+                            final boolean success) {
+
+      s_callRecorder.exit(reference, reference2, location, success);
+    }
+
+    public static void enter(final Object reference, final int slot) {
+      s_callRecorder.enter(reference, slot);
+    }
+
+    public static void enter(final Object reference,
+                             final Object reference2,
+                             final int slot) {
+    }
+
+    public static void exit(final Object reference,
+                            final int slot,
+                            final boolean success) {
+
+      s_callRecorder.exit(reference, slot, success);
+    }
+
+    public static void exit(final Object reference,
+                            final Object reference2,
+                            final int slot,
+                            final boolean success) {
+    }
+  }
+
   public static final class BadAdvice1 {
   }
 
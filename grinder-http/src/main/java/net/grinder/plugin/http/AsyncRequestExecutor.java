@@ -0,0 +1,362 @@
+// Copyright (C) 2013 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.grinder.plugin.http;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.FutureTask;
+
+import javax.net.ssl.SSLContext;
+
+import net.grinder.common.SSLContextFactory;
+import net.grinder.common.UncheckedInterruptedException;
+import net.grinder.util.thread.ExecutorFactory;
+
+
+/**
+ * Makes the asynchronous requests of a worker thread.
+ *
+ * <p>
+ * Each request uses one of a fixed number of <em>lanes</em>. A lane is an
+ * {@link HTTPPluginThreadState} with its own connections, which shares the
+ * cookies of the worker thread. The number of lanes limits the number of
+ * parallel requests, in the same way that a browser limits the number of
+ * connections it opens. Requests wait in a queue for a free lane.
+ * </p>
+ *
+ * <p>
+ * Requests are made by a pool of threads shared by all worker threads in the
+ * process. The size of the pool bounds the total number of requests in
+ * progress, however many worker threads there are. A request only occupies a
+ * pool thread while it has a lane, so one worker thread's queue can't hold up
+ * the others.
+ * </p>
+ *
+ * <p>
+ * Apart from {@link #execute}, the methods must be called by the worker
+ * thread.
+ * </p>
+ *
+ * <p>Package scope.</p>
+ *
+ * @author Philip Aston
+ */
+final class AsyncRequestExecutor {
+
+  private static final int DEFAULT_NUMBER_OF_THREADS = 32;
+
+  // Guarded by AsyncRequestExecutor.class.
+  private static int s_numberOfThreads = DEFAULT_NUMBER_OF_THREADS;
+  private static ExecutorService s_executor;
+
+  private final List<HTTPPluginThreadState> m_lanes;
+  private final List<HTTPResponseFuture> m_outstanding =
+    new ArrayList<HTTPResponseFuture>();
+
+  // Guarded by this.
+  private final Queue<HTTPPluginThreadState> m_idleLanes =
+    new LinkedList<HTTPPluginThreadState>();
+  private final Queue<RequestTask> m_waiting = new LinkedList<RequestTask>();
+  private boolean m_shutdown;
+
+  private volatile SSLContext m_sslContext;
+
+  /**
+   * Constructor.
+   *
+   * @param owner
+   *          The thread state of the worker thread.
+   * @param numberOfLanes
+   *          The maximum number of parallel requests.
+   */
+  AsyncRequestExecutor(final HTTPPluginThreadState owner,
+                       final int numberOfLanes) {
+
+    if (numberOfLanes < 1) {
+      throw new IllegalArgumentException("At least one lane is required");
+    }
+
+    // Lanes can't obtain the SSL context for themselves, because only
+    // worker threads have one. The worker thread provides its context when
+    // it submits each request.
+    final SSLContextFactory sslContextFactory = new SSLContextFactory() {
+        @Override public SSLContext getSSLContext() {
+          return m_sslContext;
+        }
+      };
+
+    m_lanes = new ArrayList<HTTPPluginThreadState>(numberOfLanes);
+
+    for (int i = 0; i < numberOfLanes; ++i) {
+      final HTTPPluginThreadState lane =
+        owner.createLane(sslContextFactory);
+      m_lanes.add(lane);
+      m_idleLanes.add(lane);
+    }
+  }
+
+  /**
+   * Set the number of threads in the shared pool. Only has an effect if
+   * called before the first asynchronous request.
+   *
+   * @param numberOfThreads
+   *          The number of threads.
+   */
+  static synchronized void setNumberOfThreads(final int numberOfThreads) {
+    if (numberOfThreads < 1) {
+      throw new IllegalArgumentException(
+        "The number of threads must be positive");
+    }
+
+    s_numberOfThreads = numberOfThreads;
+  }
+
+  private static synchronized ExecutorService getExecutor() {
+    if (s_executor == null) {
+      // The threads exit when idle, so the pool need never be shut down.
+      s_executor =
+        ExecutorFactory.createTransientThreadPool("HTTP async request",
+                                                  s_numberOfThreads);
+    }
+
+    return s_executor;
+  }
+
+  /**
+   * Interface for requests.
+   */
+  interface Request {
+
+    /**
+     * Make the request, and record its statistics.
+     *
+     * @param lane
+     *          Provides the connections to use.
+     * @return The work to be done by the worker thread when it collects the
+     *         response.
+     * @throws Exception
+     *           If the request failed.
+     */
+    HTTPResponseFuture.Completion execute(HTTPPluginThreadState lane)
+      throws Exception;
+  }
+
+  /**
+   * A queued request. The lane is set before the task is passed to the
+   * pool, which publishes it to the pool thread.
+   */
+  private static final class RequestTask
+    extends FutureTask<HTTPResponseFuture.Completion> {
+
+    private final LaneCallable m_callable;
+
+    public RequestTask(final LaneCallable callable) {
+      super(callable);
+      m_callable = callable;
+    }
+  }
+
+  private static final class LaneCallable
+    implements Callable<HTTPResponseFuture.Completion> {
+
+    private final Request m_request;
+    private HTTPPluginThreadState m_lane;
+
+    public LaneCallable(final Request request) {
+      m_request = request;
+    }
+
+    @Override public HTTPResponseFuture.Completion call() throws Exception {
+      return m_request.execute(m_lane);
+    }
+  }
+
+  /**
+   * Queue a request.
+   *
+   * @param request
+   *          The request.
+   * @param sslContext
+   *          The SSL context of the worker thread.
+   * @return The future result.
+   */
+  public HTTPResponseFuture execute(final Request request,
+                                    final SSLContext sslContext) {
+    m_sslContext = sslContext;
+
+    final RequestTask task = new RequestTask(new LaneCallable(request));
+
+    final HTTPPluginThreadState lane;
+
+    synchronized (this) {
+      if (m_shutdown) {
+        task.cancel(false);
+        lane = null;
+      }
+      else {
+        lane = m_idleLanes.poll();
+
+        if (lane == null) {
+          m_waiting.add(task);
+        }
+      }
+    }
+
+    if (lane != null) {
+      start(task, lane);
+    }
+
+    final HTTPResponseFuture result = new HTTPResponseFuture(task);
+    m_outstanding.add(result);
+
+    return result;
+  }
+
+  private void start(final RequestTask task,
+                     final HTTPPluginThreadState lane) {
+    task.m_callable.m_lane = lane;
+
+    getExecutor().execute(new Runnable() {
+        @Override public void run() {
+          try {
+            task.run();
+          }
+          finally {
+            release(lane);
+          }
+        }
+      });
+  }
+
+  /**
+   * Pass a lane that has finished a request to the next waiting request.
+   */
+  private void release(final HTTPPluginThreadState lane) {
+    final RequestTask next;
+
+    synchronized (this) {
+      if (m_shutdown) {
+        next = null;
+      }
+      else {
+        next = m_waiting.poll();
+
+        if (next == null) {
+          m_idleLanes.add(lane);
+          return;
+        }
+      }
+    }
+
+    if (next != null) {
+      start(next, lane);
+    }
+    else {
+      // Abandoned by shutdown().
+      lane.beginRun();
+    }
+  }
+
+  /**
+   * Wait for all of the requests that have been queued since the last call,
+   * and complete them.
+   *
+   * @return The futures for the requests, in the order that they were
+   *         queued.
+   */
+  public List<HTTPResponseFuture> awaitAll() {
+    final List<HTTPResponseFuture> result =
+      new ArrayList<HTTPResponseFuture>(m_outstanding);
+    m_outstanding.clear();
+
+    for (final HTTPResponseFuture future : result) {
+      try {
+        future.get();
+      }
+      catch (final InterruptedException e) {
+        throw new UncheckedInterruptedException(e);
+      }
+      catch (final ExecutionException e) {
+        // The caller can retrieve the failure from the future.
+      }
+      catch (final CancellationException e) {
+        // The caller can see that the future was cancelled.
+      }
+    }
+
+    return result;
+  }
+
+  /**
+   * Close the connections of each lane. Outstanding requests are allowed to
+   * finish first, but are not completed.
+   */
+  public void closeConnections() {
+    for (final HTTPResponseFuture future : m_outstanding) {
+      try {
+        future.await();
+      }
+      catch (final InterruptedException e) {
+        throw new UncheckedInterruptedException(e);
+      }
+    }
+
+    m_outstanding.clear();
+
+    for (final HTTPPluginThreadState lane : m_lanes) {
+      lane.beginRun();
+    }
+  }
+
+  /**
+   * Cancel the outstanding requests, and close the connections of the idle
+   * lanes. Lanes that are still making requests close their connections when
+   * they finish.
+   */
+  public void shutdown() {
+    final List<HTTPPluginThreadState> idle;
+
+    synchronized (this) {
+      m_shutdown = true;
+      m_waiting.clear();
+
+      idle = new ArrayList<HTTPPluginThreadState>(m_idleLanes);
+      m_idleLanes.clear();
+    }
+
+    for (final HTTPResponseFuture future : m_outstanding) {
+      future.cancel(true);
+    }
+
+    m_outstanding.clear();
+
+    for (final HTTPPluginThreadState lane : idle) {
+      lane.beginRun();
+    }
+  }
+}
@@ -0,0 +1,548 @@
+// Copyright (C) 2013 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+
+package net.grinder.plugin.http;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+import net.grinder.util.http.URIParser;
+
+
+/**
+ * Extracts input and URI tokens from the bytes of a response body.
+ *
+ * <p>
+ * The body is scanned once, from start to end, and only as far as is needed
+ * to answer the queries made so far. The scan records the offsets of each
+ * {@code <input>} tag that has both a {@code name} and a {@code value}
+ * attribute, and of each {@code href} attribute value. Strings are only
+ * created for the values that are returned, and URIs are only parsed if
+ * they might contain the requested token name.
+ * </p>
+ *
+ * <p>
+ * The body must use an {@link #isASCIICompatible ASCII compatible}
+ * character set, so that markup can be recognised a byte at a time.
+ * </p>
+ *
+ * <p>
+ * Not thread safe.
+ * </p>
+ *
+ * <p>Package scope.</p>
+ *
+ * @author Philip Aston
+ */
+final class BodyTokenizer {
+
+  /** Token kind for {@code <input>} tags. */
+  static final int INPUT = 1;
+
+  /** Token kind for {@code <input>} tags of type {@code hidden}. */
+  static final int HIDDEN_INPUT = 2;
+
+  /** Token kind for {@code href} URIs. */
+  static final int URI = 4;
+
+  // Each record is: kinds, position, name start, name end, value start,
+  // value end. The position is the offset of the '<' of an input tag, or
+  // the 'h' of an href attribute.
+  private static final int RECORD_SIZE = 6;
+
+  private static final byte[] HREF = { 'h', 'r', 'e', 'f' };
+
+  private final byte[] m_body;
+  private final Charset m_charset;
+  private final URIParser m_uriParser;
+
+  private int[] m_records = new int[16 * RECORD_SIZE];
+  private int m_numberOfRecords;
+  private int m_scanPosition;
+
+  /**
+   * Constructor.
+   *
+   * @param body
+   *          The response body.
+   * @param charset
+   *          The character set of the body. Must be ASCII compatible.
+   * @param uriParser
+   *          Used to parse URIs.
+   */
+  BodyTokenizer(final byte[] body,
+                final Charset charset,
+                final URIParser uriParser) {
+    m_body = body;
+    m_charset = charset;
+    m_uriParser = uriParser;
+  }
+
+  /**
+   * Whether a character set encodes the ASCII characters as single bytes,
+   * and never uses bytes in the ASCII range for other characters.
+   *
+   * @param charset
+   *          The character set.
+   * @return {@code true} if the character set can be used with a
+   *         {@code BodyTokenizer}.
+   */
+  static boolean isASCIICompatible(final Charset charset) {
+    final String name = charset.name();
+
+    return "UTF-8".equals(name) ||
+           "US-ASCII".equals(name) ||
+           name.startsWith("ISO-8859-") ||
+           name.startsWith("windows-125");
+  }
+
+  /**
+   * Find some text in the body.
+   *
+   * @param text
+   *          The text.
+   * @return The byte offset of the first occurrence of {@code text}, or
+   *         {@code -1} if there is none.
+   */
+  int indexOf(final String text) {
+    final byte[] bytes = text.getBytes(m_charset);
+    final int last = m_body.length - bytes.length;
+
+    for (int i = 0; i <= last; ++i) {
+      if (regionMatches(i, bytes)) {
+        return i;
+      }
+    }
+
+    return -1;
+  }
+
+  /**
+   * Return the values of tokens with a given name.
+   *
+   * @param kind
+   *          The kind of token - one of {@link #INPUT}, {@link #HIDDEN_INPUT},
+   *          or {@link #URI}.
+   * @param name
+   *          The token name.
+   * @param startFrom
+   *          Only tokens that start at or after this byte offset are
+   *          considered.
+   * @param firstOnly
+   *          If {@code true}, return at most one value.
+   * @return The values, in the order they appear in the body.
+   */
+  List<String> values(final int kind,
+                      final String name,
+                      final int startFrom,
+                      final boolean firstOnly) {
+
+    final byte[] nameBytes = name.getBytes(m_charset);
+    final List<String> result = new ArrayList<String>(firstOnly ? 1 : 4);
+
+    for (int i = 0; i < m_numberOfRecords || scan(); ++i) {
+      final int r = i * RECORD_SIZE;
+
+      if ((m_records[r] & kind) == 0 || m_records[r + 1] < startFrom) {
+        continue;
+      }
+
+      final String value =
+        kind == URI ? uriValue(r, name, nameBytes) : inputValue(r, nameBytes);
+
+      if (value != null) {
+        result.add(value);
+
+        if (firstOnly) {
+          break;
+        }
+      }
+    }
+
+    return result;
+  }
+
+  private String inputValue(final int r, final byte[] nameBytes) {
+    final int nameStart = m_records[r + 2];
+
+    if (m_records[r + 3] - nameStart != nameBytes.length ||
+        !regionMatches(nameStart, nameBytes)) {
+      return null;
+    }
+
+    return decode(m_records[r + 4], m_records[r + 5]);
+  }
+
+  private String uriValue(final int r,
+                          final String name,
+                          final byte[] nameBytes) {
+    final int start = m_records[r + 4];
+    final int end = m_records[r + 5];
+
+    // Names can be escaped, so we can only skip URIs that have no escapes.
+    if (!contains(start, end, nameBytes) &&
+        !contains(start, end, (byte)'%')) {
+      return null;
+    }
+
+    final String[] result = { null };
+
+    m_uriParser.parse(decode(start, end),
+                      new URIParser.AbstractParseListener() {
+        @Override
+        public boolean pathParameterNameValue(final String n,
+                                              final String value) {
+          return check(n, value);
+        }
+
+        @Override
+        public boolean queryStringNameValue(final String n,
+                                            final String value) {
+          return check(n, value);
+        }
+
+        private boolean check(final String n, final String value) {
+          if (n.equals(name)) {
+            result[0] = value;
+            return false;
+          }
+
+          return true;
+        }
+      });
+
+    return result[0];
+  }
+
+  /**
+   * Scan the body for the next token.
+   *
+   * @return {@code true} if a token was found.
+   */
+  private boolean scan() {
+    final byte[] body = m_body;
+    final int numberOfRecords = m_numberOfRecords;
+
+    for (int p = m_scanPosition; p < body.length; ++p) {
+      final int end;
+
+      if (body[p] == '<') {
+        end = scanInput(p);
+      }
+      else if (body[p] == 'h') {
+        end = scanHref(p);
+      }
+      else {
+        continue;
+      }
+
+      if (end != -1) {
+        m_scanPosition = end + 1;
+
+        if (m_numberOfRecords != numberOfRecords) {
+          return true;
+        }
+
+        p = end;
+      }
+    }
+
+    m_scanPosition = body.length;
+    return false;
+  }
+
+  /**
+   * Equivalent to the regular expression {@code <\s*input\s+.*?>}, with
+   * the attributes parsed as {@code (\w+)\s*=\s*['"](.*?)['"]}.
+   */
+  private int scanInput(final int p) {
+    final byte[] body = m_body;
+
+    int i = skipSpace(p + 1, body.length);
+
+    if (!regionMatchesIgnoreCase(i, "input")) {
+      return -1;
+    }
+
+    i += 5;
+
+    if (i == body.length || !isSpace(body[i])) {
+      return -1;
+    }
+
+    final int end = indexOf((byte)'>', i);
+
+    if (end == -1) {
+      return -1;
+    }
+
+    int nameStart = -1;
+    int nameEnd = -1;
+    int valueStart = -1;
+    int valueEnd = -1;
+    boolean hidden = false;
+
+    while (i < end) {
+      if (!isWord(body[i])) {
+        ++i;
+        continue;
+      }
+
+      final int attributeStart = i;
+
+      while (i < end && isWord(body[i])) {
+        ++i;
+      }
+
+      final int attributeEnd = i;
+
+      int j = skipSpace(i, end);
+
+      if (j == end || body[j] != '=') {
+        continue;
+      }
+
+      j = skipSpace(j + 1, end);
+
+      if (j == end || !isQuote(body[j])) {
+        continue;
+      }
+
+      final int start = j + 1;
+      final int close = indexOfQuote(start, end);
+
+      if (close == -1) {
+        continue;
+      }
+
+      final int length = attributeEnd - attributeStart;
+
+      if (length == 4 && regionMatchesIgnoreCase(attributeStart, "name")) {
+        nameStart = start;
+        nameEnd = close;
+      }
+      else if (length == 5 &&
+               regionMatchesIgnoreCase(attributeStart, "value")) {
+        valueStart = start;
+        valueEnd = close;
+      }
+      else if (length == 4 &&
+               regionMatchesIgnoreCase(attributeStart, "type")) {
+        final int s = skipSpace(start, close);
+        hidden = regionMatchesIgnoreCase(s, "hidden") &&
+                 skipSpace(s + 6, close) == close;
+      }
+
+      i = close + 1;
+    }
+
+    if (nameStart != -1 && valueStart != -1) {
+      addRecord(hidden ? INPUT | HIDDEN_INPUT : INPUT,
+                p,
+                nameStart,
+                nameEnd,
+                valueStart,
+                valueEnd);
+    }
+
+    return end;
+  }
+
+  /**
+   * Equivalent to the regular expression
+   * {@code href[ \t]*=[ \t]*['"]([^'"]*)['"]}.
+   */
+  private int scanHref(final int p) {
+    final byte[] body = m_body;
+
+    if (!regionMatches(p, HREF)) {
+      return -1;
+    }
+
+    int i = skipBlanks(p + HREF.length);
+
+    if (i == body.length || body[i] != '=') {
+      return -1;
+    }
+
+    i = skipBlanks(i + 1);
+
+    if (i == body.length || !isQuote(body[i])) {
+      return -1;
+    }
+
+    final int end = indexOfQuote(i + 1, body.length);
+
+    if (end == -1) {
+      return -1;
+    }
+
+    addRecord(URI, p, -1, -1, i + 1, end);
+
+    return end;
+  }
+
+  private void addRecord(final int kinds,
+                         final int position,
+                         final int nameStart,
+                         final int nameEnd,
+                         final int valueStart,
+                         final int valueEnd) {
+    int r = m_numberOfRecords * RECORD_SIZE;
+
+    if (r == m_records.length) {
+      final int[] records = new int[m_records.length * 2];
+      System.arraycopy(m_records, 0, records, 0, r);
+      m_records = records;
+    }
+
+    m_records[r++] = kinds;
+    m_records[r++] = position;
+    m_records[r++] = nameStart;
+    m_records[r++] = nameEnd;
+    m_records[r++] = valueStart;
+    m_records[r] = valueEnd;
+
+    ++m_numberOfRecords;
+  }
+
+  private String decode(final int start, final int end) {
+    return new String(m_body, start, end - start, m_charset);
+  }
+
+  private boolean regionMatches(final int offset, final byte[] bytes) {
+    if (offset + bytes.length > m_body.length) {
+      return false;
+    }
+
+    for (int i = 0; i < bytes.length; ++i) {
+      if (m_body[offset + i] != bytes[i]) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+  /**
+   * @param lowerCase Must be lower case ASCII.
+   */
+  private boolean regionMatchesIgnoreCase(final int offset,
+                                          final String lowerCase) {
+    if (offset + lowerCase.length() > m_body.length) {
+      return false;
+    }
+
+    for (int i = 0; i < lowerCase.length(); ++i) {
+      // Setting the 0x20 bit maps ASCII upper case to lower case. The
+      // expected characters are letters, so nothing else can match.
+      if ((m_body[offset + i] | 0x20) != lowerCase.charAt(i)) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+  private boolean contains(final int start,
+                           final int end,
+                           final byte[] bytes) {
+    final int last = end - bytes.length;
+
+    for (int i = start; i <= last; ++i) {
+      if (regionMatches(i, bytes)) {
+        return true;
+      }
+    }
+
+    return false;
+  }
+
+  private boolean contains(final int start, final int end, final byte b) {
+    for (int i = start; i < end; ++i) {
+      if (m_body[i] == b) {
+        return true;
+      }
+    }
+
+    return false;
+  }
+
+  private int indexOf(final byte b, final int start) {
+    for (int i = start; i < m_body.length; ++i) {
+      if (m_body[i] == b) {
+        return i;
+      }
+    }
+
+    return -1;
+  }
+
+  private int indexOfQuote(final int start, final int end) {
+    for (int i = start; i < end; ++i) {
+      if (isQuote(m_body[i])) {
+        return i;
+      }
+    }
+
+    return -1;
+  }
+
+  private int skipSpace(final int start, final int end) {
+    int i = start;
+
+    while (i < end && isSpace(m_body[i])) {
+      ++i;
+    }
+
+    return i;
+  }
+
+  private int skipBlanks(final int start) {
+    int i = start;
+
+    while (i < m_body.length && (m_body[i] == ' ' || m_body[i] == '\t')) {
+      ++i;
+    }
+
+    return i;
+  }
+
+  /** Equivalent to the regular expression {@code \s}. */
+  private static boolean isSpace(final byte b) {
+    return b == ' ' || b == '\t' || b == '\n' || b == '\r' ||
+           b == 0x0B || b == '\f';
+  }
+
+  /** Equivalent to the regular expression {@code \w}. */
+  private static boolean isWord(final byte b) {
+    return b >= 'a' && b <= 'z' ||
+           b >= 'A' && b <= 'Z' ||
+           b >= '0' && b <= '9' ||
+           b == '_';
+  }
+
+  private static boolean isQuote(final byte b) {
+    return b == '\'' || b == '"';
+  }
+}
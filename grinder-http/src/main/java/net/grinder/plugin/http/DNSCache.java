@@ -0,0 +1,183 @@
+// Copyright (C) 2013 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.grinder.plugin.http;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import net.grinder.common.TimeAuthority;
+import net.grinder.util.StandardTimeAuthority;
+import HTTPClient.HTTPConnection;
+
+
+/**
+ * Process wide cache of host name lookups, shared by all of the connections
+ * of the HTTP plug-in.
+ *
+ * <p>
+ * The cache records when each host was last looked up, and whether the
+ * lookup failed. Each connection decides how old an entry it is prepared to
+ * use through the {@link HTTPConnection.HostResolver} returned by
+ * {@link #createResolver}. When an entry is too old, the resolver looks the
+ * host up again, and updates the cache.
+ * </p>
+ *
+ * <p>Package scope.</p>
+ *
+ * @author Philip Aston
+ */
+final class DNSCache {
+
+  private static final DNSCache s_instance =
+    new DNSCache(new StandardTimeAuthority());
+
+  private final TimeAuthority m_timeAuthority;
+
+  private final ConcurrentMap<String, Entry> m_entries =
+    new ConcurrentHashMap<String, Entry>();
+
+  /**
+   * Constructor.
+   *
+   * @param timeAuthority Used to time the age of cache entries.
+   */
+  DNSCache(final TimeAuthority timeAuthority) {
+    m_timeAuthority = timeAuthority;
+  }
+
+  /**
+   * Return the cache used by the HTTP plug-in.
+   *
+   * @return The cache.
+   */
+  public static DNSCache getInstance() {
+    return s_instance;
+  }
+
+  /**
+   * Look up some hosts, and cache the results.
+   *
+   * @param hosts The hosts.
+   */
+  public void resolve(final String... hosts) {
+    for (final String host : hosts) {
+      try {
+        lookup(host, true);
+      }
+      catch (final UnknownHostException e) {
+        // Cached as a negative entry.
+      }
+    }
+  }
+
+  /**
+   * Discard all cached entries.
+   */
+  public void clear() {
+    m_entries.clear();
+  }
+
+  /**
+   * Create a resolver that uses the cache.
+   *
+   * @param timeToLive
+   *          Maximum age in milliseconds of a successful lookup that the
+   *          resolver will use. {@code 0} means successful lookups are not
+   *          reused.
+   * @param negativeTimeToLive
+   *          Maximum age in milliseconds of a failed lookup that the resolver
+   *          will use. {@code 0} means failed lookups are not reused.
+   * @return The resolver.
+   */
+  public HTTPConnection.HostResolver createResolver(
+    final long timeToLive,
+    final long negativeTimeToLive) {
+
+    return new HTTPConnection.HostResolver() {
+      @Override public InetAddress[] getAllByName(final String host)
+        throws UnknownHostException {
+
+        final Entry entry = m_entries.get(host);
+
+        if (entry != null) {
+          final long age = m_timeAuthority.getTimeInMilliseconds() -
+                           entry.m_time;
+
+          if (age < (entry.m_addresses != null ?
+                     timeToLive : negativeTimeToLive)) {
+            return entry.getAddresses(host);
+          }
+        }
+
+        return lookup(host, negativeTimeToLive > 0);
+      }
+    };
+  }
+
+  private InetAddress[] lookup(final String host,
+                               final boolean cacheFailure)
+    throws UnknownHostException {
+
+    try {
+      final InetAddress[] addresses = InetAddress.getAllByName(host);
+
+      m_entries.put(host,
+                    new Entry(addresses,
+                              m_timeAuthority.getTimeInMilliseconds()));
+
+      return addresses.clone();
+    }
+    catch (final UnknownHostException e) {
+      if (cacheFailure) {
+        m_entries.put(host,
+                      new Entry(null, m_timeAuthority.getTimeInMilliseconds()));
+      }
+      else {
+        m_entries.remove(host);
+      }
+
+      throw e;
+    }
+  }
+
+  private static final class Entry {
+    private final InetAddress[] m_addresses;
+    private final long m_time;
+
+    public Entry(final InetAddress[] addresses, final long time) {
+      m_addresses = addresses;
+      m_time = time;
+    }
+
+    public InetAddress[] getAddresses(final String host)
+      throws UnknownHostException {
+
+      if (m_addresses == null) {
+        throw new UnknownHostException(host);
+      }
+
+      return m_addresses.clone();
+    }
+  }
+}
@@ -87,6 +87,8 @@ final class HTTPConnectionWrapper implements HTTPPluginConnection {
     setProxyServer(defaults.getProxyHost(), defaults.getProxyPort());
     setLocalAddress(defaults.getLocalAddress());
     setBandwidthLimit(defaults.getBandwidthLimit());
+    setDNSCacheTimeToLive(defaults.getDNSCacheTimeToLive(),
+                          defaults.getDNSCacheNegativeTimeToLive());
   }
 
   HTTPConnection getConnection() {
@@ -191,6 +193,19 @@ final class HTTPConnectionWrapper implements HTTPPluginConnection {
     }
   }
 
+  @Override
+  public void setDNSCacheTimeToLive(final long timeToLive,
+                                    final long negativeTimeToLive) {
+    if (timeToLive > 0 || negativeTimeToLive > 0) {
+      m_httpConnection.setHostResolver(
+        DNSCache.getInstance().createResolver(timeToLive,
+                                              negativeTimeToLive));
+    }
+    else {
+      m_httpConnection.setHostResolver(null);
+    }
+  }
+
   @Override
   public void close() {
     m_httpConnection.stop();
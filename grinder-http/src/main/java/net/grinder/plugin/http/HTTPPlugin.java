@@ -33,6 +33,7 @@ import net.grinder.plugininterface.PluginProcessContext;
 import net.grinder.plugininterface.PluginThreadListener;
 import net.grinder.script.Grinder.ScriptContext;
 import net.grinder.script.Statistics;
+import net.grinder.script.Statistics.StatisticsForTest;
 import net.grinder.statistics.StatisticsIndexMap;
 import net.grinder.util.Sleeper;
 import net.grinder.util.SleeperImplementation;
@@ -109,6 +110,16 @@ public class HTTPPlugin implements GrinderPlugin {
         m_pluginProcessContext.getPluginThreadListener(this);
   }
 
+  /**
+   * The statistics for the test the current thread is performing, if any.
+   * The result must not be kept, or passed to another thread.
+   *
+   * @return The statistics, or {@code null}.
+   */
+  final StatisticsForTest getStatisticsForCurrentTest() {
+    return m_pluginProcessContext.getStatisticsForCurrentTest();
+  }
+
   final ScriptContext getScriptContext() {
     return m_scriptContext;
   }
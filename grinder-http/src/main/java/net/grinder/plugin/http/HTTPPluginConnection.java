@@ -231,6 +231,32 @@ public interface HTTPPluginConnection {
    */
   void setBandwidthLimit(int targetBPS);
 
+  /**
+   * Set how long host name lookups are cached.
+   *
+   * <p>
+   * By default, the address of the server is looked up each time a new socket
+   * connection is created. This method allows the HTTP plug-in to reuse the
+   * result of an earlier lookup for the same host name, made by any
+   * connection in the worker process. The {@code httpplugin.dnsTime}
+   * statistic only records the time of lookups that are not answered from
+   * the cache.
+   * </p>
+   *
+   * <p>
+   * Host names can be looked up in advance with
+   * {@link HTTPPluginControl#resolveHosts}.
+   * </p>
+   *
+   * @param timeToLive
+   *          The maximum age of a successful lookup to reuse, in milliseconds.
+   *          Set to {@code 0} to disable the cache.
+   * @param negativeTimeToLive
+   *          The maximum age of a failed lookup to reuse, in milliseconds. Set
+   *          to {@code 0} to always retry failed lookups.
+   */
+  void setDNSCacheTimeToLive(long timeToLive, long negativeTimeToLive);
+
   /**
    * Explicitly closes physical connection to the server. A new connection will
    * be created if this {@link HTTPPluginConnection} is used again. You
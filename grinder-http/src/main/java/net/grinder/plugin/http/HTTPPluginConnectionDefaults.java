@@ -51,6 +51,8 @@ final class HTTPPluginConnectionDefaults implements HTTPPluginConnection {
   private boolean m_verifyServerDistinguishedName = false;
   private InetAddress m_localAddress;
   private int m_slowClientTargetBPS;
+  private long m_dnsCacheTimeToLive;
+  private long m_dnsCacheNegativeTimeToLive;
 
   @Override
   public synchronized void setFollowRedirects(final boolean followRedirects) {
@@ -165,6 +167,22 @@ final class HTTPPluginConnectionDefaults implements HTTPPluginConnection {
     return m_slowClientTargetBPS;
   }
 
+  @Override
+  public synchronized void setDNSCacheTimeToLive(
+    final long timeToLive,
+    final long negativeTimeToLive) {
+    m_dnsCacheTimeToLive = timeToLive;
+    m_dnsCacheNegativeTimeToLive = negativeTimeToLive;
+  }
+
+  synchronized long getDNSCacheTimeToLive() {
+    return m_dnsCacheTimeToLive;
+  }
+
+  synchronized long getDNSCacheNegativeTimeToLive() {
+    return m_dnsCacheNegativeTimeToLive;
+  }
+
   private static final HTTPPluginConnectionDefaults
     s_defaultConnectionDefaults = new HTTPPluginConnectionDefaults();
 
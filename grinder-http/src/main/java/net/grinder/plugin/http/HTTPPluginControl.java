@@ -21,6 +21,8 @@
 
 package net.grinder.plugin.http;
 
+import java.util.List;
+
 import net.grinder.common.GrinderException;
 import HTTPClient.ParseException;
 import HTTPClient.ProtocolNotSuppException;
@@ -100,6 +102,76 @@ public final class HTTPPluginControl {
     return new HTTPUtilitiesImplementation(HTTPPlugin.getPlugin());
   }
 
+  /**
+   * Look up host names in advance, and store the results in the HTTP
+   * plug-in's DNS cache.
+   *
+   * <p>This is typically called from the top level of a script, so that the
+   * lookups are not timed as part of the first requests to each host. The
+   * cache is only used by connections that have been configured with
+   * {@link HTTPPluginConnection#setDNSCacheTimeToLive}.</p>
+   *
+   * @param hosts The host names.
+   */
+  public static void resolveHosts(final String... hosts) {
+    DNSCache.getInstance().resolve(hosts);
+  }
+
+  /**
+   * Discard the contents of the HTTP plug-in's DNS cache.
+   */
+  public static void clearDNSCache() {
+    DNSCache.getInstance().clear();
+  }
+
+  /**
+   * Wait for the calling worker thread's outstanding asynchronous requests,
+   * and collect their responses.
+   *
+   * <p>Failed requests do not cause this method to fail. Use
+   * {@link HTTPResponseFuture#get()} to obtain the response or failure of
+   * each request.</p>
+   *
+   * @return The futures for the requests made since the last call, in the
+   * order that they were made.
+   * @throws GrinderException If not called from a worker thread.
+   * @see HTTPRequest#GETAsync(String, HTTPClient.NVPair[],
+   *      HTTPClient.NVPair[])
+   */
+  public static HTTPResponseFuture[] awaitAsyncRequests()
+    throws GrinderException {
+
+    final List<HTTPResponseFuture> futures =
+      getThreadState().getAsyncRequestExecutor().awaitAll();
+
+    return futures.toArray(new HTTPResponseFuture[futures.size()]);
+  }
+
+  /**
+   * Set the maximum number of parallel asynchronous requests made for each
+   * worker thread. Each request in progress uses a separate connection.
+   * Worker threads that have already made an asynchronous request are
+   * unaffected. The default is 6.
+   *
+   * @param connections The maximum number of parallel requests.
+   */
+  public static void setAsyncConnections(final int connections) {
+    HTTPPluginThreadState.setAsyncConnections(connections);
+  }
+
+  /**
+   * Set the maximum number of threads the worker process uses to make
+   * asynchronous requests. The threads are shared by all worker threads, so
+   * this bounds the number of asynchronous requests in progress across the
+   * process. Only has an effect if called before the first asynchronous
+   * request is made. The default is 32.
+   *
+   * @param threads The maximum number of threads.
+   */
+  public static void setAsyncThreads(final int threads) {
+    AsyncRequestExecutor.setNumberOfThreads(threads);
+  }
+
   private static HTTPPluginThreadState getThreadState()
       throws GrinderException {
     return HTTPPlugin.getPlugin().getThreadState();
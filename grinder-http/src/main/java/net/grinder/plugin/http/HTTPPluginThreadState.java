@@ -24,6 +24,8 @@ package net.grinder.plugin.http;
 import java.util.HashMap;
 import java.util.Map;
 
+import javax.net.ssl.SSLContext;
+
 import net.grinder.common.SSLContextFactory;
 import net.grinder.common.SSLContextFactory.SSLContextFactoryException;
 import net.grinder.common.SkeletonThreadLifeCycleListener;
@@ -47,13 +49,18 @@ import HTTPClient.URI;
 class HTTPPluginThreadState
   extends SkeletonThreadLifeCycleListener implements PluginThreadListener {
 
+  private static volatile int s_asyncConnections = 6;
+
   private final SSLContextFactory m_sslContextFactory;
+  private final Object m_cookieContext;
 
   private final Map<URI, HTTPConnectionWrapper> m_httpConnectionWrappers =
     new HashMap<URI, HTTPConnectionWrapper>();
   private HTTPResponse m_lastResponse;
   private final Sleeper m_slowClientSleeper;
   private final TimeAuthority m_timeAuthority;
+  private byte[] m_responseBuffer;
+  private AsyncRequestExecutor m_asyncRequestExecutor;
 
   HTTPPluginThreadState(final SSLContextFactory sslContextFactory,
                         final Sleeper slowClientSleeper,
@@ -62,6 +69,69 @@ class HTTPPluginThreadState
     m_sslContextFactory = sslContextFactory;
     m_slowClientSleeper = slowClientSleeper;
     m_timeAuthority = timeAuthority;
+    m_cookieContext = this;
+  }
+
+  private HTTPPluginThreadState(final HTTPPluginThreadState owner,
+                                final SSLContextFactory sslContextFactory) {
+    m_sslContextFactory = sslContextFactory;
+    m_slowClientSleeper = owner.m_slowClientSleeper;
+    m_timeAuthority = owner.m_timeAuthority;
+    m_cookieContext = owner.m_cookieContext;
+  }
+
+  /**
+   * Create a thread state with its own connections that shares our cookies,
+   * for use by an {@link AsyncRequestExecutor}.
+   *
+   * @param sslContextFactory
+   *          Provides the SSL context for new connections.
+   * @return The new thread state.
+   */
+  HTTPPluginThreadState createLane(final SSLContextFactory sslContextFactory) {
+    return new HTTPPluginThreadState(this, sslContextFactory);
+  }
+
+  /**
+   * Return the executor for the thread's asynchronous requests, creating it
+   * if necessary.
+   *
+   * @return The executor.
+   */
+  AsyncRequestExecutor getAsyncRequestExecutor() {
+    if (m_asyncRequestExecutor == null) {
+      m_asyncRequestExecutor =
+        new AsyncRequestExecutor(this, s_asyncConnections);
+    }
+
+    return m_asyncRequestExecutor;
+  }
+
+  /**
+   * Set the number of connections each worker thread uses for
+   * asynchronous requests. Threads that have already made an asynchronous
+   * request are unaffected.
+   *
+   * @param connections
+   *          The number of connections.
+   */
+  static void setAsyncConnections(final int connections) {
+    if (connections < 1) {
+      throw new IllegalArgumentException(
+        "The number of connections must be positive");
+    }
+
+    s_asyncConnections = connections;
+  }
+
+  /**
+   * Return the SSL context for new connections.
+   *
+   * @return The SSL context.
+   * @throws SSLContextFactoryException If the context could not be created.
+   */
+  SSLContext getSSLContext() throws SSLContextFactoryException {
+    return m_sslContextFactory.getSSLContext();
   }
 
   public HTTPConnectionWrapper getConnectionWrapper(final URI uri)
@@ -83,7 +153,7 @@ class HTTPPluginThreadState
       HTTPPluginConnectionDefaults.getConnectionDefaults();
 
     final HTTPConnection httpConnection = new HTTPConnection(uri);
-    httpConnection.setContext(this);
+    httpConnection.setContext(m_cookieContext);
 
     httpConnection.setSSLSocketFactory(
       m_sslContextFactory.getSSLContext().getSocketFactory());
@@ -102,6 +172,10 @@ class HTTPPluginThreadState
 
   @Override
   public void beginRun() {
+    if (m_asyncRequestExecutor != null) {
+      m_asyncRequestExecutor.closeConnections();
+    }
+
     // Discard our cookies.
     CookieModule.discardAllCookies(this);
 
@@ -114,6 +188,26 @@ class HTTPPluginThreadState
     m_httpConnectionWrappers.clear();
   }
 
+  @Override
+  public void endThread() {
+    if (m_asyncRequestExecutor != null) {
+      m_asyncRequestExecutor.shutdown();
+    }
+  }
+
+  /**
+   * Return a buffer that the thread can reuse to read response bodies.
+   *
+   * @return The buffer.
+   */
+  byte[] getResponseBuffer() {
+    if (m_responseBuffer == null) {
+      m_responseBuffer = new byte[8192];
+    }
+
+    return m_responseBuffer;
+  }
+
   public void setLastResponse(final HTTPResponse lastResponse) {
     m_lastResponse = lastResponse;
   }
@@ -46,6 +46,7 @@ import java.util.Set;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import net.grinder.common.Closer;
 import net.grinder.common.GrinderException;
 import net.grinder.plugininterface.PluginException;
 import net.grinder.script.Grinder.ScriptContext;
@@ -91,8 +92,9 @@ import HTTPClient.URI;
  * a {@code Content-Length} header has been supplied - please refer to the
  * {@link HttpOutputStream} class Javadoc for full details. If you are
  * streaming output to avoid loading complete request messages into memory,
- * you may also want to use {@link #setReadResponseBody} to disable
- * the reading of response bodies, and managed them yourself.</p>
+ * you may also want to use {@link #setStreamResponseBody} to read response
+ * bodies without holding them in memory, or {@link #setReadResponseBody} to
+ * disable the reading of response bodies, and managed them yourself.</p>
  *
  * @author Philip Aston
  */
@@ -123,6 +125,8 @@ public class HTTPRequest {
   private volatile byte[] m_defaultData;
   private volatile NVPair[] m_defaultFormData;
   private volatile boolean m_readResponseBody = true;
+  private volatile boolean m_streamResponseBody = false;
+  private volatile ResponseBodyValidator m_responseBodyValidator;
 
   /**
    * Creates a new {@code HTTPRequest} instance.
@@ -369,6 +373,68 @@ public class HTTPRequest {
     m_readResponseBody = b;
   }
 
+  /**
+   * Return whether response bodies will be read without being stored.
+   *
+   * @return {@code true} => The response body will be streamed.
+   * @see #setStreamResponseBody
+   */
+  public boolean getStreamResponseBody() {
+    return m_streamResponseBody;
+  }
+
+  /**
+   * Set whether response bodies will be read without being stored.
+   *
+   * <p>
+   * If {@code true}, and {@link #getReadResponseBody} is {@code true}, the
+   * response body is read through a small buffer, counted, and passed to any
+   * {@link ResponseBodyValidator}, and then discarded. This allows very large
+   * responses to be downloaded without a corresponding amount of memory.
+   * The time taken to read the body and the body length are recorded as
+   * normal. {@link HTTPResponse#getData()} and {@link HTTPResponse#getText()}
+   * will return an empty body.
+   * </p>
+   *
+   * <p>
+   * The default is {@code false}, so the body is stored in the
+   * {@link HTTPResponse}. Scripts that need the body's content should leave
+   * it so.
+   * </p>
+   *
+   * @param b {@code true} => The response body will be streamed.
+   */
+  public void setStreamResponseBody(final boolean b) {
+    m_streamResponseBody = b;
+  }
+
+  /**
+   * Return the validator applied to response bodies.
+   *
+   * @return The validator, or {@code null} if there is none.
+   * @see #setResponseBodyValidator
+   */
+  public ResponseBodyValidator getResponseBodyValidator() {
+    return m_responseBodyValidator;
+  }
+
+  /**
+   * Set a validator to apply to response bodies.
+   *
+   * <p>
+   * The validator is applied to each response body that is read, whether or
+   * not it is streamed. If the validator reports a failure, the failure is
+   * logged and the current test is marked as unsuccessful.
+   * </p>
+   *
+   * @param validator
+   *          The validator, or {@code null} for none.
+   * @see ResponseBodyValidators
+   */
+  public void setResponseBodyValidator(final ResponseBodyValidator validator) {
+    m_responseBodyValidator = validator;
+  }
+
   /**
    * Makes an HTTP {@code DELETE} request.
    *
@@ -510,6 +576,75 @@ public class HTTPRequest {
       .getHTTPResponse();
   }
 
+  /**
+   * Makes an asynchronous HTTP {@code GET} request. See
+   * {@link #GETAsync(String, NVPair[], NVPair[])}.
+   *
+   * @param uri The URI. If a default URL has been specified with
+   * {@link #setUrl}, this value need not be absolute and, if
+   * relative, it will be resolved relative to the default URL.
+   * Otherwise this value must be an absolute URL.
+   * @return The future response.
+   * @throws Exception If the request could not be queued.
+   */
+  public final HTTPResponseFuture GETAsync(final String uri) throws Exception {
+    return GETAsync(uri, getFormData(), getHeaders());
+  }
+
+  /**
+   * Makes an asynchronous HTTP {@code GET} request.
+   *
+   * <p>The request is made by another thread, using a separate set of
+   * connections that share the calling worker thread's cookies, so a worker
+   * thread can make several requests in parallel, as a browser does when it
+   * fetches the resources of a page. The statistics for the request are
+   * recorded against the test in progress when it was made, as soon as the
+   * response has been read. If that test has finished by then, the statistics
+   * are not recorded and a warning is logged, so a script should collect the
+   * responses before the test returns. The response is logged and passed to
+   * the script when the worker thread collects it with
+   * {@link HTTPResponseFuture#get()} or
+   * {@link HTTPPluginControl#awaitAsyncRequests()}.</p>
+   *
+   * <p>Asynchronous requests do not use connection settings made with
+   * {@link HTTPPluginControl#getThreadConnection}. The number of parallel
+   * requests is limited by {@link HTTPPluginControl#setAsyncConnections},
+   * and by the size of the process-wide thread pool set with
+   * {@link HTTPPluginControl#setAsyncThreads}.
+   * </p>
+   *
+   * @param uri
+   *          The URI. If a default URL has been specified with {@link #setUrl},
+   *          this value need not be absolute and, if relative, it will be
+   *          resolved relative to the default URL. Otherwise this value must be
+   *          an absolute URL.
+   * @param queryData
+   *          Request headers. Replaces all the values set by
+   *          {@link #setFormData}.
+   * @param headers
+   *          Request headers. Overrides headers with matching names set by
+   *          {@link #setHeaders}.
+   * @return The future response.
+   * @throws Exception
+   *              If the request could not be queued.
+   */
+  public final HTTPResponseFuture GETAsync(final String uri,
+                                           final NVPair[] queryData,
+                                           final NVPair[] headers)
+    throws Exception {
+
+    return new AbstractRequest(uri, headers) {
+        @Override
+        HTTPResponse doRequest(final HTTPConnection connection,
+                               final String path,
+                               final NVPair[] mergedHeaders)
+          throws IOException, ModuleException {
+          return connection.Get(path, queryData, mergedHeaders);
+        }
+      }
+      .submit();
+  }
+
   /**
    * Makes an HTTP {@code HEAD} request.
    *
@@ -938,6 +1073,40 @@ public class HTTPRequest {
       .getHTTPResponse();
   }
 
+  /**
+   * Makes an asynchronous HTTP {@code POST} request. See
+   * {@link #GETAsync(String, NVPair[], NVPair[])} for how asynchronous
+   * requests are made.
+   *
+   * @param uri The URI. If a default URL has been specified with
+   * {@link #setUrl}, this value need not be absolute and, if
+   * relative, it will be resolved relative to the default URL.
+   * Otherwise this value must be an absolute URL.
+   * @param data Data to be submitted in the body of the request.
+   * Overrides the value set with {@link #setData}.
+   * @param headers
+   *          Request headers. Overrides headers with matching names set by
+   *          {@link #setHeaders}.
+   * @return The future response.
+   * @throws Exception If the request could not be queued.
+   */
+  public final HTTPResponseFuture POSTAsync(final String uri,
+                                            final byte[] data,
+                                            final NVPair[] headers)
+    throws Exception {
+
+    return new AbstractRequest(uri, headers) {
+        @Override
+        HTTPResponse doRequest(final HTTPConnection connection,
+                               final String path,
+                               final NVPair[] mergedHeaders)
+          throws IOException, ModuleException {
+          return connection.Post(path, data, mergedHeaders);
+        }
+      }
+      .submit();
+  }
+
   /**
    * Makes an HTTP {@code POST} request. This version allows the data
    * to be passed as a stream, see the note in the
@@ -1406,6 +1575,95 @@ public class HTTPRequest {
       final HTTPPluginThreadState threadState = plugin.getThreadState();
       final ScriptContext scriptContext = plugin.getScriptContext();
 
+      final Exchange exchange = perform(threadState);
+
+      // We use the statistics on this thread and don't keep them, so we
+      // avoid the script interface which would stop the engine from
+      // reusing them.
+      final StatisticsForTest statisticsForCurrentTest =
+        plugin.getStatisticsForCurrentTest();
+
+      // Stop the clock whilst we do potentially expensive result processing.
+      if (statisticsForCurrentTest != null) {
+        statisticsForCurrentTest.pauseClock();
+      }
+
+      try {
+        recordStatistics(statisticsForCurrentTest, exchange);
+      }
+      catch (final InvalidContextException e) {
+        throw new PluginException("Failed to set statistic", e);
+      }
+
+      final HTTPResponse result =
+        complete(scriptContext, threadState, exchange);
+
+      if (statisticsForCurrentTest != null) {
+        statisticsForCurrentTest.resumeClock();
+      }
+
+      return result;
+    }
+
+    /**
+     * Queue the request to be made by another thread. The statistics are
+     * recorded by that thread, against the test in progress now.
+     */
+    public final HTTPResponseFuture submit() throws GrinderException {
+
+      final HTTPPlugin plugin = HTTPPlugin.getPlugin();
+      plugin.ensureInitialised();
+      final HTTPPluginThreadState threadState = plugin.getThreadState();
+      final ScriptContext scriptContext = plugin.getScriptContext();
+
+      // A StatisticsForTest obtained through the script interface is never
+      // reused for a later test, so it is safe to update it from another
+      // thread.
+      final StatisticsForTest statisticsForTest =
+        getStatisticsForCurrentTest(scriptContext);
+
+      return threadState.getAsyncRequestExecutor().execute(
+        new AsyncRequestExecutor.Request() {
+          @Override
+          public HTTPResponseFuture.Completion execute(
+            final HTTPPluginThreadState lane) throws Exception {
+
+            final Exchange exchange = perform(lane);
+
+            try {
+              recordStatistics(statisticsForTest, exchange);
+            }
+            catch (final InvalidContextException e) {
+              // The test finished before the response arrived. Some of the
+              // statistics might have been added before it did.
+              scriptContext.getLogger().warn(
+                "{} completed after its test finished, so its statistics " +
+                "were not recorded, or were only partly recorded",
+                exchange.m_response.getOriginalURI());
+            }
+
+            return new HTTPResponseFuture.Completion() {
+              @Override
+              public HTTPResponse complete() throws Exception {
+                return AbstractRequest.this.complete(scriptContext,
+                                                     threadState,
+                                                     exchange);
+              }
+            };
+          }
+        },
+        threadState.getSSLContext());
+    }
+
+    /**
+     * Make the request and read the response, using the connections of
+     * {@code threadState}. This is the part of the work that can be done by
+     * another thread.
+     */
+    private Exchange perform(final HTTPPluginThreadState threadState)
+      throws GrinderException, IOException, ModuleException, ParseException,
+             ProtocolNotSuppException {
+
       final String pathAndQuery = m_url.getPathAndQuery();
       final String fragment = m_url.getFragment();
 
@@ -1422,10 +1680,10 @@ public class HTTPRequest {
 
       final long oldConnections = connection.getConnectionsEstablished();
 
-      final HTTPResponse httpResponse;
+      final Exchange exchange = new Exchange();
 
       try {
-        httpResponse = doRequest(connection, path, m_mergedHeaders);
+        exchange.m_response = doRequest(connection, path, m_mergedHeaders);
       }
       catch (final InterruptedIOException e) {
         // We never interrupt worker threads, so we can be sure this is due to
@@ -1433,40 +1691,127 @@ public class HTTPRequest {
         throw new TimeoutException(e);
       }
 
-      final int responseLength;
+      final HTTPResponse httpResponse = exchange.m_response;
+      final ResponseBodyValidator validator = m_responseBodyValidator;
 
       if (m_readResponseBody) {
-        // Read the entire response.
-        // With standard HTTPClient, data is null <=> if Content-Length is 0.
-        // We've modified HTTPClient to avoid this.
-        responseLength = httpResponse.getData().length;
+        exchange.m_validation =
+          validator != null ? validator.begin(httpResponse) : null;
+
+        if (m_streamResponseBody) {
+          exchange.m_responseLength =
+            consumeBody(httpResponse,
+                        threadState.getResponseBuffer(),
+                        exchange.m_validation);
+        }
+        else {
+          // Read the entire response.
+          // With standard HTTPClient, data is null <=> if Content-Length is
+          // 0. We've modified HTTPClient to avoid this.
+          final byte[] data = httpResponse.getData();
+          exchange.m_responseLength = data.length;
+
+          if (exchange.m_validation != null) {
+            exchange.m_validation.update(data, 0, data.length);
+          }
+        }
       }
       else {
         httpResponse.getStatusCode();
-        responseLength = 0;
       }
 
+      exchange.m_dnsTime = connection.getDnsTime();
+      exchange.m_connectTime = connection.getConnectTime();
+      exchange.m_timeToFirstByte =
+        httpResponse.getTimeToFirstByte() - startTime;
+      exchange.m_newConnection =
+          oldConnections != connection.getConnectionsEstablished();
+
+      return exchange;
+    }
+
+    private StatisticsForTest getStatisticsForCurrentTest(
+      final ScriptContext scriptContext) throws InvalidContextException {
+
       final Statistics statistics = scriptContext.getStatistics();
-      final StatisticsForTest statisticsForCurrentTest =
-          statistics.isTestInProgress() ? statistics.getForCurrentTest() : null;
 
-      // Stop the clock whilst we do potentially expensive result processing.
-      if (statisticsForCurrentTest != null) {
-        statisticsForCurrentTest.pauseClock();
+      return
+        statistics.isTestInProgress() ? statistics.getForCurrentTest() : null;
+    }
+
+    /**
+     * Check the response body, and add the statistics for the request to
+     * {@code statisticsForTest}. May be called by any thread.
+     */
+    private void recordStatistics(final StatisticsForTest statisticsForTest,
+                                  final Exchange exchange)
+      throws GrinderException, IOException, ModuleException {
+
+      final ResponseBodyValidator.Validation validation =
+        exchange.m_validation;
+
+      exchange.m_validationFailure =
+        validation != null ? validation.end() : null;
+
+      if (statisticsForTest == null) {
+        return;
       }
 
-      final long dnsTime = connection.getDnsTime();
-      final long connectTime = connection.getConnectTime();
-      final long timeToFirstByte =
-        httpResponse.getTimeToFirstByte() - startTime;
-      final boolean newConnection =
-          oldConnections != connection.getConnectionsEstablished();
+      final int statusCode = exchange.m_response.getStatusCode();
 
+      statisticsForTest.addLong(
+        StatisticsIndexMap.HTTP_PLUGIN_RESPONSE_LENGTH_KEY,
+        exchange.m_responseLength);
+
+      // If many HTTPRequests are wrapped in the same Test, the
+      // last one wins.
+      statisticsForTest.setLong(
+        StatisticsIndexMap.HTTP_PLUGIN_RESPONSE_STATUS_KEY, statusCode);
+
+      // These statistics are accumulated over all the
+      // HTTPRequests wrapped in the Test.
+      statisticsForTest.addLong(
+        StatisticsIndexMap.HTTP_PLUGIN_FIRST_BYTE_TIME_KEY,
+        exchange.m_timeToFirstByte);
+
+      if (statusCode >= HttpURLConnection.HTTP_BAD_REQUEST) {
+        statisticsForTest.addLong(
+          StatisticsIndexMap.HTTP_PLUGIN_RESPONSE_ERRORS_KEY, 1);
+      }
+
+      if (exchange.m_validationFailure != null) {
+        statisticsForTest.setSuccess(false);
+      }
+
+      if (exchange.m_newConnection) {
+        statisticsForTest.addLong(
+          StatisticsIndexMap.HTTP_PLUGIN_DNS_TIME_KEY, exchange.m_dnsTime);
+
+        statisticsForTest.addLong(
+          StatisticsIndexMap.HTTP_PLUGIN_CONNECT_TIME_KEY,
+          exchange.m_connectTime);
+
+        statisticsForTest.addLong(
+          StatisticsIndexMap.HTTP_PLUGIN_CONNECTIONS_ESTABLISHED, 1);
+      }
+    }
+
+    /**
+     * Log the response, and pass it to the script. Must be called by the
+     * worker thread.
+     */
+    private HTTPResponse complete(final ScriptContext scriptContext,
+                                  final HTTPPluginThreadState threadState,
+                                  final Exchange exchange)
+      throws GrinderException, IOException, ModuleException {
+
+      final HTTPResponse httpResponse = exchange.m_response;
       final int statusCode = httpResponse.getStatusCode();
 
       final String message =
         httpResponse.getOriginalURI() + " -> " + statusCode + " " +
-        httpResponse.getReasonLine() + ", " + responseLength + " bytes";
+        httpResponse.getReasonLine() + ", " + exchange.m_responseLength +
+        " bytes";
 
       final Logger logger = scriptContext.getLogger();
 
@@ -1486,52 +1831,14 @@ public class HTTPRequest {
         break;
       }
 
-      try {
-        if (statisticsForCurrentTest != null) {
-          // Log the custom statistics if we have a statistics context.
-
-          statisticsForCurrentTest.addLong(
-            StatisticsIndexMap.HTTP_PLUGIN_RESPONSE_LENGTH_KEY, responseLength);
-
-          // If many HTTPRequests are wrapped in the same Test, the
-          // last one wins.
-          statisticsForCurrentTest.setLong(
-            StatisticsIndexMap.HTTP_PLUGIN_RESPONSE_STATUS_KEY, statusCode);
-
-          // These statistics are accumulated over all the
-          // HTTPRequests wrapped in the Test.
-          statisticsForCurrentTest.addLong(
-            StatisticsIndexMap.HTTP_PLUGIN_FIRST_BYTE_TIME_KEY,
-            timeToFirstByte);
-
-          if (statusCode >= HttpURLConnection.HTTP_BAD_REQUEST) {
-            statisticsForCurrentTest.addLong(
-              StatisticsIndexMap.HTTP_PLUGIN_RESPONSE_ERRORS_KEY, 1);
-          }
-
-          if (newConnection) {
-            statisticsForCurrentTest.addLong(
-              StatisticsIndexMap.HTTP_PLUGIN_DNS_TIME_KEY, dnsTime);
-
-            statisticsForCurrentTest.addLong(
-              StatisticsIndexMap.HTTP_PLUGIN_CONNECT_TIME_KEY, connectTime);
-
-            statisticsForCurrentTest.addLong(
-              StatisticsIndexMap.HTTP_PLUGIN_CONNECTIONS_ESTABLISHED, 1);
-          }
-        }
-      }
-      catch (final InvalidContextException e) {
-        throw new PluginException("Failed to set statistic", e);
+      if (exchange.m_validationFailure != null) {
+        logger.error(httpResponse.getOriginalURI() +
+                     " failed validation: " + exchange.m_validationFailure);
       }
 
       processResponse(httpResponse);
       threadState.setLastResponse(httpResponse);
 
-      if (statisticsForCurrentTest != null) {
-        statisticsForCurrentTest.resumeClock();
-      }
-
       return httpResponse;
     }
 
@@ -1539,6 +1846,52 @@ public class HTTPRequest {
                                     final String path,
                                     final NVPair[] headers)
       throws IOException, ModuleException;
+
+    private long consumeBody(
+      final HTTPResponse httpResponse,
+      final byte[] buffer,
+      final ResponseBodyValidator.Validation validation)
+      throws IOException, ModuleException {
+
+      final InputStream in = httpResponse.getInputStream();
+
+      if (in == null) {
+        return 0;
+      }
+
+      long result = 0;
+
+      try {
+        int n;
+
+        while ((n = in.read(buffer)) != -1) {
+          result += n;
+
+          if (validation != null) {
+            validation.update(buffer, 0, n);
+          }
+        }
+      }
+      finally {
+        Closer.close(in);
+      }
+
+      return result;
+    }
+  }
+
+  /**
+   * The result of making a request, before it has been recorded.
+   */
+  private static final class Exchange {
+    private HTTPResponse m_response;
+    private long m_responseLength;
+    private ResponseBodyValidator.Validation m_validation;
+    private String m_validationFailure;
+    private long m_dnsTime;
+    private long m_connectTime;
+    private long m_timeToFirstByte;
+    private boolean m_newConnection;
   }
 
   private abstract class AbstractStreamingRequest extends AbstractRequest {
@@ -0,0 +1,184 @@
+// Copyright (C) 2013 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.grinder.plugin.http;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import HTTPClient.HTTPResponse;
+
+
+/**
+ * The result of an asynchronous request made with one of the
+ * {@code HTTPRequest} methods such as {@link HTTPRequest#GETAsync(String)}.
+ *
+ * <p>
+ * The request is made by another thread. When the response has been read,
+ * that thread adds the statistics for the request to the test that was in
+ * progress when the request was issued. If the test has finished by then, the
+ * statistics for the request are not recorded, or are only partly recorded,
+ * and a warning is logged. A script should collect the responses before the
+ * test returns.
+ * </p>
+ *
+ * <p>
+ * The response is logged and passed to the script when the worker thread that
+ * issued the request first calls {@link #get()}. Only that thread should call
+ * {@code get()}.
+ * </p>
+ *
+ * @author Philip Aston
+ * @see HTTPPluginControl#awaitAsyncRequests()
+ */
+public final class HTTPResponseFuture implements Future<HTTPResponse> {
+
+  private final Future<Completion> m_future;
+
+  // Guarded by this.
+  private boolean m_completed;
+  private HTTPResponse m_response;
+  private ExecutionException m_failure;
+
+  /**
+   * Constructor.
+   *
+   * @param future
+   *          Provides the work to be done by the issuing thread once the
+   *          request has been made.
+   */
+  HTTPResponseFuture(final Future<Completion> future) {
+    m_future = future;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override public boolean cancel(final boolean mayInterruptIfRunning) {
+    return m_future.cancel(mayInterruptIfRunning);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override public boolean isCancelled() {
+    return m_future.isCancelled();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override public boolean isDone() {
+    return m_future.isDone();
+  }
+
+  /**
+   * Wait for the response.
+   *
+   * @return The response.
+   * @throws InterruptedException
+   *           If the calling thread was interrupted.
+   * @throws ExecutionException
+   *           If the request failed. The cause is the exception that the
+   *           equivalent synchronous method would have thrown.
+   */
+  @Override public HTTPResponse get()
+    throws InterruptedException, ExecutionException {
+    return complete(m_future.get());
+  }
+
+  /**
+   * Wait for the response for at most the given time.
+   *
+   * @param timeout
+   *          The maximum time to wait.
+   * @param unit
+   *          The unit of {@code timeout}.
+   * @return The response.
+   * @throws InterruptedException
+   *           If the calling thread was interrupted.
+   * @throws ExecutionException
+   *           If the request failed. The cause is the exception that the
+   *           equivalent synchronous method would have thrown.
+   * @throws TimeoutException
+   *           If the response was not received in time.
+   */
+  @Override public HTTPResponse get(final long timeout, final TimeUnit unit)
+    throws InterruptedException, ExecutionException, TimeoutException {
+    return complete(m_future.get(timeout, unit));
+  }
+
+  /**
+   * Wait for the request to finish, without completing it.
+   *
+   * @throws InterruptedException
+   *           If the calling thread was interrupted.
+   */
+  void await() throws InterruptedException {
+    try {
+      m_future.get();
+    }
+    catch (final ExecutionException e) {
+      // Ignore, the caller isn't interested in the result.
+    }
+    catch (final CancellationException e) {
+      // Ignore, the caller isn't interested in the result.
+    }
+  }
+
+  private synchronized HTTPResponse complete(final Completion completion)
+    throws ExecutionException {
+
+    if (!m_completed) {
+      m_completed = true;
+
+      try {
+        m_response = completion.complete();
+      }
+      catch (final Exception e) {
+        m_failure = new ExecutionException(e);
+      }
+    }
+
+    if (m_failure != null) {
+      throw m_failure;
+    }
+
+    return m_response;
+  }
+
+  /**
+   * Work to be done by the issuing thread once a request has been made.
+   */
+  interface Completion {
+
+    /**
+     * Log the response and pass it to the script.
+     *
+     * @return The response.
+     * @throws Exception If the response could not be processed.
+     */
+    HTTPResponse complete() throws Exception;
+  }
+}
@@ -23,23 +23,16 @@ package net.grinder.plugin.http;
 
 import static java.util.Collections.emptyList;
 
-import java.util.ArrayList;
-import java.util.HashMap;
+import java.nio.charset.Charset;
 import java.util.List;
-import java.util.Map;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 import net.grinder.common.GrinderException;
-import net.grinder.plugin.http.tcpproxyfilter.RegularExpressions;
-import net.grinder.plugin.http.tcpproxyfilter.RegularExpressionsImplementation;
-import net.grinder.util.AttributeStringParser;
-import net.grinder.util.AttributeStringParserImplementation;
 import net.grinder.util.http.URIParser;
 import net.grinder.util.http.URIParserImplementation;
 import HTTPClient.Codecs;
 import HTTPClient.HTTPResponse;
 import HTTPClient.NVPair;
+import HTTPClient.Util;
 
 
 /**
@@ -49,15 +42,13 @@ import HTTPClient.NVPair;
  */
 class HTTPUtilitiesImplementation implements HTTPUtilities {
 
+  private static final Charset s_iso88591 = Charset.forName("ISO-8859-1");
+  private static final Charset s_utf8 = Charset.forName("UTF-8");
+
   private final URIParser m_uriParser = new URIParserImplementation();
-  private final RegularExpressions m_regularExpressions =
-    new RegularExpressionsImplementation();
-  private final AttributeStringParser m_attributeStringParser =
-    new AttributeStringParserImplementation();
 
   private final ThreadLocal<ParsedBody> m_parsedBodyThreadLocal =
     new ThreadLocal<ParsedBody>();
-  private final NameValue[] m_emptyNameValues = new NameValue[0];
 
   private final HTTPPlugin m_httpPlugin;
 
@@ -267,28 +258,29 @@ class HTTPUtilitiesImplementation implements HTTPUtilities {
   private final class ParsedBody {
 
     private final HTTPResponse m_response;
-    private final String m_body;
-    private final MatchList m_bodyInputMatchList;
-    private final MatchList m_hiddenInputMatchList;
-    private final MatchList m_bodyURIMatchList;
+    private final BodyTokenizer m_tokenizer;
 
     public ParsedBody(final HTTPResponse response) {
       m_response = response;
 
       try {
         // This shouldn't fail as we have already read the complete response.
-        m_body = response.getText();
+        final Charset charset = getCharset(response);
+
+        if (BodyTokenizer.isASCIICompatible(charset)) {
+          m_tokenizer =
+            new BodyTokenizer(response.getData(), charset, m_uriParser);
+        }
+        else {
+          m_tokenizer =
+            new BodyTokenizer(response.getText().getBytes(s_utf8),
+                              s_utf8,
+                              m_uriParser);
+        }
       }
       catch (final Exception e) {
         throw new AssertionError(e);
       }
-
-      m_bodyInputMatchList =
-        new InputMatchList(m_regularExpressions.getInputPattern(), m_body);
-      m_hiddenInputMatchList =
-        new InputMatchList(m_regularExpressions.getHiddenInputPattern(),
-                           m_body);
-      m_bodyURIMatchList = new BodyURIMatchList(m_body);
     }
 
     public boolean isValidForResponse(final HTTPResponse response) {
@@ -297,274 +289,84 @@ class HTTPUtilitiesImplementation implements HTTPUtilities {
 
     public String valueFromBodyInput(final String tokenName,
                                      final String afterText) {
-      return m_bodyInputMatchList.getMatchValue(tokenName, afterText);
+      return value(BodyTokenizer.INPUT, tokenName, afterText);
     }
 
     public List<String> valuesFromBodyInput(final String tokenName,
                                             final String afterText) {
-      return m_bodyInputMatchList.getMatchValues(tokenName, afterText);
+      return values(BodyTokenizer.INPUT, tokenName, afterText);
     }
 
-
     public String valueFromHiddenInput(final String tokenName,
                                        final String afterText) {
-      return m_hiddenInputMatchList.getMatchValue(tokenName, afterText);
+      return value(BodyTokenizer.HIDDEN_INPUT, tokenName, afterText);
     }
 
     public List<String> valuesFromHiddenInput(final String tokenName,
                                               final String afterText) {
-      return m_hiddenInputMatchList.getMatchValues(tokenName, afterText);
+      return values(BodyTokenizer.HIDDEN_INPUT, tokenName, afterText);
     }
 
     public String valueFromBodyURI(final String tokenName,
                                    final String afterText) {
-      return m_bodyURIMatchList.getMatchValue(tokenName, afterText);
+      return value(BodyTokenizer.URI, tokenName, afterText);
     }
 
     public List<String> valuesFromBodyURI(final String tokenName,
                                           final String afterText) {
-      return m_bodyURIMatchList.getMatchValues(tokenName, afterText);
-    }
-  }
-
-  private static final class NameValue {
-    private final String m_name;
-    private final String m_value;
-
-    public NameValue(final String name, final String value) {
-      m_name = name;
-      m_value = value;
+      return values(BodyTokenizer.URI, tokenName, afterText);
     }
 
-    public String getName() {
-      return m_name;
-    }
-
-    public String getValue() {
-      return m_value;
-    }
-  }
-
-  private static final class Match {
-    private final int m_position;
-    private final String m_value;
-
-    public Match(final int position, final String value) {
-      m_position = position;
-      m_value = value;
-    }
-
-    public int getPosition() {
-      return m_position;
-    }
-
-    public String getValue() {
-      return m_value;
-    }
-  }
-
-  private static class CachedMatchList {
-    private final List<Match> m_matchesByPosition = new ArrayList<Match>();
-    private int m_lastPosition = -1;
-
-    public void addMatch(final Match match) {
-      m_matchesByPosition.add(match);
-      m_lastPosition = match.getPosition();
-    }
-
-    public Match getMatchFrom(final int startFrom) {
-      if (m_lastPosition >= startFrom) {
-        for (final Match match : m_matchesByPosition) {
-          if (match.getPosition() >= startFrom) {
-            return match;
-          }
-        }
-      }
-
-      return null;
-    }
-  }
-
-  private interface MatchList {
-
-    String getMatchValue(String tokenName, String afterText);
-
-    List<String> getMatchValues(String tokenName, String afterText);
-  }
-
-  private static class CachedValueMap {
-    private final Map<String, CachedMatchList> m_map =
-      new HashMap<String, CachedMatchList>();
-
-    public CachedMatchList get(final String tokenName) {
-      final CachedMatchList existing = m_map.get(tokenName);
-
-      if (existing != null) {
-        return existing;
-      }
-
-      final CachedMatchList newCachedValueList = new CachedMatchList();
-      m_map.put(tokenName, newCachedValueList);
-      return newCachedValueList;
-    }
-  }
-
-  private abstract static class AbstractMatchList implements MatchList {
-    private final String m_body;
-    private final Matcher m_matcher;
-    private final CachedValueMap m_cache = new CachedValueMap();
-
-    public AbstractMatchList(final Pattern pattern, final String body) {
-      m_body = body;
-      m_matcher = pattern.matcher(body);
-    }
-
-    @Override
-    public String getMatchValue(final String tokenName,
-                                final String afterText) {
+    private String value(final int kind,
+                         final String tokenName,
+                         final String afterText) {
       final int startFrom = getStartFrom(afterText);
 
       if (startFrom == -1) {
         return "";
       }
 
-      final CachedMatchList cachedValueList = m_cache.get(tokenName);
+      final List<String> values =
+        m_tokenizer.values(kind, tokenName, startFrom, true);
 
-      final Match match = getMatch(cachedValueList, tokenName, startFrom);
-      return match != null ? match.getValue() : "";
+      return values.isEmpty() ? "" : values.get(0);
     }
 
-    @Override
-    public List<String> getMatchValues(final String tokenName,
-                                       final String afterText) {
-
-      int startFrom = getStartFrom(afterText);
+    private List<String> values(final int kind,
+                                final String tokenName,
+                                final String afterText) {
+      final int startFrom = getStartFrom(afterText);
 
       if (startFrom == -1) {
         return emptyList();
       }
 
-      final CachedMatchList cachedValueList = m_cache.get(tokenName);
-
-      final List<String> result = new ArrayList<String>();
-
-      while (true) {
-        final Match match = getMatch(cachedValueList, tokenName, startFrom);
-
-        if (match == null) {
-          return result;
-        }
-
-        result.add(match.getValue());
-        startFrom = match.getPosition() + 1;
-      }
-    }
-
-    private Match getMatch(final CachedMatchList cachedValueList,
-                           final String tokenName,
-                           final int startFrom) {
-
-      final Match existingMatch = cachedValueList.getMatchFrom(startFrom);
-
-      if (existingMatch != null) {
-        return existingMatch;
-      }
-
-      Match result = null;
-
-      // Cache miss, parse more of the body.
-      while (result == null && m_matcher.find()) {
-        final NameValue[] nameValueArray = parseMatch();
-
-        final int matchPosition = m_matcher.start();
-
-        for (final NameValue element : nameValueArray) {
-          final String name = element.getName();
-
-          final Match match = new Match(matchPosition,
-                                        element.getValue());
-
-          if (name.equals(tokenName)) {
-            cachedValueList.addMatch(match);
-
-            if (result == null && matchPosition >= startFrom) {
-              result = match;
-            }
-          }
-          else {
-            m_cache.get(name).addMatch(match);
-          }
-        }
-      }
-
-      return result;
+      return m_tokenizer.values(kind, tokenName, startFrom, false);
     }
 
     private int getStartFrom(final String text) {
       // afterText parameter is infrequently used, so memoizing this
       // method would cost more than it saved.
 
-      return text == null ? 0 : m_body.indexOf(text);
+      return text == null ? 0 : m_tokenizer.indexOf(text);
     }
-
-    protected final Matcher getMatcher() {
-      return m_matcher;
-    }
-
-    protected abstract NameValue[] parseMatch();
   }
 
-  private final class InputMatchList extends AbstractMatchList {
-
-    public InputMatchList(final Pattern pattern, final String body) {
-      super(pattern, body);
-    }
-
-    @Override
-    protected NameValue[] parseMatch() {
-      final AttributeStringParser.AttributeMap map =
-        m_attributeStringParser.parse(getMatcher().group());
-
-      final String name = map.get("name");
-      final String value = map.get("value");
-
-      if (name != null && value != null) {
-        return new NameValue[] { new NameValue(name, value) };
-      }
+  /**
+   * The character set {@link HTTPResponse#getText()} would use.
+   */
+  private static Charset getCharset(final HTTPResponse response)
+    throws Exception {
 
-      return m_emptyNameValues;
-    }
-  }
+    final String contentType = response.getHeader("Content-Type");
 
-  private final class BodyURIMatchList extends AbstractMatchList {
+    final String name =
+      contentType != null ? Util.getParameter("charset", contentType) : null;
 
-    public BodyURIMatchList(final String body) {
-      super(m_regularExpressions.getHyperlinkURIPattern(), body);
+    if (name == null) {
+      return s_iso88591;
     }
 
-    @Override
-    protected NameValue[] parseMatch() {
-      final List<NameValue> result = new ArrayList<NameValue>();
-
-      final String uri = getMatcher().group(1);
-
-      m_uriParser.parse(uri, new URIParser.AbstractParseListener() {
-        @Override
-        public boolean pathParameterNameValue(final String name,
-                                              final String value) {
-          result.add(new NameValue(name, value));
-          return true;
-        }
-
-        @Override
-        public boolean queryStringNameValue(final String name,
-                                            final String value) {
-          result.add(new NameValue(name, value));
-          return true;
-        }
-      });
-
-      return result.toArray(new NameValue[result.size()]);
-    }
+    return Charset.forName(name);
   }
 }
@@ -0,0 +1,86 @@
+// Copyright (C) 2013 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.grinder.plugin.http;
+
+import HTTPClient.HTTPResponse;
+
+
+/**
+ * Checks the body of each response as it is read.
+ *
+ * <p>
+ * A validator is set with {@link HTTPRequest#setResponseBodyValidator}. The
+ * body is passed to the validator in pieces, so it can be checked without
+ * holding the whole body in memory when the request streams response bodies
+ * (see {@link HTTPRequest#setStreamResponseBody}). If the validation fails,
+ * the test is marked as unsuccessful and the reason is logged.
+ * </p>
+ *
+ * <p>
+ * An {@link HTTPRequest} may be used by several worker threads at once, so
+ * the validator should keep the state for each response in the
+ * {@link Validation} it creates. {@link ResponseBodyValidators} provides
+ * some standard validators.
+ * </p>
+ *
+ * @author Philip Aston
+ * @see ResponseBodyValidators
+ */
+public interface ResponseBodyValidator {
+
+  /**
+   * Start validating a response body.
+   *
+   * @param response
+   *          The response. Its headers are available, but its body should not
+   *          be read.
+   * @return Receives the body.
+   */
+  Validation begin(HTTPResponse response);
+
+  /**
+   * The validation of a single response body.
+   */
+  interface Validation {
+
+    /**
+     * Receive the next piece of the body. The buffer will be reused after
+     * this method returns.
+     *
+     * @param buffer
+     *          Buffer containing the data.
+     * @param offset
+     *          Offset of the data in {@code buffer}.
+     * @param length
+     *          Number of bytes of data.
+     */
+    void update(byte[] buffer, int offset, int length);
+
+    /**
+     * Called once the whole body has been received.
+     *
+     * @return {@code null} if the body is valid, otherwise a description of
+     *         the failure.
+     */
+    String end();
+  }
+}
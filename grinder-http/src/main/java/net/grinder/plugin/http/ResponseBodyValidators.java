@@ -0,0 +1,309 @@
+// Copyright (C) 2013 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.grinder.plugin.http;
+
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.regex.Pattern;
+
+import HTTPClient.HTTPResponse;
+
+
+/**
+ * Standard {@link ResponseBodyValidator}s.
+ *
+ * <p>None of these validators retain the response body.</p>
+ *
+ * @author Philip Aston
+ */
+public final class ResponseBodyValidators {
+
+  ///CLOVER:OFF
+  private ResponseBodyValidators() {
+  }
+  ///CLOVER:ON
+
+  /**
+   * A validator that checks the digest of the body.
+   *
+   * @param algorithm
+   *          The digest algorithm, e.g. {@code "MD5"} or {@code "SHA-256"}.
+   * @param expected
+   *          The expected digest, as a hexadecimal string.
+   * @return The validator.
+   * @throws NoSuchAlgorithmException
+   *           If {@code algorithm} is not supported.
+   */
+  public static ResponseBodyValidator digest(final String algorithm,
+                                             final String expected)
+    throws NoSuchAlgorithmException {
+
+    // Fail early for a bad algorithm.
+    MessageDigest.getInstance(algorithm);
+
+    return new ResponseBodyValidator() {
+      @Override public Validation begin(final HTTPResponse response) {
+        final MessageDigest digest;
+
+        try {
+          digest = MessageDigest.getInstance(algorithm);
+        }
+        catch (final NoSuchAlgorithmException e) {
+          throw new AssertionError(e);
+        }
+
+        return new Validation() {
+          @Override public void update(final byte[] buffer,
+                                       final int offset,
+                                       final int length) {
+            digest.update(buffer, offset, length);
+          }
+
+          @Override public String end() {
+            final String actual = toHex(digest.digest());
+
+            if (actual.equalsIgnoreCase(expected)) {
+              return null;
+            }
+
+            return algorithm + " digest was " + actual + ", expected " +
+                   expected;
+          }
+        };
+      }
+    };
+  }
+
+  /**
+   * A validator that checks the body contains some text.
+   *
+   * @param text
+   *          The text.
+   * @param charset
+   *          The character set used to encode {@code text}, which should
+   *          match that of the response.
+   * @return The validator.
+   * @throws UnsupportedEncodingException
+   *           If {@code charset} is not supported.
+   */
+  public static ResponseBodyValidator contains(final String text,
+                                               final String charset)
+    throws UnsupportedEncodingException {
+
+    final byte[] pattern = text.getBytes(charset);
+    final int[] failure = failureFunction(pattern);
+
+    return new ResponseBodyValidator() {
+      @Override public Validation begin(final HTTPResponse response) {
+        return new Validation() {
+          // Number of bytes of the pattern matched so far.
+          private int m_matched = 0;
+
+          @Override public void update(final byte[] buffer,
+                                       final int offset,
+                                       final int length) {
+
+            for (int i = offset;
+                 i < offset + length && m_matched < pattern.length;
+                 ++i) {
+              while (m_matched > 0 && buffer[i] != pattern[m_matched]) {
+                m_matched = failure[m_matched - 1];
+              }
+
+              if (buffer[i] == pattern[m_matched]) {
+                ++m_matched;
+              }
+            }
+          }
+
+          @Override public String end() {
+            return m_matched == pattern.length ?
+                null : "body does not contain '" + text + "'";
+          }
+        };
+      }
+    };
+  }
+
+  /**
+   * A validator that checks some part of the body matches a regular
+   * expression.
+   *
+   * <p>
+   * The body is decoded as ISO-8859-1, and searched a piece at a time. To
+   * find matches that span pieces, each search includes the last
+   * {@code maximumMatchLength} characters of the previous piece. Matches
+   * longer than this may not be found.
+   * </p>
+   *
+   * @param pattern
+   *          The regular expression.
+   * @param maximumMatchLength
+   *          The length of the longest match that must be found.
+   * @return The validator.
+   */
+  public static ResponseBodyValidator matches(final Pattern pattern,
+                                              final int maximumMatchLength) {
+
+    return new ResponseBodyValidator() {
+      @Override public Validation begin(final HTTPResponse response) {
+        return new Validation() {
+          private final StringBuilder m_window = new StringBuilder();
+          private boolean m_found;
+
+          @Override public void update(final byte[] buffer,
+                                       final int offset,
+                                       final int length) {
+            if (m_found) {
+              return;
+            }
+
+            for (int i = offset; i < offset + length; ++i) {
+              m_window.append((char) (buffer[i] & 0xFF));
+            }
+
+            m_found = pattern.matcher(m_window).find();
+
+            if (m_window.length() > maximumMatchLength) {
+              m_window.delete(0, m_window.length() - maximumMatchLength);
+            }
+          }
+
+          @Override public String end() {
+            return m_found ?
+                null : "body does not match '" + pattern.pattern() + "'";
+          }
+        };
+      }
+    };
+  }
+
+  /**
+   * A validator that checks the size of the body.
+   *
+   * @param minimum
+   *          The minimum number of bytes.
+   * @param maximum
+   *          The maximum number of bytes.
+   * @return The validator.
+   */
+  public static ResponseBodyValidator size(final long minimum,
+                                           final long maximum) {
+
+    return new ResponseBodyValidator() {
+      @Override public Validation begin(final HTTPResponse response) {
+        return new Validation() {
+          private long m_size = 0;
+
+          @Override public void update(final byte[] buffer,
+                                       final int offset,
+                                       final int length) {
+            m_size += length;
+          }
+
+          @Override public String end() {
+            if (m_size >= minimum && m_size <= maximum) {
+              return null;
+            }
+
+            return "body size was " + m_size + " bytes, expected " +
+                   minimum + " - " + maximum;
+          }
+        };
+      }
+    };
+  }
+
+  /**
+   * A validator that applies several validators.
+   *
+   * @param validators
+   *          The validators.
+   * @return The validator. Fails with the failure of the first validator
+   *         that fails.
+   */
+  public static ResponseBodyValidator all(
+    final ResponseBodyValidator... validators) {
+
+    return new ResponseBodyValidator() {
+      @Override public Validation begin(final HTTPResponse response) {
+        final Validation[] validations = new Validation[validators.length];
+
+        for (int i = 0; i < validators.length; ++i) {
+          validations[i] = validators[i].begin(response);
+        }
+
+        return new Validation() {
+          @Override public void update(final byte[] buffer,
+                                       final int offset,
+                                       final int length) {
+            for (final Validation validation : validations) {
+              validation.update(buffer, offset, length);
+            }
+          }
+
+          @Override public String end() {
+            for (final Validation validation : validations) {
+              final String result = validation.end();
+
+              if (result != null) {
+                return result;
+              }
+            }
+
+            return null;
+          }
+        };
+      }
+    };
+  }
+
+  private static int[] failureFunction(final byte[] pattern) {
+    final int[] result = new int[pattern.length];
+
+    for (int i = 1, k = 0; i < pattern.length; ++i) {
+      while (k > 0 && pattern[i] != pattern[k]) {
+        k = result[k - 1];
+      }
+
+      if (pattern[i] == pattern[k]) {
+        ++k;
+      }
+
+      result[i] = k;
+    }
+
+    return result;
+  }
+
+  private static String toHex(final byte[] bytes) {
+    final StringBuilder result = new StringBuilder(bytes.length * 2);
+
+    for (final byte b : bytes) {
+      result.append(Character.forDigit((b >> 4) & 0xF, 16));
+      result.append(Character.forDigit(b & 0xF, 16));
+    }
+
+    return result.toString();
+  }
+}
@@ -464,6 +464,8 @@ final class ConnectionHandlerImplementation implements ConnectionHandler {
       }
 
       m_logger.debug("Request finished {}", m_requestXML);
+
+      m_httpRecording.requestFinished(m_requestXML);
     }
 
     private class RequestBody extends AbstractBody {
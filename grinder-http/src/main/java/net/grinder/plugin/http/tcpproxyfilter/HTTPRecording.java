@@ -61,6 +61,15 @@ public interface HTTPRecording {
   RequestType addRequest(
     ConnectionDetails connectionDetails, String method, String relativeURI);
 
+  /**
+   * Called when a request returned by {@link #addRequest} is complete. The
+   * caller must not change the request after calling this method.
+   *
+   * @param request
+   *          The request.
+   */
+  void requestFinished(RequestType request);
+
   /**
    * Called when a response message starts. Because the test script represents a
    * single thread of control we need to calculate the sleep deltas using the
@@ -1,4 +1,4 @@
-// Copyright (C) 2005 - 2012 Philip Aston
+// Copyright (C) 2005 - 2013 Philip Aston
 // All rights reserved.
 //
 // This file is part of The Grinder software distribution. Refer to
@@ -21,23 +21,30 @@
 
 package net.grinder.plugin.http.tcpproxyfilter;
 
-import static java.util.Collections.emptySet;
-
+import java.io.BufferedWriter;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.net.HttpURLConnection;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Calendar;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import javax.xml.namespace.QName;
+import javax.xml.transform.stream.StreamSource;
+
 import net.grinder.common.GrinderBuild;
 import net.grinder.plugin.http.xml.BaseURIType;
 import net.grinder.plugin.http.xml.CommonHeadersType;
@@ -58,6 +65,7 @@ import net.grinder.util.Pair;
 import net.grinder.util.http.URIParser;
 
 import org.apache.xmlbeans.XmlObject;
+import org.apache.xmlbeans.XmlOptions;
 import org.picocontainer.Disposable;
 import org.slf4j.Logger;
 
@@ -68,10 +76,26 @@ import HTTPClient.URI;
 /**
  * Contains common state for HTTP recording.
  *
+ * <p>
+ * Each request is written to a temporary file as soon as it has finished,
+ * whatever the state of the requests made before it, so the memory required
+ * does not grow with the length of the recording. The original order is
+ * restored when the file is read back.
+ * </p>
+ *
  * @author Philip Aston
  */
 public class HTTPRecordingImplementation implements HTTPRecording, Disposable {
 
+  private static final String NAMESPACE =
+    HttpRecordingDocument.type.getDocumentElementName().getNamespaceURI();
+
+  private static final XmlOptions SAVE_OPTIONS =
+    new XmlOptions().setSaveImplicitNamespaces(
+      Collections.singletonMap("", NAMESPACE));
+
+  private static final String DEFAULT_HEADERS_ID = "defaultHeaders";
+
   private final HTTPRecordingParameters m_parameters;
   private final HttpRecordingDocument m_recordingDocument =
     HttpRecordingDocument.Factory.newInstance();
@@ -82,7 +106,9 @@ public class HTTPRecordingImplementation implements HTTPRecording, Disposable {
 
   private final IntGenerator m_bodyFileIDGenerator = new IntGenerator();
   private final BaseURLMap m_baseURLMap = new BaseURLMap();
+  private final RequestSpool m_requestSpool = new RequestSpool();
   private final RequestList m_requestList = new RequestList();
+  private final HeadersAnalysis m_headersAnalysis = new HeadersAnalysis();
   private final TokenMap m_tokenMap = new TokenMap();
 
   private long m_lastResponseTime = 0;
@@ -292,253 +318,180 @@ public class HTTPRecordingImplementation implements HTTPRecording, Disposable {
     return new File("http-data-" + m_bodyFileIDGenerator.next() + ".dat");
   }
 
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void requestFinished(RequestType request) {
+    m_requestList.finished(request);
+  }
+
   /**
    * Called after the component has been stopped.
+   *
+   * <p>
+   * The spooled requests are read back one at a time, and written with the
+   * rest of the recording to a temporary file that is passed to the result
+   * processor.
+   * </p>
    */
   public void dispose() {
-    final HttpRecordingDocument result;
+    m_requestList.flush();
 
-    synchronized (m_recordingDocument) {
-      result = (HttpRecordingDocument)m_recordingDocument.copy();
-    }
-
-    final HTTPRecordingType httpRecording = result.getHttpRecording();
-    m_requestList.record(httpRecording);
-
-    final XmlObject[] requestXmlObjects = httpRecording.selectPath(
-        "declare namespace ns=" +
-        "'http://grinder.sourceforge.net/tcpproxy/http/1.0';" +
-        "$this//ns:request");
-
-    final List<RequestType> requests =
-        new ArrayList<RequestType>(requestXmlObjects.length);
-
-    for (XmlObject o : requestXmlObjects) {
-      requests.add((RequestType) o);
-    }
-
-    extractCommonHeaders(requests, httpRecording);
-
-    // Find default headers that are present in all common headers, or
-    // request headers that don't extend common headers.
-
-    final CommonHeadersType[] commonHeaders =
-        httpRecording.getCommonHeadersArray();
+    try {
+      m_requestSpool.close();
 
-    final List<HeadersType> defaultHeaderSources =
-        new ArrayList<HeadersType>(commonHeaders.length);
+      final HeadersRewriter headersRewriter = m_headersAnalysis.analyse();
 
-    for (HeadersType header : commonHeaders) {
-      defaultHeaderSources.add(header);
-    }
+      final File file = File.createTempFile("grinder-recording", ".xml");
 
-    for (RequestType request : requests) {
-      final HeadersType headers = request.getHeaders();
+      try {
+        writeRecording(file, headersRewriter);
 
-      if (!headers.isSetExtends()) {
-        defaultHeaderSources.add(headers);
+        m_resultProcessor.process(new StreamSource(file));
+      }
+      finally {
+        file.delete();
       }
     }
+    catch (IOException e) {
+      m_logger.error(e.getMessage(), e);
+    }
+  }
 
-    final Set<Pair<String, String>> defaultHeaders =
-        findSharedHeaders(defaultHeaderSources);
+  private void writeRecording(File file, final HeadersRewriter headersRewriter)
+    throws IOException {
 
-    if (defaultHeaders.size() > 0) {
-      final List<CommonHeadersType> newCommonHeaders =
-        new ArrayList<CommonHeadersType>(commonHeaders.length + 1);
+    final Writer out =
+      new BufferedWriter(
+        new OutputStreamWriter(new FileOutputStream(file), "UTF-8"));
 
-      final CommonHeadersType defaultHeadersXML =
-          CommonHeadersType.Factory.newInstance();
-      defaultHeadersXML.setHeadersId("defaultHeaders");
-      newCommonHeaders.add(defaultHeadersXML);
+    try {
+      out.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
+      out.write("<http-recording xmlns=\"" + NAMESPACE + "\">");
 
-      for (Pair<String, String> defaultHeader : defaultHeaders) {
-        final HeaderType header = defaultHeadersXML.addNewHeader();
-        header.setName(defaultHeader.getFirst());
-        header.setValue(defaultHeader.getSecond());
-      }
+      synchronized (m_recordingDocument) {
+        final HTTPRecordingType recording =
+          m_recordingDocument.getHttpRecording();
 
-      // There can be at most one CommonHeaders that is the same as the
-      // default headers. If we find it, we remove it.
-      String emptyCommonHeadersID = null;
+        writeElement(out, "metadata", recording.getMetadata());
 
-      for (CommonHeadersType headers : commonHeaders) {
-        removeDefaultHeaders(defaultHeaders,
-                             defaultHeadersXML.getHeadersId(),
-                             headers);
+        for (CommonHeadersType headers : headersRewriter.getCommonHeaders()) {
+          writeElement(out, "common-headers", headers);
+        }
 
-        if (headers.sizeOfHeaderArray() == 0) {
-          assert emptyCommonHeadersID == null;
-          emptyCommonHeadersID = headers.getHeadersId();
+        for (BaseURIType baseURI : recording.getBaseUriArray()) {
+          writeElement(out, "base-uri", baseURI);
         }
-        else {
-          newCommonHeaders.add(headers);
+
+        for (TokenType token : recording.getTokenArray()) {
+          writeElement(out, "token", token);
         }
       }
 
-      httpRecording.setCommonHeadersArray(
-        newCommonHeaders.toArray(
-          new CommonHeadersType[newCommonHeaders.size()]));
+      final boolean[] inPage = { false };
+      final Paginator paginator = new Paginator();
 
-      for (RequestType request : requests) {
-        final HeadersType headers = request.getHeaders();
+      m_requestSpool.read(new RequestSpool.Visitor() {
+        public void request(RequestType request) throws IOException {
 
-        if (!headers.isSetExtends()) {
-          removeDefaultHeaders(defaultHeaders,
-                               defaultHeadersXML.getHeadersId(),
-                               headers);
-        }
-        else {
-          // Fix up any references to the CommonHeaders that duplicated the
-          // defaultHeaders.
-          if (headers.getExtends().equals(emptyCommonHeadersID)) {
-            headers.setExtends(defaultHeadersXML.getHeadersId());
+          if (paginator.isNewPage(request)) {
+            if (inPage[0]) {
+              out.write("</page>");
+            }
+
+            out.write("<page>");
+            inPage[0] = true;
           }
+
+          headersRewriter.rewrite(request);
+
+          writeElement(out, "request", request);
         }
+      });
+
+      if (inPage[0]) {
+        out.write("</page>");
       }
-    }
 
-    try {
-      m_resultProcessor.process(result);
+      out.write("</http-recording>");
     }
-    catch (IOException e) {
-      m_logger.error(e.getMessage(), e);
+    finally {
+      out.close();
     }
   }
 
-  private void extractCommonHeaders(List<RequestType> requests,
-                                    HTTPRecordingType httpRecording) {
+  private static void writeElement(Writer out, String name, XmlObject value)
+    throws IOException {
 
-    // Build identity map of Request to (Common, Uncommon) and map containing
-    // the number of times each set of common headers is referenced.
-    final Map<RequestType, Pair<CommonHeadersType, HeadersType>>
-      parsedRequests =
-      new IdentityHashMap<RequestType, Pair<CommonHeadersType, HeadersType>>();
+    final XmlOptions options = new XmlOptions(SAVE_OPTIONS);
+    options.setSaveSyntheticDocumentElement(new QName(NAMESPACE, name));
 
-    final Map<String, Integer> commonHeadersCountByValue =
-        new HashMap<String, Integer>();
+    value.save(out, options);
+  }
 
-    final Map<String, CommonHeadersType> uniqueCommonHeaders =
-        new HashMap<String, CommonHeadersType>();
+  /**
+   * Split headers into those that are common, and the rest.
+   *
+   * @param headers The headers.
+   * @return The common headers, and the uncommon headers and authorizations.
+   */
+  private Pair<CommonHeadersType, HeadersType> splitHeaders(
+    HeadersType headers) {
 
-    for (RequestType request : requests) {
-      final CommonHeadersType commonHeaders =
-          CommonHeadersType.Factory.newInstance();
+    final CommonHeadersType commonHeaders =
+        CommonHeadersType.Factory.newInstance();
 
-      final HeadersType uncommonHeaders = HeadersType.Factory.newInstance();
+    final HeadersType uncommonHeaders = HeadersType.Factory.newInstance();
 
-      final XmlObject[] children = request.getHeaders().selectPath("./*");
+    final XmlObject[] children = headers.selectPath("./*");
 
-      for (int i = 0; i < children.length; ++i) {
-        if (children[i] instanceof HeaderType) {
-          final HeaderType header = (HeaderType)children[i];
+    for (int i = 0; i < children.length; ++i) {
+      if (children[i] instanceof HeaderType) {
+        final HeaderType header = (HeaderType)children[i];
 
-          if (m_parameters.isCommonHeader(header.getName())) {
-            commonHeaders.addNewHeader().set(header);
-          }
-          else {
-            uncommonHeaders.addNewHeader().set(header);
-          }
+        if (m_parameters.isCommonHeader(header.getName())) {
+          commonHeaders.addNewHeader().set(header);
         }
         else {
-          uncommonHeaders.addNewAuthorization().set(children[i]);
+          uncommonHeaders.addNewHeader().set(header);
         }
       }
-
-      // Key that ignores ID.
-      final String key =
-        Arrays.asList(commonHeaders.getHeaderArray()).toString();
-
-      final CommonHeadersType existing = uniqueCommonHeaders.get(key);
-
-      final CommonHeadersType theCommonHeaders;
-
-      if (existing != null) {
-        theCommonHeaders = existing;
-      }
       else {
-        uniqueCommonHeaders.put(key, commonHeaders);
-        theCommonHeaders = commonHeaders;
+        uncommonHeaders.addNewAuthorization().set(children[i]);
       }
-
-      parsedRequests.put(request, Pair.of(theCommonHeaders, uncommonHeaders));
-
-      final Integer count = commonHeadersCountByValue.get(key);
-      final int oldCount = count != null ? count.intValue() : 0;
-      commonHeadersCountByValue.put(key, oldCount + 1);
     }
 
-    // Now extract common headers if more than one request refers to them.
-    final IntGenerator idGenerator = new IntGenerator();
-
-    for (RequestType request : requests) {
-      final Pair<CommonHeadersType, HeadersType> pair =
-          parsedRequests.get(request);
-
-      final CommonHeadersType commonHeaders = pair.getFirst();
-      final HeadersType uncommonHeaders = pair.getSecond();
-
-      final String key =
-          Arrays.asList(commonHeaders.getHeaderArray()).toString();
-
-      if (commonHeaders.sizeOfHeaderArray() > 0 &&
-          commonHeadersCountByValue.get(key).intValue() > 1) {
-        if (commonHeaders.getHeadersId() == null) {
-          commonHeaders.setHeadersId("headers" + idGenerator.next());
-
-          httpRecording.addNewCommonHeaders().set(commonHeaders);
-        }
-
-        uncommonHeaders.setExtends(commonHeaders.getHeadersId());
-
-        request.setHeaders(uncommonHeaders);
-      }
-    }
+    return Pair.of(commonHeaders, uncommonHeaders);
   }
 
   /**
-   * Find the intersection of (matching name and value) from a set of headers.
-   * If there are less than two sets of headers in headersList, the result
-   * is empty.
-   *
-   * @param headersList
-   *          Headers to search.
-   * @return Shared headers.
+   * Key that ignores ID.
    */
-  private static Set<Pair<String, String>>
-    findSharedHeaders(List<HeadersType> headersList) {
-
-    if (headersList.size() < 2) {
-      return emptySet();
-    }
+  private static List<Pair<String, String>> commonHeadersKey(
+    CommonHeadersType commonHeaders) {
 
-    final HeaderType[] oneHeaders =
-        headersList.remove(headersList.size() - 1).getHeaderArray();
+    final HeaderType[] headers = commonHeaders.getHeaderArray();
 
-    final Set<Pair<String, String>> sharedHeaders =
-        new HashSet<Pair<String, String>>(oneHeaders.length);
+    final List<Pair<String, String>> result =
+      new ArrayList<Pair<String, String>>(headers.length);
 
-    for (HeaderType header : oneHeaders) {
-      sharedHeaders.add(Pair.of(header.getName(), header.getValue()));
+    for (HeaderType header : headers) {
+      result.add(Pair.of(header.getName(), header.getValue()));
     }
 
-    for (HeadersType headers : headersList) {
-      final HeaderType[] h = headers.getHeaderArray();
-
-      final Set<Pair<String, String>> sharedHeadersCopy =
-          new HashSet<Pair<String, String>>(sharedHeaders);
+    return result;
+  }
 
-      for (int j = 0; j < h.length; ++j) {
-        final String name = h[j].getName();
-        final String value = h[j].getValue();
+  private static Set<Pair<String, String>> headerPairs(HeaderType[] headers) {
+    final Set<Pair<String, String>> result =
+        new HashSet<Pair<String, String>>(headers.length);
 
-        sharedHeadersCopy.remove(Pair.of(name, value));
-      }
-
-      sharedHeaders.removeAll(sharedHeadersCopy);
+    for (HeaderType header : headers) {
+      result.add(Pair.of(header.getName(), header.getValue()));
     }
 
-    return sharedHeaders;
+    return result;
   }
 
   /**
@@ -610,70 +563,345 @@ public class HTTPRecordingImplementation implements HTTPRecording, Disposable {
     }
   }
 
+  /**
+   * Holds requests until they are finished, then spools them. Each request
+   * is given a sequence number when it is added, so that the order can be
+   * restored when the spool is read back.
+   */
   private final class RequestList {
-    private final List<RequestType> m_requests = new ArrayList<RequestType>();
-    private final Pattern m_resourcePathPattern = Pattern.compile(
-      ".*(?:\\.css|\\.gif|\\.ico|\\.jpe?g|\\.js|\\.png)(?:\\?.*)?$",
-      Pattern.CASE_INSENSITIVE);
+    // Guarded by this.
+    private final Map<RequestType, Integer> m_pending =
+      new IdentityHashMap<RequestType, Integer>();
+    private int m_nextSequence = 0;
+    private int m_numberOfRequests = 0;
 
     public RequestType add() {
       final RequestType request = RequestType.Factory.newInstance();
 
-      synchronized (m_requests) {
-        m_requests.add(request);
+      synchronized (this) {
+        m_pending.put(request, m_nextSequence++);
       }
 
       return request;
     }
 
-    public void record(HTTPRecordingType httpRecording) {
-      synchronized (m_requests) {
-        m_logger.debug("Recording {} requests", m_requests.size());
+    public synchronized void finished(RequestType request) {
+      final Integer sequence = m_pending.remove(request);
 
-        String lastBaseURI = null;
-        boolean lastResponseWasRedirect = false;
+      if (sequence != null) {
+        record(sequence, request);
+      }
+    }
 
-        PageType currentPage = null;
+    public synchronized void flush() {
+      for (Map.Entry<RequestType, Integer> entry : m_pending.entrySet()) {
+        record(entry.getValue(), entry.getKey());
+      }
 
-        for (RequestType request : m_requests) {
-          final ResponseType response = request.getResponse();
+      m_pending.clear();
 
-          if (response == null) {
-            m_logger.debug("Skipping due to no response: {}", request);
-            continue;
-          }
+      m_logger.debug("Recorded {} requests", m_numberOfRequests);
+    }
 
-          synchronized (m_recordingDocument) {
-            // Crude but effective pagination heuristics.
-            if (!request.getUri().getExtends().equals(lastBaseURI) ||
-                request.isSetBody() ||
-                !(m_resourcePathPattern.matcher(request.getUri().getUnparsed())
-                     .matches() ||
-                  lastResponseWasRedirect) ||
-                currentPage == null) {
-              currentPage = httpRecording.addNewPage();
-            }
+    private void record(int sequence, RequestType request) {
+      if (request.getResponse() == null) {
+        m_logger.debug("Skipping due to no response: {}", request);
+        return;
+      }
 
-            lastBaseURI = request.getUri().getExtends();
+      m_headersAnalysis.add(sequence, request.getHeaders());
 
-            switch (response.getStatusCode()) {
-              case HttpURLConnection.HTTP_MOVED_PERM:
-              case HttpURLConnection.HTTP_MOVED_TEMP:
-              case 307:
-                lastResponseWasRedirect = true;
+      try {
+        m_requestSpool.write(sequence, request);
+        ++m_numberOfRequests;
+      }
+      catch (IOException e) {
+        m_logger.error(e.getMessage(), e);
+      }
+    }
+  }
 
-                request.setAnnotation(
-                  "Expecting " + response.getStatusCode() +
-                  " '" + response.getReasonPhrase() + "'");
-                break;
-              default:
-                lastResponseWasRedirect = false;
-            }
+  /**
+   * Splits the spooled requests into pages, and annotates redirects. The
+   * requests must be presented in the order they were made.
+   */
+  private static final class Paginator {
+    private static final Pattern RESOURCE_PATH_PATTERN = Pattern.compile(
+      ".*(?:\\.css|\\.gif|\\.ico|\\.jpe?g|\\.js|\\.png)(?:\\?.*)?$",
+      Pattern.CASE_INSENSITIVE);
+
+    private String m_lastBaseURI = null;
+    private boolean m_lastResponseWasRedirect = false;
+    private boolean m_first = true;
+
+    /**
+     * Process the next request.
+     *
+     * @param request The request.
+     * @return {@code true} if the request starts a new page.
+     */
+    public boolean isNewPage(RequestType request) {
+      final ResponseType response = request.getResponse();
+
+      // Crude but effective pagination heuristics.
+      final boolean newPage =
+        !request.getUri().getExtends().equals(m_lastBaseURI) ||
+        request.isSetBody() ||
+        !(RESOURCE_PATH_PATTERN.matcher(request.getUri().getUnparsed())
+            .matches() ||
+          m_lastResponseWasRedirect) ||
+        m_first;
+
+      m_lastBaseURI = request.getUri().getExtends();
+      m_first = false;
+
+      switch (response.getStatusCode()) {
+        case HttpURLConnection.HTTP_MOVED_PERM:
+        case HttpURLConnection.HTTP_MOVED_TEMP:
+        case 307:
+          m_lastResponseWasRedirect = true;
+
+          request.setAnnotation(
+            "Expecting " + response.getStatusCode() +
+            " '" + response.getReasonPhrase() + "'");
+          break;
+        default:
+          m_lastResponseWasRedirect = false;
+      }
+
+      return newPage;
+    }
+  }
+
+  /**
+   * Finds the sets of common headers that are shared by more than one
+   * request, and the default headers that are shared by every request.
+   *
+   * <p>
+   * Requests are added as they are spooled, which need not be the order in
+   * which they were made. Only a summary of each distinct set of common
+   * headers is kept, so the memory used does not depend on the length of
+   * the recording. The summaries are analysed in the order in which their
+   * first request was made.
+   * </p>
+   */
+  private final class HeadersAnalysis {
+    // Guarded by this.
+    private final Map<List<Pair<String, String>>, HeadersSummary>
+      m_summaries = new HashMap<List<Pair<String, String>>, HeadersSummary>();
+
+    public synchronized void add(int sequence, HeadersType headers) {
+      final CommonHeadersType commonHeaders =
+        splitHeaders(headers).getFirst();
+
+      final List<Pair<String, String>> key = commonHeadersKey(commonHeaders);
+
+      final HeadersSummary existing = m_summaries.get(key);
+
+      final HeadersSummary summary;
+
+      if (existing != null) {
+        summary = existing;
+      }
+      else {
+        summary = new HeadersSummary(commonHeaders);
+        m_summaries.put(key, summary);
+      }
 
-            currentPage.addNewRequest().set(request);
+      summary.add(sequence, headers);
+    }
+
+    public synchronized HeadersRewriter analyse() {
+      final IntGenerator idGenerator = new IntGenerator();
+
+      final List<Map.Entry<List<Pair<String, String>>, HeadersSummary>>
+        summaries =
+          new ArrayList<Map.Entry<List<Pair<String, String>>, HeadersSummary>>(
+            m_summaries.entrySet());
+
+      Collections.sort(
+        summaries,
+        new Comparator<Map.Entry<?, HeadersSummary>>() {
+          public int compare(Map.Entry<?, HeadersSummary> o1,
+                             Map.Entry<?, HeadersSummary> o2) {
+            final int s1 = o1.getValue().getFirstSequence();
+            final int s2 = o2.getValue().getFirstSequence();
+            return s1 < s2 ? -1 : s1 == s2 ? 0 : 1;
           }
+        });
+
+      final Map<List<Pair<String, String>>, CommonHeadersType>
+        commonHeadersByKey =
+          new LinkedHashMap<List<Pair<String, String>>, CommonHeadersType>();
+
+      // Find default headers that are present in all common headers, or
+      // request headers that don't extend common headers.
+      Set<Pair<String, String>> defaultHeaders = null;
+      int numberOfSources = 0;
+
+      for (Map.Entry<List<Pair<String, String>>, HeadersSummary> entry :
+           summaries) {
+        final HeadersSummary summary = entry.getValue();
+        final Set<Pair<String, String>> sourceHeaders;
+
+        // Extract common headers if more than one request refers to them.
+        if (summary.getCommonHeaders().sizeOfHeaderArray() > 0 &&
+            summary.getCount() > 1) {
+          final CommonHeadersType commonHeaders =
+            (CommonHeadersType) summary.getCommonHeaders().copy();
+          commonHeaders.setHeadersId("headers" + idGenerator.next());
+          commonHeadersByKey.put(entry.getKey(), commonHeaders);
+
+          sourceHeaders = headerPairs(commonHeaders.getHeaderArray());
+          ++numberOfSources;
+        }
+        else {
+          sourceHeaders = summary.getSharedHeaders();
+          numberOfSources += summary.getCount();
+        }
+
+        if (defaultHeaders == null) {
+          defaultHeaders = new HashSet<Pair<String, String>>(sourceHeaders);
+        }
+        else {
+          defaultHeaders.retainAll(sourceHeaders);
         }
       }
+
+      final Map<List<Pair<String, String>>, String> idsByKey =
+        new HashMap<List<Pair<String, String>>, String>();
+      final List<CommonHeadersType> result =
+        new ArrayList<CommonHeadersType>(commonHeadersByKey.size() + 1);
+
+      if (numberOfSources < 2 || defaultHeaders.size() == 0) {
+        for (Map.Entry<List<Pair<String, String>>, CommonHeadersType> entry :
+             commonHeadersByKey.entrySet()) {
+          idsByKey.put(entry.getKey(), entry.getValue().getHeadersId());
+          result.add(entry.getValue());
+        }
+
+        final Set<Pair<String, String>> noDefaultHeaders =
+          Collections.emptySet();
+
+        return new HeadersRewriter(result, idsByKey, noDefaultHeaders);
+      }
+
+      final CommonHeadersType defaultHeadersXML =
+          CommonHeadersType.Factory.newInstance();
+      defaultHeadersXML.setHeadersId(DEFAULT_HEADERS_ID);
+      result.add(defaultHeadersXML);
+
+      for (Pair<String, String> defaultHeader : defaultHeaders) {
+        final HeaderType header = defaultHeadersXML.addNewHeader();
+        header.setName(defaultHeader.getFirst());
+        header.setValue(defaultHeader.getSecond());
+      }
+
+      for (Map.Entry<List<Pair<String, String>>, CommonHeadersType> entry :
+           commonHeadersByKey.entrySet()) {
+        final CommonHeadersType headers = entry.getValue();
+
+        removeDefaultHeaders(defaultHeaders,
+                             defaultHeadersXML.getHeadersId(),
+                             headers);
+
+        // There can be at most one CommonHeaders that is the same as the
+        // default headers. If we find it, we drop it and refer to the
+        // default headers instead.
+        if (headers.sizeOfHeaderArray() == 0) {
+          idsByKey.put(entry.getKey(), defaultHeadersXML.getHeadersId());
+        }
+        else {
+          idsByKey.put(entry.getKey(), headers.getHeadersId());
+          result.add(headers);
+        }
+      }
+
+      return new HeadersRewriter(result, idsByKey, defaultHeaders);
+    }
+  }
+
+  private static final class HeadersSummary {
+    private final CommonHeadersType m_commonHeaders;
+    private int m_count = 0;
+    private int m_firstSequence = Integer.MAX_VALUE;
+
+    /** The headers shared by every request with these common headers. */
+    private Set<Pair<String, String>> m_sharedHeaders;
+
+    public HeadersSummary(CommonHeadersType commonHeaders) {
+      m_commonHeaders = commonHeaders;
+    }
+
+    public void add(int sequence, HeadersType headers) {
+      m_firstSequence = Math.min(m_firstSequence, sequence);
+
+      final Set<Pair<String, String>> pairs =
+        headerPairs(headers.getHeaderArray());
+
+      if (m_sharedHeaders == null) {
+        m_sharedHeaders = pairs;
+      }
+      else {
+        m_sharedHeaders.retainAll(pairs);
+      }
+
+      ++m_count;
+    }
+
+    public CommonHeadersType getCommonHeaders() {
+      return m_commonHeaders;
+    }
+
+    public int getCount() {
+      return m_count;
+    }
+
+    public int getFirstSequence() {
+      return m_firstSequence;
+    }
+
+    public Set<Pair<String, String>> getSharedHeaders() {
+      return m_sharedHeaders;
+    }
+  }
+
+  /**
+   * Applies the result of the {@link HeadersAnalysis} to each request.
+   */
+  private final class HeadersRewriter {
+    private final List<CommonHeadersType> m_commonHeaders;
+    private final Map<List<Pair<String, String>>, String> m_idsByKey;
+    private final Set<Pair<String, String>> m_defaultHeaders;
+
+    public HeadersRewriter(List<CommonHeadersType> commonHeaders,
+                           Map<List<Pair<String, String>>, String> idsByKey,
+                           Set<Pair<String, String>> defaultHeaders) {
+      m_commonHeaders = commonHeaders;
+      m_idsByKey = idsByKey;
+      m_defaultHeaders = defaultHeaders;
+    }
+
+    public List<CommonHeadersType> getCommonHeaders() {
+      return m_commonHeaders;
+    }
+
+    public void rewrite(RequestType request) {
+      final HeadersType headers = request.getHeaders();
+
+      final Pair<CommonHeadersType, HeadersType> split =
+        splitHeaders(headers);
+
+      final String id = m_idsByKey.get(commonHeadersKey(split.getFirst()));
+
+      if (id != null) {
+        final HeadersType uncommonHeaders = split.getSecond();
+        uncommonHeaders.setExtends(id);
+        request.setHeaders(uncommonHeaders);
+      }
+      else if (m_defaultHeaders.size() > 0) {
+        removeDefaultHeaders(m_defaultHeaders, DEFAULT_HEADERS_ID, headers);
+      }
     }
   }
 
@@ -23,7 +23,7 @@ package net.grinder.plugin.http.tcpproxyfilter;
 
 import java.io.IOException;
 
-import net.grinder.plugin.http.xml.HttpRecordingDocument;
+import javax.xml.transform.Source;
 
 
 /**
@@ -37,8 +37,9 @@ public interface HTTPRecordingResultProcessor {
   /**
    * Produce output.
    *
-   * @param result The result to process.
+   * @param result The result to process, an <code>http-recording</code>
+   * document. It can only be read once.
    * @throws IOException If an output error occurred.
    */
-  void process(HttpRecordingDocument result) throws IOException;
+  void process(Source result) throws IOException;
 }
@@ -29,15 +29,13 @@ import java.io.InputStream;
 import java.io.PrintWriter;
 
 import javax.xml.transform.ErrorListener;
+import javax.xml.transform.Source;
 import javax.xml.transform.Transformer;
 import javax.xml.transform.TransformerException;
 import javax.xml.transform.TransformerFactory;
-import javax.xml.transform.stax.StAXSource;
 import javax.xml.transform.stream.StreamResult;
 import javax.xml.transform.stream.StreamSource;
 
-import net.grinder.plugin.http.xml.HttpRecordingDocument;
-
 import org.slf4j.Logger;
 
 /**
@@ -131,7 +129,7 @@ public class ProcessHTTPRecordingWithXSLT implements
    * @throws IOException
    *           If an output error occurred.
    */
-  public void process(HttpRecordingDocument result) throws IOException {
+  public void process(Source result) throws IOException {
 
     try {
       final Transformer transformer = m_transformerFactory
@@ -140,8 +138,7 @@ public class ProcessHTTPRecordingWithXSLT implements
       // One might expect this to be the default, but it's not.
       transformer.setErrorListener(m_transformerFactory.getErrorListener());
 
-      transformer.transform(new StAXSource(result.newXMLStreamReader()),
-                            new StreamResult(m_output));
+      transformer.transform(result, new StreamResult(m_output));
 
       m_output.println();
     }
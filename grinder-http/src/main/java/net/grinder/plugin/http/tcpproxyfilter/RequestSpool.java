@@ -0,0 +1,208 @@
+// Copyright (C) 2013 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.grinder.plugin.http.tcpproxyfilter;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+
+import net.grinder.common.Closer;
+import net.grinder.plugin.http.xml.RequestType;
+
+import org.apache.xmlbeans.XmlException;
+
+
+/**
+ * Temporary file of recorded requests.
+ *
+ * <p>
+ * Allows a recording to hold each request in memory only until it is
+ * complete. Requests can be written in any order; each is identified by a
+ * sequence number, and they are read back in sequence number order. Only
+ * the file offset of each request is kept in memory.
+ * </p>
+ *
+ * <p>Package scope.</p>
+ *
+ * @author Philip Aston
+ */
+final class RequestSpool {
+
+  private static final long NONE = -1;
+
+  // Guarded by this.
+  private File m_file;
+  private DataOutputStream m_output;
+  private long m_length;
+  private long[] m_offsets = new long[0];
+
+  /**
+   * Append a request to the spool.
+   *
+   * @param sequence
+   *          The sequence number of the request. Each sequence number should
+   *          be written at most once.
+   * @param request
+   *          The request.
+   * @throws IOException
+   *           If the request could not be written.
+   */
+  public synchronized void write(int sequence, RequestType request)
+    throws IOException {
+
+    if (sequence < 0) {
+      throw new IllegalArgumentException("Negative sequence number");
+    }
+
+    if (m_output == null) {
+      if (m_file == null) {
+        m_file = File.createTempFile("grinder-recording", ".tmp");
+        m_file.deleteOnExit();
+        m_length = 0;
+      }
+
+      m_output =
+        new DataOutputStream(
+          new BufferedOutputStream(new FileOutputStream(m_file, true)));
+    }
+
+    final byte[] bytes = request.xmlText().getBytes("UTF-8");
+
+    m_output.writeInt(bytes.length);
+    m_output.write(bytes);
+
+    if (sequence >= m_offsets.length) {
+      final int oldLength = m_offsets.length;
+      m_offsets =
+        Arrays.copyOf(m_offsets, Math.max(sequence + 1, oldLength * 2));
+      Arrays.fill(m_offsets, oldLength, m_offsets.length, NONE);
+    }
+
+    m_offsets[sequence] = m_length;
+    m_length += 4 + bytes.length;
+  }
+
+  /**
+   * Flush and close the output file. Subsequent writes will reopen it.
+   *
+   * @throws IOException
+   *           If the file could not be closed.
+   */
+  public synchronized void close() throws IOException {
+    if (m_output != null) {
+      try {
+        m_output.close();
+      }
+      finally {
+        m_output = null;
+      }
+    }
+  }
+
+  /**
+   * Read each of the requests that have been written and closed, in
+   * sequence number order.
+   *
+   * @param visitor
+   *          Receives the requests.
+   * @throws IOException
+   *           If the spool could not be read.
+   */
+  public void read(Visitor visitor) throws IOException {
+
+    final File file;
+    final long[] offsets;
+
+    synchronized (this) {
+      if (m_file == null) {
+        return;
+      }
+
+      file = m_file;
+      offsets = m_offsets.clone();
+    }
+
+    final RandomAccessFile in = new RandomAccessFile(file, "r");
+
+    try {
+      for (int i = 0; i < offsets.length; ++i) {
+        if (offsets[i] == NONE) {
+          continue;
+        }
+
+        in.seek(offsets[i]);
+
+        final byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+
+        final RequestType request;
+
+        try {
+          request = RequestType.Factory.parse(new String(bytes, "UTF-8"));
+        }
+        catch (XmlException e) {
+          throw new IOException(e.getMessage(), e);
+        }
+
+        visitor.request(request);
+      }
+    }
+    finally {
+      in.close();
+    }
+  }
+
+  /**
+   * Delete the file.
+   */
+  public synchronized void delete() {
+    Closer.close(m_output);
+    m_output = null;
+
+    if (m_file != null) {
+      m_file.delete();
+      m_file = null;
+    }
+
+    m_offsets = new long[0];
+  }
+
+  /**
+   * Receives spooled requests.
+   */
+  interface Visitor {
+
+    /**
+     * Handle a request.
+     *
+     * @param request
+     *          The request.
+     * @throws IOException
+     *           If the request could not be handled.
+     */
+    void request(RequestType request) throws IOException;
+  }
+}
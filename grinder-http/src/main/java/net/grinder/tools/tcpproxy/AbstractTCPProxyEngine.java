@@ -33,6 +33,7 @@ import java.net.Socket;
 import java.net.SocketException;
 import java.net.SocketTimeoutException;
 import java.net.UnknownHostException;
+import java.nio.channels.ClosedChannelException;
 import java.util.LinkedList;
 import java.util.List;
 
@@ -54,6 +55,13 @@ import net.grinder.util.thread.InterruptibleRunnableAdapter;
  */
 public abstract class AbstractTCPProxyEngine implements TCPProxyEngine {
 
+  // For simplicity, the filters take a buffer oriented approach.
+  // This means that they all break at buffer boundaries. Our buffer
+  // is huge, so we shouldn't practically cause a problem, but the
+  // network clearly can by giving us message fragments. I consider
+  // this a bug, we really ought to take a stream oriented approach.
+  private static final int BUFFER_SIZE = 65536;
+
   private final TCPProxyFilter m_requestFilter;
 
   private final TCPProxyFilter m_responseFilter;
@@ -77,6 +85,8 @@ public abstract class AbstractTCPProxyEngine implements TCPProxyEngine {
   private final ThreadGroup m_streamThreadGroup =
     new ThreadGroup("TCPProxy Stream Handler");
 
+  private final ChannelMultiplexer m_multiplexer;
+
   /**
    * Constructor.
    *
@@ -126,9 +136,30 @@ public abstract class AbstractTCPProxyEngine implements TCPProxyEngine {
       m_responseColour = TerminalColour.NONE;
     }
 
+    final int selectorThreads = getNumberOfSelectorThreads();
+
+    if (selectorThreads > 0) {
+      m_multiplexer =
+        new ChannelMultiplexer(selectorThreads, BUFFER_SIZE, logger);
+    }
+    else {
+      m_multiplexer = null;
+    }
+
     m_serverSocket = m_socketFactory.createServerSocket(localEndPoint, timeout);
   }
 
+  /**
+   * The number of selector threads to use to handle connections, set with
+   * the {@code tcpproxy.selectorthreads} system property. If {@code 0}, the
+   * default, each connection is handled by a pair of threads.
+   *
+   * @return The number of selector threads.
+   */
+  static int getNumberOfSelectorThreads() {
+    return Integer.getInteger("tcpproxy.selectorthreads", 0).intValue();
+  }
+
   /**
    * Stop the engine and flush filter buffer.
    */
@@ -159,6 +190,10 @@ public abstract class AbstractTCPProxyEngine implements TCPProxyEngine {
     for (int i = 0; i < threads.length; ++i) {
       threads[i].stop();
     }
+
+    if (m_multiplexer != null) {
+      m_multiplexer.shutdown();
+    }
   }
 
   /**
@@ -193,6 +228,17 @@ public abstract class AbstractTCPProxyEngine implements TCPProxyEngine {
     return m_streamThreadGroup;
   }
 
+  /**
+   * The multiplexer used to handle connections with sockets that have
+   * channels.
+   *
+   * @return The multiplexer, or {@code null} if connections are handled by
+   *         threads.
+   */
+  final ChannelMultiplexer getMultiplexer() {
+    return m_multiplexer;
+  }
+
   /**
    * <code>IOException</code> that indicates that an accept has timed out on our
    * server socket, and we have no active threads handling connections.
@@ -208,8 +254,8 @@ public abstract class AbstractTCPProxyEngine implements TCPProxyEngine {
    * @throws IOException
    *           If an I/O error occurred.
    * @throws NoActivityTimeOutException
-   *           If the accept timed out, and we have no active threads handling
-   *           connections.
+   *           If the accept timed out, and we have no active threads or
+   *           multiplexed connections.
    */
   protected Socket accept() throws NoActivityTimeOutException, IOException {
     while (true) {
@@ -219,7 +265,9 @@ public abstract class AbstractTCPProxyEngine implements TCPProxyEngine {
       catch (SocketTimeoutException e) {
         // activeCount() is dubious as the result is not guaranteed to be
         // correct. Seems to be OK here though.
-        if (getStreamThreadGroup().activeCount() == 0) {
+        if (getStreamThreadGroup().activeCount() == 0 &&
+            (m_multiplexer == null ||
+             m_multiplexer.getNumberOfConnections() == 0)) {
           stop();
           throw new NoActivityTimeOutException();
         }
@@ -344,6 +392,11 @@ public abstract class AbstractTCPProxyEngine implements TCPProxyEngine {
   /**
    * Launch a pair of threads to handle bi-directional stream communication.
    *
+   * <p>
+   * If we have a multiplexer and both sockets have channels, the connections
+   * are handled by the multiplexer instead.
+   * </p>
+   *
    * @param localSocket
    *          Local socket.
    * @param remoteSocket
@@ -371,6 +424,31 @@ public abstract class AbstractTCPProxyEngine implements TCPProxyEngine {
     final ConnectionDetails connectionDetails =
       new ConnectionDetails(sourceEndPoint, targetEndPoint, isSecure);
 
+    if (m_multiplexer != null &&
+        localSocket.getChannel() != null &&
+        remoteSocket.getChannel() != null) {
+
+      final ChannelMultiplexer.Connection local =
+        m_multiplexer.add(localSocket.getChannel(), null);
+
+      final ChannelMultiplexer.Connection remote =
+        m_multiplexer.add(remoteSocket.getChannel(), local);
+
+      startReading(local,
+                   new OutputStreamFilterTee(connectionDetails,
+                                             remote.getOutputStream(),
+                                             m_requestFilter,
+                                             m_requestColour));
+
+      startReading(remote,
+                   new OutputStreamFilterTee(connectionDetails.getOtherEnd(),
+                                             local.getOutputStream(),
+                                             m_responseFilter,
+                                             m_responseColour));
+
+      return;
+    }
+
     new FilteredStreamThread(localSocket.getInputStream(),
                              new OutputStreamFilterTee(
                                  connectionDetails,
@@ -386,19 +464,27 @@ public abstract class AbstractTCPProxyEngine implements TCPProxyEngine {
                                  m_responseColour));
   }
 
+  /**
+   * Pass data read from a multiplexed connection through a filter. The
+   * equivalent of a {@link FilteredStreamThread}.
+   *
+   * @param connection
+   *          The connection.
+   * @param outputStreamFilterTee
+   *          The filter.
+   */
+  final void startReading(ChannelMultiplexer.Connection connection,
+                          OutputStreamFilterTee outputStreamFilterTee) {
+    outputStreamFilterTee.connectionOpened();
+    connection.read(outputStreamFilterTee);
+  }
+
   /**
    * <code>Runnable</code> which actively reads an input stream and writes to an
    * output stream, passing the data through a filter.
    */
   protected final class FilteredStreamThread implements InterruptibleRunnable {
 
-    // For simplicity, the filters take a buffer oriented approach.
-    // This means that they all break at buffer boundaries. Our buffer
-    // is huge, so we shouldn't practically cause a problem, but the
-    // network clearly can by giving us message fragments. I consider
-    // this a bug, we really ought to take a stream oriented approach.
-    private static final int BUFFER_SIZE = 65536;
-
     private final InputStream m_in;
 
     private final OutputStreamFilterTee m_outputStreamFilterTee;
@@ -477,7 +563,8 @@ public abstract class AbstractTCPProxyEngine implements TCPProxyEngine {
 
     }
     else if (IOException.class.equals(c) && "Stream closed".equals(message) ||
-             e instanceof SocketException) {
+             e instanceof SocketException ||
+             e instanceof ClosedChannelException) {
       // Ignore common exceptions that are due to connections being
       // closed.
       return "";
@@ -505,7 +592,8 @@ public abstract class AbstractTCPProxyEngine implements TCPProxyEngine {
    * output stream. It is constructed for a particular connection. Also controls
    * output of colour codes to the terminal.
    */
-  protected final class OutputStreamFilterTee {
+  protected final class OutputStreamFilterTee
+    implements ChannelMultiplexer.Handler {
 
     private final ConnectionDetails m_connectionDetails;
 
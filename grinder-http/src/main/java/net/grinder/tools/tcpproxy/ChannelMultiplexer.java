@@ -0,0 +1,930 @@
+// Copyright (C) 2013 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.grinder.tools.tcpproxy;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.grinder.common.UncheckedInterruptedException;
+import net.grinder.util.thread.ExecutorFactory;
+
+import org.slf4j.Logger;
+
+
+/**
+ * Handles many connections with a small number of selector threads.
+ *
+ * <p>
+ * Each connection is assigned to a selector thread. Data read from the
+ * connection is passed to a {@link Handler} on that thread, so handlers must
+ * not block. Data written to the output stream of a connection is written to
+ * the channel immediately if possible; anything left over is queued in buffers
+ * taken from a shared pool of direct buffers, and written when the channel
+ * becomes writable. If the queue for a connection grows beyond
+ * {@link #MAXIMUM_BACKLOG} bytes, a handler that writes to it from its
+ * selector thread stops the connection it is reading from until the queue
+ * drains. At most {@link #MAXIMUM_POOLED_BYTES} of free buffers are kept for
+ * reuse.
+ * </p>
+ *
+ * <p>
+ * Outbound connections can be opened with {@link #connect}, which never
+ * blocks a selector thread. Host names are resolved by a separate pool of
+ * threads.
+ * </p>
+ *
+ * <p>
+ * If a handler or task fails with an unexpected exception, the connection it
+ * belongs to is closed and the failure is logged. Other connections handled by
+ * the selector thread are unaffected.
+ * </p>
+ *
+ * <p>Package scope.</p>
+ *
+ * @author Philip Aston
+ */
+final class ChannelMultiplexer {
+
+  private static final int MAXIMUM_BACKLOG = 262144;
+
+  private static final int MAXIMUM_POOLED_BYTES = 4 * MAXIMUM_BACKLOG;
+
+  /**
+   * Receives data read from a connection.
+   */
+  interface Handler {
+
+    /**
+     * Handle data read from the connection. Called on a selector thread.
+     *
+     * @param buffer
+     *          Contains the data. Only valid for the duration of the call.
+     * @param bytesRead
+     *          How many bytes of data in <code>buffer</code>.
+     * @throws IOException
+     *           If the data could not be handled. The connection will be
+     *           closed.
+     */
+    void handle(byte[] buffer, int bytesRead) throws IOException;
+
+    /**
+     * The connection has been closed, either by the peer or locally. Called
+     * at most once.
+     */
+    void connectionClosed();
+  }
+
+  /**
+   * Notified if an outbound connection could not be established.
+   *
+   * @see ChannelMultiplexer#connect
+   */
+  interface ConnectHandler {
+
+    /**
+     * The connection could not be established. Called on a selector thread,
+     * before the connection is closed.
+     *
+     * @param e
+     *          The reason.
+     */
+    void connectFailed(IOException e);
+  }
+
+  private final int m_bufferSize;
+  private final Logger m_logger;
+  private final SelectorThread[] m_threads;
+  private final Queue<ByteBuffer> m_buffers =
+    new ConcurrentLinkedQueue<ByteBuffer>();
+  private final int m_maximumPooledBuffers;
+  private final AtomicInteger m_numberOfPooledBuffers = new AtomicInteger();
+  private final AtomicInteger m_numberOfConnections = new AtomicInteger();
+  private final ExecutorService m_resolver;
+
+  // Guarded by this.
+  private boolean m_started;
+  private boolean m_shutdown;
+  private int m_nextThread;
+
+  /**
+   * Constructor. The selector threads are started when the first connection
+   * is added.
+   *
+   * @param numberOfThreads
+   *          The number of selector threads.
+   * @param bufferSize
+   *          The size of the buffers used for reading and for queued output.
+   *          This is also the largest amount of data passed to a
+   *          {@link Handler} at once.
+   * @param logger
+   *          Logger.
+   * @throws IOException
+   *           If a selector could not be opened.
+   */
+  public ChannelMultiplexer(int numberOfThreads, int bufferSize, Logger logger)
+    throws IOException {
+
+    if (numberOfThreads < 1) {
+      throw new IllegalArgumentException("At least one thread is required");
+    }
+
+    m_bufferSize = bufferSize;
+    m_maximumPooledBuffers = Math.max(1, MAXIMUM_POOLED_BYTES / bufferSize);
+    m_logger = logger;
+    m_threads = new SelectorThread[numberOfThreads];
+    m_resolver =
+      ExecutorFactory.createTransientThreadPool("TCPProxy resolver",
+                                                numberOfThreads);
+
+    for (int i = 0; i < numberOfThreads; ++i) {
+      m_threads[i] = new SelectorThread("TCPProxy selector thread " + i);
+    }
+  }
+
+  /**
+   * Add a connection. The channel is placed in non-blocking mode.
+   *
+   * @param channel
+   *          The channel.
+   * @param peer
+   *          If not {@code null}, the new connection is handled by the same
+   *          selector thread as {@code peer}. This avoids cross-thread
+   *          hand-offs when handlers for the two connections write to each
+   *          other.
+   * @return The connection.
+   * @throws IOException
+   *           If the channel could not be placed in non-blocking mode, or the
+   *           multiplexer has been shut down.
+   */
+  public Connection add(SocketChannel channel, Connection peer)
+    throws IOException {
+
+    final SelectorThread thread = peer != null ? peer.m_thread : nextThread();
+
+    channel.configureBlocking(false);
+
+    final Connection connection = new Connection(channel, thread, null);
+    m_numberOfConnections.incrementAndGet();
+
+    connection.execute(new Runnable() {
+        public void run() { connection.register(); }
+      });
+
+    return connection;
+  }
+
+  /**
+   * Open a connection to a remote host without blocking.
+   *
+   * <p>
+   * The connection can be used immediately. Output written before the
+   * connection is established is queued. If the connection cannot be
+   * established, {@code connectHandler} is notified and the connection is
+   * closed.
+   * </p>
+   *
+   * @param host
+   *          The remote host.
+   * @param port
+   *          The remote port.
+   * @param peer
+   *          If not {@code null}, the new connection is handled by the same
+   *          selector thread as {@code peer}.
+   * @param connectHandler
+   *          Notified if the connection fails.
+   * @return The connection.
+   * @throws IOException
+   *           If a channel could not be opened, or the multiplexer has been
+   *           shut down.
+   */
+  public Connection connect(final String host,
+                            final int port,
+                            Connection peer,
+                            ConnectHandler connectHandler)
+    throws IOException {
+
+    final SelectorThread thread = peer != null ? peer.m_thread : nextThread();
+
+    final SocketChannel channel = SocketChannel.open();
+    channel.configureBlocking(false);
+
+    final Connection connection =
+      new Connection(channel, thread, connectHandler);
+    m_numberOfConnections.incrementAndGet();
+
+    final Runnable resolve = new Runnable() {
+        public void run() {
+          InetSocketAddress address = null;
+          IOException failure = null;
+
+          try {
+            address = new InetSocketAddress(InetAddress.getByName(host), port);
+          }
+          catch (UnknownHostException e) {
+            failure = e;
+          }
+          catch (RuntimeException e) {
+            // For example, an invalid port.
+            failure = new IOException(e.getMessage(), e);
+          }
+
+          final InetSocketAddress resolvedAddress = address;
+          final IOException resolveFailure = failure;
+
+          connection.execute(new Runnable() {
+              public void run() {
+                if (resolveFailure != null) {
+                  connection.connectFailed(resolveFailure);
+                }
+                else {
+                  connection.startConnect(resolvedAddress);
+                }
+              }
+            });
+        }
+      };
+
+    try {
+      m_resolver.execute(resolve);
+    }
+    catch (RejectedExecutionException e) {
+      // Shut down.
+      connection.closeNow();
+      throw new IOException("Stream closed");
+    }
+
+    return connection;
+  }
+
+  private synchronized SelectorThread nextThread() throws IOException {
+    if (m_shutdown) {
+      throw new IOException("Stream closed");
+    }
+
+    if (!m_started) {
+      for (final SelectorThread thread : m_threads) {
+        thread.start();
+      }
+
+      m_started = true;
+    }
+
+    m_nextThread = (m_nextThread + 1) % m_threads.length;
+
+    return m_threads[m_nextThread];
+  }
+
+  /**
+   * The number of connections that have been added and not yet closed.
+   *
+   * @return The number of open connections.
+   */
+  public int getNumberOfConnections() {
+    return m_numberOfConnections.get();
+  }
+
+  /**
+   * Close all connections and stop the selector threads. Handlers are
+   * notified that their connections have closed.
+   */
+  public void shutdown() {
+    synchronized (this) {
+      if (m_shutdown) {
+        return;
+      }
+
+      m_shutdown = true;
+
+      if (!m_started) {
+        m_resolver.shutdown();
+        return;
+      }
+    }
+
+    m_resolver.shutdown();
+
+    for (final SelectorThread thread : m_threads) {
+      thread.shutdown();
+    }
+
+    for (final SelectorThread thread : m_threads) {
+      if (thread != Thread.currentThread()) {
+        try {
+          thread.join();
+        }
+        catch (InterruptedException e) {
+          throw new UncheckedInterruptedException(e);
+        }
+      }
+    }
+  }
+
+  private ByteBuffer takeBuffer() {
+    final ByteBuffer buffer = m_buffers.poll();
+
+    if (buffer == null) {
+      return ByteBuffer.allocateDirect(m_bufferSize);
+    }
+
+    m_numberOfPooledBuffers.decrementAndGet();
+    buffer.clear();
+
+    return buffer;
+  }
+
+  private void returnBuffer(ByteBuffer buffer) {
+    // Buffers beyond the limit are left for the garbage collector.
+    if (m_numberOfPooledBuffers.incrementAndGet() <= m_maximumPooledBuffers) {
+      m_buffers.offer(buffer);
+    }
+    else {
+      m_numberOfPooledBuffers.decrementAndGet();
+    }
+  }
+
+  private final class SelectorThread extends Thread {
+    private final Selector m_selector;
+    private final Queue<Runnable> m_tasks =
+      new ConcurrentLinkedQueue<Runnable>();
+    private final byte[] m_readBuffer = new byte[m_bufferSize];
+
+    private volatile boolean m_stopping;
+
+    // Guarded by this.
+    private boolean m_stopped;
+
+    // Only accessed by this thread. The connection whose handler is running.
+    private Connection m_reading;
+
+    public SelectorThread(String name) throws IOException {
+      super(name);
+      setDaemon(true);
+      m_selector = Selector.open();
+    }
+
+    /**
+     * Run a task on this thread. If the thread has stopped, the task is run
+     * by the caller; the selector has been closed, so this only tidies up.
+     */
+    public void execute(Runnable task) {
+      if (Thread.currentThread() == this) {
+        task.run();
+        return;
+      }
+
+      synchronized (this) {
+        if (!m_stopped) {
+          m_tasks.add(task);
+          m_selector.wakeup();
+          return;
+        }
+      }
+
+      task.run();
+    }
+
+    public void shutdown() {
+      m_stopping = true;
+      m_selector.wakeup();
+    }
+
+    @Override public void run() {
+      try {
+        while (!m_stopping) {
+          runTasks();
+
+          m_selector.select();
+
+          final Iterator<SelectionKey> keys =
+            m_selector.selectedKeys().iterator();
+
+          while (keys.hasNext()) {
+            final SelectionKey key = keys.next();
+            keys.remove();
+
+            final Connection connection = (Connection) key.attachment();
+
+            try {
+              connection.ready(key);
+            }
+            catch (RuntimeException e) {
+              connection.failed(e);
+            }
+            catch (Error e) {
+              connection.failed(e);
+            }
+          }
+        }
+      }
+      catch (IOException e) {
+        m_logger.error(e.getMessage(), e);
+      }
+      finally {
+        synchronized (this) {
+          m_stopped = true;
+        }
+
+        runTasks();
+
+        final List<SelectionKey> keys =
+          new ArrayList<SelectionKey>(m_selector.keys());
+
+        for (SelectionKey key : keys) {
+          try {
+            ((Connection) key.attachment()).closeNow();
+          }
+          catch (RuntimeException e) {
+            m_logger.error(e.getMessage(), e);
+          }
+        }
+
+        try {
+          m_selector.close();
+        }
+        catch (IOException e) {
+          m_logger.error(e.getMessage(), e);
+        }
+      }
+    }
+
+    private void runTasks() {
+      Runnable task;
+
+      while ((task = m_tasks.poll()) != null) {
+        // Connection tasks handle their own failures.
+        task.run();
+      }
+    }
+  }
+
+  /**
+   * A connection.
+   */
+  final class Connection {
+    private final SocketChannel m_channel;
+    private final SelectorThread m_thread;
+    private final OutputStream m_outputStream = new ConnectionOutputStream();
+
+    // Only accessed by the selector thread.
+    private SelectionKey m_key;
+    private Handler m_handler;
+    private boolean m_closed;
+    private boolean m_handlerClosed;
+    private final List<Connection> m_pausedReaders =
+      new ArrayList<Connection>();
+    private ConnectHandler m_connectHandler;
+    private boolean m_connecting;
+    private int m_interestOps;
+
+    // Guarded by m_backlog.
+    private final LinkedList<ByteBuffer> m_backlog =
+      new LinkedList<ByteBuffer>();
+    private int m_backlogSize;
+    private boolean m_closeRequested;
+    private boolean m_connected;
+
+    private Connection(SocketChannel channel,
+                       SelectorThread thread,
+                       ConnectHandler connectHandler) {
+      m_channel = channel;
+      m_thread = thread;
+      m_connectHandler = connectHandler;
+      m_connecting = connectHandler != null;
+      m_connected = !m_connecting;
+    }
+
+    /**
+     * Start reading from the connection.
+     *
+     * @param handler
+     *          Receives the data read.
+     */
+    public void read(final Handler handler) {
+      execute(new Runnable() {
+          public void run() {
+            m_handler = handler;
+
+            if (m_closed) {
+              closeHandler();
+            }
+            else {
+              setInterest(SelectionKey.OP_READ, true);
+            }
+          }
+        });
+    }
+
+    /**
+     * An output stream that writes to the connection. Writes never block.
+     * Closing the stream closes the connection once the queued output has
+     * been written.
+     *
+     * @return The output stream.
+     */
+    public OutputStream getOutputStream() {
+      return m_outputStream;
+    }
+
+    /**
+     * Close the connection once the queued output has been written.
+     */
+    public void close() {
+      synchronized (m_backlog) {
+        if (m_closeRequested) {
+          return;
+        }
+
+        m_closeRequested = true;
+      }
+
+      execute(new Runnable() {
+          public void run() {
+            synchronized (m_backlog) {
+              if (!m_backlog.isEmpty()) {
+                return;
+              }
+            }
+
+            closeNow();
+          }
+        });
+    }
+
+    /**
+     * Run a task for this connection on its selector thread. If the task
+     * fails unexpectedly, only this connection is closed.
+     */
+    private void execute(final Runnable task) {
+      m_thread.execute(new Runnable() {
+          public void run() {
+            try {
+              task.run();
+            }
+            catch (RuntimeException e) {
+              failed(e);
+            }
+            catch (Error e) {
+              failed(e);
+            }
+          }
+        });
+    }
+
+    private void failed(Throwable t) {
+      m_logger.error("Closing connection after unexpected failure", t);
+
+      try {
+        closeNow();
+      }
+      catch (RuntimeException e) {
+        m_logger.error(e.getMessage(), e);
+      }
+    }
+
+    private void register() {
+      try {
+        m_key = m_channel.register(m_thread.m_selector, 0, this);
+        applyInterest();
+      }
+      catch (IOException e) {
+        closeNow();
+      }
+      catch (ClosedSelectorException e) {
+        closeNow();
+      }
+    }
+
+    /**
+     * Record our interest in an operation. The interest is applied to the
+     * selection key once the connection has been registered and established.
+     */
+    private void setInterest(int operation, boolean interested) {
+      m_interestOps =
+        interested ? m_interestOps | operation : m_interestOps & ~operation;
+
+      applyInterest();
+    }
+
+    private void applyInterest() {
+      if (m_key != null && m_key.isValid()) {
+        m_key.interestOps(
+          m_connecting ? SelectionKey.OP_CONNECT : m_interestOps);
+      }
+    }
+
+    private void startConnect(InetSocketAddress address) {
+      if (m_closed) {
+        return;
+      }
+
+      register();
+
+      if (m_closed) {
+        return;
+      }
+
+      try {
+        if (m_channel.connect(address)) {
+          connected();
+        }
+      }
+      catch (IOException e) {
+        connectFailed(e);
+      }
+    }
+
+    private void finishConnect() {
+      try {
+        if (!m_channel.finishConnect()) {
+          return;
+        }
+      }
+      catch (IOException e) {
+        connectFailed(e);
+        return;
+      }
+
+      connected();
+    }
+
+    private void connected() {
+      m_connectHandler = null;
+      m_connecting = false;
+
+      synchronized (m_backlog) {
+        // Output written while connecting has been queued, and OP_WRITE
+        // requested.
+        m_connected = true;
+      }
+
+      applyInterest();
+    }
+
+    private void connectFailed(IOException e) {
+      final ConnectHandler connectHandler = m_connectHandler;
+      m_connectHandler = null;
+
+      if (connectHandler != null && !m_closed) {
+        connectHandler.connectFailed(e);
+      }
+
+      closeNow();
+    }
+
+    private void ready(SelectionKey key) {
+      if (key.isValid() && key.isConnectable()) {
+        finishConnect();
+      }
+
+      if (key.isValid() && key.isWritable()) {
+        flush();
+      }
+
+      if (key.isValid() && key.isReadable()) {
+        readable();
+      }
+    }
+
+    private void readable() {
+      final ByteBuffer buffer = takeBuffer();
+      int n;
+
+      try {
+        n = m_channel.read(buffer);
+      }
+      catch (IOException e) {
+        // Ignore, assume closed.
+        n = -1;
+      }
+
+      if (n > 0) {
+        buffer.flip();
+        buffer.get(m_thread.m_readBuffer, 0, n);
+      }
+
+      returnBuffer(buffer);
+
+      if (n > 0) {
+        m_thread.m_reading = this;
+
+        try {
+          m_handler.handle(m_thread.m_readBuffer, n);
+        }
+        catch (IOException e) {
+          // The handler is responsible for reporting problems.
+          n = -1;
+        }
+        finally {
+          m_thread.m_reading = null;
+        }
+      }
+
+      if (n < 0) {
+        closeHandler();
+        close();
+      }
+    }
+
+    private void write(byte[] b, int off, int len) throws IOException {
+      final ByteBuffer data = ByteBuffer.wrap(b, off, len);
+      final boolean wasEmpty;
+      final int backlogSize;
+
+      synchronized (m_backlog) {
+        if (m_closeRequested) {
+          throw new IOException("Stream closed");
+        }
+
+        wasEmpty = m_backlog.isEmpty();
+
+        if (wasEmpty && m_connected) {
+          m_channel.write(data);
+        }
+
+        while (data.hasRemaining()) {
+          final ByteBuffer buffer = takeBuffer();
+          final int n = Math.min(buffer.remaining(), data.remaining());
+          final int limit = data.limit();
+
+          data.limit(data.position() + n);
+          buffer.put(data);
+          data.limit(limit);
+          buffer.flip();
+
+          m_backlog.add(buffer);
+          m_backlogSize += n;
+        }
+
+        backlogSize = m_backlogSize;
+      }
+
+      if (wasEmpty && backlogSize > 0) {
+        execute(new Runnable() {
+            public void run() { setInterest(SelectionKey.OP_WRITE, true); }
+          });
+      }
+
+      if (backlogSize > MAXIMUM_BACKLOG && Thread.currentThread() == m_thread) {
+        final Connection reader = m_thread.m_reading;
+
+        if (reader != null && !m_pausedReaders.contains(reader)) {
+          reader.setInterest(SelectionKey.OP_READ, false);
+          m_pausedReaders.add(reader);
+        }
+      }
+    }
+
+    private void flush() {
+      final boolean empty;
+      final int backlogSize;
+
+      try {
+        synchronized (m_backlog) {
+          while (!m_backlog.isEmpty()) {
+            final ByteBuffer buffer = m_backlog.getFirst();
+
+            m_backlogSize -= m_channel.write(buffer);
+
+            if (buffer.hasRemaining()) {
+              break;
+            }
+
+            returnBuffer(m_backlog.removeFirst());
+          }
+
+          empty = m_backlog.isEmpty();
+          backlogSize = m_backlogSize;
+        }
+      }
+      catch (IOException e) {
+        // Ignore, assume closed.
+        closeNow();
+        return;
+      }
+
+      if (backlogSize <= MAXIMUM_BACKLOG) {
+        resumeReaders();
+      }
+
+      if (empty) {
+        setInterest(SelectionKey.OP_WRITE, false);
+
+        synchronized (m_backlog) {
+          if (!m_closeRequested) {
+            return;
+          }
+        }
+
+        closeNow();
+      }
+    }
+
+    private void resumeReaders() {
+      for (final Connection reader : m_pausedReaders) {
+        reader.execute(new Runnable() {
+            public void run() {
+              if (!reader.m_handlerClosed) {
+                reader.setInterest(SelectionKey.OP_READ, true);
+              }
+            }
+          });
+      }
+
+      m_pausedReaders.clear();
+    }
+
+    private void closeHandler() {
+      if (m_handler != null && !m_handlerClosed) {
+        m_handlerClosed = true;
+        setInterest(SelectionKey.OP_READ, false);
+        m_handler.connectionClosed();
+      }
+    }
+
+    private void closeNow() {
+      if (m_closed) {
+        return;
+      }
+
+      m_closed = true;
+
+      if (m_key != null) {
+        m_key.cancel();
+      }
+
+      try {
+        m_channel.close();
+      }
+      catch (IOException e) {
+        UncheckedInterruptedException.ioException(e);
+      }
+
+      synchronized (m_backlog) {
+        m_closeRequested = true;
+
+        for (final ByteBuffer buffer : m_backlog) {
+          returnBuffer(buffer);
+        }
+
+        m_backlog.clear();
+        m_backlogSize = 0;
+      }
+
+      m_numberOfConnections.decrementAndGet();
+
+      resumeReaders();
+      closeHandler();
+    }
+
+    private final class ConnectionOutputStream extends OutputStream {
+      @Override public void write(int b) throws IOException {
+        write(new byte[] { (byte) b }, 0, 1);
+      }
+
+      @Override public void write(byte[] b, int off, int len)
+        throws IOException {
+        Connection.this.write(b, off, len);
+      }
+
+      @Override public void close() {
+        Connection.this.close();
+      }
+    }
+  }
+}
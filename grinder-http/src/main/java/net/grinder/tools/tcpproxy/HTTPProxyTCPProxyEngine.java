@@ -36,6 +36,7 @@ import java.io.PrintWriter;
 import java.net.ConnectException;
 import java.net.InetAddress;
 import java.net.Socket;
+import java.nio.channels.SocketChannel;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.BlockingQueue;
@@ -46,6 +47,8 @@ import java.util.regex.PatternSyntaxException;
 
 import net.grinder.common.GrinderBuild;
 import net.grinder.common.UncheckedInterruptedException;
+import net.grinder.util.ChannelInputStream;
+import net.grinder.util.ChannelOutputStream;
 import net.grinder.util.StreamCopier;
 import net.grinder.util.html.HTMLElement;
 import net.grinder.util.thread.InterruptibleRunnable;
@@ -70,6 +73,10 @@ import org.slf4j.Logger;
  * proxy the rest of the stream through a special delegate
  * TCPProxyEngineImplementation which instantiated to handle SSL.</p>
  *
+ * <p>If the {@code tcpproxy.selectorthreads} system property is set, plain
+ * HTTP connections are handled by a {@link ChannelMultiplexer} rather than
+ * by threads. HTTPS connections always use threads.</p>
+ *
  * @author Paddy Spencer
  * @author Philip Aston
  * @author Bertrand Ave
@@ -123,8 +130,10 @@ public final class HTTPProxyTCPProxyEngine extends AbstractTCPProxyEngine {
 
     // We set this engine up for handling plain connections. We
     // delegate HTTPS to a proxy engine.
-    super(new TCPProxySocketFactoryImplementation(), requestFilter,
-          responseFilter, output, logger, localEndPoint, useColour, timeout);
+    super(new TCPProxySocketFactoryImplementation(
+            getNumberOfSelectorThreads() > 0),
+          requestFilter, responseFilter, output, logger, localEndPoint,
+          useColour, timeout);
 
     m_proxyAddress = localEndPoint;
     m_chainedHTTPProxy = chainedHTTPProxy;
@@ -171,8 +180,25 @@ public final class HTTPProxyTCPProxyEngine extends AbstractTCPProxyEngine {
       }
 
       try {
+        final SocketChannel channel = localSocket.getChannel();
+        final boolean multiplexed = getMultiplexer() != null && channel != null;
+        final InputStream socketInput;
+        final OutputStream socketOutput;
+
+        if (multiplexed) {
+          // We rely on available(), which the streams of a socket channel
+          // don't support.
+          channel.configureBlocking(false);
+          socketInput = new ChannelInputStream(channel);
+          socketOutput = new ChannelOutputStream(channel);
+        }
+        else {
+          socketInput = localSocket.getInputStream();
+          socketOutput = localSocket.getOutputStream();
+        }
+
         final BufferedInputStream in =
-          new BufferedInputStream(localSocket.getInputStream(), buffer.length);
+          new BufferedInputStream(socketInput, buffer.length);
 
         in.mark(buffer.length);
 
@@ -229,8 +255,7 @@ public final class HTTPProxyTCPProxyEngine extends AbstractTCPProxyEngine {
                 "Client opened connection but sent no bytes.");
             }
 
-            sendHTTPErrorResponse(message, "400 Bad Request",
-                                  localSocket.getOutputStream());
+            sendHTTPErrorResponse(message, "400 Bad Request", socketOutput);
 
             localSocket.close();
 
@@ -249,11 +274,18 @@ public final class HTTPProxyTCPProxyEngine extends AbstractTCPProxyEngine {
             // Reset stream to beginning of request.
             in.reset();
 
-            new StreamThread(
+            if (multiplexed) {
               new HTTPProxyStreamDemultiplexer(
-                in, localSocket, EndPoint.clientEndPoint(localSocket)),
-              "HTTPProxyStreamDemultiplexer for " + localSocket,
-              in).start();
+                getMultiplexer().add(channel, null),
+                EndPoint.clientEndPoint(localSocket)).start(in, buffer);
+            }
+            else {
+              new StreamThread(
+                new HTTPProxyStreamDemultiplexer(
+                  in, localSocket, EndPoint.clientEndPoint(localSocket)),
+                "HTTPProxyStreamDemultiplexer for " + localSocket,
+                in).start();
+            }
 
             break;
           }
@@ -274,11 +306,9 @@ public final class HTTPProxyTCPProxyEngine extends AbstractTCPProxyEngine {
               new EndPoint(httpsConnectMatcher.group(1),
                            Integer.parseInt(httpsConnectMatcher.group(2)));
 
-            final OutputStream out = localSocket.getOutputStream();
-
             m_delegateSSLEngine.prepareNewConnection(
               in,
-              out,
+              socketOutput,
               EndPoint.clientEndPoint(localSocket),
               remoteEndPoint);
 
@@ -299,7 +329,8 @@ public final class HTTPProxyTCPProxyEngine extends AbstractTCPProxyEngine {
 
             new StreamThread(
               new StreamCopier(4096, true)
-                .getInterruptibleRunnable(sslProxySocket.getInputStream(), out),
+                .getInterruptibleRunnable(sslProxySocket.getInputStream(),
+                                          socketOutput),
               "Copy from proxy engine for " + remoteEndPoint,
               sslProxySocket.getInputStream()).start();
 
@@ -317,8 +348,7 @@ public final class HTTPProxyTCPProxyEngine extends AbstractTCPProxyEngine {
               "Buffer overflow - failed to match HTTP message after " +
               buffer.length + " bytes");
 
-            sendHTTPErrorResponse(message, "400 Bad Request",
-              localSocket.getOutputStream());
+            sendHTTPErrorResponse(message, "400 Bad Request", socketOutput);
 
             break;
           }
@@ -377,24 +407,42 @@ public final class HTTPProxyTCPProxyEngine extends AbstractTCPProxyEngine {
   }
 
   /**
-   * Runnable that actively reads from an Input stream, greps every
-   * outgoing packet, and directs appropriately. This is necessary to
-   * support HTTP/1.1 between the browser and TCPProxy.
+   * Reads from the browser connection, greps every outgoing packet, and
+   * directs appropriately. This is necessary to support HTTP/1.1 between the
+   * browser and TCPProxy.
+   *
+   * <p>Runs either as a thread that reads from an input stream, or as the
+   * handler for a multiplexed connection.</p>
    */
   private final class HTTPProxyStreamDemultiplexer
-    implements InterruptibleRunnable {
+    implements InterruptibleRunnable, ChannelMultiplexer.Handler {
 
     private final InputStream m_in;
     private final Socket m_localSocket;
+    private final ChannelMultiplexer.Connection m_localConnection;
+    private final OutputStream m_localOutputStream;
     private final EndPoint m_clientEndPoint;
     private final Map<String, OutputStreamFilterTee> m_remoteStreamMap =
       new HashMap<String, OutputStreamFilterTee>();
     private OutputStreamFilterTee m_lastRemoteStream;
 
     HTTPProxyStreamDemultiplexer(final InputStream in, final Socket localSocket,
-                                 final EndPoint clientEndPoint) {
+                                 final EndPoint clientEndPoint)
+      throws IOException {
       m_in = in;
       m_localSocket = localSocket;
+      m_localConnection = null;
+      m_localOutputStream = localSocket.getOutputStream();
+      m_clientEndPoint = clientEndPoint;
+    }
+
+    HTTPProxyStreamDemultiplexer(
+      final ChannelMultiplexer.Connection localConnection,
+      final EndPoint clientEndPoint) {
+      m_in = null;
+      m_localSocket = null;
+      m_localConnection = localConnection;
+      m_localOutputStream = localConnection.getOutputStream();
       m_clientEndPoint = clientEndPoint;
     }
 
@@ -417,125 +465,225 @@ public final class HTTPProxyTCPProxyEngine extends AbstractTCPProxyEngine {
             break;
           }
 
-          final String bytesReadAsString =
-            new String(buffer, 0, bytesRead, "US-ASCII");
+          demultiplex(buffer, bytesRead);
+        }
+      }
+      catch (final IOException e) {
+        reportFailure(e);
+      }
+      finally {
+        connectionClosed();
+      }
+    }
 
-          final Matcher matcher =
-            m_httpConnectPattern.matcher(bytesReadAsString);
+    /**
+     * Pass on the data that has already been read from the browser, then
+     * have the multiplexer deliver the rest.
+     *
+     * @param in
+     *          Stream holding the data that has been read.
+     * @param buffer
+     *          Buffer to use.
+     */
+    public void start(final InputStream in, final byte[] buffer) {
+      try {
+        while (in.available() > 0) {
+          demultiplex(buffer, in.read(buffer));
+        }
+      }
+      catch (final IOException e) {
+        reportFailure(e);
+        connectionClosed();
+        return;
+      }
 
-          if (matcher.find()) {
+      m_localConnection.read(this);
+    }
 
-            final String remoteHost = matcher.group(2);
+    @Override
+    public void handle(final byte[] buffer, final int bytesRead)
+      throws IOException {
 
-            int remotePort = 80;
+      try {
+        demultiplex(buffer, bytesRead);
+      }
+      catch (final IOException e) {
+        reportFailure(e);
+        throw e;
+      }
+    }
 
-            try {
-              remotePort = Integer.parseInt(matcher.group(3));
-            }
-            catch (final NumberFormatException e) {
-              // remotePort = 80;
-            }
+    private void demultiplex(final byte[] buffer, final int bytesRead)
+      throws IOException {
 
-            final EndPoint remoteEndPoint =
-              new EndPoint(remoteHost, remotePort);
-
-            final String key = remoteEndPoint.toString();
-
-            m_lastRemoteStream = m_remoteStreamMap.get(key);
-
-            if (m_lastRemoteStream == null) {
-
-              // New connection.
-
-              final Socket remoteSocket;
-              final TCPProxyFilter requestFilter;
-
-              if (m_chainedHTTPProxy != null) {
-                // When running through a chained HTTP proxy, we still
-                // create a new thread pair to handle each target
-                // server. This allows us to reuse
-                // FilteredStreamThread and OutputStreamFilterTee to
-                // log the correct connection details. It may also be
-                // beneficial for performance.
-                remoteSocket =
-                  getSocketFactory().createClientSocket(m_chainedHTTPProxy);
-
-                requestFilter =
-                  new HTTPMethodAbsoluteURIFilterDecorator(
-                    new HTTPMethodRelativeURIFilterDecorator(
-                      getRequestFilter()), remoteEndPoint);
-              }
-              else {
-                remoteSocket =
-                  getSocketFactory().createClientSocket(remoteEndPoint);
-
-                requestFilter =
-                  new HTTPMethodRelativeURIFilterDecorator(getRequestFilter());
-              }
-
-              final ConnectionDetails connectionDetails =
-                new ConnectionDetails(m_clientEndPoint, remoteEndPoint, false);
-
-              m_lastRemoteStream =
-                new OutputStreamFilterTee(connectionDetails,
-                                          remoteSocket.getOutputStream(),
-                                          requestFilter,
-                                          getRequestColour());
-
-              m_lastRemoteStream.connectionOpened();
-
-              m_remoteStreamMap.put(key, m_lastRemoteStream);
-
-              // Spawn a thread to handle everything coming back from
-              // the remote server.
-              new FilteredStreamThread(
-                remoteSocket.getInputStream(),
-                new OutputStreamFilterTee(connectionDetails.getOtherEnd(),
-                                          m_localSocket.getOutputStream(),
-                                          getResponseFilter(),
-                                          getResponseColour()));
-            }
+      final String bytesReadAsString =
+        new String(buffer, 0, bytesRead, "US-ASCII");
+
+      final Matcher matcher =
+        m_httpConnectPattern.matcher(bytesReadAsString);
+
+      if (matcher.find()) {
+
+        final String remoteHost = matcher.group(2);
+
+        int remotePort = 80;
+
+        try {
+          remotePort = Integer.parseInt(matcher.group(3));
+        }
+        catch (final NumberFormatException e) {
+          // remotePort = 80;
+        }
+
+        final EndPoint remoteEndPoint =
+          new EndPoint(remoteHost, remotePort);
+
+        final String key = remoteEndPoint.toString();
+
+        m_lastRemoteStream = m_remoteStreamMap.get(key);
+
+        if (m_lastRemoteStream == null) {
+
+          // New connection.
+
+          final EndPoint connectEndPoint;
+          final TCPProxyFilter requestFilter;
+
+          if (m_chainedHTTPProxy != null) {
+            // When running through a chained HTTP proxy, we still
+            // create a new thread pair to handle each target
+            // server. This allows us to reuse
+            // FilteredStreamThread and OutputStreamFilterTee to
+            // log the correct connection details. It may also be
+            // beneficial for performance.
+            connectEndPoint = m_chainedHTTPProxy;
+
+            requestFilter =
+              new HTTPMethodAbsoluteURIFilterDecorator(
+                new HTTPMethodRelativeURIFilterDecorator(
+                  getRequestFilter()), remoteEndPoint);
+          }
+          else {
+            connectEndPoint = remoteEndPoint;
+
+            requestFilter =
+              new HTTPMethodRelativeURIFilterDecorator(getRequestFilter());
           }
-          else if (m_lastRemoteStream == null) {
-            throw new AssertionError("No last stream");
+
+          final ConnectionDetails connectionDetails =
+            new ConnectionDetails(m_clientEndPoint, remoteEndPoint, false);
+
+          final Socket remoteSocket;
+          final ChannelMultiplexer.Connection remoteConnection;
+          final OutputStream remoteOutputStream;
+
+          if (m_localConnection != null) {
+            // We're on a selector thread, so connect without blocking. The
+            // request is queued until the connection is established.
+            remoteSocket = null;
+            remoteConnection =
+              getMultiplexer().connect(
+                connectEndPoint.getHost(),
+                connectEndPoint.getPort(),
+                m_localConnection,
+                new ChannelMultiplexer.ConnectHandler() {
+                  @Override
+                  public void connectFailed(final IOException e) {
+                    if (e instanceof ConnectException) {
+                      reportFailure(
+                        new VerboseConnectException(
+                          (ConnectException) e, connectEndPoint.toString()));
+                    }
+                    else {
+                      reportFailure(e);
+                    }
+
+                    m_localConnection.close();
+                  }
+                });
+            remoteOutputStream = remoteConnection.getOutputStream();
           }
+          else {
+            remoteSocket =
+              getSocketFactory().createClientSocket(connectEndPoint);
+            remoteConnection = null;
+            remoteOutputStream = remoteSocket.getOutputStream();
+          }
+
+          m_lastRemoteStream =
+            new OutputStreamFilterTee(connectionDetails,
+                                      remoteOutputStream,
+                                      requestFilter,
+                                      getRequestColour());
+
+          m_lastRemoteStream.connectionOpened();
+
+          m_remoteStreamMap.put(key, m_lastRemoteStream);
+
+          final OutputStreamFilterTee responseStream =
+            new OutputStreamFilterTee(connectionDetails.getOtherEnd(),
+                                      m_localOutputStream,
+                                      getResponseFilter(),
+                                      getResponseColour());
 
-          // Should do filtering etc.
-          m_lastRemoteStream.handle(buffer, bytesRead);
+          if (remoteConnection != null) {
+            // Everything coming back from the remote server is multiplexed.
+            startReading(remoteConnection, responseStream);
+          }
+          else {
+            // Spawn a thread to handle everything coming back from
+            // the remote server.
+            new FilteredStreamThread(remoteSocket.getInputStream(),
+                                     responseStream);
+          }
         }
       }
-      catch (final IOException e) {
-        // Perhaps we should decorate the OutputStreamFilterTee's so
-        // that we can return exceptions as some simple HTTP error
-        // page?
-        UncheckedInterruptedException.ioException(e);
-        final String description = logIOException(e);
+      else if (m_lastRemoteStream == null) {
+        throw new AssertionError("No last stream");
+      }
 
-        final HTMLElement message = new HTMLElement();
-        message.addElement("p").addText(description);
+      // Should do filtering etc.
+      m_lastRemoteStream.handle(buffer, bytesRead);
+    }
 
-        try {
-          // Should probably return other types of status code.
-          sendHTTPErrorResponse(
-            message, "502 Bad Gateway", m_localSocket.getOutputStream());
-        }
-        catch (final IOException e2) {
-          // Ignore.
-          UncheckedInterruptedException.ioException(e2);
-        }
+    private void reportFailure(final IOException e) {
+      // Perhaps we should decorate the OutputStreamFilterTee's so
+      // that we can return exceptions as some simple HTTP error
+      // page?
+      UncheckedInterruptedException.ioException(e);
+      final String description = logIOException(e);
+
+      final HTMLElement message = new HTMLElement();
+      message.addElement("p").addText(description);
+
+      try {
+        // Should probably return other types of status code.
+        sendHTTPErrorResponse(
+          message, "502 Bad Gateway", m_localOutputStream);
       }
-      finally {
-        // When exiting, close all our outgoing streams. This will
-        // force all the FilteredStreamThreads we've launched to
-        // handle the paired streams to shut down.
-        for (final OutputStreamFilterTee s : m_remoteStreamMap.values()) {
-          s.connectionClosed();
-        }
+      catch (final IOException e2) {
+        // Ignore.
+        UncheckedInterruptedException.ioException(e2);
+      }
+    }
 
-        // We may not have any FilteredStreamThreads, so ensure the
-        // local socket is closed. The local socket is shutdown on any
-        // error, any browser using us will open up a new connection
-        // for new work.
+    @Override
+    public void connectionClosed() {
+      // When exiting, close all our outgoing streams. This will
+      // force all the FilteredStreamThreads we've launched to
+      // handle the paired streams to shut down.
+      for (final OutputStreamFilterTee s : m_remoteStreamMap.values()) {
+        s.connectionClosed();
+      }
+
+      // We may not have any FilteredStreamThreads, so ensure the
+      // local socket is closed. The local socket is shutdown on any
+      // error, any browser using us will open up a new connection
+      // for new work.
+      if (m_localConnection != null) {
+        m_localConnection.close();
+      }
+      else {
         try {
           m_localSocket.close();
         }
@@ -70,8 +70,10 @@ public final class PortForwarderTCPProxyEngine extends AbstractTCPProxyEngine {
                                      boolean useColour,
                                      int timeout) throws IOException {
 
-    this(new TCPProxySocketFactoryImplementation(), requestFilter,
-         responseFilter, output, logger, connectionDetails, useColour, timeout);
+    this(new TCPProxySocketFactoryImplementation(
+           getNumberOfSelectorThreads() > 0),
+         requestFilter, responseFilter, output, logger, connectionDetails,
+         useColour, timeout);
   }
 
   /**
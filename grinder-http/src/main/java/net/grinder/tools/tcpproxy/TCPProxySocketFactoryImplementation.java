@@ -25,8 +25,13 @@ package net.grinder.tools.tcpproxy;
 import java.io.IOException;
 import java.net.ConnectException;
 import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+import net.grinder.common.Closer;
 
 
 
@@ -38,6 +43,26 @@ import java.net.Socket;
 final class TCPProxySocketFactoryImplementation
   implements TCPProxySocketFactory {
 
+  private final boolean m_useChannels;
+
+  /**
+   * Constructor.
+   */
+  public TCPProxySocketFactoryImplementation() {
+    this(false);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param useChannels
+   *          If {@code true}, create sockets that have channels, so that
+   *          connections can be handled by a {@link ChannelMultiplexer}.
+   */
+  public TCPProxySocketFactoryImplementation(boolean useChannels) {
+    m_useChannels = useChannels;
+  }
+
   /**
    * Factory method for server sockets.
    *
@@ -49,9 +74,24 @@ final class TCPProxySocketFactoryImplementation
   public ServerSocket createServerSocket(EndPoint localEndPoint, int timeout)
     throws IOException {
 
-    final ServerSocket socket =
-      new ServerSocket(localEndPoint.getPort(), 50,
-                       InetAddress.getByName(localEndPoint.getHost()));
+    final InetAddress address = InetAddress.getByName(localEndPoint.getHost());
+    final ServerSocket socket;
+
+    if (m_useChannels) {
+      socket = ServerSocketChannel.open().socket();
+
+      try {
+        socket.bind(new InetSocketAddress(address, localEndPoint.getPort()),
+                    50);
+      }
+      catch (IOException e) {
+        socket.close();
+        throw e;
+      }
+    }
+    else {
+      socket = new ServerSocket(localEndPoint.getPort(), 50, address);
+    }
 
     socket.setSoTimeout(timeout);
 
@@ -69,6 +109,26 @@ final class TCPProxySocketFactoryImplementation
     throws IOException {
 
     try {
+      if (m_useChannels) {
+        // Resolve the address first so failures are reported with an
+        // UnknownHostException, as for a plain Socket.
+        final InetSocketAddress address =
+          new InetSocketAddress(InetAddress.getByName(remoteEndPoint.getHost()),
+                                remoteEndPoint.getPort());
+
+        final SocketChannel channel = SocketChannel.open();
+
+        try {
+          channel.connect(address);
+        }
+        catch (IOException e) {
+          Closer.close(channel.socket());
+          throw e;
+        }
+
+        return channel.socket();
+      }
+
       return new Socket(remoteEndPoint.getHost(), remoteEndPoint.getPort());
     }
     catch (ConnectException e) {
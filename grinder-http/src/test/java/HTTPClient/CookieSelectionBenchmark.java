@@ -0,0 +1,171 @@
+// Copyright (C) 2013 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package HTTPClient;
+
+import java.util.Enumeration;
+import java.util.Hashtable;
+import java.util.Vector;
+
+
+/**
+ * Compares the cost of selecting the cookies for a request from a
+ * {@link CookieModule.CookieStore} with the linear scan of a per-context
+ * {@code Hashtable} that {@link CookieModule} used to perform.
+ *
+ * <p>
+ * This is not a unit test. Run it by hand:
+ * </p>
+ *
+ * <pre>
+ * java -cp ... HTTPClient.CookieSelectionBenchmark
+ * </pre>
+ *
+ * <p>
+ * Each context holds the given number of cookies, spread over hosts with
+ * ten cookies each, split between two paths. Each request matches the
+ * cookies of one host and path.
+ * </p>
+ *
+ * @author Philip Aston
+ */
+public class CookieSelectionBenchmark {
+
+  private static final int[] COOKIES = { 10, 100, 1000 };
+  private static final int COOKIES_PER_HOST = 10;
+  private static final long WARM_UP_MILLIS = 2000;
+  private static final long MEASURE_MILLIS = 5000;
+
+  public static void main(String[] args) throws Exception {
+    System.out.printf("%8s %18s %18s %8s%n",
+                      "cookies", "scan (ns/op)", "indexed (ns/op)", "ratio");
+
+    for (int n : COOKIES) {
+      final Hashtable<Cookie, Cookie> table = new Hashtable<Cookie, Cookie>();
+      final CookieModule.CookieStore store = new CookieModule.CookieStore();
+
+      final int hosts = Math.max(n / COOKIES_PER_HOST, 1);
+
+      for (int i = 0; i < n; ++i) {
+        final Cookie cookie =
+          new Cookie("c" + i,
+                     "v",
+                     "host" + (i % hosts) + ".example.com",
+                     i % 2 == 0 ? "/" : "/app",
+                     null,
+                     false);
+        table.put(cookie, cookie);
+        store.put(cookie);
+      }
+
+      final Request[] requests = new Request[hosts];
+
+      for (int i = 0; i < hosts; ++i) {
+        requests[i] =
+          TestCookieModule.request("http://host" + i + ".example.com",
+                                   "/app/page");
+      }
+
+      final double scan = time(new Runnable() {
+          private int m_i;
+
+          public void run() {
+            scan(table, requests[m_i++ % requests.length]);
+          }
+        });
+
+      final double indexed = time(new Runnable() {
+          private int m_i;
+
+          public void run() {
+            store.select(requests[m_i++ % requests.length]);
+          }
+        });
+
+      System.out.printf("%8d %18.0f %18.0f %8.2f%n",
+                        n, scan, indexed, scan / indexed);
+    }
+  }
+
+  /**
+   * The selection loop from the original CookieModule.requestHandler().
+   */
+  private static Vector<String> scan(Hashtable<Cookie, Cookie> cookie_list,
+                                     Request req) {
+    final Vector<String> names = new Vector<String>();
+    final Vector<Integer> lens = new Vector<Integer>();
+
+    synchronized (cookie_list) {
+      final Enumeration<Cookie> list = cookie_list.elements();
+
+      while (list.hasMoreElements()) {
+        final Cookie cookie = list.nextElement();
+
+        if (cookie.hasExpired()) {
+          continue;
+        }
+
+        if (cookie.sendWith(req)) {
+          final int len = cookie.getPath().length();
+          int idx;
+
+          for (idx = 0; idx < lens.size(); idx++) {
+            if (lens.elementAt(idx).intValue() < len) {
+              break;
+            }
+          }
+
+          names.insertElementAt(cookie.toExternalForm(), idx);
+          lens.insertElementAt(len, idx);
+        }
+      }
+    }
+
+    return names;
+  }
+
+  private static double time(Runnable operation) {
+    final long warmUpEnd = System.nanoTime() + WARM_UP_MILLIS * 1000000;
+
+    while (System.nanoTime() < warmUpEnd) {
+      for (int i = 0; i < 1000; ++i) {
+        operation.run();
+      }
+    }
+
+    final long start = System.nanoTime();
+    final long end = start + MEASURE_MILLIS * 1000000;
+    long operations = 0;
+    long now;
+
+    do {
+      for (int i = 0; i < 1000; ++i) {
+        operation.run();
+      }
+
+      operations += 1000;
+      now = System.nanoTime();
+    }
+    while (now < end);
+
+    return (now - start) / (double) operations;
+  }
+}
@@ -0,0 +1,210 @@
+// Copyright (C) 2013 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package HTTPClient;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+
+/**
+ * Measures the bytes allocated by the client thread for each request of a
+ * keep-alive GET loop against a local server.
+ *
+ * <p>
+ * This is not a unit test. Run it by hand:
+ * </p>
+ *
+ * <pre>
+ * java -cp ... HTTPClient.ResponseAllocationBenchmark
+ * </pre>
+ *
+ * <p>
+ * Requires a HotSpot JVM that supports thread allocation accounting. To
+ * compare implementations, run it against each build of HTTPClient.
+ * </p>
+ *
+ * @author Philip Aston
+ */
+public class ResponseAllocationBenchmark {
+
+  private static final int BODY_SIZE = 16 * 1024;
+  private static final int CHUNK_SIZE = 1024;
+  private static final int WARM_UP_REQUESTS = 20000;
+  private static final int MEASURE_REQUESTS = 50000;
+
+  public static void main(String[] args) throws Exception {
+    final byte[] body = new byte[BODY_SIZE];
+
+    final byte[] fixed = fixedLengthResponse(body);
+    final byte[] chunked = chunkedResponse(body);
+
+    System.out.printf("%-30s %16s %12s%n",
+                      "scenario", "bytes/request", "us/request");
+
+    run("content-length, getData()", fixed, false);
+    run("chunked, getData()", chunked, false);
+    run("chunked, skip()", chunked, true);
+  }
+
+  private static void run(String name, byte[] response, final boolean skip)
+    throws Exception {
+
+    final ServerSocket serverSocket = new ServerSocket(0);
+
+    final Thread server = new Thread(new Server(serverSocket, response));
+    server.setDaemon(true);
+    server.start();
+
+    final HTTPConnection connection =
+      new HTTPConnection("localhost", serverSocket.getLocalPort());
+
+    final Runnable get = new Runnable() {
+        public void run() {
+          try {
+            final HTTPResponse response = connection.Get("/");
+
+            if (skip) {
+              final InputStream in = response.getInputStream();
+
+              while (in.skip(BODY_SIZE) > 0) { }
+
+              in.close();
+            }
+            else {
+              response.getData();
+            }
+          }
+          catch (Exception e) {
+            throw new AssertionError(e);
+          }
+        }
+      };
+
+    for (int i = 0; i < WARM_UP_REQUESTS; ++i) {
+      get.run();
+    }
+
+    final com.sun.management.ThreadMXBean threadMXBean =
+      (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    final long threadID = Thread.currentThread().getId();
+
+    final long allocatedBefore = threadMXBean.getThreadAllocatedBytes(threadID);
+    final long start = System.nanoTime();
+
+    for (int i = 0; i < MEASURE_REQUESTS; ++i) {
+      get.run();
+    }
+
+    final long time = System.nanoTime() - start;
+    final long allocated =
+      threadMXBean.getThreadAllocatedBytes(threadID) - allocatedBefore;
+
+    System.out.printf("%-30s %16d %12.1f%n",
+                      name,
+                      allocated / MEASURE_REQUESTS,
+                      time / 1000d / MEASURE_REQUESTS);
+
+    connection.stop();
+    serverSocket.close();
+  }
+
+  private static byte[] fixedLengthResponse(byte[] body) throws IOException {
+    final ByteArrayOutputStream result = new ByteArrayOutputStream();
+
+    result.write(("HTTP/1.1 200 OK\r\n" +
+                  "Content-Length: " + body.length + "\r\n" +
+                  "\r\n").getBytes("ISO-8859-1"));
+    result.write(body);
+
+    return result.toByteArray();
+  }
+
+  private static byte[] chunkedResponse(byte[] body) throws IOException {
+    final ByteArrayOutputStream result = new ByteArrayOutputStream();
+
+    result.write(("HTTP/1.1 200 OK\r\n" +
+                  "Transfer-Encoding: chunked\r\n" +
+                  "\r\n").getBytes("ISO-8859-1"));
+
+    for (int i = 0; i < body.length; i += CHUNK_SIZE) {
+      final int length = Math.min(CHUNK_SIZE, body.length - i);
+
+      result.write((Integer.toHexString(length) + "\r\n")
+                   .getBytes("ISO-8859-1"));
+      result.write(body, i, length);
+      result.write("\r\n".getBytes("ISO-8859-1"));
+    }
+
+    result.write("0\r\n\r\n".getBytes("ISO-8859-1"));
+
+    return result.toByteArray();
+  }
+
+  /**
+   * Answers every request on every connection with the same response.
+   */
+  private static final class Server implements Runnable {
+    private final ServerSocket m_serverSocket;
+    private final byte[] m_response;
+
+    public Server(ServerSocket serverSocket, byte[] response) {
+      m_serverSocket = serverSocket;
+      m_response = response;
+    }
+
+    public void run() {
+      try {
+        while (true) {
+          final Socket socket = m_serverSocket.accept();
+          final InputStream in =
+            new java.io.BufferedInputStream(socket.getInputStream());
+          final OutputStream out = socket.getOutputStream();
+
+          // Requests have no body, so each ends with a blank line.
+          int matched = 0;
+          int b;
+
+          while ((b = in.read()) != -1) {
+            matched = b == (matched % 2 == 0 ? '\r' : '\n') ? matched + 1 :
+                      b == '\r' ? 1 : 0;
+
+            if (matched == 4) {
+              out.write(m_response);
+              out.flush();
+              matched = 0;
+            }
+          }
+
+          socket.close();
+        }
+      }
+      catch (IOException e) {
+        // Server socket closed.
+      }
+    }
+  }
+}
@@ -0,0 +1,129 @@
+// Copyright (C) 2013 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package HTTPClient;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.InputStream;
+
+import org.junit.Test;
+
+
+/**
+ * Unit tests for our modifications to reduce allocation when reading
+ * responses.
+ *
+ * @author Philip Aston
+ */
+public class TestBufferPooling {
+
+  private static InputStream stream(String s) throws Exception {
+    return new ByteArrayInputStream(s.getBytes("ISO-8859-1"));
+  }
+
+  @Test public void testGetChunkLength() throws Exception {
+    assertEquals(0, Codecs.getChunkLength(stream("0\r\n")));
+    assertEquals(0x1a, Codecs.getChunkLength(stream("1A\r\n")));
+    assertEquals(0x1a, Codecs.getChunkLength(stream(" \t1a \n")));
+    assertEquals(0xff, Codecs.getChunkLength(stream("ff;name=value\r\n")));
+    assertEquals(Long.MAX_VALUE,
+                 Codecs.getChunkLength(stream("7fffffffffffffff\r\n")));
+
+    final InputStream in = stream("10\r\nrest");
+    assertEquals(16, Codecs.getChunkLength(in));
+    assertEquals('r', in.read());
+
+    final String[] bad = {
+      "x1\r\n", "1x\r\n", "-1\r\n", "\r\n", "1\rx", "8000000000000000\r\n",
+    };
+
+    for (String s : bad) {
+      try {
+        Codecs.getChunkLength(stream(s));
+        fail("Expected ParseException for " + s);
+      }
+      catch (ParseException e) {
+      }
+    }
+
+    try {
+      Codecs.getChunkLength(stream("1"));
+      fail("Expected EOFException");
+    }
+    catch (EOFException e) {
+    }
+  }
+
+  @Test public void testBufferPool() throws Exception {
+    final byte[] buffer = Util.acquireBuffer();
+    assertEquals(Util.IO_BUFFER_SIZE, buffer.length);
+
+    Util.releaseBuffer(buffer);
+    Util.releaseBuffer(new byte[10]);
+
+    // The pool is shared, so another test might have taken our buffer.
+    final byte[] buffer2 = Util.acquireBuffer();
+    assertEquals(Util.IO_BUFFER_SIZE, buffer2.length);
+    Util.releaseBuffer(buffer2);
+  }
+
+  @Test public void testAccumulator() throws Exception {
+    final byte[] a = Util.takeAccumulator();
+    final byte[] b = Util.takeAccumulator();
+    assertNotSame(a, b);
+
+    Util.returnAccumulator(a);
+    assertSame(a, Util.takeAccumulator());
+
+    Util.returnAccumulator(new byte[10 * 1024 * 1024]);
+    assertNotSame(a, Util.takeAccumulator());
+  }
+
+  @Test public void testBufferedInputStreamRelease() throws Exception {
+    final BufferedInputStream in =
+      new BufferedInputStream(stream("Hello world"));
+
+    assertEquals('H', in.read());
+    in.releaseBuffer();
+    in.releaseBuffer();
+
+    final byte[] b = new byte[10];
+    assertEquals(-1, in.read(b, 0, b.length));
+    assertEquals(-1, in.read());
+  }
+
+  @Test public void testDiscard() throws Exception {
+    final InputStream in = stream("Hello world");
+
+    assertEquals(11, Util.discard(in, 100));
+    assertEquals(-1, Util.discard(in, 100));
+
+    final InputStream big =
+      new ByteArrayInputStream(new byte[Util.IO_BUFFER_SIZE * 2]);
+    assertEquals(Util.IO_BUFFER_SIZE, Util.discard(big, Long.MAX_VALUE));
+  }
+}
@@ -0,0 +1,189 @@
+// Copyright (C) 2013 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package HTTPClient;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Test;
+
+
+/**
+ * Unit tests for our modifications to {@link CookieModule}.
+ *
+ * @author Philip Aston
+ */
+public class TestCookieModule {
+
+  private final Object m_context = new Object();
+
+  @After public void tearDown() {
+    CookieModule.discardAllCookies(m_context);
+  }
+
+  @Test public void testCookieStore() throws Exception {
+    final CookieModule.CookieStore store = new CookieModule.CookieStore();
+    assertEquals(0, store.size());
+    assertEquals(0, store.toArray().length);
+
+    final Cookie c1 = new Cookie("a", "1", "foo.com", "/", null, false);
+    final Cookie c2 = new Cookie("b", "2", ".foo.com", "/x", null, false);
+    final Cookie c1b = new Cookie("a", "3", "foo.com", "/", null, false);
+
+    store.put(c1);
+    store.put(c2);
+    assertEquals(2, store.size());
+    assertSame(c1, store.get(c1b));
+
+    store.put(c1b);
+    assertEquals(2, store.size());
+    assertSame(c1b, store.get(c1));
+    assertEquals(new HashSet<Cookie>(Arrays.asList(c1b, c2)),
+                 new HashSet<Cookie>(Arrays.asList(store.toArray())));
+
+    store.remove(c1);
+    store.remove(c1);
+    assertEquals(1, store.size());
+    assertNull(store.get(c1));
+    assertArrayEquals(new Cookie[] { c2 }, store.toArray());
+
+    store.remove(c2);
+    assertEquals(0, store.size());
+  }
+
+  @Test public void testSelect() throws Exception {
+    final CookieModule.CookieStore store = new CookieModule.CookieStore();
+
+    final Cookie hostOnly = new Cookie("a", "1", "www.foo.com", "/", null,
+                                       false);
+    final Cookie domain = new Cookie("b", "1", ".foo.com", "/", null, false);
+    final Cookie deepPath = new Cookie("c", "1", ".foo.com", "/x/y", null,
+                                       false);
+    final Cookie path = new Cookie("d", "1", "www.foo.com", "/x", null,
+                                   false);
+    final Cookie otherPath = new Cookie("e", "1", "www.foo.com", "/z", null,
+                                        false);
+    final Cookie otherHost = new Cookie("f", "1", "foo.com", "/", null,
+                                        false);
+    final Cookie otherDomain = new Cookie("g", "1", ".bah.com", "/", null,
+                                          false);
+    final Cookie secure = new Cookie("h", "1", ".foo.com", "/", null, true);
+    final Cookie local = new Cookie("i", "1", "localhost.local", "/", null,
+                                    false);
+
+    for (Cookie c : new Cookie[] { hostOnly, domain, deepPath, path,
+                                   otherPath, otherHost, otherDomain, secure,
+                                   local, }) {
+      store.put(c);
+    }
+
+    final List<Cookie> selected =
+      store.select(request("http://www.foo.com", "/x/y/z"));
+
+    assertEquals(4, selected.size());
+    assertSame(deepPath, selected.get(0));
+    assertSame(path, selected.get(1));
+    assertEquals(new HashSet<Cookie>(Arrays.asList(hostOnly, domain)),
+                 new HashSet<Cookie>(selected.subList(2, 4)));
+
+    assertEquals(new HashSet<Cookie>(Arrays.asList(hostOnly, domain, secure)),
+                 new HashSet<Cookie>(
+                   store.select(request("https://www.foo.com", "/"))));
+
+    assertEquals(Arrays.asList(local),
+                 store.select(request("http://localhost", "/")));
+
+    assertEquals(0, store.select(request("http://foo.org", "/")).size());
+  }
+
+  @Test public void testLazyExpiry() throws Exception {
+    final CookieModule.CookieStore store = new CookieModule.CookieStore();
+
+    final Date past = new Date(System.currentTimeMillis() - 1000);
+
+    final Cookie expired = new Cookie("a", "1", "foo.com", "/", past, false);
+    final Cookie unmatched = new Cookie("b", "1", "bah.com", "/", past, false);
+    final Cookie live = new Cookie("c", "1", "foo.com", "/", null, false);
+
+    store.put(expired);
+    store.put(unmatched);
+    store.put(live);
+    assertEquals(3, store.size());
+
+    assertEquals(Arrays.asList(live),
+                 store.select(request("http://foo.com", "/")));
+
+    // Only the expired cookie that was examined has been removed.
+    assertEquals(2, store.size());
+    assertNull(store.get(expired));
+    assertSame(unmatched, store.get(unmatched));
+  }
+
+  @Test public void testRequestHandler() throws Exception {
+    final CookiePolicyHandler oldHandler =
+      CookieModule.setCookiePolicyHandler(null);
+
+    try {
+      CookieModule.addCookie(
+        new Cookie("a", "1", "www.foo.com", "/", null, false), m_context);
+      CookieModule.addCookie(
+        new Cookie("b", "2", "www.foo.com", "/x", null, false), m_context);
+      CookieModule.addCookie(
+        new Cookie("c", "3", "www.bah.com", "/", null, false), m_context);
+
+      assertEquals(3, CookieModule.listAllCookies(m_context).length);
+
+      final Request request = request("http://www.foo.com", "/x/y");
+      request.getConnection().setContext(m_context);
+      request.setHeaders(new NVPair[] { new NVPair("Cookie", "old") });
+
+      new CookieModule().requestHandler(request, null);
+
+      final NVPair[] headers = request.getHeaders();
+      assertEquals(2, headers.length);
+      assertEquals("Cookie", headers[0].getName());
+      assertEquals("b=2; a=1", headers[0].getValue());
+      assertEquals("Cookie2", headers[1].getName());
+
+      CookieModule.removeCookie(
+        new Cookie("b", "", "www.foo.com", "/x", null, false), m_context);
+      assertEquals(2, CookieModule.listAllCookies(m_context).length);
+    }
+    finally {
+      CookieModule.setCookiePolicyHandler(oldHandler);
+    }
+  }
+
+  static Request request(String url, String path) throws Exception {
+    final HTTPConnection connection = new HTTPConnection(new URI(url));
+    return new Request(connection, "GET", path, new NVPair[0], null, null,
+                       false);
+  }
+}
@@ -0,0 +1,303 @@
+// Copyright (C) 2013 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+
+package net.grinder.plugin.http;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import net.grinder.plugin.http.tcpproxyfilter.RegularExpressions;
+import net.grinder.plugin.http.tcpproxyfilter.RegularExpressionsImplementation;
+import net.grinder.util.AttributeStringParser;
+import net.grinder.util.AttributeStringParserImplementation;
+import net.grinder.util.StreamCopier;
+import net.grinder.util.http.URIParser;
+import net.grinder.util.http.URIParserImplementation;
+
+
+/**
+ * Compares the cost of extracting tokens from a page with
+ * {@link BodyTokenizer}, and with the regular expression scans that
+ * {@link HTTPUtilitiesImplementation} used before.
+ *
+ * <p>
+ * This is not a unit test. Run it by hand, passing the captured pages to
+ * use:
+ * </p>
+ *
+ * <pre>
+ * java -cp ... net.grinder.plugin.http.BodyTokenizerBenchmark page1.html ...
+ * </pre>
+ *
+ * <p>
+ * Pages are assumed to be UTF-8. If no pages are given, a generated page is
+ * used. For each page, the benchmark asks for a hidden input, a body input,
+ * and a body URI that are near the end of the page, and for a token that is
+ * not there, much as a script that handles a form would. Requires a HotSpot
+ * JVM that supports thread allocation accounting.
+ * </p>
+ *
+ * @author Philip Aston
+ */
+public class BodyTokenizerBenchmark {
+
+  private static final Charset UTF8 = Charset.forName("UTF-8");
+  private static final int WARM_UP_ITERATIONS = 2000;
+  private static final int MEASURE_ITERATIONS = 5000;
+
+  private static final URIParser s_uriParser = new URIParserImplementation();
+  private static final RegularExpressions s_regularExpressions =
+    new RegularExpressionsImplementation();
+  private static final AttributeStringParser s_attributeStringParser =
+    new AttributeStringParserImplementation();
+
+  private static int s_sink;
+
+  public static void main(String[] args) throws Exception {
+    final List<byte[]> pages = new ArrayList<byte[]>();
+    final List<String> names = new ArrayList<String>();
+
+    for (String arg : args) {
+      pages.add(read(new File(arg)));
+      names.add(new File(arg).getName());
+    }
+
+    if (pages.isEmpty()) {
+      pages.add(generatePage(200, 40).getBytes(UTF8));
+      names.add("generated");
+    }
+
+    System.out.printf("%-30s %10s %12s %18s%n",
+                      "page", "bytes", "us/page", "bytes alloc/page");
+
+    for (int i = 0; i < pages.size(); ++i) {
+      final byte[] page = pages.get(i);
+
+      for (final Extractor extractor : new Extractor[] {
+          new RegularExpressionExtractor(),
+          new TokenizerExtractor(), }) {
+        run(names.get(i) + " " + extractor, page, extractor);
+      }
+    }
+
+    // Keep the results live.
+    if (s_sink == 0) {
+      throw new AssertionError();
+    }
+  }
+
+  private static void run(String name, byte[] page, Extractor extractor) {
+    for (int i = 0; i < WARM_UP_ITERATIONS; ++i) {
+      extract(page, extractor);
+    }
+
+    final com.sun.management.ThreadMXBean threadMXBean =
+      (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    final long threadID = Thread.currentThread().getId();
+
+    final long allocatedBefore =
+      threadMXBean.getThreadAllocatedBytes(threadID);
+    final long start = System.nanoTime();
+
+    for (int i = 0; i < MEASURE_ITERATIONS; ++i) {
+      extract(page, extractor);
+    }
+
+    final long nanos = System.nanoTime() - start;
+    final long allocated =
+      threadMXBean.getThreadAllocatedBytes(threadID) - allocatedBefore;
+
+    System.out.printf("%-30s %10d %12.1f %18d%n",
+                      name,
+                      page.length,
+                      nanos / 1000d / MEASURE_ITERATIONS,
+                      allocated / MEASURE_ITERATIONS);
+  }
+
+  private static void extract(byte[] page, Extractor extractor) {
+    extractor.setPage(page);
+    s_sink += extractor.value(BodyTokenizer.HIDDEN_INPUT, "token").length();
+    s_sink += extractor.value(BodyTokenizer.INPUT, "query").length();
+    s_sink += extractor.value(BodyTokenizer.URI, "jsessionid").length();
+    s_sink += extractor.value(BodyTokenizer.HIDDEN_INPUT, "absent").length();
+  }
+
+  private interface Extractor {
+    void setPage(byte[] page);
+
+    String value(int kind, String name);
+  }
+
+  private static final class TokenizerExtractor implements Extractor {
+    private BodyTokenizer m_tokenizer;
+
+    @Override public void setPage(byte[] page) {
+      m_tokenizer = new BodyTokenizer(page, UTF8, s_uriParser);
+    }
+
+    @Override public String value(int kind, String name) {
+      final List<String> values = m_tokenizer.values(kind, name, 0, true);
+      return values.isEmpty() ? "" : values.get(0);
+    }
+
+    @Override public String toString() {
+      return "tokenizer";
+    }
+  }
+
+  /**
+   * The essentials of the previous implementation: decode the body, then
+   * scan it with a regular expression, parsing each match, until the token
+   * is found.
+   */
+  private static final class RegularExpressionExtractor implements Extractor {
+    private String m_body;
+
+    @Override public void setPage(byte[] page) {
+      m_body = new String(page, UTF8);
+    }
+
+    @Override public String value(int kind, final String name) {
+      final Pattern pattern;
+
+      switch (kind) {
+        case BodyTokenizer.INPUT:
+          pattern = s_regularExpressions.getInputPattern();
+          break;
+        case BodyTokenizer.HIDDEN_INPUT:
+          pattern = s_regularExpressions.getHiddenInputPattern();
+          break;
+        default:
+          pattern = s_regularExpressions.getHyperlinkURIPattern();
+      }
+
+      final Matcher matcher = pattern.matcher(m_body);
+
+      while (matcher.find()) {
+        if (kind == BodyTokenizer.URI) {
+          final String[] result = { null };
+
+          s_uriParser.parse(matcher.group(1),
+                            new URIParser.AbstractParseListener() {
+              @Override
+              public boolean pathParameterNameValue(String n, String v) {
+                return check(n, v);
+              }
+
+              @Override
+              public boolean queryStringNameValue(String n, String v) {
+                return check(n, v);
+              }
+
+              private boolean check(String n, String v) {
+                if (n.equals(name)) {
+                  result[0] = v;
+                  return false;
+                }
+
+                return true;
+              }
+            });
+
+          if (result[0] != null) {
+            return result[0];
+          }
+        }
+        else {
+          final AttributeStringParser.AttributeMap map =
+            s_attributeStringParser.parse(matcher.group());
+
+          if (name.equals(map.get("name")) && map.get("value") != null) {
+            return map.get("value");
+          }
+        }
+      }
+
+      return "";
+    }
+
+    @Override public String toString() {
+      return "regex";
+    }
+  }
+
+  private static byte[] read(File file) throws Exception {
+    final InputStream in = new FileInputStream(file);
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    new StreamCopier(4096, true).copy(in, out);
+    return out.toByteArray();
+  }
+
+  /**
+   * A page shaped like a typical application page: navigation links,
+   * paragraphs of text, and a form at the end.
+   */
+  private static String generatePage(int links, int paragraphs) {
+    final StringBuilder result = new StringBuilder();
+
+    result.append("<!DOCTYPE html>\n<html>\n<head><title>Page</title>\n");
+    result.append("<link rel='stylesheet' href='/css/site.css'>\n");
+    result.append("</head>\n<body>\n<ul class=\"nav\">\n");
+
+    for (int i = 0; i < links; ++i) {
+      result.append("  <li><a class=\"nav-item\" href=\"/app/item");
+      result.append(i);
+      result.append("?category=").append(i % 7);
+      result.append("&amp;sort=name\">Item ").append(i);
+      result.append("</a></li>\n");
+    }
+
+    result.append("</ul>\n");
+
+    for (int i = 0; i < paragraphs; ++i) {
+      result.append("<p>Lorem ipsum dolor sit amet, consectetur ");
+      result.append("adipiscing elit, sed do eiusmod tempor incididunt ut ");
+      result.append("labore et dolore magna aliqua. <b>Ut enim</b> ad ");
+      result.append("minim veniam, quis nostrud exercitation ullamco ");
+      result.append("laboris nisi ut aliquip ex ea commodo consequat.</p>\n");
+    }
+
+    result.append("<form method='post' action='/app/submit'>\n");
+
+    for (int i = 0; i < 10; ++i) {
+      result.append("  <input type='text' name='field").append(i);
+      result.append("' value='").append(i).append("'>\n");
+    }
+
+    result.append("  <input type=\"text\" name=\"query\" value=\"q\">\n");
+    result.append("  <input type=\"hidden\" name=\"token\" ");
+    result.append("value=\"d41d8cd98f00b204e9800998ecf8427e\">\n");
+    result.append("</form>\n");
+    result.append("<a href='/app/logout;jsessionid=A1B2C3'>Log out</a>\n");
+    result.append("</body>\n</html>\n");
+
+    return result.toString();
+  }
+}
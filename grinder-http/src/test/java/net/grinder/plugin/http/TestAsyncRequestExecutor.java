@@ -0,0 +1,235 @@
+// Copyright (C) 2013 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.grinder.plugin.http;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.grinder.util.InsecureSSLContextFactory;
+import net.grinder.util.Sleeper;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import HTTPClient.HTTPResponse;
+
+
+/**
+ * Unit tests for {@link AsyncRequestExecutor}.
+ *
+ * @author Philip Aston
+ */
+public class TestAsyncRequestExecutor {
+
+  @Mock private Sleeper m_sleeper;
+
+  private HTTPPluginThreadState m_owner;
+
+  @Before public void setUp() throws Exception {
+    MockitoAnnotations.initMocks(this);
+
+    m_owner =
+      new HTTPPluginThreadState(new InsecureSSLContextFactory(),
+                                m_sleeper,
+                                null);
+  }
+
+  /**
+   * A request that waits for a latch, and records the lanes it was given
+   * and the number of requests in progress.
+   */
+  private static final class BlockingRequest
+    implements AsyncRequestExecutor.Request {
+
+    private final CountDownLatch m_release;
+    private final Set<HTTPPluginThreadState> m_lanes =
+      Collections.synchronizedSet(new HashSet<HTTPPluginThreadState>());
+    private final AtomicInteger m_inProgress = new AtomicInteger();
+    private final AtomicInteger m_maximumInProgress = new AtomicInteger();
+    private final AtomicInteger m_started = new AtomicInteger();
+
+    public BlockingRequest(CountDownLatch release) {
+      m_release = release;
+    }
+
+    @Override public HTTPResponseFuture.Completion execute(
+      final HTTPPluginThreadState lane) throws Exception {
+
+      m_lanes.add(lane);
+      m_started.incrementAndGet();
+
+      final int inProgress = m_inProgress.incrementAndGet();
+
+      synchronized (m_maximumInProgress) {
+        if (inProgress > m_maximumInProgress.get()) {
+          m_maximumInProgress.set(inProgress);
+        }
+      }
+
+      try {
+        m_release.await();
+      }
+      finally {
+        m_inProgress.decrementAndGet();
+      }
+
+      return new HTTPResponseFuture.Completion() {
+        @Override public HTTPResponse complete() {
+          return null;
+        }
+      };
+    }
+  }
+
+  @Test public void testLanes() throws Exception {
+    final AsyncRequestExecutor executor = new AsyncRequestExecutor(m_owner, 2);
+
+    final CountDownLatch release = new CountDownLatch(1);
+    final BlockingRequest request = new BlockingRequest(release);
+
+    for (int i = 0; i < 5; ++i) {
+      executor.execute(request, null);
+    }
+
+    for (int i = 0; i < 500 && request.m_started.get() < 2; ++i) {
+      Thread.sleep(10);
+    }
+
+    // The other requests wait for a lane.
+    Thread.sleep(50);
+    assertEquals(2, request.m_started.get());
+
+    release.countDown();
+
+    final List<HTTPResponseFuture> futures = executor.awaitAll();
+    assertEquals(5, futures.size());
+
+    for (HTTPResponseFuture future : futures) {
+      assertTrue(future.isDone());
+      assertNull(future.get());
+    }
+
+    assertEquals(5, request.m_started.get());
+    assertEquals(2, request.m_maximumInProgress.get());
+    assertEquals(2, request.m_lanes.size());
+    assertEquals(0, executor.awaitAll().size());
+
+    executor.closeConnections();
+    executor.shutdown();
+  }
+
+  @Test public void testExecutorsShareThreads() throws Exception {
+    final CountDownLatch release = new CountDownLatch(1);
+    final BlockingRequest request = new BlockingRequest(release);
+
+    final AsyncRequestExecutor executor1 = new AsyncRequestExecutor(m_owner, 1);
+    final AsyncRequestExecutor executor2 = new AsyncRequestExecutor(m_owner, 1);
+
+    executor1.execute(request, null);
+    executor1.execute(request, null);
+    executor2.execute(request, null);
+
+    for (int i = 0; i < 500 && request.m_started.get() < 2; ++i) {
+      Thread.sleep(10);
+    }
+
+    // A request waiting for one executor's lane doesn't hold up the other
+    // executor.
+    assertEquals(2, request.m_started.get());
+
+    release.countDown();
+
+    assertEquals(2, executor1.awaitAll().size());
+    assertEquals(1, executor2.awaitAll().size());
+    assertEquals(3, request.m_started.get());
+
+    executor1.shutdown();
+    executor2.shutdown();
+  }
+
+  @Test public void testShutdown() throws Exception {
+    final AsyncRequestExecutor executor = new AsyncRequestExecutor(m_owner, 1);
+
+    final CountDownLatch release = new CountDownLatch(1);
+    final BlockingRequest request = new BlockingRequest(release);
+
+    final HTTPResponseFuture running = executor.execute(request, null);
+    final HTTPResponseFuture waiting = executor.execute(request, null);
+
+    for (int i = 0; i < 500 && request.m_started.get() < 1; ++i) {
+      Thread.sleep(10);
+    }
+
+    executor.shutdown();
+
+    assertTrue(running.isCancelled());
+    assertTrue(waiting.isCancelled());
+
+    try {
+      waiting.get(1, TimeUnit.SECONDS);
+      fail("Expected CancellationException");
+    }
+    catch (CancellationException e) {
+    }
+
+    release.countDown();
+
+    final HTTPResponseFuture afterShutdown = executor.execute(request, null);
+    assertTrue(afterShutdown.isCancelled());
+
+    Thread.sleep(50);
+    assertEquals(1, request.m_started.get());
+
+    // Cancelled requests don't cause awaitAll() to fail.
+    assertEquals(1, executor.awaitAll().size());
+    executor.closeConnections();
+  }
+
+  @Test public void testBadArguments() throws Exception {
+    try {
+      new AsyncRequestExecutor(m_owner, 0);
+      fail("Expected IllegalArgumentException");
+    }
+    catch (IllegalArgumentException e) {
+    }
+
+    try {
+      AsyncRequestExecutor.setNumberOfThreads(0);
+      fail("Expected IllegalArgumentException");
+    }
+    catch (IllegalArgumentException e) {
+    }
+  }
+}
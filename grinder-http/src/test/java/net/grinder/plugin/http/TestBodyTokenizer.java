@@ -0,0 +1,149 @@
+// Copyright (C) 2013 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+
+package net.grinder.plugin.http;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.emptyList;
+import static net.grinder.plugin.http.BodyTokenizer.HIDDEN_INPUT;
+import static net.grinder.plugin.http.BodyTokenizer.INPUT;
+import static net.grinder.plugin.http.BodyTokenizer.URI;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.Charset;
+
+import net.grinder.util.http.URIParserImplementation;
+
+import org.junit.Test;
+
+
+/**
+ * Unit tests for {@link BodyTokenizer}.
+ *
+ * @author Philip Aston
+ */
+public class TestBodyTokenizer {
+
+  private static final Charset UTF8 = Charset.forName("UTF-8");
+
+  private static BodyTokenizer tokenizer(final String body) {
+    return new BodyTokenizer(body.getBytes(UTF8),
+                             UTF8,
+                             new URIParserImplementation());
+  }
+
+  @Test public void testIsASCIICompatible() throws Exception {
+    assertTrue(BodyTokenizer.isASCIICompatible(UTF8));
+    assertTrue(BodyTokenizer.isASCIICompatible(
+      Charset.forName("ISO-8859-15")));
+    assertTrue(BodyTokenizer.isASCIICompatible(
+      Charset.forName("windows-1252")));
+    assertFalse(BodyTokenizer.isASCIICompatible(Charset.forName("UTF-16")));
+  }
+
+  @Test public void testEmptyBody() throws Exception {
+    final BodyTokenizer tokenizer = tokenizer("");
+
+    assertEquals(emptyList(), tokenizer.values(INPUT, "foo", 0, false));
+    assertEquals(emptyList(), tokenizer.values(URI, "foo", 0, true));
+    assertEquals(0, tokenizer.indexOf(""));
+    assertEquals(-1, tokenizer.indexOf("foo"));
+  }
+
+  @Test public void testInputs() throws Exception {
+    final BodyTokenizer tokenizer = tokenizer(
+      "<form>" +
+      "<INPUT name='a' value=\"1\">" +
+      "< input\n\tvalue = '2' NAME= \"a\" />" +
+      "<input name=a value=3>" +
+      "<input name='a'>" +
+      "<inputs name='a' value='4'>" +
+      "<input name='a' value='5' value='6'>" +
+      "<input type=' Hidden ' name='a' value='7'>" +
+      "<input type='hidden' name='b' value=''>" +
+      "<input type='text' name='a' value='8'>" +
+      "<input name='a' value='9'");
+
+    assertEquals(asList("1", "2", "6", "7", "8"),
+                 tokenizer.values(INPUT, "a", 0, false));
+    assertEquals(asList("7"), tokenizer.values(HIDDEN_INPUT, "a", 0, false));
+    assertEquals(asList(""), tokenizer.values(HIDDEN_INPUT, "b", 0, true));
+    assertEquals(asList("1"), tokenizer.values(INPUT, "a", 0, true));
+    assertEquals(asList("2"), tokenizer.values(INPUT, "a", 7, true));
+    assertEquals(emptyList(), tokenizer.values(INPUT, "A", 0, false));
+    assertEquals(emptyList(), tokenizer.values(URI, "a", 0, false));
+  }
+
+  @Test public void testURIs() throws Exception {
+    final BodyTokenizer tokenizer = tokenizer(
+      "<a href='/x;s=1?a=1&a=2'>" +
+      "<a href = \"http://foo/?b=3\">" +
+      "<a HREF='?a=4'>" +
+      "<link href='/y?%61=5'>" +
+      "<a href='/z?c%20d=6'>" +
+      "<a href='/nothing'>" +
+      "href='?a=7'" +
+      "<a href='?a=8");
+
+    assertEquals(asList("1", "5", "7"),
+                 tokenizer.values(URI, "a", 0, false));
+    assertEquals(asList("1"), tokenizer.values(URI, "s", 0, false));
+    assertEquals(asList("3"), tokenizer.values(URI, "b", 0, true));
+    assertEquals(asList("6"), tokenizer.values(URI, "c d", 0, true));
+    assertEquals(asList("5", "7"),
+                 tokenizer.values(URI, "a", tokenizer.indexOf("<link"),
+                                  false));
+    assertEquals(emptyList(), tokenizer.values(INPUT, "a", 0, false));
+  }
+
+  @Test public void testMixed() throws Exception {
+    final BodyTokenizer tokenizer = tokenizer(
+      "<a href='?t=1'><input type='hidden' name='t' value='2'>" +
+      "<input name='t' value='3' href='?t=4'><a href='?t=5'>");
+
+    assertEquals(asList("2", "3"), tokenizer.values(INPUT, "t", 0, false));
+    assertEquals(asList("2"), tokenizer.values(HIDDEN_INPUT, "t", 0, false));
+    assertEquals(asList("1", "5"), tokenizer.values(URI, "t", 0, false));
+  }
+
+  @Test public void testEncoding() throws Exception {
+    final String body =
+      "<p>\u00e9t\u00e9</p><input name='\u00e9' value='\u20ac'>";
+    final BodyTokenizer tokenizer = tokenizer(body);
+
+    assertEquals(asList("\u20ac"), tokenizer.values(INPUT, "\u00e9", 0, true));
+    assertEquals(body.substring(0, body.indexOf("value")).getBytes(UTF8).length,
+                 tokenizer.indexOf("value"));
+
+    final Charset latin1 = Charset.forName("ISO-8859-1");
+    final BodyTokenizer latin1Tokenizer =
+      new BodyTokenizer(body.replace('\u20ac', '\u00a3').getBytes(latin1),
+                        latin1,
+                        new URIParserImplementation());
+
+    assertEquals(asList("\u00a3"),
+                 latin1Tokenizer.values(INPUT, "\u00e9", 0, true));
+    assertEquals(body.indexOf("value"), latin1Tokenizer.indexOf("value"));
+  }
+}
@@ -0,0 +1,137 @@
+// Copyright (C) 2013 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.grinder.plugin.http;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+import net.grinder.common.TimeAuthority;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import HTTPClient.HTTPConnection;
+
+
+/**
+ * Unit tests for {@link DNSCache}.
+ *
+ * @author Philip Aston
+ */
+public class TestDNSCache {
+
+  private static final String UNKNOWN_HOST = "unknown.host.invalid";
+
+  private final TimeAuthority m_timeAuthority = mock(TimeAuthority.class);
+
+  private DNSCache m_cache;
+
+  @Before public void setUp() {
+    m_cache = new DNSCache(m_timeAuthority);
+  }
+
+  @Test public void testPositiveCaching() throws Exception {
+    final HTTPConnection.HostResolver resolver =
+      m_cache.createResolver(1000, 0);
+
+    when(m_timeAuthority.getTimeInMilliseconds()).thenReturn(100L);
+
+    final InetAddress[] addresses = resolver.getAllByName("localhost");
+    assertArrayEquals(InetAddress.getAllByName("localhost"), addresses);
+
+    // Changes to the result don't affect the cache.
+    addresses[0] = null;
+
+    when(m_timeAuthority.getTimeInMilliseconds()).thenReturn(1099L);
+    assertArrayEquals(InetAddress.getAllByName("localhost"),
+                      resolver.getAllByName("localhost"));
+
+    when(m_timeAuthority.getTimeInMilliseconds()).thenReturn(1100L);
+    assertArrayEquals(InetAddress.getAllByName("localhost"),
+                      resolver.getAllByName("localhost"));
+
+    // A resolver with a shorter time to live ignores old entries.
+    when(m_timeAuthority.getTimeInMilliseconds()).thenReturn(1200L);
+    assertArrayEquals(InetAddress.getAllByName("localhost"),
+                      m_cache.createResolver(10, 0).getAllByName("localhost"));
+  }
+
+  @Test public void testNegativeCaching() throws Exception {
+    final HTTPConnection.HostResolver resolver =
+      m_cache.createResolver(1000, 500);
+
+    when(m_timeAuthority.getTimeInMilliseconds()).thenReturn(100L);
+
+    assertUnknown(resolver);
+
+    // Answered from the cache.
+    when(m_timeAuthority.getTimeInMilliseconds()).thenReturn(599L);
+
+    assertUnknown(resolver);
+
+    when(m_timeAuthority.getTimeInMilliseconds()).thenReturn(600L);
+    assertUnknown(resolver);
+
+    // Failures aren't cached for resolvers that don't want them.
+    final HTTPConnection.HostResolver resolver2 =
+      m_cache.createResolver(1000, 0);
+    assertUnknown(resolver2);
+  }
+
+  @Test public void testResolveAndClear() throws Exception {
+    when(m_timeAuthority.getTimeInMilliseconds()).thenReturn(100L);
+
+    m_cache.resolve("localhost", UNKNOWN_HOST);
+
+    final HTTPConnection.HostResolver resolver =
+      m_cache.createResolver(1000, 1000);
+
+    assertArrayEquals(InetAddress.getAllByName("localhost"),
+                      resolver.getAllByName("localhost"));
+    assertUnknown(resolver);
+
+    m_cache.clear();
+
+    assertArrayEquals(InetAddress.getAllByName("localhost"),
+                      resolver.getAllByName("localhost"));
+  }
+
+  @Test public void testInstance() throws Exception {
+    assertEquals(DNSCache.getInstance(), DNSCache.getInstance());
+  }
+
+  private static void assertUnknown(HTTPConnection.HostResolver resolver) {
+    try {
+      resolver.getAllByName(UNKNOWN_HOST);
+      fail("Expected UnknownHostException");
+    }
+    catch (UnknownHostException e) {
+      assertEquals(UNKNOWN_HOST, e.getMessage().split(":")[0]);
+    }
+  }
+}
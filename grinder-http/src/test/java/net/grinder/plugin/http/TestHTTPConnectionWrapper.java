@@ -128,6 +128,13 @@ public class TestHTTPConnectionWrapper extends TestCase {
     wrapper.setBandwidthLimit(0);
     assertSame(defaultBWLimiterFactory,
       connection.getBandwithLimiterFactoryForTest());
+
+    final HTTPConnection.HostResolver defaultResolver =
+      connection.getHostResolver();
+    wrapper.setDNSCacheTimeToLive(1000, 0);
+    assertNotSame(defaultResolver, connection.getHostResolver());
+    wrapper.setDNSCacheTimeToLive(0, 0);
+    assertSame(defaultResolver, connection.getHostResolver());
   }
 
   private void assertModule(HTTPConnection connection,
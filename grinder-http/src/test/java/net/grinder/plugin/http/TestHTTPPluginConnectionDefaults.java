@@ -94,6 +94,12 @@ public class TestHTTPPluginConnectionDefaults extends TestCase {
     defaults.setBandwidthLimit(99);
     assertEquals(99, defaults.getBandwidthLimit());
 
+    assertEquals(0, defaults.getDNSCacheTimeToLive());
+    assertEquals(0, defaults.getDNSCacheNegativeTimeToLive());
+    defaults.setDNSCacheTimeToLive(1000, 10);
+    assertEquals(1000, defaults.getDNSCacheTimeToLive());
+    assertEquals(10, defaults.getDNSCacheNegativeTimeToLive());
+
     // Cover no-op.
     defaults.close();
   }
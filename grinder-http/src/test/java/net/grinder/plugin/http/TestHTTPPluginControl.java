@@ -21,11 +21,15 @@
 
 package net.grinder.plugin.http;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertSame;
 import static org.mockito.Answers.RETURNS_MOCKS;
 import static org.mockito.Mockito.when;
+
+import java.net.InetAddress;
+
 import net.grinder.common.SSLContextFactory;
 import net.grinder.plugininterface.PluginProcessContext;
 import net.grinder.script.Grinder.ScriptContext;
@@ -94,4 +98,15 @@ public class TestHTTPPluginControl {
     assertNotSame(connection,
                   HTTPPluginControl.getThreadConnection("http://bah"));
   }
+
+  @Test public void testDNSCache() throws Exception {
+    HTTPPluginControl.resolveHosts("localhost");
+
+    assertArrayEquals(
+      InetAddress.getAllByName("localhost"),
+      DNSCache.getInstance().createResolver(Long.MAX_VALUE, 0)
+        .getAllByName("localhost"));
+
+    HTTPPluginControl.clearDNSCache();
+  }
 }
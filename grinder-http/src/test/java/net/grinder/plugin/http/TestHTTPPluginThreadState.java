@@ -103,6 +103,34 @@ public class TestHTTPPluginThreadState {
     pluginThreadState.beginShutdown();
   }
 
+  @Test public void testLanes() throws Exception {
+    final HTTPPluginThreadState pluginThreadState =
+      new HTTPPluginThreadState(m_sslContextFactory,
+                                m_sleeper,
+                                null);
+
+    final HTTPPluginThreadState lane =
+      pluginThreadState.createLane(m_sslContextFactory);
+
+    final URI uri = new URI("http://blah.com");
+
+    final HTTPConnectionWrapper wrapper =
+      pluginThreadState.getConnectionWrapper(uri);
+    final HTTPConnectionWrapper laneWrapper = lane.getConnectionWrapper(uri);
+
+    // Lanes have their own connections, but share our cookies.
+    assertNotSame(wrapper, laneWrapper);
+    assertSame(pluginThreadState,
+               laneWrapper.getConnection().getContext());
+
+    final AsyncRequestExecutor executor =
+      pluginThreadState.getAsyncRequestExecutor();
+    assertSame(executor, pluginThreadState.getAsyncRequestExecutor());
+
+    pluginThreadState.beginRun();
+    pluginThreadState.endThread();
+  }
+
   @Test public void testSetResponse() throws Exception {
     final HTTPRequestHandler handler = new HTTPRequestHandler();
     handler.start();
@@ -27,6 +27,7 @@ import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
@@ -35,6 +36,8 @@ import static org.mockito.Matchers.isA;
 import static org.mockito.Mockito.atLeastOnce;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
@@ -43,21 +46,29 @@ import static org.mockito.Mockito.when;
 import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.OutputStream;
+import java.net.ServerSocket;
 import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 
 import net.grinder.common.SSLContextFactory;
+import net.grinder.engine.process.DispatchScopeTunnel;
 import net.grinder.engine.process.dcr.DCRContextImplementation;
 import net.grinder.plugininterface.PluginException;
 import net.grinder.plugininterface.PluginProcessContext;
 import net.grinder.script.Grinder.ScriptContext;
 import net.grinder.script.InvalidContextException;
+import net.grinder.script.SSLControl;
 import net.grinder.script.Statistics;
 import net.grinder.script.Statistics.StatisticsForTest;
 import net.grinder.scriptengine.Instrumenter;
 import net.grinder.scriptengine.Recorder;
 import net.grinder.scriptengine.java.JavaScriptEngineService;
 import net.grinder.statistics.StatisticsIndexMap;
+import net.grinder.statistics.StatisticsServicesImplementation;
+import net.grinder.statistics.StatisticsSet;
 import net.grinder.util.InsecureSSLContextFactory;
 
 import org.junit.After;
@@ -844,7 +855,58 @@ public class TestHTTPRequest {
     assertTrue(message.indexOf("200") >= 0);
     assertEquals(-1, message.indexOf("Redirect"));
 
-    verify(m_statistics).isTestInProgress();
+    // The statistics are not obtained through the script interface, which
+    // would stop the engine from reusing them.
+    verify(m_pluginProcessContext).getStatisticsForCurrentTest();
+    verify(m_statistics, never()).getForCurrentTest();
+  }
+
+  @Test public void testDispatchDoesNotAllocateStatistics() throws Exception {
+    final DispatchScopeTunnel dispatch = new DispatchScopeTunnel();
+
+    final SSLControl sslControl = mock(SSLControl.class);
+    when(sslControl.getSSLContext())
+      .thenReturn(m_sslContextFactory.getSSLContext());
+    when(m_scriptContext.getSSLControl()).thenReturn(sslControl);
+    when(m_scriptContext.getTimeAuthority())
+      .thenReturn(mock(net.grinder.common.TimeAuthority.class));
+    new HTTPPlugin(dispatch.getPluginProcessContext(), m_scriptContext);
+
+    final HTTPRequest request = new HTTPRequest();
+
+    final StatisticsForTest[] statistics = new StatisticsForTest[6];
+
+    for (int i = 0; i < statistics.length; ++i) {
+      dispatch.start();
+      request.GET(m_handler.getURL());
+      dispatch.end(true);
+
+      statistics[i] = dispatch.getStatisticsForLastTest();
+    }
+
+    // The engine alternates between the same two statistics buffers, so
+    // no statistics are allocated for each dispatch.
+    assertNotSame(statistics[0], statistics[1]);
+
+    for (int i = 2; i < statistics.length; ++i) {
+      assertSame(statistics[i % 2], statistics[i]);
+    }
+
+    final StatisticsIndexMap indexMap =
+      StatisticsServicesImplementation.getInstance().getStatisticsIndexMap();
+
+    final StatisticsSet testStatistics = dispatch.getTestStatistics();
+
+    assertEquals(statistics.length,
+                 testStatistics.getCount(
+                   indexMap.getLongSampleIndex("timedTests")));
+
+    assertEquals(statistics.length * 200,
+                 testStatistics.getValue(
+                   indexMap.getLongIndex(
+                     StatisticsIndexMap.HTTP_PLUGIN_RESPONSE_STATUS_KEY)));
+
+    verify(m_statistics, never()).getForCurrentTest();
   }
 
   @Test public void testRedirectResponseProcessing() throws Exception {
@@ -867,8 +929,8 @@ public class TestHTTPRequest {
       };
       handler.start();
 
-      when(m_statistics.isTestInProgress()).thenReturn(true);
-      when(m_statistics.getForCurrentTest()).thenReturn(m_statisticsForTest);
+      when(m_pluginProcessContext.getStatisticsForCurrentTest())
+        .thenReturn(m_statisticsForTest);
 
       final HTTPRequest request = new HTTPRequest();
       final HTTPResponse response = request.GET(handler.getURL());
@@ -894,8 +956,8 @@ public class TestHTTPRequest {
 
     handler.start();
 
-    when(m_statistics.isTestInProgress()).thenReturn(true);
-    when(m_statistics.getForCurrentTest()).thenReturn(m_statisticsForTest);
+    when(m_pluginProcessContext.getStatisticsForCurrentTest())
+      .thenReturn(m_statisticsForTest);
 
     final HTTPRequest request = new HTTPRequest();
     final HTTPResponse response = request.GET(handler.getURL());
@@ -942,8 +1004,8 @@ public class TestHTTPRequest {
     when(m_pluginProcessContext.getPluginThreadListener(m_httpPlugin))
       .thenReturn(threadState);
 
-    when(m_statistics.isTestInProgress()).thenReturn(true);
-    when(m_statistics.getForCurrentTest()).thenReturn(m_statisticsForTest);
+    when(m_pluginProcessContext.getStatisticsForCurrentTest())
+      .thenReturn(m_statisticsForTest);
 
     final HTTPRequest request = new HTTPRequest();
     final String bodyText = "Your heart's gone the colour of Coca Cola\n";
@@ -997,8 +1059,8 @@ public class TestHTTPRequest {
     when(m_pluginProcessContext.getPluginThreadListener(m_httpPlugin))
       .thenReturn(threadState);
 
-    when(m_statistics.isTestInProgress()).thenReturn(true);
-    when(m_statistics.getForCurrentTest()).thenReturn(m_statisticsForTest);
+    when(m_pluginProcessContext.getStatisticsForCurrentTest())
+      .thenReturn(m_statisticsForTest);
 
     m_handler.setBody(null);
 
@@ -1050,8 +1112,8 @@ public class TestHTTPRequest {
     when(m_pluginProcessContext.getPluginThreadListener(m_httpPlugin))
       .thenReturn(threadState);
 
-    when(m_statistics.isTestInProgress()).thenReturn(true);
-    when(m_statistics.getForCurrentTest()).thenReturn(m_statisticsForTest);
+    when(m_pluginProcessContext.getStatisticsForCurrentTest())
+      .thenReturn(m_statisticsForTest);
 
     final HTTPRequest request = new HTTPRequest();
 
@@ -1092,11 +1154,155 @@ public class TestHTTPRequest {
     }
   }
 
-  @Test public void testWithBadStatistics() throws Exception {
+  @Test public void testStreamResponseBody() throws Exception {
+    when(m_pluginProcessContext.getStatisticsForCurrentTest())
+      .thenReturn(m_statisticsForTest);
+
+    final HTTPRequest request = new HTTPRequest();
+
+    assertFalse(request.getStreamResponseBody());
+    request.setStreamResponseBody(true);
+    assertTrue(request.getStreamResponseBody());
+
+    final StringBuilder body = new StringBuilder();
+
+    for (int i = 0; i < 10000; ++i) {
+      body.append(i).append('\n');
+    }
+
+    m_handler.setBody(body.toString());
+
+    assertNull(request.getResponseBodyValidator());
+    final ResponseBodyValidator validator =
+      ResponseBodyValidators.all(
+        ResponseBodyValidators.size(body.length(), body.length()),
+        ResponseBodyValidators.contains("\n9999\n", "US-ASCII"));
+    request.setResponseBodyValidator(validator);
+    assertSame(validator, request.getResponseBodyValidator());
 
+    final HTTPResponse response = request.GET(m_handler.getURL());
+    assertEquals(200, response.getStatusCode());
+    assertEquals(0, response.getData().length);
+
+    verify(m_statisticsForTest).addLong(
+      StatisticsIndexMap.HTTP_PLUGIN_RESPONSE_LENGTH_KEY, body.length());
+    verify(m_statisticsForTest, times(0)).setSuccess(false);
+
+    request.setResponseBodyValidator(
+      ResponseBodyValidators.contains("not there", "US-ASCII"));
+
+    request.GET(m_handler.getURL());
+    verify(m_statisticsForTest).setSuccess(false);
+    verify(m_logger).error(m_stringCaptor.capture());
+    assertContains(m_stringCaptor.getValue(), "failed validation");
+
+    // Validators also apply to bodies that are not streamed.
+    request.setStreamResponseBody(false);
+    final HTTPResponse response2 = request.GET(m_handler.getURL());
+    assertEquals(body.toString(), response2.getText());
+    verify(m_statisticsForTest, times(2)).setSuccess(false);
+  }
+
+  @Test public void testAsyncRequests() throws Exception {
     when(m_statistics.isTestInProgress()).thenReturn(true);
     when(m_statistics.getForCurrentTest()).thenReturn(m_statisticsForTest);
 
+    m_handler.setBody("Hello");
+
+    final HTTPRequest request = new HTTPRequest();
+    request.setUrl(m_handler.getURL());
+
+    final HTTPResponseFuture future1 = request.GETAsync("/foo");
+    final HTTPResponseFuture future2 =
+      request.POSTAsync("/bah", "data".getBytes(), new NVPair[0]);
+
+    // Statistics are recorded against the test in progress when the requests
+    // were made, as soon as the responses arrive.
+    when(m_statistics.isTestInProgress()).thenReturn(false);
+
+    verify(m_statisticsForTest, timeout(5000).times(2)).addLong(
+      StatisticsIndexMap.HTTP_PLUGIN_RESPONSE_LENGTH_KEY, 5);
+
+    final HTTPResponseFuture[] futures =
+      HTTPPluginControl.awaitAsyncRequests();
+    assertArrayEquals(new HTTPResponseFuture[] { future1, future2 }, futures);
+    assertTrue(future1.isDone());
+    assertFalse(future1.isCancelled());
+
+    final HTTPResponse response = future1.get();
+    assertEquals(200, response.getStatusCode());
+    assertEquals("Hello", response.getText());
+    assertSame(response, future1.get());
+    assertEquals(200, future2.get(1, TimeUnit.SECONDS).getStatusCode());
+
+    verify(m_statisticsForTest, times(2)).addLong(
+      StatisticsIndexMap.HTTP_PLUGIN_RESPONSE_LENGTH_KEY, 5);
+
+    // The worker thread's clock isn't running while the requests are made.
+    verify(m_statisticsForTest, never()).pauseClock();
+
+    assertEquals(0, HTTPPluginControl.awaitAsyncRequests().length);
+
+    final ServerSocket serverSocket = new ServerSocket(0);
+    final int port = serverSocket.getLocalPort();
+    serverSocket.close();
+
+    final HTTPResponseFuture future3 =
+      request.GETAsync("http://localhost:" + port);
+
+    try {
+      future3.get();
+      fail("Expected ExecutionException");
+    }
+    catch (final ExecutionException e) {
+      assertTrue(e.getCause() instanceof IOException);
+    }
+
+    assertEquals(1, HTTPPluginControl.awaitAsyncRequests().length);
+
+    try {
+      new HTTPRequest().GETAsync("/foo");
+      fail("Expected URLException");
+    }
+    catch (final URLException e) {
+    }
+
+    try {
+      HTTPPluginControl.setAsyncConnections(0);
+      fail("Expected IllegalArgumentException");
+    }
+    catch (final IllegalArgumentException e) {
+    }
+  }
+
+  @Test public void testAsyncRequestAfterTest() throws Exception {
+    when(m_statistics.isTestInProgress()).thenReturn(true);
+    when(m_statistics.getForCurrentTest()).thenReturn(m_statisticsForTest);
+
+    // The test has finished by the time the response arrives.
+    doThrow(new InvalidContextException("finished"))
+    .when(m_statisticsForTest).addLong(isA(String.class), isA(Long.class));
+
+    final HTTPRequest request = new HTTPRequest();
+    request.setUrl(m_handler.getURL());
+
+    final HTTPResponseFuture future = request.GETAsync("/late");
+
+    final ArgumentCaptor<Object> uriCaptor =
+      ArgumentCaptor.forClass(Object.class);
+    verify(m_logger, timeout(5000)).warn(isA(String.class),
+                                         uriCaptor.capture());
+    assertEquals(m_handler.getURL() + "/late",
+                 uriCaptor.getValue().toString());
+
+    assertEquals(200, future.get().getStatusCode());
+  }
+
+  @Test public void testWithBadStatistics() throws Exception {
+
+    when(m_pluginProcessContext.getStatisticsForCurrentTest())
+      .thenReturn(m_statisticsForTest);
+
     final Exception exception = new InvalidContextException("bah");
 
     doThrow(exception)
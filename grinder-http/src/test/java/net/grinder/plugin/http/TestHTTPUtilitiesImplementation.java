@@ -336,7 +336,8 @@ public class TestHTTPUtilitiesImplementation {
     assertEquals("bah", httpUtilities.valueFromHiddenInput("foo"));
     assertEquals("", httpUtilities.valueFromHiddenInput("bah"));
     assertEquals("bah", httpUtilities.valueFromHiddenInput("foo", "<body>"));
-    assertEquals("", httpUtilities.valueFromHiddenInput("foo", "input"));
+    assertEquals("bah", httpUtilities.valueFromHiddenInput("foo", "input"));
+    assertEquals("", httpUtilities.valueFromHiddenInput("foo", "bah"));
     assertEquals("", httpUtilities.valueFromHiddenInput("foo", "not there"));
 
     handler.shutdown();
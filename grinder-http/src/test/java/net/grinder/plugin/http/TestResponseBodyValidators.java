@@ -0,0 +1,138 @@
+// Copyright (C) 2013 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.grinder.plugin.http;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.security.NoSuchAlgorithmException;
+import java.util.regex.Pattern;
+
+import org.junit.Test;
+
+
+/**
+ * Unit tests for {@link ResponseBodyValidators}.
+ *
+ * @author Philip Aston
+ */
+public class TestResponseBodyValidators {
+
+  private static final byte[] BODY =
+    "The quick brown fox jumps over the lazy dog".getBytes();
+
+  /**
+   * Validate BODY, passed in pieces of the given size.
+   */
+  private static String validate(ResponseBodyValidator validator,
+                                 int pieceSize) {
+    final ResponseBodyValidator.Validation validation =
+      validator.begin(null);
+
+    final byte[] buffer = new byte[pieceSize + 2];
+
+    for (int i = 0; i < BODY.length; i += pieceSize) {
+      final int n = Math.min(pieceSize, BODY.length - i);
+      System.arraycopy(BODY, i, buffer, 1, n);
+      validation.update(buffer, 1, n);
+    }
+
+    return validation.end();
+  }
+
+  private static void assertValid(ResponseBodyValidator validator) {
+    for (int pieceSize : new int[] { 1, 3, 7, 100 }) {
+      assertNull(validate(validator, pieceSize));
+    }
+  }
+
+  private static void assertInvalid(ResponseBodyValidator validator) {
+    for (int pieceSize : new int[] { 1, 3, 7, 100 }) {
+      assertNotNull(validate(validator, pieceSize));
+    }
+  }
+
+  @Test public void testDigest() throws Exception {
+    assertValid(ResponseBodyValidators.digest(
+      "MD5", "9e107d9d372bb6826bd81d3542a419d6"));
+    assertValid(ResponseBodyValidators.digest(
+      "MD5", "9E107D9D372BB6826BD81D3542A419D6"));
+    assertInvalid(ResponseBodyValidators.digest(
+      "MD5", "e4d909c290d0fb1ca068ffaddf22cbd0"));
+
+    try {
+      ResponseBodyValidators.digest("foo", "");
+      fail("Expected NoSuchAlgorithmException");
+    }
+    catch (NoSuchAlgorithmException e) {
+    }
+  }
+
+  @Test public void testContains() throws Exception {
+    assertValid(ResponseBodyValidators.contains("", "US-ASCII"));
+    assertValid(ResponseBodyValidators.contains("fox jumps", "US-ASCII"));
+    assertValid(ResponseBodyValidators.contains("The", "US-ASCII"));
+    assertValid(ResponseBodyValidators.contains("dog", "US-ASCII"));
+    assertInvalid(ResponseBodyValidators.contains("cat", "US-ASCII"));
+    assertInvalid(ResponseBodyValidators.contains("dogs", "US-ASCII"));
+
+    // Partial matches that need the failure function.
+    final ResponseBodyValidator.Validation validation =
+      ResponseBodyValidators.contains("aab", "US-ASCII").begin(null);
+    validation.update("xaa".getBytes(), 0, 3);
+    validation.update("ab".getBytes(), 0, 2);
+    assertNull(validation.end());
+  }
+
+  @Test public void testMatches() throws Exception {
+    assertValid(ResponseBodyValidators.matches(Pattern.compile("f.x"), 10));
+    assertValid(
+      ResponseBodyValidators.matches(Pattern.compile("q\\w+ b\\w+"), 20));
+    assertInvalid(ResponseBodyValidators.matches(Pattern.compile("c.t"), 10));
+  }
+
+  @Test public void testSize() throws Exception {
+    assertValid(ResponseBodyValidators.size(BODY.length, BODY.length));
+    assertValid(ResponseBodyValidators.size(0, 1000));
+    assertInvalid(ResponseBodyValidators.size(0, BODY.length - 1));
+    assertInvalid(ResponseBodyValidators.size(BODY.length + 1, 1000));
+
+    assertEquals("body size was 43 bytes, expected 0 - 1",
+                 validate(ResponseBodyValidators.size(0, 1), 10));
+  }
+
+  @Test public void testAll() throws Exception {
+    assertValid(ResponseBodyValidators.all());
+    assertValid(ResponseBodyValidators.all(
+      ResponseBodyValidators.size(0, 1000),
+      ResponseBodyValidators.contains("lazy", "US-ASCII")));
+
+    assertEquals("body does not contain 'cat'",
+                 validate(ResponseBodyValidators.all(
+                   ResponseBodyValidators.size(0, 1000),
+                   ResponseBodyValidators.contains("cat", "US-ASCII"),
+                   ResponseBodyValidators.size(0, 1)),
+                   5));
+  }
+}
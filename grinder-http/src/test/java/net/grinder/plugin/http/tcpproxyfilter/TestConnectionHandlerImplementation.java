@@ -140,6 +140,12 @@ public class TestConnectionHandlerImplementation
     verify(m_httpRecording).markLastResponseTime();
 
     handler.requestFinished();
+
+    verify(m_httpRecording).requestFinished(request);
+
+    handler.requestFinished();
+
+    verify(m_httpRecording).requestFinished(request);
   }
 
   @Test public void testAuthorization() throws Exception {
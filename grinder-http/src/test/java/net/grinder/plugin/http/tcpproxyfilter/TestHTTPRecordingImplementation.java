@@ -31,6 +31,7 @@ import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.isA;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
@@ -38,6 +39,12 @@ import static org.mockito.Mockito.verifyNoMoreInteractions;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.transform.Source;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMResult;
 
 import net.grinder.plugin.http.xml.BasicAuthorizationHeaderType;
 import net.grinder.plugin.http.xml.CommonHeadersType;
@@ -57,10 +64,10 @@ import net.grinder.util.http.URIParserImplementation;
 
 import org.junit.Before;
 import org.junit.Test;
-import org.mockito.ArgumentCaptor;
-import org.mockito.Captor;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 import org.slf4j.Logger;
 
 import HTTPClient.NVPair;
@@ -78,7 +85,9 @@ public class TestHTTPRecordingImplementation {
 
   @Mock private HTTPRecordingResultProcessor m_resultProcessor;
   @Mock private Logger m_logger;
-  @Captor private ArgumentCaptor<HttpRecordingDocument> m_recordingCaptor;
+
+  private final List<HttpRecordingDocument> m_results =
+    new ArrayList<HttpRecordingDocument>();
 
   private final RegularExpressions m_regularExpressions =
     new RegularExpressionsImplementation();
@@ -90,9 +99,24 @@ public class TestHTTPRecordingImplementation {
 
   private HTTPRecordingImplementation m_httpRecording;
 
-  @Before public void setUp() {
+  @Before public void setUp() throws Exception {
     MockitoAnnotations.initMocks(this);
 
+    doAnswer(new Answer<Void>() {
+      @Override public Void answer(InvocationOnMock invocation)
+        throws Exception {
+        final DOMResult result = new DOMResult();
+
+        TransformerFactory.newInstance().newTransformer().transform(
+          (Source) invocation.getArguments()[0], result);
+
+        m_results.add(HttpRecordingDocument.Factory.parse(result.getNode()));
+
+        return null;
+      }
+    })
+    .when(m_resultProcessor).process(isA(Source.class));
+
     m_httpRecording =
         new HTTPRecordingImplementation(new ParametersFromProperties(),
                                         m_resultProcessor,
@@ -111,12 +135,10 @@ public class TestHTTPRecordingImplementation {
     m_httpRecording.dispose();
     m_httpRecording.dispose();
 
-    verify(m_resultProcessor, times(2)).process(m_recordingCaptor.capture());
+    verify(m_resultProcessor, times(2)).process(isA(Source.class));
 
-    final HttpRecordingDocument recording =
-        m_recordingCaptor.getAllValues().get(0);
-    final HttpRecordingDocument recording2 =
-        m_recordingCaptor.getAllValues().get(1);
+    final HttpRecordingDocument recording = m_results.get(0);
+    final HttpRecordingDocument recording2 = m_results.get(1);
 
     XMLBeansUtilities.validate(recording);
     XMLBeansUtilities.validate(recording2);
@@ -133,7 +155,7 @@ public class TestHTTPRecordingImplementation {
 
     final IOException exception = new IOException("Eat me");
     doThrow(exception)
-    .when(m_resultProcessor).process(isA(HttpRecordingDocument.class));
+    .when(m_resultProcessor).process(isA(Source.class));
 
     m_httpRecording.dispose();
 
@@ -201,9 +223,9 @@ public class TestHTTPRecordingImplementation {
 
     m_httpRecording.dispose();
 
-    verify(m_resultProcessor).process(m_recordingCaptor.capture());
+    verify(m_resultProcessor).process(isA(Source.class));
 
-    final HttpRecordingDocument recording = m_recordingCaptor.getValue();
+    final HttpRecordingDocument recording = m_results.get(0);
 
     XMLBeansUtilities.validate(recording);
 
@@ -234,6 +256,47 @@ public class TestHTTPRecordingImplementation {
     assertTrue(page1.getRequestArray(2).isSetAnnotation());
   }
 
+  @Test public void testRequestFinished() throws Exception {
+    final RequestType request1 =
+      m_httpRecording.addRequest(m_connectionDetails1, "GET", "/1");
+    request1.addNewResponse();
+
+    final RequestType request2 =
+      m_httpRecording.addRequest(m_connectionDetails1, "GET", "/2");
+    request2.addNewResponse();
+
+    final RequestType request3 =
+      m_httpRecording.addRequest(m_connectionDetails1, "GET", "/3");
+    request3.addNewResponse();
+
+    m_httpRecording.requestFinished(request2);
+
+    // A finished request is recorded, even though an earlier request is
+    // still in progress.
+    request2.setDescription("changed");
+
+    m_httpRecording.requestFinished(request1);
+    m_httpRecording.requestFinished(request1);
+    m_httpRecording.requestFinished(RequestType.Factory.newInstance());
+
+    // Finished requests have been recorded.
+    request1.setDescription("changed");
+    request3.setDescription("changed");
+
+    m_httpRecording.dispose();
+
+    verify(m_resultProcessor).process(isA(Source.class));
+
+    final HttpRecordingDocument recording = m_results.get(0);
+    XMLBeansUtilities.validate(recording);
+
+    final PageType[] pages = recording.getHttpRecording().getPageArray();
+    assertEquals(3, pages.length);
+    assertEquals("GET 1", pages[0].getRequestArray(0).getDescription());
+    assertEquals("GET 2", pages[1].getRequestArray(0).getDescription());
+    assertEquals("changed", pages[2].getRequestArray(0).getDescription());
+  }
+
   @Test public void testAddRequestWithComplexPaths() throws Exception {
     // Request 1
     final RequestType request1 =
@@ -348,10 +411,9 @@ public class TestHTTPRecordingImplementation {
 
     m_httpRecording.dispose();
 
-    verify(m_resultProcessor).process(m_recordingCaptor.capture());
+    verify(m_resultProcessor).process(isA(Source.class));
 
-    final HTTPRecordingType recording =
-      m_recordingCaptor.getValue().getHttpRecording();
+    final HTTPRecordingType recording = m_results.get(0).getHttpRecording();
 
     // Default, plus 2 sets.
     assertEquals(3, recording.getCommonHeadersArray().length);
@@ -410,10 +472,9 @@ public class TestHTTPRecordingImplementation {
 
     m_httpRecording.dispose();
 
-    verify(m_resultProcessor).process(m_recordingCaptor.capture());
+    verify(m_resultProcessor).process(isA(Source.class));
 
-    final HTTPRecordingType recording =
-      m_recordingCaptor.getValue().getHttpRecording();
+    final HTTPRecordingType recording = m_results.get(0).getHttpRecording();
 
     assertEquals(0, recording.getCommonHeadersArray().length);
 
@@ -443,10 +504,9 @@ public class TestHTTPRecordingImplementation {
 
     m_httpRecording.dispose();
 
-    verify(m_resultProcessor).process(m_recordingCaptor.capture());
+    verify(m_resultProcessor).process(isA(Source.class));
 
-    final HTTPRecordingType recording =
-      m_recordingCaptor.getValue().getHttpRecording();
+    final HTTPRecordingType recording = m_results.get(0).getHttpRecording();
 
     assertEquals(0, recording.getCommonHeadersArray().length);
   }
@@ -471,10 +531,9 @@ public class TestHTTPRecordingImplementation {
 
     m_httpRecording.dispose();
 
-    verify(m_resultProcessor).process(m_recordingCaptor.capture());
+    verify(m_resultProcessor).process(isA(Source.class));
 
-    final HTTPRecordingType recording =
-      m_recordingCaptor.getValue().getHttpRecording();
+    final HTTPRecordingType recording = m_results.get(0).getHttpRecording();
 
     assertEquals(1, recording.getCommonHeadersArray().length);
 
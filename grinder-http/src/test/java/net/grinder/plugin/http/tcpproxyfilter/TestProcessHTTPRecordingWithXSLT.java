@@ -31,9 +31,15 @@ import java.io.File;
 import java.io.FileOutputStream;
 import java.io.InputStream;
 import java.io.PrintWriter;
+import java.io.StringReader;
 import java.io.StringWriter;
 import java.util.Calendar;
 
+import javax.xml.stream.XMLStreamException;
+import javax.xml.transform.Source;
+import javax.xml.transform.stax.StAXSource;
+import javax.xml.transform.stream.StreamSource;
+
 import net.grinder.plugin.http.tcpproxyfilter.ProcessHTTPRecordingWithXSLT.BuiltInStyleSheet;
 import net.grinder.plugin.http.tcpproxyfilter.ProcessHTTPRecordingWithXSLT.StyleSheetFile;
 import net.grinder.plugin.http.xml.HTTPRecordingType;
@@ -88,7 +94,7 @@ public class TestProcessHTTPRecordingWithXSLT
     final HTTPRecordingType recording = document.addNewHttpRecording();
     recording.addNewMetadata().setVersion("blah");
 
-    processor.process(document);
+    processor.process(source(document));
 
     final String output2 = m_stringOut.toString();
     AssertUtilities.assertContainsPattern(output2,
@@ -112,7 +118,7 @@ public class TestProcessHTTPRecordingWithXSLT
     recording.addNewMetadata().setVersion("blah");
 
     // Will fail with an un-parseable date TransformerException
-    processor.process(document);
+    processor.process(source(document));
 
     final String output = m_stringOut.toString();
     AssertUtilities.assertContains(output, "# blah");
@@ -125,7 +131,7 @@ public class TestProcessHTTPRecordingWithXSLT
     final ProcessHTTPRecordingWithXSLT processor2 =
       new ProcessHTTPRecordingWithXSLT(m_out, m_logger);
 
-    processor2.process(document);
+    processor2.process(source(document));
 
     verifyNoMoreInteractions(m_logger);
   }
@@ -143,7 +149,7 @@ public class TestProcessHTTPRecordingWithXSLT
 
     recording.addNewMetadata().setTime(Calendar.getInstance());
 
-    processor.process(document);
+    processor.process(source(document));
     verifyNoMoreInteractions(m_logger);
 
     AssertUtilities.assertContains(m_stringOut.toString(), ";; blah");
@@ -159,8 +165,7 @@ public class TestProcessHTTPRecordingWithXSLT
         m_out,
         m_logger);
 
-    final HttpRecordingDocument emptyDocument =
-      HttpRecordingDocument.Factory.newInstance();
+    final Source emptyDocument = new StreamSource(new StringReader(""));
 
     // Redirect streams, because XSLTC still chucks some stuff out to stderr.
     new RedirectStandardStreams() {
@@ -173,4 +178,9 @@ public class TestProcessHTTPRecordingWithXSLT
     // Processor might log multiple messages; ignore.
     // m_loggerStubFactory.assertNoMoreCalls();
   }
+
+  private static Source source(HttpRecordingDocument document)
+    throws XMLStreamException {
+    return new StAXSource(document.newXMLStreamReader());
+  }
 }
@@ -0,0 +1,148 @@
+// Copyright (C) 2013 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.grinder.plugin.http.tcpproxyfilter;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.isA;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import net.grinder.plugin.http.xml.RequestType;
+
+import org.junit.After;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+
+/**
+ * Unit tests for {@link RequestSpool}.
+ *
+ * @author Philip Aston
+ */
+public class TestRequestSpool {
+
+  private final RequestSpool m_spool = new RequestSpool();
+
+  @After public void tearDown() {
+    m_spool.delete();
+  }
+
+  private static RequestType createRequest(String description) {
+    final RequestType result = RequestType.Factory.newInstance();
+    result.setDescription(description);
+    result.addNewHeaders().addNewHeader().setName("foo");
+    result.getHeaders().getHeaderArray(0).setValue("<é>");
+    return result;
+  }
+
+  private List<String> readAll() throws Exception {
+    final List<String> result = new ArrayList<String>();
+
+    m_spool.read(new RequestSpool.Visitor() {
+      @Override public void request(RequestType request) {
+        result.add(request.getDescription() + ":" +
+                   request.getHeaders().getHeaderArray(0).getValue());
+      }
+    });
+
+    return result;
+  }
+
+  @Test public void testEmpty() throws Exception {
+    final RequestSpool.Visitor visitor = mock(RequestSpool.Visitor.class);
+
+    m_spool.read(visitor);
+    m_spool.close();
+    m_spool.read(visitor);
+
+    verifyNoMoreInteractions(visitor);
+  }
+
+  @Test public void testWriteAndRead() throws Exception {
+    m_spool.write(0, createRequest("a"));
+    m_spool.write(1, createRequest("b"));
+    m_spool.close();
+
+    assertEquals("[a:<é>, b:<é>]", readAll().toString());
+
+    // Can read again.
+    assertEquals(2, readAll().size());
+
+    // Further writes are appended.
+    m_spool.write(2, createRequest("c"));
+    m_spool.close();
+    m_spool.close();
+
+    assertEquals("[a:<é>, b:<é>, c:<é>]", readAll().toString());
+
+    m_spool.delete();
+
+    assertEquals(0, readAll().size());
+  }
+
+  @Test public void testReadInSequenceOrder() throws Exception {
+    m_spool.write(5, createRequest("f"));
+    m_spool.write(1, createRequest("b"));
+    m_spool.write(3, createRequest("d"));
+    m_spool.close();
+
+    m_spool.write(0, createRequest("a"));
+    m_spool.write(200, createRequest("z"));
+    m_spool.close();
+
+    assertEquals("[a:<é>, b:<é>, d:<é>, f:<é>, z:<é>]",
+                 readAll().toString());
+  }
+
+  @Test(expected=IllegalArgumentException.class)
+  public void testNegativeSequence() throws Exception {
+    m_spool.write(-1, createRequest("a"));
+  }
+
+  @Test public void testVisitorSeesParsedRequest() throws Exception {
+    final RequestType request = createRequest("x");
+    request.addNewResponse().setStatusCode(302);
+
+    m_spool.write(0, request);
+    m_spool.close();
+
+    final RequestSpool.Visitor visitor = mock(RequestSpool.Visitor.class);
+
+    doAnswer(new Answer<Void>() {
+      @Override public Void answer(InvocationOnMock invocation) {
+        final RequestType r = (RequestType) invocation.getArguments()[0];
+        assertEquals(request.xmlText(), r.xmlText());
+        return null;
+      }
+    }).when(visitor).request(isA(RequestType.class));
+
+    m_spool.read(visitor);
+
+    verify(visitor).request(isA(RequestType.class));
+  }
+}
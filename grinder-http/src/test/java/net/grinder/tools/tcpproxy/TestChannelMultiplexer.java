@@ -0,0 +1,367 @@
+// Copyright (C) 2013 Philip Aston
+// All rights reserved.
+//
+// This file is part of The Grinder software distribution. Refer to
+// the file LICENSE which is part of The Grinder distribution for
+// licensing details. The Grinder distribution is available on the
+// Internet at http://grinder.sourceforge.net/
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+// FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+// COPYRIGHT HOLDERS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+// (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+// SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+// HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+// STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+// OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.grinder.tools.tcpproxy;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.isA;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.ConnectException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.Logger;
+
+
+/**
+ * Unit tests for {@link ChannelMultiplexer}.
+ *
+ * @author Philip Aston
+ */
+public class TestChannelMultiplexer {
+
+  private final Logger m_logger = mock(Logger.class);
+
+  private ServerSocketChannel m_serverSocketChannel;
+  private ChannelMultiplexer m_multiplexer;
+
+  @Before public void setUp() throws Exception {
+    m_serverSocketChannel = ServerSocketChannel.open();
+    m_serverSocketChannel.socket().bind(
+      new InetSocketAddress(InetAddress.getByName(null), 0));
+
+    m_multiplexer = new ChannelMultiplexer(2, 1024, m_logger);
+  }
+
+  @After public void tearDown() throws Exception {
+    m_multiplexer.shutdown();
+    m_serverSocketChannel.close();
+  }
+
+  /**
+   * Returns a connected pair of blocking channels.
+   */
+  private SocketChannel[] connect() throws IOException {
+    final SocketChannel client =
+      SocketChannel.open(m_serverSocketChannel.socket()
+                         .getLocalSocketAddress());
+
+    return new SocketChannel[] { client, m_serverSocketChannel.accept() };
+  }
+
+  @Test public void testEcho() throws Exception {
+    final SocketChannel[] channels = connect();
+
+    final ChannelMultiplexer.Connection connection =
+      m_multiplexer.add(channels[1], null);
+
+    final OutputStream out = connection.getOutputStream();
+    final ChannelMultiplexer.Handler handler =
+      mock(ChannelMultiplexer.Handler.class);
+
+    connection.read(new ChannelMultiplexer.Handler() {
+        public void handle(byte[] buffer, int bytesRead) throws IOException {
+          out.write(buffer, 0, bytesRead);
+          handler.handle(buffer, bytesRead);
+        }
+
+        public void connectionClosed() {
+          handler.connectionClosed();
+        }
+      });
+
+    assertEquals(1, m_multiplexer.getNumberOfConnections());
+
+    final byte[] data = "Hello world".getBytes();
+    channels[0].socket().getOutputStream().write(data);
+
+    final byte[] result = new byte[data.length];
+    new DataInputStream(channels[0].socket().getInputStream())
+      .readFully(result);
+
+    assertArrayEquals(data, result);
+
+    channels[0].close();
+
+    verify(handler, timeout(5000)).connectionClosed();
+
+    while (m_multiplexer.getNumberOfConnections() != 0) {
+      Thread.sleep(10);
+    }
+
+    assertFalse(channels[1].isOpen());
+
+    try {
+      out.write(1);
+      fail("Expected IOException");
+    }
+    catch (IOException e) {
+    }
+  }
+
+  @Test public void testForwardToSlowReader() throws Exception {
+    final SocketChannel[] source = connect();
+    final SocketChannel[] target = connect();
+
+    final ChannelMultiplexer.Connection sourceConnection =
+      m_multiplexer.add(source[1], null);
+
+    final ChannelMultiplexer.Connection targetConnection =
+      m_multiplexer.add(target[1], sourceConnection);
+
+    final OutputStream out = targetConnection.getOutputStream();
+
+    sourceConnection.read(new ChannelMultiplexer.Handler() {
+        public void handle(byte[] buffer, int bytesRead) throws IOException {
+          out.write(buffer, 0, bytesRead);
+        }
+
+        public void connectionClosed() {
+          targetConnection.close();
+        }
+      });
+
+    final byte[] data = new byte[4000000];
+    new Random().nextBytes(data);
+
+    // Much larger than the socket buffers and the maximum backlog, so the
+    // source has to be paused until the target catches up.
+    final Thread writer = new Thread() {
+        @Override public void run() {
+          try {
+            source[0].socket().getOutputStream().write(data);
+            source[0].close();
+          }
+          catch (IOException e) {
+            throw new AssertionError(e);
+          }
+        }
+      };
+
+    writer.start();
+
+    Thread.sleep(200);
+
+    final byte[] result = new byte[data.length];
+    final DataInputStream in =
+      new DataInputStream(target[0].socket().getInputStream());
+    in.readFully(result);
+    writer.join();
+
+    assertArrayEquals(data, result);
+
+    // Target is closed once the data has been written.
+    assertEquals(-1, in.read());
+  }
+
+  @Test public void testShutdown() throws Exception {
+    final SocketChannel[] channels = connect();
+
+    final ChannelMultiplexer.Connection connection =
+      m_multiplexer.add(channels[1], null);
+
+    final ChannelMultiplexer.Handler handler =
+      mock(ChannelMultiplexer.Handler.class);
+
+    connection.read(handler);
+
+    m_multiplexer.shutdown();
+
+    verify(handler).connectionClosed();
+    assertFalse(channels[1].isOpen());
+    assertEquals(0, m_multiplexer.getNumberOfConnections());
+
+    try {
+      m_multiplexer.add(connect()[1], null);
+      fail("Expected IOException");
+    }
+    catch (IOException e) {
+    }
+
+    m_multiplexer.shutdown();
+  }
+
+  @Test public void testConnect() throws Exception {
+    final ChannelMultiplexer.ConnectHandler connectHandler =
+      mock(ChannelMultiplexer.ConnectHandler.class);
+
+    final ChannelMultiplexer.Connection connection =
+      m_multiplexer.connect(
+        m_serverSocketChannel.socket().getInetAddress().getHostAddress(),
+        m_serverSocketChannel.socket().getLocalPort(),
+        null,
+        connectHandler);
+
+    final ChannelMultiplexer.Handler handler =
+      mock(ChannelMultiplexer.Handler.class);
+    connection.read(handler);
+
+    // Written before the connection is established.
+    final byte[] data = "Hello world".getBytes();
+    connection.getOutputStream().write(data);
+
+    final SocketChannel server = m_serverSocketChannel.accept();
+
+    final byte[] result = new byte[data.length];
+    new DataInputStream(server.socket().getInputStream()).readFully(result);
+    assertArrayEquals(data, result);
+
+    server.socket().getOutputStream().write(data);
+    verify(handler, timeout(5000)).handle(isA(byte[].class), any(int.class));
+
+    server.close();
+
+    verify(handler, timeout(5000)).connectionClosed();
+    verifyNoMoreInteractions(connectHandler);
+  }
+
+  @Test public void testConnectRefused() throws Exception {
+    final ServerSocket closed = new ServerSocket(0);
+    final int port = closed.getLocalPort();
+    closed.close();
+
+    final ChannelMultiplexer.ConnectHandler connectHandler =
+      mock(ChannelMultiplexer.ConnectHandler.class);
+
+    final ChannelMultiplexer.Connection connection =
+      m_multiplexer.connect("127.0.0.1", port, null, connectHandler);
+
+    final ChannelMultiplexer.Handler handler =
+      mock(ChannelMultiplexer.Handler.class);
+    connection.read(handler);
+
+    verify(connectHandler, timeout(5000))
+      .connectFailed(isA(ConnectException.class));
+    verify(handler, timeout(5000)).connectionClosed();
+
+    while (m_multiplexer.getNumberOfConnections() != 0) {
+      Thread.sleep(10);
+    }
+
+    try {
+      connection.getOutputStream().write(1);
+      fail("Expected IOException");
+    }
+    catch (IOException e) {
+    }
+  }
+
+  @Test public void testConnectBadAddress() throws Exception {
+    final ChannelMultiplexer.ConnectHandler connectHandler =
+      mock(ChannelMultiplexer.ConnectHandler.class);
+
+    final ChannelMultiplexer.Connection connection =
+      m_multiplexer.connect("127.0.0.1", -1, null, connectHandler);
+
+    final ChannelMultiplexer.Handler handler =
+      mock(ChannelMultiplexer.Handler.class);
+    connection.read(handler);
+
+    verify(connectHandler, timeout(5000)).connectFailed(isA(IOException.class));
+    verify(handler, timeout(5000)).connectionClosed();
+  }
+
+  @Test public void testHandlerFailure() throws Exception {
+    final SocketChannel[] bad = connect();
+    final SocketChannel[] good = connect();
+
+    final ChannelMultiplexer.Connection badConnection =
+      m_multiplexer.add(bad[1], null);
+
+    // Same selector thread.
+    final ChannelMultiplexer.Connection goodConnection =
+      m_multiplexer.add(good[1], badConnection);
+
+    final ChannelMultiplexer.Handler badHandler =
+      mock(ChannelMultiplexer.Handler.class);
+
+    badConnection.read(new ChannelMultiplexer.Handler() {
+        public void handle(byte[] buffer, int bytesRead) {
+          throw new RuntimeException("Broken handler");
+        }
+
+        public void connectionClosed() {
+          badHandler.connectionClosed();
+        }
+      });
+
+    final OutputStream goodOut = goodConnection.getOutputStream();
+
+    goodConnection.read(new ChannelMultiplexer.Handler() {
+        public void handle(byte[] buffer, int bytesRead) throws IOException {
+          goodOut.write(buffer, 0, bytesRead);
+        }
+
+        public void connectionClosed() {
+        }
+      });
+
+    bad[0].socket().getOutputStream().write(1);
+
+    verify(badHandler, timeout(5000)).connectionClosed();
+    assertEquals(-1, bad[0].socket().getInputStream().read());
+    verify(m_logger).error(isA(String.class), isA(RuntimeException.class));
+
+    final byte[] data = "Still here".getBytes();
+    good[0].socket().getOutputStream().write(data);
+
+    final byte[] result = new byte[data.length];
+    new DataInputStream(good[0].socket().getInputStream()).readFully(result);
+
+    assertArrayEquals(data, result);
+    assertEquals(1, m_multiplexer.getNumberOfConnections());
+  }
+
+  @Test public void testConstruction() throws Exception {
+    try {
+      new ChannelMultiplexer(0, 1024, m_logger);
+      fail("Expected IllegalArgumentException");
+    }
+    catch (IllegalArgumentException e) {
+    }
+
+    final ChannelMultiplexer multiplexer =
+      new ChannelMultiplexer(1, 1024, m_logger);
+    assertEquals(0, multiplexer.getNumberOfConnections());
+    multiplexer.shutdown();
+
+    assertTrue(m_serverSocketChannel.isOpen());
+  }
+}
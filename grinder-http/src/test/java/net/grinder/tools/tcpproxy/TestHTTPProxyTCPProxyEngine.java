@@ -225,14 +225,23 @@ public class TestHTTPProxyTCPProxyEngine {
   private void waitUntilAllStreamThreadsStopped(final AbstractTCPProxyEngine engine)
     throws InterruptedException {
 
+    final ChannelMultiplexer multiplexer = engine.getMultiplexer();
+
     for (int i = 0;
-         i < 10 && engine.getStreamThreadGroup().activeCount() > 0;
+         i < 10 && (engine.getStreamThreadGroup().activeCount() > 0 ||
+                    multiplexer != null &&
+                    multiplexer.getNumberOfConnections() > 0);
          ++i) {
       Thread.sleep(50);
     }
 
     assertEquals("Failed waiting for all stream threads to stop",
                  0, engine.getStreamThreadGroup().activeCount());
+
+    if (multiplexer != null) {
+      assertEquals("Failed waiting for all connections to close",
+                   0, multiplexer.getNumberOfConnections());
+    }
   }
 
   private void httpProxyEngineBadRequestTests(final AbstractTCPProxyEngine engine)
@@ -532,6 +541,44 @@ public class TestHTTPProxyTCPProxyEngine {
     verifyNoMoreInteractions(m_requestFilter, m_responseFilter);
   }
 
+  @Test public void testMultiplexedHTTPProxyEngine() throws Exception {
+    final AbstractTCPProxyEngine engine;
+
+    System.setProperty("tcpproxy.selectorthreads", "2");
+
+    try {
+      engine = new HTTPProxyTCPProxyEngine(m_sslSocketFactory,
+                                           m_requestFilter,
+                                           m_responseFilter,
+                                           m_out,
+                                           m_logger,
+                                           m_localEndPoint,
+                                           false,
+                                           100000,
+                                           null,
+                                           null);
+    }
+    finally {
+      System.clearProperty("tcpproxy.selectorthreads");
+    }
+
+    assertNotNull(engine.getMultiplexer());
+
+    final Thread engineThread = new Thread(engine, "Run engine");
+    engineThread.start();
+
+    httpProxyEngineBadRequestTests(engine);
+    reset(m_requestFilter, m_responseFilter);
+    httpProxyEngineGoodRequestTests(engine);
+    reset(m_requestFilter, m_responseFilter);
+    httpsProxyEngineGoodRequestTest(engine);
+
+    engine.stop();
+    engineThread.join();
+
+    verifyNoMoreInteractions(m_requestFilter, m_responseFilter);
+  }
+
   @Test public void testColourHTTPProxyEngine() throws Exception {
 
     final AbstractTCPProxyEngine engine =
@@ -312,6 +312,82 @@ public class TestPortForwarderTCPProxyEngine {
     engineTests(engine, connectionDetails);
   }
 
+  @Test public void testMultiplexedEngine() throws Exception {
+
+    final AcceptSingleConnectionAndEcho echoer =
+      new AcceptSingleConnectionAndEcho();
+
+    final EndPoint localEndPoint = new EndPoint("localhost", m_localPort);
+
+    final ConnectionDetails connectionDetails =
+      new ConnectionDetails(localEndPoint,
+                            echoer.getEndPoint(),
+                            false);
+
+    m_requestFilterStubFactory.setResult(null);
+    m_responseFilterStubFactory.setResult(null);
+
+    final AbstractTCPProxyEngine engine;
+
+    System.setProperty("tcpproxy.selectorthreads", "2");
+
+    try {
+      engine = new PortForwarderTCPProxyEngine(m_requestFilter,
+                                               m_responseFilter,
+                                               m_out,
+                                               m_logger,
+                                               connectionDetails,
+                                               false,
+                                               100000);
+    }
+    finally {
+      System.clearProperty("tcpproxy.selectorthreads");
+    }
+
+    assertNotNull(engine.getMultiplexer());
+
+    resetLogger();
+    m_requestFilterStubFactory.resetCallHistory();
+    m_responseFilterStubFactory.resetCallHistory();
+
+    engineTests(engine, connectionDetails);
+
+    assertEquals(0, engine.getMultiplexer().getNumberOfConnections());
+    assertEquals(0, engine.getStreamThreadGroup().activeCount());
+  }
+
+  @Test public void testMultiplexedTimeOut() throws Exception {
+
+    final ConnectionDetails connectionDetails =
+      new ConnectionDetails(new EndPoint("localhost", m_localPort),
+                            new EndPoint("wherever", 9999),
+                            false);
+
+    final TCPProxyEngine engine;
+
+    System.setProperty("tcpproxy.selectorthreads", "1");
+
+    try {
+      engine = new PortForwarderTCPProxyEngine(m_requestFilter,
+                                               m_responseFilter,
+                                               m_out,
+                                               m_logger,
+                                               connectionDetails,
+                                               false,
+                                               10);
+    }
+    finally {
+      System.clearProperty("tcpproxy.selectorthreads");
+    }
+
+    resetLogger();
+
+    engine.run();
+
+    verify(m_logger).error("Listen time out");
+    verifyNoMoreInteractions(m_logger);
+  }
+
   @Test public void testOutputStreamFilterTeeWithBadFilters() throws Exception {
 
     final EndPoint localEndPoint = new EndPoint("localhost", m_localPort);
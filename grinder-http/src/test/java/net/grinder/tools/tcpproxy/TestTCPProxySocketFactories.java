@@ -28,6 +28,7 @@ import java.io.FileOutputStream;
 import java.net.ConnectException;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.net.UnknownHostException;
 
 import javax.net.ssl.SSLServerSocket;
 
@@ -67,6 +68,49 @@ public class TestTCPProxySocketFactories extends AbstractFileTestCase {
     createdLocalSocket.close();
   }
 
+  public void testTCPProxySocketFactoryImplementationWithChannels()
+    throws Exception {
+    final TCPProxySocketFactory socketFactory =
+      new TCPProxySocketFactoryImplementation(true);
+
+    final ServerSocket createdServerSocket =
+      socketFactory.createServerSocket(new EndPoint("localhost",
+                                                    m_freeLocalPort),
+                                       100);
+
+    assertNotNull(createdServerSocket.getChannel());
+    assertEquals(100, createdServerSocket.getSoTimeout());
+
+    final Socket createdLocalSocket =
+      socketFactory.createClientSocket(new EndPoint("localhost",
+                                                    m_freeLocalPort));
+
+    assertNotNull(createdLocalSocket.getChannel());
+
+    final Socket acceptedSocket = createdServerSocket.accept();
+    assertNotNull(acceptedSocket.getChannel());
+
+    acceptedSocket.close();
+    createdServerSocket.close();
+    createdLocalSocket.close();
+
+    try {
+      socketFactory.createClientSocket(
+        new EndPoint("localhost", m_freeLocalPort));
+      fail("Expected VerboseConnectException");
+    }
+    catch (VerboseConnectException e) {
+      assertTrue(e.getCause() instanceof ConnectException);
+    }
+
+    try {
+      socketFactory.createClientSocket(new EndPoint("fictitious-host", 80));
+      fail("Expected UnknownHostException");
+    }
+    catch (UnknownHostException e) {
+    }
+  }
+
   public void testTCPProxySSLSocketFactoryImplementation() throws Exception {
     final TCPProxySSLSocketFactory socketFactory =
       new TCPProxySSLSocketFactoryImplementation();
@@ -28,6 +28,10 @@
  *
  *  http://www.innovation.ch/java/HTTPClient/ 
  *
+ * This file contains modifications for use with "The Grinder"
+ * (http://grinder.sourceforge.net) under the terms of the LGPL. They
+ * are marked below with the comment "GRINDER MODIFICATION".
+ *
  */
 
 package HTTPClient;
@@ -48,8 +52,14 @@ import java.io.IOException;
  */
 class BufferedInputStream extends FilterInputStream
 {
-    /** our read buffer */
-    private byte[] buffer = new byte[2000];
+    /** ++GRINDER MODIFICATION **/
+    // /** our read buffer */
+    // private byte[] buffer = new byte[2000];
+    private static final byte[] CLOSED = new byte[0];
+
+    /** our read buffer, taken from the pool and returned on close */
+    private byte[] buffer = Util.acquireBuffer();
+    /** --GRINDER MODIFICATION **/
     /** the next byte in the buffer at which to read */
     private int    pos = 0;
     /** the end of the valid data in the buffer */
@@ -61,7 +71,10 @@ class BufferedInputStream extends FilterInputStream
      * both the current buffer is empty and no mark has been set. This is just
      * an attempt to balance copying vs. multiple reads.
      */
-    private int    lr_thrshld = 1500;
+    /** ++GRINDER MODIFICATION **/
+    // private int    lr_thrshld = 1500;
+    private int    lr_thrshld = Util.IO_BUFFER_SIZE * 3 / 4;
+    /** --GRINDER MODIFICATION **/
 
 
     /**
@@ -192,6 +205,27 @@ class BufferedInputStream extends FilterInputStream
 	return avail;
     }
 
+    /** ++GRINDER MODIFICATION **/
+    /**
+     * Return our buffer to the pool. This must only be called once the
+     * stream has been closed, and when no other thread can be using it;
+     * any further reads will see EOF or an exception from the underlying
+     * stream.
+     */
+    void releaseBuffer()
+    {
+	final byte[] old = buffer;
+
+	buffer   = CLOSED;
+	pos      = 0;
+	end      = 0;
+	mark_pos = -1;
+
+	if (old != CLOSED)
+	    Util.releaseBuffer(old);
+    }
+    /** --GRINDER MODIFICATION **/
+
     /**
      * Mark the current read position so that we can start searching for the end boundary.
      */
@@ -28,6 +28,10 @@
  *
  *  http://www.innovation.ch/java/HTTPClient/ 
  *
+ * This file contains modifications for use with "The Grinder"
+ * (http://grinder.sourceforge.net) under the terms of the LGPL. They
+ * are marked below with the comment "GRINDER MODIFICATION".
+ *
  */
 
 package HTTPClient;
@@ -114,8 +118,11 @@ class ChunkedInputStream extends FilterInputStream
 
     public synchronized long skip(long num)  throws IOException
     {
-	byte[] tmp = new byte[(int) num];
-	int got = read(tmp, 0, (int) num);
+	/** ++GRINDER MODIFICATION **/
+	// byte[] tmp = new byte[(int) num];
+	// int got = read(tmp, 0, (int) num);
+	int got = Util.discard(this, num);
+	/** --GRINDER MODIFICATION **/
 
 	if (got > 0)
 	    return (long) got;
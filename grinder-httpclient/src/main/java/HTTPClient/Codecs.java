@@ -1560,21 +1560,30 @@ public class Codecs
     final static long getChunkLength(InputStream input)
 	    throws ParseException, IOException
     {
-	byte[] hex_len = new byte[16];	// if they send more than 8EB chunks...
-	int    off     = 0,
+	/** ++GRINDER MODIFICATION **/
+	// This is called for every chunk, so we accumulate the length as we
+	// read the digits rather than allocating a buffer and Strings. The
+	// original implementation is commented out below.
+	long   len  = 0;
+	int    off  = 0,
 	       ch;
-
-
-	// read chunk length
+	boolean bad = false;
 
 	while ((ch = input.read()) > 0  &&  (ch == ' '  ||  ch == '\t')) ;
 	if (ch < 0)
 	    throw new EOFException("Premature EOF while reading chunk length");
-	hex_len[off++] = (byte) ch;
+
+	do
+	{
+	    int digit = Character.digit((char) ch, 16);
+	    if (digit < 0  ||  len > (Long.MAX_VALUE >> 4))
+		bad = true;
+	    else
+		len = (len << 4) | digit;
+	    off++;
+	}
 	while ((ch = input.read()) > 0  &&  ch != '\r'  &&  ch != '\n'  &&
-		ch != ' '  &&  ch != '\t'  &&  ch != ';'  &&
-		off < hex_len.length)
-	    hex_len[off++] = (byte) ch;
+		ch != ' '  &&  ch != '\t'  &&  ch != ';'  &&  off < 16);
 
 	while ((ch == ' '  ||  ch == '\t')  &&  (ch = input.read()) > 0) ;
 	if (ch == ';')		// chunk-ext (ignore it)
@@ -1582,18 +1591,46 @@ public class Codecs
 
 	if (ch < 0)
 	    throw new EOFException("Premature EOF while reading chunk length");
-	if (ch != '\n'  &&  (ch != '\r'  ||  input.read() != '\n'))
-	    throw new ParseException("Didn't find valid chunk length: " +
-				     new String(hex_len, 0, off, "8859_1"));
-
-	// parse chunk length
-
-	try
-	    { return Long.parseLong(new String(hex_len, 0, off, "8859_1").trim(),
-				    16); }
-	catch (NumberFormatException nfe)
-	    { throw new ParseException("Didn't find valid chunk length: " +
-					new String(hex_len, 0, off, "8859_1") ); }
+	if (bad  ||  ch != '\n'  &&  (ch != '\r'  ||  input.read() != '\n'))
+	    throw new ParseException("Didn't find valid chunk length");
+
+	return len;
+
+	// byte[] hex_len = new byte[16];	// if they send more than 8EB chunks...
+	// int    off     = 0,
+	//        ch;
+	//
+	//
+	// // read chunk length
+	//
+	// while ((ch = input.read()) > 0  &&  (ch == ' '  ||  ch == '\t')) ;
+	// if (ch < 0)
+	//     throw new EOFException("Premature EOF while reading chunk length");
+	// hex_len[off++] = (byte) ch;
+	// while ((ch = input.read()) > 0  &&  ch != '\r'  &&  ch != '\n'  &&
+	// 	ch != ' '  &&  ch != '\t'  &&  ch != ';'  &&
+	// 	off < hex_len.length)
+	//     hex_len[off++] = (byte) ch;
+	//
+	// while ((ch == ' '  ||  ch == '\t')  &&  (ch = input.read()) > 0) ;
+	// if (ch == ';')		// chunk-ext (ignore it)
+	//     while ((ch = input.read()) > 0  &&  ch != '\r'  &&  ch != '\n') ;
+	//
+	// if (ch < 0)
+	//     throw new EOFException("Premature EOF while reading chunk length");
+	// if (ch != '\n'  &&  (ch != '\r'  ||  input.read() != '\n'))
+	//     throw new ParseException("Didn't find valid chunk length: " +
+	// 			     new String(hex_len, 0, off, "8859_1"));
+	//
+	// // parse chunk length
+	//
+	// try
+	//     { return Long.parseLong(new String(hex_len, 0, off, "8859_1").trim(),
+	// 			    16); }
+	// catch (NumberFormatException nfe)
+	//     { throw new ParseException("Didn't find valid chunk length: " +
+	// 				new String(hex_len, 0, off, "8859_1") ); }
+	/** --GRINDER MODIFICATION **/
     }
 
 }
@@ -42,6 +42,15 @@ import java.net.ProtocolException;
 import java.util.Vector;
 import java.util.Hashtable;
 import java.util.Enumeration;
+/** ++GRINDER MODIFICATION **/
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+/** --GRINDER MODIFICATION **/
 
 import java.awt.Frame;
 import java.awt.Panel;
@@ -103,6 +112,9 @@ import java.awt.event.WindowAdapter;
 public class CookieModule implements HTTPClientModule
 {
     /** the list of known cookies */
+    /** ++GRINDER MODIFICATION **/
+    // Maps each context to its CookieStore, rather than to a Hashtable.
+    /** --GRINDER MODIFICATION **/
     private static Hashtable cookie_cntxt_list = new Hashtable();
 
     /** the file to use for persistent cookie storage */
@@ -156,8 +168,15 @@ public class CookieModule implements HTTPClientModule
 	    {
 		ObjectInputStream ois =
 		    new ObjectInputStream(new FileInputStream(cookie_jar));
-		cookie_cntxt_list.put(HTTPConnection.getDefaultContext(),
-				      (Hashtable) ois.readObject());
+		/** ++GRINDER MODIFICATION **/
+//		cookie_cntxt_list.put(HTTPConnection.getDefaultContext(),
+//				      (Hashtable) ois.readObject());
+		CookieStore store = new CookieStore();
+		Enumeration e = ((Hashtable) ois.readObject()).elements();
+		while (e.hasMoreElements())
+		    store.put((Cookie) e.nextElement());
+		cookie_cntxt_list.put(HTTPConnection.getDefaultContext(), store);
+		/** --GRINDER MODIFICATION **/
 		ois.close();
 	    }
 	}
@@ -186,15 +205,14 @@ public class CookieModule implements HTTPClientModule
 //		    cookie_list.put(cookie, cookie);
 //	    }
         Hashtable cookie_list = new Hashtable();
-        Enumeration e = Util.getList(cookie_cntxt_list,
-                        HTTPConnection.getDefaultContext())
-                   .elements();
+        Cookie[] cookies =
+          getCookieStore(HTTPConnection.getDefaultContext()).toArray();
 
         // discard cookies which are not to be kept across sessions
 
-        while (e.hasMoreElements())
+        for (int idx=0; idx<cookies.length; idx++)
         {
-        Cookie cookie = (Cookie) e.nextElement();
+        Cookie cookie = cookies[idx];
         if (!cookie.discard())
             cookie_list.put(cookie, cookie);
         }
@@ -308,60 +326,36 @@ public class CookieModule implements HTTPClientModule
 
 	// Now set any new cookie headers
 
-	Hashtable cookie_list =
-	    Util.getList(cookie_cntxt_list, req.getConnection().getContext());
+	/** ++GRINDER MODIFICATION **/
+	// Select the cookies to send using the store's index, rather than
+	// checking every cookie in the context.
+//	Hashtable cookie_list =
+//	    Util.getList(cookie_cntxt_list, req.getConnection().getContext());
+	CookieStore cookie_list =
+	    getCookieStore(req.getConnection().getContext());
 	if (cookie_list.size() == 0)
 	    return REQ_CONTINUE;	// no need to create a lot of objects
 
 	Vector  names   = new Vector();
-	Vector  lens    = new Vector();
 	int     version = 0;
 
-	synchronized (cookie_list)
+	// in order of decreasing path length
+	List<Cookie> selected = cookie_list.select(req);
+
+	for (int idx=0; idx<selected.size(); idx++)
 	{
-	    Enumeration list = cookie_list.elements();
-	    Vector remove_list = null;
+	    Cookie cookie = selected.get(idx);
 
-	    while (list.hasMoreElements())
+	    if (cookie_handler == null  ||
+		cookie_handler.sendCookie(cookie, req))
 	    {
-		Cookie cookie = (Cookie) list.nextElement();
-
-		if (cookie.hasExpired())
-		{
-		    Log.write(Log.COOKI, "CookM: cookie has expired and is " +
-					 "being removed: " + cookie);
-		    if (remove_list == null)  remove_list = new Vector();
-		    remove_list.addElement(cookie);
-		    continue;
-		}
+		names.addElement(cookie.toExternalForm());
 
-		if (cookie.sendWith(req)  &&  (cookie_handler == null  ||
-		    cookie_handler.sendCookie(cookie, req)))
-		{
-		    int len = cookie.getPath().length();
-		    int idx;
-
-		    // insert in correct position
-		    for (idx=0; idx<lens.size(); idx++)
-			if (((Integer) lens.elementAt(idx)).intValue() < len)
-			    break;
-
-		    names.insertElementAt(cookie.toExternalForm(), idx);
-		    lens.insertElementAt(new Integer(len), idx);
-
-		    if (cookie instanceof Cookie2)
-			version = Math.max(version, ((Cookie2) cookie).getVersion());
-		}
-	    }
-
-	    // remove any marked cookies
-	    // Note: we can't do this during the enumeration!
-	    if (remove_list != null)
-	    {
-		for (int idx=0; idx<remove_list.size(); idx++)
-		    cookie_list.remove(remove_list.elementAt(idx));
+		if (cookie instanceof Cookie2)
+		    version = Math.max(version, ((Cookie2) cookie).getVersion());
 	    }
 	}
+	/** --GRINDER MODIFICATION **/
 
 	if (!names.isEmpty())
 	{
@@ -479,13 +473,17 @@ public class CookieModule implements HTTPClientModule
 		Log.write(Log.COOKI, "CookM: Cookie " + idx + ": " + cookies[idx]);
 	}
 
-	Hashtable cookie_list =
-	    Util.getList(cookie_cntxt_list, req.getConnection().getContext());
+	/** ++GRINDER MODIFICATION **/
+//	Hashtable cookie_list =
+//	    Util.getList(cookie_cntxt_list, req.getConnection().getContext());
+	CookieStore cookie_list =
+	    getCookieStore(req.getConnection().getContext());
+	/** --GRINDER MODIFICATION **/
 	synchronized (cookie_list)
 	{
 	    for (int idx=0; idx<cookies.length; idx++)
 	    {
-		Cookie cookie = (Cookie) cookie_list.get(cookies[idx]);
+		Cookie cookie = cookie_list.get(cookies[idx]);
 		if (cookie != null  &&  cookies[idx].hasExpired())
 		{
 		    Log.write(Log.COOKI, "CookM: cookie has expired and is " +
@@ -496,7 +494,7 @@ public class CookieModule implements HTTPClientModule
 		{
 		    if (cookie_handler == null  ||
 			cookie_handler.acceptCookie(cookies[idx], req, resp))
-			cookie_list.put(cookies[idx], cookies[idx]);
+			cookie_list.put(cookies[idx]);
 		}
 	    }
 	}
@@ -526,6 +524,220 @@ public class CookieModule implements HTTPClientModule
     }
 
 
+    /** ++GRINDER MODIFICATION **/
+    /**
+     * Get the cookie store for a context, creating it if necessary.
+     *
+     * @param context the context Object
+     * @return the store
+     */
+    static CookieStore getCookieStore(Object context)
+    {
+	synchronized (cookie_cntxt_list)
+	{
+	    CookieStore store = (CookieStore) cookie_cntxt_list.get(context);
+	    if (store == null)
+	    {
+		store = new CookieStore();
+		cookie_cntxt_list.put(context, store);
+	    }
+
+	    return store;
+	}
+    }
+
+
+    /**
+     * The cookies of a context, indexed by domain and then by path, so that
+     * selecting the cookies for a request only examines the cookies for the
+     * domains and paths that match it.
+     *
+     * <P>Expired cookies are removed lazily, when they are next selected.
+     * Replaces the per-context Hashtable, which required every cookie to be
+     * checked for every request.
+     */
+    static final class CookieStore
+    {
+	private static final Comparator<Cookie> LONGEST_PATH_FIRST =
+	    new Comparator<Cookie>()
+	    {
+		public int compare(Cookie a, Cookie b)
+		{
+		    return b.getPath().length() - a.getPath().length();
+		}
+	    };
+
+	/** domain -> path -> cookies */
+	private final Map<String, Map<String, Map<Cookie, Cookie>>> domains =
+	    new HashMap<String, Map<String, Map<Cookie, Cookie>>>();
+
+	private int size;
+
+	synchronized int size()
+	{
+	    return size;
+	}
+
+	synchronized Cookie get(Cookie cookie)
+	{
+	    Map<Cookie, Cookie> cookies = getCookies(cookie, false);
+	    return cookies != null ? cookies.get(cookie) : null;
+	}
+
+	/**
+	 * Add a cookie, replacing any existing cookie with the same name,
+	 * domain and path.
+	 */
+	synchronized void put(Cookie cookie)
+	{
+	    Map<Cookie, Cookie> cookies = getCookies(cookie, true);
+
+	    // Remove first, so the replacement is the key.
+	    if (cookies.remove(cookie) == null)
+		size++;
+
+	    cookies.put(cookie, cookie);
+	}
+
+	synchronized void remove(Cookie cookie)
+	{
+	    Map<String, Map<Cookie, Cookie>> paths =
+		domains.get(cookie.getDomain());
+
+	    if (paths == null)
+		return;
+
+	    Map<Cookie, Cookie> cookies = paths.get(cookie.getPath());
+
+	    if (cookies != null  &&  cookies.remove(cookie) != null)
+	    {
+		size--;
+
+		if (cookies.isEmpty())
+		{
+		    paths.remove(cookie.getPath());
+
+		    if (paths.isEmpty())
+			domains.remove(cookie.getDomain());
+		}
+	    }
+	}
+
+	synchronized Cookie[] toArray()
+	{
+	    Cookie[] result = new Cookie[size];
+	    int idx = 0;
+
+	    for (Map<String, Map<Cookie, Cookie>> paths : domains.values())
+		for (Map<Cookie, Cookie> cookies : paths.values())
+		    for (Cookie cookie : cookies.keySet())
+			result[idx++] = cookie;
+
+	    return result;
+	}
+
+	/**
+	 * Select the unexpired cookies that should be sent with a request.
+	 *
+	 * @param req the request
+	 * @return the cookies, in order of decreasing path length
+	 */
+	synchronized List<Cookie> select(RoRequest req)
+	{
+	    List<Cookie> result = new ArrayList<Cookie>();
+
+	    // The candidate domains are those that Cookie.sendWith() would
+	    // accept: the effective host, and each of its suffixes that
+	    // start with a '.'.
+	    String eff_host = req.getConnection().getHost();
+	    if (eff_host.indexOf('.') == -1)  eff_host += ".local";
+
+	    String path = Util.getPath(req.getRequestURI());
+
+	    select(eff_host, path, req, result);
+
+	    for (int idx = eff_host.indexOf('.');
+		 idx != -1;
+		 idx = eff_host.indexOf('.', idx+1))
+		select(eff_host.substring(idx), path, req, result);
+
+	    if (result.size() > 1)
+		Collections.sort(result, LONGEST_PATH_FIRST);
+
+	    return result;
+	}
+
+	private void select(String domain, String path, RoRequest req,
+			    List<Cookie> result)
+	{
+	    Map<String, Map<Cookie, Cookie>> paths = domains.get(domain);
+
+	    if (paths == null)
+		return;
+
+	    Iterator<Map.Entry<String, Map<Cookie, Cookie>>> path_list =
+		paths.entrySet().iterator();
+
+	    while (path_list.hasNext())
+	    {
+		Map.Entry<String, Map<Cookie, Cookie>> entry = path_list.next();
+
+		if (!path.startsWith(entry.getKey()))
+		    continue;
+
+		Iterator<Cookie> cookie_list = entry.getValue().keySet().iterator();
+
+		while (cookie_list.hasNext())
+		{
+		    Cookie cookie = cookie_list.next();
+
+		    if (cookie.hasExpired())
+		    {
+			Log.write(Log.COOKI, "CookM: cookie has expired and is " +
+					     "being removed: " + cookie);
+			cookie_list.remove();
+			size--;
+		    }
+		    else if (cookie.sendWith(req))
+			result.add(cookie);
+		}
+
+		if (entry.getValue().isEmpty())
+		    path_list.remove();
+	    }
+
+	    if (paths.isEmpty())
+		domains.remove(domain);
+	}
+
+	private Map<Cookie, Cookie> getCookies(Cookie cookie, boolean create)
+	{
+	    Map<String, Map<Cookie, Cookie>> paths =
+		domains.get(cookie.getDomain());
+
+	    if (paths == null)
+	    {
+		if (!create)
+		    return null;
+
+		paths = new HashMap<String, Map<Cookie, Cookie>>();
+		domains.put(cookie.getDomain(), paths);
+	    }
+
+	    Map<Cookie, Cookie> cookies = paths.get(cookie.getPath());
+
+	    if (cookies == null  &&  create)
+	    {
+		cookies = new HashMap<Cookie, Cookie>();
+		paths.put(cookie.getPath(), cookies);
+	    }
+
+	    return cookies;
+	}
+    }
+    /** --GRINDER MODIFICATION **/
+
+
     /**
      * List all stored cookies for all contexts.
      *
@@ -542,14 +754,20 @@ public class CookieModule implements HTTPClientModule
 	    Enumeration cntxt_list = cookie_cntxt_list.elements();
 	    while (cntxt_list.hasMoreElements())
 	    {
-		Hashtable cntxt = (Hashtable) cntxt_list.nextElement();
-		synchronized (cntxt)
-		{
-		    cookies = Util.resizeArray(cookies, idx+cntxt.size());
-		    Enumeration cookie_list = cntxt.elements();
-		    while (cookie_list.hasMoreElements())
-			cookies[idx++] = (Cookie) cookie_list.nextElement();
-		}
+		/** ++GRINDER MODIFICATION **/
+//		Hashtable cntxt = (Hashtable) cntxt_list.nextElement();
+//		synchronized (cntxt)
+//		{
+//		    cookies = Util.resizeArray(cookies, idx+cntxt.size());
+//		    Enumeration cookie_list = cntxt.elements();
+//		    while (cookie_list.hasMoreElements())
+//			cookies[idx++] = (Cookie) cookie_list.nextElement();
+//		}
+		Cookie[] cntxt = ((CookieStore) cntxt_list.nextElement()).toArray();
+		cookies = Util.resizeArray(cookies, idx+cntxt.length);
+		System.arraycopy(cntxt, 0, cookies, idx, cntxt.length);
+		idx += cntxt.length;
+		/** --GRINDER MODIFICATION **/
 	    }
 
 	    return cookies;
@@ -566,24 +784,22 @@ public class CookieModule implements HTTPClientModule
      */
     public static Cookie[] listAllCookies(Object context)
     {
-	Hashtable cookie_list = Util.getList(cookie_cntxt_list, context);
-
-	synchronized (cookie_list)
-	{
-	    Cookie[] cookies = new Cookie[cookie_list.size()];
-	    int idx = 0;
-
-	    /** ++GRINDER MODIFICATION **/
+	/** ++GRINDER MODIFICATION **/
+//	Hashtable cookie_list = Util.getList(cookie_cntxt_list, context);
+//
+//	synchronized (cookie_list)
+//	{
+//	    Cookie[] cookies = new Cookie[cookie_list.size()];
+//	    int idx = 0;
+//
 //	    Enumeration enum = cookie_list.elements();
 //	    while (enum.hasMoreElements())
 //		cookies[idx++] = (Cookie) enum.nextElement();
-        Enumeration e = cookie_list.elements();
-        while (e.hasMoreElements())
-        cookies[idx++] = (Cookie) e.nextElement();
-        /** --GRINDER MODIFICATION **/
-        
-	    return cookies;
-	}
+//
+//	    return cookies;
+//	}
+	return getCookieStore(context).toArray();
+	/** --GRINDER MODIFICATION **/
     }
 
 
@@ -597,9 +813,12 @@ public class CookieModule implements HTTPClientModule
      */
     public static void addCookie(Cookie cookie)
     {
-	Hashtable cookie_list =
-	    Util.getList(cookie_cntxt_list, HTTPConnection.getDefaultContext());
-	cookie_list.put(cookie, cookie);
+	/** ++GRINDER MODIFICATION **/
+//	Hashtable cookie_list =
+//	    Util.getList(cookie_cntxt_list, HTTPConnection.getDefaultContext());
+//	cookie_list.put(cookie, cookie);
+	getCookieStore(HTTPConnection.getDefaultContext()).put(cookie);
+	/** --GRINDER MODIFICATION **/
     }
 
 
@@ -615,8 +834,11 @@ public class CookieModule implements HTTPClientModule
      */
     public static void addCookie(Cookie cookie, Object context)
     {
-	Hashtable cookie_list = Util.getList(cookie_cntxt_list, context);
-	cookie_list.put(cookie, cookie);
+	/** ++GRINDER MODIFICATION **/
+//	Hashtable cookie_list = Util.getList(cookie_cntxt_list, context);
+//	cookie_list.put(cookie, cookie);
+	getCookieStore(context).put(cookie);
+	/** --GRINDER MODIFICATION **/
     }
 
 
@@ -630,9 +852,12 @@ public class CookieModule implements HTTPClientModule
      */
     public static void removeCookie(Cookie cookie)
     {
-	Hashtable cookie_list =
-	    Util.getList(cookie_cntxt_list, HTTPConnection.getDefaultContext());
-	cookie_list.remove(cookie);
+	/** ++GRINDER MODIFICATION **/
+//	Hashtable cookie_list =
+//	    Util.getList(cookie_cntxt_list, HTTPConnection.getDefaultContext());
+//	cookie_list.remove(cookie);
+	getCookieStore(HTTPConnection.getDefaultContext()).remove(cookie);
+	/** --GRINDER MODIFICATION **/
     }
 
 
@@ -647,8 +872,11 @@ public class CookieModule implements HTTPClientModule
      */
     public static void removeCookie(Cookie cookie, Object context)
     {
-	Hashtable cookie_list = Util.getList(cookie_cntxt_list, context);
-	cookie_list.remove(cookie);
+	/** ++GRINDER MODIFICATION **/
+//	Hashtable cookie_list = Util.getList(cookie_cntxt_list, context);
+//	cookie_list.remove(cookie);
+	getCookieStore(context).remove(cookie);
+	/** --GRINDER MODIFICATION **/
     }
 
 
@@ -334,6 +334,34 @@ public class HTTPConnection implements GlobalConstants, HTTPClientModuleConstant
     public TimeAuthority getTimeAuthority() {
       return timeAuthority;
     }
+
+    public interface HostResolver {
+      InetAddress[] getAllByName(String host) throws UnknownHostException;
+    }
+
+    private static HostResolver standardHostResolver =
+      new HostResolver() {
+        public InetAddress[] getAllByName(String host)
+          throws UnknownHostException {
+          return InetAddress.getAllByName(host);
+        }
+      };
+
+    private HostResolver hostResolver = standardHostResolver;
+
+    /**
+     * Set the resolver used to look up the addresses of the server (or
+     * proxy) when creating new sockets. Pass <code>null</code> to use
+     * <code>InetAddress.getAllByName()</code>.
+     */
+    public void setHostResolver(HostResolver hostResolver) {
+      this.hostResolver =
+        hostResolver != null ? hostResolver : standardHostResolver;
+    }
+
+    public HostResolver getHostResolver() {
+      return hostResolver;
+    }
     /** --GRINDER MODIFICATION **/
 
     /** the default timeout to use for new connections */
@@ -3511,7 +3539,10 @@ public class HTTPConnection implements GlobalConstants, HTTPClientModuleConstant
 	              getTimeAuthority().getTimeInMilliseconds();
                 /** --GRINDER MODIFICATION **/
 		// try all A records
-		InetAddress[] addr_list = InetAddress.getAllByName(actual_host);
+                /** ++GRINDER MODIFICATION **/
+		InetAddress[] addr_list =
+                  getHostResolver().getAllByName(actual_host);
+                /** --GRINDER MODIFICATION **/
                 /** ++GRINDER MODIFICATION **/
                 // capture time for DNS Lookup
                 DNS_time.set(
@@ -4188,7 +4219,10 @@ public class HTTPConnection implements GlobalConstants, HTTPClientModuleConstant
             /** --GRINDER MODIFICATION **/
 
 		    // try all A records
-		    InetAddress[] addr_list = InetAddress.getAllByName(actual_host);
+                    /** ++GRINDER MODIFICATION **/
+		    InetAddress[] addr_list =
+                      getHostResolver().getAllByName(actual_host);
+                    /** --GRINDER MODIFICATION **/
                     /** ++GRINDER MODIFICATION **/
                     // capture time for DNS Lookup
                     DNS_time.set(
@@ -982,7 +982,9 @@ public class HTTPResponse implements HTTPClientModuleConstants
         fixedSize = true;
       }
       else {
-        Data = new byte[1000];
+        // Accumulate the data in a reusable buffer, and copy it out once we
+        // know how long it is.
+        Data = Util.takeAccumulator();
         fixedSize = false;
       }
 
@@ -1012,7 +1014,12 @@ public class HTTPResponse implements HTTPClientModuleConstants
       }
       while (rcvd != -1);
 
-      if (off < Data.length) {
+      if (!fixedSize) {
+        final byte[] accumulator = Data;
+        Data = Util.resizeArray(accumulator, off);
+        Util.returnAccumulator(accumulator);
+      }
+      else if (off < Data.length) {
         Data = Util.resizeArray(Data, off);
       }
 
@@ -28,6 +28,10 @@
  *
  *  http://www.innovation.ch/java/HTTPClient/ 
  *
+ * This file contains modifications for use with "The Grinder"
+ * (http://grinder.sourceforge.net) under the terms of the LGPL. They
+ * are marked below with the comment "GRINDER MODIFICATION".
+ *
  */
 
 package HTTPClient;
@@ -145,7 +149,10 @@ final class RespInputStream extends InputStream implements GlobalConstants
 	}
 	else
 	{
-	    if (resph.resp.cd_type != CD_HDRS)
+	    /** ++GRINDER MODIFICATION **/
+	    // if (resph.resp.cd_type != CD_HDRS)
+	    if (resph.resp.cd_type != CD_HDRS  &&  Log.isEnabled(Log.DEMUX))
+	    /** --GRINDER MODIFICATION **/
 		Log.write(Log.DEMUX, "RspIS: Reading stream " + this.hashCode());
 
 	    int rcvd;
@@ -288,7 +295,10 @@ final class RespInputStream extends InputStream implements GlobalConstants
 	    {
 		if (closed)			// throw away
 		{
-		    buffer = new byte[10000];
+		    /** ++GRINDER MODIFICATION **/
+		    // buffer = new byte[10000];
+		    buffer = Util.getDiscardBuffer();
+		    /** --GRINDER MODIFICATION **/
 		    do
 		    {
 			count += rcvd;
@@ -314,7 +324,15 @@ final class RespInputStream extends InputStream implements GlobalConstants
 
 			count  += rcvd;
 			end    += rcvd;
-			buffer  = Util.resizeArray(buffer, end+10000);
+			/** ++GRINDER MODIFICATION **/
+			// buffer  = Util.resizeArray(buffer, end+10000);
+			// Grow exponentially, so that buffering an N byte
+			// response copies O(N) rather than O(N^2) bytes.
+			if (buffer.length - end < 10000)
+			    buffer = Util.resizeArray(buffer,
+						      Math.max(end + 10000,
+							       buffer.length * 2));
+			/** --GRINDER MODIFICATION **/
 		    } while (true);
 		}
 	    }
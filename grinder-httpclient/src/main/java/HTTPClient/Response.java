@@ -1374,14 +1374,28 @@ public final class Response implements RoResponse, GlobalConstants, Cloneable
 	    }
 	    else
 	    {
-		int inc  = 1000,
-		    rcvd = 0;
+		/** ++GRINDER MODIFICATION **/
+		// int inc  = 1000,
+		//     rcvd = 0;
+		//
+		// do
+		// {
+		//     off  += rcvd;
+		//     Data  = Util.resizeArray(Data, off+inc);
+		// } while ((rcvd = inp.read(Data, off, inc)) != -1);
+
+		// Grow exponentially so that reading an N byte body copies
+		// O(N) rather than O(N^2) bytes.
+		int rcvd = 0;
 
 		do
 		{
 		    off  += rcvd;
-		    Data  = Util.resizeArray(Data, off+inc);
-		} while ((rcvd = inp.read(Data, off, inc)) != -1);
+		    if (Data.length - off <= Data.length / 2)
+			Data = Util.resizeArray(Data,
+					Math.max(Data.length * 2, off + 1000));
+		} while ((rcvd = inp.read(Data, off, Data.length - off)) != -1);
+		/** --GRINDER MODIFICATION **/
 
 		Data = Util.resizeArray(Data, off);
 	    }
@@ -252,7 +252,12 @@ class StreamDemultiplexor implements GlobalConstants
 		throw resph.exception;
 	    }
 
-	    if (resph.resp.cd_type != CD_HDRS)
+	    /** ++GRINDER MODIFICATION **/
+	    // This is called for every read, so don't build the message
+	    // unless it will be logged.
+	    // if (resph.resp.cd_type != CD_HDRS)
+	    if (resph.resp.cd_type != CD_HDRS  &&  Log.isEnabled(Log.DEMUX))
+	    /** --GRINDER MODIFICATION **/
 		Log.write(Log.DEMUX, "Demux: Reading for stream " +
 				     resph.stream.hashCode());
 
@@ -394,8 +399,12 @@ class StreamDemultiplexor implements GlobalConstants
 	if (resph.eof)
 	    return 0;
 
-	byte[] dummy = new byte[(int) num];
-	int rcvd = read(dummy, 0, (int) num, resph, 0);
+	/** ++GRINDER MODIFICATION **/
+	// byte[] dummy = new byte[(int) num];
+	// int rcvd = read(dummy, 0, (int) num, resph, 0);
+	byte[] dummy = Util.getDiscardBuffer();
+	int rcvd = read(dummy, 0, (int) Math.min(num, dummy.length), resph, 0);
+	/** --GRINDER MODIFICATION **/
 	if (rcvd == -1)
 	    return 0;
 	else
@@ -482,6 +491,13 @@ class StreamDemultiplexor implements GlobalConstants
 	catch (IOException ioe) { }
 	Sock = null;
 
+	/** ++GRINDER MODIFICATION **/
+	// Safe because we hold the lock that guards reads from the stream.
+	// abort() closes the stream asynchronously, so leaves the buffer to
+	// the garbage collector.
+	Stream.releaseBuffer();
+	/** --GRINDER MODIFICATION **/
+
 	if (Timer != null)
 	{
 	    Timer.kill();
@@ -28,10 +28,18 @@
  *
  *  http://www.innovation.ch/java/HTTPClient/ 
  *
+ * This file contains modifications for use with "The Grinder"
+ * (http://grinder.sourceforge.net) under the terms of the LGPL. They
+ * are marked below with the comment "GRINDER MODIFICATION".
+ *
  */
 
 package HTTPClient;
 
+/** ++GRINDER MODIFICATION **/
+import java.io.InputStream;
+import java.io.IOException;
+/** --GRINDER MODIFICATION **/
 import java.lang.reflect.Array;
 import java.net.URL;
 import java.util.Date;
@@ -43,6 +51,11 @@ import java.util.SimpleTimeZone;
 import java.util.StringTokenizer;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
+/** ++GRINDER MODIFICATION **/
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+/** --GRINDER MODIFICATION **/
 
 
 /**
@@ -204,6 +217,122 @@ public class Util
     }
 
 
+    /** ++GRINDER MODIFICATION **/
+    /** The size of the buffers used for reading from sockets. */
+    final static int IO_BUFFER_SIZE = 8192;
+
+    /** The maximum number of idle I/O buffers to keep. */
+    private final static int MAX_POOLED_BUFFERS = 256;
+
+    private final static Queue<byte[]> buffer_pool =
+	new ConcurrentLinkedQueue<byte[]>();
+    private final static AtomicInteger pooled_buffers = new AtomicInteger();
+
+    private final static ThreadLocal<byte[]> discard_buffer =
+	new ThreadLocal<byte[]>() {
+	    protected byte[] initialValue()
+		{ return new byte[IO_BUFFER_SIZE]; }
+	};
+
+    /**
+     * Take an I/O buffer of {@link #IO_BUFFER_SIZE} bytes from the pool,
+     * allocating a new one if the pool is empty. The buffer may contain
+     * data left by a previous user.
+     *
+     * @return the buffer
+     */
+    final static byte[] acquireBuffer()
+    {
+	byte[] buf = buffer_pool.poll();
+	if (buf == null)
+	    return new byte[IO_BUFFER_SIZE];
+
+	pooled_buffers.decrementAndGet();
+	return buf;
+    }
+
+    /**
+     * Return a buffer obtained from {@link #acquireBuffer} to the pool.
+     * The caller must not use the buffer afterwards.
+     *
+     * @param buf the buffer
+     */
+    final static void releaseBuffer(byte[] buf)
+    {
+	if (buf.length != IO_BUFFER_SIZE)
+	    return;
+
+	if (pooled_buffers.incrementAndGet() <= MAX_POOLED_BUFFERS)
+	    buffer_pool.offer(buf);
+	else
+	    pooled_buffers.decrementAndGet();
+    }
+
+    /** The largest accumulation buffer that a thread will keep. */
+    private final static int MAX_ACCUMULATOR_SIZE = 1024 * 1024;
+
+    private final static ThreadLocal<byte[]> accumulator =
+	new ThreadLocal<byte[]>();
+
+    /**
+     * Take the calling thread's buffer for accumulating data of unknown
+     * length. The caller may grow the buffer, and should pass the result
+     * to {@link #returnAccumulator} once it has copied out the data. If
+     * the buffer is already in use, a new one is allocated.
+     *
+     * @return the buffer
+     */
+    final static byte[] takeAccumulator()
+    {
+	byte[] buf = accumulator.get();
+	if (buf == null)
+	    return new byte[IO_BUFFER_SIZE];
+
+	accumulator.set(null);
+	return buf;
+    }
+
+    /**
+     * Give an accumulation buffer back to the calling thread. Overly
+     * large buffers are discarded.
+     *
+     * @param buf the buffer
+     */
+    final static void returnAccumulator(byte[] buf)
+    {
+	if (buf.length <= MAX_ACCUMULATOR_SIZE)
+	    accumulator.set(buf);
+    }
+
+    /**
+     * Returns a per-thread buffer into which data that is to be thrown
+     * away can be read. Nested users may overwrite each other's data, so
+     * the contents must never be used.
+     *
+     * @return the buffer
+     */
+    final static byte[] getDiscardBuffer()
+    {
+	return discard_buffer.get();
+    }
+
+    /**
+     * Skip bytes by reading them into the discard buffer, for streams
+     * that can't skip themselves.
+     *
+     * @param input the stream to read from
+     * @param num   the maximum number of bytes to skip
+     * @return the number of bytes read, or -1 on EOF
+     * @exception IOException if the read fails
+     */
+    final static int discard(InputStream input, long num)  throws IOException
+    {
+	byte[] buf = discard_buffer.get();
+	return input.read(buf, 0, (int) Math.min(num, buf.length));
+    }
+    /** --GRINDER MODIFICATION **/
+
+
     /**
      * Split a property into an array of Strings, using "|" as the
      * separator.
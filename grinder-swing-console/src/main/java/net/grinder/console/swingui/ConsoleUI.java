@@ -528,7 +528,10 @@ public final class ConsoleUI implements ConsoleFoundation.UI {
               m_model.getTPSExpression().getDoubleValue(intervalStatistics)) +
             m_suffix);
 
-          totalGraph.add(intervalStatistics, cumulativeStatistics, format);
+          totalGraph.add(intervalStatistics,
+                         cumulativeStatistics,
+                         format,
+                         m_model.getTimeUnit());
         }
       });
 
@@ -25,6 +25,7 @@ import java.awt.Color;
 import java.io.IOException;
 import java.io.Writer;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 import javax.swing.table.AbstractTableModel;
 
@@ -34,7 +35,6 @@ import net.grinder.console.model.SampleModel;
 import net.grinder.console.model.SampleModelViews;
 import net.grinder.console.model.SampleModelViews.Listener;
 import net.grinder.statistics.ExpressionView;
-import net.grinder.statistics.StatisticExpression;
 import net.grinder.statistics.StatisticsSet;
 import net.grinder.statistics.StatisticsView;
 import net.grinder.translation.Translations;
@@ -211,11 +211,11 @@ abstract class DynamicStatisticsTableModel
                                                 int dynamicColumn) {
 
     if (dynamicColumn < m_columnViews.length) {
-      final StatisticExpression expression =
-        m_columnViews[dynamicColumn].getExpression();
+      final ExpressionView view = m_columnViews[dynamicColumn];
+      final TimeUnit timeUnit = m_model.getTimeUnit();
 
-      if (expression.isDouble()) {
-        final double value = expression.getDoubleValue(statistics);
+      if (view.isDisplayedAsDouble(timeUnit)) {
+        final double value = view.getDisplayValue(statistics, timeUnit);
 
         if (Double.isNaN(value)) {
           return "";
@@ -225,7 +225,7 @@ abstract class DynamicStatisticsTableModel
         }
       }
       else {
-        return String.valueOf(expression.getLongValue(statistics));
+        return String.valueOf(view.getExpression().getLongValue(statistics));
       }
     }
     else {
@@ -28,6 +28,7 @@ import java.awt.Dimension;
 import java.awt.Font;
 import java.awt.SystemColor;
 import java.text.NumberFormat;
+import java.util.concurrent.TimeUnit;
 
 import javax.swing.BorderFactory;
 import javax.swing.BoxLayout;
@@ -261,9 +262,20 @@ class LabelledGraph extends JPanel {
   public void add(StatisticsSet intervalStatistics,
     StatisticsSet cumulativeStatistics,
     NumberFormat numberFormat) {
+    add(intervalStatistics,
+        cumulativeStatistics,
+        numberFormat,
+        TimeUnit.MILLISECONDS);
+  }
+
+  public void add(StatisticsSet intervalStatistics,
+    StatisticsSet cumulativeStatistics,
+    NumberFormat numberFormat,
+    TimeUnit timeUnit) {
 
     final double averageTime =
-        m_testStatisticsQueries.getAverageTestTime(cumulativeStatistics);
+        m_testStatisticsQueries.getAverageTestTime(cumulativeStatistics,
+                                                   timeUnit);
     final long errors =
         m_testStatisticsQueries.getNumberOfErrors(cumulativeStatistics);
     final double peakTPS =
@@ -159,7 +159,8 @@ public class TestGraphPanel extends JPanel implements SampleModel.Listener {
             public void update(final StatisticsSet intervalStatistics,
                                final StatisticsSet cumulativeStatistics) {
               testGraph.add(intervalStatistics, cumulativeStatistics,
-                            m_sampleModelViews.getNumberFormat());
+                            m_sampleModelViews.getNumberFormat(),
+                            m_model.getTimeUnit());
             }
           }));
 
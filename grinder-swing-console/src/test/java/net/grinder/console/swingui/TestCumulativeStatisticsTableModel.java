@@ -34,6 +34,7 @@ import java.io.StringWriter;
 import java.text.DecimalFormat;
 import java.util.Arrays;
 import java.util.Timer;
+import java.util.concurrent.TimeUnit;
 
 import net.grinder.common.StubTest;
 import net.grinder.console.model.ConsoleProperties;
@@ -126,6 +127,7 @@ public class TestCumulativeStatisticsTableModel
 
     m_sampleModelStubFactory.setResult("getTotalCumulativeStatistics",
       m_statisticsServices.getStatisticsSetFactory().create());
+    m_sampleModelStubFactory.setResult("getTimeUnit", TimeUnit.MILLISECONDS);
   }
 
   @Test public void testConstruction() throws Exception {
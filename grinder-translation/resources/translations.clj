@@ -261,6 +261,7 @@
                             :Errors :console.term/errors
                             :Mean-Test-Time-ms "Mean Time"
                             :Test-Time-Standard-Deviation-ms "Mean Time Standard Deviation"
+                            :Mean-Corrected-Test-Time-ms "Mean Corrected Time"
                             :TPS :console.term/tps
                             :Peak-TPS "Peak TPS"
                             :Mean-response-length "Mean Response Length"